@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2020 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.heroic.aggregation.simple;
+
+import com.google.common.collect.ImmutableMap;
+import com.spotify.heroic.metric.Payload;
+import com.spotify.heroic.metric.Point;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of computing a quantile over one bucket, with the CKMS summary used by
+ * {@link QuantileInstance} and the sketch used by {@link QuantileSketchInstance}.
+ * <p>
+ * Run with {@code -prof gc} to compare the memory allocated per bucket.
+ * {@link #sketchMerge()} measures the cost of reducing the state of distributed buckets.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QuantileBenchmark {
+    private static final Map<String, String> KEY = ImmutableMap.of();
+
+    @Param({"1000", "100000"})
+    public int points;
+
+    @Param({"0.5", "0.99"})
+    public double q;
+
+    private Point[] samples;
+    private Payload[] states;
+
+    @Setup
+    public void setup() {
+        final Random random = new Random(0x5eed);
+
+        samples = new Point[points];
+
+        for (int i = 0; i < points; i++) {
+            /* latencies are usually log-normal */
+            samples[i] = new Point(0, Math.exp(random.nextGaussian() + 4));
+        }
+
+        states = new Payload[16];
+
+        for (int s = 0; s < states.length; s++) {
+            final QuantileSketchBucket bucket =
+                new QuantileSketchBucket(0, Quantile.DEFAULT_ERROR);
+
+            for (int i = s; i < points; i += states.length) {
+                bucket.updatePoint(KEY, samples[i]);
+            }
+
+            states[s] = new Payload(0, bucket.state());
+        }
+    }
+
+    @Benchmark
+    public double ckms() {
+        final QuantileBucket bucket = new QuantileBucket(0, q, Quantile.DEFAULT_ERROR);
+
+        for (final Point p : samples) {
+            bucket.updatePoint(KEY, p);
+        }
+
+        return bucket.value();
+    }
+
+    @Benchmark
+    public double sketch() {
+        final QuantileSketchBucket bucket = new QuantileSketchBucket(0, Quantile.DEFAULT_ERROR);
+
+        for (final Point p : samples) {
+            bucket.updatePoint(KEY, p);
+        }
+
+        return bucket.value(q);
+    }
+
+    @Benchmark
+    public double sketchMerge() {
+        final QuantileSketchBucket bucket = new QuantileSketchBucket(0, Quantile.DEFAULT_ERROR);
+
+        for (final Payload state : states) {
+            bucket.updatePayload(KEY, state);
+        }
+
+        return bucket.value(q);
+    }
+}
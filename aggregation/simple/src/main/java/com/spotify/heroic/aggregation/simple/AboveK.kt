@@ -26,14 +26,23 @@ import com.spotify.heroic.aggregation.AggregationContext
 import com.spotify.heroic.aggregation.simple.Aggregations.verifyNoChild
 import java.util.*
 
-data class AboveK(val k: Double, val of: Optional<Aggregation>) : Aggregation {
+data class AboveK @JvmOverloads constructor(
+    val k: Double,
+    val of: Optional<Aggregation>,
+    /**
+     * Also apply the filter on each shard. Only correct when every group is complete on one
+     * shard, so queries against several shards are rejected unless the preceding aggregation
+     * groups by every tag the cluster is sharded on.
+     */
+    val distributed: Boolean? = null
+) : Aggregation {
 
     init {
         verifyNoChild("of", of)
     }
 
     override fun apply(context: AggregationContext): AboveKInstance {
-        return AboveKInstance(k)
+        return AboveKInstance(k, distributed ?: false)
     }
 
     companion object {
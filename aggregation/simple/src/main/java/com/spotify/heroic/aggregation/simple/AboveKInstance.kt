@@ -21,12 +21,19 @@
 
 package com.spotify.heroic.aggregation.simple
 
+import com.fasterxml.jackson.annotation.JsonInclude
 import com.spotify.heroic.ObjectHasher
 
-data class AboveKInstance (val k: Double)
-    : FilterAggregation(FilterKThresholdStrategy(FilterKThresholdType.ABOVE, k)) {
+data class AboveKInstance @JvmOverloads constructor(
+    val k: Double,
+    @get:JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    override val distributed: Boolean = false
+) : FilterAggregation(FilterKThresholdStrategy(FilterKThresholdType.ABOVE, k)) {
+
+    override fun undistributed() = copy(distributed = false)
 
     override fun filterHashTo(hasher: ObjectHasher) {
         hasher.putField("k", k, hasher.doubleValue())
+        hasher.putField("distributed", distributed, hasher.bool())
     }
 }
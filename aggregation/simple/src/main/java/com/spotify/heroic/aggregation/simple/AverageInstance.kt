@@ -22,9 +22,12 @@
 package com.spotify.heroic.aggregation.simple
 
 import com.google.common.collect.ImmutableSet
+import com.spotify.heroic.aggregation.PrimitiveBuckets
+import com.spotify.heroic.aggregation.PrimitiveBuckets.Combine
 import com.spotify.heroic.metric.Metric
 import com.spotify.heroic.metric.MetricType
 import com.spotify.heroic.metric.Point
+import com.spotify.heroic.metric.Spread
 
 data class AverageInstance(
     override val size: Long,
@@ -43,4 +46,35 @@ data class AverageInstance(
         } else Point(bucket.timestamp, bucket.value())
 
     }
+
+    override fun primitiveBuckets(): PrimitiveBuckets = BUCKETS
+
+    companion object {
+        /* sum of all seen values, and the number of values they represent */
+        private val BUCKETS = object : PrimitiveBuckets(arrayOf(Combine.SUM), 1) {
+            override fun updatePoint(d: DoubleArray, di: Int, l: LongArray, li: Int, value: Double) {
+                d[di] += value
+                l[li] += 1
+            }
+
+            override fun updateSpread(d: DoubleArray, di: Int, l: LongArray, li: Int, sample: Spread) {
+                d[di] += sample.sum
+                l[li] += sample.count
+            }
+
+            override fun build(timestamp: Long, d: DoubleArray, di: Int, l: LongArray, li: Int): Metric {
+                val count = l[li]
+
+                if (count == 0L) {
+                    return Metric.invalid
+                }
+
+                val value = d[di] / count
+
+                return if (!java.lang.Double.isFinite(value)) {
+                    Metric.invalid
+                } else Point(timestamp, value)
+            }
+        }
+    }
 }
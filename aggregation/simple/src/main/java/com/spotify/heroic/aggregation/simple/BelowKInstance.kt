@@ -21,12 +21,19 @@
 
 package com.spotify.heroic.aggregation.simple
 
+import com.fasterxml.jackson.annotation.JsonInclude
 import com.spotify.heroic.ObjectHasher
 
-data class BelowKInstance(val k: Double)
-    : FilterAggregation(FilterKThresholdStrategy(FilterKThresholdType.BELOW, k)) {
+data class BelowKInstance @JvmOverloads constructor(
+    val k: Double,
+    @get:JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    override val distributed: Boolean = false
+) : FilterAggregation(FilterKThresholdStrategy(FilterKThresholdType.BELOW, k)) {
+
+    override fun undistributed() = copy(distributed = false)
 
     override fun filterHashTo(hasher: ObjectHasher) {
         hasher.putField("k", k, hasher.doubleValue())
+        hasher.putField("distributed", distributed, hasher.bool())
     }
 }
@@ -23,8 +23,11 @@ package com.spotify.heroic.aggregation.simple
 
 import com.spotify.heroic.aggregation.AggregationInstance
 import com.spotify.heroic.aggregation.BucketAggregationInstance
+import com.spotify.heroic.aggregation.PrimitiveBuckets
+import com.spotify.heroic.metric.Metric
 import com.spotify.heroic.metric.MetricType
 import com.spotify.heroic.metric.Point
+import com.spotify.heroic.metric.Spread
 
 data class CountInstance(
     override val size: Long, override val extent: Long
@@ -45,4 +48,27 @@ data class CountInstance(
     override fun reducer(): AggregationInstance {
         return SumInstance(size, extent)
     }
+
+    override fun primitiveBuckets(): PrimitiveBuckets = BUCKETS
+
+    companion object {
+        /* the number of samples seen, regardless of their type */
+        private val BUCKETS = object : PrimitiveBuckets(arrayOf(), 1) {
+            override fun updatePoint(d: DoubleArray, di: Int, l: LongArray, li: Int, value: Double) {
+                l[li] += 1
+            }
+
+            override fun updateSpread(d: DoubleArray, di: Int, l: LongArray, li: Int, sample: Spread) {
+                l[li] += 1
+            }
+
+            override fun update(d: DoubleArray, di: Int, l: LongArray, li: Int, sample: Metric) {
+                l[li] += 1
+            }
+
+            override fun build(timestamp: Long, d: DoubleArray, di: Int, l: LongArray, li: Int): Metric {
+                return Point(timestamp, l[li].toDouble())
+            }
+        }
+    }
 }
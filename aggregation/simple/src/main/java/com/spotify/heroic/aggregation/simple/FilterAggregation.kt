@@ -26,10 +26,12 @@ import com.spotify.heroic.ObjectHasher
 import com.spotify.heroic.aggregation.*
 import com.spotify.heroic.common.DateRange
 import com.spotify.heroic.common.Series
+import com.spotify.heroic.metric.MetricCollection
 import com.spotify.heroic.metric.MetricGroup
 import com.spotify.heroic.metric.Payload
 import com.spotify.heroic.metric.Point
 import com.spotify.heroic.metric.Spread
+import java.util.Optional
 import java.util.function.Supplier
 
 abstract class FilterAggregation(
@@ -44,12 +46,20 @@ abstract class FilterAggregation(
         return -1
     }
 
+    /**
+     * If the filter should also be applied on each shard, to only send the groups which can be
+     * part of the result to the coordinator.
+     *
+     * This requires that every group is complete on one shard.
+     */
+    abstract val distributed: Boolean
+
     override fun distributed(): AggregationInstance {
-        return INNER
+        return if (distributed) this else INNER
     }
 
     override fun reducer(): AggregationInstance {
-        return INNER
+        return if (distributed) this else INNER
     }
 
     /**
@@ -60,6 +70,23 @@ abstract class FilterAggregation(
         return false
     }
 
+    /**
+     * Groups which are not selected on the shard they are complete on can never be selected by
+     * the coordinator, so the filter can be applied on both.
+     */
+    override fun distributedFilter(): Optional<AggregationInstance> {
+        return if (distributed) Optional.of(this) else Optional.empty()
+    }
+
+    override fun withoutDistributedFilter(): AggregationInstance {
+        return if (distributed) undistributed() else this
+    }
+
+    /**
+     * A copy of this filter which is only applied by the coordinator.
+     */
+    protected abstract fun undistributed(): AggregationInstance
+
     override fun session(
         range: DateRange, quotaWatcher: RetainQuotaWatcher, bucketStrategy: BucketStrategy
     ): AggregationSession {
@@ -86,6 +113,14 @@ abstract class FilterAggregation(
             childSession.updatePoints(key, series, values)
         }
 
+        override fun updatePointColumns(
+            key: Map<String, String>,
+            series: Set<Series>,
+            values: MetricCollection.ColumnarPointCollection
+        ) {
+            childSession.updatePointColumns(key, series, values)
+        }
+
         override fun updateSpreads(
             key: Map<String, String>, series: Set<Series>, values: List<Spread>
         ) {
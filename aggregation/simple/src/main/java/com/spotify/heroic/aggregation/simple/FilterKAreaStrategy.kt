@@ -24,6 +24,9 @@ package com.spotify.heroic.aggregation.simple
 import com.spotify.heroic.ObjectHasher
 import com.spotify.heroic.metric.MetricCollection
 import com.spotify.heroic.metric.Point
+import java.util.PriorityQueue
+import kotlin.math.max
+import kotlin.math.min
 
 /**
  * This filter strategy calculates the area under the graphs of the time series and
@@ -35,15 +38,38 @@ import com.spotify.heroic.metric.Point
 data class FilterKAreaStrategy(val filterType: FilterKAreaType, val k: Long) : FilterStrategy {
     private val limit = k.toInt()
 
+    /**
+     * Keeps the k best areas seen in a bounded heap, with the worst of them at the head. Ties are
+     * broken by the order of the input.
+     */
     override fun <T> filter(metrics: List<FilterableMetrics<T>>): List<T?> {
-        return metrics
-            .asSequence()
-            .filter { it.metricSupplier!!.get().size() > 0 }
-            .map { Area(it) }
-            .sortedWith(Comparator { a, b -> filterType.compare(a.value, b.value) })
-            .take(limit)
-            .map { it.filterableMetrics.data }
-            .toList()
+        if (limit <= 0) {
+            return emptyList()
+        }
+
+        val order = Comparator<Area<T>> { a, b ->
+            val c = filterType.compare(a.value, b.value)
+            if (c != 0) c else a.index.compareTo(b.index)
+        }
+
+        val heap = PriorityQueue<Area<T>>(max(1, min(limit, metrics.size)), order.reversed())
+
+        metrics.forEachIndexed { index, it ->
+            if (it.metricSupplier!!.get().size() == 0) {
+                return@forEachIndexed
+            }
+
+            val area = Area(it, index)
+
+            if (heap.size < limit) {
+                heap.add(area)
+            } else if (order.compare(area, heap.peek()) < 0) {
+                heap.poll()
+                heap.add(area)
+            }
+        }
+
+        return heap.sortedWith(order).map { it.filterableMetrics.data }
     }
 
     override fun hashTo(hasher: ObjectHasher) {
@@ -54,9 +80,14 @@ data class FilterKAreaStrategy(val filterType: FilterKAreaType, val k: Long) : F
     }
 
 
-    private data class Area<T>(val filterableMetrics: FilterableMetrics<T>, val value: Double) {
-        constructor(filterableMetrics: FilterableMetrics<T>)
-            : this(filterableMetrics, computeArea(filterableMetrics.metricSupplier!!.get()))
+    private data class Area<T>(
+        val filterableMetrics: FilterableMetrics<T>,
+        val index: Int,
+        val value: Double
+    ) {
+        constructor(filterableMetrics: FilterableMetrics<T>, index: Int)
+            : this(filterableMetrics, index,
+            computeArea(filterableMetrics.metricSupplier!!.get()))
 
         companion object {
             fun computeArea(metricCollection: MetricCollection): Double {
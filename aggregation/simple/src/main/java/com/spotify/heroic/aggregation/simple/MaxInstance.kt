@@ -22,9 +22,12 @@
 package com.spotify.heroic.aggregation.simple
 
 import com.google.common.collect.ImmutableSet
+import com.spotify.heroic.aggregation.PrimitiveBuckets
+import com.spotify.heroic.aggregation.PrimitiveBuckets.Combine
 import com.spotify.heroic.metric.Metric
 import com.spotify.heroic.metric.MetricType
 import com.spotify.heroic.metric.Point
+import com.spotify.heroic.metric.Spread
 
 data class MaxInstance(
     override val size: Long,
@@ -43,4 +46,27 @@ data class MaxInstance(
         } else Point(bucket.timestamp, value)
 
     }
+
+    override fun primitiveBuckets(): PrimitiveBuckets = BUCKETS
+
+    companion object {
+        /* the largest value seen */
+        private val BUCKETS = object : PrimitiveBuckets(arrayOf(Combine.MAX), 0) {
+            override fun updatePoint(d: DoubleArray, di: Int, l: LongArray, li: Int, value: Double) {
+                d[di] = Math.max(d[di], value)
+            }
+
+            override fun updateSpread(d: DoubleArray, di: Int, l: LongArray, li: Int, sample: Spread) {
+                d[di] = Math.max(d[di], sample.max)
+            }
+
+            override fun build(timestamp: Long, d: DoubleArray, di: Int, l: LongArray, li: Int): Metric {
+                val value = d[di]
+
+                return if (!java.lang.Double.isFinite(value)) {
+                    Metric.invalid
+                } else Point(timestamp, value)
+            }
+        }
+    }
 }
@@ -33,6 +33,7 @@ import com.spotify.heroic.dagger.LoadingComponent;
 import com.spotify.heroic.grammar.DoubleExpression;
 import com.spotify.heroic.grammar.Expression;
 import com.spotify.heroic.grammar.IntegerExpression;
+import com.spotify.heroic.grammar.StringExpression;
 import dagger.Component;
 import eu.toolchain.serializer.SerializerFramework;
 
@@ -92,6 +93,14 @@ public class Module implements HeroicModule {
             c.register(StdDev.NAME, StdDev.class, StdDevInstance.class,
                 samplingBuilder(StdDev::new));
 
+            c.register(Variance.NAME, Variance.class, VarianceInstance.class,
+                samplingBuilder(Variance::new));
+
+            c.registerInstance(DistributedMomentsInstance.NAME,
+                DistributedMomentsInstance.class);
+
+            c.registerInstance(ReduceStdDevInstance.NAME, ReduceStdDevInstance.class);
+
             c.register(Count.NAME, Count.class, CountInstance.class, samplingBuilder(Count::new));
 
             c.register(GroupUnique.NAME, GroupUnique.class, GroupUniqueInstance.class,
@@ -113,11 +122,20 @@ public class Module implements HeroicModule {
                             .positionalOrKeyword("error", DoubleExpression.class)
                             .map(DoubleExpression::getValue)
                             .orElse(null);
+                        final String method = args
+                            .keyword("method", StringExpression.class)
+                            .map(StringExpression::getString)
+                            .orElse(null);
                         return new Quantile(
-                            null, size.orElse(null), extent.orElse(null), q, error);
+                            null, size.orElse(null), extent.orElse(null), q, error, method);
                     }
                 });
 
+            c.registerInstance(QuantileSketchInstance.NAME, QuantileSketchInstance.class);
+
+            c.registerInstance(DistributedQuantileSketchInstance.NAME,
+                DistributedQuantileSketchInstance.class);
+
             c.register(Delta.NAME, Delta.class, DeltaInstance.class, args -> Delta.INSTANCE);
 
             c.register(DeltaPerSecond.NAME, DeltaPerSecond.class,
@@ -128,19 +146,19 @@ public class Module implements HeroicModule {
 
             c.register(TopK.NAME, TopK.class, TopKInstance.class,
                 args -> new TopK(fetchK(args, IntegerExpression.class).getValue(),
-                    Optional.empty()));
+                    Optional.empty(), fetchDistributed(args)));
 
             c.register(BottomK.NAME, BottomK.class, BottomKInstance.class,
                 args -> new BottomK(fetchK(args, IntegerExpression.class).getValue(),
-                    Optional.empty()));
+                    Optional.empty(), fetchDistributed(args)));
 
             c.register(AboveK.NAME, AboveK.class, AboveKInstance.class,
                 args -> new AboveK(fetchK(args, DoubleExpression.class).getValue(),
-                    Optional.empty()));
+                    Optional.empty(), fetchDistributed(args)));
 
             c.register(BelowK.NAME, BelowK.class, BelowKInstance.class,
                 args -> new BelowK(fetchK(args, DoubleExpression.class).getValue(),
-                    Optional.empty()));
+                    Optional.empty(), fetchDistributed(args)));
 
             c.register(PointsAbove.NAME, PointsAbove.class, PointsAboveInstance.class,
                 args -> new PointsAbove(fetchK(args, DoubleExpression.class).getValue()));
@@ -149,6 +167,13 @@ public class Module implements HeroicModule {
                 args -> new PointsBelow(fetchK(args, DoubleExpression.class).getValue()));
         }
 
+        private Boolean fetchDistributed(AggregationArguments args) {
+            return args
+                .keyword("distributed", StringExpression.class)
+                .map(e -> "true".equals(e.getString()))
+                .orElse(null);
+        }
+
         private <T extends Expression> T fetchK(AggregationArguments args, Class<T> doubleClass) {
             return args
                 .positional(doubleClass)
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2020 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.heroic.aggregation.simple
+
+import java.nio.ByteBuffer
+
+/**
+ * The count, mean and sum of squared differences from the mean (M2) of a set of values.
+ *
+ * Values are added with Welford's method, and two sets of moments are combined with the parallel
+ * algorithm by Chan et al. Both are numerically stable, unlike keeping the sum and the sum of
+ * squares.
+ */
+data class Moments(val count: Long, val mean: Double, val m2: Double) {
+    fun add(value: Double): Moments {
+        val count = count + 1
+        val delta = value - mean
+        val mean = mean + delta / count
+        return Moments(count, mean, m2 + delta * (value - mean))
+    }
+
+    fun merge(other: Moments): Moments {
+        if (other.count == 0L) {
+            return this
+        }
+
+        if (count == 0L) {
+            return other
+        }
+
+        val count = count + other.count
+        val delta = other.mean - mean
+        val mean = mean + delta * other.count / count
+        val m2 = m2 + other.m2 + delta * delta * (this.count.toDouble() * other.count / count)
+        return Moments(count, mean, m2)
+    }
+
+    /**
+     * Population variance, or NaN if there are no values.
+     */
+    fun variance(): Double = if (count == 0L) Double.NaN else m2 / count
+
+    fun serialize(): ByteArray {
+        return ByteBuffer
+            .allocate(SIZE)
+            .putLong(count)
+            .putDouble(mean)
+            .putDouble(m2)
+            .array()
+    }
+
+    companion object {
+        private const val SIZE = 24
+
+        @JvmField
+        val EMPTY = Moments(0, 0.0, 0.0)
+
+        @JvmStatic
+        fun deserialize(state: ByteArray): Moments {
+            if (state.size != SIZE) {
+                throw IllegalArgumentException("illegal size of moments: ${state.size}")
+            }
+
+            val buffer = ByteBuffer.wrap(state)
+            return Moments(buffer.long, buffer.double, buffer.double)
+        }
+
+        /**
+         * Moments of the values summarized by a spread.
+         */
+        @JvmStatic
+        fun ofSpread(count: Long, sum: Double, sum2: Double): Moments {
+            if (count == 0L) {
+                return EMPTY
+            }
+
+            val mean = sum / count
+            return Moments(count, mean, Math.max(0.0, sum2 - sum * mean))
+        }
+    }
+}
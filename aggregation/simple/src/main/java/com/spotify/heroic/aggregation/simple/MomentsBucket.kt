@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2020 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.heroic.aggregation.simple
+
+import com.spotify.heroic.aggregation.AbstractBucket
+import com.spotify.heroic.aggregation.PrimitivePointBucket
+import com.spotify.heroic.metric.Payload
+import com.spotify.heroic.metric.Point
+import com.spotify.heroic.metric.Spread
+import java.util.concurrent.atomic.AtomicReferenceArray
+
+/**
+ * Bucket that keeps the [Moments] of all values seen.
+ *
+ * Accepts points, spreads, and the serialized moments from other buckets.
+ *
+ * Values are accumulated in place into one of several stripes, picked by the updating thread, to
+ * reduce contention across CPUs without allocating for every value. Stripes are created on first
+ * use, and are merged when the value is read.
+ */
+data class MomentsBucket(override val timestamp: Long) : AbstractBucket(), PrimitivePointBucket {
+    private val stripes = AtomicReferenceArray<Accumulator>(STRIPES)
+
+    override fun updatePoint(key: Map<String, String>, sample: Point) {
+        updatePoint(key, sample.timestamp, sample.value)
+    }
+
+    override fun updatePoint(key: Map<String, String>, timestamp: Long, value: Double) {
+        if (!java.lang.Double.isFinite(value)) {
+            return
+        }
+
+        val stripe = stripe()
+
+        synchronized(stripe) {
+            stripe.add(value)
+        }
+    }
+
+    override fun updateSpread(key: Map<String, String>, sample: Spread) {
+        merge(Moments.ofSpread(sample.count, sample.sum, sample.sum2))
+    }
+
+    override fun updatePayload(key: Map<String, String>, sample: Payload) {
+        merge(Moments.deserialize(sample.state))
+    }
+
+    private fun merge(other: Moments) {
+        val stripe = stripe()
+
+        synchronized(stripe) {
+            stripe.merge(other)
+        }
+    }
+
+    fun value(): Moments {
+        var moments = Moments.EMPTY
+
+        for (i in 0 until STRIPES) {
+            val stripe = stripes.get(i) ?: continue
+
+            synchronized(stripe) {
+                moments = moments.merge(stripe.moments())
+            }
+        }
+
+        return moments
+    }
+
+    private fun stripe(): Accumulator {
+        val index = Thread.currentThread().id.toInt() and (STRIPES - 1)
+        val stripe = stripes.get(index)
+
+        if (stripe != null) {
+            return stripe
+        }
+
+        stripes.compareAndSet(index, null, Accumulator())
+        return stripes.get(index)
+    }
+
+    /**
+     * Mutable counterpart of [Moments], guarded by its own monitor.
+     */
+    private class Accumulator {
+        private var count = 0L
+        private var mean = 0.0
+        private var m2 = 0.0
+
+        fun add(value: Double) {
+            count += 1
+            val delta = value - mean
+            mean += delta / count
+            m2 += delta * (value - mean)
+        }
+
+        fun merge(other: Moments) {
+            val merged = moments().merge(other)
+            count = merged.count
+            mean = merged.mean
+            m2 = merged.m2
+        }
+
+        fun moments(): Moments = Moments(count, mean, m2)
+    }
+
+    companion object {
+        /* a power of two, so that a stripe can be picked with a mask */
+        private val STRIPES =
+            Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1)
+    }
+}
@@ -22,6 +22,7 @@
 package com.spotify.heroic.aggregation.simple
 
 import com.spotify.heroic.aggregation.AggregationContext
+import com.spotify.heroic.aggregation.AggregationInstance
 import com.spotify.heroic.aggregation.SamplingAggregation
 import com.spotify.heroic.aggregation.SamplingQuery
 import com.spotify.heroic.common.Duration
@@ -31,7 +32,8 @@ data class Quantile(
         override var size: Duration?,
         override var extent: Duration?,
         val q: Double?,
-        val error: Double?
+        val error: Double?,
+        val method: String? = null
 ) : SamplingAggregation {
 
     init {
@@ -39,13 +41,32 @@ data class Quantile(
         extent = extent ?: sampling?.extent
     }
 
-    override fun apply(context: AggregationContext?, size: Long, extent: Long): QuantileInstance {
-        return QuantileInstance(size, extent, q ?: DEFAULT_QUANTILE, error ?: DEFAULT_ERROR)
+    override fun apply(
+        context: AggregationContext?, size: Long, extent: Long
+    ): AggregationInstance {
+        val q = q ?: DEFAULT_QUANTILE
+        val error = error ?: DEFAULT_ERROR
+
+        return when (method ?: METHOD_CKMS) {
+            METHOD_CKMS -> QuantileInstance(size, extent, q, error)
+            METHOD_DDSKETCH -> QuantileSketchInstance(size, extent, q, error)
+            else -> throw IllegalArgumentException("Unknown quantile method: $method")
+        }
     }
 
     companion object {
         const val NAME = "quantile"
         const val DEFAULT_QUANTILE = 0.5
         const val DEFAULT_ERROR = 0.01
+
+        /**
+         * Targeted quantile summary, computed on a single node.
+         */
+        const val METHOD_CKMS = "ckms"
+
+        /**
+         * Mergeable sketch with relative error, which can be distributed.
+         */
+        const val METHOD_DDSKETCH = "ddsketch"
     }
 }
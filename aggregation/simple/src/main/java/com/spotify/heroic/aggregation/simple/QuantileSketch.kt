@@ -0,0 +1,334 @@
+/*
+ * Copyright (c) 2020 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.heroic.aggregation.simple
+
+import java.io.ByteArrayOutputStream
+import java.nio.ByteBuffer
+import kotlin.math.ceil
+import kotlin.math.ln
+import kotlin.math.max
+import kotlin.math.min
+import kotlin.math.pow
+
+/**
+ * A mergeable quantile sketch with relative error guarantees (DDSketch).
+ *
+ * Values are counted in logarithmically sized bins, so that every value which is estimated from
+ * a bin is within the given relative accuracy of the value that was added. Two sketches with the
+ * same accuracy are merged by adding their bin counts, which makes it possible to compute
+ * quantiles on each shard and combine them afterwards without loss.
+ *
+ * The number of bins is bounded, once exceeded the lowest bins are collapsed.
+ *
+ * See: Masson, Rim, and Lee "DDSketch: A Fast and Fully-Mergeable Quantile Sketch with
+ * Relative-Error Guarantees" in VLDB 2019
+ *
+ * This class is not thread-safe.
+ */
+class QuantileSketch private constructor(
+    val relativeAccuracy: Double,
+    private val positive: Store,
+    private val negative: Store,
+    private var zeroCount: Long
+) {
+    constructor(relativeAccuracy: Double) : this(relativeAccuracy, Store(), Store(), 0)
+
+    init {
+        require(relativeAccuracy > 0 && relativeAccuracy < 1) {
+            "relative accuracy must be in (0, 1): $relativeAccuracy"
+        }
+    }
+
+    private val gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy)
+    private val logGamma = ln(gamma)
+    private val minIndexable = java.lang.Double.MIN_NORMAL * gamma
+
+    val count: Long
+        get() = zeroCount + positive.count + negative.count
+
+    fun add(value: Double) {
+        when {
+            value.isNaN() -> return
+            value > minIndexable -> positive.add(index(value), 1)
+            value < -minIndexable -> negative.add(index(-value), 1)
+            else -> zeroCount++
+        }
+    }
+
+    fun merge(other: QuantileSketch) {
+        require(other.relativeAccuracy == relativeAccuracy) {
+            "cannot merge sketches with different accuracy: " +
+                "$relativeAccuracy != ${other.relativeAccuracy}"
+        }
+
+        positive.merge(other.positive)
+        negative.merge(other.negative)
+        zeroCount += other.zeroCount
+    }
+
+    /**
+     * Get the estimated value at the specified quantile, or NaN if the sketch is empty.
+     */
+    fun quantile(quantile: Double): Double {
+        val count = count
+
+        if (count == 0L) {
+            return Double.NaN
+        }
+
+        val rank = (quantile.coerceIn(0.0, 1.0) * (count - 1)).toLong()
+        var seen = 0L
+
+        // negative values are stored by magnitude, so the largest index is the smallest value
+        for (i in negative.counts.indices.reversed()) {
+            seen += negative.counts[i]
+
+            if (seen > rank) {
+                return -value(negative.offset + i)
+            }
+        }
+
+        seen += zeroCount
+
+        if (seen > rank) {
+            return 0.0
+        }
+
+        for (i in positive.counts.indices) {
+            seen += positive.counts[i]
+
+            if (seen > rank) {
+                return value(positive.offset + i)
+            }
+        }
+
+        throw IllegalStateException("rank $rank out of bounds for count $count")
+    }
+
+    fun serialize(): ByteArray {
+        val out = ByteArrayOutputStream()
+        out.write(VERSION)
+        writeLong(out, java.lang.Double.doubleToRawLongBits(relativeAccuracy))
+        writeVarLong(out, zeroCount)
+        positive.writeTo(out)
+        negative.writeTo(out)
+        return out.toByteArray()
+    }
+
+    private fun index(value: Double): Int = ceil(ln(value) / logGamma).toInt()
+
+    private fun value(index: Int): Double = 2 * gamma.pow(index) / (gamma + 1)
+
+    /**
+     * Dense counts for a contiguous range of bin indexes, starting at [offset].
+     */
+    private class Store {
+        var counts = EMPTY
+        var offset = 0
+        var count = 0L
+
+        private val last: Int
+            get() = offset + counts.size - 1
+
+        fun add(index: Int, n: Long) {
+            if (counts.isEmpty()) {
+                counts = LongArray(1)
+                offset = index
+            } else if (index < offset || index > last) {
+                extend(index)
+            }
+
+            // indexes below the range have been collapsed into the lowest bin
+            counts[max(index, offset) - offset] += n
+            count += n
+        }
+
+        fun merge(other: Store) {
+            if (other.count == 0L) {
+                return
+            }
+
+            if (counts.isEmpty()) {
+                counts = other.counts.copyOf()
+                offset = other.offset
+                count = other.count
+                return
+            }
+
+            val low = min(offset, other.offset)
+            val high = max(last, other.last)
+
+            if (low < offset || high > last) {
+                resize(low, high)
+            }
+
+            for (i in other.counts.indices) {
+                val c = other.counts[i]
+
+                if (c != 0L) {
+                    counts[max(other.offset + i, offset) - offset] += c
+                }
+            }
+
+            count += other.count
+        }
+
+        /**
+         * Extend the range to include the given index, with some room to grow in the same
+         * direction to avoid resizing on every new bin.
+         */
+        private fun extend(index: Int) {
+            var low = min(index, offset)
+            var high = max(index, last)
+            val pad = max(0, min(GROW_BINS, MAX_BINS - (high - low + 1)))
+
+            if (index < offset) {
+                low -= pad
+            } else {
+                high += pad
+            }
+
+            resize(low, high)
+        }
+
+        private fun resize(low: Int, high: Int) {
+            val newLow = max(low, high - MAX_BINS + 1)
+            val resized = LongArray(high - newLow + 1)
+
+            for (i in counts.indices) {
+                resized[max(offset + i, newLow) - newLow] += counts[i]
+            }
+
+            counts = resized
+            offset = newLow
+        }
+
+        fun writeTo(out: ByteArrayOutputStream) {
+            var first = 0
+            var end = counts.size
+
+            while (first < end && counts[first] == 0L) {
+                first++
+            }
+
+            while (end > first && counts[end - 1] == 0L) {
+                end--
+            }
+
+            writeVarLong(out, zigZag((offset + first).toLong()))
+            writeVarLong(out, (end - first).toLong())
+
+            for (i in first until end) {
+                writeVarLong(out, counts[i])
+            }
+        }
+
+        fun readFrom(buffer: ByteBuffer) {
+            val offset = unZigZag(readVarLong(buffer)).toInt()
+            val size = readVarLong(buffer).toInt()
+
+            if (size < 0 || size > MAX_BINS) {
+                throw IllegalArgumentException("illegal number of bins: $size")
+            }
+
+            if (size == 0) {
+                return
+            }
+
+            val counts = LongArray(size)
+            var count = 0L
+
+            for (i in 0 until size) {
+                counts[i] = readVarLong(buffer)
+                count += counts[i]
+            }
+
+            this.counts = counts
+            this.offset = offset
+            this.count = count
+        }
+    }
+
+    companion object {
+        const val VERSION = 1
+        const val MAX_BINS = 2048
+        private const val GROW_BINS = 32
+        private val EMPTY = LongArray(0)
+
+        @JvmStatic
+        fun deserialize(bytes: ByteArray): QuantileSketch {
+            val buffer = ByteBuffer.wrap(bytes)
+            val version = buffer.get().toInt()
+
+            if (version != VERSION) {
+                throw IllegalArgumentException("unsupported sketch version: $version")
+            }
+
+            val relativeAccuracy = java.lang.Double.longBitsToDouble(buffer.long)
+            val zeroCount = readVarLong(buffer)
+            val positive = Store()
+            val negative = Store()
+            positive.readFrom(buffer)
+            negative.readFrom(buffer)
+            return QuantileSketch(relativeAccuracy, positive, negative, zeroCount)
+        }
+
+        private fun writeLong(out: ByteArrayOutputStream, value: Long) {
+            for (shift in 56 downTo 0 step 8) {
+                out.write((value ushr shift).toInt() and 0xff)
+            }
+        }
+
+        private fun writeVarLong(out: ByteArrayOutputStream, value: Long) {
+            var v = value
+
+            while (v and 0x7fL.inv() != 0L) {
+                out.write(((v and 0x7f) or 0x80).toInt())
+                v = v ushr 7
+            }
+
+            out.write(v.toInt())
+        }
+
+        private fun readVarLong(buffer: ByteBuffer): Long {
+            var result = 0L
+            var shift = 0
+
+            while (shift < 64) {
+                val b = buffer.get().toInt()
+                result = result or ((b and 0x7f).toLong() shl shift)
+
+                if (b and 0x80 == 0) {
+                    return result
+                }
+
+                shift += 7
+            }
+
+            throw IllegalArgumentException("malformed varint")
+        }
+
+        private fun zigZag(value: Long): Long = (value shl 1) xor (value shr 63)
+
+        private fun unZigZag(value: Long): Long = (value ushr 1) xor -(value and 1)
+    }
+}
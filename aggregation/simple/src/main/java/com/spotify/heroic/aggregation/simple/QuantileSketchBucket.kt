@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2020 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.heroic.aggregation.simple
+
+import com.spotify.heroic.aggregation.AbstractBucket
+import com.spotify.heroic.metric.Payload
+import com.spotify.heroic.metric.Point
+
+/**
+ * Bucket that estimates quantiles using a [QuantileSketch].
+ *
+ * Accepts both points, and the serialized state of other sketches which are merged into this
+ * one.
+ */
+data class QuantileSketchBucket(
+    override val timestamp: Long,
+    val error: Double
+) : AbstractBucket() {
+    private val sketch = QuantileSketch(error)
+
+    @Synchronized
+    override fun updatePoint(key: Map<String, String>, sample: Point) {
+        sketch.add(sample.value)
+    }
+
+    override fun updatePayload(key: Map<String, String>, sample: Payload) {
+        val other = QuantileSketch.deserialize(sample.state)
+
+        synchronized(this) {
+            sketch.merge(other)
+        }
+    }
+
+    @Synchronized
+    fun isEmpty(): Boolean = sketch.count == 0L
+
+    @Synchronized
+    fun value(quantile: Double): Double = sketch.quantile(quantile)
+
+    @Synchronized
+    fun state(): ByteArray = sketch.serialize()
+}
@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2020 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.heroic.aggregation.simple
+
+/**
+ * Reduces the moments emitted by a distributed [StdDevInstance] into its standard deviation.
+ */
+data class ReduceStdDevInstance(
+    override val size: Long,
+    override val extent: Long
+) : MomentsInstance(size, extent) {
+    override fun value(moments: Moments): Double = Math.sqrt(moments.variance())
+
+    companion object {
+        const val NAME = "reduce-stddev"
+    }
+}
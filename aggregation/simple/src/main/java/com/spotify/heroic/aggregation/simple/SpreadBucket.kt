@@ -22,6 +22,7 @@
 package com.spotify.heroic.aggregation.simple
 
 import com.spotify.heroic.aggregation.AbstractBucket
+import com.spotify.heroic.aggregation.PrimitivePointBucket
 import com.spotify.heroic.metric.Metric
 import com.spotify.heroic.metric.Point
 import com.spotify.heroic.metric.Spread
@@ -39,7 +40,7 @@ import java.util.concurrent.atomic.LongAdder
  *
  * @author udoprog
  */
-data class SpreadBucket(override val timestamp: Long) : AbstractBucket() {
+data class SpreadBucket(override val timestamp: Long) : AbstractBucket(), PrimitivePointBucket {
 
     internal val count = LongAdder()
     internal val sum = DoubleAdder()
@@ -56,8 +57,10 @@ data class SpreadBucket(override val timestamp: Long) : AbstractBucket() {
     }
 
     override fun updatePoint(key: Map<String, String>, sample: Point) {
-        val value = sample.value
+        updatePoint(key, sample.timestamp, sample.value)
+    }
 
+    override fun updatePoint(key: Map<String, String>, timestamp: Long, value: Double) {
         if (!java.lang.Double.isFinite(value)) {
             return
         }
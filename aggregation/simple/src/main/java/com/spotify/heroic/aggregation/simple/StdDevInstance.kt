@@ -22,16 +22,31 @@
 package com.spotify.heroic.aggregation.simple
 
 import com.google.common.collect.ImmutableSet
+import com.spotify.heroic.aggregation.AggregationInstance
 import com.spotify.heroic.aggregation.BucketAggregationInstance
+import com.spotify.heroic.aggregation.PrimitiveBuckets
+import com.spotify.heroic.aggregation.PrimitiveBuckets.Combine
 import com.spotify.heroic.metric.Metric
 import com.spotify.heroic.metric.MetricType
 import com.spotify.heroic.metric.Point
+import com.spotify.heroic.metric.Spread
 
 data class StdDevInstance(
     override val size: Long,
     override val extent: Long
 ) : BucketAggregationInstance<StripedStdDevBucket>(size, extent, ImmutableSet.of(MetricType.POINT, MetricType.SPREAD), MetricType.POINT) {
 
+    /**
+     * Shards emit their moments, since the sum of squares loses precision when combined.
+     */
+    override fun distributed(): AggregationInstance {
+        return DistributedMomentsInstance(size, extent)
+    }
+
+    override fun reducer(): AggregationInstance {
+        return ReduceStdDevInstance(size, extent)
+    }
+
     override fun buildBucket(timestamp: Long): StripedStdDevBucket {
         return StripedStdDevBucket(timestamp)
     }
@@ -44,4 +59,38 @@ data class StdDevInstance(
         } else Point(bucket.timestamp, value)
 
     }
+
+    override fun primitiveBuckets(): PrimitiveBuckets = BUCKETS
+
+    companion object {
+        /* sum and squared sum of all seen values, and the number of values they represent */
+        private val BUCKETS = object : PrimitiveBuckets(arrayOf(Combine.SUM, Combine.SUM), 1) {
+            override fun updatePoint(d: DoubleArray, di: Int, l: LongArray, li: Int, value: Double) {
+                d[di] += value
+                d[di + 1] += value * value
+                l[li] += 1
+            }
+
+            override fun updateSpread(d: DoubleArray, di: Int, l: LongArray, li: Int, sample: Spread) {
+                d[di] += sample.sum
+                d[di + 1] += sample.sum2
+                l[li] += sample.count
+            }
+
+            override fun build(timestamp: Long, d: DoubleArray, di: Int, l: LongArray, li: Int): Metric {
+                val count = l[li]
+
+                if (count == 0L) {
+                    return Metric.invalid
+                }
+
+                val mean = d[di] / count
+                val value = Math.sqrt(d[di + 1] / count - mean * mean)
+
+                return if (java.lang.Double.isNaN(value)) {
+                    Metric.invalid
+                } else Point(timestamp, value)
+            }
+        }
+    }
 }
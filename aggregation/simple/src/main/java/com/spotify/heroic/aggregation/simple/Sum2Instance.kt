@@ -23,8 +23,12 @@ package com.spotify.heroic.aggregation.simple
 
 import com.google.common.collect.ImmutableSet
 import com.spotify.heroic.aggregation.AggregationInstance
+import com.spotify.heroic.aggregation.PrimitiveBuckets
+import com.spotify.heroic.aggregation.PrimitiveBuckets.Combine
+import com.spotify.heroic.metric.Metric
 import com.spotify.heroic.metric.MetricType
 import com.spotify.heroic.metric.Point
+import com.spotify.heroic.metric.Spread
 
 data class Sum2Instance(
     override val size: Long,
@@ -42,4 +46,25 @@ data class Sum2Instance(
     override fun distributed(): AggregationInstance {
         return this
     }
+
+    override fun primitiveBuckets(): PrimitiveBuckets = BUCKETS
+
+    companion object {
+        /* sum of all squared values, and the number of samples to tell if the sum is valid */
+        private val BUCKETS = object : PrimitiveBuckets(arrayOf(Combine.SUM), 1) {
+            override fun updatePoint(d: DoubleArray, di: Int, l: LongArray, li: Int, value: Double) {
+                d[di] += value * value
+                l[li] += 1
+            }
+
+            override fun updateSpread(d: DoubleArray, di: Int, l: LongArray, li: Int, sample: Spread) {
+                d[di] += sample.sum2
+                l[li] += 1
+            }
+
+            override fun build(timestamp: Long, d: DoubleArray, di: Int, l: LongArray, li: Int): Metric {
+                return Point(timestamp, if (l[li] == 0L) java.lang.Double.NaN else d[di])
+            }
+        }
+    }
 }
@@ -21,12 +21,19 @@
 
 package com.spotify.heroic.aggregation.simple
 
+import com.fasterxml.jackson.annotation.JsonInclude
 import com.spotify.heroic.ObjectHasher
 
-data class TopKInstance(val k: Long)
-    : FilterAggregation(FilterKAreaStrategy(FilterKAreaType.TOP, k)) {
+data class TopKInstance @JvmOverloads constructor(
+    val k: Long,
+    @get:JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    override val distributed: Boolean = false
+) : FilterAggregation(FilterKAreaStrategy(FilterKAreaType.TOP, k)) {
+
+    override fun undistributed() = copy(distributed = false)
 
     override fun filterHashTo(hasher: ObjectHasher) {
         hasher.putField("k", k, hasher.longValue())
+        hasher.putField("distributed", distributed, hasher.bool())
     }
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2019 Spotify AB.
+ * Copyright (c) 2020 Spotify AB.
  *
  * Licensed to the Apache Software Foundation (ASF) under one
  * or more contributor license agreements.  See the NOTICE file
@@ -19,8 +19,14 @@
  * under the License.
  */
 
-package com.spotify.heroic.suggest.memory
+package com.spotify.heroic.aggregation.simple
 
-import com.spotify.heroic.common.Series
-
-data class TagDocument(val id: TagId, val series: Series)
\ No newline at end of file
+/**
+ * Population variance of each bucket.
+ */
+data class VarianceInstance(
+    override val size: Long,
+    override val extent: Long
+) : MomentsInstance(size, extent) {
+    override fun value(moments: Moments): Double = moments.variance()
+}
@@ -3,6 +3,7 @@ package com.spotify.heroic.aggregation.simple;
 import static org.junit.Assert.assertEquals;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.BooleanNode;
 import com.spotify.heroic.aggregation.Aggregation;
 import com.spotify.heroic.aggregation.AggregationInstance;
 import com.spotify.heroic.test.FakeModuleLoader;
@@ -78,6 +79,20 @@ public class AggregationSerializationTest {
         assertEquals(expected, mapper.writeValueAsString(new TopKInstance(1)));
     }
 
+    @Test
+    public void testTopKDistributed() throws Exception {
+        final String json = m.jsonObject().put("type", TopK.NAME).put("k", 1)
+            .put("distributed", BooleanNode.TRUE).string();
+
+        assertEquals(new TopK(1, Optional.empty(), true),
+            mapper.readValue(json, Aggregation.class));
+        assertEquals(new TopKInstance(1, true), mapper.readValue(json, AggregationInstance.class));
+
+        final String expected = "{\"type\":\"topk\",\"k\":1,\"distributed\":true}";
+        assertEquals(expected, mapper.writeValueAsString(new TopK(1, Optional.empty(), true)));
+        assertEquals(expected, mapper.writeValueAsString(new TopKInstance(1, true)));
+    }
+
     @Test
     public void testMaxInstance() throws Exception {
         final String expected = "{\"type\":\"max\",\"size\":1,\"extent\":2}";
@@ -120,12 +135,38 @@ public class AggregationSerializationTest {
         assertSerializes(expected, new QuantileInstance(1, 2, 3.0, 4.0));
     }
 
+    @Test
+    public void testQuantileSketchInstance() throws Exception {
+        final String expected =
+            "{\"type\":\"quantile-sketch\",\"size\":1,\"extent\":2,\"q\":3.0,\"error\":4.0}";
+        assertSerializes(expected, new QuantileSketchInstance(1, 2, 3.0, 4.0));
+    }
+
+    @Test
+    public void testDistributedQuantileSketchInstance() throws Exception {
+        final String expected =
+            "{\"type\":\"distributed-quantile-sketch\",\"size\":1,\"extent\":2,\"error\":4.0}";
+        assertSerializes(expected, new DistributedQuantileSketchInstance(1, 2, 4.0));
+    }
+
     @Test
     public void testStdDevInstance() throws Exception {
         final String expected = "{\"type\":\"stddev\",\"size\":1,\"extent\":2}";
         assertSerializes(expected, new StdDevInstance(1, 2));
     }
 
+    @Test
+    public void testVarianceInstance() throws Exception {
+        final String expected = "{\"type\":\"variance\",\"size\":1,\"extent\":2}";
+        assertSerializes(expected, new VarianceInstance(1, 2));
+    }
+
+    @Test
+    public void testDistributedMomentsInstance() throws Exception {
+        final String expected = "{\"type\":\"distributed-moments\",\"size\":1,\"extent\":2}";
+        assertSerializes(expected, new DistributedMomentsInstance(1, 2));
+    }
+
     @Test
     public void testGroupUniqueInstance() throws Exception {
         final String expected = "{\"type\":\"group-unique\",\"size\":1,\"extent\":2}";
@@ -0,0 +1,174 @@
+package com.spotify.heroic.aggregation.simple;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.spotify.heroic.aggregation.AggregationInstance;
+import com.spotify.heroic.aggregation.AggregationOutput;
+import com.spotify.heroic.aggregation.AggregationSession;
+import com.spotify.heroic.aggregation.ChainInstance;
+import com.spotify.heroic.aggregation.EmptyInstance;
+import com.spotify.heroic.aggregation.GroupInstance;
+import com.spotify.heroic.common.DateRange;
+import com.spotify.heroic.common.Series;
+import com.spotify.heroic.metric.Point;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import org.junit.Test;
+
+public class FilterKDistributedTest {
+    private static final DateRange range = new DateRange(0, 10000);
+
+    private static final List<String> sites =
+        ImmutableList.of("sto", "ash", "lon", "sjc", "gew", "fra");
+
+    private final GroupInstance group =
+        new GroupInstance(Optional.of(ImmutableList.of("site")), new SumInstance(10, 10));
+
+    private static Series series(final String site) {
+        return Series.of("foo", ImmutableMap.of("site", site));
+    }
+
+    private static List<Point> points(final int index) {
+        return ImmutableList.of(new Point(1, index), new Point(2, index));
+    }
+
+    private static Set<Map<String, String>> keys(final List<AggregationOutput> outputs) {
+        final Set<Map<String, String>> keys = new HashSet<>();
+
+        for (final AggregationOutput output : outputs) {
+            keys.add(output.getKey());
+        }
+
+        return keys;
+    }
+
+    private List<AggregationOutput> local(final AggregationInstance instance) {
+        final AggregationSession session = instance.session(range);
+
+        for (int i = 0; i < sites.size(); i++) {
+            final Series s = series(sites.get(i));
+            session.updatePoints(s.getTags(), ImmutableSet.of(s), points(i));
+        }
+
+        return session.result().getResult();
+    }
+
+    /**
+     * Split the groups over two shards, which each complete their groups.
+     */
+    private List<AggregationOutput> shards(final AggregationInstance instance) {
+        final List<AggregationOutput> shipped = new ArrayList<>();
+
+        for (int shard = 0; shard < 2; shard++) {
+            final AggregationSession session = instance.distributed().session(range);
+
+            for (int i = shard; i < sites.size(); i += 2) {
+                final Series s = series(sites.get(i));
+                session.updatePoints(s.getTags(), ImmutableSet.of(s), points(i));
+            }
+
+            shipped.addAll(session.result().getResult());
+        }
+
+        return shipped;
+    }
+
+    private List<AggregationOutput> reduce(
+        final AggregationInstance instance, final List<AggregationOutput> shipped
+    ) {
+        final AggregationSession reducer = instance.reducer().session(range);
+
+        for (final AggregationOutput output : shipped) {
+            reducer.updatePoints(output.getKey(), output.getSeries(),
+                output.getMetrics().getDataAs(Point.class));
+        }
+
+        return reducer.result().getResult();
+    }
+
+    private void assertDistributes(final AggregationInstance filter, final int shipped) {
+        final AggregationInstance chain = ChainInstance.of(group, filter);
+
+        final List<AggregationOutput> sent = shards(chain);
+        /* the shards only ship their own winners */
+        assertEquals(shipped, sent.size());
+
+        final List<AggregationOutput> expected = local(chain);
+        final List<AggregationOutput> actual = reduce(chain, sent);
+
+        assertEquals(expected.size(), actual.size());
+        assertEquals(keys(expected), keys(actual));
+    }
+
+    @Test
+    public void testDistributedFilters() {
+        assertDistributes(new TopKInstance(2, true), 4);
+        assertDistributes(new BottomKInstance(2, true), 4);
+        assertDistributes(new AboveKInstance(5, true), 3);
+        assertDistributes(new BelowKInstance(5, true), 3);
+    }
+
+    @Test
+    public void testStructure() {
+        final AggregationInstance topk = new TopKInstance(2, true);
+        final AggregationInstance chain = ChainInstance.of(group, topk);
+
+        assertEquals(ChainInstance.of(group, topk), chain.distributed());
+        assertEquals(ChainInstance.of(EmptyInstance.INSTANCE, topk), chain.reducer());
+
+        /* without the flag, the filter is only applied by the coordinator */
+        final AggregationInstance plain = ChainInstance.of(group, new TopKInstance(2));
+        assertTrue(plain.distributed() instanceof GroupInstance);
+        assertTrue(plain.reducer() instanceof ChainInstance);
+    }
+
+    @Test
+    public void testWithoutDistributedFilter() {
+        final AggregationInstance topk = ChainInstance.of(group, new TopKInstance(2, true));
+        final AggregationInstance unfiltered = topk.withoutDistributedFilter();
+
+        assertEquals(ChainInstance.of(group, new TopKInstance(2)), unfiltered);
+        assertTrue(unfiltered.distributed() instanceof GroupInstance);
+
+        /* instances without filters on the shards are kept as they are */
+        assertSame(unfiltered, unfiltered.withoutDistributedFilter());
+        assertSame(group, group.withoutDistributedFilter());
+
+        final GroupInstance nested =
+            new GroupInstance(Optional.of(ImmutableList.of("site")), new BottomKInstance(2, true));
+        assertEquals(new BottomKInstance(2),
+            ((GroupInstance) nested.withoutDistributedFilter()).getEach());
+    }
+
+    @Test
+    public void testShardLocalGroups() {
+        final Set<String> bySite = ImmutableSet.of("site");
+        final Set<String> byRegion = ImmutableSet.of("region");
+
+        final AggregationInstance topk = ChainInstance.of(group, new TopKInstance(2, true));
+
+        assertTrue(topk.distributedValidFor(bySite));
+        /* groups of sites span shards partitioned on something else */
+        assertFalse(topk.distributedValidFor(byRegion));
+        assertFalse(topk.distributedValidFor(ImmutableSet.of("site", "region")));
+
+        final AggregationInstance all =
+            ChainInstance.of(new GroupInstance(Optional.empty(), new SumInstance(10, 10)),
+                new TopKInstance(2, true));
+        assertFalse(all.distributedValidFor(bySite));
+
+        /* filters which are only applied by the coordinator are always correct */
+        assertTrue(ChainInstance.of(group, new TopKInstance(2)).distributedValidFor(byRegion));
+        assertTrue(group.distributedValidFor(byRegion));
+    }
+}
@@ -0,0 +1,87 @@
+package com.spotify.heroic.aggregation.simple;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.spotify.heroic.aggregation.AggregationCombiner;
+import com.spotify.heroic.aggregation.AggregationInstance;
+import com.spotify.heroic.aggregation.AggregationOutput;
+import com.spotify.heroic.aggregation.AggregationSession;
+import com.spotify.heroic.aggregation.BucketStrategy;
+import com.spotify.heroic.aggregation.DistributedAggregationCombiner;
+import com.spotify.heroic.aggregation.GroupInstance;
+import com.spotify.heroic.common.DateRange;
+import com.spotify.heroic.common.Series;
+import com.spotify.heroic.metric.Point;
+import com.spotify.heroic.metric.ShardedResultGroup;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import org.junit.Test;
+
+public class MergedAttemptTest {
+    private static final DateRange range = new DateRange(0, 20);
+
+    private final AggregationInstance root =
+        new GroupInstance(Optional.of(ImmutableList.of("host")), new AverageInstance(10, 10));
+
+    private List<ShardedResultGroup> shard(final String site, final double... values) {
+        final AggregationSession session = root.distributed().session(range);
+
+        for (final String host : ImmutableList.of("a", "b")) {
+            final Series s = Series.of("foo", ImmutableMap.of("host", host, "site", site));
+            final List<Point> points = new ArrayList<>();
+
+            for (int i = 0; i < values.length; i++) {
+                points.add(new Point(i * 5L, values[i]));
+            }
+
+            session.updatePoints(s.getTags(), ImmutableSet.of(s), points);
+        }
+
+        final List<ShardedResultGroup> groups = new ArrayList<>();
+
+        for (final AggregationOutput out : session.result().getResult()) {
+            groups.add(new ShardedResultGroup(ImmutableMap.of("site", site), out.getKey(),
+                out.getSeries(), out.getMetrics(), root.cadence()));
+        }
+
+        return groups;
+    }
+
+    @Test
+    public void testMergesAttempts() {
+        assertTrue(root.reducer().mergeable());
+
+        final DistributedAggregationCombiner combiner =
+            DistributedAggregationCombiner.create(root, range, BucketStrategy.START);
+
+        final List<ShardedResultGroup> sto = shard("sto", 1, 2, 3, 4);
+        final List<ShardedResultGroup> lon = shard("lon", 10, 20);
+
+        final AggregationCombiner.Accumulator accumulator = combiner.accumulator(2);
+
+        final AggregationCombiner.Attempt first = accumulator.attempt(0);
+        sto.forEach(first::add);
+        first.merge();
+
+        /* a failed attempt is never merged */
+        final AggregationCombiner.Attempt failed = accumulator.attempt(1);
+        failed.add(shard("lon", 100).get(0));
+
+        final AggregationCombiner.Attempt retry = accumulator.attempt(1);
+        lon.forEach(retry::add);
+        retry.merge();
+
+        final List<ShardedResultGroup> result = accumulator.combine();
+        assertFalse(result.isEmpty());
+
+        assertEquals(new HashSet<>(combiner.combine(ImmutableList.of(sto, lon))),
+            new HashSet<>(result));
+    }
+}
@@ -0,0 +1,190 @@
+package com.spotify.heroic.aggregation.simple;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.spotify.heroic.aggregation.AggregationInstance;
+import com.spotify.heroic.aggregation.AggregationSession;
+import com.spotify.heroic.common.DateRange;
+import com.spotify.heroic.common.Series;
+import com.spotify.heroic.metric.Metric;
+import com.spotify.heroic.metric.Payload;
+import com.spotify.heroic.metric.Point;
+import com.spotify.heroic.metric.Spread;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+
+public class MomentsTest {
+    private static final double DELTA = 1e-9;
+
+    private static final Map<String, String> group = ImmutableMap.of();
+    private static final Set<Series> series = ImmutableSet.of();
+
+    /* two buckets, [0, 10) and [10, 20) */
+    private static final DateRange range = new DateRange(0, 20);
+
+    private static Moments of(final double... values) {
+        Moments moments = Moments.EMPTY;
+
+        for (final double value : values) {
+            moments = moments.add(value);
+        }
+
+        return moments;
+    }
+
+    @Test
+    public void testAdd() {
+        final Moments moments = of(1, 2, 3, 4);
+
+        assertEquals(4, moments.getCount());
+        assertEquals(2.5, moments.getMean(), DELTA);
+        assertEquals(1.25, moments.variance(), DELTA);
+    }
+
+    @Test
+    public void testMerge() {
+        final Moments merged = of(1, 2).merge(of(3, 4));
+
+        assertEquals(4, merged.getCount());
+        assertEquals(2.5, merged.getMean(), DELTA);
+        assertEquals(of(1, 2, 3, 4).getM2(), merged.getM2(), DELTA);
+
+        assertEquals(merged, merged.merge(Moments.EMPTY));
+        assertEquals(merged, Moments.EMPTY.merge(merged));
+    }
+
+    @Test
+    public void testLargeOffset() {
+        /* the sum of squares can not represent the variance of these */
+        final Moments moments = of(1e9 + 4, 1e9 + 7, 1e9 + 13, 1e9 + 16);
+        assertEquals(22.5, moments.variance(), DELTA);
+    }
+
+    @Test
+    public void testOfSpread() {
+        final Moments moments = Moments.ofSpread(4, 10, 30);
+
+        assertEquals(4, moments.getCount());
+        assertEquals(2.5, moments.getMean(), DELTA);
+        assertEquals(5, moments.getM2(), DELTA);
+        assertEquals(Moments.EMPTY, Moments.ofSpread(0, 0, 0));
+    }
+
+    @Test
+    public void testSerialize() {
+        final Moments moments = of(1, 2, 3, 4);
+        assertEquals(moments, Moments.deserialize(moments.serialize()));
+    }
+
+    @Test
+    public void testVariance() {
+        final AggregationSession session = new VarianceInstance(10, 10).session(range);
+        session.updatePoints(group, series,
+            ImmutableList.of(new Point(1, 1D), new Point(2, 2D), new Point(3, 3D),
+                new Point(4, Double.NaN)));
+        session.updateSpreads(group, series,
+            ImmutableList.of(new Spread(12, 2, 4D, 10D, 1D, 3D)));
+
+        assertEquals(ImmutableList.of(new Point(0, 2D / 3), new Point(10, 1D)),
+            session.result().getResult().get(0).getMetrics().data());
+    }
+
+    @Test
+    public void testDistributedStdDev() {
+        assertDistributed(new StdDevInstance(10, 10));
+    }
+
+    @Test
+    public void testDistributedVariance() {
+        assertDistributed(new VarianceInstance(10, 10));
+    }
+
+    private void assertDistributed(final AggregationInstance instance) {
+        final Random random = new Random(0x42);
+        final List<List<Point>> shards = new ArrayList<>();
+
+        for (int s = 0; s < 4; s++) {
+            final List<Point> points = new ArrayList<>();
+
+            for (int i = 0; i < 1000; i++) {
+                points.add(new Point(i % 20, random.nextGaussian() * (s + 1) + s));
+            }
+
+            shards.add(points);
+        }
+
+        final AggregationSession local = instance.session(range);
+        final AggregationSession reducer = instance.reducer().session(range);
+
+        for (final List<Point> points : shards) {
+            local.updatePoints(group, series, points);
+
+            final AggregationSession shard = instance.distributed().session(range);
+            shard.updatePoints(group, series, points);
+
+            reducer.updatePayload(group, series, shard
+                .result()
+                .getResult()
+                .get(0)
+                .getMetrics()
+                .getDataAs(Payload.class));
+        }
+
+        final List<? extends Metric> expected =
+            local.result().getResult().get(0).getMetrics().data();
+        final List<? extends Metric> actual =
+            reducer.result().getResult().get(0).getMetrics().data();
+
+        assertEquals(expected.size(), actual.size());
+
+        for (int i = 0; i < expected.size(); i++) {
+            final Point e = (Point) expected.get(i);
+            final Point a = (Point) actual.get(i);
+            assertEquals(e.getTimestamp(), a.getTimestamp());
+            assertEquals(e.getValue(), a.getValue(), DELTA);
+        }
+    }
+
+    @Test
+    public void testBucketConcurrentUpdates() throws Exception {
+        final MomentsBucket bucket = new MomentsBucket(0);
+        final List<Thread> threads = new ArrayList<>();
+        Moments expected = Moments.EMPTY;
+
+        for (int t = 0; t < 4; t++) {
+            final int offset = t * 1000;
+
+            for (int i = 0; i < 1000; i++) {
+                expected = expected.add(offset + i);
+            }
+
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    bucket.updatePoint(group, 0L, offset + i);
+                }
+            }));
+        }
+
+        for (final Thread thread : threads) {
+            thread.start();
+        }
+
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        bucket.updatePoint(group, new Point(0L, Double.NaN));
+
+        final Moments moments = bucket.value();
+        assertEquals(expected.getCount(), moments.getCount());
+        assertEquals(expected.getMean(), moments.getMean(), DELTA);
+        assertEquals(expected.variance(), moments.variance(), 1e-6);
+    }
+}
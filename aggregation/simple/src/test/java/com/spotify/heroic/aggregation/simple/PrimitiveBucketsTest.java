@@ -0,0 +1,204 @@
+package com.spotify.heroic.aggregation.simple;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.spotify.heroic.aggregation.AggregationInstance;
+import com.spotify.heroic.aggregation.AggregationSession;
+import com.spotify.heroic.aggregation.BucketStrategy;
+import com.spotify.heroic.aggregation.RetainQuotaWatcher;
+import com.spotify.heroic.common.DateRange;
+import com.spotify.heroic.common.Series;
+import com.spotify.heroic.metric.Metric;
+import com.spotify.heroic.metric.MetricCollection;
+import com.spotify.heroic.metric.Point;
+import com.spotify.heroic.metric.Spread;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+
+public class PrimitiveBucketsTest {
+    private static final Map<String, String> group = ImmutableMap.of();
+    private static final Set<Series> series = ImmutableSet.of();
+
+    /* two buckets, [0, 10) and [10, 20) */
+    private static final DateRange range = new DateRange(0, 20);
+
+    private static final List<Point> points =
+        ImmutableList.of(new Point(1, 1D), new Point(2, 2D), new Point(3, 3D),
+            new Point(4, Double.NaN));
+
+    private List<? extends Metric> pointsResult(final AggregationInstance instance) {
+        final AggregationSession session = instance.session(range);
+        session.updatePoints(group, series, points);
+        return session.result().getResult().get(0).getMetrics().data();
+    }
+
+    private List<? extends Metric> columnsResult(final AggregationInstance instance) {
+        final AggregationSession session = instance.session(range);
+        session.updatePointColumns(group, series,
+            MetricCollection.ColumnarPointCollection.create(new long[]{1, 2, 3, 4},
+                new double[]{1D, 2D, 3D, Double.NaN}, 4));
+        return session.result().getResult().get(0).getMetrics().data();
+    }
+
+    private void assertPoints(
+        final List<Point> expected, final AggregationInstance instance
+    ) {
+        assertEquals(expected, pointsResult(instance));
+        assertEquals(expected, columnsResult(instance));
+    }
+
+    @Test
+    public void testPoints() {
+        assertPoints(ImmutableList.of(new Point(0, 6D)), new SumInstance(10, 10));
+        assertPoints(ImmutableList.of(new Point(0, 14D)), new Sum2Instance(10, 10));
+        assertPoints(ImmutableList.of(new Point(0, 2D)), new AverageInstance(10, 10));
+        assertPoints(ImmutableList.of(new Point(0, 1D)), new MinInstance(10, 10));
+        assertPoints(ImmutableList.of(new Point(0, 3D)), new MaxInstance(10, 10));
+        assertPoints(ImmutableList.of(new Point(0, Math.sqrt(14D / 3 - 4))),
+            new StdDevInstance(10, 10));
+        assertPoints(ImmutableList.of(new Point(0, 3D), new Point(10, 0D)),
+            new CountInstance(10, 10));
+    }
+
+    @Test
+    public void testSpreads() {
+        final List<Spread> spreads = ImmutableList.of(new Spread(1, 2, 4D, 10D, 1D, 3D),
+            new Spread(12, 1, -1D, 1D, -1D, -1D));
+
+        final List<AggregationInstance> instances =
+            ImmutableList.of(new SumInstance(10, 10), new AverageInstance(10, 10),
+                new MinInstance(10, 10), new MaxInstance(10, 10), new StdDevInstance(10, 10));
+
+        final List<List<? extends Metric>> results = new ArrayList<>();
+
+        for (final AggregationInstance instance : instances) {
+            final AggregationSession session = instance.session(range);
+            session.updateSpreads(group, series, spreads);
+            results.add(session.result().getResult().get(0).getMetrics().data());
+        }
+
+        assertEquals(ImmutableList.of(ImmutableList.of(new Point(0, 4D), new Point(10, -1D)),
+            ImmutableList.of(new Point(0, 2D), new Point(10, -1D)),
+            ImmutableList.of(new Point(0, 1D), new Point(10, -1D)),
+            ImmutableList.of(new Point(0, 3D), new Point(10, -1D)),
+            ImmutableList.of(new Point(0, 1D), new Point(10, 0D))), results);
+    }
+
+    @Test(timeout = 10000)
+    public void testConcurrentWriters() throws Exception {
+        final int threads = 8;
+        final int iterations = 100;
+
+        final AggregationSession sum = new SumInstance(10, 10).session(range);
+        final AggregationSession min = new MinInstance(10, 10).session(range);
+        final AggregationSession count = new CountInstance(10, 10).session(range);
+
+        final ExecutorService service = Executors.newFixedThreadPool(threads);
+
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+
+            for (int t = 0; t < threads; t++) {
+                final double offset = t;
+
+                futures.add(service.submit(() -> {
+                    for (int i = 0; i < iterations; i++) {
+                        final List<Point> batch =
+                            ImmutableList.of(new Point(5, 1D), new Point(15, offset));
+
+                        sum.updatePoints(group, series, batch);
+                        min.updatePoints(group, series, batch);
+                        count.updatePoints(group, series, batch);
+                    }
+                }));
+            }
+
+            for (final Future<?> f : futures) {
+                f.get();
+            }
+        } finally {
+            service.shutdownNow();
+        }
+
+        /* 0 + 1 + ... + 7 in the second bucket */
+        assertEquals(ImmutableList.of(new Point(0, threads * iterations),
+            new Point(10, 28D * iterations)), sum.result().getResult().get(0).getMetrics().data());
+        assertEquals(ImmutableList.of(new Point(0, 1D), new Point(10, 0D)),
+            min.result().getResult().get(0).getMetrics().data());
+        assertEquals(ImmutableList.of(new Point(0, threads * iterations),
+                new Point(10, threads * iterations)),
+            count.result().getResult().get(0).getMetrics().data());
+        assertEquals(Long.valueOf(threads * iterations * 2),
+            count.result().getStatistics().getCounters().get(AggregationInstance.SAMPLE_SIZE));
+    }
+
+    @Test(timeout = 10000)
+    public void testRetainsEveryPartial() throws Exception {
+        final AtomicLong retained = new AtomicLong();
+        final RetainQuotaWatcher watcher = mock(RetainQuotaWatcher.class);
+        doAnswer(invocation -> retained.addAndGet(invocation.getArgument(0)))
+            .when(watcher)
+            .retainData(anyLong());
+
+        final AggregationSession session =
+            new SumInstance(10, 10).session(range, watcher, BucketStrategy.START);
+        assertEquals(2L, retained.get());
+
+        /* a writer which holds its partial until it is released */
+        final CountDownLatch reading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        final List<Point> blocking = new AbstractList<Point>() {
+            @Override
+            public Point get(final int index) {
+                reading.countDown();
+
+                try {
+                    release.await();
+                } catch (final InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+
+                return points.get(index);
+            }
+
+            @Override
+            public int size() {
+                return points.size();
+            }
+        };
+
+        final Thread writer = new Thread(() -> session.updatePoints(group, series, blocking));
+        writer.start();
+        reading.await();
+
+        /* a concurrent writer allocates and retains another partial */
+        session.updatePoints(group, series, points);
+        assertEquals(4L, retained.get());
+
+        /* the idle partial is reused */
+        session.updatePoints(group, series, points);
+        assertEquals(4L, retained.get());
+
+        release.countDown();
+        writer.join();
+
+        assertEquals(ImmutableList.of(new Point(0, 18D)),
+            session.result().getResult().get(0).getMetrics().data());
+    }
+}
@@ -0,0 +1,157 @@
+package com.spotify.heroic.aggregation.simple;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.spotify.heroic.aggregation.AggregationInstance;
+import com.spotify.heroic.aggregation.AggregationSession;
+import com.spotify.heroic.common.DateRange;
+import com.spotify.heroic.common.Series;
+import com.spotify.heroic.metric.Payload;
+import com.spotify.heroic.metric.Point;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+
+public class QuantileSketchTest {
+    private static final double ERROR = 0.01;
+
+    private static final Map<String, String> group = ImmutableMap.of();
+    private static final Set<Series> series = ImmutableSet.of();
+
+    private static void assertRelative(final double expected, final double actual) {
+        assertEquals(expected, actual, Math.abs(expected) * ERROR);
+    }
+
+    @Test
+    public void testEmpty() {
+        final QuantileSketch sketch = new QuantileSketch(ERROR);
+        assertTrue(Double.isNaN(sketch.quantile(0.5)));
+    }
+
+    @Test
+    public void testQuantiles() {
+        final QuantileSketch sketch = new QuantileSketch(ERROR);
+
+        for (int i = 1; i <= 10000; i++) {
+            sketch.add(i);
+        }
+
+        assertEquals(10000, sketch.getCount());
+        assertRelative(1, sketch.quantile(0));
+        assertRelative(1000, sketch.quantile(0.1));
+        assertRelative(5000, sketch.quantile(0.5));
+        assertRelative(9900, sketch.quantile(0.99));
+        assertRelative(10000, sketch.quantile(1));
+    }
+
+    @Test
+    public void testNegativeAndZero() {
+        final QuantileSketch sketch = new QuantileSketch(ERROR);
+
+        for (int i = -100; i <= 100; i++) {
+            sketch.add(i);
+        }
+
+        sketch.add(Double.NaN);
+
+        assertEquals(201, sketch.getCount());
+        assertRelative(-100, sketch.quantile(0));
+        assertRelative(-50, sketch.quantile(0.25));
+        assertEquals(0D, sketch.quantile(0.5), 0D);
+        assertRelative(50, sketch.quantile(0.75));
+    }
+
+    @Test
+    public void testMerge() {
+        final Random random = new Random(0x1234);
+
+        final QuantileSketch all = new QuantileSketch(ERROR);
+        final QuantileSketch a = new QuantileSketch(ERROR);
+        final QuantileSketch b = new QuantileSketch(ERROR);
+
+        for (int i = 0; i < 10000; i++) {
+            final double value = Math.exp(random.nextGaussian() * 3);
+            all.add(value);
+            (i % 2 == 0 ? a : b).add(value);
+        }
+
+        a.merge(b);
+
+        assertArrayEquals(all.serialize(), a.serialize());
+    }
+
+    @Test
+    public void testSerialize() {
+        final QuantileSketch sketch = new QuantileSketch(ERROR);
+
+        for (int i = -1000; i <= 1000; i += 3) {
+            sketch.add(i * 0.5);
+        }
+
+        final QuantileSketch copy = QuantileSketch.deserialize(sketch.serialize());
+
+        assertEquals(sketch.getCount(), copy.getCount());
+
+        for (final double q : new double[]{0, 0.1, 0.5, 0.9, 1}) {
+            assertEquals(sketch.quantile(q), copy.quantile(q), 0D);
+        }
+    }
+
+    @Test
+    public void testBoundedBins() {
+        final QuantileSketch sketch = new QuantileSketch(ERROR);
+
+        /* spans far more bins than are retained, the highest values stay accurate */
+        for (int i = -300; i <= 300; i++) {
+            sketch.add(Math.pow(10, i));
+        }
+
+        assertRelative(1e300, sketch.quantile(1));
+        assertRelative(1e290, sketch.quantile(590D / 600));
+        assertTrue(sketch.serialize().length < QuantileSketch.MAX_BINS * 2 + 64);
+    }
+
+    @Test
+    public void testDistributed() {
+        final DateRange range = new DateRange(0, 20);
+        final QuantileSketchInstance instance = new QuantileSketchInstance(10, 10, 0.9, ERROR);
+
+        final List<Point> first = new ArrayList<>();
+        final List<Point> second = new ArrayList<>();
+
+        for (int i = 0; i < 1000; i++) {
+            first.add(new Point(i % 20, i));
+            second.add(new Point(i % 20, -i));
+        }
+
+        final AggregationSession local = instance.session(range);
+        local.updatePoints(group, series, first);
+        local.updatePoints(group, series, second);
+
+        final AggregationInstance distributed = instance.distributed();
+        final AggregationSession reducer = instance.reducer().session(range);
+
+        for (final List<Point> points : ImmutableList.of(first, second)) {
+            final AggregationSession shard = distributed.session(range);
+            shard.updatePoints(group, series, points);
+
+            reducer.updatePayload(group, series, shard
+                .result()
+                .getResult()
+                .get(0)
+                .getMetrics()
+                .getDataAs(Payload.class));
+        }
+
+        assertEquals(local.result().getResult().get(0).getMetrics().data(),
+            reducer.result().getResult().get(0).getMetrics().data());
+    }
+}
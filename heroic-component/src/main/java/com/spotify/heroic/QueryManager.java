@@ -30,6 +30,7 @@ import com.spotify.heroic.metadata.FindSeries;
 import com.spotify.heroic.metadata.FindTags;
 import com.spotify.heroic.metadata.WriteMetadata;
 import com.spotify.heroic.metric.QueryResult;
+import com.spotify.heroic.metric.ShardedResultGroup;
 import com.spotify.heroic.metric.WriteMetric;
 import com.spotify.heroic.querylogging.QueryContext;
 import com.spotify.heroic.suggest.KeySuggest;
@@ -40,6 +41,7 @@ import com.spotify.heroic.suggest.TagValuesSuggest;
 import eu.toolchain.async.AsyncFuture;
 import io.opencensus.trace.Span;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface QueryManager extends UsableGroupManager<QueryManager.Group> {
     QueryBuilder newQueryFromString(String query);
@@ -49,6 +51,19 @@ public interface QueryManager extends UsableGroupManager<QueryManager.Group> {
 
         AsyncFuture<QueryResult> query(Query query, QueryContext queryContext, Span parentSpan);
 
+        /**
+         * Run a query, and hand result groups to the given consumer as soon as they are final,
+         * instead of keeping them in the returned result.
+         * <p>
+         * Groups are only handed out early by queries which are not distributed, and whose
+         * results are not cached. Every other group is part of the returned result as usual, so
+         * the caller has to handle both. The consumer might be called concurrently.
+         */
+        AsyncFuture<QueryResult> query(
+            Query query, QueryContext queryContext, Span parentSpan,
+            Consumer<ShardedResultGroup> groups
+        );
+
         AsyncFuture<FindTags> findTags(final FindTags.Request request);
 
         AsyncFuture<FindKeys> findKeys(final FindKeys.Request request);
@@ -24,11 +24,97 @@ package com.spotify.heroic.aggregation;
 import com.google.common.collect.ImmutableList;
 import com.spotify.heroic.metric.ShardedResultGroup;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public interface AggregationCombiner {
     List<ShardedResultGroup> combine(List<List<ShardedResultGroup>> all);
 
+    /**
+     * Create an accumulator, which combines groups as they are received from the given number of
+     * parts.
+     * <p>
+     * The default accumulator keeps every group until it is combined.
+     */
+    default Accumulator accumulator(final int parts) {
+        final List<List<ShardedResultGroup>> all = new ArrayList<>(parts);
+
+        for (int i = 0; i < parts; i++) {
+            all.add(new ArrayList<>());
+        }
+
+        return new Accumulator() {
+            @Override
+            public synchronized void add(final int part, final ShardedResultGroup group) {
+                all.get(part).add(group);
+            }
+
+            @Override
+            public synchronized List<ShardedResultGroup> combine() {
+                return AggregationCombiner.this.combine(all);
+            }
+        };
+    }
+
+    /**
+     * Combines groups incrementally.
+     * <p>
+     * Groups may be added concurrently.
+     */
+    interface Accumulator {
+        /**
+         * Add a group which was received from the given part.
+         */
+        void add(int part, ShardedResultGroup group);
+
+        /**
+         * Combine all added groups.
+         */
+        List<ShardedResultGroup> combine();
+
+        /**
+         * Start an attempt at receiving the groups of the given part. Groups added to the attempt
+         * only become part of this accumulator once the attempt is merged, and are dropped if it
+         * never is.
+         * <p>
+         * The default attempt keeps its groups until it is merged.
+         */
+        default Attempt attempt(final int part) {
+            final List<ShardedResultGroup> groups = new ArrayList<>();
+
+            return new Attempt() {
+                @Override
+                public synchronized void add(final ShardedResultGroup group) {
+                    groups.add(group);
+                }
+
+                @Override
+                public synchronized void merge() {
+                    for (final ShardedResultGroup group : groups) {
+                        Accumulator.this.add(part, group);
+                    }
+
+                    groups.clear();
+                }
+            };
+        }
+    }
+
+    /**
+     * A single attempt at receiving the groups of a part.
+     */
+    interface Attempt {
+        /**
+         * Add a group which was received by this attempt.
+         */
+        void add(ShardedResultGroup group);
+
+        /**
+         * Add everything this attempt has received to the accumulator it was started by.
+         */
+        void merge();
+    }
+
     AggregationCombiner DEFAULT = new AggregationCombiner() {
         @Override
         public List<ShardedResultGroup> combine(
@@ -24,6 +24,7 @@ package com.spotify.heroic.aggregation;
 import com.google.common.collect.ImmutableSet;
 import com.spotify.heroic.ObjectHasher;
 import com.spotify.heroic.common.DateRange;
+import java.util.Optional;
 import java.util.Set;
 
 /**
@@ -120,6 +121,77 @@ public interface AggregationInstance {
         return true;
     }
 
+    /**
+     * An aggregation which may be applied on each shard in front of this one, when this is not
+     * distributable.
+     * <p>
+     * The aggregation preceding this one is then completed on each shard instead of being
+     * reduced, and this one is still applied to the combined result. This is used to reduce the
+     * number of groups sent to the coordinator, when each group is known to be complete on one
+     * shard.
+     *
+     * @return The aggregation to apply on each shard, if any.
+     */
+    default Optional<AggregationInstance> distributedFilter() {
+        return Optional.empty();
+    }
+
+    /**
+     * This aggregation without any {@link #distributedFilter()}, so that groups are only filtered
+     * once they have been combined by the coordinator.
+     * <p>
+     * This is used when the series of the queried groups turn out to not be partitioned on the
+     * tags of the shards that hold them.
+     *
+     * @return This instance if it applies no filter on the shards, otherwise a copy which doesn't.
+     */
+    default AggregationInstance withoutDistributedFilter() {
+        return this;
+    }
+
+    /**
+     * Indicates if every group produced by this aggregation only holds series from one shard.
+     * <p>
+     * Shards are expected to hold the series with different values for the given tags, so this
+     * holds when every group is keyed on all of them.
+     *
+     * @param shardTags The tags which the cluster is sharded on.
+     */
+    default boolean shardLocal(Set<String> shardTags) {
+        return false;
+    }
+
+    /**
+     * Indicates if the distributed form of this aggregation produces the correct result for a
+     * cluster sharded on the given tags.
+     * <p>
+     * This only fails to hold when a {@link #distributedFilter()} is applied on each shard to
+     * groups which are not {@link #shardLocal(Set) shard local}, since the filter then only sees
+     * a part of such groups.
+     *
+     * @param shardTags The tags which the cluster is sharded on.
+     */
+    default boolean distributedValidFor(Set<String> shardTags) {
+        return true;
+    }
+
+    /**
+     * Indicates if the result over adjacent ranges aligned to the cadence can be computed
+     * separately and concatenated, because every output sample only depends on input within its
+     * own bucket.
+     */
+    default boolean sliceable() {
+        return false;
+    }
+
+    /**
+     * Indicates if sessions of this aggregation can be combined with
+     * {@link AggregationSession#merge(AggregationSession)}.
+     */
+    default boolean mergeable() {
+        return false;
+    }
+
     /**
      * Hash the aggregation to generate a key suitable for caching.
      */
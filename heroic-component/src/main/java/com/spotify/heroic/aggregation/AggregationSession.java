@@ -22,6 +22,7 @@
 package com.spotify.heroic.aggregation;
 
 import com.spotify.heroic.common.Series;
+import com.spotify.heroic.metric.MetricCollection;
 import com.spotify.heroic.metric.Payload;
 import com.spotify.heroic.metric.MetricGroup;
 import com.spotify.heroic.metric.Point;
@@ -34,12 +35,36 @@ import java.util.Set;
 public interface AggregationSession {
     void updatePoints(Map<String, String> key, Set<Series> series, List<Point> values);
 
+    /**
+     * Update the session with points stored in primitive columns.
+     * <p>
+     * Sessions that can consume the columns without materializing points should override this.
+     */
+    default void updatePointColumns(
+        Map<String, String> key, Set<Series> series,
+        MetricCollection.ColumnarPointCollection values
+    ) {
+        updatePoints(key, series, values.data());
+    }
+
     void updateSpreads(Map<String, String> key, Set<Series> series, List<Spread> values);
 
     void updateGroup(Map<String, String> key, Set<Series> series, List<MetricGroup> values);
 
     void updatePayload(Map<String, String> key, Set<Series> series, List<Payload> values);
 
+    /**
+     * Merge another session of the same aggregation over the same range into this one, as if
+     * this session had received every update of the other. The other session must not be used
+     * afterwards.
+     * <p>
+     * Only supported by sessions of aggregations which are
+     * {@link AggregationInstance#mergeable() mergeable}.
+     */
+    default void merge(AggregationSession other) {
+        throw new UnsupportedOperationException("Session can not be merged: " + this);
+    }
+
     /**
      * Get the result of this aggregator.
      */
@@ -33,6 +33,7 @@ import com.spotify.heroic.common.Statistics
 import com.spotify.heroic.metric.*
 import java.util.*
 import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.atomic.AtomicInteger
 import java.util.concurrent.atomic.LongAdder
 
 /**
@@ -56,6 +57,7 @@ abstract class BucketAggregationInstance<B : Bucket>(
     inner class Session(val mapping: Mapping, val buckets: List<B>) : AggregationSession {
         val series: ConcurrentLinkedQueue<Set<Series>> = ConcurrentLinkedQueue()
         private val sampleSize: LongAdder = LongAdder()
+        private val primitive: Boolean = buckets.all { it is PrimitivePointBucket }
 
         override fun updatePoints(
             key: Map<String, String>, s: Set<Series>, values: List<Point>
@@ -65,6 +67,47 @@ abstract class BucketAggregationInstance<B : Bucket>(
                 { bucket, m -> bucket.updatePoint(key, m as Point) })
         }
 
+        override fun updatePointColumns(
+            key: Map<String, String>,
+            s: Set<Series>,
+            values: MetricCollection.ColumnarPointCollection
+        ) {
+            series.add(s)
+
+            if (!input.contains(MetricType.POINT)) {
+                return
+            }
+
+            var sampleSize = 0
+
+            for (index in 0 until values.size()) {
+                val value = values.getValue(index)
+
+                if (!value.isFinite()) {
+                    continue
+                }
+
+                val timestamp = values.getTimestamp(index)
+                val startEnd = mapping.map(timestamp)
+
+                if (primitive) {
+                    for (i in startEnd.start until startEnd.end) {
+                        (buckets[i] as PrimitivePointBucket).updatePoint(key, timestamp, value)
+                    }
+                } else if (startEnd.start < startEnd.end) {
+                    val point = Point(timestamp, value)
+
+                    for (i in startEnd.start until startEnd.end) {
+                        buckets[i].updatePoint(key, point)
+                    }
+                }
+
+                sampleSize += 1
+            }
+
+            this.sampleSize.add(sampleSize.toLong())
+        }
+
         override fun updateSpreads(
             key: Map<String, String>, s: Set<Series>, values: List<Spread>
         ) {
@@ -99,7 +142,11 @@ abstract class BucketAggregationInstance<B : Bucket>(
 
             var sampleSize = 0
 
-            for (m in values.filter { it.valid() }) {
+            for (m in values) {
+                if (!m.valid()) {
+                    continue
+                }
+
                 val startEnd = mapping.map(m.timestamp)
 
                 for (i in startEnd.start until startEnd.end) {
@@ -135,6 +182,204 @@ abstract class BucketAggregationInstance<B : Bucket>(
         }
     }
 
+    /**
+     * A session that stores all of its buckets in the primitive arrays described by [layout].
+     *
+     * Every call to one of the update methods checks out a [PrimitiveBuckets.Columns] that no
+     * other writer is using, or allocates a new one if all are busy, so the number of partial
+     * arrays is bounded by the number of threads concurrently feeding the session. They are all
+     * combined into the first partial when the result is built, so that building the result does
+     * not allocate buckets which are not accounted for.
+     *
+     * The buckets of the first partial are retained when the session is set up, every further
+     * partial retains as many buckets again through [quotaWatcher].
+     */
+    inner class PrimitiveSession(
+        val mapping: Mapping,
+        private val layout: PrimitiveBuckets,
+        private val quotaWatcher: RetainQuotaWatcher
+    ) : AggregationSession {
+        val series: ConcurrentLinkedQueue<Set<Series>> = ConcurrentLinkedQueue()
+        private val sampleSize: LongAdder = LongAdder()
+        private val allocated: AtomicInteger = AtomicInteger()
+        private val partials: ConcurrentLinkedQueue<PrimitiveBuckets.Columns> =
+            ConcurrentLinkedQueue()
+        private val idle: ConcurrentLinkedQueue<PrimitiveBuckets.Columns> =
+            ConcurrentLinkedQueue()
+
+        override fun updatePoints(
+            key: Map<String, String>, s: Set<Series>, values: List<Point>
+        ) {
+            series.add(s)
+            feed(MetricType.POINT, values) { columns, i, m -> columns.updatePoint(i, m.value) }
+        }
+
+        override fun updatePointColumns(
+            key: Map<String, String>,
+            s: Set<Series>,
+            values: MetricCollection.ColumnarPointCollection
+        ) {
+            series.add(s)
+
+            if (!input.contains(MetricType.POINT)) {
+                return
+            }
+
+            val columns = acquire()
+            var sampleSize = 0
+
+            try {
+                for (index in 0 until values.size()) {
+                    val value = values.getValue(index)
+
+                    if (!value.isFinite()) {
+                        continue
+                    }
+
+                    val startEnd = mapping.map(values.getTimestamp(index))
+
+                    for (i in startEnd.start until startEnd.end) {
+                        columns.updatePoint(i, value)
+                    }
+
+                    sampleSize += 1
+                }
+            } finally {
+                idle.add(columns)
+            }
+
+            this.sampleSize.add(sampleSize.toLong())
+        }
+
+        override fun updateSpreads(
+            key: Map<String, String>, s: Set<Series>, values: List<Spread>
+        ) {
+            series.add(s)
+            feed(MetricType.SPREAD, values) { columns, i, m -> columns.updateSpread(i, m) }
+        }
+
+        override fun updateGroup(
+            key: Map<String, String>, s: Set<Series>, values: List<MetricGroup>
+        ) {
+            series.add(s)
+            feed(MetricType.GROUP, values) { columns, i, m -> columns.update(i, m) }
+        }
+
+        override fun updatePayload(
+            key: Map<String, String>, s: Set<Series>, values: List<Payload>
+        ) {
+            series.add(s)
+            feed(MetricType.CARDINALITY, values) { columns, i, m -> columns.update(i, m) }
+        }
+
+        private inline fun <T : Metric> feed(
+            type: MetricType,
+            values: List<T>,
+            consumer: (PrimitiveBuckets.Columns, Int, T) -> Unit
+        ) {
+            if (!input.contains(type)) {
+                return
+            }
+
+            val columns = acquire()
+            var sampleSize = 0
+
+            try {
+                for (m in values) {
+                    if (!m.valid()) {
+                        continue
+                    }
+
+                    val startEnd = mapping.map(m.timestamp)
+
+                    for (i in startEnd.start until startEnd.end) {
+                        consumer(columns, i, m)
+                    }
+
+                    sampleSize += 1
+                }
+            } finally {
+                idle.add(columns)
+            }
+
+            this.sampleSize.add(sampleSize.toLong())
+        }
+
+        private fun acquire(): PrimitiveBuckets.Columns {
+            val columns = idle.poll()
+
+            if (columns != null) {
+                return columns
+            }
+
+            if (allocated.getAndIncrement() > 0) {
+                quotaWatcher.retainData(mapping.buckets().toLong())
+            }
+
+            return layout.columns(mapping.buckets()).also { partials.add(it) }
+        }
+
+        /**
+         * Takes over the partials of the other session, which are combined with the partials of
+         * this one when the result is built.
+         */
+        override fun merge(other: AggregationSession) {
+            if (other !is BucketAggregationInstance<*>.PrimitiveSession ||
+                other.layout !== layout || other.mapping.buckets() != mapping.buckets() ||
+                other.mapping.start() != mapping.start()) {
+                throw IllegalArgumentException("Can not merge $other into $this")
+            }
+
+            series.addAll(other.series)
+            sampleSize.add(other.sampleSize.sum())
+            allocated.addAndGet(other.allocated.get())
+
+            for (columns in other.partials) {
+                partials.add(columns)
+                idle.add(columns)
+            }
+        }
+
+        override fun result(): AggregationResult {
+            val iterator = partials.iterator()
+
+            /* the buckets of the first partial were retained when the session was set up */
+            val columns = if (iterator.hasNext()) {
+                iterator.next()
+            } else {
+                layout.columns(mapping.buckets())
+            }
+
+            while (iterator.hasNext()) {
+                columns.merge(iterator.next())
+            }
+
+            /* only keep the combined partial, in case the result is built again */
+            partials.clear()
+            partials.add(columns)
+
+            val result = ArrayList<Metric>(columns.buckets)
+
+            for (i in 0 until columns.buckets) {
+                val d = columns.build(i, mapping.start() + size * i)
+
+                if (!d.valid()) {
+                    continue
+                }
+
+                result.add(d)
+            }
+
+            val series = ImmutableSet.copyOf(Iterables.concat(this.series))
+            val metrics = MetricCollection.build(out, result)
+
+            val statistics = Statistics(ImmutableMap.of(AggregationInstance.SAMPLE_SIZE, sampleSize.sum()))
+
+            val d = AggregationOutput(EMPTY_KEY, series, metrics)
+            return AggregationResult(ImmutableList.of(d), statistics)
+        }
+    }
+
     override fun estimate(original: DateRange): Long {
         return if (size == 0L) {
             0
@@ -142,13 +387,29 @@ abstract class BucketAggregationInstance<B : Bucket>(
 
     }
 
+    /**
+     * Buckets which do not overlap only see the data within themselves.
+     */
+    override fun sliceable(): Boolean = size == extent
+
+    /**
+     * Sessions whose buckets are stored in primitive arrays can be merged.
+     */
+    override fun mergeable(): Boolean = primitiveBuckets() != null
+
     override fun session(
         range: DateRange, quotaWatcher: RetainQuotaWatcher, bucketStrategy: BucketStrategy
-    ): Session {
+    ): AggregationSession {
         val mapping = bucketStrategy.setup(range, size, extent)
-        val buckets = buildBuckets(mapping)
-        quotaWatcher.retainData(buckets.size.toLong())
-        return Session(mapping, buckets)
+        quotaWatcher.retainData(mapping.buckets().toLong())
+
+        val layout = primitiveBuckets()
+
+        if (layout != null) {
+            return PrimitiveSession(mapping, layout, quotaWatcher)
+        }
+
+        return Session(mapping, buildBuckets(mapping))
     }
 
     override fun distributed(): AggregationInstance {
@@ -183,6 +444,13 @@ abstract class BucketAggregationInstance<B : Bucket>(
         return buckets
     }
 
+    /**
+     * Layout to use for storing all buckets of a session in primitive arrays.
+     *
+     * When this returns non-null, sessions never call [buildBucket] or [build].
+     */
+    protected open fun primitiveBuckets(): PrimitiveBuckets? = null
+
     protected abstract fun buildBucket(timestamp: Long): B
 
     protected abstract fun build(bucket: B): Metric
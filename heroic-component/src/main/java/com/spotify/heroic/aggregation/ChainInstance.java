@@ -28,6 +28,7 @@ import com.spotify.heroic.ObjectHasher;
 import com.spotify.heroic.common.DateRange;
 import com.spotify.heroic.common.Series;
 import com.spotify.heroic.common.Statistics;
+import com.spotify.heroic.metric.MetricCollection;
 import com.spotify.heroic.metric.MetricGroup;
 import com.spotify.heroic.metric.Payload;
 import com.spotify.heroic.metric.Point;
@@ -37,6 +38,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
 
 /**
@@ -80,14 +82,22 @@ public class ChainInstance implements AggregationInstance {
         AggregationInstance last = it.next();
 
         if (!last.distributable()) {
-            return EmptyInstance.INSTANCE;
+            return last.distributedFilter().orElse(EmptyInstance.INSTANCE);
         }
 
         while (it.hasNext()) {
             final AggregationInstance next = it.next();
 
             if (!next.distributable()) {
-                chain.add(last.distributed());
+                final Optional<AggregationInstance> filter = next.distributedFilter();
+
+                if (filter.isPresent()) {
+                    chain.add(last);
+                    chain.add(filter.get());
+                } else {
+                    chain.add(last.distributed());
+                }
+
                 return fromList(chain.build());
             }
 
@@ -99,6 +109,50 @@ public class ChainInstance implements AggregationInstance {
         return fromList(chain.build());
     }
 
+    @Override
+    public AggregationInstance withoutDistributedFilter() {
+        final List<AggregationInstance> unfiltered = new ArrayList<>(chain.size());
+        boolean changed = false;
+
+        for (final AggregationInstance a : chain) {
+            final AggregationInstance u = a.withoutDistributedFilter();
+            changed = changed || u != a;
+            unfiltered.add(u);
+        }
+
+        return changed ? new ChainInstance(unfiltered) : this;
+    }
+
+    /**
+     * A filter which is applied on each shard sees the groups of the aggregation in front of it,
+     * so those have to be shard local.
+     */
+    @Override
+    public boolean distributedValidFor(final Set<String> shardTags) {
+        final Iterator<AggregationInstance> it = chain.iterator();
+        AggregationInstance last = it.next();
+
+        if (!last.distributable()) {
+            return last.distributedValidFor(shardTags);
+        }
+
+        while (it.hasNext()) {
+            final AggregationInstance next = it.next();
+
+            if (!next.distributable()) {
+                return !next.distributedFilter().isPresent() || last.shardLocal(shardTags);
+            }
+
+            if (!last.distributedValidFor(shardTags)) {
+                return false;
+            }
+
+            last = next;
+        }
+
+        return last.distributedValidFor(shardTags);
+    }
+
     @Override
     public AggregationInstance reducer() {
         final Iterator<AggregationInstance> it = chain.iterator();
@@ -121,7 +175,13 @@ public class ChainInstance implements AggregationInstance {
             final AggregationInstance next = it.next();
 
             if (!next.distributable()) {
-                chain.add(last.reducer());
+                /* the shards have already completed the last aggregation, if they filtered */
+                if (next.distributedFilter().isPresent()) {
+                    chain.add(EmptyInstance.INSTANCE);
+                } else {
+                    chain.add(last.reducer());
+                }
+
                 chain.add(next);
 
                 while (it.hasNext()) {
@@ -137,6 +197,37 @@ public class ChainInstance implements AggregationInstance {
         return last.reducer();
     }
 
+    /**
+     * Every step has to be sliceable, and buckets of earlier steps must not cross the boundaries
+     * of later ones.
+     */
+    @Override
+    public boolean sliceable() {
+        final long cadence = cadence();
+
+        for (final AggregationInstance a : chain) {
+            if (!a.sliceable()) {
+                return false;
+            }
+
+            final long c = a.cadence();
+
+            if (c > 0 && (cadence <= 0 || cadence % c != 0)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Only the first aggregation in the chain is updated before the result is built.
+     */
+    @Override
+    public boolean mergeable() {
+        return chain.get(0).mergeable();
+    }
+
     @Override
     public AggregationSession session(
         final DateRange range, final RetainQuotaWatcher watcher, final BucketStrategy bucketStrategy
@@ -253,6 +344,14 @@ public class ChainInstance implements AggregationInstance {
             first.updatePoints(key, series, values);
         }
 
+        @Override
+        public void updatePointColumns(
+            Map<String, String> key, Set<Series> series,
+            MetricCollection.ColumnarPointCollection values
+        ) {
+            first.updatePointColumns(key, series, values);
+        }
+
         @Override
         public void updateSpreads(
             Map<String, String> key, Set<Series> series, List<Spread> values
@@ -274,6 +373,15 @@ public class ChainInstance implements AggregationInstance {
             first.updatePayload(key, series, values);
         }
 
+        @Override
+        public void merge(final AggregationSession other) {
+            if (!(other instanceof Session)) {
+                throw new IllegalArgumentException("Can not merge " + other + " into " + this);
+            }
+
+            first.merge(((Session) other).first);
+        }
+
         @Override
         public AggregationResult result() {
             final AggregationResult firstResult = first.result();
@@ -72,7 +72,21 @@ public class DistributedAggregationCombiner implements AggregationCombiner {
             }
         }
 
-        /* build results from every reducer group into a final result */
+        return build(session);
+    }
+
+    /**
+     * Feed every group to the reducer session as soon as it is added, so that groups do not have
+     * to be kept until all parts have been received.
+     */
+    @Override
+    public Accumulator accumulator(final int parts) {
+        return new ReducingAccumulator(
+            reducer.session(range, RetainQuotaWatcher.NO_QUOTA, bucketStrategy));
+    }
+
+    /* build results from every reducer group into a final result */
+    private List<ShardedResultGroup> build(final AggregationSession session) {
         final ImmutableList.Builder<ShardedResultGroup> groups = ImmutableList.builder();
 
         final AggregationResult result = session.result();
@@ -84,4 +98,51 @@ public class DistributedAggregationCombiner implements AggregationCombiner {
 
         return groups.build();
     }
+
+    private class ReducingAccumulator implements Accumulator {
+        private final AggregationSession session;
+
+        private ReducingAccumulator(final AggregationSession session) {
+            this.session = session;
+        }
+
+        @Override
+        public synchronized void add(final int part, final ShardedResultGroup g) {
+            g.getMetrics().updateAggregation(session, g.getKey(), g.getSeries());
+        }
+
+        @Override
+        public synchronized List<ShardedResultGroup> combine() {
+            return build(session);
+        }
+
+        /**
+         * Every attempt feeds its groups to a reducer session of its own as they are received,
+         * which is merged into this one once the attempt succeeds. If sessions of the reducer can
+         * not be merged, the groups of an attempt are kept until then instead.
+         */
+        @Override
+        public Attempt attempt(final int part) {
+            if (!reducer.mergeable()) {
+                return Accumulator.super.attempt(part);
+            }
+
+            final AggregationSession attempt =
+                reducer.session(range, RetainQuotaWatcher.NO_QUOTA, bucketStrategy);
+
+            return new Attempt() {
+                @Override
+                public void add(final ShardedResultGroup g) {
+                    g.getMetrics().updateAggregation(attempt, g.getKey(), g.getSeries());
+                }
+
+                @Override
+                public void merge() {
+                    synchronized (ReducingAccumulator.this) {
+                        session.merge(attempt);
+                    }
+                }
+            };
+        }
+    }
 }
@@ -64,6 +64,19 @@ public class EmptyInstance implements AggregationInstance {
         return this;
     }
 
+    /**
+     * Raw data for adjacent ranges can always be concatenated.
+     */
+    @Override
+    public boolean sliceable() {
+        return true;
+    }
+
+    @Override
+    public boolean mergeable() {
+        return true;
+    }
+
     @Override
     public void hashTo(final ObjectHasher hasher) {
         hasher.putObject(getClass());
@@ -139,6 +152,18 @@ public class EmptyInstance implements AggregationInstance {
             }
         }
 
+        @Override
+        public void merge(final AggregationSession other) {
+            if (!(other instanceof CollectorSession)) {
+                throw new IllegalArgumentException("Can not merge " + other + " into " + this);
+            }
+
+            for (final Map.Entry<Map<String, String>, SubSession> e :
+                ((CollectorSession) other).sessions.entrySet()) {
+                session(e.getKey()).merge(e.getValue());
+            }
+        }
+
         @Override
         public AggregationResult result() {
             final ImmutableList.Builder<AggregationOutput> groups = ImmutableList.builder();
@@ -205,6 +230,11 @@ public class EmptyInstance implements AggregationInstance {
         public boolean isEmpty() {
             return data.isEmpty();
         }
+
+        void merge(final SessionPair<T> other) {
+            series.addAll(other.series);
+            data.addAll(other.data);
+        }
     }
 
     static class SubSession {
@@ -212,5 +242,12 @@ public class EmptyInstance implements AggregationInstance {
         private final SessionPair<Spread> spreads = new SessionPair<>();
         private final SessionPair<MetricGroup> groups = new SessionPair<>();
         private final SessionPair<Payload> cardinality = new SessionPair<>();
+
+        void merge(final SubSession other) {
+            points.merge(other.points);
+            spreads.merge(other.spreads);
+            groups.merge(other.groups);
+            cardinality.merge(other.cardinality);
+        }
     }
 }
@@ -29,6 +29,7 @@ import com.spotify.heroic.ObjectHasher;
 import com.spotify.heroic.common.DateRange;
 import com.spotify.heroic.common.Series;
 import com.spotify.heroic.common.Statistics;
+import com.spotify.heroic.metric.MetricCollection;
 import com.spotify.heroic.metric.MetricGroup;
 import com.spotify.heroic.metric.Payload;
 import com.spotify.heroic.metric.Point;
@@ -103,6 +104,32 @@ public abstract class GroupingAggregation implements AggregationInstance {
         return newInstance(of, each.reducer());
     }
 
+    @Override
+    public boolean sliceable() {
+        return each.sliceable();
+    }
+
+    @Override
+    public boolean mergeable() {
+        return each.mergeable();
+    }
+
+    @Override
+    public AggregationInstance withoutDistributedFilter() {
+        final AggregationInstance unfiltered = each.withoutDistributedFilter();
+        return unfiltered == each ? this : newInstance(of, unfiltered);
+    }
+
+    @Override
+    public boolean shardLocal(final Set<String> shardTags) {
+        return of.map(tags -> tags.containsAll(shardTags)).orElse(false);
+    }
+
+    @Override
+    public boolean distributedValidFor(final Set<String> shardTags) {
+        return shardLocal(shardTags) || each.distributedValidFor(shardTags);
+    }
+
     @Override
     public void hashTo(final ObjectHasher hasher) {
         hasher.putObject(getClass(), () -> {
@@ -139,6 +166,15 @@ public abstract class GroupingAggregation implements AggregationInstance {
             session(key).updatePoints(key, series, values);
         }
 
+        @Override
+        public void updatePointColumns(
+            Map<String, String> group, Set<Series> series,
+            MetricCollection.ColumnarPointCollection values
+        ) {
+            final Map<String, String> key = key(group);
+            session(key).updatePointColumns(key, series, values);
+        }
+
         @Override
         public void updateSpreads(
             Map<String, String> group, Set<Series> series, List<Spread> values
@@ -204,6 +240,27 @@ public abstract class GroupingAggregation implements AggregationInstance {
             return new AggregationResult(result.build(), statistics);
         }
 
+        /**
+         * Sessions of groups which are only present in the other session are taken over as they
+         * are.
+         */
+        @Override
+        public void merge(final AggregationSession other) {
+            if (!(other instanceof GroupSession)) {
+                throw new IllegalArgumentException("Can not merge " + other + " into " + this);
+            }
+
+            for (final Map.Entry<Map<String, String>, AggregationSession> e :
+                ((GroupSession) other).sessions.entrySet()) {
+                final AggregationSession existing =
+                    sessions.putIfAbsent(e.getKey(), e.getValue());
+
+                if (existing != null) {
+                    existing.merge(e.getValue());
+                }
+            }
+        }
+
         public String toString() {
             return "GroupingAggregation.GroupSession(sessions=" + this.sessions + ", lock="
                    + this.lock
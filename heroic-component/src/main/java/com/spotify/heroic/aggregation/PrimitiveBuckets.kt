@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2020 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.heroic.aggregation
+
+import com.spotify.heroic.metric.Metric
+import com.spotify.heroic.metric.Spread
+
+/**
+ * Describes a bucket aggregation whose buckets can all be stored in contiguous primitive arrays
+ * instead of one bucket object per slot.
+ *
+ * Each bucket owns [doubles].size consecutive entries in a double array and [longs] consecutive
+ * entries in a long array. Sessions hand every concurrent writer its own [Columns] and combine
+ * them column by column when the result is built, so updates need neither atomics nor
+ * per-sample allocation.
+ *
+ * Implementations are stateless and are expected to be shared between sessions.
+ */
+abstract class PrimitiveBuckets(
+    /* how each double column is combined, also defines the number of double columns */
+    private val doubles: Array<Combine>,
+    /* the number of long columns, these are always combined by summing */
+    private val longs: Int
+) {
+    /**
+     * How partial values of a double column are combined.
+     */
+    enum class Combine(val identity: Double) {
+        SUM(0.0), MIN(Double.POSITIVE_INFINITY), MAX(Double.NEGATIVE_INFINITY);
+
+        fun apply(a: Double, b: Double): Double = when (this) {
+            SUM -> a + b
+            MIN -> Math.min(a, b)
+            MAX -> Math.max(a, b)
+        }
+    }
+
+    /**
+     * The values of all buckets in a session, as seen by a single writer.
+     */
+    inner class Columns(val buckets: Int) {
+        val doubles = DoubleArray(buckets * this@PrimitiveBuckets.doubles.size)
+        val longs = LongArray(buckets * this@PrimitiveBuckets.longs)
+
+        init {
+            val width = this@PrimitiveBuckets.doubles.size
+
+            for ((c, combine) in this@PrimitiveBuckets.doubles.withIndex()) {
+                if (combine.identity == 0.0) {
+                    continue
+                }
+
+                for (i in 0 until buckets) {
+                    doubles[i * width + c] = combine.identity
+                }
+            }
+        }
+
+        fun updatePoint(bucket: Int, value: Double) {
+            updatePoint(doubles, doubleOffset(bucket), longs, longOffset(bucket), value)
+        }
+
+        fun updateSpread(bucket: Int, sample: Spread) {
+            updateSpread(doubles, doubleOffset(bucket), longs, longOffset(bucket), sample)
+        }
+
+        fun update(bucket: Int, sample: Metric) {
+            update(doubles, doubleOffset(bucket), longs, longOffset(bucket), sample)
+        }
+
+        fun build(bucket: Int, timestamp: Long): Metric {
+            return build(timestamp, doubles, doubleOffset(bucket), longs, longOffset(bucket))
+        }
+
+        /**
+         * Combine the values of another writer into this one.
+         */
+        fun merge(other: Columns) {
+            val width = this@PrimitiveBuckets.doubles.size
+
+            for ((c, combine) in this@PrimitiveBuckets.doubles.withIndex()) {
+                var i = c
+
+                while (i < doubles.size) {
+                    doubles[i] = combine.apply(doubles[i], other.doubles[i])
+                    i += width
+                }
+            }
+
+            for (i in longs.indices) {
+                longs[i] += other.longs[i]
+            }
+        }
+    }
+
+    fun columns(buckets: Int): Columns = Columns(buckets)
+
+    private fun doubleOffset(bucket: Int) = bucket * doubles.size
+
+    private fun longOffset(bucket: Int) = bucket * longs
+
+    /**
+     * Update a single bucket, starting at [di] in [d] and [li] in [l], with a point value.
+     */
+    abstract fun updatePoint(d: DoubleArray, di: Int, l: LongArray, li: Int, value: Double)
+
+    /**
+     * Update a single bucket with a spread.
+     */
+    open fun updateSpread(d: DoubleArray, di: Int, l: LongArray, li: Int, sample: Spread) {}
+
+    /**
+     * Update a single bucket with any other kind of metric, such as groups or payloads.
+     */
+    open fun update(d: DoubleArray, di: Int, l: LongArray, li: Int, sample: Metric) {}
+
+    /**
+     * Build the resulting metric for a single, fully combined, bucket.
+     */
+    abstract fun build(timestamp: Long, d: DoubleArray, di: Int, l: LongArray, li: Int): Metric
+}
@@ -25,10 +25,27 @@ import com.spotify.heroic.metric.FullQuery;
 import com.spotify.heroic.metric.QueryResult;
 import eu.toolchain.async.AsyncFuture;
 
-import java.util.function.Supplier;
+import java.util.function.Function;
 
 public interface QueryCache {
+    /**
+     * Load the result of a request, possibly from the cache.
+     *
+     * @param request request to load
+     * @param loader loads the result of a request. Caches may call it with the given request, or
+     * with copies of it covering parts of its range.
+     */
     AsyncFuture<QueryResult> load(
-        FullQuery.Request request, Supplier<AsyncFuture<QueryResult>> loader
+        FullQuery.Request request, Function<FullQuery.Request, AsyncFuture<QueryResult>> loader
     );
+
+    /**
+     * If the cache keeps the results it loads.
+     * <p>
+     * The groups of a result can only be handed out before the result is complete when the cache
+     * passes the result of the loader through untouched, and does not keep it.
+     */
+    default boolean retainsResults() {
+        return true;
+    }
 }
@@ -26,6 +26,8 @@ import com.spotify.heroic.metric.RuntimeNodeException;
 import com.spotify.heroic.statistics.QueryReporter;
 import eu.toolchain.async.AsyncFramework;
 import eu.toolchain.async.AsyncFuture;
+import eu.toolchain.async.FutureDone;
+import eu.toolchain.async.ResolvableFuture;
 import eu.toolchain.async.RetryException;
 import eu.toolchain.async.RetryPolicy;
 import java.util.ArrayList;
@@ -34,8 +36,12 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiFunction;
+import java.util.function.BooleanSupplier;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -48,17 +54,23 @@ public class ClusterShard {
     private final Map<String, String> shard;
     private final QueryReporter reporter;
     private final ClusterManager cluster;
+    private final NodeSelectionStrategy selection;
+    private final Optional<RequestHedging> hedging;
 
     public ClusterShard(
         AsyncFramework async,
         Map<String, String> shard,
         QueryReporter reporter,
-        ClusterManager cluster
+        ClusterManager cluster,
+        NodeSelectionStrategy selection,
+        Optional<RequestHedging> hedging
     ) {
         this.async = async;
         this.shard = shard;
         this.reporter = reporter;
         this.cluster = cluster;
+        this.selection = selection;
+        this.hedging = hedging;
     }
 
     public Map<String, String> getShard() {
@@ -68,6 +80,29 @@ public class ClusterShard {
     public <T> AsyncFuture<T> apply(
         Function<ClusterNode.Group, AsyncFuture<T>> function,
         BiFunction<T, List<QueryTrace>, T> handleRetryTraceFn
+    ) {
+        return apply(function, handleRetryTraceFn, false);
+    }
+
+    /**
+     * Same as {@link #apply(Function, BiFunction)}, but hedges each attempt if request hedging is
+     * configured.
+     * <p>
+     * If an attempt has not completed within the hedge delay of the shard, a duplicate request is
+     * sent to another node in the shard. The first successful response is used and the other
+     * request is cancelled. Only use this for requests that are safe to perform twice.
+     */
+    public <T> AsyncFuture<T> applyHedged(
+        Function<ClusterNode.Group, AsyncFuture<T>> function,
+        BiFunction<T, List<QueryTrace>, T> handleRetryTraceFn
+    ) {
+        return apply(function, handleRetryTraceFn, true);
+    }
+
+    private <T> AsyncFuture<T> apply(
+        Function<ClusterNode.Group, AsyncFuture<T>> function,
+        BiFunction<T, List<QueryTrace>, T> handleRetryTraceFn,
+        boolean hedged
     ) {
         final List<ClusterNode> nodesTried = Collections.synchronizedList(new ArrayList<>());
 
@@ -92,33 +127,184 @@ public class ClusterShard {
 
         return async
             .retryUntilResolved(() -> {
-                Optional<ClusterManager.NodeResult<AsyncFuture<T>>> ret =
-                    cluster.withNodeInShardButNotWithId(shard, nodesTried::contains,
-                        nodesTried::add, function);
-                if (!ret.isPresent()) {
-                    throw new RuntimeException("No groups available");
+                if (hedged && hedging.isPresent()) {
+                    final OptionalLong delay = hedging.get().delay(shard);
+
+                    if (delay.isPresent()) {
+                        return hedge(function, nodesTried, hedging.get(), delay.getAsLong());
+                    }
                 }
-                ClusterManager.NodeResult<AsyncFuture<T>> result = ret.get();
-
-                return result.getReturnValue().catchFailed(throwable -> {
-                    reporter.reportClusterNodeRpcError();
-                    /* Actually never return;s, instead throws a new exception with added info.
-                     * The point is to get Node identifying information into the exception */
-                    throw new RuntimeNodeException(result.getNode().toString(),
-                        throwable.getMessage(), throwable);
-                }).catchCancelled(ignore -> {
-                    reporter.reportClusterNodeRpcCancellation();
-                    /* In case of the future being cancelled, we should note it as a node exception
-                     * and try with the next node in the shard.
-                     * It seems like we can get cancellations when there are network issues. */
-                    throw new RuntimeNodeException(result.getNode().toString(),
-                        "Operation cancelled");
-                });
+
+                return dispatch(function, nodesTried, () -> false);
             }, iteratorPolicy)
             .directTransform(retryResult -> handleRetryTraceFn.apply(retryResult.getResult(),
                 queryTracesFromRetries(retryResult.getErrors(), retryResult.getBackoffTimings())));
     }
 
+    /**
+     * Send the request to one node in the shard, and another one if the first has not completed
+     * after the given delay.
+     */
+    private <T> AsyncFuture<T> hedge(
+        final Function<ClusterNode.Group, AsyncFuture<T>> function,
+        final List<ClusterNode> nodesTried, final RequestHedging hedging, final long delay
+    ) {
+        final ResolvableFuture<T> result = async.future();
+        final List<AsyncFuture<T>> requests = Collections.synchronizedList(new ArrayList<>());
+
+        /* number of requests that have not yet completed, the attempt fails when all have failed */
+        final AtomicInteger pending = new AtomicInteger(1);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+
+        final AsyncFuture<T> first = dispatch(function, nodesTried, result::isDone);
+        requests.add(first);
+        first.onDone(hedgeDone(result, requests, first, pending, error, false));
+
+        hedging.schedule(delay, () -> {
+            if (result.isDone() || !cluster.hasNextButNotWithId(shard, nodesTried::contains)) {
+                return;
+            }
+
+            int current;
+
+            do {
+                current = pending.get();
+
+                /* every request already failed */
+                if (current == 0) {
+                    return;
+                }
+            } while (!pending.compareAndSet(current, current + 1));
+
+            final AsyncFuture<T> second;
+
+            try {
+                second = dispatch(function, nodesTried, result::isDone);
+            } catch (final RuntimeException e) {
+                /* the shard ran out of nodes after the check above */
+                error.compareAndSet(null, e);
+
+                if (pending.decrementAndGet() == 0) {
+                    result.fail(error.get());
+                }
+
+                return;
+            }
+
+            reporter.reportClusterHedgedRequest(shard);
+            requests.add(second);
+            second.onDone(hedgeDone(result, requests, second, pending, error, true));
+
+            /* lost the race to the first request while being dispatched */
+            if (result.isDone()) {
+                second.cancel();
+            }
+        });
+
+        result.onCancelled(() -> cancelAll(requests, null));
+        return result;
+    }
+
+    private <T> FutureDone<T> hedgeDone(
+        final ResolvableFuture<T> result, final List<AsyncFuture<T>> requests,
+        final AsyncFuture<T> self, final AtomicInteger pending,
+        final AtomicReference<Throwable> error, final boolean isHedge
+    ) {
+        return new FutureDone<T>() {
+            @Override
+            public void failed(final Throwable cause) {
+                error.compareAndSet(null, cause);
+
+                if (pending.decrementAndGet() == 0) {
+                    result.fail(error.get());
+                }
+            }
+
+            @Override
+            public void resolved(final T value) {
+                if (!result.resolve(value)) {
+                    return;
+                }
+
+                if (isHedge) {
+                    reporter.reportClusterHedgeWin(shard);
+                }
+
+                cancelAll(requests, self);
+            }
+
+            @Override
+            public void cancelled() {
+                if (pending.decrementAndGet() == 0) {
+                    result.cancel();
+                }
+            }
+        };
+    }
+
+    private <T> void cancelAll(final List<AsyncFuture<T>> requests, final AsyncFuture<T> except) {
+        final List<AsyncFuture<T>> copy;
+
+        synchronized (requests) {
+            copy = new ArrayList<>(requests);
+        }
+
+        for (final AsyncFuture<T> request : copy) {
+            if (request != except) {
+                request.cancel();
+            }
+        }
+    }
+
+    /**
+     * Apply the function on a node in the shard that has not already been tried.
+     *
+     * @param abandoned indicates that the outcome of the request is no longer of interest, in
+     * which case a cancellation is expected and should not be reported
+     */
+    private <T> AsyncFuture<T> dispatch(
+        final Function<ClusterNode.Group, AsyncFuture<T>> function,
+        final List<ClusterNode> nodesTried, final BooleanSupplier abandoned
+    ) {
+        Optional<ClusterManager.NodeResult<AsyncFuture<T>>> ret =
+            cluster.withNodeInShardButNotWithId(shard, nodesTried::contains, nodesTried::add,
+                function);
+        if (!ret.isPresent()) {
+            throw new RuntimeException("No groups available");
+        }
+        ClusterManager.NodeResult<AsyncFuture<T>> result = ret.get();
+
+        final ClusterNode node = result.getNode();
+        final long start = System.nanoTime();
+        selection.requestStarted(node);
+
+        final AsyncFuture<T> future = result.getReturnValue();
+        future
+            .onResolved(value -> selection.requestFinished(node, System.nanoTime() - start))
+            .onCancelled(() -> selection.requestCancelled(node))
+            .onFailed(cause -> selection.requestFailed(node, System.nanoTime() - start));
+
+        hedging.ifPresent(h -> future.onResolved(value -> h.record(shard,
+            TimeUnit.MILLISECONDS.convert(System.nanoTime() - start, TimeUnit.NANOSECONDS))));
+
+        return future.catchFailed(throwable -> {
+            reporter.reportClusterNodeRpcError();
+            /* Actually never return;s, instead throws a new exception with added info.
+             * The point is to get Node identifying information into the exception */
+            throw new RuntimeNodeException(result.getNode().toString(),
+                throwable.getMessage(), throwable);
+        }).catchCancelled(ignore -> {
+            if (!abandoned.getAsBoolean()) {
+                reporter.reportClusterNodeRpcCancellation();
+            }
+            /* In case of the future being cancelled, we should note it as a node exception
+             * and try with the next node in the shard.
+             * It seems like we can get cancellations when there are network issues. */
+            throw new RuntimeNodeException(result.getNode().toString(),
+                "Operation cancelled");
+        });
+    }
+
     public List<String> getNodesAsStringList() {
         final List<String> nodes = cluster
             .getNodesForShard(shard)
@@ -21,15 +21,29 @@
 
 package com.spotify.heroic.cluster
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties
+import com.fasterxml.jackson.annotation.JsonInclude
 import com.spotify.heroic.common.ServiceInfo
 import java.util.*
 
-data class NodeMetadata(
+@JsonIgnoreProperties(ignoreUnknown = true)
+data class NodeMetadata @JvmOverloads constructor(
     val version: Int,
     val id: UUID?,
     val tags: Map<String, String?>?,
-    val service: ServiceInfo?
+    val service: ServiceInfo?,
+    /**
+     * Optional features that the node supports over the protocol that the metadata was fetched
+     * with. Nodes that do not know about a capability will not use it.
+     */
+    @get:JsonInclude(JsonInclude.Include.NON_EMPTY)
+    val capabilities: Set<String> = emptySet()
 ) {
+    fun hasCapability(capability: String): Boolean = capabilities.contains(capability)
+
+    fun withCapability(capability: String): NodeMetadata =
+        copy(capabilities = capabilities + capability)
+
     /**
      * Checks if both the given tags and capability matches.
      */
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2020 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.heroic.cluster;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Decides which node in a shard a request should be sent to.
+ * <p>
+ * Strategies are fed the outcome of every request dispatched through a {@link ClusterShard},
+ * which allows them to prefer nodes that have recently been fast.
+ */
+public interface NodeSelectionStrategy {
+    /**
+     * Select one node among the given candidates.
+     *
+     * @param candidates live nodes that are suitable for the request, never modified
+     * @return the selected node, or empty if there are no candidates
+     */
+    Optional<ClusterNode> select(List<ClusterNode> candidates);
+
+    /**
+     * Called when a request has been dispatched to the given node.
+     */
+    default void requestStarted(ClusterNode node) {
+    }
+
+    /**
+     * Called when a request to the given node has finished without failing.
+     *
+     * @param node node that the request was sent to
+     * @param elapsedNanos time from dispatch until completion
+     */
+    default void requestFinished(ClusterNode node, long elapsedNanos) {
+    }
+
+    /**
+     * Called when a request to the given node has failed.
+     * <p>
+     * By default a failed request is treated like any other finished request.
+     *
+     * @param node node that the request was sent to
+     * @param elapsedNanos time from dispatch until failure
+     */
+    default void requestFailed(ClusterNode node, long elapsedNanos) {
+        requestFinished(node, elapsedNanos);
+    }
+
+    /**
+     * Called when a request to the given node was cancelled before it completed, for example
+     * because a hedged request to another node completed first.
+     * <p>
+     * A cancelled request says nothing about the latency of the node, so it only stops counting
+     * as in flight.
+     *
+     * @param node node that the request was sent to
+     */
+    default void requestCancelled(ClusterNode node) {
+    }
+
+    /**
+     * Called when the set of known nodes has been refreshed, allowing the strategy to discard
+     * state for nodes that are no longer part of the cluster.
+     */
+    default void retain(Collection<ClusterNode> nodes) {
+    }
+}
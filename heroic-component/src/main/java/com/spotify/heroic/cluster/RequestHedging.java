@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2020 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.heroic.cluster;
+
+import com.spotify.heroic.scheduler.Scheduler;
+import com.spotify.heroic.scheduler.Task;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Configuration and state for hedged requests.
+ * <p>
+ * A hedged request is a duplicate request sent to another node in the same shard when the first
+ * request has not completed within the configured percentile of recently observed latencies for
+ * that shard.
+ */
+public class RequestHedging {
+    /* number of recent samples that the percentile is computed over, per shard */
+    static final int WINDOW_SIZE = 1024;
+    /* no hedging until this many samples have been observed for a shard */
+    static final int MIN_SAMPLES = 32;
+    /* number of samples between each recomputation of the percentile */
+    static final int REFRESH_INTERVAL = 64;
+
+    private final Scheduler scheduler;
+    private final double percentile;
+    private final long minDelayMillis;
+
+    private final ConcurrentMap<Map<String, String>, LatencyWindow> windows =
+        new ConcurrentHashMap<>();
+
+    public RequestHedging(
+        final Scheduler scheduler, final double percentile, final long minDelayMillis
+    ) {
+        if (percentile <= 0D || percentile >= 1D) {
+            throw new IllegalArgumentException(
+                "hedge percentile must be in the range (0, 1): " + percentile);
+        }
+
+        this.scheduler = scheduler;
+        this.percentile = percentile;
+        this.minDelayMillis = minDelayMillis;
+    }
+
+    public double getPercentile() {
+        return percentile;
+    }
+
+    public long getMinDelayMillis() {
+        return minDelayMillis;
+    }
+
+    /**
+     * Record the latency of a successful request to the given shard.
+     */
+    public void record(final Map<String, String> shard, final long elapsedMillis) {
+        windows.computeIfAbsent(shard, s -> new LatencyWindow()).record(elapsedMillis);
+    }
+
+    /**
+     * Delay after which a request to the given shard should be hedged.
+     *
+     * @return the delay in milliseconds, or empty if too few requests have been observed
+     */
+    public OptionalLong delay(final Map<String, String> shard) {
+        final LatencyWindow window = windows.get(shard);
+
+        if (window == null) {
+            return OptionalLong.empty();
+        }
+
+        final long value = window.percentile(percentile);
+
+        if (value < 0) {
+            return OptionalLong.empty();
+        }
+
+        return OptionalLong.of(Math.max(value, minDelayMillis));
+    }
+
+    void schedule(final long delayMillis, final Task task) {
+        scheduler.schedule("cluster-hedge", delayMillis, TimeUnit.MILLISECONDS, task);
+    }
+
+    static class LatencyWindow {
+        private final long[] samples = new long[WINDOW_SIZE];
+        private long count = 0;
+
+        private long computedAt = -1;
+        private long computed = -1;
+
+        synchronized void record(final long sample) {
+            samples[(int) (count % WINDOW_SIZE)] = sample;
+            count++;
+        }
+
+        synchronized long percentile(final double percentile) {
+            if (count < MIN_SAMPLES) {
+                return -1;
+            }
+
+            if (computedAt >= 0 && count - computedAt < REFRESH_INTERVAL) {
+                return computed;
+            }
+
+            final long[] sorted = Arrays.copyOf(samples, (int) Math.min(count, WINDOW_SIZE));
+            Arrays.sort(sorted);
+
+            final int index = (int) Math.ceil(percentile * sorted.length) - 1;
+            computed = sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+            computedAt = count;
+            return computed;
+        }
+    }
+}
@@ -40,8 +40,8 @@ public abstract class RegexFilter implements Filter {
         return new AutoValue_RegexFilter(tag, value);
     }
     public static final String OPERATOR = "~";
-    abstract String tag();
-    abstract String value();
+    public abstract String tag();
+    public abstract String value();
 
     @Override
     public boolean apply(Series series) {
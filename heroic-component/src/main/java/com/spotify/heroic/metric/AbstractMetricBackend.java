@@ -25,14 +25,22 @@ import com.google.common.collect.ImmutableList;
 import com.spotify.heroic.QueryOptions;
 import com.spotify.heroic.async.AsyncObservable;
 import com.spotify.heroic.async.AsyncObserver;
+import com.spotify.heroic.common.DateRange;
 import com.spotify.heroic.common.OptionalLimit;
+import com.spotify.heroic.common.Series;
 import com.spotify.heroic.common.Statistics;
 import eu.toolchain.async.AsyncFramework;
 import eu.toolchain.async.AsyncFuture;
+import io.opencensus.trace.Span;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.BiConsumer;
 
 public abstract class AbstractMetricBackend implements MetricBackend {
+    public static final QueryTrace.Identifier FETCH_MANY =
+        QueryTrace.identifier(AbstractMetricBackend.class, "fetchMany");
+
     private final AsyncFramework async;
 
     public AbstractMetricBackend(final AsyncFramework async) {
@@ -44,6 +52,34 @@ public abstract class AbstractMetricBackend implements MetricBackend {
         return Statistics.empty();
     }
 
+    /**
+     * Fetch each series of the batch, one after another.
+     * <p>
+     * The series are fetched sequentially so that callers which fetch many batches in parallel
+     * have the same number of fetches in flight as if they fetched each series separately.
+     */
+    @Override
+    public AsyncFuture<FetchData.Result> fetchMany(
+        final FetchData.BatchRequest request,
+        final FetchQuotaWatcher watcher,
+        final BiConsumer<Series, MetricReadResult> metricsConsumer,
+        final Span parentSpan
+    ) {
+        final List<FetchData.Result> results = new ArrayList<>(request.getSeries().size());
+        AsyncFuture<Void> fetches = async.resolved();
+
+        for (final Series series : request.getSeries()) {
+            fetches = fetches.lazyTransform(v -> fetch(request.request(series), watcher,
+                result -> metricsConsumer.accept(series, result), parentSpan)
+                .directTransform(result -> {
+                    results.add(result);
+                    return null;
+                }));
+        }
+
+        return fetches.directTransform(v -> FetchData.collectResult(FETCH_MANY).collect(results));
+    }
+
     @Override
     public AsyncFuture<List<String>> serializeKeyToHex(BackendKey key) {
         return async.resolved(ImmutableList.of());
@@ -71,6 +107,11 @@ public abstract class AbstractMetricBackend implements MetricBackend {
         return async.resolved(0L);
     }
 
+    @Override
+    public AsyncFuture<Long> compact(DateRange range) {
+        return async.resolved(0L);
+    }
+
     @Override
     public AsyncFuture<MetricCollection> fetchRow(BackendKey key) {
         return async.failed(new Exception("not supported"));
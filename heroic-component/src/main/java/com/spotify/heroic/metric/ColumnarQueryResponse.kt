@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2020 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.heroic.metric
+
+/**
+ * A query response decoded from the columnar format, see [ColumnarResponseEncoder].
+ *
+ * @param name name of the query in a batch, or empty for a single query
+ * @param metadata everything in the JSON response except the result groups, as a JSON object
+ * @param result decoded result groups
+ */
+data class ColumnarQueryResponse(
+    val name: String,
+    val metadata: String,
+    val result: List<ColumnarResultGroup>
+)
+
+/**
+ * A result group decoded from the columnar format.
+ *
+ * Keys, tags and resources are the same as in the JSON representation of a result group.
+ * Points are decoded into a [MetricCollection.ColumnarPointCollection].
+ */
+data class ColumnarResultGroup(
+    val hash: Int,
+    val cadence: Long,
+    val shard: Map<String, String>,
+    val key: String?,
+    val tags: Map<String, String>,
+    val tagCounts: Map<String, Int>,
+    val resource: Map<String, String>,
+    val resourceCounts: Map<String, Int>,
+    val metrics: MetricCollection
+)
@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2020 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.heroic.metric;
+
+import com.google.common.collect.ImmutableMap;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A reference decoder for the columnar format written by {@link ColumnarResponseEncoder}.
+ */
+public final class ColumnarResponseDecoder {
+    private ColumnarResponseDecoder() {
+    }
+
+    /**
+     * Decode every response in a frame.
+     *
+     * @param in stream to decode, which is read until the end of the frame
+     * @return the decoded responses, in the order they were encoded
+     * @throws IOException if the stream can't be read, or is not a valid frame
+     */
+    public static List<ColumnarQueryResponse> decode(final InputStream in) throws IOException {
+        final DataInputStream input = new DataInputStream(new BufferedInputStream(in));
+
+        if (input.readInt() != ColumnarResponseEncoder.MAGIC) {
+            throw new IOException("Not a columnar response");
+        }
+
+        final int version = input.readUnsignedByte();
+
+        if (version != ColumnarResponseEncoder.VERSION) {
+            throw new IOException("Unsupported columnar response version: " + version);
+        }
+
+        final int count = readCount(input);
+        final List<ColumnarQueryResponse> responses = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+            responses.add(readResponse(input));
+        }
+
+        return responses;
+    }
+
+    private static ColumnarQueryResponse readResponse(final DataInputStream input)
+        throws IOException {
+        final String name = readString(input);
+        final String metadata = readString(input);
+
+        final int dictionarySize = readCount(input);
+        final String[] dictionary = new String[dictionarySize];
+
+        for (int i = 0; i < dictionarySize; i++) {
+            dictionary[i] = readString(input);
+        }
+
+        final int groupCount = readCount(input);
+        final List<ColumnarResultGroup> groups = new ArrayList<>(groupCount);
+
+        for (int i = 0; i < groupCount; i++) {
+            groups.add(readGroup(input, dictionary));
+        }
+
+        return new ColumnarQueryResponse(name, metadata, groups);
+    }
+
+    private static ColumnarResultGroup readGroup(
+        final DataInputStream input, final String[] dictionary
+    ) throws IOException {
+        final int type = input.readUnsignedByte();
+        final int hash = input.readInt();
+        final long cadence = input.readLong();
+
+        final Map<String, String> shard = readPairs(input, dictionary);
+
+        final int keyIndex = input.readInt();
+        final String key = keyIndex < 0 ? null : lookup(dictionary, keyIndex);
+
+        final Map<String, String> tags = readPairs(input, dictionary);
+        final Map<String, Integer> tagCounts = readCounts(input, dictionary);
+        final Map<String, String> resource = readPairs(input, dictionary);
+        final Map<String, Integer> resourceCounts = readCounts(input, dictionary);
+
+        final int rows = readCount(input);
+        final MetricCollection metrics;
+
+        switch (type) {
+            case ColumnarResponseEncoder.POINTS:
+                metrics = MetricCollection.ColumnarPointCollection.create(readLongs(input, rows),
+                    readDoubles(input, rows), rows);
+                break;
+            case ColumnarResponseEncoder.SPREADS:
+                metrics = readSpreads(input, rows);
+                break;
+            default:
+                throw new IOException("Unsupported group type: " + type);
+        }
+
+        return new ColumnarResultGroup(hash, cadence, shard, key, tags, tagCounts, resource,
+            resourceCounts, metrics);
+    }
+
+    private static MetricCollection readSpreads(final DataInputStream input, final int rows)
+        throws IOException {
+        final long[] timestamps = readLongs(input, rows);
+        final long[] counts = readLongs(input, rows);
+        final double[] sums = readDoubles(input, rows);
+        final double[] sums2 = readDoubles(input, rows);
+        final double[] mins = readDoubles(input, rows);
+        final double[] maxes = readDoubles(input, rows);
+
+        final List<Spread> spreads = new ArrayList<>(rows);
+
+        for (int i = 0; i < rows; i++) {
+            spreads.add(
+                new Spread(timestamps[i], counts[i], sums[i], sums2[i], mins[i], maxes[i]));
+        }
+
+        return MetricCollection.spreads(spreads);
+    }
+
+    private static Map<String, String> readPairs(
+        final DataInputStream input, final String[] dictionary
+    ) throws IOException {
+        final int count = readCount(input);
+        final ImmutableMap.Builder<String, String> pairs = ImmutableMap.builder();
+
+        for (int i = 0; i < count; i++) {
+            pairs.put(lookup(dictionary, input.readInt()), lookup(dictionary, input.readInt()));
+        }
+
+        return pairs.build();
+    }
+
+    private static Map<String, Integer> readCounts(
+        final DataInputStream input, final String[] dictionary
+    ) throws IOException {
+        final int count = readCount(input);
+        final ImmutableMap.Builder<String, Integer> counts = ImmutableMap.builder();
+
+        for (int i = 0; i < count; i++) {
+            counts.put(lookup(dictionary, input.readInt()), input.readInt());
+        }
+
+        return counts.build();
+    }
+
+    private static long[] readLongs(final DataInputStream input, final int rows)
+        throws IOException {
+        final long[] values = new long[rows];
+        ByteBuffer.wrap(readColumn(input, rows)).asLongBuffer().get(values);
+        return values;
+    }
+
+    private static double[] readDoubles(final DataInputStream input, final int rows)
+        throws IOException {
+        final double[] values = new double[rows];
+        ByteBuffer.wrap(readColumn(input, rows)).asDoubleBuffer().get(values);
+        return values;
+    }
+
+    private static byte[] readColumn(final DataInputStream input, final int rows)
+        throws IOException {
+        if (rows > Integer.MAX_VALUE / Long.BYTES) {
+            throw new IOException("Column too large: " + rows);
+        }
+
+        final byte[] bytes = new byte[rows * Long.BYTES];
+        input.readFully(bytes);
+        return bytes;
+    }
+
+    private static String readString(final DataInputStream input) throws IOException {
+        final byte[] bytes = new byte[readCount(input)];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int readCount(final DataInputStream input) throws IOException {
+        final int count = input.readInt();
+
+        if (count < 0) {
+            throw new IOException("Negative count: " + count);
+        }
+
+        return count;
+    }
+
+    private static String lookup(final String[] dictionary, final int index) throws IOException {
+        if (index < 0 || index >= dictionary.length) {
+            throw new IOException("Dictionary index out of bounds: " + index);
+        }
+
+        return dictionary[index];
+    }
+}
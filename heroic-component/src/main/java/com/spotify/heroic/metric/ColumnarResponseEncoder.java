@@ -0,0 +1,419 @@
+/*
+ * Copyright (c) 2020 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.heroic.metric;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+
+/**
+ * Encodes query responses in a binary, columnar format.
+ * <p>
+ * This is intended for clients which pull a large number of samples, where encoding every sample
+ * as JSON dominates the cost of a query. Samples are written as primitive columns, and every
+ * string in the result groups is written once to a dictionary which the groups refer to by index.
+ * <p>
+ * Numbers are big-endian, and strings are an i32 byte length followed by UTF-8. A frame is laid
+ * out as follows.
+ * <pre>
+ * frame:
+ *   i32      magic, "HRCF"
+ *   u8       version, currently 1
+ *   i32      number of responses, followed by each response
+ *
+ * response:
+ *   string   name of the query in a batch, empty for a single query
+ *   string   metadata, the JSON response without its result groups
+ *   i32      number of dictionary strings, followed by each string
+ *   i32      number of result groups, followed by each group
+ *
+ * group:
+ *   u8       type, 0 for points and 1 for spreads
+ *   i32      hash
+ *   i64      cadence
+ *   i32      number of shard tags, followed by (i32 key, i32 value) dictionary indexes
+ *   i32      key dictionary index, or -1 unless the group has exactly one key
+ *   i32      number of single-valued tags, followed by (i32 key, i32 value) dictionary indexes
+ *   i32      number of multi-valued tags, followed by (i32 key, i32 count)
+ *   i32      number of single-valued resources, as for tags
+ *   i32      number of multi-valued resources, as for tags
+ *   i32      number of rows n, followed by the columns of the group
+ *
+ * points:    i64[n] timestamp, f64[n] value
+ * spreads:   i64[n] timestamp, i64[n] count, f64[n] sum, f64[n] sum2, f64[n] min, f64[n] max
+ * </pre>
+ * Unlike the JSON format, non-finite values are written as they are. Other metric types can't be
+ * encoded, see {@link ColumnarResponseDecoder} for a reference decoder.
+ */
+public class ColumnarResponseEncoder {
+    public static final String MEDIA_TYPE = "application/x-heroic-columnar";
+
+    static final int MAGIC = 0x48524346;
+    static final int VERSION = 1;
+
+    static final int POINTS = 0;
+    static final int SPREADS = 1;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ObjectMapper mapper;
+
+    public ColumnarResponseEncoder(final ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    /**
+     * Encode a single query response.
+     *
+     * @throws IllegalArgumentException if the response has metrics which can't be encoded, in
+     * which case nothing has been written
+     */
+    public void encode(final QueryMetricsResponse response, final OutputStream out)
+        throws IOException {
+        encode(ImmutableMap.of("", response), out);
+    }
+
+    /**
+     * Encode a batch of named query responses.
+     *
+     * @throws IllegalArgumentException if a response has metrics which can't be encoded, in which
+     * case nothing has been written
+     */
+    public void encode(final Map<String, QueryMetricsResponse> responses, final OutputStream out)
+        throws IOException {
+        final List<Prepared> prepared = new ArrayList<>();
+
+        for (final Map.Entry<String, QueryMetricsResponse> e : responses.entrySet()) {
+            prepared.add(prepare(e.getKey(), e.getValue()));
+        }
+
+        final ColumnOutput output = new ColumnOutput(out);
+
+        output.writeInt(MAGIC);
+        output.writeByte(VERSION);
+        output.writeInt(prepared.size());
+
+        for (final Prepared p : prepared) {
+            writeResponse(output, p);
+        }
+
+        output.flush();
+    }
+
+    private Prepared prepare(final String name, final QueryMetricsResponse response)
+        throws IOException {
+        final Prepared prepared = new Prepared(name, metadata(response));
+
+        for (final ShardedResultGroup group : response.getResult()) {
+            final MetricType type = group.getMetrics().getType();
+
+            if (type != MetricType.POINT && type != MetricType.SPREAD) {
+                throw new IllegalArgumentException(
+                    "Metric type not supported by the columnar format: " + type);
+            }
+
+            final SeriesValues series = SeriesValues.fromSeries(group.getSeries().iterator());
+
+            for (final Map.Entry<String, String> e : group.getShard().entrySet()) {
+                prepared.intern(e.getKey());
+                prepared.intern(e.getValue());
+            }
+
+            if (series.getKeys().size() == 1) {
+                prepared.intern(series.getKeys().first());
+            }
+
+            prepared.internValues(series.getTags());
+            prepared.internValues(series.getResource());
+            prepared.groups.add(new PreparedGroup(group, series));
+        }
+
+        return prepared;
+    }
+
+    private String metadata(final QueryMetricsResponse response) throws IOException {
+        final Map<String, Object> metadata = new LinkedHashMap<>();
+        metadata.put("queryId", response.getQueryId());
+        metadata.put("range", response.getRange());
+        metadata.put("trace", response.getTrace());
+        metadata.put("limits", response.getLimits());
+        metadata.put("cached", response.getCache().map(CacheInfo::getCached).orElse(false));
+        metadata.put("cache", response.getCache());
+        metadata.put("preAggregationSampleSize", response.getPreAggregationSampleSize());
+        metadata.put("errors", response.getErrors());
+        return mapper.writeValueAsString(metadata);
+    }
+
+    private void writeResponse(final ColumnOutput output, final Prepared prepared)
+        throws IOException {
+        output.writeString(prepared.name);
+        output.writeString(prepared.metadata);
+
+        output.writeInt(prepared.dictionary.size());
+
+        for (final String value : prepared.dictionary) {
+            output.writeString(value);
+        }
+
+        output.writeInt(prepared.groups.size());
+
+        for (final PreparedGroup g : prepared.groups) {
+            final ShardedResultGroup group = g.group;
+            final MetricCollection metrics = group.getMetrics();
+
+            output.writeByte(metrics.getType() == MetricType.POINT ? POINTS : SPREADS);
+            output.writeInt(group.hashGroup());
+            output.writeLong(group.getCadence());
+
+            output.writeInt(group.getShard().size());
+
+            for (final Map.Entry<String, String> e : group.getShard().entrySet()) {
+                output.writeInt(prepared.index(e.getKey()));
+                output.writeInt(prepared.index(e.getValue()));
+            }
+
+            if (g.series.getKeys().size() == 1) {
+                output.writeInt(prepared.index(g.series.getKeys().first()));
+            } else {
+                output.writeInt(-1);
+            }
+
+            writeValues(output, prepared, g.series.getTags());
+            writeValues(output, prepared, g.series.getResource());
+
+            output.writeInt(metrics.size());
+
+            if (metrics.getType() == MetricType.POINT) {
+                writePoints(output, metrics);
+            } else {
+                writeSpreads(output, metrics.getDataAs(Spread.class));
+            }
+        }
+    }
+
+    private void writeValues(
+        final ColumnOutput output, final Prepared prepared,
+        final Map<String, SortedSet<String>> values
+    ) throws IOException {
+        int single = 0;
+
+        for (final SortedSet<String> v : values.values()) {
+            if (v.size() == 1) {
+                single++;
+            }
+        }
+
+        output.writeInt(single);
+
+        for (final Map.Entry<String, SortedSet<String>> e : values.entrySet()) {
+            if (e.getValue().size() == 1) {
+                output.writeInt(prepared.index(e.getKey()));
+                output.writeInt(prepared.index(e.getValue().first()));
+            }
+        }
+
+        output.writeInt(values.size() - single);
+
+        for (final Map.Entry<String, SortedSet<String>> e : values.entrySet()) {
+            if (e.getValue().size() != 1) {
+                output.writeInt(prepared.index(e.getKey()));
+                output.writeInt(e.getValue().size());
+            }
+        }
+    }
+
+    private void writePoints(final ColumnOutput output, final MetricCollection metrics)
+        throws IOException {
+        if (metrics instanceof MetricCollection.ColumnarPointCollection) {
+            final MetricCollection.ColumnarPointCollection points =
+                (MetricCollection.ColumnarPointCollection) metrics;
+
+            for (int i = 0; i < points.size(); i++) {
+                output.writeLong(points.getTimestamp(i));
+            }
+
+            for (int i = 0; i < points.size(); i++) {
+                output.writeDouble(points.getValue(i));
+            }
+
+            return;
+        }
+
+        final List<Point> points = metrics.getDataAs(Point.class);
+
+        for (final Point p : points) {
+            output.writeLong(p.getTimestamp());
+        }
+
+        for (final Point p : points) {
+            output.writeDouble(p.getValue());
+        }
+    }
+
+    private void writeSpreads(final ColumnOutput output, final List<Spread> spreads)
+        throws IOException {
+        for (final Spread s : spreads) {
+            output.writeLong(s.getTimestamp());
+        }
+
+        for (final Spread s : spreads) {
+            output.writeLong(s.getCount());
+        }
+
+        for (final Spread s : spreads) {
+            output.writeDouble(s.getSum());
+        }
+
+        for (final Spread s : spreads) {
+            output.writeDouble(s.getSum2());
+        }
+
+        for (final Spread s : spreads) {
+            output.writeDouble(s.getMin());
+        }
+
+        for (final Spread s : spreads) {
+            output.writeDouble(s.getMax());
+        }
+    }
+
+    /**
+     * A response with its dictionary built, ready to be written.
+     */
+    private static class Prepared {
+        private final String name;
+        private final String metadata;
+        private final List<String> dictionary = new ArrayList<>();
+        private final Map<String, Integer> indexes = new HashMap<>();
+        private final List<PreparedGroup> groups = new ArrayList<>();
+
+        Prepared(final String name, final String metadata) {
+            this.name = name;
+            this.metadata = metadata;
+        }
+
+        void intern(final String value) {
+            indexes.computeIfAbsent(value, v -> {
+                dictionary.add(v);
+                return dictionary.size() - 1;
+            });
+        }
+
+        void internValues(final Map<String, SortedSet<String>> values) {
+            for (final Map.Entry<String, SortedSet<String>> e : values.entrySet()) {
+                intern(e.getKey());
+
+                if (e.getValue().size() == 1) {
+                    intern(e.getValue().first());
+                }
+            }
+        }
+
+        int index(final String value) {
+            return indexes.get(value);
+        }
+    }
+
+    private static class PreparedGroup {
+        private final ShardedResultGroup group;
+        private final SeriesValues series;
+
+        PreparedGroup(final ShardedResultGroup group, final SeriesValues series) {
+            this.group = group;
+            this.series = series;
+        }
+    }
+
+    /**
+     * Buffers primitive writes, which is considerably cheaper than writing every column value
+     * through a {@link java.io.DataOutputStream}.
+     */
+    private static class ColumnOutput {
+        private final OutputStream out;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        ColumnOutput(final OutputStream out) {
+            this.out = out;
+        }
+
+        void writeByte(final int value) throws IOException {
+            ensure(Byte.BYTES);
+            buffer.put((byte) value);
+        }
+
+        void writeInt(final int value) throws IOException {
+            ensure(Integer.BYTES);
+            buffer.putInt(value);
+        }
+
+        void writeLong(final long value) throws IOException {
+            ensure(Long.BYTES);
+            buffer.putLong(value);
+        }
+
+        void writeDouble(final double value) throws IOException {
+            ensure(Double.BYTES);
+            buffer.putDouble(value);
+        }
+
+        void writeString(final String value) throws IOException {
+            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeInt(bytes.length);
+
+            if (bytes.length > buffer.remaining()) {
+                drain();
+
+                if (bytes.length > buffer.capacity()) {
+                    out.write(bytes);
+                    return;
+                }
+            }
+
+            buffer.put(bytes);
+        }
+
+        void flush() throws IOException {
+            drain();
+            out.flush();
+        }
+
+        private void ensure(final int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                drain();
+            }
+        }
+
+        private void drain() throws IOException {
+            out.write(buffer.array(), 0, buffer.position());
+            buffer.clear();
+        }
+    }
+}
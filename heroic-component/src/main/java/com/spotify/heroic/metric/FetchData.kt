@@ -53,6 +53,21 @@ data class FetchData(
         val options: QueryOptions
     )
 
+    /**
+     * A request to fetch the same range of data for many series at once.
+     */
+    data class BatchRequest(
+        val type: MetricType,
+        val series: List<Series>,
+        val range: DateRange,
+        val options: QueryOptions
+    ) {
+        /**
+         * Build the request for a single series of this batch.
+         */
+        fun request(series: Series): Request = Request(type, series, range, options)
+    }
+
     data class Result @JvmOverloads constructor(
         val trace: QueryTrace,
         val errors: List<RequestError> = listOf()
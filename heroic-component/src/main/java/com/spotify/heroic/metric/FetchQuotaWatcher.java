@@ -49,6 +49,34 @@ public interface FetchQuotaWatcher {
      */
     void accessedRows(long n);
 
+    /**
+     * Get the maximum number of datapoints that a backend should hand over at once, when it
+     * streams the data that it reads.
+     */
+    default int getChunkSize() {
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Run the given read once another chunk of data may be held in memory.
+     * <p>
+     * Backends which stream data call this before reading the next chunk from storage, and call
+     * {@link #releaseChunk()} once that chunk has been handed over. The read is run immediately
+     * if few enough chunks are in flight, otherwise it is deferred until a chunk is released.
+     *
+     * @param read The read to run.
+     */
+    default void acquireChunk(final Runnable read) {
+        read.run();
+    }
+
+    /**
+     * Indicates that a chunk acquired through {@link #acquireChunk(Runnable)} has been handed
+     * over, or that reading it failed.
+     */
+    default void releaseChunk() {
+    }
+
     /**
      * Special quota watcher indicating no quota should be applied.
      */
@@ -126,6 +126,11 @@ public abstract class FullQuery {
             dataDensity());
     }
 
+    public FullQuery withGroups(List<ResultGroup> newGroups) {
+        return FullQuery.create(trace(), errors(), newGroups, statistics(), limits(),
+            dataDensity());
+    }
+
     public Summary summarize() {
         return Summary.create(trace(), errors(), ResultGroup.summarize(groups()), statistics(),
             limits(), dataDensity().orElse(Histogram.empty()));
@@ -189,6 +194,14 @@ public abstract class FullQuery {
             return Summary.create(source(), filter(), range(), aggregation(), options());
         }
 
+        /**
+         * Build a copy of this request which covers another range.
+         */
+        public Request withRange(final DateRange range) {
+            return create(source(), filter(), range, aggregation(), options(), context(),
+                features());
+        }
+
         public void hashTo(final ObjectHasher hasher) {
             hasher.putObject(getClass(), () -> {
                 hasher.putField("source", source(), hasher.enumValue());
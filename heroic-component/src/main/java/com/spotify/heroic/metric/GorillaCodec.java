@@ -0,0 +1,335 @@
+/*
+ * Copyright (c) 2020 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.heroic.metric;
+
+import java.util.Arrays;
+
+/**
+ * Compression of points, shared by the backends which store points in compressed blocks.
+ * <p>
+ * Timestamps are encoded using delta-of-delta encoding, and values are encoded by XOR:ing them
+ * with the previous value, as described in the Gorilla paper (Pelkonen et al., VLDB 2015).
+ * <p>
+ * Points must be encoded in strictly increasing timestamp order. The number of points is not part
+ * of the encoding, and has to be stored next to it.
+ */
+public final class GorillaCodec {
+    private static final int LEADING_BITS = 5;
+    private static final int LENGTH_BITS = 6;
+    private static final int MAX_LEADING = (1 << LEADING_BITS) - 1;
+
+    private GorillaCodec() {
+    }
+
+    /**
+     * Encode the given range of sorted, unique timestamps and their values.
+     *
+     * @param out Writer to encode the points into.
+     * @param timestamps Timestamps of the points.
+     * @param values Values of the points.
+     * @param from First point to encode, inclusive.
+     * @param to Last point to encode, exclusive.
+     */
+    public static void encode(
+        final BitWriter out, final long[] timestamps, final double[] values, final int from,
+        final int to
+    ) {
+        if (from >= to) {
+            throw new IllegalArgumentException("cannot encode an empty block");
+        }
+
+        long timestamp = timestamps[from];
+        long value = Double.doubleToRawLongBits(values[from]);
+
+        out.write(timestamp, 64);
+        out.write(value, 64);
+
+        long delta = 0;
+        int leading = Integer.MAX_VALUE;
+        int trailing = 0;
+
+        for (int i = from + 1; i < to; i++) {
+            final long nextDelta = timestamps[i] - timestamp;
+
+            if (i == from + 1) {
+                out.write(nextDelta, 64);
+            } else {
+                writeDeltaOfDelta(out, nextDelta - delta);
+            }
+
+            delta = nextDelta;
+            timestamp = timestamps[i];
+
+            final long next = Double.doubleToRawLongBits(values[i]);
+            final long xor = next ^ value;
+            value = next;
+
+            if (xor == 0) {
+                out.writeBit(false);
+                continue;
+            }
+
+            out.writeBit(true);
+
+            final int nextLeading = Math.min(Long.numberOfLeadingZeros(xor), MAX_LEADING);
+            final int nextTrailing = Long.numberOfTrailingZeros(xor);
+
+            if (leading != Integer.MAX_VALUE && nextLeading >= leading &&
+                nextTrailing >= trailing) {
+                out.writeBit(false);
+                out.write(xor >>> trailing, 64 - leading - trailing);
+                continue;
+            }
+
+            leading = nextLeading;
+            trailing = nextTrailing;
+
+            final int significant = 64 - leading - trailing;
+
+            out.writeBit(true);
+            out.write(leading, LEADING_BITS);
+            // 64 significant bits does not fit in six bits, and zero is never significant.
+            out.write(significant == 64 ? 0 : significant, LENGTH_BITS);
+            out.write(xor >>> trailing, significant);
+        }
+    }
+
+    /**
+     * Decode points, in timestamp order.
+     *
+     * @param in Reader to decode the points from.
+     * @param count Number of points which were encoded.
+     * @param sink Sink receiving the decoded points.
+     */
+    public static void decode(final BitReader in, final int count, final PointSink sink) {
+        if (count == 0) {
+            return;
+        }
+
+        long timestamp = in.read(64);
+        long value = in.read(64);
+        sink.accept(timestamp, Double.longBitsToDouble(value));
+
+        long delta = 0;
+        int leading = 0;
+        int trailing = 0;
+
+        for (int i = 1; i < count; i++) {
+            if (i == 1) {
+                delta = in.read(64);
+            } else {
+                delta += readDeltaOfDelta(in);
+            }
+
+            timestamp += delta;
+
+            if (in.readBit()) {
+                if (in.readBit()) {
+                    leading = (int) in.read(LEADING_BITS);
+                    int significant = (int) in.read(LENGTH_BITS);
+
+                    if (significant == 0) {
+                        significant = 64;
+                    }
+
+                    trailing = 64 - leading - significant;
+                }
+
+                value ^= in.read(64 - leading - trailing) << trailing;
+            }
+
+            sink.accept(timestamp, Double.longBitsToDouble(value));
+        }
+    }
+
+    private static void writeDeltaOfDelta(final BitWriter out, final long dod) {
+        if (dod == 0) {
+            out.write(0b0, 1);
+        } else if (dod >= -64 && dod < 64) {
+            out.write(0b10, 2);
+            out.write(dod, 7);
+        } else if (dod >= -256 && dod < 256) {
+            out.write(0b110, 3);
+            out.write(dod, 9);
+        } else if (dod >= -2048 && dod < 2048) {
+            out.write(0b1110, 4);
+            out.write(dod, 12);
+        } else {
+            out.write(0b1111, 4);
+            out.write(dod, 64);
+        }
+    }
+
+    private static long readDeltaOfDelta(final BitReader in) {
+        if (!in.readBit()) {
+            return 0;
+        }
+
+        if (!in.readBit()) {
+            return in.readSigned(7);
+        }
+
+        if (!in.readBit()) {
+            return in.readSigned(9);
+        }
+
+        if (!in.readBit()) {
+            return in.readSigned(12);
+        }
+
+        return in.read(64);
+    }
+
+    /**
+     * Writes bits, most significant bit first.
+     */
+    public static final class BitWriter {
+        private long[] words;
+        private int position = 0;
+
+        public BitWriter(final int expectedPoints) {
+            // most points in a regular series take a couple of bits for the timestamp and
+            // somewhere around a few dozen bits for the value.
+            this.words = new long[Math.max(4, expectedPoints / 2)];
+        }
+
+        public void writeBit(final boolean bit) {
+            write(bit ? 1L : 0L, 1);
+        }
+
+        /**
+         * Write the lowest bits of the given value.
+         */
+        public void write(long value, final int bits) {
+            if (bits == 0) {
+                return;
+            }
+
+            ensureCapacity(bits);
+
+            if (bits < 64) {
+                value &= (1L << bits) - 1;
+            }
+
+            final int index = position >>> 6;
+            final int free = 64 - (position & 63);
+
+            if (bits <= free) {
+                words[index] |= value << (free - bits);
+            } else {
+                final int rest = bits - free;
+                words[index] |= value >>> rest;
+                words[index + 1] |= value << (64 - rest);
+            }
+
+            position += bits;
+        }
+
+        /**
+         * The written bits, as words.
+         */
+        public long[] finish() {
+            return Arrays.copyOf(words, (position + 63) >>> 6);
+        }
+
+        /**
+         * The written bits, as big-endian bytes.
+         */
+        public byte[] toByteArray() {
+            final byte[] bytes = new byte[(position + 7) >>> 3];
+
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = (byte) (words[i >>> 3] >>> (56 - ((i & 7) << 3)));
+            }
+
+            return bytes;
+        }
+
+        private void ensureCapacity(final int bits) {
+            final int required = (position + bits + 63) >>> 6;
+
+            if (required > words.length) {
+                words = Arrays.copyOf(words, Math.max(required, words.length * 2));
+            }
+        }
+    }
+
+    /**
+     * Reads bits written by a {@link BitWriter}.
+     */
+    public static final class BitReader {
+        private final long[] words;
+        private int position = 0;
+
+        public BitReader(final long[] words) {
+            this.words = words;
+        }
+
+        /**
+         * Read bits from their big-endian bytes, as returned by {@link BitWriter#toByteArray()}.
+         */
+        public static BitReader fromBytes(final byte[] bytes) {
+            final long[] words = new long[(bytes.length + 7) >>> 3];
+
+            for (int i = 0; i < bytes.length; i++) {
+                words[i >>> 3] |= (bytes[i] & 0xffL) << (56 - ((i & 7) << 3));
+            }
+
+            return new BitReader(words);
+        }
+
+        public boolean readBit() {
+            final long word = words[position >>> 6];
+            final boolean bit = ((word >>> (63 - (position & 63))) & 1L) != 0;
+            position++;
+            return bit;
+        }
+
+        public long read(final int bits) {
+            if (bits == 0) {
+                return 0L;
+            }
+
+            final int index = position >>> 6;
+            final int offset = position & 63;
+            final int available = 64 - offset;
+
+            final long result;
+
+            if (bits <= available) {
+                result = (words[index] << offset) >>> (64 - bits);
+            } else {
+                final int rest = bits - available;
+                final long high = (words[index] << offset) >>> offset;
+                result = (high << rest) | (words[index + 1] >>> (64 - rest));
+            }
+
+            position += bits;
+            return result;
+        }
+
+        public long readSigned(final int bits) {
+            final int shift = 64 - bits;
+            return (read(bits) << shift) >> shift;
+        }
+    }
+}
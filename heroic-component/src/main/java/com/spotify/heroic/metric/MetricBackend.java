@@ -24,14 +24,17 @@ package com.spotify.heroic.metric;
 import com.spotify.heroic.QueryOptions;
 import com.spotify.heroic.async.AsyncObservable;
 import com.spotify.heroic.common.Collected;
+import com.spotify.heroic.common.DateRange;
 import com.spotify.heroic.common.Grouped;
 import com.spotify.heroic.common.Initializing;
+import com.spotify.heroic.common.Series;
 import com.spotify.heroic.common.Statistics;
 
 import eu.toolchain.async.AsyncFuture;
 
 import io.opencensus.trace.Span;
 import java.util.List;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
 public interface MetricBackend extends Initializing, Grouped, Collected {
@@ -75,6 +78,27 @@ public interface MetricBackend extends Initializing, Grouped, Collected {
         Span parentSpan
     );
 
+    /**
+     * Query for data points of many series in the same range.
+     * <p>
+     * Backends which can read many series with fewer requests than one per series should
+     * implement this natively, the data of each series is otherwise fetched separately with
+     * {@link #fetch(FetchData.Request, FetchQuotaWatcher, Consumer, Span)}.
+     *
+     * @param request Fetch request to use.
+     * @param watcher The watcher implementation to use when fetching metrics.
+     * @param metricsConsumer The consumer that receives the fetched data, and the series it
+     * belongs to.
+     * @param parentSpan Used for distributed tracing
+     * @return A future containing the fetch result.
+     */
+    AsyncFuture<FetchData.Result> fetchMany(
+        FetchData.BatchRequest request,
+        FetchQuotaWatcher watcher,
+        BiConsumer<Series, MetricReadResult> metricsConsumer,
+        Span parentSpan
+    );
+
     /**
      * List all series directly from the database.
      * <p>
@@ -128,6 +152,14 @@ public interface MetricBackend extends Initializing, Grouped, Collected {
      */
     AsyncFuture<Long> countKey(BackendKey key, QueryOptions options);
 
+    /**
+     * Compact the stored data in the given range into a more compact representation, for
+     * backends which support it.
+     *
+     * @return A future resolved with the number of compacted rows.
+     */
+    AsyncFuture<Long> compact(DateRange range);
+
     /**
      * Fetch a complete row from the backend.
      */
@@ -21,8 +21,10 @@
 
 package com.spotify.heroic.metric;
 
+import com.google.common.collect.ImmutableList;
 import eu.toolchain.async.AsyncFuture;
 import io.opencensus.trace.Span;
+import java.util.function.Consumer;
 
 public interface MetricBackendGroup extends MetricBackend {
     /**
@@ -31,4 +33,19 @@ public interface MetricBackendGroup extends MetricBackend {
     AsyncFuture<FullQuery> query(FullQuery.Request request);
 
     AsyncFuture<FullQuery> query(FullQuery.Request request, Span span);
+
+    /**
+     * Perform a local query for metrics, handing every result group to the given consumer as
+     * soon as it is available.
+     *
+     * @return A future resolved with the rest of the result, without any groups.
+     */
+    default AsyncFuture<FullQuery> query(
+        FullQuery.Request request, Span span, Consumer<ResultGroup> groups
+    ) {
+        return query(request, span).directTransform(result -> {
+            result.groups().forEach(groups);
+            return result.withGroups(ImmutableList.of());
+        });
+    }
 }
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2020 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.heroic.metric;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Collects fetched metrics of a single series, handing them over in chunks of at most a given
+ * size.
+ * <p>
+ * Points are collected into primitive columns, every other metric type is collected as
+ * objects. A series without metrics is handed over as a single empty chunk by {@link #finish()}.
+ */
+public final class MetricChunker implements PointSink {
+    private final MetricType type;
+    private final int chunkSize;
+    private final Consumer<MetricCollection> consumer;
+
+    private MetricCollection.ColumnarPointCollection.Builder points;
+    private List<Metric> metrics;
+    private boolean emitted = false;
+
+    private MetricChunker(
+        final MetricType type, final int chunkSize, final Consumer<MetricCollection> consumer
+    ) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be positive");
+        }
+
+        this.type = type;
+        this.chunkSize = chunkSize;
+        this.consumer = consumer;
+        reset();
+    }
+
+    /**
+     * Create a chunker for the given metric type.
+     *
+     * @param chunkSize Maximum number of metrics in each chunk.
+     * @param consumer Consumer which chunks are handed over to.
+     */
+    public static MetricChunker of(
+        final MetricType type, final int chunkSize, final Consumer<MetricCollection> consumer
+    ) {
+        return new MetricChunker(type, chunkSize, consumer);
+    }
+
+    /**
+     * Create a chunker for points.
+     *
+     * @see #of(MetricType, int, Consumer)
+     */
+    public static MetricChunker points(
+        final int chunkSize, final Consumer<MetricCollection> consumer
+    ) {
+        return new MetricChunker(MetricType.POINT, chunkSize, consumer);
+    }
+
+    @Override
+    public void accept(final long timestamp, final double value) {
+        if (points == null) {
+            throw new IllegalStateException("Points added to chunks of type " + type);
+        }
+
+        points.add(timestamp, value);
+
+        if (points.size() >= chunkSize) {
+            emit();
+        }
+    }
+
+    /**
+     * Add a metric, which must be of the type of this chunker.
+     */
+    public void add(final Metric metric) {
+        if (points != null) {
+            final Point point = (Point) metric;
+            accept(point.getTimestamp(), point.getValue());
+            return;
+        }
+
+        metrics.add(metric);
+
+        if (metrics.size() >= chunkSize) {
+            emit();
+        }
+    }
+
+    /**
+     * Number of metrics which have not been handed over yet.
+     */
+    public int size() {
+        return points != null ? points.size() : metrics.size();
+    }
+
+    /**
+     * Hand over the metrics which have not been handed over yet, if there are any.
+     */
+    public void flush() {
+        if (size() > 0) {
+            emit();
+        }
+    }
+
+    /**
+     * Hand over the remaining metrics. A series without metrics is handed over as an empty
+     * chunk.
+     */
+    public void finish() {
+        if (size() > 0 || !emitted) {
+            emit();
+        }
+    }
+
+    private void emit() {
+        final MetricCollection chunk =
+            points != null ? points.build() : MetricCollection.build(type, metrics);
+        reset();
+        emitted = true;
+        consumer.accept(chunk);
+    }
+
+    private void reset() {
+        if (type == MetricType.POINT) {
+            points = MetricCollection.ColumnarPointCollection.builder();
+        } else {
+            metrics = new ArrayList<>();
+        }
+    }
+}
@@ -32,9 +32,12 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterators;
 import com.spotify.heroic.aggregation.AggregationSession;
 import com.spotify.heroic.common.Series;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.RandomAccess;
 import java.util.Set;
 
 /**
@@ -158,6 +161,20 @@ public interface MetricCollection {
         return PointCollection.create(metrics);
     }
 
+    /**
+     * Build a new columnar points collection.
+     *
+     * @param timestamps timestamps of the points, the array is not copied
+     * @param values values of the points, the array is not copied
+     * @param size number of points to include from the arrays
+     * @return a new columnar points collection
+     */
+    static MetricCollection points(
+        final long[] timestamps, final double[] values, final int size
+    ) {
+        return ColumnarPointCollection.create(timestamps, values, size);
+    }
+
     /**
      * Build a new spreads collection.
      *
@@ -241,6 +258,219 @@ public interface MetricCollection {
         ) {
             session.updatePoints(key, series, data());
         }
+
+        /**
+         * Equal to any collection of the same points, including a
+         * {@link ColumnarPointCollection}.
+         */
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+
+            if (!(o instanceof MetricCollection)) {
+                return false;
+            }
+
+            final MetricCollection other = (MetricCollection) o;
+            return other.getType() == MetricType.POINT && data().equals(other.data());
+        }
+
+        @Override
+        public int hashCode() {
+            return data().hashCode();
+        }
+    }
+
+    /**
+     * A collection of points backed by parallel arrays of timestamps and values.
+     * <p>
+     * Backends which decode points should prefer this over {@link PointCollection}, since it
+     * avoids allocating one object per sample. {@link #data()} is a view which builds points on
+     * access, and serializes exactly like {@link PointCollection}.
+     */
+    @JsonTypeName("points")
+    final class ColumnarPointCollection implements MetricCollection {
+        private final long[] timestamps;
+        private final double[] values;
+        private final int size;
+
+        private ColumnarPointCollection(
+            final long[] timestamps, final double[] values, final int size
+        ) {
+            this.timestamps = timestamps;
+            this.values = values;
+            this.size = size;
+        }
+
+        public static ColumnarPointCollection create(
+            final long[] timestamps, final double[] values, final int size
+        ) {
+            if (size < 0 || size > timestamps.length || size > values.length) {
+                throw new IllegalArgumentException("size out of bounds: " + size);
+            }
+
+            return new ColumnarPointCollection(timestamps, values, size);
+        }
+
+        public static Builder builder() {
+            return new Builder(16);
+        }
+
+        public static Builder builder(final int expectedSize) {
+            return new Builder(expectedSize);
+        }
+
+        public long getTimestamp(final int index) {
+            return timestamps[index];
+        }
+
+        public double getValue(final int index) {
+            return values[index];
+        }
+
+        @JsonProperty
+        @Override
+        public List<Point> data() {
+            return new PointView();
+        }
+
+        @Override
+        public MetricType getType() {
+            return MetricType.POINT;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        @Override
+        public Optional<Long> getAverageDistanceBetweenMetrics() {
+            if (size <= 1) {
+                return Optional.empty();
+            }
+
+            return Optional.of((timestamps[size - 1] - timestamps[0]) / (size - 1));
+        }
+
+        @Override
+        public void updateAggregation(
+            AggregationSession session, Map<String, String> key, Set<Series> series
+        ) {
+            session.updatePointColumns(key, series, this);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+
+            if (!(o instanceof MetricCollection)) {
+                return false;
+            }
+
+            if (!(o instanceof ColumnarPointCollection)) {
+                final MetricCollection collection = (MetricCollection) o;
+                return collection.getType() == MetricType.POINT &&
+                    data().equals(collection.data());
+            }
+
+            final ColumnarPointCollection other = (ColumnarPointCollection) o;
+
+            if (size != other.size) {
+                return false;
+            }
+
+            for (int i = 0; i < size; i++) {
+                if (timestamps[i] != other.timestamps[i] ||
+                    Double.compare(values[i], other.values[i]) != 0) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        /**
+         * Same as the hash code of the list of points, so that it is consistent with a
+         * {@link PointCollection} of the same points.
+         */
+        @Override
+        public int hashCode() {
+            int result = 1;
+
+            for (int i = 0; i < size; i++) {
+                final int point = 31 * Long.hashCode(timestamps[i]) + Double.hashCode(values[i]);
+                result = 31 * result + point;
+            }
+
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return "ColumnarPointCollection{data=" + data() + "}";
+        }
+
+        private final class PointView extends AbstractList<Point> implements RandomAccess {
+            @Override
+            public Point get(final int index) {
+                if (index < 0 || index >= size) {
+                    throw new IndexOutOfBoundsException("index: " + index + ", size: " + size);
+                }
+
+                return new Point(timestamps[index], values[index]);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        }
+
+        /**
+         * Incrementally builds a columnar collection, growing the underlying arrays as needed.
+         */
+        public static final class Builder {
+            private long[] timestamps;
+            private double[] values;
+            private int size = 0;
+
+            private Builder(final int expectedSize) {
+                final int capacity = Math.max(1, expectedSize);
+                this.timestamps = new long[capacity];
+                this.values = new double[capacity];
+            }
+
+            public Builder add(final long timestamp, final double value) {
+                if (size == timestamps.length) {
+                    final int capacity = size * 2;
+                    timestamps = Arrays.copyOf(timestamps, capacity);
+                    values = Arrays.copyOf(values, capacity);
+                }
+
+                timestamps[size] = timestamp;
+                values[size] = value;
+                size++;
+                return this;
+            }
+
+            public int size() {
+                return size;
+            }
+
+            public ColumnarPointCollection build() {
+                return new ColumnarPointCollection(timestamps, values, size);
+            }
+        }
     }
 
     @AutoValue
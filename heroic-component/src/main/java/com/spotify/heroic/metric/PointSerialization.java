@@ -66,10 +66,15 @@ public class PointSerialization {
         @Override
         public void serialize(Point d, JsonGenerator g, SerializerProvider provider)
           throws IOException {
-            g.writeStartArray();
-            g.writeNumber(d.getTimestamp());
+            serialize(d.getTimestamp(), d.getValue(), g);
+        }
 
-            final double value = d.getValue();
+        /**
+         * Write a point from its fields, for collections which do not store points as objects.
+         */
+        static void serialize(long timestamp, double value, JsonGenerator g) throws IOException {
+            g.writeStartArray();
+            g.writeNumber(timestamp);
 
             if (Double.isFinite(value)) {
                 g.writeNumber(value);
@@ -1,5 +1,5 @@
 /*
- * Copyright (c) 2019 Spotify AB.
+ * Copyright (c) 2020 Spotify AB.
  *
  * Licensed to the Apache Software Foundation (ASF) under one
  * or more contributor license agreements.  See the NOTICE file
@@ -19,8 +19,12 @@
  * under the License.
  */
 
-package com.spotify.heroic.suggest.memory
+package com.spotify.heroic.metric;
 
-import com.spotify.heroic.common.Series
-
-data class KeyDocument(val id: String, val series: Series)
\ No newline at end of file
+/**
+ * Receives points without boxing them.
+ */
+@FunctionalInterface
+public interface PointSink {
+    void accept(long timestamp, double value);
+}
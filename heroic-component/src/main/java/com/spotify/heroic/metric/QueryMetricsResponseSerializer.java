@@ -28,24 +28,30 @@ import com.google.common.collect.ImmutableMap;
 import com.spotify.heroic.common.Series;
 import java.io.IOException;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.function.Function;
-import java.util.stream.Stream;
 
 class QueryMetricsResponseSerializer extends JsonSerializer<QueryMetricsResponse> {
+    private final SpreadSerialization.Serializer spreadSerializer =
+        new SpreadSerialization.Serializer();
+
     @Override
     public void serialize(
         QueryMetricsResponse response, JsonGenerator g, SerializerProvider provider
     ) throws IOException {
         final List<ShardedResultGroup> result = response.getResult();
-        final Map<String, SortedSet<String>> commonTags =
-            calculateCommon(result, Series::getTags);
-        final Map<String, SortedSet<String>> commonResource =
-            calculateCommon(result, Series::getResource);
+        final Common commonTags = new Common(Series::getTags);
+        final Common commonResource = new Common(Series::getResource);
+
+        for (final ShardedResultGroup group : result) {
+            commonTags.add(group);
+            commonResource.add(group);
+        }
 
         g.writeStartObject();
 
@@ -58,13 +64,13 @@ class QueryMetricsResponseSerializer extends JsonSerializer<QueryMetricsResponse
         g.writeObjectField("cache", response.getCache());
 
         g.writeFieldName("commonTags");
-        serializeCommonTags(g, commonTags);
+        serializeCommonTags(g, commonTags.get());
 
         g.writeFieldName("commonResource");
-        serializeCommonTags(g, commonResource);
+        serializeCommonTags(g, commonResource.get());
 
         g.writeFieldName("result");
-        serializeResult(g, result);
+        serializeResult(g, provider, result);
 
         g.writeObjectField("preAggregationSampleSize", response.getPreAggregationSampleSize());
 
@@ -74,7 +80,7 @@ class QueryMetricsResponseSerializer extends JsonSerializer<QueryMetricsResponse
         g.writeEndObject();
     }
 
-    private void serializeCommonTags(
+    void serializeCommonTags(
         final JsonGenerator g, final Map<String, SortedSet<String>> common
     ) throws IOException {
         g.writeStartObject();
@@ -94,7 +100,7 @@ class QueryMetricsResponseSerializer extends JsonSerializer<QueryMetricsResponse
         g.writeEndObject();
     }
 
-    private void serializeErrors(final JsonGenerator g, final List<RequestError> errors)
+    void serializeErrors(final JsonGenerator g, final List<RequestError> errors)
         throws IOException {
         g.writeStartArray();
 
@@ -105,81 +111,96 @@ class QueryMetricsResponseSerializer extends JsonSerializer<QueryMetricsResponse
         g.writeEndArray();
     }
 
-    private Map<String, SortedSet<String>> calculateCommon(
-        final List<ShardedResultGroup> result,
-        final Function<Series, Map<String, String>> accessor
-    ) {
-        final Iterator<Map<String, SortedSet<String>>> resourcePartitions = result
-            .stream()
-            .map(r -> partitionMaps(r.getSeries().stream().map(accessor)))
-            .iterator();
-
-        if (!resourcePartitions.hasNext()) {
-            return ImmutableMap.of();
-        }
-
-        final Map<String, SortedSet<String>> common = resourcePartitions.next();
-
-        while (resourcePartitions.hasNext()) {
-            final Map<String, SortedSet<String>> next = resourcePartitions.next();
-            common.keySet().removeIf(k -> !next.containsKey(k));
+    private void serializeResult(
+        final JsonGenerator g, final SerializerProvider provider,
+        final List<ShardedResultGroup> result
+    ) throws IOException {
 
-            if (common.isEmpty()) {
-                return common;
-            }
+        g.writeStartArray();
 
-            for (final Map.Entry<String, SortedSet<String>> e : common.entrySet()) {
-                e.getValue().addAll(next.get(e.getKey()));
-            }
+        for (final ShardedResultGroup group : result) {
+            serializeGroup(g, provider, group);
         }
 
-        return common;
+        g.writeEndArray();
     }
 
-    private Map<String, SortedSet<String>> partitionMaps(
-        final Stream<Map<String, String>> stream
-    ) {
-        final Map<String, SortedSet<String>> partitioned = new HashMap<>();
+    void serializeGroup(
+        final JsonGenerator g, final SerializerProvider provider, final ShardedResultGroup group
+    ) throws IOException {
+        g.writeStartObject();
 
-        stream.forEach(m -> {
-            for (final Map.Entry<String, String> e : m.entrySet()) {
-                partitioned.computeIfAbsent(e.getKey(), k -> new TreeSet<>()).add(e.getValue());
-            }
-        });
+        final MetricCollection collection = group.getMetrics();
+        final SeriesValues series = SeriesValues.fromSeries(group.getSeries().iterator());
 
-        return partitioned;
-    }
+        g.writeStringField("type", collection.getType().identifier());
+        g.writeStringField("hash", Integer.toHexString(group.hashGroup()));
+        g.writeObjectField("shard", group.getShard());
+        g.writeNumberField("cadence", group.getCadence());
+        g.writeFieldName("values");
+        writeValues(g, provider, collection);
 
-    private void serializeResult(
-        final JsonGenerator g, final List<ShardedResultGroup> result
-    ) throws IOException {
+        writeKey(g, series.getKeys());
 
-        g.writeStartArray();
-
-        for (final ShardedResultGroup group : result) {
-            g.writeStartObject();
+        writeTags(g, series.getTags());
+        writeTagCounts(g, series.getTags());
 
-            final MetricCollection collection = group.getMetrics();
-            final SeriesValues series = SeriesValues.fromSeries(group.getSeries().iterator());
+        writeResource(g, series.getResource());
+        writeResourceCounts(g, series.getResource());
 
-            g.writeStringField("type", collection.getType().identifier());
-            g.writeStringField("hash", Integer.toHexString(group.hashGroup()));
-            g.writeObjectField("shard", group.getShard());
-            g.writeNumberField("cadence", group.getCadence());
-            g.writeObjectField("values", collection.data());
+        g.writeEndObject();
+    }
 
-            writeKey(g, series.getKeys());
+    /**
+     * Write the values of a collection.
+     * <p>
+     * Points and spreads are written with the {@link PointSerialization} and
+     * {@link SpreadSerialization} serializers directly, which avoids resolving a serializer for
+     * every sample and, for columnar points, building a point for every sample.
+     */
+    void writeValues(
+        final JsonGenerator g, final SerializerProvider provider,
+        final MetricCollection collection
+    ) throws IOException {
+        if (collection instanceof MetricCollection.ColumnarPointCollection) {
+            final MetricCollection.ColumnarPointCollection points =
+                (MetricCollection.ColumnarPointCollection) collection;
 
-            writeTags(g, series.getTags());
-            writeTagCounts(g, series.getTags());
+            g.writeStartArray();
 
-            writeResource(g, series.getResource());
-            writeResourceCounts(g, series.getResource());
+            for (int i = 0; i < points.size(); i++) {
+                PointSerialization.Serializer.serialize(
+                    points.getTimestamp(i), points.getValue(i), g);
+            }
 
-            g.writeEndObject();
+            g.writeEndArray();
+            return;
         }
 
-        g.writeEndArray();
+        switch (collection.getType()) {
+            case POINT:
+                g.writeStartArray();
+
+                for (final Point point : collection.getDataAs(Point.class)) {
+                    PointSerialization.Serializer.serialize(
+                        point.getTimestamp(), point.getValue(), g);
+                }
+
+                g.writeEndArray();
+                break;
+            case SPREAD:
+                g.writeStartArray();
+
+                for (final Spread spread : collection.getDataAs(Spread.class)) {
+                    spreadSerializer.serialize(spread, g, provider);
+                }
+
+                g.writeEndArray();
+                break;
+            default:
+                g.writeObject(collection.data());
+                break;
+        }
     }
 
     void writeKey(JsonGenerator g, final SortedSet<String> keys) throws IOException {
@@ -269,4 +290,64 @@ class QueryMetricsResponseSerializer extends JsonSerializer<QueryMetricsResponse
 
         g.writeEndObject();
     }
+
+    /**
+     * Calculates the tags which are present in every group, with all of their values.
+     * <p>
+     * Groups are added one at a time, and only the values of tags that are still common are
+     * kept, instead of partitioning the tags of every group up front.
+     */
+    static class Common {
+        private final Function<Series, Map<String, String>> accessor;
+
+        /* null until the first group has been added */
+        private Map<String, SortedSet<String>> common = null;
+
+        Common(final Function<Series, Map<String, String>> accessor) {
+            this.accessor = accessor;
+        }
+
+        void add(final ShardedResultGroup group) {
+            if (common == null) {
+                common = new HashMap<>();
+
+                for (final Series series : group.getSeries()) {
+                    for (final Map.Entry<String, String> e : accessor.apply(series).entrySet()) {
+                        common
+                            .computeIfAbsent(e.getKey(), k -> new TreeSet<>())
+                            .add(e.getValue());
+                    }
+                }
+
+                return;
+            }
+
+            if (common.isEmpty()) {
+                return;
+            }
+
+            final Set<String> seen = new HashSet<>();
+
+            for (final Series series : group.getSeries()) {
+                for (final Map.Entry<String, String> e : accessor.apply(series).entrySet()) {
+                    final SortedSet<String> values = common.get(e.getKey());
+
+                    if (values != null) {
+                        values.add(e.getValue());
+                        seen.add(e.getKey());
+                    }
+                }
+            }
+
+            common.keySet().retainAll(seen);
+        }
+
+        Map<String, SortedSet<String>> get() {
+            if (common == null) {
+                return ImmutableMap.of();
+            }
+
+            return common;
+        }
+    }
 }
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2020 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+
+package com.spotify.heroic.metric;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.common.collect.ImmutableList;
+import com.spotify.heroic.common.Series;
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * Writes a query response in the same JSON format as {@link QueryMetricsResponse}, one result
+ * group at a time, so that groups can be written as soon as they are final and do not all have to
+ * be kept until the query has completed.
+ * <p>
+ * Since common tags and resources are only known once every group has been written, they are
+ * written after the result groups, together with the rest of the response which is only known
+ * once the query has completed. Only the query id is written before the groups.
+ */
+public class QueryMetricsResponseStream {
+    private final QueryMetricsResponseSerializer serializer = new QueryMetricsResponseSerializer();
+    private final QueryMetricsResponseSerializer.Common commonTags =
+        new QueryMetricsResponseSerializer.Common(Series::getTags);
+    private final QueryMetricsResponseSerializer.Common commonResource =
+        new QueryMetricsResponseSerializer.Common(Series::getResource);
+
+    private final JsonGenerator g;
+
+    /**
+     * Start writing a response.
+     *
+     * @param g generator to write to, which must have a codec
+     */
+    public QueryMetricsResponseStream(final JsonGenerator g, final UUID queryId)
+        throws IOException {
+        this.g = g;
+
+        g.writeStartObject();
+        g.writeObjectField("queryId", queryId);
+        g.writeFieldName("result");
+        g.writeStartArray();
+    }
+
+    /**
+     * Write a single result group, and flush it.
+     */
+    public void write(final ShardedResultGroup group) throws IOException {
+        commonTags.add(group);
+        commonResource.add(group);
+        serializer.serializeGroup(g, null, group);
+        g.flush();
+    }
+
+    /**
+     * Write the rest of the response and complete it.
+     * <p>
+     * The groups of the given response are written first, the query id of the given response is
+     * ignored since it was written when the response was started.
+     */
+    public void end(final QueryMetricsResponse response) throws IOException {
+        for (final ShardedResultGroup group : response.getResult()) {
+            commonTags.add(group);
+            commonResource.add(group);
+            serializer.serializeGroup(g, null, group);
+        }
+
+        g.writeEndArray();
+
+        g.writeObjectField("range", response.getRange());
+        g.writeObjectField("trace", response.getTrace());
+        g.writeObjectField("limits", response.getLimits());
+        g.writeBooleanField("cached",
+            response.getCache().map(CacheInfo::getCached).orElse(false));
+        g.writeObjectField("cache", response.getCache());
+
+        g.writeFieldName("commonTags");
+        serializer.serializeCommonTags(g, commonTags.get());
+
+        g.writeFieldName("commonResource");
+        serializer.serializeCommonTags(g, commonResource.get());
+
+        g.writeObjectField("preAggregationSampleSize", response.getPreAggregationSampleSize());
+
+        g.writeFieldName("errors");
+        serializer.serializeErrors(g, response.getErrors());
+
+        g.writeEndObject();
+        g.flush();
+    }
+
+    /**
+     * Complete the response with an error, when the query failed after groups have been written.
+     */
+    public void fail(final RequestError error) throws IOException {
+        g.writeEndArray();
+
+        g.writeFieldName("errors");
+        serializer.serializeErrors(g, ImmutableList.of(error));
+
+        g.writeEndObject();
+        g.flush();
+    }
+}
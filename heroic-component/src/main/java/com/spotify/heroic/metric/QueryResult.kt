@@ -72,6 +72,21 @@ data class QueryResult(
             Optional.of(cache))
     }
 
+    /**
+     * Replace the trace of the result.
+     */
+    fun withTrace(trace: QueryTrace): QueryResult {
+        return QueryResult(range, groups, errors, trace, limits, preAggregationSampleSize, cache)
+    }
+
+    /**
+     * Add a limit which was reached to the result.
+     */
+    fun withLimit(limit: ResultLimit): QueryResult {
+        return QueryResult(range, groups, errors, trace, limits.add(limit),
+            preAggregationSampleSize, cache)
+    }
+
     companion object {
         /**
          * Collect result parts into a complete result.
@@ -85,24 +100,50 @@ data class QueryResult(
             range: DateRange,
             combiner: AggregationCombiner,
             groupLimit: OptionalLimit
+        ): Collector<QueryResultPart, QueryResult> =
+            collectParts(what, range, groupLimit) { parts ->
+                combiner.combine(parts.filterNot { it.isEmpty() }.map { it.groups })
+            }
+
+        /**
+         * Collect result parts, whose groups have already been added to the given accumulator,
+         * into a complete result.
+         * <p>
+         * The groups of the parts themselves are ignored.
+         *
+         * @param range The range which the result represents.
+         * @return A complete QueryResult.
+         */
+        @JvmStatic
+        fun collectParts(
+            what: QueryTrace.Identifier,
+            range: DateRange,
+            accumulator: AggregationCombiner.Accumulator,
+            groupLimit: OptionalLimit
+        ): Collector<QueryResultPart, QueryResult> =
+            collectParts(what, range, groupLimit) { accumulator.combine() }
+
+        private fun collectParts(
+            what: QueryTrace.Identifier,
+            range: DateRange,
+            groupLimit: OptionalLimit,
+            combine: (Collection<QueryResultPart>) -> List<ShardedResultGroup>
         ): Collector<QueryResultPart, QueryResult> {
             val w = Tracing.DEFAULT.watch(what)
             return Collector { parts: Collection<QueryResultPart> ->
-                val all = mutableListOf<List<ShardedResultGroup>>()
                 val errors = mutableListOf<RequestError>()
                 val queryTraces = mutableListOf<QueryTrace>()
                 val limits = mutableListOf<ResultLimit>()
                 var preAggregationSampleSize: Long = 0
 
-                parts.asSequence().map {
+                parts.forEach {
                     errors.addAll(it.errors)
                     queryTraces.add(it.queryTrace)
                     limits.addAll(it.limits.limits)
                     preAggregationSampleSize += it.preAggregationSampleSize
-                    it
-                }.filterNot { it.isEmpty() }.forEach { all.add(it.groups) }
+                }
 
-                val groups = combiner.combine(all)
+                val groups = combine(parts)
                 val trace = w.end(queryTraces.toList())
                 if (groupLimit.isGreaterOrEqual(groups.size.toLong())) {
                     limits.add(ResultLimit.GROUP)
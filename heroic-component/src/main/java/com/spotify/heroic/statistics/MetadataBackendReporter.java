@@ -30,6 +30,23 @@ public interface MetadataBackendReporter {
 
     void failedShards(final long errors);
 
+    /**
+     * A series lookup was served from the node-local series cache.
+     *
+     * @param ageMillis how long ago the served entry was resolved
+     */
+    void reportSeriesCacheHit(long ageMillis);
+
+    /**
+     * A series lookup was not in the node-local series cache.
+     */
+    void reportSeriesCacheMiss();
+
+    /**
+     * A newly written series was added to, or invalidated, a cached series lookup.
+     */
+    void reportSeriesCacheUpdate();
+
     FutureReporter.Context setupBackendWriteReporter();
 
     MetadataBackend decorate(MetadataBackend backend);
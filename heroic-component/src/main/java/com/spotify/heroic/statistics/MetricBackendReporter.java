@@ -33,4 +33,34 @@ public interface MetricBackendReporter {
     FutureReporter.Context reportQueryMetrics();
 
     void reportWritesDroppedBySize();
+
+    /**
+     * Report data decoded by a backend while reading, in bytes read from storage and in points.
+     */
+    void reportDecoded(long bytes, long points);
+
+    /**
+     * Report the size of the node-wide memory budget for queries, in bytes.
+     */
+    void reportMemoryBudget(long bytes);
+
+    /**
+     * Report how many bytes of the memory budget are currently reserved by queries.
+     */
+    void reportMemoryReserved(long bytes);
+
+    /**
+     * Report that a query was queued, waiting for memory budget.
+     */
+    void reportQueryQueued();
+
+    /**
+     * Report that a query left the queue, either because it was admitted or cancelled.
+     */
+    void reportQueryDequeued();
+
+    /**
+     * Report that a query was rejected, since the memory budget and its queue were exhausted.
+     */
+    void reportQueryShed();
 }
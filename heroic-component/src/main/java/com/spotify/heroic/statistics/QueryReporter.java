@@ -21,6 +21,8 @@
 
 package com.spotify.heroic.statistics;
 
+import java.util.Map;
+
 public interface QueryReporter {
     /**
      * Report on a full query, on an API node level
@@ -41,4 +43,15 @@ public interface QueryReporter {
     void reportClusterNodeRpcError();
 
     void reportClusterNodeRpcCancellation();
+
+    /**
+     * Report that a duplicate request was sent to a second node in the given shard, since the
+     * first request was slower than the hedge delay.
+     */
+    void reportClusterHedgedRequest(Map<String, String> shard);
+
+    /**
+     * Report that a duplicate request to the given shard completed before the original request.
+     */
+    void reportClusterHedgeWin(Map<String, String> shard);
 }
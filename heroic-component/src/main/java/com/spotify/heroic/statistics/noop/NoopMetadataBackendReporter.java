@@ -47,6 +47,18 @@ public class NoopMetadataBackendReporter implements MetadataBackendReporter {
     @Override
     public void failedShards(final long errors) { }
 
+    @Override
+    public void reportSeriesCacheHit(final long ageMillis) {
+    }
+
+    @Override
+    public void reportSeriesCacheMiss() {
+    }
+
+    @Override
+    public void reportSeriesCacheUpdate() {
+    }
+
     @Override
     public FutureReporter.Context setupBackendWriteReporter() {
         return NoopFutureReporterContext.get();
@@ -82,6 +82,30 @@ public class NoopMetricBackendReporter implements MetricBackendReporter {
 
     }
 
+    @Override
+    public void reportDecoded(final long bytes, final long points) {
+    }
+
+    @Override
+    public void reportMemoryBudget(final long bytes) {
+    }
+
+    @Override
+    public void reportMemoryReserved(final long bytes) {
+    }
+
+    @Override
+    public void reportQueryQueued() {
+    }
+
+    @Override
+    public void reportQueryDequeued() {
+    }
+
+    @Override
+    public void reportQueryShed() {
+    }
+
     private static final NoopMetricBackendReporter instance = new NoopMetricBackendReporter();
 
     public static NoopMetricBackendReporter get() {
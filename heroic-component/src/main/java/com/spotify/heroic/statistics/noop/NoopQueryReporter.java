@@ -23,6 +23,7 @@ package com.spotify.heroic.statistics.noop;
 
 import com.spotify.heroic.statistics.FutureReporter;
 import com.spotify.heroic.statistics.QueryReporter;
+import java.util.Map;
 
 public class NoopQueryReporter implements QueryReporter {
     private static final NoopQueryReporter INSTANCE = new NoopQueryReporter();
@@ -51,4 +52,12 @@ public class NoopQueryReporter implements QueryReporter {
     @Override
     public void reportClusterNodeRpcCancellation() {
     }
+
+    @Override
+    public void reportClusterHedgedRequest(final Map<String, String> shard) {
+    }
+
+    @Override
+    public void reportClusterHedgeWin(final Map<String, String> shard) {
+    }
 }
@@ -0,0 +1,88 @@
+package com.spotify.heroic.metric;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import java.util.Optional;
+import org.junit.Test;
+
+public class ColumnarPointCollectionTest {
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private MetricCollection.ColumnarPointCollection columns(final Point... points) {
+        final MetricCollection.ColumnarPointCollection.Builder builder =
+            MetricCollection.ColumnarPointCollection.builder(1);
+
+        for (final Point p : points) {
+            builder.add(p.getTimestamp(), p.getValue());
+        }
+
+        return builder.build();
+    }
+
+    @Test
+    public void testDataView() {
+        final MetricCollection.ColumnarPointCollection columns =
+            columns(new Point(10L, 1.0), new Point(20L, 2.0), new Point(40L, 3.0));
+
+        assertEquals(MetricType.POINT, columns.getType());
+        assertEquals(3, columns.size());
+        assertFalse(columns.isEmpty());
+        assertEquals(20L, columns.getTimestamp(1));
+        assertEquals(3.0, columns.getValue(2), 0.0);
+        assertEquals(
+            ImmutableList.of(new Point(10L, 1.0), new Point(20L, 2.0), new Point(40L, 3.0)),
+            columns.data());
+        assertEquals(ImmutableList.of(new Point(20L, 2.0)),
+            columns.getDataAs(Point.class).subList(1, 2));
+        assertEquals(Optional.of(15L), columns.getAverageDistanceBetweenMetrics());
+    }
+
+    @Test
+    public void testEmpty() {
+        final MetricCollection.ColumnarPointCollection columns = columns();
+
+        assertTrue(columns.isEmpty());
+        assertEquals(ImmutableList.of(), columns.data());
+        assertEquals(Optional.empty(), columns.getAverageDistanceBetweenMetrics());
+    }
+
+    @Test
+    public void testEquality() {
+        assertEquals(columns(new Point(10L, 1.0)), columns(new Point(10L, 1.0)));
+        assertEquals(columns(new Point(10L, 1.0)).hashCode(),
+            columns(new Point(10L, 1.0)).hashCode());
+    }
+
+    @Test
+    public void testEqualToPointCollection() {
+        final MetricCollection points =
+            MetricCollection.points(ImmutableList.of(new Point(10L, 1.0), new Point(20L, 2.0)));
+        final MetricCollection columns = columns(new Point(10L, 1.0), new Point(20L, 2.0));
+
+        assertEquals(points, columns);
+        assertEquals(columns, points);
+        assertEquals(points.hashCode(), columns.hashCode());
+
+        assertNotEquals(columns, MetricCollection.points(ImmutableList.of(new Point(10L, 1.0))));
+        assertNotEquals(columns(), MetricCollection.spreads(ImmutableList.of()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSizeOutOfBounds() {
+        MetricCollection.points(new long[1], new double[1], 2);
+    }
+
+    @Test
+    public void testSerializesLikePoints() throws Exception {
+        final ImmutableList<Point> points =
+            ImmutableList.of(new Point(10L, 1.0), new Point(20L, 2.0));
+
+        assertEquals(mapper.writeValueAsString(MetricCollection.points(points)),
+            mapper.writeValueAsString(columns(points.toArray(new Point[0]))));
+    }
+}
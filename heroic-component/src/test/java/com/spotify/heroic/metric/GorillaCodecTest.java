@@ -0,0 +1,78 @@
+package com.spotify.heroic.metric;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class GorillaCodecTest {
+    private static List<Point> decode(final GorillaCodec.BitReader in, final int count) {
+        final List<Point> points = new ArrayList<>();
+        GorillaCodec.decode(in, count,
+            (timestamp, value) -> points.add(new Point(timestamp, value)));
+        return points;
+    }
+
+    private static List<Point> points(
+        final long[] timestamps, final double[] values, final int from, final int to
+    ) {
+        final List<Point> points = new ArrayList<>();
+
+        for (int i = from; i < to; i++) {
+            points.add(new Point(timestamps[i], values[i]));
+        }
+
+        return points;
+    }
+
+    @Test
+    public void testRoundtrip() {
+        final Random random = new Random(0x5eed);
+        final int size = 1000;
+        final long[] timestamps = new long[size];
+        final double[] values = new double[size];
+
+        long timestamp = -1_000_000L;
+
+        for (int i = 0; i < size; i++) {
+            /* mostly regular intervals, with the occasional large jump */
+            timestamp += i % 100 == 0 ? 1 + random.nextInt(1 << 20) : 10_000L;
+            timestamps[i] = timestamp;
+            values[i] = i % 3 == 0 ? random.nextDouble() : i / 10;
+        }
+
+        values[1] = Double.NaN;
+        values[2] = Double.NEGATIVE_INFINITY;
+
+        final GorillaCodec.BitWriter out = new GorillaCodec.BitWriter(size);
+        GorillaCodec.encode(out, timestamps, values, 10, size);
+
+        assertEquals(points(timestamps, values, 10, size),
+            decode(new GorillaCodec.BitReader(out.finish()), size - 10));
+        assertEquals(points(timestamps, values, 10, size),
+            decode(GorillaCodec.BitReader.fromBytes(out.toByteArray()), size - 10));
+    }
+
+    @Test
+    public void testPrefix() {
+        final long[] timestamps = {1L, 2L, 4L};
+        final double[] values = {1D, 2D, 2D};
+
+        /* points can follow other data in the same stream */
+        final GorillaCodec.BitWriter out = new GorillaCodec.BitWriter(timestamps.length);
+        out.write(3, 5);
+        GorillaCodec.encode(out, timestamps, values, 0, timestamps.length);
+
+        final GorillaCodec.BitReader in = GorillaCodec.BitReader.fromBytes(out.toByteArray());
+        assertEquals(3L, in.read(5));
+        assertEquals(points(timestamps, values, 0, timestamps.length),
+            decode(in, timestamps.length));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmpty() {
+        GorillaCodec.encode(new GorillaCodec.BitWriter(0), new long[0], new double[0], 0, 0);
+    }
+}
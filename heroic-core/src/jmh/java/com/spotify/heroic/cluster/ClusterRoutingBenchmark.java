@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2020 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.heroic.cluster;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.LinkedListMultimap;
+import com.google.common.collect.Multimap;
+import eu.toolchain.async.AsyncFuture;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cost of routing a query to one node in every shard, which is what a full query fan-out does.
+ * <p>
+ * {@link #indexed(Blackhole)} uses the pre-indexed {@link NodeRegistry}, while
+ * {@link #rebuilt(Blackhole)} rebuilds the shard index for every lookup, like the registry used
+ * to.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClusterRoutingBenchmark {
+    @Param({"500", "2000"})
+    public int nodes;
+
+    @Param({"100"})
+    public int shards;
+
+    private final Predicate<ClusterNode> exclude = n -> false;
+    private final NodeSelectionStrategy selection = new RandomNodeSelection();
+
+    private List<ClusterNode> entries;
+    private List<Map<String, String>> shardTags;
+    private NodeRegistry registry;
+
+    @Setup
+    public void setup() {
+        shardTags = new ArrayList<>();
+
+        for (int i = 0; i < shards; i++) {
+            shardTags.add(ImmutableMap.of("site", "site" + i, "role", "query"));
+        }
+
+        entries = new ArrayList<>();
+
+        for (int i = 0; i < nodes; i++) {
+            entries.add(new BenchmarkNode(shardTags.get(i % shards)));
+        }
+
+        registry = new NodeRegistry(entries, entries.size());
+    }
+
+    @Benchmark
+    public void indexed(final Blackhole bh) {
+        for (final Map<String, String> shard : shardTags) {
+            bh.consume(registry.hasNodeInShardButNotWithId(shard, exclude));
+            bh.consume(registry.getNodeInShardButNotWithId(shard, exclude, selection));
+        }
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void indexedContended(final Blackhole bh) {
+        indexed(bh);
+    }
+
+    @Benchmark
+    public void rebuilt(final Blackhole bh) {
+        for (final Map<String, String> shard : shardTags) {
+            bh.consume(rebuiltLookup(shard).isPresent());
+            bh.consume(rebuiltLookup(shard));
+        }
+    }
+
+    private Optional<ClusterNode> rebuiltLookup(final Map<String, String> shard) {
+        final Multimap<Map<String, String>, ClusterNode> shardToNode =
+            LinkedListMultimap.create();
+
+        for (final ClusterNode e : entries) {
+            shardToNode.put(e.metadata().getTags(), e);
+        }
+
+        final Collection<ClusterNode> nodesInShard = shardToNode.get(shard);
+
+        final List<ClusterNode> candidates = nodesInShard
+            .stream()
+            .filter(ClusterNode::isAlive)
+            .filter(n -> !exclude.test(n))
+            .collect(Collectors.toList());
+
+        return selection.select(candidates);
+    }
+
+    private static class BenchmarkNode implements ClusterNode {
+        private final NodeMetadata metadata;
+
+        BenchmarkNode(final Map<String, String> tags) {
+            this.metadata = new NodeMetadata(0, UUID.randomUUID(), tags, null);
+        }
+
+        @Override
+        public NodeMetadata metadata() {
+            return metadata;
+        }
+
+        @Override
+        public AsyncFuture<NodeMetadata> fetchMetadata() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public AsyncFuture<Void> close() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Group useOptionalGroup(final Optional<String> group) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
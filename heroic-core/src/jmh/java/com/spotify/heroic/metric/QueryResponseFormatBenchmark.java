@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2020 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.heroic.metric;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteStreams;
+import com.spotify.heroic.HeroicMappers;
+import com.spotify.heroic.common.DateRange;
+import com.spotify.heroic.common.Series;
+import com.spotify.heroic.grammar.CoreQueryParser;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of writing a query response with many samples as JSON, compared to the columnar format.
+ * <p>
+ * Both are written to a stream which discards its output, so this measures encoding only and not
+ * the compression applied by the HTTP server.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryResponseFormatBenchmark {
+    @Param({"100"})
+    public int groups;
+
+    @Param({"10000"})
+    public int points;
+
+    private ObjectMapper mapper;
+    private ColumnarResponseEncoder encoder;
+    private QueryMetricsResponse response;
+
+    @Setup
+    public void setup() {
+        mapper = HeroicMappers.json(new CoreQueryParser());
+        encoder = new ColumnarResponseEncoder(mapper);
+
+        final List<ShardedResultGroup> result = new ArrayList<>();
+
+        for (int g = 0; g < groups; g++) {
+            final MetricCollection.ColumnarPointCollection.Builder builder =
+                MetricCollection.ColumnarPointCollection.builder(points);
+
+            for (int i = 0; i < points; i++) {
+                builder.add(i * 10000L, Math.sin(i) * g);
+            }
+
+            final Series series =
+                Series.of("foo", ImmutableMap.of("host", "host" + g, "site", "lon"));
+
+            result.add(new ShardedResultGroup(ImmutableMap.of("site", "lon"), ImmutableMap.of(),
+                ImmutableSet.of(series), builder.build(), 10000L));
+        }
+
+        response = new QueryMetricsResponse(UUID.randomUUID(),
+            DateRange.create(0L, points * 10000L), result, ImmutableList.of(),
+            QueryTrace.of(QueryTrace.identifier("benchmark"), 0L), ResultLimits.of(),
+            Optional.empty(), Optional.empty());
+    }
+
+    @Benchmark
+    public void json() throws IOException {
+        mapper.writeValue(ByteStreams.nullOutputStream(), response);
+    }
+
+    @Benchmark
+    public void columnar() throws IOException {
+        encoder.encode(response, ByteStreams.nullOutputStream());
+    }
+}
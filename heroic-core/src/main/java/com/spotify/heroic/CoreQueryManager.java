@@ -26,6 +26,11 @@ import static io.opencensus.trace.AttributeValue.longAttributeValue;
 import static io.opencensus.trace.AttributeValue.stringAttributeValue;
 
 import com.google.common.base.Stopwatch;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 import com.spotify.heroic.aggregation.Aggregation;
 import com.spotify.heroic.aggregation.AggregationCombiner;
@@ -45,7 +50,10 @@ import com.spotify.heroic.common.Feature;
 import com.spotify.heroic.common.Features;
 import com.spotify.heroic.common.OptionalLimit;
 import com.spotify.heroic.conditionalfeatures.ConditionalFeatures;
+import com.spotify.heroic.filter.AndFilter;
 import com.spotify.heroic.filter.Filter;
+import com.spotify.heroic.filter.MatchTagFilter;
+import com.spotify.heroic.filter.NotFilter;
 import com.spotify.heroic.filter.TrueFilter;
 import com.spotify.heroic.grammar.DefaultScope;
 import com.spotify.heroic.grammar.Expression;
@@ -66,6 +74,8 @@ import com.spotify.heroic.metric.MetricType;
 import com.spotify.heroic.metric.QueryResult;
 import com.spotify.heroic.metric.QueryResultPart;
 import com.spotify.heroic.metric.QueryTrace;
+import com.spotify.heroic.metric.ResultLimit;
+import com.spotify.heroic.metric.ShardedResultGroup;
 import com.spotify.heroic.metric.Tracing;
 import com.spotify.heroic.metric.WriteMetric;
 import com.spotify.heroic.querylogging.QueryContext;
@@ -87,10 +97,15 @@ import io.opencensus.trace.Span;
 import io.opencensus.trace.Tracer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.SortedSet;
+import java.util.TreeSet;
 import java.util.concurrent.TimeUnit;
 import java.util.function.BiFunction;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import javax.annotation.Nullable;
 import javax.inject.Inject;
@@ -105,6 +120,14 @@ public class CoreQueryManager implements QueryManager {
         QueryTrace.identifier(CoreQueryManager.class, "query_shard");
     public static final QueryTrace.Identifier QUERY =
         QueryTrace.identifier(CoreQueryManager.class, "query");
+    public static final QueryTrace.Identifier SHARDS_PARTITIONED =
+        QueryTrace.identifier(CoreQueryManager.class, "shards_partitioned");
+    public static final QueryTrace.Identifier PARTITION_CHECKED_QUERY =
+        QueryTrace.identifier(CoreQueryManager.class, "partition_checked_query");
+
+    /* how long it is remembered if the series of a filter are partitioned on the shard tags */
+    private static final long PARTITION_CHECK_TTL_MINUTES = 10;
+    private static final long MAX_PARTITION_CHECKS = 10000;
     private static boolean hasWarnedSlicedDataFetch = false;
 
     private static final Tracer tracer = io.opencensus.trace.Tracing.getTracer();
@@ -123,6 +146,9 @@ public class CoreQueryManager implements QueryManager {
 
     private final long smallQueryThreshold;
 
+    /* if the series matching a filter are partitioned on the tags of a set of shards */
+    private final Cache<PartitionCheck, Boolean> partitioned;
+
     @Inject
     public CoreQueryManager(
         @Named("features") final Features features,
@@ -150,6 +176,20 @@ public class CoreQueryManager implements QueryManager {
         this.smallQueryThreshold = smallQueryThreshold;
         this.conditionalFeatures = conditionalFeatures;
         this.queryLogger = queryLoggerFactory.create("CoreQueryManager");
+
+        final Ticker ticker = new Ticker() {
+            @Override
+            public long read() {
+                return TimeUnit.MILLISECONDS.toNanos(clock.currentTimeMillis());
+            }
+        };
+
+        this.partitioned = CacheBuilder
+            .newBuilder()
+            .maximumSize(MAX_PARTITION_CHECKS)
+            .expireAfterWrite(PARTITION_CHECK_TTL_MINUTES, TimeUnit.MINUTES)
+            .ticker(ticker)
+            .build();
     }
 
     @Override
@@ -216,6 +256,19 @@ public class CoreQueryManager implements QueryManager {
             this.shards = shards;
         }
 
+        /**
+         * Tags which the shards of this group are partitioned on.
+         */
+        private Set<String> shardTags() {
+            final Set<String> tags = new TreeSet<>();
+
+            for (final ClusterShard shard : shards) {
+                tags.addAll(shard.getShard().keySet());
+            }
+
+            return tags;
+        }
+
         @Override
         public AsyncFuture<QueryResult> query(Query query, QueryContext queryContext) {
             return query(query, queryContext, tracer.getCurrentSpan());
@@ -224,7 +277,22 @@ public class CoreQueryManager implements QueryManager {
         @Override
         public AsyncFuture<QueryResult> query(
             final Query q, final QueryContext queryContext, @Nullable Span parentSpan) {
+            return query(q, queryContext, parentSpan, Optional.empty(), ShardFilters.UNCHECKED);
+        }
 
+        @Override
+        public AsyncFuture<QueryResult> query(
+            final Query q, final QueryContext queryContext, @Nullable final Span parentSpan,
+            final Consumer<ShardedResultGroup> groups
+        ) {
+            return query(q, queryContext, parentSpan, Optional.of(groups),
+                ShardFilters.UNCHECKED);
+        }
+
+        private AsyncFuture<QueryResult> query(
+            final Query q, final QueryContext queryContext, @Nullable Span parentSpan,
+            final Optional<Consumer<ShardedResultGroup>> groups, final ShardFilters shardFilters
+        ) {
             final QueryOptions options = q.getOptions().orElseGet(QueryOptions::defaults);
             final Tracing tracing = options.tracing();
 
@@ -232,9 +300,9 @@ public class CoreQueryManager implements QueryManager {
             final Stopwatch fullQueryWatch = Stopwatch.createStarted();
             final long now = clock.currentTimeMillis();
 
-            queryLogger.logQuery(queryContext, q);
-
-            final List<AsyncFuture<QueryResultPart>> futures = new ArrayList<>();
+            if (shardFilters == ShardFilters.UNCHECKED) {
+                queryLogger.logQuery(queryContext, q);
+            }
 
             final MetricType source = q.getSource().orElse(MetricType.POINT);
 
@@ -245,7 +313,7 @@ public class CoreQueryManager implements QueryManager {
 
             final AggregationContext context =
                 AggregationContext.defaultInstance(cadenceFromRange(rawRange));
-            final AggregationInstance root = aggregation.apply(context);
+            final AggregationInstance applied = aggregation.apply(context);
 
             final AggregationInstance aggregationInstance;
 
@@ -253,6 +321,44 @@ public class CoreQueryManager implements QueryManager {
 
             boolean isDistributed = features.hasFeature(Feature.DISTRIBUTED_AGGREGATIONS);
 
+            final AggregationInstance root;
+
+            /* with a single shard, every group is complete on it */
+            if (isDistributed && shards.size() > 1 &&
+                applied.withoutDistributedFilter() != applied) {
+                if (!applied.distributedValidFor(shardTags())) {
+                    return async.resolved(QueryResult.error(rawRange,
+                        "Aggregation filters groups on each shard, but the groups are not " +
+                            "keyed on every tag the cluster is sharded on: " + shardTags(),
+                        shardWatch.end()));
+                }
+
+                /* groups keyed on the shard tags are only complete on one shard if every series
+                 * is held by the shard which matches its tags */
+                if (shardFilters == ShardFilters.UNCHECKED) {
+                    final QueryTrace.NamedWatch checkedWatch =
+                        tracing.watch(PARTITION_CHECKED_QUERY);
+                    final QueryTrace.NamedWatch checkWatch = tracing.watch(SHARDS_PARTITIONED);
+
+                    return shardsPartitioned(filter, rawRange).lazyTransform(partitioned -> {
+                        final QueryTrace check = checkWatch.end();
+
+                        return query(q, queryContext, parentSpan, groups,
+                            partitioned ? ShardFilters.ALLOWED : ShardFilters.DISABLED)
+                            .directTransform(result -> result.withTrace(
+                                checkedWatch.end(ImmutableList.of(check, result.getTrace()))));
+                    });
+                }
+
+                if (shardFilters == ShardFilters.DISABLED) {
+                    root = applied.withoutDistributedFilter();
+                } else {
+                    root = applied;
+                }
+            } else {
+                root = applied;
+            }
+
             if (isDistributed) {
                 aggregationInstance = root.distributed();
             } else {
@@ -275,14 +381,6 @@ public class CoreQueryManager implements QueryManager {
                 .orElseGet(() -> features.withFeature(Feature.END_BUCKET, () -> BucketStrategy.END,
                     () -> BucketStrategy.START));
 
-            final AggregationCombiner combiner;
-
-            if (isDistributed) {
-                combiner = DistributedAggregationCombiner.create(root, range, bucketStrategy);
-            } else {
-                combiner = AggregationCombiner.DEFAULT;
-            }
-
             final FullQuery.Request request =
                 FullQuery.Request.create(source, filter, range, aggregationInstance, options,
                     queryContext, features);
@@ -292,7 +390,23 @@ public class CoreQueryManager implements QueryManager {
             final Span queryManagerSpan = tracer.spanBuilderWithExplicitParent(
                 "coreQueryManager.query", parentSpan).startSpan();
 
-            final AsyncFuture<QueryResult> query = queryCache.load(request, () -> {
+            final OptionalLimit limit = options.groupLimit().orElse(groupLimit);
+
+            /* groups of a distributed query are only final once every shard has been reduced */
+            final Optional<StreamingAccumulator> streaming = groups
+                .filter(consumer -> !isDistributed && !queryCache.retainsResults())
+                .map(consumer -> new StreamingAccumulator(consumer, limit));
+
+            final AsyncFuture<QueryResult> query = queryCache.load(request, part -> {
+                final AggregationCombiner combiner = isDistributed
+                    ? DistributedAggregationCombiner.create(root, part.range(), bucketStrategy)
+                    : AggregationCombiner.DEFAULT;
+
+                final AggregationCombiner.Accumulator accumulator = streaming
+                    .<AggregationCombiner.Accumulator>map(s -> s)
+                    .orElseGet(() -> combiner.accumulator(shards.size()));
+
+                final List<AsyncFuture<QueryResultPart>> futures = new ArrayList<>();
 
                 for (final ClusterShard shard : shards) {
                     final Span shardSpan = tracer.spanBuilderWithExplicitParent(
@@ -303,28 +417,31 @@ public class CoreQueryManager implements QueryManager {
                     final QueryTrace.NamedWatch shardLocalWatch = shardWatch.extendIdentifier(
                         shard.getShard().toString());
 
-                    final AsyncFuture<QueryResultPart> queryPart = shard
-                        .apply(g ->
-                            g.query(request, shardSpan), getStoreTracesTransform(shardLocalWatch))
-                        .catchFailed(FullQuery.shardError(shardLocalWatch, shard))
-                        .directTransform(fullQuery -> {
-                            queryLogger.logIncomingResponseFromShard(queryContext, fullQuery);
-                            return fullQuery;
-                        })
-                        .directTransform(QueryResultPart.fromResultGroup(shard))
-                        .onDone(new EndSpanFutureReporter(shardSpan));
-
-                    if (!shard.isDarkload()) {
-                        // Stash the future to be able to gather result from all shards.
-                        // Except if this shard is a darkload shard, then we will just fire & forget
-                        futures.add(queryPart);
+                    if (shard.isDarkload()) {
+                        // Darkload shards are fired & forgotten, their results are never combined
+                        queryShard(shard, g -> g.query(part, shardSpan), shardLocalWatch,
+                            queryContext, shardSpan);
+                        continue;
                     }
+
+                    // Groups are combined by each request as they are received, and merged once
+                    // the shard has been queried successfully. The part only carries the rest of
+                    // the shard's result.
+                    final ShardQueryStream stream =
+                        new ShardQueryStream(shard, futures.size(), accumulator);
+
+                    futures.add(queryShard(shard, g -> stream.query(g, part, shardSpan),
+                        shardLocalWatch, queryContext, shardSpan)
+                        .directTransform(stream::toResultPart));
                 }
 
-                final OptionalLimit limit = options.groupLimit().orElse(groupLimit);
+                final AsyncFuture<QueryResult> collected = async.collect(futures,
+                    QueryResult.collectParts(QUERY, part.range(), accumulator, limit));
 
-                return async.collect(futures,
-                    QueryResult.collectParts(QUERY, range, combiner, limit));
+                return streaming
+                    .map(s -> collected.directTransform(
+                        result -> s.isLimited() ? result.withLimit(ResultLimit.GROUP) : result))
+                    .orElse(collected);
             });
 
 
@@ -344,6 +461,22 @@ public class CoreQueryManager implements QueryManager {
               .onDone(new EndSpanFutureReporter(queryManagerSpan));
         }
 
+        private AsyncFuture<FullQuery> queryShard(
+            final ClusterShard shard,
+            final Function<ClusterNode.Group, AsyncFuture<FullQuery>> query,
+            final QueryTrace.NamedWatch shardLocalWatch, final QueryContext queryContext,
+            final Span shardSpan
+        ) {
+            return shard
+                .applyHedged(query, getStoreTracesTransform(shardLocalWatch))
+                .catchFailed(FullQuery.shardError(shardLocalWatch, shard))
+                .directTransform(fullQuery -> {
+                    queryLogger.logIncomingResponseFromShard(queryContext, fullQuery);
+                    return fullQuery;
+                })
+                .onDone(new EndSpanFutureReporter(shardSpan));
+        }
+
         private void reportCompletedQuery(
             final QueryResult result, final Stopwatch fullQueryWatch
         ) {
@@ -432,6 +565,66 @@ public class CoreQueryManager implements QueryManager {
             return shards;
         }
 
+        /**
+         * Check that no shard holds series matching the filter, which have other values for the
+         * shard tags than the shard itself.
+         * <p>
+         * Since this costs a lookup on every shard, a successful check is remembered for the
+         * filter and the shards for a while, regardless of the range.
+         *
+         * @return A future resolved with {@code true} if every shard only holds its own series.
+         */
+        private AsyncFuture<Boolean> shardsPartitioned(final Filter filter, final DateRange range) {
+            final ImmutableSet.Builder<Map<String, String>> shardSet = ImmutableSet.builder();
+
+            for (final ClusterShard shard : shards) {
+                shardSet.add(shard.getShard());
+            }
+
+            final PartitionCheck check = new PartitionCheck(filter.optimize(), shardSet.build());
+            final Boolean known = partitioned.getIfPresent(check);
+
+            if (known != null) {
+                return async.resolved(known);
+            }
+
+            final List<AsyncFuture<CountSeries>> futures = new ArrayList<>(shards.size());
+
+            for (final ClusterShard shard : shards) {
+                final List<Filter> own = new ArrayList<>();
+
+                for (final Map.Entry<String, String> tag : shard.getShard().entrySet()) {
+                    own.add(MatchTagFilter.create(tag.getKey(), tag.getValue()));
+                }
+
+                final Filter misplaced =
+                    AndFilter.of(filter, NotFilter.create(AndFilter.create(own))).optimize();
+                final CountSeries.Request request =
+                    new CountSeries.Request(misplaced, range, OptionalLimit.of(1L));
+
+                futures.add(shard
+                    .apply(g -> g.countSeries(request), CoreQueryManager::retryTraceHandlerNoop)
+                    .catchFailed(CountSeries.shardError(shard)));
+            }
+
+            return async.collect(futures, CountSeries.reduce()).directTransform(result -> {
+                /* a failed check is retried by the next query */
+                if (!result.getErrors().isEmpty()) {
+                    return false;
+                }
+
+                if (result.getCount() > 0) {
+                    log.info("Series are not partitioned on the shard tags {}, filtering groups " +
+                        "on the coordinator only", shardTags());
+                    partitioned.put(check, false);
+                    return false;
+                }
+
+                partitioned.put(check, true);
+                return true;
+            });
+        }
+
         private <T> AsyncFuture<T> run(
             final Function<ClusterNode.Group, AsyncFuture<T>> function,
             final Function<ClusterShard, Transform<Throwable, T>> catcher,
@@ -500,6 +693,46 @@ public class CoreQueryManager implements QueryManager {
         return features;
     }
 
+    private static final class PartitionCheck {
+        private final Filter filter;
+        private final Set<Map<String, String>> shards;
+
+        private PartitionCheck(final Filter filter, final Set<Map<String, String>> shards) {
+            this.filter = filter;
+            this.shards = shards;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+
+            if (!(o instanceof PartitionCheck)) {
+                return false;
+            }
+
+            final PartitionCheck other = (PartitionCheck) o;
+            return filter.equals(other.filter) && shards.equals(other.shards);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(filter, shards);
+        }
+    }
+
+    /**
+     * If aggregations may filter groups on each shard, see
+     * {@link AggregationInstance#distributedFilter()}.
+     */
+    private enum ShardFilters {
+        /* not yet known if the series are partitioned on the shard tags */
+        UNCHECKED,
+        ALLOWED,
+        DISABLED
+    }
+
     private static <T> T retryTraceHandlerNoop(T result, List<QueryTrace> traces) {
         // Ignore QueryTrace list
         return result;
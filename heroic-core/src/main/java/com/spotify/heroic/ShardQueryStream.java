@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2020 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.heroic;
+
+import com.google.common.collect.ImmutableList;
+import com.spotify.heroic.aggregation.AggregationCombiner;
+import com.spotify.heroic.aggregation.AggregationInstance;
+import com.spotify.heroic.cluster.ClusterNode;
+import com.spotify.heroic.cluster.ClusterShard;
+import com.spotify.heroic.metric.FullQuery;
+import com.spotify.heroic.metric.QueryResultPart;
+import com.spotify.heroic.metric.ResultGroup;
+import com.spotify.heroic.metric.ShardedResultGroup;
+import eu.toolchain.async.AsyncFuture;
+import io.opencensus.trace.Span;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import kotlin.jvm.functions.Function1;
+
+/**
+ * Streams the result groups of a single shard into an accumulator.
+ * <p>
+ * A shard might be queried by more than one request, when a request is retried or hedged. Every
+ * request is an attempt of the accumulator, which combines groups as they are received. The first
+ * request which completes owns the shard and merges its attempt into the accumulator, every other
+ * request fails when it completes. The attempt of a request which fails part way through is
+ * dropped, so that a retry or a hedged request can replace it.
+ * <p>
+ * A shard whose groups are all empty adds no groups, like an empty part which is skipped when
+ * parts are collected. Empty groups are held back until the first group with data is received.
+ */
+class ShardQueryStream {
+    private final int part;
+    private final AggregationCombiner.Accumulator accumulator;
+    private final Function1<ResultGroup, ShardedResultGroup> mapper;
+
+    private final AtomicReference<Attempt> owner = new AtomicReference<>();
+    private final AtomicLong dataSize = new AtomicLong();
+
+    ShardQueryStream(
+        final ClusterShard shard, final int part, final AggregationCombiner.Accumulator accumulator
+    ) {
+        this.part = part;
+        this.accumulator = accumulator;
+        this.mapper = ResultGroup.toShardedResultGroup(shard);
+    }
+
+    /**
+     * Query the given group of the shard.
+     *
+     * @return A future resolved with the result of the query, without any groups.
+     */
+    AsyncFuture<FullQuery> query(
+        final ClusterNode.Group group, final FullQuery.Request request, final Span span
+    ) {
+        final Attempt attempt = new Attempt();
+        return group.query(request, span, attempt).directTransform(attempt::complete);
+    }
+
+    /**
+     * Convert the result of the owning request into a part without groups.
+     */
+    QueryResultPart toResultPart(final FullQuery result) {
+        final long preAggregationSampleSize = result
+            .statistics()
+            .getCounterValue(AggregationInstance.SAMPLE_SIZE)
+            .orElseGet(dataSize::get);
+
+        return new QueryResultPart(ImmutableList.of(), result.errors(), result.trace(),
+            result.limits(), preAggregationSampleSize);
+    }
+
+    private class Attempt implements Consumer<ResultGroup> {
+        private final AggregationCombiner.Attempt attempt = accumulator.attempt(part);
+        private final List<ShardedResultGroup> empty = new ArrayList<>();
+
+        private boolean hasData;
+        private long dataSize;
+
+        @Override
+        public synchronized void accept(final ResultGroup resultGroup) {
+            final ShardedResultGroup group = mapper.invoke(resultGroup);
+
+            if (!hasData) {
+                if (group.isEmpty()) {
+                    empty.add(group);
+                    return;
+                }
+
+                hasData = true;
+                empty.forEach(attempt::add);
+                empty.clear();
+            }
+
+            dataSize += group.getMetrics().size();
+            attempt.add(group);
+        }
+
+        synchronized FullQuery complete(final FullQuery result) {
+            if (!owner.compareAndSet(null, this)) {
+                throw new IllegalStateException(
+                    "Groups of shard have been received by another request");
+            }
+
+            if (hasData) {
+                ShardQueryStream.this.dataSize.addAndGet(dataSize);
+                attempt.merge();
+            }
+
+            return result;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2020 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.heroic;
+
+import com.google.common.collect.ImmutableList;
+import com.spotify.heroic.aggregation.AggregationCombiner;
+import com.spotify.heroic.common.OptionalLimit;
+import com.spotify.heroic.metric.ShardedResultGroup;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Hands every group to a consumer as soon as it is added, instead of keeping it until the groups
+ * are combined.
+ * <p>
+ * This is only valid where groups are combined by concatenating them, like the default combiner
+ * does. Once the group limit has been reached, further groups are dropped. Groups are handed out
+ * in the order they are added, so which groups are kept when a query is limited depends on which
+ * shard responds first.
+ */
+class StreamingAccumulator implements AggregationCombiner.Accumulator {
+    private final Consumer<ShardedResultGroup> consumer;
+    private final OptionalLimit groupLimit;
+
+    private final AtomicLong added = new AtomicLong();
+
+    StreamingAccumulator(
+        final Consumer<ShardedResultGroup> consumer, final OptionalLimit groupLimit
+    ) {
+        this.consumer = consumer;
+        this.groupLimit = groupLimit;
+    }
+
+    @Override
+    public void add(final int part, final ShardedResultGroup group) {
+        if (!groupLimit.isGreater(added.incrementAndGet())) {
+            consumer.accept(group);
+        }
+    }
+
+    /**
+     * Every group has already been handed out.
+     */
+    @Override
+    public List<ShardedResultGroup> combine() {
+        return ImmutableList.of();
+    }
+
+    /**
+     * If the group limit has been reached.
+     */
+    boolean isLimited() {
+        return groupLimit.isGreaterOrEqual(added.get());
+    }
+}
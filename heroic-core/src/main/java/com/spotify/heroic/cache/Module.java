@@ -26,6 +26,7 @@ import com.spotify.heroic.HeroicModule;
 import com.spotify.heroic.cache.memcached.MemcachedCacheModule;
 import com.spotify.heroic.cache.memory.MemoryCacheModule;
 import com.spotify.heroic.cache.noop.NoopCacheModule;
+import com.spotify.heroic.cache.sliced.SlicedCacheModule;
 import com.spotify.heroic.dagger.LoadingComponent;
 
 public class Module implements HeroicModule {
@@ -37,6 +38,7 @@ public class Module implements HeroicModule {
             context.registerType("noop", NoopCacheModule.Builder.class);
             context.registerType("memory", MemoryCacheModule.Builder.class);
             context.registerType("memcached", MemcachedCacheModule.Builder.class);
+            context.registerType("sliced", SlicedCacheModule.Builder.class);
         };
     }
 }
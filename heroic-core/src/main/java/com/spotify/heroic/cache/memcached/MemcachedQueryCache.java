@@ -49,7 +49,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
-import java.util.function.Supplier;
+import java.util.function.Function;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 import javax.inject.Inject;
@@ -89,23 +89,23 @@ public class MemcachedQueryCache implements QueryCache {
 
     @Override
     public AsyncFuture<QueryResult> load(
-        FullQuery.Request request, Supplier<AsyncFuture<QueryResult>> loader
+        FullQuery.Request request, Function<FullQuery.Request, AsyncFuture<QueryResult>> loader
     ) {
         final long cadence = request.aggregation().cadence();
 
         // can't cache aggregation results _without_ a cadence.
         if (cadence <= 0) {
-            return loader.get();
+            return loader.apply(request);
         }
 
         // only cache if range is rounded to cadence.
         if (!request.features().hasFeature(Feature.SHIFT_RANGE)) {
-            return loader.get();
+            return loader.apply(request);
         }
 
         // is caching permitted?
         if (!request.features().hasFeature(Feature.CACHE_QUERY)) {
-            return loader.get();
+            return loader.apply(request);
         }
 
         final String key = buildCacheKey(request);
@@ -120,7 +120,7 @@ public class MemcachedQueryCache implements QueryCache {
 
             client.get(key).toCompletableFuture().thenAccept(result -> {
                 if (result == null) {
-                    cacheSet(future, loader, key, cadence);
+                    cacheSet(future, request, loader, key, cadence);
                     return;
                 }
                 final CachedResult cachedResult;
@@ -131,7 +131,7 @@ public class MemcachedQueryCache implements QueryCache {
                 } catch (final Exception e) {
                     log.error("{}: failed to deserialize value from cache", key, e);
                     // fallback to regular request
-                    cacheSet(future, loader, key, cadence);
+                    cacheSet(future, request, loader, key, cadence);
                     return;
                 }
 
@@ -147,7 +147,7 @@ public class MemcachedQueryCache implements QueryCache {
             }).exceptionally(t -> {
                 log.error("{}: failed to load value from cache", key, t);
                 // fallback to regular request
-                cacheSet(future, loader, key, cadence);
+                cacheSet(future, request, loader, key, cadence);
                 return null;
             });
             return future;
@@ -155,12 +155,13 @@ public class MemcachedQueryCache implements QueryCache {
     }
 
     private void cacheSet(
-        final ResolvableFuture<QueryResult> future, final Supplier<AsyncFuture<QueryResult>> loader,
-        final String key, final long cadence
+        final ResolvableFuture<QueryResult> future, final FullQuery.Request request,
+        final Function<FullQuery.Request, AsyncFuture<QueryResult>> loader, final String key,
+        final long cadence
     ) {
         log.debug("{}: loading value", key);
 
-        loader.get().onDone(new FutureDone<QueryResult>() {
+        loader.apply(request).onDone(new FutureDone<QueryResult>() {
             @Override
             public void failed(final Throwable cause) throws Exception {
                 future.fail(cause);
@@ -32,7 +32,7 @@ import net.jodah.expiringmap.ExpiringMap;
 
 import javax.inject.Inject;
 import java.util.concurrent.TimeUnit;
-import java.util.function.Supplier;
+import java.util.function.Function;
 
 @CacheScope
 public class MemoryQueryCache implements QueryCache {
@@ -47,13 +47,13 @@ public class MemoryQueryCache implements QueryCache {
 
     @Override
     public AsyncFuture<QueryResult> load(
-        FullQuery.Request request, Supplier<AsyncFuture<QueryResult>> loader
+        FullQuery.Request request, Function<FullQuery.Request, AsyncFuture<QueryResult>> loader
     ) {
         final AggregationInstance aggregation = request.aggregation();
 
         /* can't be cached :( */
         if (aggregation.cadence() <= 0) {
-            return loader.get();
+            return loader.apply(request);
         }
 
         final AsyncFuture<QueryResult> result = cache.get(request);
@@ -69,7 +69,7 @@ public class MemoryQueryCache implements QueryCache {
                 return candidate;
             }
 
-            final AsyncFuture<QueryResult> next = loader.get();
+            final AsyncFuture<QueryResult> next = loader.apply(request);
             cache.put(request, next, ExpirationPolicy.ACCESSED, aggregation.cadence(),
                 TimeUnit.MILLISECONDS);
             return next;
@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2020 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.heroic.cache.sliced;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.spotify.folsom.BinaryMemcacheClient;
+import com.spotify.folsom.ConnectFuture;
+import com.spotify.folsom.MemcacheClient;
+import com.spotify.folsom.MemcacheClientBuilder;
+import com.spotify.heroic.cache.CacheComponent;
+import com.spotify.heroic.cache.CacheModule;
+import com.spotify.heroic.cache.CacheScope;
+import com.spotify.heroic.cache.memcached.CachedResult;
+import com.spotify.heroic.common.Duration;
+import com.spotify.heroic.dagger.PrimaryComponent;
+import com.spotify.heroic.lifecycle.LifeCycle;
+import com.spotify.heroic.lifecycle.LifeCycleRegistry;
+import dagger.Component;
+import dagger.Module;
+import dagger.Provides;
+import eu.toolchain.async.AsyncFramework;
+import eu.toolchain.async.AsyncFuture;
+import eu.toolchain.async.Managed;
+import eu.toolchain.async.ManagedSetup;
+import eu.toolchain.async.ResolvableFuture;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import javax.inject.Named;
+
+@Module
+public class SlicedCacheModule implements CacheModule {
+    public static final Duration DEFAULT_SLICE_SIZE = Duration.of(1, TimeUnit.HOURS);
+    public static final Duration DEFAULT_SETTLE_TIME = Duration.of(5, TimeUnit.MINUTES);
+    public static final Duration DEFAULT_TTL = Duration.of(1, TimeUnit.DAYS);
+    public static final long DEFAULT_LOCAL_SIZE = 10000;
+
+    private final Optional<List<String>> addresses;
+    private final Duration sliceSize;
+    private final Duration settleTime;
+    private final Duration ttl;
+    private final long localSize;
+
+    public SlicedCacheModule(
+        final Optional<List<String>> addresses, final Duration sliceSize,
+        final Duration settleTime, final Duration ttl, final long localSize
+    ) {
+        this.addresses = addresses;
+        this.sliceSize = sliceSize;
+        this.settleTime = settleTime;
+        this.ttl = ttl;
+        this.localSize = localSize;
+    }
+
+    @Override
+    public CacheComponent module(PrimaryComponent primary) {
+        return DaggerSlicedCacheModule_C
+            .builder()
+            .primaryComponent(primary)
+            .slicedCacheModule(this)
+            .build();
+    }
+
+    @CacheScope
+    @Component(modules = SlicedCacheModule.class, dependencies = PrimaryComponent.class)
+    interface C extends CacheComponent {
+        @Override
+        SlicedQueryCache queryCache();
+
+        @Named("cache")
+        LifeCycle cacheLife();
+    }
+
+    @Provides
+    @CacheScope
+    public Optional<Managed<MemcacheClient<byte[]>>> memcacheClient(final AsyncFramework async) {
+        return addresses.map(addresses -> async.managed(
+            new ManagedSetup<MemcacheClient<byte[]>>() {
+                @Override
+                public AsyncFuture<MemcacheClient<byte[]>> construct() {
+                    final MemcacheClientBuilder<byte[]> builder =
+                        MemcacheClientBuilder.newByteArrayClient();
+
+                    for (final String address : addresses) {
+                        builder.withAddress(address);
+                    }
+
+                    final BinaryMemcacheClient<byte[]> client = builder.connectBinary();
+
+                    final ResolvableFuture<MemcacheClient<byte[]>> future = async.future();
+
+                    ConnectFuture
+                        .connectFuture(client)
+                        .toCompletableFuture()
+                        .thenAccept(x -> future.resolve(client))
+                        .exceptionally(throwable -> {
+                            future.fail(throwable);
+                            return null;
+                        });
+
+                    return future;
+                }
+
+                @Override
+                public AsyncFuture<Void> destruct(final MemcacheClient<byte[]> value) {
+                    return async.call(() -> {
+                        value.shutdown();
+                        return null;
+                    });
+                }
+            }));
+    }
+
+    @Provides
+    @Named("local")
+    @CacheScope
+    public Cache<String, CachedResult> local() {
+        return CacheBuilder
+            .newBuilder()
+            .maximumSize(localSize)
+            .expireAfterWrite(ttl.toMilliseconds(), TimeUnit.MILLISECONDS)
+            .build();
+    }
+
+    @Provides
+    @Named("cache")
+    @CacheScope
+    public LifeCycle life(
+        final LifeCycleRegistry registry, final Optional<Managed<MemcacheClient<byte[]>>> client
+    ) {
+        return () -> client.ifPresent(c -> {
+            registry.start(c::start);
+            registry.stop(c::stop);
+        });
+    }
+
+    @Provides
+    @Named("sliceSize")
+    @CacheScope
+    public Duration sliceSize() {
+        return sliceSize;
+    }
+
+    @Provides
+    @Named("settleTime")
+    @CacheScope
+    public Duration settleTime() {
+        return settleTime;
+    }
+
+    @Provides
+    @Named("ttl")
+    @CacheScope
+    public Duration ttl() {
+        return ttl;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder implements CacheModule.Builder {
+        private Optional<List<String>> addresses = Optional.empty();
+        private Optional<Duration> sliceSize = Optional.empty();
+        private Optional<Duration> settleTime = Optional.empty();
+        private Optional<Duration> ttl = Optional.empty();
+        private Optional<Long> localSize = Optional.empty();
+
+        public Builder() {
+        }
+
+        @JsonCreator
+        public Builder(
+            @JsonProperty("addresses") final Optional<List<String>> addresses,
+            @JsonProperty("sliceSize") final Optional<Duration> sliceSize,
+            @JsonProperty("settleTime") final Optional<Duration> settleTime,
+            @JsonProperty("ttl") final Optional<Duration> ttl,
+            @JsonProperty("localSize") final Optional<Long> localSize
+        ) {
+            this.addresses = addresses;
+            this.sliceSize = sliceSize;
+            this.settleTime = settleTime;
+            this.ttl = ttl;
+            this.localSize = localSize;
+        }
+
+        public Builder addresses(final List<String> addresses) {
+            this.addresses = Optional.of(addresses);
+            return this;
+        }
+
+        public Builder sliceSize(final Duration sliceSize) {
+            this.sliceSize = Optional.of(sliceSize);
+            return this;
+        }
+
+        public Builder settleTime(final Duration settleTime) {
+            this.settleTime = Optional.of(settleTime);
+            return this;
+        }
+
+        public Builder ttl(final Duration ttl) {
+            this.ttl = Optional.of(ttl);
+            return this;
+        }
+
+        public Builder localSize(final long localSize) {
+            this.localSize = Optional.of(localSize);
+            return this;
+        }
+
+        @Override
+        public CacheModule build() {
+            return new SlicedCacheModule(addresses, sliceSize.orElse(DEFAULT_SLICE_SIZE),
+                settleTime.orElse(DEFAULT_SETTLE_TIME), ttl.orElse(DEFAULT_TTL),
+                localSize.orElse(DEFAULT_LOCAL_SIZE));
+        }
+    }
+}
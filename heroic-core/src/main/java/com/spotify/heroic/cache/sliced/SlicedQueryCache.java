@@ -0,0 +1,531 @@
+/*
+ * Copyright (c) 2020 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.heroic.cache.sliced;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.Cache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.spotify.folsom.MemcacheClient;
+import com.spotify.heroic.HeroicMappers;
+import com.spotify.heroic.ObjectHasher;
+import com.spotify.heroic.aggregation.BucketStrategy;
+import com.spotify.heroic.cache.CacheScope;
+import com.spotify.heroic.cache.QueryCache;
+import com.spotify.heroic.cache.memcached.CachedResult;
+import com.spotify.heroic.common.DateRange;
+import com.spotify.heroic.common.Duration;
+import com.spotify.heroic.common.Feature;
+import com.spotify.heroic.metric.CacheInfo;
+import com.spotify.heroic.metric.FullQuery;
+import com.spotify.heroic.metric.Metric;
+import com.spotify.heroic.metric.MetricCollection;
+import com.spotify.heroic.metric.MetricType;
+import com.spotify.heroic.metric.Point;
+import com.spotify.heroic.metric.QueryResult;
+import com.spotify.heroic.metric.QueryTrace;
+import com.spotify.heroic.metric.RequestError;
+import com.spotify.heroic.metric.ResultLimit;
+import com.spotify.heroic.metric.ResultLimits;
+import com.spotify.heroic.metric.ShardedResultGroup;
+import com.spotify.heroic.time.Clock;
+import eu.toolchain.async.AsyncFramework;
+import eu.toolchain.async.AsyncFuture;
+import eu.toolchain.async.Borrowed;
+import eu.toolchain.async.Managed;
+import eu.toolchain.async.ResolvableFuture;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import javax.inject.Inject;
+import javax.inject.Named;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caches query results per aligned slice of time.
+ * <p>
+ * Slices are keyed on the request without its range, and the start of the slice. So a query for a
+ * moving window (like the last six hours) can serve all slices which have settled from the cache,
+ * and only has to query the uncached head and the recent tail of its range. Adjacent ranges which
+ * have to be queried are loaded in a single request, and split up into slices before they are
+ * stored.
+ * <p>
+ * Slices are kept in a local cache, in front of an optional memcached cluster.
+ */
+@CacheScope
+public class SlicedQueryCache implements QueryCache {
+    private static final Logger log = LoggerFactory.getLogger(SlicedQueryCache.class);
+
+    private static final String PREFIX = "query-slice.gz/";
+
+    private static final QueryTrace.Identifier IDENTIFIER =
+        QueryTrace.identifier(SlicedQueryCache.class);
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    /* the range used when hashing a request, to produce a key which is independent of range */
+    private static final DateRange NO_RANGE = new DateRange(0, 0);
+
+    private final AsyncFramework async;
+    private final ObjectMapper mapper;
+    private final Clock clock;
+    private final Cache<String, CachedResult> local;
+    private final Optional<Managed<MemcacheClient<byte[]>>> remote;
+    private final long sliceSize;
+    private final long settleTime;
+    private final int ttlSeconds;
+
+    @Inject
+    public SlicedQueryCache(
+        final AsyncFramework async,
+        @Named(HeroicMappers.APPLICATION_JSON_INTERNAL) final ObjectMapper mapper,
+        final Clock clock,
+        @Named("local") final Cache<String, CachedResult> local,
+        final Optional<Managed<MemcacheClient<byte[]>>> remote,
+        @Named("sliceSize") final Duration sliceSize,
+        @Named("settleTime") final Duration settleTime,
+        @Named("ttl") final Duration ttl
+    ) {
+        this.async = async;
+        this.mapper = mapper;
+        this.clock = clock;
+        this.local = local;
+        this.remote = remote;
+        this.sliceSize = sliceSize.toMilliseconds();
+        this.settleTime = settleTime.toMilliseconds();
+        this.ttlSeconds = (int) ttl.convert(TimeUnit.SECONDS);
+    }
+
+    @Override
+    public AsyncFuture<QueryResult> load(
+        final FullQuery.Request request,
+        final Function<FullQuery.Request, AsyncFuture<QueryResult>> loader
+    ) {
+        final long cadence = request.aggregation().cadence();
+
+        // slices must be aligned to the cadence
+        if (cadence <= 0 || !request.features().hasFeature(Feature.SHIFT_RANGE)) {
+            return loader.apply(request);
+        }
+
+        if (!request.features().hasFeature(Feature.CACHE_QUERY)) {
+            return loader.apply(request);
+        }
+
+        if (!request.aggregation().sliceable() || bucketStrategy(request) != BucketStrategy.START) {
+            return loader.apply(request);
+        }
+
+        final long slice = alignedSliceSize(cadence);
+        final DateRange range = request.range();
+
+        /* a slice starting exactly at the start of the query would miss its first sample, see
+         * loadSegment, so it is loaded as part of the head instead */
+        final long first = ceil(range.start() + 1, slice);
+        final long settled = clock.currentTimeMillis() - settleTime;
+        final long last = floor(Math.min(range.end(), settled), slice);
+
+        // no slice of the range has settled
+        if (first >= last) {
+            return loader.apply(request);
+        }
+
+        final String key = buildCacheKey(request, slice);
+        final QueryTrace.NamedWatch watch =
+            request.options().tracing().watch(IDENTIFIER.extend(key));
+
+        final List<AsyncFuture<Optional<CachedResult>>> lookups = new ArrayList<>();
+
+        for (long start = first; start < last; start += slice) {
+            lookups.add(lookup(sliceKey(key, start)));
+        }
+
+        return async.collect(lookups).lazyTransform(slices -> {
+            final List<AsyncFuture<Segment>> segments = new ArrayList<>();
+
+            /* range which has to be loaded, since the last cached slice */
+            long pending = range.start();
+            long start = first;
+
+            for (final Optional<CachedResult> cached : slices) {
+                if (cached.isPresent()) {
+                    if (pending < start) {
+                        segments.add(
+                            loadSegment(request, loader, key, slice, pending, start, first, last));
+                    }
+
+                    segments.add(async.resolved(Segment.cached(cached.get())));
+                    pending = start + slice;
+                }
+
+                start += slice;
+            }
+
+            if (pending < range.end()) {
+                segments.add(
+                    loadSegment(request, loader, key, slice, pending, range.end(), first, last));
+            }
+
+            return async.collect(segments).directTransform(loaded -> {
+                final QueryResult result = stitch(range, loaded, watch);
+                final long hits = loaded.stream().filter(s -> s.cached).count();
+                return result.withCache(new CacheInfo(hits > 0, ttlSeconds, key));
+            });
+        });
+    }
+
+    private BucketStrategy bucketStrategy(final FullQuery.Request request) {
+        return request.options().bucketStrategy().orElseGet(() -> request
+            .features()
+            .withFeature(Feature.END_BUCKET, () -> BucketStrategy.END,
+                () -> BucketStrategy.START));
+    }
+
+    /**
+     * Size of slices for the given cadence, rounded up to a whole number of buckets.
+     */
+    long alignedSliceSize(final long cadence) {
+        return Math.max(1, (sliceSize + cadence - 1) / cadence) * cadence;
+    }
+
+    /**
+     * Load the range [start, end), and store every settled slice which it covers.
+     * <p>
+     * Samples are fetched from (start, end], so the first bucket of a loaded range misses the
+     * sample which is exactly on its start. Segments after the start of the query are therefore
+     * loaded from one bucket earlier, and that extra bucket is dropped again. This way every
+     * bucket, and every stored slice, matches what the uncached query produces.
+     */
+    private AsyncFuture<Segment> loadSegment(
+        final FullQuery.Request request,
+        final Function<FullQuery.Request, AsyncFuture<QueryResult>> loader, final String key,
+        final long slice, final long start, final long end, final long first, final long last
+    ) {
+        final boolean head = start == request.range().start();
+        final long loadStart = head ? start : start - request.aggregation().cadence();
+
+        final FullQuery.Request segment = request.withRange(new DateRange(loadStart, end));
+
+        return loader.apply(segment).directTransform(r -> {
+            if (r.getErrors().isEmpty() && r.getLimits().getLimits().isEmpty()) {
+                for (long s = Math.max(start, first); s < Math.min(end, last); s += slice) {
+                    store(sliceKey(key, s), split(r, new DateRange(s, s + slice)));
+                }
+            } else {
+                log.debug("{}: not storing slices since response is incomplete", key);
+            }
+
+            if (head) {
+                return Segment.loaded(r);
+            }
+
+            return Segment.loaded(r, split(r, new DateRange(start, end)));
+        });
+    }
+
+    private AsyncFuture<Optional<CachedResult>> lookup(final String key) {
+        final CachedResult cached = local.getIfPresent(key);
+
+        if (cached != null) {
+            return async.resolved(Optional.of(cached));
+        }
+
+        if (!remote.isPresent()) {
+            return async.resolved(Optional.empty());
+        }
+
+        return remote.get().doto(client -> {
+            final ResolvableFuture<Optional<CachedResult>> future = async.future();
+
+            client.get(key).toCompletableFuture().thenAccept(bytes -> {
+                if (bytes == null) {
+                    future.resolve(Optional.empty());
+                    return;
+                }
+
+                final CachedResult result;
+
+                try (final InputStream input = new GZIPInputStream(
+                    new ByteArrayInputStream(bytes))) {
+                    result = mapper.readValue(input, CachedResult.class);
+                } catch (final Exception e) {
+                    log.error("{}: failed to deserialize value from cache", key, e);
+                    future.resolve(Optional.empty());
+                    return;
+                }
+
+                local.put(key, result);
+                future.resolve(Optional.of(result));
+            }).exceptionally(t -> {
+                log.error("{}: failed to load value from cache", key, t);
+                future.resolve(Optional.empty());
+                return null;
+            });
+
+            return future;
+        });
+    }
+
+    private void store(final String key, final CachedResult result) {
+        local.put(key, result);
+
+        if (!remote.isPresent()) {
+            return;
+        }
+
+        final ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
+
+        try (final GZIPOutputStream out = new GZIPOutputStream(bytesOut)) {
+            mapper.writeValue(out, result);
+        } catch (final Exception e) {
+            log.error("{}: failed to serialize cached slice", key, e);
+            return;
+        }
+
+        final byte[] bytes = bytesOut.toByteArray();
+        final Borrowed<MemcacheClient<byte[]>> borrowed = remote.get().borrow();
+
+        if (!borrowed.isValid()) {
+            log.warn("{}: client not available", key);
+            return;
+        }
+
+        borrowed.get().set(key, bytes, ttlSeconds).thenAccept(ignore -> {
+            log.debug("{}: stored ({} bytes) with ttl ({}s)", key, bytes.length, ttlSeconds);
+            borrowed.release();
+        }).exceptionally(t -> {
+            log.error("{}: failed to store ({} bytes)", key, bytes.length, t);
+            borrowed.release();
+            return null;
+        });
+    }
+
+    /**
+     * Extract the part of a result which falls within the given slice.
+     * <p>
+     * The number of samples read before aggregation is not known per slice, so it is attributed
+     * in proportion to the number of samples in the result.
+     */
+    static CachedResult split(final QueryResult result, final DateRange slice) {
+        final List<ShardedResultGroup> groups = new ArrayList<>();
+
+        long total = 0;
+        long inSlice = 0;
+
+        for (final ShardedResultGroup g : result.getGroups()) {
+            final List<Metric> data = new ArrayList<>();
+
+            for (final Metric m : g.getMetrics().data()) {
+                if (m.getTimestamp() >= slice.start() && m.getTimestamp() < slice.end()) {
+                    data.add(m);
+                }
+            }
+
+            total += g.getMetrics().size();
+            inSlice += data.size();
+
+            if (!data.isEmpty()) {
+                groups.add(new ShardedResultGroup(g.getShard(), g.getKey(), g.getSeries(),
+                    MetricCollection.build(g.getMetrics().getType(), data), g.getCadence()));
+            }
+        }
+
+        final long sampleSize =
+            total == 0 ? 0 : result.getPreAggregationSampleSize() * inSlice / total;
+
+        return new CachedResult(slice, groups, sampleSize, ResultLimits.of());
+    }
+
+    /**
+     * Concatenate the results of adjacent segments, in order.
+     */
+    static QueryResult stitch(
+        final DateRange range, final Collection<Segment> segments,
+        final QueryTrace.NamedWatch watch
+    ) {
+        final Map<List<Map<String, String>>, GroupBuilder> groups = new LinkedHashMap<>();
+        final List<RequestError> errors = new ArrayList<>();
+        final List<QueryTrace> traces = new ArrayList<>();
+        final Set<ResultLimit> limits = new HashSet<>();
+        long preAggregationSampleSize = 0;
+
+        for (final Segment segment : segments) {
+            errors.addAll(segment.errors);
+            segment.trace.ifPresent(traces::add);
+            limits.addAll(segment.limits.getLimits());
+            preAggregationSampleSize += segment.preAggregationSampleSize;
+
+            for (final ShardedResultGroup g : segment.groups) {
+                groups
+                    .computeIfAbsent(ImmutableList.of(g.getShard(), g.getKey()),
+                        k -> new GroupBuilder(g.getShard(), g.getKey(), g.getCadence(),
+                            g.getMetrics().getType()))
+                    .add(g);
+            }
+        }
+
+        final List<ShardedResultGroup> result = new ArrayList<>(groups.size());
+
+        for (final GroupBuilder builder : groups.values()) {
+            result.add(builder.build());
+        }
+
+        return new QueryResult(range, result, errors, watch.end(traces), new ResultLimits(limits),
+            preAggregationSampleSize, Optional.empty());
+    }
+
+    private String buildCacheKey(final FullQuery.Request request, final long slice) {
+        final Hasher hasher = HASH_FUNCTION.newHasher();
+        request.withRange(NO_RANGE).hashTo(new ObjectHasher(hasher));
+        return PREFIX + hasher.hash().toString() + "/" + slice;
+    }
+
+    private static String sliceKey(final String key, final long start) {
+        return key + "/" + start;
+    }
+
+    private static long floor(final long value, final long interval) {
+        return value - Math.floorMod(value, interval);
+    }
+
+    private static long ceil(final long value, final long interval) {
+        return -floor(-value, interval);
+    }
+
+    static class Segment {
+        private final boolean cached;
+        private final List<ShardedResultGroup> groups;
+        private final List<RequestError> errors;
+        private final Optional<QueryTrace> trace;
+        private final ResultLimits limits;
+        private final long preAggregationSampleSize;
+
+        Segment(
+            final boolean cached, final List<ShardedResultGroup> groups,
+            final List<RequestError> errors, final Optional<QueryTrace> trace,
+            final ResultLimits limits, final long preAggregationSampleSize
+        ) {
+            this.cached = cached;
+            this.groups = groups;
+            this.errors = errors;
+            this.trace = trace;
+            this.limits = limits;
+            this.preAggregationSampleSize = preAggregationSampleSize;
+        }
+
+        static Segment cached(final CachedResult result) {
+            return new Segment(true, result.getGroups(), ImmutableList.of(), Optional.empty(),
+                result.getLimits(), result.getPreAggregationSampleSize());
+        }
+
+        static Segment loaded(final QueryResult result) {
+            return new Segment(false, result.getGroups(), result.getErrors(),
+                Optional.of(result.getTrace()), result.getLimits(),
+                result.getPreAggregationSampleSize());
+        }
+
+        /**
+         * A loaded result, of which only the given part is used.
+         */
+        static Segment loaded(final QueryResult result, final CachedResult part) {
+            return new Segment(false, part.getGroups(), result.getErrors(),
+                Optional.of(result.getTrace()), result.getLimits(),
+                part.getPreAggregationSampleSize());
+        }
+    }
+
+    private static class GroupBuilder {
+        private final Map<String, String> shard;
+        private final Map<String, String> key;
+        private final long cadence;
+        private final MetricType type;
+        private final Set<com.spotify.heroic.common.Series> series = new LinkedHashSet<>();
+
+        /* points are concatenated into columns, other types into a list */
+        private final MetricCollection.ColumnarPointCollection.Builder points;
+        private final List<Metric> metrics = new ArrayList<>();
+
+        GroupBuilder(
+            final Map<String, String> shard, final Map<String, String> key, final long cadence,
+            final MetricType type
+        ) {
+            this.shard = shard;
+            this.key = key;
+            this.cadence = cadence;
+            this.type = type;
+
+            if (type == MetricType.POINT) {
+                this.points = MetricCollection.ColumnarPointCollection.builder();
+            } else {
+                this.points = null;
+            }
+        }
+
+        void add(final ShardedResultGroup group) {
+            series.addAll(group.getSeries());
+
+            final MetricCollection collection = group.getMetrics();
+
+            if (points == null) {
+                metrics.addAll(collection.data());
+                return;
+            }
+
+            if (collection instanceof MetricCollection.ColumnarPointCollection) {
+                final MetricCollection.ColumnarPointCollection columnar =
+                    (MetricCollection.ColumnarPointCollection) collection;
+
+                for (int i = 0; i < columnar.size(); i++) {
+                    points.add(columnar.getTimestamp(i), columnar.getValue(i));
+                }
+
+                return;
+            }
+
+            for (final Point p : collection.getDataAs(Point.class)) {
+                points.add(p.getTimestamp(), p.getValue());
+            }
+        }
+
+        ShardedResultGroup build() {
+            final MetricCollection collection =
+                points != null ? points.build() : MetricCollection.build(type, metrics);
+            return new ShardedResultGroup(shard, key, series, collection, cadence);
+        }
+    }
+}
@@ -30,12 +30,14 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.spotify.heroic.common.Duration;
 import com.spotify.heroic.common.ServiceInfo;
 import com.spotify.heroic.dagger.PrimaryComponent;
 import com.spotify.heroic.lifecycle.LifeCycle;
 import com.spotify.heroic.lifecycle.LifeCycleManager;
 import com.spotify.heroic.metadata.MetadataComponent;
 import com.spotify.heroic.metric.MetricComponent;
+import com.spotify.heroic.scheduler.Scheduler;
 import com.spotify.heroic.statistics.HeroicReporter;
 import com.spotify.heroic.statistics.QueryReporter;
 import com.spotify.heroic.suggest.SuggestComponent;
@@ -48,6 +50,7 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import javax.inject.Named;
 import org.apache.commons.lang3.tuple.Pair;
 
@@ -57,6 +60,8 @@ import org.apache.commons.lang3.tuple.Pair;
 @Module
 public class ClusterManagerModule {
     private static final boolean DEFAULT_USE_LOCAL = true;
+    private static final NodeSelection DEFAULT_NODE_SELECTION = NodeSelection.RANDOM;
+    private static final Duration DEFAULT_HEDGE_MIN_DELAY = Duration.of(5, TimeUnit.MILLISECONDS);
 
     private final UUID id;
     private final Map<String, String> tags;
@@ -65,6 +70,9 @@ public class ClusterManagerModule {
     private final List<RpcProtocolModule> protocols;
     private final Set<Map<String, String>> topology;
     private final Optional<NodeMetadataFactory> metadataFactory;
+    private final NodeSelection nodeSelection;
+    private final Optional<Double> hedgePercentile;
+    private final Duration hedgeMinDelay;
 
     public ClusterManagerModule(
         UUID id,
@@ -73,7 +81,10 @@ public class ClusterManagerModule {
         ClusterDiscoveryModule discovery,
         List<RpcProtocolModule> protocols,
         Set<Map<String, String>> topology,
-        Optional<NodeMetadataFactory> metadataFactory
+        Optional<NodeMetadataFactory> metadataFactory,
+        NodeSelection nodeSelection,
+        Optional<Double> hedgePercentile,
+        Duration hedgeMinDelay
     ) {
         this.id = id;
         this.tags = tags;
@@ -82,6 +93,9 @@ public class ClusterManagerModule {
         this.protocols = protocols;
         this.topology = topology;
         this.metadataFactory = metadataFactory;
+        this.nodeSelection = nodeSelection;
+        this.hedgePercentile = hedgePercentile;
+        this.hedgeMinDelay = hedgeMinDelay;
     }
 
     public ClusterDiscoveryModule getDiscovery() {
@@ -123,6 +137,20 @@ public class ClusterManagerModule {
         return topology;
     }
 
+    @Provides
+    @ClusterScope
+    public NodeSelectionStrategy nodeSelection() {
+        return nodeSelection.strategy();
+    }
+
+    @Provides
+    @ClusterScope
+    @Named("hedging")
+    public Optional<RequestHedging> hedging(final Scheduler scheduler) {
+        return hedgePercentile.map(percentile -> new RequestHedging(scheduler, percentile,
+            hedgeMinDelay.toMilliseconds()));
+    }
+
     @Provides
     @ClusterScope
     public QueryReporter queryReporter(HeroicReporter heroicReporter) {
@@ -208,6 +236,9 @@ public class ClusterManagerModule {
         private Optional<List<RpcProtocolModule>> protocols = empty();
         private Optional<Set<Map<String, String>>> topology = empty();
         private Optional<NodeMetadataFactory> metadataFactory = empty();
+        private Optional<NodeSelection> nodeSelection = empty();
+        private Optional<Double> hedgePercentile = empty();
+        private Optional<Duration> hedgeMinDelay = empty();
 
         @JsonCreator
         public Builder(
@@ -216,7 +247,10 @@ public class ClusterManagerModule {
             @JsonProperty("useLocal") Optional<Boolean> useLocal,
             @JsonProperty("discovery") Optional<ClusterDiscoveryModule> discovery,
             @JsonProperty("protocols") Optional<List<RpcProtocolModule>> protocols,
-            @JsonProperty("topology") Optional<Set<Map<String, String>>> topology
+            @JsonProperty("topology") Optional<Set<Map<String, String>>> topology,
+            @JsonProperty("nodeSelection") Optional<NodeSelection> nodeSelection,
+            @JsonProperty("hedgePercentile") Optional<Double> hedgePercentile,
+            @JsonProperty("hedgeMinDelay") Optional<Duration> hedgeMinDelay
         ) {
             this.id = id;
             this.tags = tags;
@@ -224,6 +258,9 @@ public class ClusterManagerModule {
             this.discovery = discovery;
             this.protocols = protocols;
             this.topology = topology;
+            this.nodeSelection = nodeSelection;
+            this.hedgePercentile = hedgePercentile;
+            this.hedgeMinDelay = hedgeMinDelay;
         }
 
         private Builder(
@@ -233,7 +270,10 @@ public class ClusterManagerModule {
             final Optional<ClusterDiscoveryModule> discovery,
             final Optional<List<RpcProtocolModule>> protocols,
             final Optional<Set<Map<String, String>>> topology,
-            final Optional<NodeMetadataFactory> metadataFactory
+            final Optional<NodeMetadataFactory> metadataFactory,
+            final Optional<NodeSelection> nodeSelection,
+            final Optional<Double> hedgePercentile,
+            final Optional<Duration> hedgeMinDelay
         ) {
             this.id = id;
             this.tags = tags;
@@ -242,6 +282,9 @@ public class ClusterManagerModule {
             this.protocols = protocols;
             this.topology = topology;
             this.metadataFactory = metadataFactory;
+            this.nodeSelection = nodeSelection;
+            this.hedgePercentile = hedgePercentile;
+            this.hedgeMinDelay = hedgeMinDelay;
         }
 
         private Builder() {
@@ -277,6 +320,21 @@ public class ClusterManagerModule {
             return this;
         }
 
+        public Builder nodeSelection(NodeSelection nodeSelection) {
+            this.nodeSelection = of(nodeSelection);
+            return this;
+        }
+
+        public Builder hedgePercentile(double hedgePercentile) {
+            this.hedgePercentile = of(hedgePercentile);
+            return this;
+        }
+
+        public Builder hedgeMinDelay(Duration hedgeMinDelay) {
+            this.hedgeMinDelay = of(hedgeMinDelay);
+            return this;
+        }
+
         /**
          * Set the metadata factory.
          *
@@ -299,7 +357,10 @@ public class ClusterManagerModule {
                 pickOptional(discovery, o.discovery),
                 pickOptional(protocols, o.protocols),
                 pickOptional(topology, o.topology),
-                pickOptional(metadataFactory, o.metadataFactory)
+                pickOptional(metadataFactory, o.metadataFactory),
+                pickOptional(nodeSelection, o.nodeSelection),
+                pickOptional(hedgePercentile, o.hedgePercentile),
+                pickOptional(hedgeMinDelay, o.hedgeMinDelay)
             );
             // @formatter:on
         }
@@ -313,7 +374,10 @@ public class ClusterManagerModule {
                 discovery.orElseGet(ClusterDiscoveryModule::nullModule),
                 protocols.orElseGet(ImmutableList::of),
                 topology.orElseGet(ImmutableSet::of),
-                metadataFactory
+                metadataFactory,
+                nodeSelection.orElse(DEFAULT_NODE_SELECTION),
+                hedgePercentile,
+                hedgeMinDelay.orElse(DEFAULT_HEDGE_MIN_DELAY)
             );
             // @formatter:on
         }
@@ -82,6 +82,8 @@ public class CoreClusterManager implements ClusterManager, LifeCycles {
     private final Set<Map<String, String>> expectedTopology;
     private final QueryReporter reporter;
     private final UsageTracking usageTracking;
+    private final NodeSelectionStrategy selection;
+    private final Optional<RequestHedging> hedging;
 
     private final AtomicReference<Set<URI>> staticNodes = new AtomicReference<>(new HashSet<>());
     private final AtomicReference<NodeRegistry> registry = new AtomicReference<>();
@@ -89,8 +91,6 @@ public class CoreClusterManager implements ClusterManager, LifeCycles {
         new AtomicReference<>(Collections.emptyMap());
     private final AtomicLong refreshId = new AtomicLong();
 
-    private final Object updateRegistryLock = new Object();
-
   @Inject
   public CoreClusterManager(
       AsyncFramework async,
@@ -104,7 +104,9 @@ public class CoreClusterManager implements ClusterManager, LifeCycles {
       HeroicContext context,
       @Named("topology") Set<Map<String, String>> expectedTopology,
       final QueryReporter reporter,
-      UsageTracking usageTracking
+      UsageTracking usageTracking,
+      NodeSelectionStrategy selection,
+      @Named("hedging") Optional<RequestHedging> hedging
   ) {
         this.async = async;
         this.discovery = discovery;
@@ -118,6 +120,8 @@ public class CoreClusterManager implements ClusterManager, LifeCycles {
         this.expectedTopology = expectedTopology;
         this.reporter = reporter;
         this.usageTracking = usageTracking;
+        this.selection = selection;
+        this.hedging = hedging;
     }
 
     @Override
@@ -177,13 +181,7 @@ public class CoreClusterManager implements ClusterManager, LifeCycles {
     @NotNull
     @Override
     public List<ClusterNode> getNodes() {
-        final NodeRegistry registry = this.registry.get();
-
-        if (registry == null) {
-            throw new IllegalStateException("Registry not ready");
-        }
-
-        return registry.getEntries();
+        return readyRegistry().getEntries();
     }
 
     /**
@@ -246,7 +244,7 @@ public class CoreClusterManager implements ClusterManager, LifeCycles {
         final ImmutableList.Builder<ClusterShard> shards = ImmutableList.builder();
 
         for (final Map<String, String> shardTags : allShards()) {
-            shards.add(new ClusterShard(async, shardTags, reporter, this));
+            shards.add(new ClusterShard(async, shardTags, reporter, this, selection, hedging));
         }
 
         return shards.build();
@@ -258,31 +256,25 @@ public class CoreClusterManager implements ClusterManager, LifeCycles {
         final Map<String, String> shard, final Predicate<ClusterNode> exclude,
         final Consumer<ClusterNode> registerNodeUse, final Function<ClusterNode.Group, T> fn
     ) {
-        synchronized (this.updateRegistryLock) {
-            final Optional<ClusterNode> n =
-                registry.get().getNodeInShardButNotWithId(shard, exclude);
-            if (!n.isPresent()) {
-                return Optional.empty();
-            }
-            ClusterNode node = n.get();
+        final Optional<ClusterNode> n =
+            readyRegistry().getNodeInShardButNotWithId(shard, exclude, selection);
+        if (!n.isPresent()) {
+            return Optional.empty();
+        }
+        ClusterNode node = n.get();
 
-            // Will actually use this node now
-            registerNodeUse.accept(node);
+        // Will actually use this node now
+        registerNodeUse.accept(node);
 
-            return Optional.of(
-                new ClusterManager.NodeResult<T>(fn.apply(node.useDefaultGroup()), node));
-        }
+        return Optional.of(
+            new ClusterManager.NodeResult<T>(fn.apply(node.useDefaultGroup()), node));
     }
 
     @Override
     public boolean hasNextButNotWithId(
         final Map<String, String> shard, final Predicate<ClusterNode> exclude
     ) {
-        synchronized (this.updateRegistryLock) {
-            final Optional<ClusterNode> n =
-                registry.get().getNodeInShardButNotWithId(shard, exclude);
-            return n.isPresent();
-        }
+        return readyRegistry().hasNodeInShardButNotWithId(shard, exclude);
     }
 
     /**
@@ -290,9 +282,7 @@ public class CoreClusterManager implements ClusterManager, LifeCycles {
      */
     @Override
     public List<ClusterNode> getNodesForShard(Map<String, String> shard) {
-        synchronized (this.updateRegistryLock) {
-            return registry.get().getNodesInShard(shard);
-        }
+        return readyRegistry().getNodesInShard(shard);
     }
 
     @NotNull
@@ -339,14 +329,18 @@ public class CoreClusterManager implements ClusterManager, LifeCycles {
             clients.values().stream().map(ClusterNode::close).collect(Collectors.toList()));
     }
 
-    private Set<Map<String, String>> allShards() {
+    private NodeRegistry readyRegistry() {
         final NodeRegistry registry = this.registry.get();
 
         if (registry == null) {
             throw new IllegalStateException("Registry not ready");
         }
 
-        final Set<Map<String, String>> shards = registry.getShards();
+        return registry;
+    }
+
+    private Set<Map<String, String>> allShards() {
+        final Set<Map<String, String>> shards = readyRegistry().getShards();
 
         /* Actual topology (shards) is detected based on the metadata coming from the nodes.
          * Expected topology is specified in the optional 'topology'. This specifies the minimum
@@ -560,9 +554,9 @@ public class CoreClusterManager implements ClusterManager, LifeCycles {
         final List<ClusterNode> failedNodes
     ) {
         if (this.clients.compareAndSet(oldClients, newClients)) {
-            synchronized (this.updateRegistryLock) {
-                registry.getAndSet(new NodeRegistry(new ArrayList<>(okNodes), okNodes.size()));
-            }
+            registry.set(new NodeRegistry(new ArrayList<>(okNodes), okNodes.size()));
+
+            selection.retain(okNodes);
 
             // Close removed nodes
             final List<AsyncFuture<Void>> removals = new ArrayList<>();
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2020 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.heroic.cluster;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Selects nodes using the power of two choices.
+ * <p>
+ * Two random candidates are compared and the one with the lowest cost is selected. The cost of a
+ * node is a peak-sensitive exponentially weighted moving average of its request latency,
+ * multiplied by the number of requests currently in flight to it.
+ * <p>
+ * A failed request is measured as a request which took {@link #PENALTY_NANOS}, so that failing
+ * nodes are avoided until the penalty has decayed. Nodes that have not yet been measured have no
+ * cost while idle, so that new nodes are probed quickly, but cost the penalty for every request
+ * in flight to them, so that they are not flooded before their first request has finished.
+ */
+public class LatencyAwareNodeSelection implements NodeSelectionStrategy {
+    static final long DEFAULT_DECAY_NANOS = TimeUnit.SECONDS.toNanos(10);
+    static final long PENALTY_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final ConcurrentMap<ClusterNode, NodeLoad> loads = new ConcurrentHashMap<>();
+
+    private final long decayNanos;
+    private final LongSupplier clock;
+
+    public LatencyAwareNodeSelection() {
+        this(DEFAULT_DECAY_NANOS, System::nanoTime);
+    }
+
+    LatencyAwareNodeSelection(final long decayNanos, final LongSupplier clock) {
+        this.decayNanos = decayNanos;
+        this.clock = clock;
+    }
+
+    @Override
+    public Optional<ClusterNode> select(final List<ClusterNode> candidates) {
+        final int size = candidates.size();
+
+        if (size == 0) {
+            return Optional.empty();
+        }
+
+        if (size == 1) {
+            return Optional.of(candidates.get(0));
+        }
+
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        final int i = random.nextInt(size);
+        int j = random.nextInt(size - 1);
+
+        if (j >= i) {
+            j++;
+        }
+
+        final ClusterNode a = candidates.get(i);
+        final ClusterNode b = candidates.get(j);
+        return Optional.of(cost(a) <= cost(b) ? a : b);
+    }
+
+    @Override
+    public void requestStarted(final ClusterNode node) {
+        loads.computeIfAbsent(node, n -> new NodeLoad()).started();
+    }
+
+    @Override
+    public void requestFinished(final ClusterNode node, final long elapsedNanos) {
+        final NodeLoad load = loads.get(node);
+
+        /* node removed while the request was in flight */
+        if (load == null) {
+            return;
+        }
+
+        load.finished(elapsedNanos, clock.getAsLong());
+    }
+
+    @Override
+    public void requestFailed(final ClusterNode node, final long elapsedNanos) {
+        requestFinished(node, Math.max(elapsedNanos, PENALTY_NANOS));
+    }
+
+    @Override
+    public void requestCancelled(final ClusterNode node) {
+        final NodeLoad load = loads.get(node);
+
+        if (load != null) {
+            load.cancelled();
+        }
+    }
+
+    @Override
+    public void retain(final Collection<ClusterNode> nodes) {
+        loads.keySet().retainAll(new HashSet<>(nodes));
+    }
+
+    double cost(final ClusterNode node) {
+        final NodeLoad load = loads.get(node);
+
+        if (load == null) {
+            return 0D;
+        }
+
+        return load.cost();
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyAwareNodeSelection(decayNanos=" + decayNanos + ")";
+    }
+
+    private class NodeLoad {
+        private int inFlight = 0;
+        private double average = 0D;
+        private long lastUpdate = -1;
+
+        synchronized void started() {
+            inFlight++;
+        }
+
+        synchronized void cancelled() {
+            inFlight = Math.max(0, inFlight - 1);
+        }
+
+        synchronized void finished(final long elapsedNanos, final long now) {
+            inFlight = Math.max(0, inFlight - 1);
+
+            /* jump straight to latency peaks, decay slowly back from them */
+            if (lastUpdate < 0 || elapsedNanos > average) {
+                average = elapsedNanos;
+            } else {
+                final double weight = Math.exp(-(double) (now - lastUpdate) / decayNanos);
+                average = average * weight + elapsedNanos * (1D - weight);
+            }
+
+            lastUpdate = now;
+        }
+
+        synchronized double cost() {
+            if (lastUpdate < 0) {
+                return (double) PENALTY_NANOS * inFlight;
+            }
+
+            return average * (inFlight + 1);
+        }
+    }
+}
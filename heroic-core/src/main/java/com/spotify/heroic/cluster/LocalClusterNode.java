@@ -32,6 +32,7 @@ import com.spotify.heroic.metadata.WriteMetadata;
 import com.spotify.heroic.metric.FullQuery;
 import com.spotify.heroic.metric.MetricBackendGroup;
 import com.spotify.heroic.metric.MetricManager;
+import com.spotify.heroic.metric.ResultGroup;
 import com.spotify.heroic.metric.WriteMetric;
 import com.spotify.heroic.suggest.KeySuggest;
 import com.spotify.heroic.suggest.SuggestBackend;
@@ -47,6 +48,7 @@ import io.opencensus.trace.Span;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 import javax.inject.Inject;
 
 @ClusterScope
@@ -116,6 +118,13 @@ public class LocalClusterNode implements ClusterNode {
             return metrics().query(request, span);
         }
 
+        @Override
+        public AsyncFuture<FullQuery> query(
+            final FullQuery.Request request, final Span span, final Consumer<ResultGroup> groups
+        ) {
+            return metrics().query(request, span, groups);
+        }
+
         @Override
         public AsyncFuture<FindTags> findTags(final FindTags.Request request) {
             return metadata().findTags(request);
@@ -22,43 +22,56 @@
 package com.spotify.heroic.cluster;
 
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.LinkedListMultimap;
-import com.google.common.collect.Lists;
-import com.google.common.collect.Multimap;
-import java.util.Collection;
-import java.util.Collections;
+import com.google.common.collect.ImmutableMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.Random;
 import java.util.Set;
 import java.util.function.Predicate;
-import java.util.stream.Collectors;
 
+/**
+ * Immutable snapshot of the known nodes in the cluster.
+ * <p>
+ * Nodes are indexed by shard when the snapshot is built, so that routing a request to a shard
+ * only needs to look at the nodes in that shard. A new snapshot is built and swapped in on every
+ * refresh, which allows it to be read without any locking.
+ */
 public class NodeRegistry {
-    private static final Random random = new Random();
+    private static final ClusterNode[] EMPTY = new ClusterNode[0];
+
     private final List<ClusterNode> entries;
+    private final Map<Map<String, String>, ClusterNode[]> shards;
     private final int totalNodes;
 
     NodeRegistry(List<ClusterNode> entries, int totalNodes) {
-        this.entries = entries;
+        this.entries = ImmutableList.copyOf(entries);
+        this.shards = buildShards(this.entries);
         this.totalNodes = totalNodes;
     }
 
-    private Multimap<Map<String, String>, ClusterNode> buildShards(
+    private static Map<Map<String, String>, ClusterNode[]> buildShards(
         List<ClusterNode> entries
     ) {
-        final Multimap<Map<String, String>, ClusterNode> shards = LinkedListMultimap.create();
+        final Map<Map<String, String>, List<ClusterNode>> shards = new LinkedHashMap<>();
 
         for (final ClusterNode e : entries) {
-            shards.put(e.metadata().getTags(), e);
+            shards.computeIfAbsent(e.metadata().getTags(), k -> new ArrayList<>()).add(e);
         }
 
-        return shards;
+        final ImmutableMap.Builder<Map<String, String>, ClusterNode[]> builder =
+            ImmutableMap.builder();
+
+        for (final Map.Entry<Map<String, String>, List<ClusterNode>> e : shards.entrySet()) {
+            builder.put(e.getKey(), e.getValue().toArray(EMPTY));
+        }
+
+        return builder.build();
     }
 
     public List<ClusterNode> getEntries() {
-        return ImmutableList.copyOf(entries);
+        return entries;
     }
 
     public int getTotalNodes() {
@@ -74,37 +87,38 @@ public class NodeRegistry {
     }
 
     public Set<Map<String, String>> getShards() {
-        return buildShards(entries).keySet();
+        return shards.keySet();
     }
 
     public List<ClusterNode> getNodesInShard(final Map<String, String> shard) {
-        final Multimap<Map<String, String>, ClusterNode> shardToNode = buildShards(entries);
-
-        final Collection<ClusterNode> nodesInShard = shardToNode.get(shard);
-        final List<ClusterNode> result = Lists.newArrayList();
-        result.addAll(nodesInShard);
-
-        return result;
+        return ImmutableList.copyOf(shards.getOrDefault(shard, EMPTY));
     }
 
     public Optional<ClusterNode> getNodeInShardButNotWithId(
-        final Map<String, String> shard, final Predicate<ClusterNode> exclude
+        final Map<String, String> shard, final Predicate<ClusterNode> exclude,
+        final NodeSelectionStrategy selection
     ) {
-        final Multimap<Map<String, String>, ClusterNode> shardToNode = buildShards(entries);
+        final ClusterNode[] nodesInShard = shards.getOrDefault(shard, EMPTY);
+        final List<ClusterNode> candidates = new ArrayList<>(nodesInShard.length);
 
-        final Collection<ClusterNode> nodesInShard = shardToNode.get(shard);
+        for (final ClusterNode n : nodesInShard) {
+            if (n.isAlive() && !exclude.test(n)) {
+                candidates.add(n);
+            }
+        }
 
-        final List<ClusterNode> randomizedList =
-            nodesInShard.stream().filter(ClusterNode::isAlive).collect(Collectors.toList());
-        Collections.shuffle(randomizedList, random);
+        return selection.select(candidates);
+    }
 
-        for (final ClusterNode n : randomizedList) {
-            if (exclude.test(n)) {
-                continue;
+    public boolean hasNodeInShardButNotWithId(
+        final Map<String, String> shard, final Predicate<ClusterNode> exclude
+    ) {
+        for (final ClusterNode n : shards.getOrDefault(shard, EMPTY)) {
+            if (n.isAlive() && !exclude.test(n)) {
+                return true;
             }
-            return Optional.of(n);
         }
 
-        return Optional.empty();
+        return false;
     }
 }
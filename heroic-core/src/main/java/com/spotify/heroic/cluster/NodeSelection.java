@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2020 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.heroic.cluster;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Available strategies for selecting which node in a shard to send a request to.
+ */
+public enum NodeSelection {
+    /**
+     * A uniformly random live node, see {@link RandomNodeSelection}.
+     */
+    @JsonProperty("random")
+    RANDOM,
+
+    /**
+     * Latency and load aware selection, see {@link LatencyAwareNodeSelection}.
+     */
+    @JsonProperty("latency")
+    LATENCY;
+
+    public NodeSelectionStrategy strategy() {
+        switch (this) {
+            case LATENCY:
+                return new LatencyAwareNodeSelection();
+            default:
+                return new RandomNodeSelection();
+        }
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2020 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.heroic.http.query;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.Uninterruptibles;
+import com.spotify.heroic.common.JavaxRestFramework;
+import com.spotify.heroic.metric.QueryError;
+import com.spotify.heroic.metric.QueryMetricsResponse;
+import com.spotify.heroic.metric.QueryMetricsResponseStream;
+import com.spotify.heroic.metric.QueryResult;
+import com.spotify.heroic.metric.ShardedResultGroup;
+import eu.toolchain.async.AsyncFuture;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+/**
+ * Writes the result groups of a query to the response as they are received, so that groups are
+ * released as soon as they have been written instead of being kept until the query completes.
+ * <p>
+ * The response is only resumed once the first group has been received. A query which completes
+ * before that is responded to in full like any other query, so that a query which fails up front
+ * still fails with an error status. A query which fails after groups have been written completes
+ * the response with the error instead.
+ * <p>
+ * At most {@link #MAX_PENDING_GROUPS} groups wait to be written, after which the query is blocked
+ * until the client has caught up. The query is cancelled if the client goes away, or if the
+ * response is not complete by the given deadline, since the timeout of the response no longer
+ * applies once it has been resumed.
+ */
+class MetricsResponseStream {
+    static final int MAX_PENDING_GROUPS = 64;
+
+    private final JavaxRestFramework httpAsync;
+    private final ObjectMapper mapper;
+    private final AsyncResponse response;
+    private final UUID queryId;
+    private final JavaxRestFramework.Resume<QueryResult, QueryMetricsResponse> toResponse;
+    /* deadline of the response, in nanoseconds */
+    private final long deadline;
+
+    /* received groups, which are ended by an empty value once the query has completed */
+    private final BlockingQueue<Optional<ShardedResultGroup>> groups =
+        new LinkedBlockingQueue<>();
+    /* groups which may be received before they have to wait for others to be written */
+    private final Semaphore pending = new Semaphore(MAX_PENDING_GROUPS);
+    private final AtomicBoolean resumed = new AtomicBoolean();
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    /* the query, set before it can complete */
+    private volatile AsyncFuture<QueryResult> query;
+
+    MetricsResponseStream(
+        final JavaxRestFramework httpAsync, final ObjectMapper mapper,
+        final AsyncResponse response, final UUID queryId,
+        final JavaxRestFramework.Resume<QueryResult, QueryMetricsResponse> toResponse,
+        final long timeout, final TimeUnit unit
+    ) {
+        this.httpAsync = httpAsync;
+        this.mapper = mapper;
+        this.response = response;
+        this.queryId = queryId;
+        this.toResponse = toResponse;
+        this.deadline = System.nanoTime() + unit.toNanos(timeout);
+    }
+
+    /**
+     * Receive a group of the query, which might be called concurrently.
+     * <p>
+     * Blocks while too many groups are waiting to be written.
+     */
+    void accept(final ShardedResultGroup group) {
+        if (closed.get()) {
+            return;
+        }
+
+        if (!Uninterruptibles.tryAcquireUninterruptibly(pending, remainingNanos(),
+            TimeUnit.NANOSECONDS)) {
+            close();
+            return;
+        }
+
+        if (closed.get()) {
+            return;
+        }
+
+        groups.add(Optional.of(group));
+
+        if (resumed.compareAndSet(false, true)) {
+            final boolean resumable = response.resume(Response
+                .ok((StreamingOutput) this::write, MediaType.APPLICATION_JSON_TYPE)
+                .build());
+
+            /* the response has already timed out or been cancelled */
+            if (!resumable) {
+                close();
+            }
+        }
+    }
+
+    /**
+     * Bind the completion of the query, which must have been started with this stream.
+     */
+    void bind(final AsyncFuture<QueryResult> query) {
+        this.query = query;
+
+        if (closed.get()) {
+            query.cancel();
+            return;
+        }
+
+        query.onFinished(() -> {
+            if (resumed.compareAndSet(false, true)) {
+                httpAsync.bind(response, query, toResponse);
+                return;
+            }
+
+            groups.add(Optional.empty());
+        });
+    }
+
+    /**
+     * Stop receiving groups and cancel the query, since nothing will be written anymore.
+     */
+    private void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+
+        /* wake up every query thread which waits to add a group, at most the number of pending
+         * groups have been acquired so this can't overflow */
+        pending.release(Integer.MAX_VALUE / 2);
+        groups.clear();
+
+        final AsyncFuture<QueryResult> query = this.query;
+
+        if (query != null) {
+            query.cancel();
+        }
+    }
+
+    private long remainingNanos() {
+        return Math.max(0L, deadline - System.nanoTime());
+    }
+
+    private void write(final OutputStream out) throws IOException {
+        try {
+            writeGroups(out);
+        } catch (final IOException | RuntimeException e) {
+            /* the client has gone away, so the rest of the query is of no use */
+            close();
+            throw e;
+        }
+    }
+
+    private void writeGroups(final OutputStream out) throws IOException {
+        final JsonGenerator g = mapper.getFactory().createGenerator(out);
+        final QueryMetricsResponseStream stream = new QueryMetricsResponseStream(g, queryId);
+
+        while (true) {
+            final Optional<ShardedResultGroup> next;
+
+            try {
+                next = groups.poll(remainingNanos(), TimeUnit.NANOSECONDS);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for groups");
+            }
+
+            if (next == null) {
+                close();
+                stream.fail(new QueryError("Query timed out"));
+                return;
+            }
+
+            if (!next.isPresent()) {
+                break;
+            }
+
+            stream.write(next.get());
+            pending.release();
+        }
+
+        if (query.isResolved()) {
+            final QueryMetricsResponse result;
+
+            try {
+                result = toResponse.resume(query.getNow());
+            } catch (final Exception e) {
+                stream.fail(new QueryError(e));
+                return;
+            }
+
+            stream.end(result);
+            return;
+        }
+
+        if (query.isFailed()) {
+            stream.fail(new QueryError(query.cause()));
+            return;
+        }
+
+        stream.fail(new QueryError("Query was cancelled"));
+    }
+}
@@ -21,11 +21,13 @@
 
 package com.spotify.heroic.http.query;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.ImmutableMap;
 import com.spotify.heroic.Query;
 import com.spotify.heroic.QueryManager;
 import com.spotify.heroic.common.JavaxRestFramework;
 import com.spotify.heroic.http.CoreHttpContextFactory;
+import com.spotify.heroic.metric.ColumnarResponseEncoder;
 import com.spotify.heroic.metric.QueryMetrics;
 import com.spotify.heroic.metric.QueryMetricsResponse;
 import com.spotify.heroic.metric.QueryResult;
@@ -44,6 +46,7 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.POST;
@@ -53,6 +56,7 @@ import javax.ws.rs.QueryParam;
 import javax.ws.rs.container.AsyncResponse;
 import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import org.apache.commons.lang3.tuple.Triple;
 
@@ -64,7 +68,11 @@ public class QueryResource {
     private final QueryManager query;
     private final AsyncFramework async;
     private final QueryLogger queryLogger;
+    private final ObjectMapper mapper;
     private static final Tracer tracer = Tracing.getTracer();
+    private static final long QUERY_TIMEOUT_SECONDS = 300;
+    private static final MediaType COLUMNAR =
+        MediaType.valueOf(ColumnarResponseEncoder.MEDIA_TYPE);
 
 
     @Inject
@@ -72,20 +80,24 @@ public class QueryResource {
         final JavaxRestFramework httpAsync,
         final QueryManager query,
         final AsyncFramework async,
-        final QueryLoggerFactory queryLoggerFactory
+        final QueryLoggerFactory queryLoggerFactory,
+        @Named(MediaType.APPLICATION_JSON) final ObjectMapper mapper
     ) {
         this.httpAsync = httpAsync;
         this.query = query;
         this.async = async;
         this.queryLogger = queryLoggerFactory.create("QueryResource");
+        this.mapper = mapper;
     }
 
     @POST
     @Path("metrics")
     @Consumes(MediaType.TEXT_PLAIN)
+    @Produces({MediaType.APPLICATION_JSON, ColumnarResponseEncoder.MEDIA_TYPE})
     public void metricsText(
         @Suspended final AsyncResponse response, @QueryParam("group") String group,
-        @Context final HttpServletRequest servletReq, final String query
+        @Context final HttpServletRequest servletReq, @Context final HttpHeaders headers,
+        final String query
     ) {
         final HttpContext httpContext = CoreHttpContextFactory.create(servletReq);
         final QueryContext queryContext = QueryContext.create(Optional.empty(), httpContext);
@@ -94,18 +106,18 @@ public class QueryResource {
         final Query q = this.query.newQueryFromString(query).build();
 
         final QueryManager.Group g = this.query.useOptionalGroup(Optional.ofNullable(group));
-        final AsyncFuture<QueryResult> callback = g.query(q, queryContext);
-
-        bindMetricsResponse(response, callback, queryContext);
+        queryMetrics(response, headers, g, q, queryContext);
     }
 
     @POST
     @Path("metrics")
     @Consumes(MediaType.APPLICATION_JSON)
+    @Produces({MediaType.APPLICATION_JSON, ColumnarResponseEncoder.MEDIA_TYPE})
     public void metrics(
         @Suspended final AsyncResponse response,
         @QueryParam("group") String group,
         @Context final HttpServletRequest servletReq,
+        @Context final HttpHeaders headers,
         final QueryMetrics query
     ) {
         final HttpContext httpContext = CoreHttpContextFactory.create(servletReq);
@@ -115,13 +127,12 @@ public class QueryResource {
         final Query q = query.toQueryBuilder(this.query::newQueryFromString).build();
 
         final QueryManager.Group g = this.query.useOptionalGroup(Optional.ofNullable(group));
-        final AsyncFuture<QueryResult> callback = g.query(q, queryContext);
-
-        bindMetricsResponse(response, callback, queryContext);
+        queryMetrics(response, headers, g, q, queryContext);
     }
 
     @POST
     @Path("batch")
+    @Produces({MediaType.APPLICATION_JSON, ColumnarResponseEncoder.MEDIA_TYPE})
     public void metrics(
         @Suspended final AsyncResponse response,
         @QueryParam("backend") String group,
@@ -177,25 +188,50 @@ public class QueryResource {
                 return new QueryBatchResponse(results.build());
             });
 
-        response.setTimeout(300, TimeUnit.SECONDS);
+        response.setTimeout(QUERY_TIMEOUT_SECONDS, TimeUnit.SECONDS);
 
         httpAsync.bind(response, future);
     }
 
-    private void bindMetricsResponse(
+    /**
+     * Run a query, and write its result groups to the response as they are received.
+     * <p>
+     * Groups can only be streamed as JSON, so a client which accepts the columnar format gets the
+     * complete response at once.
+     */
+    private void queryMetrics(
         final AsyncResponse response,
-        final AsyncFuture<QueryResult> callback,
+        final HttpHeaders headers,
+        final QueryManager.Group g,
+        final Query q,
         final QueryContext queryContext
     ) {
-        response.setTimeout(300, TimeUnit.SECONDS);
+        response.setTimeout(QUERY_TIMEOUT_SECONDS, TimeUnit.SECONDS);
 
-        httpAsync.bind(response, callback, r -> {
+        final JavaxRestFramework.Resume<QueryResult, QueryMetricsResponse> toResponse = r -> {
             final QueryMetricsResponse qmr =
                 new QueryMetricsResponse(queryContext.queryId(), r.getRange(), r.getGroups(),
                     r.getErrors(), r.getTrace(), r.getLimits(),
                     Optional.of(r.getPreAggregationSampleSize()), r.getCache());
             queryLogger.logFinalResponse(queryContext, qmr);
             return qmr;
-        });
+        };
+
+        final boolean columnar = headers
+            .getAcceptableMediaTypes()
+            .stream()
+            .anyMatch(type -> COLUMNAR.getType().equals(type.getType()) &&
+                COLUMNAR.getSubtype().equals(type.getSubtype()));
+
+        if (columnar) {
+            httpAsync.bind(response, g.query(q, queryContext), toResponse);
+            return;
+        }
+
+        final MetricsResponseStream stream =
+            new MetricsResponseStream(httpAsync, mapper, response, queryContext.queryId(),
+                toResponse, QUERY_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        stream.bind(g.query(q, queryContext, tracer.getCurrentSpan(), stream::accept));
     }
 }
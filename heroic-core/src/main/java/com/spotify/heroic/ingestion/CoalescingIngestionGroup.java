@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2020 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.heroic.ingestion;
+
+import com.google.common.collect.ImmutableList;
+import com.spotify.heroic.common.Groups;
+import com.spotify.heroic.metric.MetricCollection;
+import com.spotify.heroic.metric.MetricType;
+import com.spotify.heroic.metric.Point;
+import eu.toolchain.async.AsyncFramework;
+import eu.toolchain.async.AsyncFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An ingestion group that coalesces point writes to the same series before handing them to the
+ * core ingestion group, so that a burst of single-point writes results in a single metric,
+ * metadata, and suggest write.
+ *
+ * @see WriteCoalescer
+ */
+public class CoalescingIngestionGroup implements IngestionGroup {
+    private final AsyncFramework async;
+    private final LongAdder ingested;
+    private final CoreIngestionGroup delegate;
+    private final WriteCoalescer coalescer;
+
+    public CoalescingIngestionGroup(
+        final AsyncFramework async,
+        final LongAdder ingested,
+        final CoreIngestionGroup delegate,
+        final WriteCoalescer coalescer
+    ) {
+        this.async = async;
+        this.ingested = ingested;
+        this.delegate = delegate;
+        this.coalescer = coalescer;
+    }
+
+    @Override
+    public Groups groups() {
+        return delegate.groups();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return delegate.isEmpty();
+    }
+
+    @Override
+    public AsyncFuture<Ingestion> write(final Request request) {
+        final MetricCollection data = request.getData();
+
+        if (data.getType() != MetricType.POINT || data.isEmpty()) {
+            return delegate.write(request);
+        }
+
+        ingested.increment();
+
+        if (!delegate.accept(request.getSeries())) {
+            return async.resolved(Ingestion.of(ImmutableList.of()));
+        }
+
+        return coalescer.write(request.getSeries(), data.getDataAs(Point.class));
+    }
+}
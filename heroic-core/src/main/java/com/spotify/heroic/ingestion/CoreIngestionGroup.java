@@ -26,6 +26,7 @@ import com.spotify.heroic.common.Collected;
 import com.spotify.heroic.common.DateRange;
 import com.spotify.heroic.common.Grouped;
 import com.spotify.heroic.common.Groups;
+import com.spotify.heroic.common.Series;
 import com.spotify.heroic.filter.Filter;
 import com.spotify.heroic.metadata.MetadataBackend;
 import com.spotify.heroic.metadata.WriteMetadata;
@@ -135,6 +136,31 @@ public class CoreIngestionGroup implements IngestionGroup {
         }
     }
 
+    /**
+     * Check if the given series passes the ingestion filter, reporting it as dropped if not.
+     */
+    protected boolean accept(final Series series) {
+        if (filter.get().apply(series)) {
+            return true;
+        }
+
+        reporter.reportDroppedByFilter();
+        return false;
+    }
+
+    /**
+     * Write a request that a write permit has already been acquired for, the permit is released
+     * when the write has finished.
+     */
+    protected AsyncFuture<Ingestion> permittedWrite(final Request request) {
+        reporter.incrementConcurrentWrites();
+
+        return doWrite(request).onFinished(() -> {
+            writePermits.release();
+            reporter.decrementConcurrentWrites();
+        });
+    }
+
     protected AsyncFuture<Ingestion> doWrite(final Request request) {
         final Span span = tracer.spanBuilder("CoreIngestionGroup.doWrite").startSpan();
         final List<AsyncFuture<Ingestion>> futures = new ArrayList<>();
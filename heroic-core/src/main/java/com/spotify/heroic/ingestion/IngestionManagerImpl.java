@@ -23,12 +23,14 @@ package com.spotify.heroic.ingestion;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import com.spotify.heroic.common.Duration;
 import com.spotify.heroic.common.Statistics;
 import com.spotify.heroic.filter.Filter;
 import com.spotify.heroic.metadata.MetadataBackend;
 import com.spotify.heroic.metadata.MetadataManager;
 import com.spotify.heroic.metric.MetricBackend;
 import com.spotify.heroic.metric.MetricManager;
+import com.spotify.heroic.scheduler.Scheduler;
 import com.spotify.heroic.statistics.IngestionManagerReporter;
 import com.spotify.heroic.suggest.SuggestBackend;
 import com.spotify.heroic.suggest.SuggestManager;
@@ -48,6 +50,7 @@ public class IngestionManagerImpl implements IngestionManager {
     final MetricManager metric;
     final SuggestManager suggest;
     final IngestionManagerReporter reporter;
+    final Scheduler scheduler;
 
     private final boolean updateMetrics;
     private final boolean updateMetadata;
@@ -57,6 +60,9 @@ public class IngestionManagerImpl implements IngestionManager {
 
     private final Semaphore writePermits;
 
+    private final Optional<Duration> coalesceWindow;
+    private final int coalesceMaxPoints;
+
     private final LongAdder ingested = new LongAdder();
 
     /**
@@ -64,6 +70,8 @@ public class IngestionManagerImpl implements IngestionManager {
      * @param updateMetadata Ingested metrics will update metadata backends.
      * @param updateSuggestions Ingested metrics will update suggest backends.
      * @param maxConcurrentWrites Limit the number of concurrent writes, 0 means no limit at all
+     * @param coalesceWindow Coalesce point writes to the same series for this long, if present.
+     * @param coalesceMaxPoints Write coalesced points when this many are buffered for a series.
      */
     @Inject
     public IngestionManagerImpl(
@@ -72,10 +80,13 @@ public class IngestionManagerImpl implements IngestionManager {
         final MetricManager metric,
         final SuggestManager suggest,
         final IngestionManagerReporter reporter,
+        final Scheduler scheduler,
         @Named("updateMetrics") final boolean updateMetrics,
         @Named("updateMetadata") final boolean updateMetadata,
         @Named("updateSuggestions") final boolean updateSuggestions,
         @Named("maxConcurrentWrites") final int maxConcurrentWrites,
+        @Named("coalesceWindow") final Optional<Duration> coalesceWindow,
+        @Named("coalesceMaxPoints") final int coalesceMaxPoints,
         final Filter filter
     ) {
         this.async = async;
@@ -83,6 +94,7 @@ public class IngestionManagerImpl implements IngestionManager {
         this.metric = metric;
         this.suggest = suggest;
         this.reporter = reporter;
+        this.scheduler = scheduler;
 
         this.updateMetrics = updateMetrics;
         this.updateMetadata = updateMetadata;
@@ -90,6 +102,9 @@ public class IngestionManagerImpl implements IngestionManager {
         this.filter = filter;
 
         this.writePermits = new Semaphore(maxConcurrentWrites);
+
+        this.coalesceWindow = coalesceWindow;
+        this.coalesceMaxPoints = coalesceMaxPoints;
     }
 
     @Override
@@ -122,7 +137,7 @@ public class IngestionManagerImpl implements IngestionManager {
         Function<I, SuggestBackend> suggest
     ) {
         // @formatter:off
-        return new CoreIngestionGroup(
+        final CoreIngestionGroup group = new CoreIngestionGroup(
             async,
             () -> filter,
             writePermits,
@@ -134,6 +149,16 @@ public class IngestionManagerImpl implements IngestionManager {
             optionally(updateSuggestions, () -> suggest.apply(input))
         );
         // @formatter:on
+
+        if (!coalesceWindow.isPresent()) {
+            return group;
+        }
+
+        final WriteCoalescer coalescer =
+            new WriteCoalescer(async, scheduler, writePermits,
+                coalesceWindow.get().toMilliseconds(), coalesceMaxPoints, group::permittedWrite);
+
+        return new CoalescingIngestionGroup(async, ingested, group, coalescer);
     }
 
     private <T> Optional<T> optionally(final boolean shouldSupply, final Supplier<T> supplier) {
@@ -28,6 +28,7 @@ import static java.util.Optional.of;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.spotify.heroic.ExtraParameters;
+import com.spotify.heroic.common.Duration;
 import com.spotify.heroic.common.Optionals;
 import com.spotify.heroic.dagger.PrimaryComponent;
 import com.spotify.heroic.filter.Filter;
@@ -51,25 +52,32 @@ public class IngestionModule {
     public static final boolean DEFAULT_UPDATE_METADATA = true;
     public static final boolean DEFAULT_UPDATE_SUGGESTIONS = true;
     public static final int DEFAULT_MAX_CONCURRENT_WRITES = 50000;
+    public static final int DEFAULT_COALESCE_MAX_POINTS = 1000;
 
     private final boolean updateMetrics;
     private final boolean updateMetadata;
     private final boolean updateSuggestions;
     private final int maxConcurrentWrites;
     private final Optional<String> filter;
+    private final Optional<Duration> coalesceWindow;
+    private final int coalesceMaxPoints;
 
     public IngestionModule(
         final boolean updateMetrics,
         final boolean updateMetadata,
         final boolean updateSuggestions,
         final int maxConcurrentWrites,
-        final Optional<String> filter
+        final Optional<String> filter,
+        final Optional<Duration> coalesceWindow,
+        final int coalesceMaxPoints
     ) {
         this.updateMetrics = updateMetrics;
         this.updateMetadata = updateMetadata;
         this.updateSuggestions = updateSuggestions;
         this.maxConcurrentWrites = maxConcurrentWrites;
         this.filter = filter;
+        this.coalesceWindow = coalesceWindow;
+        this.coalesceMaxPoints = coalesceMaxPoints;
     }
 
     public IngestionComponent module(
@@ -133,6 +141,20 @@ public class IngestionModule {
             return maxConcurrentWrites;
         }
 
+        @Provides
+        @Named("coalesceWindow")
+        @IngestionScope
+        public Optional<Duration> coalesceWindow() {
+            return coalesceWindow;
+        }
+
+        @Provides
+        @Named("coalesceMaxPoints")
+        @IngestionScope
+        public int coalesceMaxPoints() {
+            return coalesceMaxPoints;
+        }
+
         @Provides
         @IngestionScope
         public Filter filter(
@@ -155,6 +177,8 @@ public class IngestionModule {
         private Optional<Boolean> updateSuggestions = empty();
         private Optional<Integer> maxConcurrentWrites = empty();
         private Optional<String> filter = empty();
+        private Optional<Duration> coalesceWindow = empty();
+        private Optional<Integer> coalesceMaxPoints = empty();
 
         private Builder() {
         }
@@ -165,13 +189,17 @@ public class IngestionModule {
             @JsonProperty("updateMetadata") final Optional<Boolean> updateMetadata,
             @JsonProperty("updateSuggestions") final Optional<Boolean> updateSuggestions,
             @JsonProperty("maxConcurrentWrites") final Optional<Integer> maxConcurrentWrites,
-            @JsonProperty("filter") final Optional<String> filter
+            @JsonProperty("filter") final Optional<String> filter,
+            @JsonProperty("coalesceWindow") final Optional<Duration> coalesceWindow,
+            @JsonProperty("coalesceMaxPoints") final Optional<Integer> coalesceMaxPoints
         ) {
             this.updateMetrics = updateMetrics;
             this.updateMetadata = updateMetadata;
             this.updateSuggestions = updateSuggestions;
             this.maxConcurrentWrites = maxConcurrentWrites;
             this.filter = filter;
+            this.coalesceWindow = coalesceWindow;
+            this.coalesceMaxPoints = coalesceMaxPoints;
         }
 
         public Builder updateAll() {
@@ -201,6 +229,23 @@ public class IngestionModule {
             return this;
         }
 
+        /**
+         * Coalesce point writes to the same series for up to the given window before writing
+         * them.
+         */
+        public Builder coalesceWindow(Duration coalesceWindow) {
+            this.coalesceWindow = of(coalesceWindow);
+            return this;
+        }
+
+        /**
+         * Write coalesced points as soon as this many have been buffered for a series.
+         */
+        public Builder coalesceMaxPoints(int coalesceMaxPoints) {
+            this.coalesceMaxPoints = of(coalesceMaxPoints);
+            return this;
+        }
+
         public Builder merge(final Builder o) {
             // @formatter:off
             return new Builder(
@@ -208,7 +253,9 @@ public class IngestionModule {
                 pickOptional(updateMetadata, o.updateMetadata),
                 pickOptional(updateSuggestions, o.updateSuggestions),
                 pickOptional(maxConcurrentWrites, o.maxConcurrentWrites),
-                pickOptional(filter, o.filter)
+                pickOptional(filter, o.filter),
+                pickOptional(coalesceWindow, o.coalesceWindow),
+                pickOptional(coalesceMaxPoints, o.coalesceMaxPoints)
             );
             // @formatter:on
         }
@@ -220,7 +267,9 @@ public class IngestionModule {
                 updateMetadata.orElse(DEFAULT_UPDATE_METADATA),
                 updateSuggestions.orElse(DEFAULT_UPDATE_SUGGESTIONS),
                 maxConcurrentWrites.orElse(DEFAULT_MAX_CONCURRENT_WRITES),
-                filter
+                filter,
+                coalesceWindow,
+                coalesceMaxPoints.orElse(DEFAULT_COALESCE_MAX_POINTS)
             );
             // @formatter:on
         }
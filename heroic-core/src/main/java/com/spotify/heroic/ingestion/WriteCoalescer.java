@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2020 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.heroic.ingestion;
+
+import com.spotify.heroic.common.Series;
+import com.spotify.heroic.metric.MetricCollection;
+import com.spotify.heroic.metric.Point;
+import com.spotify.heroic.scheduler.Scheduler;
+import eu.toolchain.async.AsyncFramework;
+import eu.toolchain.async.AsyncFuture;
+import eu.toolchain.async.FutureDone;
+import eu.toolchain.async.ResolvableFuture;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Buffers points written to the same series and writes them as a single request, once a time
+ * window has passed or enough points have been buffered.
+ * <p>
+ * Every open buffer holds a write permit from when it is opened until its write has finished, so
+ * the number of open buffers is bounded together with all other writes, and writers block when
+ * no permits are available. The future returned for a write completes with the write of the
+ * buffer it was added to, so consumers that acknowledge messages or commit offsets on completion
+ * only do so after the flush.
+ */
+class WriteCoalescer {
+    private final AsyncFramework async;
+    private final Scheduler scheduler;
+    private final Semaphore writePermits;
+    private final long windowMillis;
+    private final int maxPoints;
+    /* writes a request holding a permit, and releases the permit when finished */
+    private final Function<Request, AsyncFuture<Ingestion>> writer;
+
+    private final ConcurrentMap<Series, Buffer> buffers = new ConcurrentHashMap<>();
+
+    WriteCoalescer(
+        final AsyncFramework async,
+        final Scheduler scheduler,
+        final Semaphore writePermits,
+        final long windowMillis,
+        final int maxPoints,
+        final Function<Request, AsyncFuture<Ingestion>> writer
+    ) {
+        this.async = async;
+        this.scheduler = scheduler;
+        this.writePermits = writePermits;
+        this.windowMillis = windowMillis;
+        this.maxPoints = maxPoints;
+        this.writer = writer;
+    }
+
+    AsyncFuture<Ingestion> write(final Series series, final List<Point> points) {
+        while (true) {
+            Buffer buffer = buffers.get(series);
+
+            if (buffer == null) {
+                try {
+                    writePermits.acquire();
+                } catch (final InterruptedException e) {
+                    return async.failed(
+                        new Exception("Failed to acquire semaphore for bounded request", e));
+                }
+
+                final Buffer created = new Buffer(series, async.future());
+                buffer = buffers.putIfAbsent(series, created);
+
+                if (buffer != null) {
+                    /* lost the race to open a buffer for this series */
+                    writePermits.release();
+                } else {
+                    buffer = created;
+                    scheduler.schedule("ingestion-coalesce", windowMillis, TimeUnit.MILLISECONDS,
+                        () -> flush(created));
+                }
+            }
+
+            final int size = buffer.add(points);
+
+            /* buffer was flushed before the points could be added */
+            if (size < 0) {
+                continue;
+            }
+
+            if (size >= maxPoints) {
+                flush(buffer);
+            }
+
+            return buffer.future;
+        }
+    }
+
+    /**
+     * Number of buffers that have not been flushed yet.
+     */
+    int buffered() {
+        return buffers.size();
+    }
+
+    private void flush(final Buffer buffer) {
+        final List<Point> points = buffer.close();
+
+        if (points == null) {
+            return;
+        }
+
+        buffers.remove(buffer.series, buffer);
+
+        final AsyncFuture<Ingestion> write;
+
+        try {
+            write = writer.apply(new Request(buffer.series, MetricCollection.points(points)));
+        } catch (final Exception e) {
+            writePermits.release();
+            buffer.future.fail(e);
+            return;
+        }
+
+        write.onDone(new FutureDone<Ingestion>() {
+            @Override
+            public void failed(final Throwable cause) {
+                buffer.future.fail(cause);
+            }
+
+            @Override
+            public void resolved(final Ingestion result) {
+                buffer.future.resolve(result);
+            }
+
+            @Override
+            public void cancelled() {
+                buffer.future.cancel();
+            }
+        });
+    }
+
+    private static final class Buffer {
+        private final Series series;
+        private final ResolvableFuture<Ingestion> future;
+
+        private List<Point> points = new ArrayList<>();
+
+        private Buffer(final Series series, final ResolvableFuture<Ingestion> future) {
+            this.series = series;
+            this.future = future;
+        }
+
+        /**
+         * Add points to the buffer.
+         *
+         * @return the number of buffered points, or -1 if the buffer has been closed
+         */
+        private synchronized int add(final List<Point> points) {
+            if (this.points == null) {
+                return -1;
+            }
+
+            this.points.addAll(points);
+            return this.points.size();
+        }
+
+        /**
+         * Close the buffer.
+         *
+         * @return the buffered points, or null if the buffer was already closed
+         */
+        private synchronized List<Point> close() {
+            final List<Point> points = this.points;
+            this.points = null;
+            return points;
+        }
+    }
+}
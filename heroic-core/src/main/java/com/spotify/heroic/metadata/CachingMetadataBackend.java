@@ -0,0 +1,547 @@
+/*
+ * Copyright (c) 2020 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.heroic.metadata;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSet;
+import com.spotify.heroic.async.AsyncObservable;
+import com.spotify.heroic.common.DateRange;
+import com.spotify.heroic.common.Groups;
+import com.spotify.heroic.common.OptionalLimit;
+import com.spotify.heroic.common.Series;
+import com.spotify.heroic.common.Statistics;
+import com.spotify.heroic.filter.AndFilter;
+import com.spotify.heroic.filter.Filter;
+import com.spotify.heroic.filter.MatchKeyFilter;
+import com.spotify.heroic.statistics.MetadataBackendReporter;
+import com.spotify.heroic.time.Clock;
+import eu.toolchain.async.AsyncFramework;
+import eu.toolchain.async.AsyncFuture;
+import eu.toolchain.async.FutureDone;
+import eu.toolchain.async.ResolvableFuture;
+import io.opencensus.trace.Span;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caches the series that queries on this node resolve, so that dashboards which refresh the same
+ * queries over and over do not run the same lookup against the backend every time.
+ * <p>
+ * Lookups are keyed by their optimized filter, their limit, and their range widened to a window,
+ * so that queries over a moving range share an entry. Concurrent lookups for the same key share
+ * the request to the backend.
+ * <p>
+ * Series written through this backend are added to the cached lookups they match, so new series
+ * show up before the entry expires. Series written on other nodes are picked up on expiry. Since
+ * every write is matched against all cached lookups whose filter does not require a metric key,
+ * at most {@link #MAX_ANY_KEY_LOOKUPS} such lookups are cached.
+ * <p>
+ * The size of the cache is bounded by the number of series in all cached lookups.
+ */
+class CachingMetadataBackend implements MetadataBackend {
+    /* lookups without a metric key are matched against every write, so few of them are cached */
+    static final int MAX_ANY_KEY_LOOKUPS = 32;
+
+    private final AsyncFramework async;
+    private final MetadataBackend delegate;
+    private final MetadataBackendReporter reporter;
+    private final Clock clock;
+    private final long window;
+
+    private final Cache<Key, Entry> cache;
+    /* cached keys by the metric key which their filter requires */
+    private final ConcurrentMap<String, Set<Key>> byKey = new ConcurrentHashMap<>();
+    /* cached keys whose filter does not require a metric key */
+    private final Set<Key> anyKey = ConcurrentHashMap.newKeySet();
+
+    CachingMetadataBackend(
+        final AsyncFramework async,
+        final MetadataBackend delegate,
+        final MetadataBackendReporter reporter,
+        final Clock clock,
+        final SeriesCacheOptions options
+    ) {
+        this.async = async;
+        this.delegate = delegate;
+        this.reporter = reporter;
+        this.clock = clock;
+        this.window = options.getWindow().toMilliseconds();
+
+        final Ticker ticker = new Ticker() {
+            @Override
+            public long read() {
+                return TimeUnit.MILLISECONDS.toNanos(clock.currentTimeMillis());
+            }
+        };
+
+        this.cache = CacheBuilder
+            .newBuilder()
+            .maximumWeight(options.getMaxSeries())
+            .<Key, Entry>weigher((key, entry) -> entry.weight())
+            .expireAfterWrite(options.getTtl().toMilliseconds(), TimeUnit.MILLISECONDS)
+            .ticker(ticker)
+            .removalListener(notification -> unindex(notification.getKey()))
+            .build();
+    }
+
+    @Override
+    public AsyncFuture<FindSeries> findSeries(final FindSeries.Request request) {
+        final Key key = new Key(request.getFilter().optimize(), widen(request.getRange()),
+            request.getLimit());
+
+        if (!requiredKey(key.filter).isPresent() && anyKey.size() >= MAX_ANY_KEY_LOOKUPS &&
+            !anyKey.contains(key)) {
+            reporter.reportSeriesCacheMiss();
+            return delegate.findSeries(request);
+        }
+
+        final long now = clock.currentTimeMillis();
+        final Entry created = new Entry(now, async.future());
+        final Entry entry = cache.asMap().putIfAbsent(key, created);
+
+        if (entry != null) {
+            reporter.reportSeriesCacheHit(now - entry.created);
+            return entry.get();
+        }
+
+        reporter.reportSeriesCacheMiss();
+        index(key);
+
+        final AsyncFuture<FindSeries> lookup;
+
+        try {
+            lookup = delegate.findSeries(
+                new FindSeries.Request(key.filter, key.range, key.limit, request.getFeatures()));
+        } catch (final Exception e) {
+            cache.asMap().remove(key, created);
+            created.future.fail(e);
+            return created.future;
+        }
+
+        lookup.onDone(new FutureDone<FindSeries>() {
+            @Override
+            public void failed(final Throwable cause) {
+                cache.asMap().remove(key, created);
+                created.future.fail(cause);
+            }
+
+            @Override
+            public void resolved(final FindSeries result) {
+                /* partial results are only returned to the lookups which are waiting for them */
+                if (!result.getErrors().isEmpty()) {
+                    cache.asMap().remove(key, created);
+                    created.future.resolve(result);
+                    return;
+                }
+
+                created.future.resolve(created.resolve(key, result));
+                refresh(key, created);
+            }
+
+            @Override
+            public void cancelled() {
+                cache.asMap().remove(key, created);
+                created.future.cancel();
+            }
+        });
+
+        return created.future;
+    }
+
+    @Override
+    public AsyncFuture<WriteMetadata> write(final WriteMetadata.Request request) {
+        update(request);
+        return delegate.write(request);
+    }
+
+    @Override
+    public AsyncFuture<WriteMetadata> write(
+        final WriteMetadata.Request request, final Span parentSpan
+    ) {
+        update(request);
+        return delegate.write(request, parentSpan);
+    }
+
+    @Override
+    public AsyncFuture<DeleteSeries> deleteSeries(final DeleteSeries.Request request) {
+        cache.invalidateAll();
+        return delegate.deleteSeries(request);
+    }
+
+    @Override
+    public AsyncFuture<Void> configure() {
+        return delegate.configure();
+    }
+
+    @Override
+    public AsyncObservable<Entries> entries(final Entries.Request request) {
+        return delegate.entries(request);
+    }
+
+    @SuppressWarnings("deprecation")
+    @Override
+    public AsyncFuture<FindTags> findTags(final FindTags.Request request) {
+        return delegate.findTags(request);
+    }
+
+    @Override
+    public AsyncObservable<FindSeriesStream> findSeriesStream(final FindSeries.Request request) {
+        return delegate.findSeriesStream(request);
+    }
+
+    @Override
+    public AsyncFuture<FindSeriesIds> findSeriesIds(final FindSeries.Request request) {
+        return delegate.findSeriesIds(request);
+    }
+
+    @Override
+    public AsyncObservable<FindSeriesIdsStream> findSeriesIdsStream(
+        final FindSeries.Request request
+    ) {
+        return delegate.findSeriesIdsStream(request);
+    }
+
+    @Override
+    public AsyncFuture<CountSeries> countSeries(final CountSeries.Request request) {
+        return delegate.countSeries(request);
+    }
+
+    @Override
+    public AsyncFuture<FindKeys> findKeys(final FindKeys.Request request) {
+        return delegate.findKeys(request);
+    }
+
+    @Override
+    public Statistics getStatistics() {
+        return delegate.getStatistics().merge(new Statistics("series-cache-size", cache.size()));
+    }
+
+    @Override
+    public boolean isReady() {
+        return delegate.isReady();
+    }
+
+    @Override
+    public Groups groups() {
+        return delegate.groups();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return delegate.isEmpty();
+    }
+
+    /**
+     * Number of cached lookups.
+     */
+    long size() {
+        return cache.size();
+    }
+
+    @Override
+    public String toString() {
+        return delegate.toString() + "{series-cache}";
+    }
+
+    private DateRange widen(final DateRange range) {
+        final long start = range.start() - Math.floorMod(range.start(), window);
+        final long end = range.end() + (window - Math.floorMod(range.end(), window)) % window;
+        return new DateRange(start, end);
+    }
+
+    private void update(final WriteMetadata.Request request) {
+        final Series series = request.getSeries();
+        final Set<Key> keys = byKey.get(series.getKey());
+
+        if (keys != null) {
+            for (final Key key : keys) {
+                update(key, request);
+            }
+        }
+
+        for (final Key key : anyKey) {
+            update(key, request);
+        }
+    }
+
+    private void update(final Key key, final WriteMetadata.Request request) {
+        if (!key.range.overlap(request.getRange())) {
+            return;
+        }
+
+        final Entry entry = cache.getIfPresent(key);
+
+        if (entry != null && entry.add(key, request.getSeries())) {
+            refresh(key, entry);
+        }
+    }
+
+    /**
+     * Remove an entry which has been invalidated, or replace it with itself so that the cache
+     * weighs it again after it has grown.
+     * <p>
+     * This must not be called while holding the monitor of the entry, since the cache weighs
+     * entries while holding its own locks.
+     */
+    private void refresh(final Key key, final Entry entry) {
+        if (entry.isInvalidated()) {
+            cache.asMap().remove(key, entry);
+            return;
+        }
+
+        cache.asMap().replace(key, entry, entry);
+    }
+
+    private void index(final Key key) {
+        final Optional<String> metricKey = requiredKey(key.filter);
+
+        if (metricKey.isPresent()) {
+            byKey.computeIfAbsent(metricKey.get(), k -> ConcurrentHashMap.newKeySet()).add(key);
+        } else {
+            anyKey.add(key);
+        }
+    }
+
+    private void unindex(final Key key) {
+        /* the key might have been cached again */
+        if (key == null || cache.asMap().containsKey(key)) {
+            return;
+        }
+
+        final Optional<String> metricKey = requiredKey(key.filter);
+
+        if (!metricKey.isPresent()) {
+            anyKey.remove(key);
+            return;
+        }
+
+        byKey.computeIfPresent(metricKey.get(), (k, keys) -> {
+            keys.remove(key);
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+
+    /**
+     * The metric key that all series matching an optimized filter must have, if any.
+     */
+    static Optional<String> requiredKey(final Filter filter) {
+        if (filter instanceof MatchKeyFilter) {
+            return Optional.of(((MatchKeyFilter) filter).key());
+        }
+
+        if (filter instanceof AndFilter) {
+            for (final Filter term : ((AndFilter) filter).terms()) {
+                if (term instanceof MatchKeyFilter) {
+                    return Optional.of(((MatchKeyFilter) term).key());
+                }
+            }
+        }
+
+        return Optional.empty();
+    }
+
+    private final class Entry {
+        private final long created;
+        private final ResolvableFuture<FindSeries> future;
+
+        /* null until the lookup has been resolved */
+        private volatile FindSeries result = null;
+        /* series written while the lookup was in flight, guarded by the entry */
+        private List<Series> written = new ArrayList<>();
+        /* series written after the lookup was resolved, which are not part of its result */
+        private final Set<Series> added = ConcurrentHashMap.newKeySet();
+        /* the result together with the first number of added series, guarded by the entry */
+        private FindSeries merged = null;
+        private int mergedAdded = 0;
+        /* set when the lookup outgrew its limit, and has to be removed from the cache */
+        private volatile boolean invalidated = false;
+        /* number of series held, read by the cache without locking the entry */
+        private volatile int weight = 1;
+
+        private Entry(final long created, final ResolvableFuture<FindSeries> future) {
+            this.created = created;
+            this.future = future;
+        }
+
+        private AsyncFuture<FindSeries> get() {
+            final FindSeries merged = merged();
+
+            if (merged == null) {
+                return future;
+            }
+
+            return async.resolved(merged);
+        }
+
+        private synchronized FindSeries resolve(final Key key, final FindSeries result) {
+            this.result = result;
+            this.merged = result;
+            this.weight = 1 + result.getSeries().size();
+
+            for (final Series series : written) {
+                add(key, series);
+            }
+
+            written = null;
+            return merged();
+        }
+
+        /**
+         * The result of the lookup together with all series which have been added to it, or
+         * {@code null} if the lookup has not been resolved.
+         * <p>
+         * Added series are only copied into the result when it is read, so that a burst of
+         * writes costs a single copy.
+         */
+        private synchronized FindSeries merged() {
+            if (result == null) {
+                return null;
+            }
+
+            if (added.size() == mergedAdded) {
+                return merged;
+            }
+
+            final Set<Series> series =
+                ImmutableSet.<Series>builder().addAll(result.getSeries()).addAll(added).build();
+            merged = new FindSeries(result.getErrors(), series, false);
+            /* added series are never part of the result */
+            mergedAdded = series.size() - result.getSeries().size();
+            return merged;
+        }
+
+        /**
+         * Add a written series to the lookup, if it matches.
+         * <p>
+         * Once the lookup has been resolved, this does not lock the entry.
+         *
+         * @return {@code true} if the resolved lookup grew, or was invalidated.
+         */
+        private boolean add(final Key key, final Series series) {
+            if (invalidated) {
+                return false;
+            }
+
+            final FindSeries result = resolvedOrWritten(key, series);
+
+            if (result == null) {
+                return false;
+            }
+
+            final Set<Series> current = result.getSeries();
+
+            if (result.getLimited() || current.contains(series) || added.contains(series) ||
+                !key.filter.apply(series) || !added.add(series)) {
+                return false;
+            }
+
+            reporter.reportSeriesCacheUpdate();
+
+            final int size = current.size() + added.size();
+
+            if (key.limit.isGreater(size)) {
+                invalidated = true;
+                return true;
+            }
+
+            weight = 1 + size;
+            return true;
+        }
+
+        /**
+         * Get the result of the lookup, or keep the series until it is resolved if it matches.
+         *
+         * @return The result of the lookup, or {@code null} if it has not been resolved.
+         */
+        private FindSeries resolvedOrWritten(final Key key, final Series series) {
+            final FindSeries result = this.result;
+
+            if (result != null) {
+                return result;
+            }
+
+            synchronized (this) {
+                if (this.result != null) {
+                    return this.result;
+                }
+
+                if (key.filter.apply(series)) {
+                    written.add(series);
+                    weight = 1 + written.size();
+                }
+
+                return null;
+            }
+        }
+
+        private boolean isInvalidated() {
+            return invalidated;
+        }
+
+        /**
+         * Weight of the entry in the cache, which is the number of series it holds.
+         */
+        private int weight() {
+            return weight;
+        }
+    }
+
+    private static final class Key {
+        private final Filter filter;
+        private final DateRange range;
+        private final OptionalLimit limit;
+
+        private Key(final Filter filter, final DateRange range, final OptionalLimit limit) {
+            this.filter = filter;
+            this.range = range;
+            this.limit = limit;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+
+            if (!(o instanceof Key)) {
+                return false;
+            }
+
+            final Key other = (Key) o;
+            return filter.equals(other.filter) && range.equals(other.range) &&
+                limit.equals(other.limit);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(filter, range, limit);
+        }
+    }
+}
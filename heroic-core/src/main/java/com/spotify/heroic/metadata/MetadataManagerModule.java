@@ -22,6 +22,7 @@
 package com.spotify.heroic.metadata;
 
 import static com.spotify.heroic.common.Optionals.mergeOptionalList;
+import static com.spotify.heroic.common.Optionals.pickOptional;
 import static java.util.Optional.empty;
 import static java.util.Optional.of;
 
@@ -48,13 +49,16 @@ import javax.inject.Named;
 public class MetadataManagerModule {
     private final List<MetadataModule> backends;
     private final Optional<List<String>> defaultBackends;
+    private final SeriesCacheOptions seriesCache;
 
     public MetadataManagerModule(
         List<MetadataModule> backends,
-        Optional<List<String>> defaultBackends
+        Optional<List<String>> defaultBackends,
+        SeriesCacheOptions seriesCache
     ) {
         this.backends = backends;
         this.defaultBackends = defaultBackends;
+        this.seriesCache = seriesCache;
     }
 
     @Provides
@@ -84,10 +88,27 @@ public class MetadataManagerModule {
     @Provides
     @MetadataScope
     public Set<MetadataBackend> backends(
-        List<Exposed> components, MetadataBackendReporter reporter
+        final PrimaryComponent primary, List<Exposed> components,
+        MetadataBackendReporter reporter
     ) {
-        return ImmutableSet.copyOf(
-            components.stream().map(Exposed::backend).map(reporter::decorate).iterator());
+        return ImmutableSet.copyOf(components
+            .stream()
+            .map(Exposed::backend)
+            .map(reporter::decorate)
+            .map(backend -> cached(primary, reporter, backend))
+            .iterator());
+    }
+
+    private MetadataBackend cached(
+        final PrimaryComponent primary, final MetadataBackendReporter reporter,
+        final MetadataBackend backend
+    ) {
+        if (!seriesCache.isEnabled()) {
+            return backend;
+        }
+
+        return new CachingMetadataBackend(primary.async(), backend, reporter, primary.clock(),
+            seriesCache);
     }
 
     @Provides
@@ -111,6 +132,7 @@ public class MetadataManagerModule {
     public static class Builder {
         private Optional<List<MetadataModule>> backends = empty();
         private Optional<List<String>> defaultBackends = empty();
+        private Optional<SeriesCacheOptions> seriesCache = empty();
 
         private Builder() {
         }
@@ -118,10 +140,12 @@ public class MetadataManagerModule {
         @JsonCreator
         public Builder(
             @JsonProperty("backends") Optional<List<MetadataModule>> backends,
-            @JsonProperty("defaultBackends") Optional<List<String>> defaultBackends
+            @JsonProperty("defaultBackends") Optional<List<String>> defaultBackends,
+            @JsonProperty("seriesCache") Optional<SeriesCacheOptions> seriesCache
         ) {
             this.backends = backends;
             this.defaultBackends = defaultBackends;
+            this.seriesCache = seriesCache;
         }
 
         public Builder backends(List<MetadataModule> backends) {
@@ -134,11 +158,17 @@ public class MetadataManagerModule {
             return this;
         }
 
+        public Builder seriesCache(SeriesCacheOptions seriesCache) {
+            this.seriesCache = of(seriesCache);
+            return this;
+        }
+
         public Builder merge(final Builder o) {
             // @formatter:off
             return new Builder(
                 mergeOptionalList(o.backends, backends),
-                mergeOptionalList(o.defaultBackends, defaultBackends)
+                mergeOptionalList(o.defaultBackends, defaultBackends),
+                pickOptional(seriesCache, o.seriesCache)
             );
             // @formatter:on
         }
@@ -147,7 +177,8 @@ public class MetadataManagerModule {
             // @formatter:off
             return new MetadataManagerModule(
                 backends.orElseGet(ImmutableList::of),
-                defaultBackends
+                defaultBackends,
+                seriesCache.orElseGet(SeriesCacheOptions::new)
             );
             // @formatter:on
         }
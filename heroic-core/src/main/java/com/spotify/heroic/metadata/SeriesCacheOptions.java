@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2020 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.heroic.metadata;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.spotify.heroic.common.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Options for the node-local cache of series lookups made by queries.
+ */
+public class SeriesCacheOptions {
+    public static final boolean DEFAULT_ENABLED = false;
+    public static final Duration DEFAULT_TTL = Duration.of(1, TimeUnit.MINUTES);
+    public static final Duration DEFAULT_WINDOW = Duration.of(5, TimeUnit.MINUTES);
+    public static final long DEFAULT_MAX_SERIES = 1000000L;
+
+    /* cache series lookups */
+    private final boolean enabled;
+    /* how long a lookup is cached after it was resolved */
+    private final Duration ttl;
+    /* granularity that query ranges are widened to, so that moving ranges share entries */
+    private final Duration window;
+    /* maximum number of series in all cached lookups */
+    private final long maxSeries;
+
+    public SeriesCacheOptions() {
+        this(Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty());
+    }
+
+    @JsonCreator
+    public SeriesCacheOptions(
+        @JsonProperty("enabled") Optional<Boolean> enabled,
+        @JsonProperty("ttl") Optional<Duration> ttl,
+        @JsonProperty("window") Optional<Duration> window,
+        @JsonProperty("maxSeries") Optional<Long> maxSeries
+    ) {
+        this.enabled = enabled.orElse(DEFAULT_ENABLED);
+        this.ttl = ttl.orElse(DEFAULT_TTL);
+        this.window = window.orElse(DEFAULT_WINDOW);
+        this.maxSeries = maxSeries.orElse(DEFAULT_MAX_SERIES);
+
+        if (this.ttl.toMilliseconds() < 1) {
+            throw new IllegalArgumentException("ttl must be positive");
+        }
+
+        if (this.window.toMilliseconds() < 1) {
+            throw new IllegalArgumentException("window must be positive");
+        }
+
+        if (this.maxSeries < 1) {
+            throw new IllegalArgumentException("maxSeries must be positive");
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Duration getTtl() {
+        return ttl;
+    }
+
+    public Duration getWindow() {
+        return window;
+    }
+
+    public long getMaxSeries() {
+        return maxSeries;
+    }
+}
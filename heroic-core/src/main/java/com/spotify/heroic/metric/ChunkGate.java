@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2020 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.heroic.metric;
+
+import eu.toolchain.async.AsyncFramework;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Limits how many chunks of fetched data a single query holds in memory at once.
+ * <p>
+ * Reads which would exceed the limit are queued, and are run in order as chunks are released.
+ * A released chunk is handed directly to the next queued read, which is run by the async
+ * framework instead of the releasing thread. Chunks are commonly released from within a read, so
+ * running the next read in place would grow the stack with every read that is handed a chunk.
+ */
+class ChunkGate {
+    private static final Logger log = LoggerFactory.getLogger(ChunkGate.class);
+
+    private final AsyncFramework async;
+    private final int maxInFlight;
+
+    private final Queue<Runnable> pending = new ArrayDeque<>();
+    private int inFlight = 0;
+
+    /**
+     * @param async The async framework which runs queued reads.
+     * @param maxInFlight The maximum number of chunks in flight.
+     */
+    ChunkGate(final AsyncFramework async, final int maxInFlight) {
+        this.async = async;
+        this.maxInFlight = maxInFlight;
+    }
+
+    void acquire(final Runnable read) {
+        synchronized (this) {
+            if (inFlight >= maxInFlight) {
+                pending.add(read);
+                return;
+            }
+
+            inFlight++;
+        }
+
+        read.run();
+    }
+
+    void release() {
+        final Runnable next;
+
+        synchronized (this) {
+            next = pending.poll();
+
+            if (next == null) {
+                inFlight--;
+                return;
+            }
+        }
+
+        async.call(() -> {
+            next.run();
+            return null;
+        }).onFailed(cause -> log.error("Queued read failed", cause));
+    }
+
+    synchronized int inFlight() {
+        return inFlight;
+    }
+
+    synchronized int pending() {
+        return pending.size();
+    }
+}
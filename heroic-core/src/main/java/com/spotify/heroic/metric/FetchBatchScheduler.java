@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2020 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.heroic.metric;
+
+import com.google.common.collect.Lists;
+import com.spotify.heroic.common.DateRange;
+import com.spotify.heroic.common.Series;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Divides the series of a query into batches which are fetched together.
+ * <p>
+ * Batches are sized by the number of points they are estimated to fetch, so that queries over
+ * long ranges read fewer series per fetch than queries over short ranges. Every batch is bounded
+ * by the maximum number of series, and series are spread over at least as many batches as
+ * fetches are performed in parallel.
+ */
+class FetchBatchScheduler {
+    /**
+     * Interval at which samples are assumed to be written, when estimating the number of points
+     * of a series.
+     */
+    static final long ESTIMATED_SAMPLE_INTERVAL = TimeUnit.SECONDS.toMillis(60);
+
+    private final int parallelism;
+    private final int maxSeries;
+    private final long maxPoints;
+
+    /**
+     * @param parallelism How many fetches are performed in parallel.
+     * @param maxSeries The maximum number of series in a single batch.
+     * @param maxPoints The maximum number of points a single batch is estimated to fetch.
+     */
+    FetchBatchScheduler(final int parallelism, final int maxSeries, final long maxPoints) {
+        this.parallelism = parallelism;
+        this.maxSeries = maxSeries;
+        this.maxPoints = maxPoints;
+    }
+
+    /**
+     * Divide the given series into batches for fetching the given range.
+     */
+    List<List<Series>> batches(final List<Series> series, final DateRange range) {
+        return Lists.partition(series, batchSize(series.size(), range));
+    }
+
+    /**
+     * The number of series in each batch, which is always at least one.
+     */
+    int batchSize(final int seriesCount, final DateRange range) {
+        final long byPoints = maxPoints / estimatePoints(range);
+        final long perFetch = (seriesCount + parallelism - 1) / parallelism;
+        return (int) Math.max(1, Math.min(maxSeries, Math.min(byPoints, perFetch)));
+    }
+
+    /**
+     * Estimate the number of points of a single series in the given range.
+     */
+    static long estimatePoints(final DateRange range) {
+        return Math.max(1, range.diff() / ESTIMATED_SAMPLE_INTERVAL);
+    }
+}
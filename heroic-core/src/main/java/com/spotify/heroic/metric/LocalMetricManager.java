@@ -75,6 +75,7 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import javax.inject.Inject;
@@ -97,6 +98,10 @@ public class LocalMetricManager implements MetricManager {
     private final OptionalLimit dataLimit;
     private final int concurrentQueriesBackoff;
     private final int fetchParallelism;
+    private final FetchBatchScheduler fetchBatches;
+    private final int fetchChunkSize;
+    private final int fetchChunksInFlight;
+    private final Optional<MemoryBudget> memoryBudget;
     private final boolean failOnLimits;
 
     private final AsyncFramework async;
@@ -114,6 +119,16 @@ public class LocalMetricManager implements MetricManager {
      * may produce.
      * @param dataLimit The maximum number of samples a single query is allowed to fetch.
      * @param fetchParallelism How many fetches that are allowed to be performed in parallel.
+     * @param fetchBatchSize The maximum number of series fetched together in a single fetch.
+     * @param fetchBatchPoints The maximum number of (estimated) data points fetched together in a
+     * single fetch.
+     * @param fetchChunkSize The maximum number of data points a backend hands over at once, when
+     * it streams the data that it reads.
+     * @param fetchChunksInFlight The maximum number of chunks a single query holds in memory at
+     * once, when backends stream the data that they read.
+     * @param memoryBudget The number of bytes that all queries on this node may reserve.
+     * @param memoryBudgetQueueSize How many queries may wait for memory before further queries are
+     * rejected.
      */
     @Inject
     public LocalMetricManager(
@@ -123,6 +138,12 @@ public class LocalMetricManager implements MetricManager {
         @Named("dataLimit") final OptionalLimit dataLimit,
         @Named("concurrentQueriesBackoff") final OptionalLimit concurrentQueriesBackoff,
         @Named("fetchParallelism") final int fetchParallelism,
+        @Named("fetchBatchSize") final int fetchBatchSize,
+        @Named("fetchBatchPoints") final long fetchBatchPoints,
+        @Named("fetchChunkSize") final int fetchChunkSize,
+        @Named("fetchChunksInFlight") final int fetchChunksInFlight,
+        @Named("memoryBudget") final OptionalLimit memoryBudget,
+        @Named("memoryBudgetQueueSize") final int memoryBudgetQueueSize,
         @Named("failOnLimits") final boolean failOnLimits,
         final AsyncFramework async,
         final GroupSet<MetricBackend> groupSet,
@@ -136,6 +157,10 @@ public class LocalMetricManager implements MetricManager {
         this.dataLimit = dataLimit;
         this.concurrentQueriesBackoff = concurrentQueriesBackoff.asMaxInteger(Integer.MAX_VALUE);
         this.fetchParallelism = fetchParallelism;
+        this.fetchBatches =
+            new FetchBatchScheduler(fetchParallelism, fetchBatchSize, fetchBatchPoints);
+        this.fetchChunkSize = fetchChunkSize;
+        this.fetchChunksInFlight = fetchChunksInFlight;
         this.failOnLimits = failOnLimits;
         this.async = async;
         this.groupSet = groupSet;
@@ -143,6 +168,9 @@ public class LocalMetricManager implements MetricManager {
         this.reporter = reporter;
         this.queryLogger = queryLoggerFactory.create("LocalMetricManager");
         this.concurrentQueries = new Semaphore(this.concurrentQueriesBackoff);
+        this.memoryBudget = memoryBudget
+            .asLong()
+            .map(budget -> new MemoryBudget(async, budget, memoryBudgetQueueSize, reporter));
     }
 
     @Override
@@ -199,6 +227,7 @@ public class LocalMetricManager implements MetricManager {
             private final DataInMemoryReporter dataInMemoryReporter;
             private final Span parentSpan;
             private final MetricType source;
+            private final Optional<Consumer<ResultGroup>> groups;
 
             private Transform(
                 final FullQuery.Request request,
@@ -207,7 +236,8 @@ public class LocalMetricManager implements MetricManager {
                 final OptionalLimit groupLimit,
                 final QuotaWatcher quotaWatcher,
                 final DataInMemoryReporter dataInMemoryReporter,
-                final Span parentSpan
+                final Span parentSpan,
+                final Optional<Consumer<ResultGroup>> groups
             ) {
                 this.aggregation = request.aggregation();
                 this.range = request.range();
@@ -223,6 +253,7 @@ public class LocalMetricManager implements MetricManager {
 
                 this.dataInMemoryReporter = dataInMemoryReporter;
                 this.parentSpan = parentSpan;
+                this.groups = groups;
 
                 final Features features = request.features();
                 this.bucketStrategy = options
@@ -283,7 +314,7 @@ public class LocalMetricManager implements MetricManager {
                 if (options.tracing().isEnabled(Tracing.DETAILED)) {
                     // tracing enabled, keeps track of each individual FetchData trace.
                     collector = new ResultCollector(quotaWatcher, dataInMemoryReporter, aggregation,
-                        session, limits, groupLimit, failOnLimits) {
+                        session, limits, groupLimit, failOnLimits, groups) {
                         final ConcurrentLinkedQueue<QueryTrace> traces =
                             new ConcurrentLinkedQueue<>();
 
@@ -301,7 +332,7 @@ public class LocalMetricManager implements MetricManager {
                 } else {
                     // very limited tracing, does not collected each individual FetchData trace.
                     collector = new ResultCollector(quotaWatcher, dataInMemoryReporter, aggregation,
-                        session, limits, groupLimit, failOnLimits) {
+                        session, limits, groupLimit, failOnLimits, groups) {
                         @Override
                         public QueryTrace buildTrace() {
                             return namedWatch.end();
@@ -309,21 +340,24 @@ public class LocalMetricManager implements MetricManager {
                     };
                 }
 
+                final List<List<Series>> batches =
+                    fetchBatches.batches(ImmutableList.copyOf(result.getSeries()), range);
+
                 final List<Callable<AsyncFuture<FetchData.Result>>> fetches = new ArrayList<>();
                 accept(metricBackend -> {
-                    for (final Series series : result.getSeries()) {
+                    for (final List<Series> batch : batches) {
                         // Requires the squashing exporter otherwise too many spans are produced.
-                        final Span fetchSeries =
+                        final Span fetchBatch =
                             tracer.spanBuilderWithExplicitParent(
-                                "localMetricsManager.fetchSeries", fetchSpan).startSpan();
+                                "localMetricsManager.fetchBatch", fetchSpan).startSpan();
 
-                        fetchSeries.addAnnotation(series.toString());
-                        fetches.add(() -> metricBackend.fetch(
-                            new FetchData.Request(source, series, range, options),
+                        fetchBatch.putAttribute("seriesCount", longAttributeValue(batch.size()));
+                        fetches.add(() -> metricBackend.fetchMany(
+                            new FetchData.BatchRequest(source, batch, range, options),
                             quotaWatcher,
-                            mcr -> collector.acceptMetricsCollection(series, mcr),
-                            fetchSeries
-                        ).onDone(new EndSpanFutureReporter(fetchSeries)));
+                            collector::acceptMetricsCollection,
+                            fetchBatch
+                        ).onDone(new EndSpanFutureReporter(fetchBatch)));
                     }
                 });
                 return async
@@ -340,6 +374,21 @@ public class LocalMetricManager implements MetricManager {
         @Override
         public AsyncFuture<FullQuery> query(
             final FullQuery.Request request, final Span parentSpan) {
+            return query(request, parentSpan, Optional.empty());
+        }
+
+        @Override
+        public AsyncFuture<FullQuery> query(
+            final FullQuery.Request request, final Span parentSpan,
+            final Consumer<ResultGroup> groups
+        ) {
+            return query(request, parentSpan, Optional.of(groups));
+        }
+
+        private AsyncFuture<FullQuery> query(
+            final FullQuery.Request request, final Span parentSpan,
+            final Optional<Consumer<ResultGroup>> groups
+        ) {
             if (!concurrentQueries.tryAcquire()) {
                 // There's currently too many concurrent queries. Fail now so that the QueryManager
                 // gets an opportunity to try another node in the same shard instead.
@@ -352,15 +401,49 @@ public class LocalMetricManager implements MetricManager {
             }
 
             try {
-                return protectedQuery(request, parentSpan).onFinished(concurrentQueries::release);
+                return reserveMemory(request)
+                    .onFailed(e -> {
+                        if (e instanceof GoAwayException) {
+                            // Fail now so that the QueryManager can try another node instead.
+                            parentSpan.addAnnotation(e.getMessage());
+                            parentSpan.end();
+                        }
+                    })
+                    .lazyTransform(reservation -> {
+                        try {
+                            return protectedQuery(request, parentSpan, reservation, groups)
+                                .onFinished(reservation::release);
+                        } catch (final Exception e) {
+                            reservation.release();
+                            throw e;
+                        }
+                    })
+                    .onFinished(concurrentQueries::release);
             } catch (Exception e) {
                 concurrentQueries.release();
                 throw new RuntimeException(e);
             }
         }
 
+        /**
+         * Reserve the memory that the given query is estimated to retain, waiting for it if the
+         * memory budget of this node is exhausted.
+         */
+        private AsyncFuture<MemoryBudget.Reservation> reserveMemory(
+            final FullQuery.Request request
+        ) {
+            if (!memoryBudget.isPresent()) {
+                return async.resolved(MemoryBudget.Reservation.NONE);
+            }
+
+            final long points = request.aggregation().estimate(request.range());
+            return memoryBudget.get().reserve(MemoryBudget.bytes(points));
+        }
+
         private AsyncFuture<FullQuery> protectedQuery(
-            final FullQuery.Request request, final Span parentSpan) {
+            final FullQuery.Request request, final Span parentSpan,
+            final MemoryBudget.Reservation reservation,
+            final Optional<Consumer<ResultGroup>> groups) {
             final QueryOptions options = request.options();
             final QueryContext queryContext = request.context();
 
@@ -371,6 +454,9 @@ public class LocalMetricManager implements MetricManager {
             final QuotaWatcher quotaWatcher = new QuotaWatcher(
                 options.dataLimit().orElse(dataLimit).asLong().orElse(Long.MAX_VALUE),
                 options.aggregationLimit().orElse(aggregationLimit).asLong().orElse(Long.MAX_VALUE),
+                fetchChunkSize,
+                new ChunkGate(async, fetchChunksInFlight),
+                reservation,
                 dataInMemoryReporter
             );
 
@@ -397,7 +483,8 @@ public class LocalMetricManager implements MetricManager {
                     groupLimit,
                     quotaWatcher,
                     dataInMemoryReporter,
-                    findSeriesSpan);
+                    findSeriesSpan,
+                    groups);
 
             return metadata
                 .findSeries(FindSeries.Request.withLimit(request, seriesLimit))
@@ -437,6 +524,18 @@ public class LocalMetricManager implements MetricManager {
             return async.collect(callbacks, FetchData.collectResult(FETCH));
         }
 
+        @Override
+        public AsyncFuture<FetchData.Result> fetchMany(
+            final FetchData.BatchRequest request,
+            final FetchQuotaWatcher watcher,
+            final BiConsumer<Series, MetricReadResult> metricsConsumer,
+            final Span parentSpan
+        ) {
+            final List<AsyncFuture<FetchData.Result>> callbacks =
+                map(b -> b.fetchMany(request, watcher, metricsConsumer, parentSpan));
+            return async.collect(callbacks, FetchData.collectResult(FETCH));
+        }
+
         @Override
         public AsyncFuture<WriteMetric> write(final WriteMetric.Request request) {
             return write(request, io.opencensus.trace.Tracing.getTracer().getCurrentSpan());
@@ -509,6 +608,19 @@ public class LocalMetricManager implements MetricManager {
             });
         }
 
+        @Override
+        public AsyncFuture<Long> compact(final DateRange range) {
+            return async.collect(map(b -> b.compact(range))).directTransform(result -> {
+                long compacted = 0;
+
+                for (final long c : result) {
+                    compacted += c;
+                }
+
+                return compacted;
+            });
+        }
+
         @Override
         public AsyncFuture<MetricCollection> fetchRow(final BackendKey key) {
             final List<AsyncFuture<MetricCollection>> callbacks = map(b -> b.fetchRow(key));
@@ -552,6 +664,7 @@ public class LocalMetricManager implements MetricManager {
         final ResultLimits limits;
         final OptionalLimit groupLimit;
         final boolean failOnLimits;
+        final Optional<Consumer<ResultGroup>> groups;
 
         private final ConcurrentHashMultiset<Long> rowDensityData = ConcurrentHashMultiset.create();
 
@@ -562,7 +675,8 @@ public class LocalMetricManager implements MetricManager {
             final AggregationSession session,
             final ResultLimits limits,
             final OptionalLimit groupLimit,
-            final boolean failOnLimits
+            final boolean failOnLimits,
+            final Optional<Consumer<ResultGroup>> groups
         ) {
             this.watcher = watcher;
             this.dataInMemoryReporter = dataInMemoryReporter;
@@ -571,6 +685,7 @@ public class LocalMetricManager implements MetricManager {
             this.limits = limits;
             this.groupLimit = groupLimit;
             this.failOnLimits = failOnLimits;
+            this.groups = groups;
         }
 
         @Override
@@ -585,6 +700,7 @@ public class LocalMetricManager implements MetricManager {
             metrics.updateAggregation(session, aggregationKey,
                 ImmutableSet.of(series.withResource(readResult.getResource())));
             dataInMemoryReporter.reportDataNoLongerNeeded(metrics.size());
+            watcher.releaseData(metrics.size());
 
             metrics.getAverageDistanceBetweenMetrics().ifPresent(msBetweenSamples -> {
                 final double metricsPerSecond = 1000.0 / msBetweenSamples;
@@ -633,17 +749,26 @@ public class LocalMetricManager implements MetricManager {
                 limitsBuilder.add(ResultLimit.AGGREGATION);
             }
 
-            if (watcher.isReadQuotaViolated()) {
+            if (watcher.isReadQuotaViolated() || watcher.isMemoryQuotaViolated()) {
                 limitsBuilder.add(ResultLimit.QUOTA);
             }
 
             // Remove the watcher from the set at the end of query
             quotaWatchers.remove(watcher);
 
-            if (watcher.isReadQuotaViolated() || watcher.isRetainQuotaViolated()) {
+            if (watcher.isReadQuotaViolated() || watcher.isRetainQuotaViolated() ||
+                watcher.isMemoryQuotaViolated()) {
                 final Optional<Histogram> dataDensity = Optional.of(getRowDensityHistogram());
+                final String violation;
+
+                if (watcher.isMemoryQuotaViolated()) {
+                    violation = "Query exceeded the memory budget of this node";
+                } else {
+                    violation = "Query exceeded quota";
+                }
+
                 errorsBuilder.add(new QueryError(
-                    checkIssues(failed, cancelled).orElse("Query exceeded quota")));
+                    checkIssues(failed, cancelled).orElse(violation)));
 
                 return FullQuery.create(trace, errorsBuilder.build(), ImmutableList.of(),
                     Statistics.empty(), new ResultLimits(limitsBuilder.build()), dataDensity);
@@ -664,26 +789,34 @@ public class LocalMetricManager implements MetricManager {
             final Statistics baseStatistics =
                 new Statistics(ROWS_ACCESSED, watcher.getRowsAccessed());
 
+            final List<AggregationOutput> outputs = result.getResult();
+
+            /* checked up front, since streamed groups can not be taken back */
+            if (groupLimit.isGreater(outputs.size())) {
+                if (failOnLimits) {
+                    errorsBuilder.add(new QueryError(
+                        "The number of result groups is more than the allowed limit of " +
+                            groupLimit));
+                    return FullQuery.create(trace, errorsBuilder.build(), ImmutableList.of(),
+                        baseStatistics,
+                        new ResultLimits(limitsBuilder.add(ResultLimit.GROUP).build()),
+                        dataDensity);
+                }
+
+                limitsBuilder.add(ResultLimit.GROUP);
+            }
+
             final List<ResultGroup> groups = new ArrayList<>();
 
-            for (final AggregationOutput group : result.getResult()) {
-                if (groupLimit.isGreaterOrEqual(groups.size())) {
-                    if (failOnLimits) {
-                        errorsBuilder.add(new QueryError(
-                            "The number of result groups is more than the allowed limit of " +
-                                groupLimit));
-                        return FullQuery.create(trace, errorsBuilder.build(), ImmutableList.of(),
-                            baseStatistics,
-                            new ResultLimits(limitsBuilder.add(ResultLimit.GROUP).build()),
-                            dataDensity);
-                    }
+            for (final AggregationOutput group : groupLimit.limitList(outputs)) {
+                final ResultGroup resultGroup = new ResultGroup(group.getKey(), group.getSeries(),
+                    group.getMetrics(), aggregation.cadence());
 
-                    limitsBuilder.add(ResultLimit.GROUP);
-                    break;
+                if (this.groups.isPresent()) {
+                    this.groups.get().accept(resultGroup);
+                } else {
+                    groups.add(resultGroup);
                 }
-
-                groups.add(new ResultGroup(group.getKey(), group.getSeries(), group.getMetrics(),
-                    aggregation.cadence()));
             }
 
             return FullQuery.create(trace, errorsBuilder.build(), groups,
@@ -716,18 +849,28 @@ public class LocalMetricManager implements MetricManager {
     private static class QuotaWatcher implements FetchQuotaWatcher, RetainQuotaWatcher {
         private final long dataLimit;
         private final long retainLimit;
+        private final int chunkSize;
+        private final ChunkGate chunks;
+        private final MemoryBudget.Reservation reservation;
         private final DataInMemoryReporter dataInMemoryReporter;
         private static final long LOGLIMIT = 1_000_000;
 
         private final AtomicLong read = new AtomicLong();
         private final AtomicLong retained = new AtomicLong();
+        private final AtomicLong released = new AtomicLong();
+        private volatile boolean memoryViolated = false;
 
         private final LongAdder rowsAccessed = new LongAdder();
 
-        private QuotaWatcher(final long dataLimit, final long retainLimit,
+        private QuotaWatcher(final long dataLimit, final long retainLimit, final int chunkSize,
+                             final ChunkGate chunks,
+                             final MemoryBudget.Reservation reservation,
                              final DataInMemoryReporter dataInMemoryReporter) {
             this.dataLimit = dataLimit;
             this.retainLimit = retainLimit;
+            this.chunkSize = chunkSize;
+            this.chunks = chunks;
+            this.reservation = reservation;
             this.dataInMemoryReporter = dataInMemoryReporter;
         }
 
@@ -741,6 +884,7 @@ public class LocalMetricManager implements MetricManager {
                     " (# Wathcers: {})", total, curDataPoints,
                     n, quotaWatchers.size());
             }
+            reserveInMemory();
             throwIfViolated();
             // Must be called after checkViolation above, since that one might throw an exception.
             dataInMemoryReporter.reportDataHasBeenRead(n);
@@ -756,12 +900,36 @@ public class LocalMetricManager implements MetricManager {
                     "(# Wathcers: {})", total, curRetainedDataPoints,
                     n, quotaWatchers.size());
             }
+            reserveInMemory();
             throwIfViolated();
         }
 
+        /**
+         * Indicates that {@code n} datapoints which were read have been aggregated, and are no
+         * longer held by the query.
+         */
+        void releaseData(final long n) {
+            released.addAndGet(n);
+            reservation.shrinkTo(MemoryBudget.bytes(inMemory()));
+        }
+
+        /**
+         * Grow the memory reservation of the query to cover the datapoints it currently holds.
+         */
+        private void reserveInMemory() {
+            if (!reservation.growTo(MemoryBudget.bytes(inMemory()))) {
+                memoryViolated = true;
+            }
+        }
+
+        private long inMemory() {
+            return read.get() - released.get() + retained.get();
+        }
+
         @Override
         public boolean mayReadData() {
-            return !isReadQuotaViolated() && !isRetainQuotaViolated();
+            return !isReadQuotaViolated() && !isRetainQuotaViolated() &&
+                !isMemoryQuotaViolated();
         }
 
         @Override
@@ -780,6 +948,21 @@ public class LocalMetricManager implements MetricManager {
             rowsAccessed.add(n);
         }
 
+        @Override
+        public int getChunkSize() {
+            return chunkSize;
+        }
+
+        @Override
+        public void acquireChunk(final Runnable read) {
+            chunks.acquire(read);
+        }
+
+        @Override
+        public void releaseChunk() {
+            chunks.release();
+        }
+
         public long getReadData() {
             return read.get();
         }
@@ -798,7 +981,7 @@ public class LocalMetricManager implements MetricManager {
         }
 
         private void throwIfViolated() {
-            if (isReadQuotaViolated() || isRetainQuotaViolated()) {
+            if (isReadQuotaViolated() || isRetainQuotaViolated() || isMemoryQuotaViolated()) {
                 throw new QuotaViolationException();
             }
         }
@@ -811,6 +994,13 @@ public class LocalMetricManager implements MetricManager {
             return retained.get() >= retainLimit;
         }
 
+        /**
+         * Indicates that the query holds more data than fits in the memory budget of this node.
+         */
+        boolean isMemoryQuotaViolated() {
+            return memoryViolated;
+        }
+
         private static int getLeft(long limit, long current) {
             final long left = limit - current;
 
@@ -0,0 +1,301 @@
+/*
+ * Copyright (c) 2020 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.heroic.metric;
+
+import com.spotify.heroic.common.GoAwayException;
+import com.spotify.heroic.statistics.MetricBackendReporter;
+import eu.toolchain.async.AsyncFramework;
+import eu.toolchain.async.AsyncFuture;
+import eu.toolchain.async.ResolvableFuture;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Node-wide budget of memory for queries.
+ * <p>
+ * Queries reserve their estimated size before they are admitted, and grow their reservation as
+ * they read and retain more data than estimated. Queries which do not fit are queued until enough
+ * memory is released, or shed with a {@link GoAwayException} when the queue is full, so that they
+ * can be retried on another node. A running query whose reservation would grow the total
+ * reservations beyond the budget is refused, and reservations shrink back towards their estimate
+ * as queries release the data they hold.
+ */
+class MemoryBudget {
+    /**
+     * Rough number of bytes that a single data point occupies while a query holds it.
+     */
+    static final long BYTES_PER_POINT = 32;
+
+    private final AsyncFramework async;
+    private final long budget;
+    private final int maxQueued;
+    private final MetricBackendReporter reporter;
+
+    private final Deque<Pending> queue = new ArrayDeque<>();
+    private long reserved = 0;
+
+    /**
+     * @param budget The number of bytes that may be reserved by all queries.
+     * @param maxQueued The maximum number of queries waiting for memory.
+     */
+    MemoryBudget(
+        final AsyncFramework async, final long budget, final int maxQueued,
+        final MetricBackendReporter reporter
+    ) {
+        this.async = async;
+        this.budget = budget;
+        this.maxQueued = maxQueued;
+        this.reporter = reporter;
+        reporter.reportMemoryBudget(budget);
+    }
+
+    /**
+     * Reserve memory for a query.
+     * <p>
+     * A reservation is capped to the whole budget, so that a query which is estimated to be
+     * larger than the budget can still run once nothing else is.
+     *
+     * @param bytes Estimated number of bytes used by the query.
+     * @return A future resolved with the reservation once the query is admitted.
+     */
+    AsyncFuture<Reservation> reserve(final long bytes) {
+        final long wanted = Math.min(Math.max(bytes, 0), budget);
+        final ResolvableFuture<Reservation> future;
+        final Pending pending;
+
+        synchronized (this) {
+            if (queue.isEmpty() && fits(wanted)) {
+                return async.resolved(admit(wanted));
+            }
+
+            if (queue.size() >= maxQueued) {
+                reporter.reportQueryShed();
+                return async.failed(new GoAwayException(
+                    "Node has reached its memory budget for queries (" + reserved + " of " +
+                        budget + " bytes reserved, " + queue.size() + " queries queued)"));
+            }
+
+            future = async.future();
+            pending = new Pending(wanted, future);
+            queue.add(pending);
+            reporter.reportQueryQueued();
+        }
+
+        future.onCancelled(() -> {
+            synchronized (this) {
+                if (!queue.remove(pending)) {
+                    return;
+                }
+
+                reporter.reportQueryDequeued();
+            }
+
+            // queries behind the cancelled one might fit now
+            drain();
+        });
+
+        return future;
+    }
+
+    synchronized long reserved() {
+        return reserved;
+    }
+
+    synchronized int queued() {
+        return queue.size();
+    }
+
+    /**
+     * Number of bytes used by the given number of data points.
+     */
+    static long bytes(final long points) {
+        if (points <= 0) {
+            return 0;
+        }
+
+        if (points > Long.MAX_VALUE / BYTES_PER_POINT) {
+            return Long.MAX_VALUE;
+        }
+
+        return points * BYTES_PER_POINT;
+    }
+
+    private boolean fits(final long wanted) {
+        return reserved == 0 || reserved + wanted < budget;
+    }
+
+    private Reservation admit(final long wanted) {
+        reserved += wanted;
+        reporter.reportMemoryReserved(reserved);
+        return new BudgetReservation(wanted);
+    }
+
+    /**
+     * Admit queued queries, in the order they were queued, for as long as they fit.
+     */
+    private void drain() {
+        final List<Runnable> admitted = new ArrayList<>();
+
+        synchronized (this) {
+            while (!queue.isEmpty() && fits(queue.peek().bytes)) {
+                final Pending pending = queue.poll();
+                final Reservation reservation = admit(pending.bytes);
+                reporter.reportQueryDequeued();
+
+                admitted.add(() -> {
+                    if (!pending.future.resolve(reservation)) {
+                        // the query was cancelled while it was admitted
+                        reservation.release();
+                    }
+                });
+            }
+        }
+
+        admitted.forEach(Runnable::run);
+    }
+
+    /**
+     * Memory reserved by a single query.
+     */
+    interface Reservation {
+        /**
+         * Grow the reservation to at least the given number of bytes.
+         *
+         * @return {@code false} if all reservations together would exceed the budget, in which
+         * case it is not grown and the query should be failed.
+         */
+        boolean growTo(long bytes);
+
+        /**
+         * Shrink the reservation to the given number of bytes, but never below the number of
+         * bytes that the query was admitted with.
+         * <p>
+         * Memory which is given back might admit queued queries.
+         */
+        void shrinkTo(long bytes);
+
+        /**
+         * Release the reservation. Releasing more than once has no effect.
+         */
+        void release();
+
+        /**
+         * Reservation of a query which is not limited by any budget.
+         */
+        Reservation NONE = new Reservation() {
+            @Override
+            public boolean growTo(final long bytes) {
+                return true;
+            }
+
+            @Override
+            public void shrinkTo(final long bytes) {
+            }
+
+            @Override
+            public void release() {
+            }
+        };
+    }
+
+    private class BudgetReservation implements Reservation {
+        private final long admitted;
+        private volatile long bytes;
+        private boolean released = false;
+
+        BudgetReservation(final long bytes) {
+            this.admitted = bytes;
+            this.bytes = bytes;
+        }
+
+        @Override
+        public boolean growTo(final long bytes) {
+            if (bytes <= this.bytes) {
+                return true;
+            }
+
+            synchronized (MemoryBudget.this) {
+                if (released || bytes <= this.bytes) {
+                    return true;
+                }
+
+                if (reserved - this.bytes > budget - bytes) {
+                    return false;
+                }
+
+                reserved += bytes - this.bytes;
+                this.bytes = bytes;
+                reporter.reportMemoryReserved(reserved);
+            }
+
+            return true;
+        }
+
+        @Override
+        public void shrinkTo(final long bytes) {
+            final long target = Math.max(bytes, admitted);
+
+            if (target >= this.bytes) {
+                return;
+            }
+
+            synchronized (MemoryBudget.this) {
+                if (released || target >= this.bytes) {
+                    return;
+                }
+
+                reserved -= this.bytes - target;
+                this.bytes = target;
+                reporter.reportMemoryReserved(reserved);
+            }
+
+            drain();
+        }
+
+        @Override
+        public void release() {
+            synchronized (MemoryBudget.this) {
+                if (released) {
+                    return;
+                }
+
+                released = true;
+                reserved -= bytes;
+                reporter.reportMemoryReserved(reserved);
+            }
+
+            drain();
+        }
+    }
+
+    private static class Pending {
+        private final long bytes;
+        private final ResolvableFuture<Reservation> future;
+
+        Pending(final long bytes, final ResolvableFuture<Reservation> future) {
+            this.bytes = bytes;
+            this.future = future;
+        }
+    }
+}
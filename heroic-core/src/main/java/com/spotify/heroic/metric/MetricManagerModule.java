@@ -49,6 +49,11 @@ import javax.inject.Named;
 @Module
 public class MetricManagerModule {
     public static final int DEFAULT_FETCH_PARALLELISM = 100;
+    public static final int DEFAULT_FETCH_BATCH_SIZE = 64;
+    public static final long DEFAULT_FETCH_BATCH_POINTS = 1000000;
+    public static final int DEFAULT_FETCH_CHUNK_SIZE = 4096;
+    public static final int DEFAULT_FETCH_CHUNKS_IN_FLIGHT = 100;
+    public static final int DEFAULT_MEMORY_BUDGET_QUEUE_SIZE = 32;
     public static final boolean DEFAULT_FAIL_ON_LIMITS = false;
     public static final long DEFAULT_SMALL_QUERY_THRESHOLD = 200000;
 
@@ -86,6 +91,39 @@ public class MetricManagerModule {
      */
     private final int fetchParallelism;
 
+    /**
+     * How many series are fetched together, by backends which can read many series at once.
+     */
+    private final int fetchBatchSize;
+
+    /**
+     * How many (estimated) datapoints are fetched together, by backends which can read many
+     * series at once.
+     */
+    private final long fetchBatchPoints;
+
+    /**
+     * How many datapoints are handed over at once, by backends which stream the data they read.
+     */
+    private final int fetchChunkSize;
+
+    /**
+     * How many chunks of streamed data a single query may hold in memory at once.
+     */
+    private final int fetchChunksInFlight;
+
+    /**
+     * How many bytes all queries on a node may reserve together, based on their estimated and
+     * actual number of datapoints. When the budget is exhausted, queries are queued.
+     */
+    private final OptionalLimit memoryBudget;
+
+    /**
+     * How many queries may wait for memory budget. When the queue is full, further queries are
+     * backed off so that another node in the cluster can be used instead.
+     */
+    private final int memoryBudgetQueueSize;
+
     /**
      * If {@code true}, will cause any limits applied to be reported as a failure.
      */
@@ -105,6 +143,12 @@ public class MetricManagerModule {
         OptionalLimit dataLimit,
         OptionalLimit concurrentQueriesBackoff,
         int fetchParallelism,
+        int fetchBatchSize,
+        long fetchBatchPoints,
+        int fetchChunkSize,
+        int fetchChunksInFlight,
+        OptionalLimit memoryBudget,
+        int memoryBudgetQueueSize,
         boolean failOnLimits,
         long smallQueryThreshold
     ) {
@@ -116,6 +160,12 @@ public class MetricManagerModule {
         this.dataLimit = dataLimit;
         this.concurrentQueriesBackoff = concurrentQueriesBackoff;
         this.fetchParallelism = fetchParallelism;
+        this.fetchBatchSize = fetchBatchSize;
+        this.fetchBatchPoints = fetchBatchPoints;
+        this.fetchChunkSize = fetchChunkSize;
+        this.fetchChunksInFlight = fetchChunksInFlight;
+        this.memoryBudget = memoryBudget;
+        this.memoryBudgetQueueSize = memoryBudgetQueueSize;
         this.failOnLimits = failOnLimits;
         this.smallQueryThreshold = smallQueryThreshold;
     }
@@ -216,6 +266,48 @@ public class MetricManagerModule {
         return fetchParallelism;
     }
 
+    @Provides
+    @MetricScope
+    @Named("fetchBatchSize")
+    public int fetchBatchSize() {
+        return fetchBatchSize;
+    }
+
+    @Provides
+    @MetricScope
+    @Named("fetchBatchPoints")
+    public long fetchBatchPoints() {
+        return fetchBatchPoints;
+    }
+
+    @Provides
+    @MetricScope
+    @Named("fetchChunkSize")
+    public int fetchChunkSize() {
+        return fetchChunkSize;
+    }
+
+    @Provides
+    @MetricScope
+    @Named("fetchChunksInFlight")
+    public int fetchChunksInFlight() {
+        return fetchChunksInFlight;
+    }
+
+    @Provides
+    @MetricScope
+    @Named("memoryBudget")
+    public OptionalLimit memoryBudget() {
+        return memoryBudget;
+    }
+
+    @Provides
+    @MetricScope
+    @Named("memoryBudgetQueueSize")
+    public int memoryBudgetQueueSize() {
+        return memoryBudgetQueueSize;
+    }
+
     @Provides
     @MetricScope
     @Named("failOnLimits")
@@ -243,6 +335,12 @@ public class MetricManagerModule {
         private OptionalLimit dataLimit = OptionalLimit.empty();
         private OptionalLimit concurrentQueriesBackoff = OptionalLimit.empty();
         private Optional<Integer> fetchParallelism = empty();
+        private Optional<Integer> fetchBatchSize = empty();
+        private Optional<Long> fetchBatchPoints = empty();
+        private Optional<Integer> fetchChunkSize = empty();
+        private Optional<Integer> fetchChunksInFlight = empty();
+        private OptionalLimit memoryBudget = OptionalLimit.empty();
+        private Optional<Integer> memoryBudgetQueueSize = empty();
         private Optional<Boolean> failOnLimits = empty();
         private Optional<Long> smallQueryThreshold = empty();
 
@@ -259,6 +357,12 @@ public class MetricManagerModule {
             @JsonProperty("dataLimit") OptionalLimit dataLimit,
             @JsonProperty("concurrentQueriesBackoff") OptionalLimit concurrentQueriesBackoff,
             @JsonProperty("fetchParallelism") Optional<Integer> fetchParallelism,
+            @JsonProperty("fetchBatchSize") Optional<Integer> fetchBatchSize,
+            @JsonProperty("fetchBatchPoints") Optional<Long> fetchBatchPoints,
+            @JsonProperty("fetchChunkSize") Optional<Integer> fetchChunkSize,
+            @JsonProperty("fetchChunksInFlight") Optional<Integer> fetchChunksInFlight,
+            @JsonProperty("memoryBudget") OptionalLimit memoryBudget,
+            @JsonProperty("memoryBudgetQueueSize") Optional<Integer> memoryBudgetQueueSize,
             @JsonProperty("failOnLimits") Optional<Boolean> failOnLimits,
             @JsonProperty("smallQueryThreshold") Optional<Long> smallQueryThreshold
         ) {
@@ -270,6 +374,12 @@ public class MetricManagerModule {
             this.dataLimit = dataLimit;
             this.concurrentQueriesBackoff = concurrentQueriesBackoff;
             this.fetchParallelism = fetchParallelism;
+            this.fetchBatchSize = fetchBatchSize;
+            this.fetchBatchPoints = fetchBatchPoints;
+            this.fetchChunkSize = fetchChunkSize;
+            this.fetchChunksInFlight = fetchChunksInFlight;
+            this.memoryBudget = memoryBudget;
+            this.memoryBudgetQueueSize = memoryBudgetQueueSize;
             this.failOnLimits = failOnLimits;
             this.smallQueryThreshold = smallQueryThreshold;
         }
@@ -314,6 +424,36 @@ public class MetricManagerModule {
             return this;
         }
 
+        public Builder fetchBatchSize(int fetchBatchSize) {
+            this.fetchBatchSize = of(fetchBatchSize);
+            return this;
+        }
+
+        public Builder fetchBatchPoints(long fetchBatchPoints) {
+            this.fetchBatchPoints = of(fetchBatchPoints);
+            return this;
+        }
+
+        public Builder fetchChunkSize(int fetchChunkSize) {
+            this.fetchChunkSize = of(fetchChunkSize);
+            return this;
+        }
+
+        public Builder fetchChunksInFlight(int fetchChunksInFlight) {
+            this.fetchChunksInFlight = of(fetchChunksInFlight);
+            return this;
+        }
+
+        public Builder memoryBudget(long memoryBudget) {
+            this.memoryBudget = OptionalLimit.of(memoryBudget);
+            return this;
+        }
+
+        public Builder memoryBudgetQueueSize(int memoryBudgetQueueSize) {
+            this.memoryBudgetQueueSize = of(memoryBudgetQueueSize);
+            return this;
+        }
+
         public Builder failOnLimits(boolean failOnLimits) {
             this.failOnLimits = of(failOnLimits);
             return this;
@@ -335,6 +475,12 @@ public class MetricManagerModule {
                 dataLimit.orElse(o.dataLimit),
                 concurrentQueriesBackoff.orElse(o.concurrentQueriesBackoff),
                 pickOptional(fetchParallelism, o.fetchParallelism),
+                pickOptional(fetchBatchSize, o.fetchBatchSize),
+                pickOptional(fetchBatchPoints, o.fetchBatchPoints),
+                pickOptional(fetchChunkSize, o.fetchChunkSize),
+                pickOptional(fetchChunksInFlight, o.fetchChunksInFlight),
+                memoryBudget.orElse(o.memoryBudget),
+                pickOptional(memoryBudgetQueueSize, o.memoryBudgetQueueSize),
                 pickOptional(failOnLimits, o.failOnLimits),
                 pickOptional(smallQueryThreshold, o.smallQueryThreshold)
             );
@@ -352,6 +498,12 @@ public class MetricManagerModule {
                 dataLimit,
                 concurrentQueriesBackoff,
                 fetchParallelism.orElse(DEFAULT_FETCH_PARALLELISM),
+                fetchBatchSize.orElse(DEFAULT_FETCH_BATCH_SIZE),
+                fetchBatchPoints.orElse(DEFAULT_FETCH_BATCH_POINTS),
+                fetchChunkSize.orElse(DEFAULT_FETCH_CHUNK_SIZE),
+                fetchChunksInFlight.orElse(DEFAULT_FETCH_CHUNKS_IN_FLIGHT),
+                memoryBudget,
+                memoryBudgetQueueSize.orElse(DEFAULT_MEMORY_BUDGET_QUEUE_SIZE),
                 failOnLimits.orElse(DEFAULT_FAIL_ON_LIMITS),
                 smallQueryThreshold.orElse(DEFAULT_SMALL_QUERY_THRESHOLD)
             );
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2020 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.heroic.shell.task;
+
+import com.spotify.heroic.common.DateRange;
+import com.spotify.heroic.dagger.CoreComponent;
+import com.spotify.heroic.metric.MetricManager;
+import com.spotify.heroic.shell.AbstractShellTaskParams;
+import com.spotify.heroic.shell.ShellIO;
+import com.spotify.heroic.shell.ShellTask;
+import com.spotify.heroic.shell.TaskName;
+import com.spotify.heroic.shell.TaskParameters;
+import com.spotify.heroic.shell.TaskUsage;
+import com.spotify.heroic.shell.Tasks;
+import com.spotify.heroic.time.Clock;
+import dagger.Component;
+import eu.toolchain.async.AsyncFuture;
+import java.util.Optional;
+import javax.inject.Inject;
+import org.kohsuke.args4j.Option;
+
+@TaskUsage("Compact stored data points, for backends which support it")
+@TaskName("compact")
+public class Compact implements ShellTask {
+    private final Clock clock;
+    private final MetricManager metrics;
+
+    @Inject
+    public Compact(Clock clock, MetricManager metrics) {
+        this.clock = clock;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public TaskParameters params() {
+        return new Parameters();
+    }
+
+    @Override
+    public AsyncFuture<Void> run(final ShellIO io, final TaskParameters base) throws Exception {
+        final Parameters params = (Parameters) base;
+        final long now = clock.currentTimeMillis();
+
+        final long start = params.start.map(t -> Tasks.parseInstant(t, now)).orElse(0L);
+        final long end = params.end.map(t -> Tasks.parseInstant(t, now)).orElse(now);
+
+        final DateRange range = new DateRange(start, end);
+
+        return metrics.useOptionalGroup(params.group).compact(range).directTransform(count -> {
+            io.out().println("Compacted " + count + " row(s)");
+            return null;
+        });
+    }
+
+    private static class Parameters extends AbstractShellTaskParams {
+        @Option(name = "--start", usage = "Start date (default: beginning of time)",
+            metaVar = "<datetime>")
+        private Optional<String> start = Optional.empty();
+
+        @Option(name = "--end", usage = "End date (default: now)", metaVar = "<datetime>")
+        private Optional<String> end = Optional.empty();
+
+        @Option(name = "-g", aliases = {"--group"}, usage = "Backend group to use",
+            metaVar = "<group>")
+        private Optional<String> group = Optional.empty();
+    }
+
+    public static Compact setup(final CoreComponent core) {
+        return DaggerCompact_C.builder().coreComponent(core).build().task();
+    }
+
+    @Component(dependencies = CoreComponent.class)
+    interface C {
+        Compact task();
+    }
+}
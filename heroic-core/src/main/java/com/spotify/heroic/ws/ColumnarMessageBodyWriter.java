@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2020 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.heroic.ws;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.spotify.heroic.http.query.QueryBatchResponse;
+import com.spotify.heroic.metric.ColumnarResponseEncoder;
+import com.spotify.heroic.metric.QueryMetricsResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.MessageBodyWriter;
+
+/**
+ * Writes query responses in the columnar format, for clients which accept
+ * {@value ColumnarResponseEncoder#MEDIA_TYPE}.
+ */
+public class ColumnarMessageBodyWriter implements MessageBodyWriter<Object> {
+    public static final MediaType MEDIA_TYPE =
+        MediaType.valueOf(ColumnarResponseEncoder.MEDIA_TYPE);
+
+    private final ColumnarResponseEncoder encoder;
+
+    @Inject
+    public ColumnarMessageBodyWriter(@Named("application/json") ObjectMapper mapper) {
+        this.encoder = new ColumnarResponseEncoder(mapper);
+    }
+
+    @Override
+    public boolean isWriteable(
+        final Class<?> type, final Type genericType, final Annotation[] annotations,
+        final MediaType mediaType
+    ) {
+        if (!mediaType.isCompatible(MEDIA_TYPE)) {
+            return false;
+        }
+
+        return QueryMetricsResponse.class.isAssignableFrom(type) ||
+            QueryBatchResponse.class.isAssignableFrom(type);
+    }
+
+    @Override
+    public long getSize(
+        final Object o, final Class<?> type, final Type genericType, final Annotation[] annotations,
+        final MediaType mediaType
+    ) {
+        return -1;
+    }
+
+    @Override
+    public void writeTo(
+        final Object o, final Class<?> type, final Type genericType, final Annotation[] annotations,
+        final MediaType mediaType, final MultivaluedMap<String, Object> httpHeaders,
+        final OutputStream out
+    ) throws IOException, WebApplicationException {
+        try {
+            if (o instanceof QueryBatchResponse) {
+                encoder.encode(((QueryBatchResponse) o).getResults(), out);
+            } else {
+                encoder.encode((QueryMetricsResponse) o, out);
+            }
+        } catch (final IllegalArgumentException e) {
+            /* nothing has been written yet, so the response can still be turned into an error */
+            throw new WebApplicationException(e.getMessage(), Response.Status.NOT_ACCEPTABLE);
+        }
+    }
+}
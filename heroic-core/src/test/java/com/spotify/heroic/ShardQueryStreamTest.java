@@ -0,0 +1,188 @@
+package com.spotify.heroic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.spotify.heroic.aggregation.AggregationCombiner;
+import com.spotify.heroic.cluster.ClusterNode;
+import com.spotify.heroic.cluster.ClusterShard;
+import com.spotify.heroic.common.Statistics;
+import com.spotify.heroic.metric.FullQuery;
+import com.spotify.heroic.metric.MetricCollection;
+import com.spotify.heroic.metric.Point;
+import com.spotify.heroic.metric.QueryResultPart;
+import com.spotify.heroic.metric.QueryTrace;
+import com.spotify.heroic.metric.ResultGroup;
+import com.spotify.heroic.metric.ResultLimits;
+import com.spotify.heroic.metric.ShardedResultGroup;
+import eu.toolchain.async.AsyncFramework;
+import eu.toolchain.async.AsyncFuture;
+import eu.toolchain.async.ResolvableFuture;
+import eu.toolchain.async.TinyAsync;
+import io.opencensus.trace.BlankSpan;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ShardQueryStreamTest {
+    private final AsyncFramework async = TinyAsync.builder().build();
+    private final Map<String, String> shardKey = ImmutableMap.of("site", "a");
+
+    private final ResultGroup empty = group();
+    private final ResultGroup a = group(new Point(10L, 1D), new Point(20L, 2D));
+    private final ResultGroup b = group(new Point(30L, 3D));
+
+    private final List<Consumer<ResultGroup>> consumers = new ArrayList<>();
+    private final List<ResolvableFuture<FullQuery>> results = new ArrayList<>();
+
+    private ClusterShard shard;
+    private ClusterNode.Group group;
+    private AggregationCombiner.Accumulator accumulator;
+    private ShardQueryStream stream;
+
+    @Before
+    public void setup() {
+        shard = mock(ClusterShard.class);
+        when(shard.getShard()).thenReturn(shardKey);
+
+        group = mock(ClusterNode.Group.class);
+
+        doAnswer(invocation -> {
+            consumers.add(invocation.getArgument(2));
+            final ResolvableFuture<FullQuery> result = async.future();
+            results.add(result);
+            return result;
+        }).when(group).query(any(FullQuery.Request.class), any(), any());
+
+        accumulator = AggregationCombiner.DEFAULT.accumulator(1);
+        stream = new ShardQueryStream(shard, 0, accumulator);
+    }
+
+    private static ResultGroup group(final Point... points) {
+        return new ResultGroup(ImmutableMap.of(), ImmutableSet.of(),
+            MetricCollection.points(ImmutableList.copyOf(points)), 0L);
+    }
+
+    private ShardedResultGroup sharded(final ResultGroup group) {
+        return new ShardedResultGroup(shardKey, group.getKey(), group.getSeries(),
+            group.getGroup(), group.getCadence());
+    }
+
+    private AsyncFuture<FullQuery> query() {
+        return stream.query(group, mock(FullQuery.Request.class), BlankSpan.INSTANCE);
+    }
+
+    private FullQuery result() {
+        return FullQuery.create(QueryTrace.PASSIVE, ImmutableList.of(), ImmutableList.of(),
+            Statistics.empty(), ResultLimits.of(), Optional.empty());
+    }
+
+    @Test
+    public void testAccumulatesGroupsOnCompletion() throws Exception {
+        final AsyncFuture<FullQuery> query = query();
+
+        consumers.get(0).accept(empty);
+        consumers.get(0).accept(a);
+        consumers.get(0).accept(b);
+        assertEquals(ImmutableList.of(), accumulator.combine());
+
+        results.get(0).resolve(result());
+
+        final QueryResultPart part = stream.toResultPart(query.get());
+        assertEquals(ImmutableList.of(), part.getGroups());
+        assertEquals(3L, part.getPreAggregationSampleSize());
+        assertEquals(ImmutableList.of(sharded(empty), sharded(a), sharded(b)),
+            accumulator.combine());
+    }
+
+    @Test
+    public void testSkipsEmptyResult() throws Exception {
+        final AsyncFuture<FullQuery> query = query();
+
+        consumers.get(0).accept(empty);
+        results.get(0).resolve(result());
+
+        query.get();
+        assertEquals(ImmutableList.of(), accumulator.combine());
+    }
+
+    @Test
+    public void testOnlyAccumulatesFirstCompletedRequest() throws Exception {
+        final AsyncFuture<FullQuery> first = query();
+        final AsyncFuture<FullQuery> second = query();
+
+        consumers.get(0).accept(a);
+        consumers.get(1).accept(b);
+
+        results.get(1).resolve(result());
+        second.get();
+
+        /* the request which completes last fails */
+        consumers.get(0).accept(b);
+        results.get(0).resolve(result());
+        assertTrue(first.isFailed());
+
+        assertEquals(ImmutableList.of(sharded(b)), accumulator.combine());
+    }
+
+    @Test
+    public void testDiscardsGroupsOfFailedRequest() throws Exception {
+        final AsyncFuture<FullQuery> first = query();
+
+        consumers.get(0).accept(a);
+        results.get(0).fail(new RuntimeException("stream failed"));
+        assertTrue(first.isFailed());
+        assertEquals(ImmutableList.of(), accumulator.combine());
+
+        /* a retry replaces the groups of the failed request */
+        final AsyncFuture<FullQuery> retry = query();
+
+        consumers.get(1).accept(a);
+        consumers.get(1).accept(b);
+        results.get(1).resolve(result());
+        retry.get();
+
+        assertEquals(ImmutableList.of(sharded(a), sharded(b)), accumulator.combine());
+    }
+
+    @Test
+    public void testCombinesGroupsAsTheyAreReceived() throws Exception {
+        final AggregationCombiner.Accumulator combining =
+            mock(AggregationCombiner.Accumulator.class);
+        final AggregationCombiner.Attempt first = mock(AggregationCombiner.Attempt.class);
+        final AggregationCombiner.Attempt second = mock(AggregationCombiner.Attempt.class);
+        when(combining.attempt(0)).thenReturn(first, second);
+
+        stream = new ShardQueryStream(shard, 0, combining);
+
+        final AsyncFuture<FullQuery> hedged = query();
+        final AsyncFuture<FullQuery> winner = query();
+
+        /* every request feeds its own attempt before it completes */
+        consumers.get(0).accept(a);
+        consumers.get(1).accept(b);
+        verify(first).add(sharded(a));
+        verify(second).add(sharded(b));
+
+        results.get(1).resolve(result());
+        winner.get();
+        results.get(0).resolve(result());
+        assertTrue(hedged.isFailed());
+
+        verify(second).merge();
+        verify(first, never()).merge();
+    }
+}
@@ -0,0 +1,53 @@
+package com.spotify.heroic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.spotify.heroic.common.OptionalLimit;
+import com.spotify.heroic.metric.MetricCollection;
+import com.spotify.heroic.metric.Point;
+import com.spotify.heroic.metric.ShardedResultGroup;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class StreamingAccumulatorTest {
+    private final List<ShardedResultGroup> received = new ArrayList<>();
+
+    private static ShardedResultGroup group(final long timestamp) {
+        return new ShardedResultGroup(ImmutableMap.of(), ImmutableMap.of(), ImmutableSet.of(),
+            MetricCollection.points(ImmutableList.of(new Point(timestamp, 1D))), 0L);
+    }
+
+    @Test
+    public void testHandsOutGroupsAsAdded() {
+        final StreamingAccumulator accumulator =
+            new StreamingAccumulator(received::add, OptionalLimit.empty());
+
+        accumulator.add(1, group(10L));
+        assertEquals(ImmutableList.of(group(10L)), received);
+
+        accumulator.add(0, group(20L));
+        assertEquals(ImmutableList.of(group(10L), group(20L)), received);
+
+        assertEquals(ImmutableList.of(), accumulator.combine());
+        assertFalse(accumulator.isLimited());
+    }
+
+    @Test
+    public void testGroupLimit() {
+        final StreamingAccumulator accumulator =
+            new StreamingAccumulator(received::add, OptionalLimit.of(2));
+
+        accumulator.add(0, group(10L));
+        accumulator.add(0, group(20L));
+        assertTrue(accumulator.isLimited());
+
+        accumulator.add(0, group(30L));
+        assertEquals(ImmutableList.of(group(10L), group(20L)), received);
+    }
+}
@@ -0,0 +1,240 @@
+package com.spotify.heroic.cache.sliced;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.spotify.heroic.QueryOptions;
+import com.spotify.heroic.aggregation.AggregationInstance;
+import com.spotify.heroic.common.DateRange;
+import com.spotify.heroic.common.Duration;
+import com.spotify.heroic.common.Feature;
+import com.spotify.heroic.common.Features;
+import com.spotify.heroic.common.Series;
+import com.spotify.heroic.filter.TrueFilter;
+import com.spotify.heroic.metric.FullQuery;
+import com.spotify.heroic.metric.MetricCollection;
+import com.spotify.heroic.metric.MetricType;
+import com.spotify.heroic.metric.Point;
+import com.spotify.heroic.metric.QueryResult;
+import com.spotify.heroic.metric.QueryTrace;
+import com.spotify.heroic.metric.ResultLimits;
+import com.spotify.heroic.metric.ShardedResultGroup;
+import com.spotify.heroic.querylogging.QueryContext;
+import eu.toolchain.async.AsyncFramework;
+import eu.toolchain.async.AsyncFuture;
+import eu.toolchain.async.TinyAsync;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SlicedQueryCacheTest {
+    private static final long CADENCE = 10;
+
+    private final AsyncFramework async = TinyAsync.builder().build();
+    private final Series series = Series.of("a", ImmutableMap.of());
+
+    private final List<DateRange> loaded = new ArrayList<>();
+
+    private long now;
+    private AggregationInstance aggregation;
+    private SlicedQueryCache cache;
+
+    @Before
+    public void setup() {
+        now = 1000;
+
+        aggregation = mock(AggregationInstance.class);
+        when(aggregation.cadence()).thenReturn(CADENCE);
+        when(aggregation.sliceable()).thenReturn(true);
+
+        cache = new SlicedQueryCache(async, new ObjectMapper(), () -> now,
+            CacheBuilder.newBuilder().build(), Optional.empty(),
+            Duration.of(100, TimeUnit.MILLISECONDS), Duration.of(0, TimeUnit.MILLISECONDS),
+            Duration.of(1, TimeUnit.HOURS));
+    }
+
+    private FullQuery.Request request(final long start, final long end) {
+        return FullQuery.Request.create(MetricType.POINT, TrueFilter.get(),
+            new DateRange(start, end), aggregation, QueryOptions.defaults(), QueryContext.empty(),
+            Features.of(Feature.SHIFT_RANGE, Feature.CACHE_QUERY));
+    }
+
+    /* one point per bucket, with the value being the timestamp */
+    private static List<Point> points(final long start, final long end) {
+        final List<Point> points = new ArrayList<>();
+
+        for (long t = start; t < end; t += CADENCE) {
+            points.add(new Point(t, t));
+        }
+
+        return points;
+    }
+
+    private AsyncFuture<QueryResult> load(final FullQuery.Request request) {
+        loaded.add(request.range());
+
+        final ShardedResultGroup group =
+            new ShardedResultGroup(ImmutableMap.of(), ImmutableMap.of(), ImmutableSet.of(series),
+                MetricCollection.points(points(request.range().start(), request.range().end())),
+                CADENCE);
+
+        return async.resolved(
+            new QueryResult(request.range(), ImmutableList.of(group), ImmutableList.of(),
+                QueryTrace.PASSIVE, ResultLimits.of(), 0, Optional.empty()));
+    }
+
+    private List<Point> query(final long start, final long end) throws Exception {
+        final QueryResult result = cache.load(request(start, end), this::load).get();
+        assertEquals(1, result.getGroups().size());
+        return result.getGroups().get(0).getMetrics().getDataAs(Point.class);
+    }
+
+    @Test
+    public void testColdQueryLoadsOnce() throws Exception {
+        assertEquals(points(10, 990), query(10, 990));
+        assertEquals(ImmutableList.of(new DateRange(10, 990)), loaded);
+    }
+
+    @Test
+    public void testWarmQueryLoadsHeadAndTail() throws Exception {
+        query(10, 990);
+        loaded.clear();
+
+        final QueryResult result = cache.load(request(10, 990), this::load).get();
+
+        /* the tail is loaded from one bucket earlier, to include the sample on its start */
+        assertEquals(ImmutableList.of(new DateRange(10, 100), new DateRange(890, 990)), loaded);
+        assertEquals(points(10, 990),
+            result.getGroups().get(0).getMetrics().getDataAs(Point.class));
+        assertEquals(ImmutableSet.of(series), result.getGroups().get(0).getSeries());
+        assertTrue(result.getCache().get().getCached());
+    }
+
+    @Test
+    public void testMovingWindow() throws Exception {
+        query(10, 990);
+        loaded.clear();
+
+        now = 1100;
+
+        /* the slice [900, 1000) has settled since, and is loaded together with the tail */
+        assertEquals(points(110, 1090), query(110, 1090));
+        assertEquals(ImmutableList.of(new DateRange(110, 200), new DateRange(890, 1090)), loaded);
+    }
+
+    @Test
+    public void testUnsettledRange() throws Exception {
+        now = 150;
+
+        query(10, 140);
+        query(10, 140);
+
+        assertEquals(ImmutableList.of(new DateRange(10, 140), new DateRange(10, 140)), loaded);
+    }
+
+    @Test
+    public void testNotSliceable() throws Exception {
+        when(aggregation.sliceable()).thenReturn(false);
+
+        final QueryResult result = cache.load(request(10, 990), this::load).get();
+        cache.load(request(10, 990), this::load).get();
+
+        assertEquals(ImmutableList.of(new DateRange(10, 990), new DateRange(10, 990)), loaded);
+        assertFalse(result.getCache().isPresent());
+    }
+
+    /**
+     * Emulates a backend and a sum aggregation with start buckets: raw samples are fetched from
+     * (start, end], and summed into buckets [t, t + cadence).
+     */
+    private AsyncFuture<QueryResult> aggregate(final FullQuery.Request request) {
+        loaded.add(request.range());
+
+        final DateRange range = request.range();
+        final long[] sums = new long[(int) (range.diff() / CADENCE)];
+        final boolean[] seen = new boolean[sums.length];
+
+        /* a raw sample every 5ms, with the value being its timestamp */
+        for (long t = range.start() + 1; t <= range.end(); t++) {
+            if (t % 5 != 0) {
+                continue;
+            }
+
+            final int bucket = (int) ((t - range.start()) / CADENCE);
+
+            if (bucket < sums.length) {
+                sums[bucket] += t;
+                seen[bucket] = true;
+            }
+        }
+
+        final List<Point> points = new ArrayList<>();
+
+        for (int i = 0; i < sums.length; i++) {
+            if (seen[i]) {
+                points.add(new Point(range.start() + i * CADENCE, sums[i]));
+            }
+        }
+
+        final ShardedResultGroup group =
+            new ShardedResultGroup(ImmutableMap.of(), ImmutableMap.of(), ImmutableSet.of(series),
+                MetricCollection.points(points), CADENCE);
+
+        return async.resolved(
+            new QueryResult(range, ImmutableList.of(group), ImmutableList.of(),
+                QueryTrace.PASSIVE, ResultLimits.of(), 0, Optional.empty()));
+    }
+
+    private List<Point> data(final QueryResult result) {
+        assertEquals(1, result.getGroups().size());
+        return result.getGroups().get(0).getMetrics().getDataAs(Point.class);
+    }
+
+    @Test
+    public void testSamplesOnSliceBoundaries() throws Exception {
+        now = 1100;
+
+        final List<Point> uncached = data(aggregate(request(50, 1050)).get());
+
+        /* warm up slices with a query which starts on a slice boundary */
+        assertEquals(data(aggregate(request(300, 700)).get()),
+            data(cache.load(request(300, 700), this::aggregate).get()));
+
+        /* cold query, where slices are stored from a range loaded in one request */
+        assertEquals(uncached, data(cache.load(request(50, 1050), this::aggregate).get()));
+
+        /* warm query, where every slice boundary is also the start of a loaded segment */
+        cache = new SlicedQueryCache(async, new ObjectMapper(), () -> now,
+            CacheBuilder.newBuilder().build(), Optional.empty(),
+            Duration.of(100, TimeUnit.MILLISECONDS), Duration.of(0, TimeUnit.MILLISECONDS),
+            Duration.of(1, TimeUnit.HOURS));
+
+        for (long start = 100; start < 1000; start += 200) {
+            cache.load(request(start - 10, start + 100), this::aggregate).get();
+        }
+
+        loaded.clear();
+
+        assertEquals(uncached, data(cache.load(request(50, 1050), this::aggregate).get()));
+        assertTrue(loaded.contains(new DateRange(190, 300)));
+        assertEquals(uncached, data(cache.load(request(50, 1050), this::aggregate).get()));
+    }
+
+    @Test
+    public void testAlignedSliceSize() {
+        assertEquals(100, cache.alignedSliceSize(10));
+        assertEquals(105, cache.alignedSliceSize(7));
+        assertEquals(1000, cache.alignedSliceSize(1000));
+    }
+}
@@ -0,0 +1,223 @@
+package com.spotify.heroic.cluster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.spotify.heroic.scheduler.Scheduler;
+import com.spotify.heroic.scheduler.Task;
+import com.spotify.heroic.statistics.QueryReporter;
+import eu.toolchain.async.AsyncFramework;
+import eu.toolchain.async.AsyncFuture;
+import eu.toolchain.async.ResolvableFuture;
+import eu.toolchain.async.TinyAsync;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ClusterShardTest {
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private final AsyncFramework async = TinyAsync.builder().scheduler(executor).build();
+    private final Map<String, String> shard = ImmutableMap.of("site", "a");
+
+    private final List<Task> scheduled = new ArrayList<>();
+    private final List<ClusterNode> called = new ArrayList<>();
+    private final List<ResolvableFuture<String>> calls = new ArrayList<>();
+
+    private ClusterNode a;
+    private ClusterNode b;
+    private QueryReporter reporter;
+    private RequestHedging hedging;
+    private ClusterShard clusterShard;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        a = node();
+        b = node();
+        reporter = mock(QueryReporter.class);
+
+        final List<ClusterNode> nodes = ImmutableList.of(a, b);
+        final ClusterManager cluster = mock(ClusterManager.class);
+
+        when(cluster.hasNextButNotWithId(eq(shard), any())).thenAnswer(invocation -> {
+            final Predicate<ClusterNode> exclude = invocation.getArgument(1);
+            return nodes.stream().anyMatch(n -> !exclude.test(n));
+        });
+
+        when(cluster.withNodeInShardButNotWithId(eq(shard), any(), any(), any())).thenAnswer(
+            invocation -> {
+                final Predicate<ClusterNode> exclude = invocation.getArgument(1);
+                final Consumer<ClusterNode> registerNodeUse = invocation.getArgument(2);
+                final Function<ClusterNode.Group, Object> fn = invocation.getArgument(3);
+
+                for (final ClusterNode n : nodes) {
+                    if (!exclude.test(n)) {
+                        registerNodeUse.accept(n);
+                        return Optional.of(
+                            new ClusterManager.NodeResult<>(fn.apply(n.useDefaultGroup()), n));
+                    }
+                }
+
+                return Optional.empty();
+            });
+
+        final Scheduler scheduler = mock(Scheduler.class);
+
+        doAnswer(invocation -> {
+            scheduled.add(invocation.getArgument(3));
+            return null;
+        }).when(scheduler).schedule(anyString(), anyLong(), any(TimeUnit.class), any(Task.class));
+
+        hedging = new RequestHedging(scheduler, 0.5, 5);
+        clusterShard = new ClusterShard(async, shard, reporter, cluster, new RandomNodeSelection(),
+            Optional.of(hedging));
+    }
+
+    @After
+    public void teardown() {
+        executor.shutdownNow();
+    }
+
+    private static ClusterNode node() {
+        final ClusterNode node = mock(ClusterNode.class);
+        final ClusterNode.Group group = mock(ClusterNode.Group.class);
+        when(node.useDefaultGroup()).thenReturn(group);
+        when(group.node()).thenReturn(node);
+        return node;
+    }
+
+    private AsyncFuture<String> query() {
+        return clusterShard.applyHedged(group -> {
+            final ResolvableFuture<String> future = async.future();
+            called.add(group.node());
+            calls.add(future);
+            return future;
+        }, (result, traces) -> result);
+    }
+
+    private void warmUp(final long latency) {
+        for (int i = 0; i < RequestHedging.MIN_SAMPLES; i++) {
+            hedging.record(shard, latency);
+        }
+    }
+
+    @Test
+    public void testDelay() {
+        assertEquals(OptionalLong.empty(), hedging.delay(shard));
+
+        for (int i = 0; i < RequestHedging.MIN_SAMPLES; i++) {
+            hedging.record(shard, i < RequestHedging.MIN_SAMPLES / 2 ? 10 : 100);
+        }
+
+        assertEquals(OptionalLong.of(10), hedging.delay(shard));
+        assertEquals(OptionalLong.empty(), hedging.delay(ImmutableMap.of("site", "b")));
+
+        hedging.record(ImmutableMap.of("site", "b"), 1);
+        assertEquals(OptionalLong.empty(), hedging.delay(ImmutableMap.of("site", "b")));
+    }
+
+    @Test
+    public void testNoHedgeWithoutSamples() throws Exception {
+        final AsyncFuture<String> result = query();
+
+        assertTrue(scheduled.isEmpty());
+        calls.get(0).resolve("a");
+        assertEquals("a", result.get());
+    }
+
+    @Test
+    public void testHedgeWins() throws Exception {
+        warmUp(10);
+
+        final AsyncFuture<String> result = query();
+        assertEquals(1, scheduled.size());
+
+        scheduled.get(0).run();
+        assertEquals(ImmutableList.of(a, b), called);
+
+        calls.get(1).resolve("b");
+
+        assertEquals("b", result.get());
+        assertTrue(calls.get(0).isCancelled());
+        verify(reporter).reportClusterHedgedRequest(shard);
+        verify(reporter).reportClusterHedgeWin(shard);
+        verify(reporter, never()).reportClusterNodeRpcCancellation();
+    }
+
+    @Test
+    public void testOriginalWins() throws Exception {
+        warmUp(10);
+
+        final AsyncFuture<String> result = query();
+        scheduled.get(0).run();
+
+        calls.get(0).resolve("a");
+
+        assertEquals("a", result.get());
+        assertTrue(calls.get(1).isCancelled());
+        verify(reporter).reportClusterHedgedRequest(shard);
+        verify(reporter, never()).reportClusterHedgeWin(shard);
+    }
+
+    @Test
+    public void testNoHedgeWhenFast() throws Exception {
+        warmUp(10);
+
+        final AsyncFuture<String> result = query();
+        calls.get(0).resolve("a");
+        scheduled.get(0).run();
+
+        assertEquals("a", result.get());
+        assertEquals(ImmutableList.of(a), called);
+        verify(reporter, never()).reportClusterHedgedRequest(shard);
+    }
+
+    @Test
+    public void testHedgeSurvivesFailedOriginal() throws Exception {
+        warmUp(10);
+
+        final AsyncFuture<String> result = query();
+        scheduled.get(0).run();
+
+        calls.get(0).fail(new RuntimeException("failed"));
+        assertFalse(result.isDone());
+
+        calls.get(1).resolve("b");
+        assertEquals("b", result.get());
+        verify(reporter).reportClusterNodeRpcError();
+    }
+
+    @Test
+    public void testApplyIsNotHedged() throws Exception {
+        warmUp(10);
+
+        final AsyncFuture<String> result = clusterShard.apply(group -> async.resolved("a"),
+            (value, traces) -> value);
+
+        assertEquals("a", result.get());
+        assertTrue(scheduled.isEmpty());
+    }
+}
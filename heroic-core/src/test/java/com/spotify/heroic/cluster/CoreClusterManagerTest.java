@@ -16,6 +16,7 @@ import com.spotify.heroic.usagetracking.UsageTracking;
 import eu.toolchain.async.AsyncFramework;
 import eu.toolchain.async.AsyncFuture;
 import java.util.Map;
+import java.util.Optional;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -64,7 +65,8 @@ public class CoreClusterManagerTest {
         final boolean useLocal = true;
 
         manager = spy(new CoreClusterManager(async, discovery, localMetadata, protocols, scheduler,
-            useLocal, options, local, context, ImmutableSet.of(), reporter, usageTracking));
+            useLocal, options, local, context, ImmutableSet.of(), reporter, usageTracking,
+            new RandomNodeSelection(), Optional.empty()));
     }
 
     @Test
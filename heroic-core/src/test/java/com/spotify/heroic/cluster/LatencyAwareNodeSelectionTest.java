@@ -0,0 +1,131 @@
+package com.spotify.heroic.cluster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import com.google.common.collect.ImmutableList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LatencyAwareNodeSelectionTest {
+    private final AtomicLong now = new AtomicLong();
+
+    private ClusterNode fast;
+    private ClusterNode slow;
+    private LatencyAwareNodeSelection selection;
+
+    @Before
+    public void setup() {
+        fast = mock(ClusterNode.class);
+        slow = mock(ClusterNode.class);
+        selection = new LatencyAwareNodeSelection(TimeUnit.SECONDS.toNanos(10), now::get);
+    }
+
+    private void request(final ClusterNode node, final long elapsedMillis) {
+        selection.requestStarted(node);
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        selection.requestFinished(node, TimeUnit.MILLISECONDS.toNanos(elapsedMillis));
+    }
+
+    @Test
+    public void testEmptyAndSingle() {
+        assertEquals(Optional.empty(), selection.select(ImmutableList.of()));
+        assertEquals(Optional.of(slow), selection.select(ImmutableList.of(slow)));
+    }
+
+    @Test
+    public void testPrefersFastNode() {
+        request(fast, 10);
+        request(slow, 100);
+
+        final List<ClusterNode> candidates = ImmutableList.of(slow, fast);
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(Optional.of(fast), selection.select(candidates));
+        }
+    }
+
+    @Test
+    public void testInFlightPenalty() {
+        request(fast, 10);
+        request(slow, 30);
+
+        for (int i = 0; i < 3; i++) {
+            selection.requestStarted(fast);
+        }
+
+        /* 10ms * 4 in flight is worse than 30ms * 1 */
+        assertEquals(Optional.of(slow), selection.select(ImmutableList.of(slow, fast)));
+    }
+
+    @Test
+    public void testPeakDecays() {
+        request(fast, 10);
+        request(fast, 1000);
+
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(1000), selection.cost(fast), 0D);
+
+        for (int i = 0; i < 100; i++) {
+            request(fast, 10);
+        }
+
+        assertTrue(selection.cost(fast) < TimeUnit.MILLISECONDS.toNanos(11));
+    }
+
+    @Test
+    public void testFailurePenalty() {
+        request(fast, 10);
+        request(slow, 100);
+
+        selection.requestStarted(fast);
+        selection.requestFailed(fast, TimeUnit.MILLISECONDS.toNanos(5));
+
+        assertEquals(LatencyAwareNodeSelection.PENALTY_NANOS, selection.cost(fast), 0D);
+        assertEquals(Optional.of(slow), selection.select(ImmutableList.of(slow, fast)));
+    }
+
+    @Test
+    public void testUnmeasuredInFlight() {
+        request(slow, 1000);
+
+        final ClusterNode fresh = mock(ClusterNode.class);
+        assertEquals(0D, selection.cost(fresh), 0D);
+
+        /* an idle node is probed first, but not flooded before it has been measured */
+        selection.requestStarted(fresh);
+        assertEquals(LatencyAwareNodeSelection.PENALTY_NANOS, selection.cost(fresh), 0D);
+
+        selection.requestStarted(fresh);
+        assertEquals(2D * LatencyAwareNodeSelection.PENALTY_NANOS, selection.cost(fresh), 0D);
+        assertEquals(Optional.of(slow), selection.select(ImmutableList.of(slow, fresh)));
+    }
+
+    @Test
+    public void testCancelledIsNotSampled() {
+        request(fast, 10);
+        request(slow, 100);
+
+        /* the loser of a hedge is cancelled early, which must not make it look fast */
+        selection.requestStarted(slow);
+        selection.requestCancelled(slow);
+
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), selection.cost(slow), 0D);
+        assertEquals(Optional.of(fast), selection.select(ImmutableList.of(slow, fast)));
+    }
+
+    @Test
+    public void testRetain() {
+        request(fast, 10);
+        request(slow, 100);
+
+        selection.retain(ImmutableList.of(fast));
+
+        assertEquals(0D, selection.cost(slow), 0D);
+        assertTrue(selection.cost(fast) > 0D);
+    }
+}
@@ -0,0 +1,78 @@
+package com.spotify.heroic.cluster;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NodeRegistryTest {
+    private final Map<String, String> shardA = ImmutableMap.of("site", "a");
+    private final Map<String, String> shardB = ImmutableMap.of("site", "b");
+    private final Map<String, String> shardC = ImmutableMap.of("site", "c");
+
+    private final NodeSelectionStrategy first =
+        candidates -> candidates.stream().findFirst();
+
+    private ClusterNode a1;
+    private ClusterNode a2;
+    private ClusterNode b1;
+    private NodeRegistry registry;
+
+    @Before
+    public void setup() {
+        a1 = node(shardA, true);
+        a2 = node(shardA, true);
+        b1 = node(shardB, false);
+        registry = new NodeRegistry(ImmutableList.of(a1, b1, a2), 4);
+    }
+
+    private static ClusterNode node(final Map<String, String> shard, final boolean alive) {
+        final ClusterNode node = mock(ClusterNode.class);
+        when(node.metadata()).thenReturn(new NodeMetadata(0, UUID.randomUUID(), shard, null));
+        when(node.isAlive()).thenReturn(alive);
+        return node;
+    }
+
+    @Test
+    public void testShards() {
+        assertEquals(ImmutableSet.of(shardA, shardB), registry.getShards());
+        assertEquals(ImmutableList.of(a1, a2), registry.getNodesInShard(shardA));
+        assertEquals(ImmutableList.of(), registry.getNodesInShard(shardC));
+        assertEquals(3, registry.getOnlineNodes());
+        assertEquals(1, registry.getOfflineNodes());
+    }
+
+    @Test
+    public void testNodeInShardButNotWithId() {
+        assertEquals(Optional.of(a1),
+            registry.getNodeInShardButNotWithId(shardA, n -> false, first));
+        assertEquals(Optional.of(a2),
+            registry.getNodeInShardButNotWithId(shardA, a1::equals, first));
+        assertEquals(Optional.empty(),
+            registry.getNodeInShardButNotWithId(shardA, n -> true, first));
+
+        /* dead nodes are never selected */
+        assertEquals(Optional.empty(),
+            registry.getNodeInShardButNotWithId(shardB, n -> false, first));
+        assertEquals(Optional.empty(),
+            registry.getNodeInShardButNotWithId(shardC, n -> false, first));
+    }
+
+    @Test
+    public void testHasNodeInShardButNotWithId() {
+        assertTrue(registry.hasNodeInShardButNotWithId(shardA, a1::equals));
+        assertFalse(registry.hasNodeInShardButNotWithId(shardA, n -> true));
+        assertFalse(registry.hasNodeInShardButNotWithId(shardB, n -> false));
+        assertFalse(registry.hasNodeInShardButNotWithId(shardC, n -> false));
+    }
+}
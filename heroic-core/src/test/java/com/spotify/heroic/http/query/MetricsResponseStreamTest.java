@@ -0,0 +1,117 @@
+package com.spotify.heroic.http.query;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.spotify.heroic.common.JavaxRestFramework;
+import com.spotify.heroic.metric.MetricCollection;
+import com.spotify.heroic.metric.QueryMetricsResponse;
+import com.spotify.heroic.metric.QueryResult;
+import com.spotify.heroic.metric.ShardedResultGroup;
+import com.spotify.heroic.test.FakeModuleLoader;
+import eu.toolchain.async.AsyncFramework;
+import eu.toolchain.async.ResolvableFuture;
+import eu.toolchain.async.TinyAsync;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class MetricsResponseStreamTest {
+    private final ObjectMapper mapper = FakeModuleLoader.builder().build().json();
+    private final AsyncFramework async = TinyAsync.builder().build();
+
+    private final ShardedResultGroup group =
+        new ShardedResultGroup(ImmutableMap.of(), ImmutableMap.of(), ImmutableSet.of(),
+            MetricCollection.points(ImmutableList.of()), 0L);
+
+    private AsyncResponse response;
+    private ResolvableFuture<QueryResult> query;
+
+    @Before
+    public void setup() {
+        response = mock(AsyncResponse.class);
+        doReturn(true).when(response).resume(any(Response.class));
+        query = async.future();
+    }
+
+    @SuppressWarnings("unchecked")
+    private MetricsResponseStream stream(final long timeout, final TimeUnit unit) {
+        final MetricsResponseStream stream = new MetricsResponseStream(
+            mock(JavaxRestFramework.class), mapper, response, UUID.randomUUID(),
+            mock(JavaxRestFramework.Resume.class), timeout, unit);
+        stream.bind(query);
+        return stream;
+    }
+
+    private StreamingOutput output() {
+        final ArgumentCaptor<Response> resumed = ArgumentCaptor.forClass(Response.class);
+        verify(response).resume(resumed.capture());
+        return (StreamingOutput) resumed.getValue().getEntity();
+    }
+
+    @Test
+    public void testCancelsQueryWhenClientIsGone() throws Exception {
+        final MetricsResponseStream stream = stream(1, TimeUnit.MINUTES);
+        stream.accept(group);
+
+        final OutputStream broken = new OutputStream() {
+            @Override
+            public void write(final int b) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+        };
+
+        try {
+            output().write(broken);
+        } catch (final IOException e) {
+            assertTrue(query.isCancelled());
+            return;
+        }
+
+        throw new AssertionError("Expected write to fail");
+    }
+
+    @Test
+    public void testBoundsPendingGroups() {
+        final MetricsResponseStream stream = stream(10, TimeUnit.MILLISECONDS);
+
+        for (int i = 0; i < MetricsResponseStream.MAX_PENDING_GROUPS; i++) {
+            stream.accept(group);
+        }
+
+        assertFalse(query.isDone());
+
+        /* nothing has been written, so the query waits for the client until the deadline */
+        stream.accept(group);
+        assertTrue(query.isCancelled());
+    }
+
+    @Test
+    public void testWriteDeadline() throws Exception {
+        final MetricsResponseStream stream = stream(10, TimeUnit.MILLISECONDS);
+        stream.accept(group);
+
+        /* the query never completes, so the response is failed once the deadline has passed */
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        output().write(out);
+
+        assertTrue(query.isCancelled());
+        assertTrue(out.toString("UTF-8").contains("Query timed out"));
+    }
+}
@@ -0,0 +1,170 @@
+package com.spotify.heroic.ingestion;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.spotify.heroic.common.Series;
+import com.spotify.heroic.metric.MetricCollection;
+import com.spotify.heroic.metric.Point;
+import com.spotify.heroic.scheduler.Scheduler;
+import com.spotify.heroic.scheduler.Task;
+import eu.toolchain.async.AsyncFramework;
+import eu.toolchain.async.AsyncFuture;
+import eu.toolchain.async.ResolvableFuture;
+import eu.toolchain.async.TinyAsync;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+
+public class WriteCoalescerTest {
+    private final AsyncFramework async = TinyAsync.builder().build();
+
+    private final Series a = Series.of("a", ImmutableMap.of());
+    private final Series b = Series.of("b", ImmutableMap.of());
+
+    private final List<Task> scheduled = new ArrayList<>();
+    private final List<Request> written = new ArrayList<>();
+    private final List<ResolvableFuture<Ingestion>> writes = new ArrayList<>();
+
+    private Semaphore writePermits;
+
+    @Before
+    public void setup() {
+        writePermits = new Semaphore(10);
+    }
+
+    private WriteCoalescer coalescer(final int maxPoints) {
+        final Scheduler scheduler = new Scheduler() {
+            @Override
+            public void periodically(final long value, final TimeUnit unit, final Task task) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void periodically(
+                final String name, final long value, final TimeUnit unit, final Task task
+            ) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void schedule(final long value, final TimeUnit unit, final Task task) {
+                scheduled.add(task);
+            }
+
+            @Override
+            public void schedule(
+                final String name, final long value, final TimeUnit unit, final Task task
+            ) {
+                scheduled.add(task);
+            }
+        };
+
+        return new WriteCoalescer(async, scheduler, writePermits, 100, maxPoints, request -> {
+            final ResolvableFuture<Ingestion> future = async.future();
+            written.add(request);
+            writes.add(future);
+            return future.onFinished(writePermits::release);
+        });
+    }
+
+    private static List<Point> points(final long... timestamps) {
+        final List<Point> points = new ArrayList<>();
+
+        for (final long timestamp : timestamps) {
+            points.add(new Point(timestamp, 1D));
+        }
+
+        return points;
+    }
+
+    @Test
+    public void testCoalescesWindow() throws Exception {
+        final WriteCoalescer coalescer = coalescer(1000);
+
+        final AsyncFuture<Ingestion> w1 = coalescer.write(a, points(1));
+        final AsyncFuture<Ingestion> w2 = coalescer.write(a, points(2, 3));
+
+        assertEquals(1, scheduled.size());
+        assertEquals(1, coalescer.buffered());
+        assertEquals(9, writePermits.availablePermits());
+        assertTrue(written.isEmpty());
+
+        scheduled.get(0).run();
+
+        assertEquals(ImmutableList.of(new Request(a, MetricCollection.points(points(1, 2, 3)))),
+            written);
+        assertEquals(0, coalescer.buffered());
+        assertFalse(w1.isDone());
+        assertFalse(w2.isDone());
+
+        writes.get(0).resolve(Ingestion.of(ImmutableList.of()));
+
+        assertTrue(w1.isResolved());
+        assertTrue(w2.isResolved());
+        assertEquals(10, writePermits.availablePermits());
+    }
+
+    @Test
+    public void testMaxPoints() throws Exception {
+        final WriteCoalescer coalescer = coalescer(2);
+
+        coalescer.write(a, points(1));
+        coalescer.write(a, points(2));
+
+        /* flushed by size, before the window has passed */
+        assertEquals(1, written.size());
+        assertEquals(0, coalescer.buffered());
+
+        coalescer.write(a, points(3));
+        assertEquals(1, coalescer.buffered());
+
+        /* the first window has nothing left to flush */
+        scheduled.get(0).run();
+        assertEquals(1, written.size());
+
+        scheduled.get(1).run();
+        assertEquals(ImmutableList.of(new Request(a, MetricCollection.points(points(1, 2))),
+            new Request(a, MetricCollection.points(points(3)))), written);
+    }
+
+    @Test
+    public void testSeriesHoldSeparatePermits() throws Exception {
+        final WriteCoalescer coalescer = coalescer(1000);
+
+        coalescer.write(a, points(1));
+        coalescer.write(b, points(1));
+
+        assertEquals(2, coalescer.buffered());
+        assertEquals(8, writePermits.availablePermits());
+
+        for (final Task task : scheduled) {
+            task.run();
+        }
+
+        assertEquals(2, written.size());
+
+        for (final ResolvableFuture<Ingestion> write : writes) {
+            write.fail(new RuntimeException("failed"));
+        }
+
+        assertEquals(10, writePermits.availablePermits());
+    }
+
+    @Test
+    public void testFailedWrite() throws Exception {
+        final WriteCoalescer coalescer = coalescer(1000);
+
+        final AsyncFuture<Ingestion> w = coalescer.write(a, points(1));
+        scheduled.get(0).run();
+        writes.get(0).fail(new RuntimeException("failed"));
+
+        assertTrue(w.isFailed());
+    }
+}
@@ -0,0 +1,276 @@
+package com.spotify.heroic.metadata;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.spotify.heroic.common.DateRange;
+import com.spotify.heroic.common.Duration;
+import com.spotify.heroic.common.Features;
+import com.spotify.heroic.common.OptionalLimit;
+import com.spotify.heroic.common.Series;
+import com.spotify.heroic.filter.AndFilter;
+import com.spotify.heroic.filter.Filter;
+import com.spotify.heroic.filter.MatchKeyFilter;
+import com.spotify.heroic.filter.MatchTagFilter;
+import com.spotify.heroic.metric.QueryError;
+import com.spotify.heroic.statistics.noop.NoopMetadataBackendReporter;
+import com.spotify.heroic.time.Clock;
+import eu.toolchain.async.AsyncFramework;
+import eu.toolchain.async.AsyncFuture;
+import eu.toolchain.async.ResolvableFuture;
+import eu.toolchain.async.TinyAsync;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CachingMetadataBackendTest {
+    private final AsyncFramework async = TinyAsync.builder().build();
+
+    private final Series a = Series.of("a", ImmutableMap.of("role", "web"));
+    private final Series b = Series.of("a", ImmutableMap.of("role", "web", "host", "b"));
+    private final Series other = Series.of("a", ImmutableMap.of("role", "db"));
+
+    private final Filter filter = AndFilter.create(
+        ImmutableList.of(MatchKeyFilter.create("a"), MatchTagFilter.create("role", "web")));
+
+    private final List<ResolvableFuture<FindSeries>> lookups = new ArrayList<>();
+
+    private MetadataBackend delegate;
+    private Clock clock;
+    private long now;
+
+    @Before
+    public void setup() {
+        delegate = mock(MetadataBackend.class);
+        clock = mock(Clock.class);
+        now = 100000000L;
+
+        when(clock.currentTimeMillis()).thenAnswer(invocation -> now);
+
+        when(delegate.findSeries(any(FindSeries.Request.class))).thenAnswer(invocation -> {
+            final ResolvableFuture<FindSeries> future = async.future();
+            lookups.add(future);
+            return future;
+        });
+
+        when(delegate.write(any(WriteMetadata.Request.class))).thenReturn(
+            async.resolved(new WriteMetadata()));
+    }
+
+    private CachingMetadataBackend backend() {
+        return new CachingMetadataBackend(async, delegate, NoopMetadataBackendReporter.get(),
+            clock, new SeriesCacheOptions(Optional.of(true),
+            Optional.of(Duration.of(1, TimeUnit.MINUTES)),
+            Optional.of(Duration.of(5, TimeUnit.MINUTES)), Optional.empty()));
+    }
+
+    private FindSeries.Request request(final long start, final long end) {
+        return request(start, end, OptionalLimit.empty());
+    }
+
+    private FindSeries.Request request(
+        final long start, final long end, final OptionalLimit limit
+    ) {
+        return new FindSeries.Request(filter, new DateRange(start, end), limit,
+            Features.empty());
+    }
+
+    private FindSeries found(final Series... series) {
+        return new FindSeries(ImmutableList.of(), ImmutableSet.copyOf(series), false);
+    }
+
+    private void write(final MetadataBackend backend, final Series series) {
+        backend.write(new WriteMetadata.Request(series, new DateRange(now, now)));
+    }
+
+    @Test
+    public void testCoalescesLookups() throws Exception {
+        final CachingMetadataBackend backend = backend();
+
+        final AsyncFuture<FindSeries> f1 = backend.findSeries(request(now - 3600000L, now));
+        /* within the same window */
+        final AsyncFuture<FindSeries> f2 = backend.findSeries(request(now - 3590000L, now + 10000));
+
+        assertEquals(1, lookups.size());
+        assertFalse(f1.isDone());
+
+        lookups.get(0).resolve(found(a));
+
+        assertEquals(ImmutableSet.of(a), f1.get().getSeries());
+        assertEquals(ImmutableSet.of(a), f2.get().getSeries());
+
+        final AsyncFuture<FindSeries> f3 = backend.findSeries(request(now - 3600000L, now));
+        assertTrue(f3.isResolved());
+        assertEquals(ImmutableSet.of(a), f3.get().getSeries());
+        assertEquals(1, lookups.size());
+        assertEquals(1, backend.size());
+    }
+
+    @Test
+    public void testWidensRange() throws Exception {
+        final CachingMetadataBackend backend = backend();
+        backend.findSeries(request(1, 299999));
+
+        verify(delegate).findSeries(
+            new FindSeries.Request(filter.optimize(), new DateRange(0, 300000),
+                OptionalLimit.empty(), Features.empty()));
+    }
+
+    @Test
+    public void testWriteUpdatesLookups() throws Exception {
+        final CachingMetadataBackend backend = backend();
+
+        backend.findSeries(request(now - 3600000L, now));
+        lookups.get(0).resolve(found(a));
+
+        write(backend, b);
+        write(backend, other);
+
+        assertEquals(ImmutableSet.of(a, b),
+            backend.findSeries(request(now - 3600000L, now)).get().getSeries());
+        verify(delegate, times(2)).write(any(WriteMetadata.Request.class));
+        assertEquals(1, lookups.size());
+    }
+
+    @Test
+    public void testWritesAreReadTogether() throws Exception {
+        final CachingMetadataBackend backend = backend();
+
+        backend.findSeries(request(now - 3600000L, now));
+        lookups.get(0).resolve(found(a));
+
+        final FindSeries before = backend.findSeries(request(now - 3600000L, now)).get();
+
+        write(backend, b);
+        write(backend, b);
+
+        /* the lookup is only copied once it is read after series were added */
+        final FindSeries after = backend.findSeries(request(now - 3600000L, now)).get();
+        assertEquals(ImmutableSet.of(a), before.getSeries());
+        assertEquals(ImmutableSet.of(a, b), after.getSeries());
+        assertSame(after, backend.findSeries(request(now - 3600000L, now)).get());
+    }
+
+    @Test
+    public void testCapsLookupsWithoutKey() throws Exception {
+        final CachingMetadataBackend backend = backend();
+        final Filter noKey = MatchTagFilter.create("role", "web");
+
+        for (int i = 0; i <= CachingMetadataBackend.MAX_ANY_KEY_LOOKUPS; i++) {
+            backend.findSeries(new FindSeries.Request(noKey,
+                new DateRange(now - 3600000L * (i + 1), now), OptionalLimit.empty(),
+                Features.empty()));
+            lookups.get(i).resolve(found(a));
+        }
+
+        assertEquals(CachingMetadataBackend.MAX_ANY_KEY_LOOKUPS, backend.size());
+
+        /* lookups which require a metric key are still cached */
+        backend.findSeries(request(now - 3600000L, now));
+        assertEquals(CachingMetadataBackend.MAX_ANY_KEY_LOOKUPS + 1, backend.size());
+    }
+
+    @Test
+    public void testWriteBeforeLookupUpdatesLookup() throws Exception {
+        final CachingMetadataBackend backend = backend();
+        write(backend, b);
+
+        /* the backend can not find the series yet */
+        backend.findSeries(request(now - 3600000L, now));
+        lookups.get(0).resolve(found(a));
+
+        write(backend, b);
+        assertEquals(ImmutableSet.of(a, b),
+            backend.findSeries(request(now - 3600000L, now)).get().getSeries());
+        verify(delegate, times(2)).write(any(WriteMetadata.Request.class));
+        assertEquals(1, lookups.size());
+    }
+
+    @Test
+    public void testEvictsBySeries() throws Exception {
+        final CachingMetadataBackend backend = new CachingMetadataBackend(async, delegate,
+            NoopMetadataBackendReporter.get(), clock, new SeriesCacheOptions(Optional.of(true),
+            Optional.empty(), Optional.empty(), Optional.of(4L)));
+
+        backend.findSeries(request(now - 3600000L, now));
+        lookups.get(0).resolve(found(a, b));
+        assertEquals(1, backend.size());
+
+        /* a second lookup with as many series does not fit */
+        backend.findSeries(request(now - 7200000L, now));
+        lookups.get(1).resolve(found(a, b));
+        assertEquals(1, backend.size());
+    }
+
+    @Test
+    public void testWriteWhileInFlight() throws Exception {
+        final CachingMetadataBackend backend = backend();
+
+        final AsyncFuture<FindSeries> f = backend.findSeries(request(now - 3600000L, now));
+        write(backend, b);
+        lookups.get(0).resolve(found(a));
+
+        assertEquals(ImmutableSet.of(a, b), f.get().getSeries());
+    }
+
+    @Test
+    public void testWriteExceedingLimitInvalidates() throws Exception {
+        final CachingMetadataBackend backend = backend();
+
+        backend.findSeries(request(now - 3600000L, now, OptionalLimit.of(1)));
+        lookups.get(0).resolve(found(a));
+
+        write(backend, b);
+
+        backend.findSeries(request(now - 3600000L, now, OptionalLimit.of(1)));
+        assertEquals(2, lookups.size());
+    }
+
+    @Test
+    public void testExpires() throws Exception {
+        final CachingMetadataBackend backend = backend();
+
+        backend.findSeries(request(now - 3600000L, now));
+        lookups.get(0).resolve(found(a));
+
+        now += 59000L;
+        backend.findSeries(request(now - 3600000L, now));
+        assertEquals(1, lookups.size());
+
+        now += 2000L;
+        backend.findSeries(request(now - 3600000L, now));
+        assertEquals(2, lookups.size());
+    }
+
+    @Test
+    public void testDoesNotCacheFailures() throws Exception {
+        final CachingMetadataBackend backend = backend();
+
+        final FindSeries partial =
+            new FindSeries(ImmutableList.of(new QueryError("failed")), ImmutableSet.of(a), false);
+
+        final AsyncFuture<FindSeries> f1 = backend.findSeries(request(now - 3600000L, now));
+        lookups.get(0).resolve(partial);
+        assertSame(partial, f1.get());
+
+        final AsyncFuture<FindSeries> f2 = backend.findSeries(request(now - 3600000L, now));
+        lookups.get(1).fail(new RuntimeException("failed"));
+        assertTrue(f2.isFailed());
+
+        backend.findSeries(request(now - 3600000L, now));
+        assertEquals(3, lookups.size());
+    }
+}
@@ -0,0 +1,105 @@
+package com.spotify.heroic.metric;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.spotify.heroic.QueryOptions;
+import com.spotify.heroic.common.DateRange;
+import com.spotify.heroic.common.Groups;
+import com.spotify.heroic.common.Series;
+import eu.toolchain.async.AsyncFramework;
+import eu.toolchain.async.AsyncFuture;
+import eu.toolchain.async.ResolvableFuture;
+import eu.toolchain.async.TinyAsync;
+import io.opencensus.trace.BlankSpan;
+import io.opencensus.trace.Span;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Test;
+
+public class AbstractMetricBackendTest {
+    private final AsyncFramework async = TinyAsync.builder().build();
+
+    private final Series a = Series.of("a", ImmutableMap.of());
+    private final Series b = Series.of("b", ImmutableMap.of());
+
+    private final List<FetchData.Request> requests = new ArrayList<>();
+    private final List<Consumer<MetricReadResult>> consumers = new ArrayList<>();
+    private final List<ResolvableFuture<FetchData.Result>> fetches = new ArrayList<>();
+
+    private final MetricBackend backend = new AbstractMetricBackend(async) {
+        @Override
+        public AsyncFuture<FetchData.Result> fetch(
+            final FetchData.Request request,
+            final FetchQuotaWatcher watcher,
+            final Consumer<MetricReadResult> metricsConsumer,
+            final Span parentSpan
+        ) {
+            final ResolvableFuture<FetchData.Result> future = async.future();
+            requests.add(request);
+            consumers.add(metricsConsumer);
+            fetches.add(future);
+            return future;
+        }
+
+        @Override
+        public AsyncFuture<Void> configure() {
+            return async.resolved();
+        }
+
+        @Override
+        public AsyncFuture<WriteMetric> write(final WriteMetric.Request request) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Iterable<BackendEntry> listEntries() {
+            return ImmutableList.of();
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public Groups groups() {
+            return Groups.empty();
+        }
+    };
+
+    @Test
+    public void testFetchManyFetchesEachSeries() throws Exception {
+        final DateRange range = new DateRange(0, 100);
+        final List<Pair<Series, MetricReadResult>> results = new ArrayList<>();
+
+        final AsyncFuture<FetchData.Result> future = backend.fetchMany(
+            new FetchData.BatchRequest(MetricType.POINT, ImmutableList.of(a, b), range,
+                QueryOptions.defaults()), FetchQuotaWatcher.NO_QUOTA,
+            (series, result) -> results.add(Pair.of(series, result)), BlankSpan.INSTANCE);
+
+        /* one series at a time */
+        assertEquals(1, requests.size());
+        assertEquals(a, requests.get(0).getSeries());
+        assertEquals(range, requests.get(0).getRange());
+
+        final MetricReadResult result =
+            new MetricReadResult(MetricCollection.points(ImmutableList.of(new Point(1, 1D))));
+        consumers.get(0).accept(result);
+        fetches.get(0).resolve(new FetchData.Result(QueryTrace.PASSIVE));
+
+        assertEquals(2, requests.size());
+        assertEquals(b, requests.get(1).getSeries());
+
+        fetches.get(1).resolve(new FetchData.Result(QueryTrace.PASSIVE,
+            new QueryError("failed")));
+
+        assertTrue(future.isResolved());
+        assertEquals(ImmutableList.of(Pair.of(a, result)), results);
+        assertEquals(ImmutableList.of(new QueryError("failed")), future.get().getErrors());
+    }
+}
@@ -14,6 +14,7 @@ import com.spotify.heroic.test.FakeModuleLoader;
 import com.spotify.heroic.test.Resources;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringWriter;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
@@ -89,6 +90,97 @@ public class BasicSerializationTest {
         assertSerialization("QueryMetricsResponse.json", toVerify);
     }
 
+    @Test
+    public void testQueryMetricsResponseValues() throws Exception {
+        final DateRange range = DateRange.create(0L, 10000L);
+
+        final MetricCollection points = MetricCollection.points(
+            ImmutableList.of(new Point(1000, 1.5d), new Point(2000, Double.NaN)));
+        final MetricCollection columns = MetricCollection.ColumnarPointCollection.create(
+            new long[]{1000, 2000}, new double[]{1.5d, Double.POSITIVE_INFINITY}, 2);
+        final MetricCollection spreads = MetricCollection.spreads(
+            ImmutableList.of(new Spread(1000, 2, 3d, 5d, 1d, 2d),
+                new Spread(2000, 0, 0d, 0d, Double.NaN, Double.NaN)));
+
+        final Series a = Series.of("foo", ImmutableMap.of("site", "lon", "host", "a"));
+        final Series b = Series.of("foo", ImmutableMap.of("site", "sto", "role", "db"));
+
+        final List<ShardedResultGroup> result = ImmutableList.of(
+            new ShardedResultGroup(ImmutableMap.of(), ImmutableMap.of(), ImmutableSet.of(a),
+                points, 0L),
+            new ShardedResultGroup(ImmutableMap.of(), ImmutableMap.of(), ImmutableSet.of(b),
+                columns, 0L),
+            new ShardedResultGroup(ImmutableMap.of(), ImmutableMap.of(), ImmutableSet.of(a, b),
+                spreads, 0L));
+
+        final QueryMetricsResponse response =
+            new QueryMetricsResponse(UUID.randomUUID(), range, result, ImmutableList.of(),
+                QueryTrace.of(QueryTrace.identifier("test"), 0L), ResultLimits.of(),
+                Optional.empty(), Optional.empty());
+
+        final JsonNode node = mapper.valueToTree(response);
+
+        assertEquals(mapper.valueToTree(ImmutableMap.of("site", ImmutableList.of("lon", "sto"))),
+            node.get("commonTags"));
+
+        final JsonNode groups = node.get("result");
+        assertEquals("[[1000,1.5],[2000,null]]",
+            mapper.writeValueAsString(groups.get(0).get("values")));
+        assertEquals("[[1000,1.5],[2000,null]]",
+            mapper.writeValueAsString(groups.get(1).get("values")));
+        assertEquals(mapper.writeValueAsString(spreads.data()),
+            mapper.writeValueAsString(groups.get(2).get("values")));
+    }
+
+    @Test
+    public void testQueryMetricsResponseStream() throws Exception {
+        final Series a = Series.of("foo", ImmutableMap.of("site", "lon", "host", "a"));
+        final Series b = Series.of("foo", ImmutableMap.of("site", "sto", "role", "db"));
+
+        final ShardedResultGroup first = new ShardedResultGroup(ImmutableMap.of(),
+            ImmutableMap.of(), ImmutableSet.of(a),
+            MetricCollection.points(ImmutableList.of(new Point(1000, 1.5d))), 0L);
+        final ShardedResultGroup second = new ShardedResultGroup(ImmutableMap.of(),
+            ImmutableMap.of(), ImmutableSet.of(b),
+            MetricCollection.points(ImmutableList.of(new Point(2000, 2.5d))), 0L);
+
+        final QueryMetricsResponse response =
+            new QueryMetricsResponse(UUID.randomUUID(), DateRange.create(0L, 10000L),
+                ImmutableList.of(first, second), ImmutableList.of(),
+                QueryTrace.of(QueryTrace.identifier("test"), 0L), ResultLimits.of(),
+                Optional.of(2L), Optional.empty());
+
+        final StringWriter out = new StringWriter();
+        final QueryMetricsResponseStream stream = new QueryMetricsResponseStream(
+            mapper.getFactory().createGenerator(out), response.getQueryId());
+
+        /* the second group is only part of the completed response */
+        stream.write(first);
+        stream.end(new QueryMetricsResponse(response.getQueryId(), response.getRange(),
+            ImmutableList.of(second), ImmutableList.of(), response.getTrace(),
+            response.getLimits(), response.getPreAggregationSampleSize(),
+            response.getCache()));
+
+        assertEquals(mapper.valueToTree(response), mapper.readTree(out.toString()));
+    }
+
+    @Test
+    public void testQueryMetricsResponseStreamFailure() throws Exception {
+        final UUID queryId = UUID.randomUUID();
+        final QueryError error = new QueryError("failed");
+
+        final StringWriter out = new StringWriter();
+        final QueryMetricsResponseStream stream =
+            new QueryMetricsResponseStream(mapper.getFactory().createGenerator(out), queryId);
+
+        stream.fail(error);
+
+        final JsonNode node = mapper.readTree(out.toString());
+        assertEquals(queryId.toString(), node.get("queryId").asText());
+        assertEquals(0, node.get("result").size());
+        assertEquals(mapper.valueToTree(ImmutableList.of(error)), node.get("errors"));
+    }
+
     private <T> void assertSerialization(
         final String expectedFile, final T toVerify
     ) throws IOException {
@@ -0,0 +1,112 @@
+package com.spotify.heroic.metric;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.MoreExecutors;
+import eu.toolchain.async.AsyncFramework;
+import eu.toolchain.async.TinyAsync;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class ChunkGateTest {
+    /* runs queued reads in place, so that the tests can follow them step by step */
+    private final AsyncFramework async =
+        TinyAsync.builder().executor(MoreExecutors.newDirectExecutorService()).build();
+
+    private final List<Integer> reads = new ArrayList<>();
+
+    private Runnable read(final int id) {
+        return () -> reads.add(id);
+    }
+
+    @Test
+    public void testQueuesBeyondLimit() {
+        final ChunkGate gate = new ChunkGate(async, 2);
+
+        gate.acquire(read(1));
+        gate.acquire(read(2));
+        gate.acquire(read(3));
+        gate.acquire(read(4));
+
+        assertEquals(ImmutableList.of(1, 2), reads);
+        assertEquals(2, gate.inFlight());
+        assertEquals(2, gate.pending());
+
+        /* released chunks are handed to queued reads in order */
+        gate.release();
+        assertEquals(ImmutableList.of(1, 2, 3), reads);
+        assertEquals(2, gate.inFlight());
+
+        gate.release();
+        gate.release();
+        assertEquals(ImmutableList.of(1, 2, 3, 4), reads);
+        assertEquals(1, gate.inFlight());
+        assertEquals(0, gate.pending());
+
+        gate.release();
+        assertEquals(0, gate.inFlight());
+    }
+
+    @Test
+    public void testReleaseWhileReading() {
+        final ChunkGate gate = new ChunkGate(async, 1);
+
+        /* a read which completes synchronously releases its chunk right away */
+        gate.acquire(() -> {
+            reads.add(1);
+            gate.acquire(read(2));
+            gate.release();
+        });
+
+        assertEquals(ImmutableList.of(1, 2), reads);
+        assertEquals(1, gate.inFlight());
+
+        gate.release();
+        assertEquals(0, gate.inFlight());
+    }
+
+    @Test
+    public void testHandoffDoesNotGrowStack() throws Exception {
+        final int readers = 200;
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        try {
+            final ChunkGate gate =
+                new ChunkGate(TinyAsync.builder().executor(executor).build(), 1);
+
+            final List<Integer> depths = Collections.synchronizedList(new ArrayList<>());
+            final CountDownLatch done = new CountDownLatch(readers);
+
+            /* the first read holds on to the only chunk until every other read is queued */
+            gate.acquire(done::countDown);
+
+            for (int i = 1; i < readers; i++) {
+                /* like a read which completes synchronously, and releases its chunk in place */
+                gate.acquire(() -> {
+                    depths.add(Thread.currentThread().getStackTrace().length);
+                    done.countDown();
+                    gate.release();
+                });
+            }
+
+            assertEquals(readers - 1, gate.pending());
+
+            gate.release();
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+
+            final int min = Collections.min(depths);
+            final int max = Collections.max(depths);
+            assertTrue("stack grew from " + min + " to " + max, max - min < 10);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.spotify.heroic.metric;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.spotify.heroic.common.DateRange;
+import com.spotify.heroic.common.Series;
+import com.spotify.heroic.test.FakeModuleLoader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import org.junit.Test;
+
+public class ColumnarResponseEncoderTest {
+    private final ObjectMapper mapper = FakeModuleLoader.builder().build().json();
+    private final ColumnarResponseEncoder encoder = new ColumnarResponseEncoder(mapper);
+
+    private final Series a = Series.of("foo", ImmutableMap.of("site", "lon", "host", "a"));
+    private final Series b = Series.of("bar", ImmutableMap.of("site", "lon", "host", "b"));
+
+    private static QueryMetricsResponse response(final ShardedResultGroup... groups) {
+        return new QueryMetricsResponse(UUID.fromString("d11d0ad7-cc27-4667-a617-67a481f61c30"),
+            DateRange.create(0L, 10000L), ImmutableList.copyOf(groups), ImmutableList.of(),
+            QueryTrace.of(QueryTrace.identifier("test"), 0L), ResultLimits.of(),
+            Optional.of(4L), Optional.empty());
+    }
+
+    private List<ColumnarQueryResponse> roundtrip(final QueryMetricsResponse response)
+        throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encoder.encode(response, out);
+        return ColumnarResponseDecoder.decode(new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    @Test
+    public void testPoints() throws Exception {
+        final MetricCollection points = MetricCollection.points(
+            ImmutableList.of(new Point(1000, 1.5d), new Point(2000, Double.NaN)));
+        final ShardedResultGroup group =
+            new ShardedResultGroup(ImmutableMap.of("site", "lon"), ImmutableMap.of(),
+                ImmutableSet.of(a), points, 1000L);
+
+        final List<ColumnarQueryResponse> responses = roundtrip(response(group));
+        assertEquals(1, responses.size());
+        assertEquals("", responses.get(0).getName());
+
+        final ColumnarResultGroup decoded = responses.get(0).getResult().get(0);
+        assertEquals(group.hashGroup(), decoded.getHash());
+        assertEquals(1000L, decoded.getCadence());
+        assertEquals(ImmutableMap.of("site", "lon"), decoded.getShard());
+        assertEquals("foo", decoded.getKey());
+        assertEquals(ImmutableMap.of("site", "lon", "host", "a"), decoded.getTags());
+        assertEquals(ImmutableMap.of(), decoded.getTagCounts());
+
+        /* non-finite values are kept, unlike in JSON */
+        assertEquals(MetricCollection.ColumnarPointCollection.create(new long[]{1000, 2000},
+            new double[]{1.5d, Double.NaN}, 2), decoded.getMetrics());
+    }
+
+    @Test
+    public void testColumnarPointsAndSpreads() throws Exception {
+        final MetricCollection columns = MetricCollection.ColumnarPointCollection.create(
+            new long[]{1000, 2000, 3000}, new double[]{1d, 2d, 3d}, 2);
+        final MetricCollection spreads = MetricCollection.spreads(
+            ImmutableList.of(new Spread(1000, 2, 3d, 5d, 1d, 2d)));
+
+        final List<ColumnarQueryResponse> responses = roundtrip(response(
+            new ShardedResultGroup(ImmutableMap.of(), ImmutableMap.of(), ImmutableSet.of(a, b),
+                columns, 0L),
+            new ShardedResultGroup(ImmutableMap.of(), ImmutableMap.of(), ImmutableSet.of(b),
+                spreads, 0L)));
+
+        final ColumnarResultGroup first = responses.get(0).getResult().get(0);
+        assertNull(first.getKey());
+        assertEquals(ImmutableMap.of("site", "lon"), first.getTags());
+        assertEquals(ImmutableMap.of("host", 2), first.getTagCounts());
+        assertEquals(columns, first.getMetrics());
+
+        final ColumnarResultGroup second = responses.get(0).getResult().get(1);
+        assertEquals("bar", second.getKey());
+        assertEquals(spreads, second.getMetrics());
+    }
+
+    @Test
+    public void testMetadata() throws Exception {
+        final QueryMetricsResponse response = response();
+        final JsonNode metadata =
+            mapper.readTree(roundtrip(response).get(0).getMetadata());
+        final JsonNode json = mapper.valueToTree(response);
+
+        for (final String field : ImmutableList.of("queryId", "range", "trace", "limits",
+            "cached", "cache", "preAggregationSampleSize", "errors")) {
+            assertEquals(field, mapper.writeValueAsString(json.get(field)),
+                mapper.writeValueAsString(metadata.get(field)));
+        }
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encoder.encode(ImmutableMap.of("a", response(), "b", response()), out);
+
+        final List<ColumnarQueryResponse> responses =
+            ColumnarResponseDecoder.decode(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(2, responses.size());
+        assertEquals("a", responses.get(0).getName());
+        assertEquals("b", responses.get(1).getName());
+    }
+
+    @Test
+    public void testUnsupportedType() throws Exception {
+        final MetricCollection payloads =
+            MetricCollection.cardinality(ImmutableList.of(new Payload(1000, new byte[]{1})));
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try {
+            encoder.encode(response(new ShardedResultGroup(ImmutableMap.of(), ImmutableMap.of(),
+                ImmutableSet.of(a), payloads, 0L)), out);
+            fail("expected IllegalArgumentException");
+        } catch (final IllegalArgumentException e) {
+            assertEquals(0, out.size());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalidFrame() throws Exception {
+        ColumnarResponseDecoder.decode(new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 5}));
+    }
+}
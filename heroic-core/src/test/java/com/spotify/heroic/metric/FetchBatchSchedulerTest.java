@@ -0,0 +1,62 @@
+package com.spotify.heroic.metric;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.collect.ImmutableMap;
+import com.spotify.heroic.common.DateRange;
+import com.spotify.heroic.common.Series;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class FetchBatchSchedulerTest {
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    private static List<Series> series(final int count) {
+        final List<Series> series = new ArrayList<>();
+
+        for (int i = 0; i < count; i++) {
+            series.add(Series.of("s" + i, ImmutableMap.of()));
+        }
+
+        return series;
+    }
+
+    @Test
+    public void testMaxSeries() {
+        final FetchBatchScheduler scheduler = new FetchBatchScheduler(1, 10, Long.MAX_VALUE);
+
+        final List<List<Series>> batches = scheduler.batches(series(25), new DateRange(0, HOUR));
+
+        assertEquals(3, batches.size());
+        assertEquals(10, batches.get(0).size());
+        assertEquals(5, batches.get(2).size());
+    }
+
+    @Test
+    public void testMaxPoints() {
+        /* 60 points per series and hour */
+        final FetchBatchScheduler scheduler = new FetchBatchScheduler(1, 1000, 600);
+
+        assertEquals(10, scheduler.batchSize(100, new DateRange(0, HOUR)));
+        assertEquals(5, scheduler.batchSize(100, new DateRange(0, 2 * HOUR)));
+        /* a series is always fetched, even if it exceeds the points of a batch */
+        assertEquals(1, scheduler.batchSize(100, new DateRange(0, 24 * HOUR)));
+    }
+
+    @Test
+    public void testParallelism() {
+        final FetchBatchScheduler scheduler = new FetchBatchScheduler(4, 1000, Long.MAX_VALUE);
+
+        assertEquals(3, scheduler.batchSize(10, new DateRange(0, HOUR)));
+        assertEquals(1, scheduler.batchSize(2, new DateRange(0, HOUR)));
+        assertEquals(4, scheduler.batches(series(10), new DateRange(0, HOUR)).size());
+    }
+
+    @Test
+    public void testEstimatePoints() {
+        assertEquals(60, FetchBatchScheduler.estimatePoints(new DateRange(0, HOUR)));
+        assertEquals(1, FetchBatchScheduler.estimatePoints(new DateRange(0, 0)));
+    }
+}
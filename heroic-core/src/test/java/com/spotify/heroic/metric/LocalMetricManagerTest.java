@@ -1,11 +1,15 @@
 package com.spotify.heroic.metric;
 
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import com.spotify.heroic.aggregation.AggregationInstance;
+import com.spotify.heroic.common.DateRange;
 import com.spotify.heroic.common.GroupSet;
 import com.spotify.heroic.common.Groups;
 import com.spotify.heroic.common.OptionalLimit;
@@ -15,11 +19,14 @@ import com.spotify.heroic.querylogging.QueryLoggerFactory;
 import com.spotify.heroic.statistics.MetricBackendReporter;
 import eu.toolchain.async.AsyncFramework;
 import eu.toolchain.async.AsyncFuture;
+import eu.toolchain.async.TinyAsync;
+import io.opencensus.trace.BlankSpan;
 import java.util.Collections;
 import java.util.Optional;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
@@ -50,12 +57,23 @@ public class LocalMetricManagerTest {
 
     @Before
     public void setup() {
+        manager = manager(async, OptionalLimit.empty());
+    }
+
+    private LocalMetricManager manager(
+        final AsyncFramework async, final OptionalLimit memoryBudget
+    ) {
         final OptionalLimit groupLimit = OptionalLimit.empty();
         final OptionalLimit seriesLimit = OptionalLimit.empty();
         final OptionalLimit aggregationLimit = OptionalLimit.empty();
         final OptionalLimit dataLimit = OptionalLimit.empty();
         final OptionalLimit concurrentQueriesBackoff = OptionalLimit.empty();
         final int fetchParallelism = 20;
+        final int fetchBatchSize = 64;
+        final long fetchBatchPoints = 1000000;
+        final int fetchChunkSize = 4096;
+        final int fetchChunksInFlight = 100;
+        final int memoryBudgetQueueSize = 32;
         final boolean failOnLimits = true;
         final Groups groups = new Groups("foo");
         doReturn(groups).when(metricBackend).groups();
@@ -66,13 +84,38 @@ public class LocalMetricManagerTest {
         final QueryLoggerFactory queryLoggerFactory = mock(QueryLoggerFactory.class);
         when(queryLoggerFactory.create(any())).thenReturn(queryLogger);
 
-        manager = new LocalMetricManager(groupLimit, seriesLimit, aggregationLimit, dataLimit,
-            concurrentQueriesBackoff, fetchParallelism, failOnLimits, async, groupSet, metadata,
-            reporter, queryLoggerFactory);
+        return new LocalMetricManager(groupLimit, seriesLimit, aggregationLimit, dataLimit,
+            concurrentQueriesBackoff, fetchParallelism, fetchBatchSize, fetchBatchPoints,
+            fetchChunkSize, fetchChunksInFlight, memoryBudget, memoryBudgetQueueSize, failOnLimits,
+            async, groupSet, metadata, reporter, queryLoggerFactory);
     }
 
     @Test
     public void testUseDefaultBackend() {
         assertNotNull(manager.useDefaultGroup());
     }
+
+    @Test
+    public void testReleasesReservationWhenQueryThrows() throws Exception {
+        final LocalMetricManager manager =
+            manager(TinyAsync.builder().build(), OptionalLimit.of(1000L));
+
+        final AggregationInstance aggregation = mock(AggregationInstance.class);
+        final FullQuery.Request request = mock(FullQuery.Request.class);
+        final DateRange range = new DateRange(0L, 1000L);
+
+        when(request.range()).thenReturn(range);
+        when(request.aggregation()).thenReturn(aggregation);
+        when(aggregation.estimate(range)).thenReturn(10L);
+        when(request.options()).thenThrow(new IllegalStateException("broken request"));
+
+        final AsyncFuture<FullQuery> query =
+            manager.useDefaultGroup().query(request, BlankSpan.INSTANCE);
+
+        assertTrue(query.isFailed());
+
+        final InOrder order = inOrder(reporter);
+        order.verify(reporter).reportMemoryReserved(MemoryBudget.bytes(10L));
+        order.verify(reporter).reportMemoryReserved(0L);
+    }
 }
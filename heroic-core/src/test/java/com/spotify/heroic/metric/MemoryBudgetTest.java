@@ -0,0 +1,154 @@
+package com.spotify.heroic.metric;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import com.spotify.heroic.common.GoAwayException;
+import com.spotify.heroic.statistics.MetricBackendReporter;
+import eu.toolchain.async.AsyncFramework;
+import eu.toolchain.async.AsyncFuture;
+import eu.toolchain.async.TinyAsync;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MemoryBudgetTest {
+    private final AsyncFramework async = TinyAsync.builder().build();
+
+    private MetricBackendReporter reporter;
+    private MemoryBudget budget;
+
+    @Before
+    public void setup() {
+        reporter = mock(MetricBackendReporter.class);
+        budget = new MemoryBudget(async, 100, 1, reporter);
+    }
+
+    @Test
+    public void testQueuesUntilReleased() throws Exception {
+        final AsyncFuture<MemoryBudget.Reservation> a = budget.reserve(60);
+        final AsyncFuture<MemoryBudget.Reservation> b = budget.reserve(60);
+
+        assertTrue(a.isResolved());
+        assertFalse(b.isDone());
+        assertEquals(60, budget.reserved());
+        assertEquals(1, budget.queued());
+
+        a.get().release();
+        /* releasing more than once has no effect */
+        a.get().release();
+
+        assertTrue(b.isResolved());
+        assertEquals(60, budget.reserved());
+        assertEquals(0, budget.queued());
+
+        b.get().release();
+        assertEquals(0, budget.reserved());
+        verify(reporter).reportMemoryBudget(100);
+    }
+
+    @Test
+    public void testShedsWhenQueueIsFull() {
+        budget.reserve(100);
+        budget.reserve(10);
+
+        final AsyncFuture<MemoryBudget.Reservation> shed = budget.reserve(10);
+
+        assertTrue(shed.isFailed());
+        assertTrue(shed.cause() instanceof GoAwayException);
+        verify(reporter).reportQueryShed();
+    }
+
+    @Test
+    public void testGrowBlocksAdmission() throws Exception {
+        final AsyncFuture<MemoryBudget.Reservation> a = budget.reserve(0);
+        a.get().growTo(50);
+        a.get().growTo(20);
+        assertEquals(50, budget.reserved());
+
+        a.get().growTo(100);
+
+        final AsyncFuture<MemoryBudget.Reservation> b = budget.reserve(0);
+        assertFalse(b.isDone());
+
+        a.get().release();
+        assertTrue(b.isResolved());
+    }
+
+    @Test
+    public void testGrowBeyondBudgetIsRefused() throws Exception {
+        final MemoryBudget.Reservation a = budget.reserve(50).get();
+
+        assertTrue(a.growTo(100));
+        assertFalse(a.growTo(101));
+        assertEquals(100, budget.reserved());
+
+        a.release();
+        assertEquals(0, budget.reserved());
+        assertTrue(MemoryBudget.Reservation.NONE.growTo(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testGrowBeyondTotalIsRefused() throws Exception {
+        final MemoryBudget.Reservation a = budget.reserve(50).get();
+        final MemoryBudget.Reservation b = budget.reserve(40).get();
+
+        assertFalse(a.growTo(70));
+        assertEquals(90, budget.reserved());
+
+        assertTrue(a.growTo(60));
+        assertEquals(100, budget.reserved());
+
+        b.release();
+        assertTrue(a.growTo(100));
+    }
+
+    @Test
+    public void testShrinkAdmitsQueued() throws Exception {
+        final MemoryBudget.Reservation a = budget.reserve(20).get();
+        assertTrue(a.growTo(100));
+
+        final AsyncFuture<MemoryBudget.Reservation> b = budget.reserve(10);
+        assertFalse(b.isDone());
+
+        a.shrinkTo(50);
+        assertTrue(b.isResolved());
+        assertEquals(60, budget.reserved());
+
+        /* never below what the query was admitted with */
+        a.shrinkTo(0);
+        assertEquals(30, budget.reserved());
+
+        a.release();
+        assertEquals(10, budget.reserved());
+    }
+
+    @Test
+    public void testCappedToBudget() throws Exception {
+        final AsyncFuture<MemoryBudget.Reservation> a = budget.reserve(1000);
+
+        assertTrue(a.isResolved());
+        assertEquals(100, budget.reserved());
+    }
+
+    @Test
+    public void testCancelQueued() throws Exception {
+        final AsyncFuture<MemoryBudget.Reservation> a = budget.reserve(100);
+        final AsyncFuture<MemoryBudget.Reservation> b = budget.reserve(10);
+
+        b.cancel();
+        assertEquals(0, budget.queued());
+
+        a.get().release();
+        assertEquals(0, budget.reserved());
+    }
+
+    @Test
+    public void testBytes() {
+        assertEquals(0, MemoryBudget.bytes(-1));
+        assertEquals(10 * MemoryBudget.BYTES_PER_POINT, MemoryBudget.bytes(10));
+        assertEquals(Long.MAX_VALUE, MemoryBudget.bytes(Long.MAX_VALUE / 2));
+    }
+}
@@ -218,6 +218,17 @@ public abstract class AbstractClusterQueryIT extends AbstractLocalClusterIT {
         assertEquals(ImmutableSet.of(points().p(10, 1D).p(20, 4D).build()), m);
     }
 
+    @Test
+    public void distributedFilterUnshardedSeriesQueryTest() throws Exception {
+        /* the series have no shard tag, so their group spans both shards */
+        final QueryResult result = query("sum(10ms) by shard | topk(1, distributed=true)");
+
+        final Set<MetricCollection> m = getResults(result);
+
+        assertEquals(ImmutableList.of(), result.getErrors());
+        assertEquals(ImmutableSet.of(points().p(10, 2D).p(20, 4D).p(30, 2D).build()), m);
+    }
+
     @Test
     public void filterQueryTest() throws Exception {
         final QueryResult result =
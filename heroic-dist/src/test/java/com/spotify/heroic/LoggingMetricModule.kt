@@ -1,7 +1,9 @@
 package com.spotify.heroic
 
 import com.spotify.heroic.async.AsyncObservable
+import com.spotify.heroic.common.DateRange
 import com.spotify.heroic.common.Groups
+import com.spotify.heroic.common.Series
 import com.spotify.heroic.common.Statistics
 import com.spotify.heroic.dagger.PrimaryComponent
 import com.spotify.heroic.instrumentation.OperationsLog
@@ -9,6 +11,7 @@ import com.spotify.heroic.lifecycle.LifeCycle
 import com.spotify.heroic.metric.*
 import eu.toolchain.async.AsyncFuture
 import io.opencensus.trace.Span
+import java.util.function.BiConsumer
 import java.util.function.Consumer
 
 data class LoggingMetricModule(
@@ -60,6 +63,15 @@ data class LoggingMetricModule(
             return delegate.fetch(request, watcher, metricsConsumer, parentSpan)
         }
 
+        override fun fetchMany(
+            request: FetchData.BatchRequest,
+            watcher: FetchQuotaWatcher,
+            metricsConsumer: BiConsumer<Series, MetricReadResult>,
+            parentSpan: Span
+        ): AsyncFuture<FetchData.Result> {
+            return delegate.fetchMany(request, watcher, metricsConsumer, parentSpan)
+        }
+
         override fun listEntries(): Iterable<BackendEntry> {
             return delegate.listEntries()
         }
@@ -92,6 +104,10 @@ data class LoggingMetricModule(
             return delegate.countKey(key, options)
         }
 
+        override fun compact(range: DateRange): AsyncFuture<Long> {
+            return delegate.compact(range)
+        }
+
         override fun fetchRow(key: BackendKey): AsyncFuture<MetricCollection> {
             return delegate.fetchRow(key)
         }
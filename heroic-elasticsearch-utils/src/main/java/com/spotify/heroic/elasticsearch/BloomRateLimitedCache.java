@@ -0,0 +1,297 @@
+/*
+ * Copyright (c) 2020 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.heroic.elasticsearch;
+
+import com.google.common.hash.HashCode;
+import com.google.common.util.concurrent.RateLimiter;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import org.apache.commons.lang3.tuple.Pair;
+
+/**
+ * A write cache that remembers which series have been written to which index in a fixed amount
+ * of off-heap memory, instead of keeping an entry per series.
+ * <p>
+ * Keys are stored in a blocked bloom filter, where all bits of a key are in the same 64 byte
+ * block. Since there are false positives, a small fraction of new series are not written until
+ * the generation they collided in has expired.
+ * <p>
+ * The filter is split in two generations. Keys are added to the current one and looked up in
+ * both, and the older one is cleared and reused as the current one every generation, so a key is
+ * remembered for between one and two generations. The index is part of the key, so writes to a
+ * new index of a {@link com.spotify.heroic.elasticsearch.index.RotatingIndexMapping} are never
+ * dropped, and a generation that matches the rotation interval lets old indices age out.
+ */
+public class BloomRateLimitedCache implements RateLimitedCache<Pair<String, HashCode>> {
+    private static final int BLOCK_BYTES = 64;
+    private static final int BLOCK_BITS = BLOCK_BYTES * 8;
+    /* bits of a hash used to select a bit in a block */
+    private static final int BLOCK_SHIFT = Long.SIZE - Integer.numberOfTrailingZeros(BLOCK_BITS);
+    private static final int MAX_HASHES = 16;
+    private static final long GOLDEN_RATIO = 0x9e3779b97f4a7c15L;
+
+    private static final VarHandle LONGS =
+        MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private final Optional<RateLimiter> rateLimiter;
+    private final long generationMillis;
+    private final LongSupplier clock;
+    private final int blocks;
+    private final int hashes;
+
+    private volatile Generations generations;
+
+    public BloomRateLimitedCache(
+        final long expectedInsertions,
+        final double falsePositiveRate,
+        final long generationMillis,
+        final Optional<RateLimiter> rateLimiter
+    ) {
+        this(expectedInsertions, falsePositiveRate, generationMillis, rateLimiter,
+            System::currentTimeMillis);
+    }
+
+    BloomRateLimitedCache(
+        final long expectedInsertions,
+        final double falsePositiveRate,
+        final long generationMillis,
+        final Optional<RateLimiter> rateLimiter,
+        final LongSupplier clock
+    ) {
+        if (expectedInsertions < 1) {
+            throw new IllegalArgumentException("expectedInsertions must be positive");
+        }
+
+        if (!(falsePositiveRate > 0D && falsePositiveRate < 1D)) {
+            throw new IllegalArgumentException("falsePositiveRate must be between 0 and 1");
+        }
+
+        if (generationMillis < 1) {
+            throw new IllegalArgumentException("generationMillis must be positive");
+        }
+
+        final double bitsPerKey = -Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+        /* blocking makes the bits less evenly distributed, make up for it with more of them */
+        final double bits = Math.ceil(expectedInsertions * bitsPerKey * 1.1D);
+        final long blocks = Math.max(1L, (long) Math.ceil(bits / BLOCK_BITS));
+
+        if (blocks > Integer.MAX_VALUE / BLOCK_BYTES) {
+            throw new IllegalArgumentException(
+                "Bloom filter for " + expectedInsertions + " keys would be too large");
+        }
+
+        this.rateLimiter = rateLimiter;
+        this.generationMillis = generationMillis;
+        this.clock = clock;
+        this.blocks = (int) blocks;
+        this.hashes =
+            (int) Math.max(1L, Math.min(MAX_HASHES, Math.round(bitsPerKey * Math.log(2))));
+
+        final int bytes = this.blocks * BLOCK_BYTES;
+        this.generations = new Generations(new Generation(bytes), new Generation(bytes),
+            clock.getAsLong() + generationMillis);
+    }
+
+    @Override
+    public boolean acquire(final Pair<String, HashCode> key, final Runnable cacheHit) {
+        final Generations g = generations(clock.getAsLong());
+
+        final byte[] hash = key.getRight().asBytes();
+        long h1 = toLong(hash, 0);
+        final long h2 = hash.length >= 16 ? toLong(hash, 8) : mix(h1);
+        h1 ^= mix(key.getLeft().hashCode());
+
+        final int block = (int) Math.floorMod(h1, (long) blocks) * BLOCK_BYTES;
+
+        final boolean found = g.current.contains(block, h1, h2, hashes) ||
+            g.previous.contains(block, h1, h2, hashes);
+
+        if (found) {
+            cacheHit.run();
+            return false;
+        }
+
+        rateLimiter.ifPresent(RateLimiter::acquire);
+
+        if (!g.current.put(block, h1, h2, hashes)) {
+            /* added by a concurrent writer */
+            cacheHit.run();
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Number of keys added in the current generation.
+     */
+    @Override
+    public int size() {
+        return (int) Math.min(Integer.MAX_VALUE, generations.current.size.sum());
+    }
+
+    /**
+     * Size of the bloom filter of a single generation in bytes.
+     */
+    public long sizeInBytes() {
+        return (long) blocks * BLOCK_BYTES;
+    }
+
+    private Generations generations(final long now) {
+        final Generations g = generations;
+
+        if (now < g.expires) {
+            return g;
+        }
+
+        synchronized (this) {
+            if (generations != g) {
+                return generations;
+            }
+
+            /* writers still using the previous generation might miss keys while it is cleared,
+             * which only causes a duplicate write */
+            g.previous.clear();
+            generations = new Generations(g.previous, g.current, now + generationMillis);
+            return generations;
+        }
+    }
+
+    private static long toLong(final byte[] bytes, final int offset) {
+        long value = 0;
+
+        for (int i = Math.min(bytes.length, offset + 8) - 1; i >= offset; i--) {
+            value = (value << 8) | (bytes[i] & 0xffL);
+        }
+
+        return value;
+    }
+
+    /**
+     * Finalization mix of murmur3.
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static final class Generations {
+        private final Generation current;
+        private final Generation previous;
+        private final long expires;
+
+        private Generations(
+            final Generation current, final Generation previous, final long expires
+        ) {
+            this.current = current;
+            this.previous = previous;
+            this.expires = expires;
+        }
+    }
+
+    private static final class Generation {
+        private final ByteBuffer bits;
+        private final LongAdder size = new LongAdder();
+
+        private Generation(final int bytes) {
+            /* the buffer is aligned so that longs can be updated atomically */
+            this.bits = ByteBuffer.allocateDirect(bytes + Long.BYTES).alignedSlice(Long.BYTES);
+        }
+
+        private boolean contains(final int block, final long h1, final long h2, final int k) {
+            long x = h2;
+
+            for (int i = 0; i < k; i++) {
+                final int bit = bit(x);
+                final long word = (long) LONGS.getVolatile(bits, offset(block, bit));
+
+                if ((word & (1L << bit)) == 0) {
+                    return false;
+                }
+
+                x = next(x, h1);
+            }
+
+            return true;
+        }
+
+        /**
+         * Set the bits of a key.
+         *
+         * @return true if any bit was not set before
+         */
+        private boolean put(final int block, final long h1, final long h2, final int k) {
+            boolean added = false;
+            long x = h2;
+
+            for (int i = 0; i < k; i++) {
+                final int bit = bit(x);
+                final long mask = 1L << bit;
+                final long word = (long) LONGS.getAndBitwiseOr(bits, offset(block, bit), mask);
+                added |= (word & mask) == 0;
+                x = next(x, h1);
+            }
+
+            if (added) {
+                size.increment();
+            }
+
+            return added;
+        }
+
+        private void clear() {
+            for (int i = 0; i < bits.capacity(); i += Long.BYTES) {
+                LONGS.setVolatile(bits, i, 0L);
+            }
+
+            size.reset();
+        }
+
+        /**
+         * Select a bit in a block from the high bits of the hash.
+         */
+        private static int bit(final long x) {
+            return (int) (x >>> BLOCK_SHIFT);
+        }
+
+        /**
+         * Step to the hash of the next bit, as a linear congruential generator seeded by the key,
+         * since the high bits of the sequence are well distributed.
+         */
+        private static long next(final long x, final long h1) {
+            return x * GOLDEN_RATIO + (h1 | 1L);
+        }
+
+        private static int offset(final int block, final int bit) {
+            return block + (bit >>> 6) * Long.BYTES;
+        }
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2020 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.heroic.elasticsearch;
+
+import com.spotify.heroic.scheduler.Scheduler;
+import eu.toolchain.async.AsyncFramework;
+import eu.toolchain.async.AsyncFuture;
+import eu.toolchain.async.FutureDone;
+import eu.toolchain.async.ResolvableFuture;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+
+/**
+ * Accumulates index requests from concurrent writers and executes them as bulk requests, once
+ * enough actions or bytes have been added or the flush interval has passed.
+ * <p>
+ * At most {@link BulkOptions#getConcurrency()} bulks are in flight at once. Bulks that are ready
+ * while at the limit are queued, and sent as earlier ones finish. The future returned for a
+ * request completes with the outcome of its own item in the bulk response, so failures like
+ * version conflicts can be handled per request.
+ */
+public class BulkIndexer {
+    /* per action overhead of the bulk format, the same estimate that elasticsearch uses */
+    private static final int REQUEST_OVERHEAD = 50;
+
+    private final AsyncFramework async;
+    private final Scheduler scheduler;
+    private final BulkOptions options;
+    private final Function<BulkRequest, AsyncFuture<BulkResponse>> executor;
+
+    private final Object lock = new Object();
+    /* bulks which are full or due, waiting for a free slot */
+    private final Deque<Batch> ready = new ArrayDeque<>();
+    /* bulks which have not finished yet, including the one being filled */
+    private final Set<Batch> pending = new HashSet<>();
+
+    private Batch current = null;
+    private int inFlight = 0;
+
+    public BulkIndexer(
+        final AsyncFramework async,
+        final Scheduler scheduler,
+        final BulkOptions options,
+        final Function<BulkRequest, AsyncFuture<BulkResponse>> executor
+    ) {
+        this.async = async;
+        this.scheduler = scheduler;
+        this.options = options;
+        this.executor = executor;
+    }
+
+    /**
+     * Add an index request to the next bulk.
+     *
+     * @return a future that completes when the request has been indexed, or fails with the
+     *     failure of its item
+     */
+    public AsyncFuture<Void> index(final IndexRequest request) {
+        final ResolvableFuture<Void> future = async.future();
+        final long bytes = request.source().length() + REQUEST_OVERHEAD;
+
+        Batch opened = null;
+
+        synchronized (lock) {
+            if (current == null) {
+                current = new Batch(async.future());
+                pending.add(current);
+                opened = current;
+            }
+
+            current.add(request, future, bytes);
+
+            if (current.requests.size() >= options.getMaxActions() ||
+                current.bytes >= options.getMaxBytes()) {
+                ready.add(current);
+                current = null;
+            }
+        }
+
+        if (opened != null) {
+            final Batch batch = opened;
+            scheduler.schedule("elasticsearch-bulk", options.getFlushInterval().toMilliseconds(),
+                TimeUnit.MILLISECONDS, () -> due(batch));
+        }
+
+        dispatch();
+        return future;
+    }
+
+    /**
+     * Send all buffered requests without waiting for the flush interval.
+     *
+     * @return a future that completes when every bulk which has been started so far has finished
+     */
+    public AsyncFuture<Void> flush() {
+        final List<AsyncFuture<Void>> done = new ArrayList<>();
+
+        synchronized (lock) {
+            if (current != null) {
+                ready.add(current);
+                current = null;
+            }
+
+            for (final Batch batch : pending) {
+                done.add(batch.done);
+            }
+        }
+
+        dispatch();
+        return async.collectAndDiscard(done);
+    }
+
+    /**
+     * Number of requests which have not been sent yet.
+     */
+    public int buffered() {
+        synchronized (lock) {
+            int buffered = current == null ? 0 : current.requests.size();
+
+            for (final Batch batch : ready) {
+                buffered += batch.requests.size();
+            }
+
+            return buffered;
+        }
+    }
+
+    /**
+     * Number of bulks in flight.
+     */
+    public int inFlight() {
+        synchronized (lock) {
+            return inFlight;
+        }
+    }
+
+    private void due(final Batch batch) {
+        synchronized (lock) {
+            if (current != batch) {
+                return;
+            }
+
+            ready.add(current);
+            current = null;
+        }
+
+        dispatch();
+    }
+
+    private void dispatch() {
+        while (true) {
+            final Batch batch;
+
+            synchronized (lock) {
+                if (inFlight >= options.getConcurrency() || ready.isEmpty()) {
+                    return;
+                }
+
+                batch = ready.poll();
+                inFlight += 1;
+            }
+
+            send(batch);
+        }
+    }
+
+    private void send(final Batch batch) {
+        final BulkRequest bulk = new BulkRequest();
+        batch.requests.forEach(bulk::add);
+
+        final AsyncFuture<BulkResponse> response;
+
+        try {
+            response = executor.apply(bulk);
+        } catch (final Exception e) {
+            batch.fail(e);
+            finished(batch);
+            return;
+        }
+
+        response.onDone(new FutureDone<BulkResponse>() {
+            @Override
+            public void failed(final Throwable cause) {
+                batch.fail(cause);
+            }
+
+            @Override
+            public void resolved(final BulkResponse result) {
+                batch.resolve(result);
+            }
+
+            @Override
+            public void cancelled() {
+                batch.futures.forEach(ResolvableFuture::cancel);
+            }
+        }).onFinished(() -> finished(batch));
+    }
+
+    private void finished(final Batch batch) {
+        synchronized (lock) {
+            inFlight -= 1;
+            pending.remove(batch);
+        }
+
+        batch.done.resolve(null);
+        dispatch();
+    }
+
+    private static final class Batch {
+        private final ResolvableFuture<Void> done;
+        private final List<IndexRequest> requests = new ArrayList<>();
+        private final List<ResolvableFuture<Void>> futures = new ArrayList<>();
+
+        private long bytes = 0;
+
+        private Batch(final ResolvableFuture<Void> done) {
+            this.done = done;
+        }
+
+        private void add(
+            final IndexRequest request, final ResolvableFuture<Void> future, final long bytes
+        ) {
+            this.requests.add(request);
+            this.futures.add(future);
+            this.bytes += bytes;
+        }
+
+        private void resolve(final BulkResponse response) {
+            for (final BulkItemResponse item : response.getItems()) {
+                final ResolvableFuture<Void> future = futures.get(item.getItemId());
+
+                if (item.isFailed()) {
+                    final BulkItemResponse.Failure failure = item.getFailure();
+                    future.fail(new RuntimeException(failure.getMessage(), failure.getCause()));
+                } else {
+                    future.resolve(null);
+                }
+            }
+
+            /* items missing from the response */
+            for (final ResolvableFuture<Void> future : futures) {
+                future.fail(new IllegalStateException("No response for bulk item"));
+            }
+        }
+
+        private void fail(final Throwable cause) {
+            for (final ResolvableFuture<Void> future : futures) {
+                future.fail(cause);
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2020 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.heroic.elasticsearch;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.spotify.heroic.common.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Options for accumulating index requests into bulk requests.
+ */
+public class BulkOptions {
+    public static final int DEFAULT_MAX_ACTIONS = 1000;
+    public static final long DEFAULT_MAX_BYTES = 5L * 1024 * 1024;
+    public static final Duration DEFAULT_FLUSH_INTERVAL = Duration.of(100, TimeUnit.MILLISECONDS);
+    public static final int DEFAULT_CONCURRENCY = 4;
+
+    /* maximum number of actions in a single bulk */
+    private final int maxActions;
+    /* maximum estimated size in bytes of a single bulk */
+    private final long maxBytes;
+    /* maximum time a request is buffered before its bulk is sent */
+    private final Duration flushInterval;
+    /* maximum number of bulks in flight */
+    private final int concurrency;
+
+    public BulkOptions() {
+        this(Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty());
+    }
+
+    @JsonCreator
+    public BulkOptions(
+        @JsonProperty("maxActions") Optional<Integer> maxActions,
+        @JsonProperty("maxBytes") Optional<Long> maxBytes,
+        @JsonProperty("flushInterval") Optional<Duration> flushInterval,
+        @JsonProperty("concurrency") Optional<Integer> concurrency
+    ) {
+        this.maxActions = maxActions.orElse(DEFAULT_MAX_ACTIONS);
+        this.maxBytes = maxBytes.orElse(DEFAULT_MAX_BYTES);
+        this.flushInterval = flushInterval.orElse(DEFAULT_FLUSH_INTERVAL);
+        this.concurrency = concurrency.orElse(DEFAULT_CONCURRENCY);
+
+        if (this.maxActions < 1) {
+            throw new IllegalArgumentException("maxActions must be positive");
+        }
+
+        if (this.maxBytes < 1) {
+            throw new IllegalArgumentException("maxBytes must be positive");
+        }
+
+        if (this.concurrency < 1) {
+            throw new IllegalArgumentException("concurrency must be positive");
+        }
+    }
+
+    public int getMaxActions() {
+        return maxActions;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public Duration getFlushInterval() {
+        return flushInterval;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+}
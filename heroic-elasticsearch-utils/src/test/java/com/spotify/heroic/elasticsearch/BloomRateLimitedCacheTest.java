@@ -0,0 +1,104 @@
+package com.spotify.heroic.elasticsearch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashCode;
+import com.google.common.util.concurrent.RateLimiter;
+import com.spotify.heroic.common.Series;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BloomRateLimitedCacheTest {
+    @Mock
+    RateLimiter rateLimiter;
+
+    @Mock
+    Runnable cacheHit;
+
+    private final AtomicLong now = new AtomicLong();
+
+    private BloomRateLimitedCache cache(final long expectedInsertions) {
+        return new BloomRateLimitedCache(expectedInsertions, 0.001D, 1000L,
+            Optional.of(rateLimiter), now::get);
+    }
+
+    private static Pair<String, HashCode> key(final String index, final int i) {
+        final Series series = Series.of("key", ImmutableMap.of("id", Integer.toString(i)));
+        return Pair.of(index, series.getHashCodeTagOnly());
+    }
+
+    @Test
+    public void testAcquire() {
+        final BloomRateLimitedCache cache = cache(1000);
+
+        assertTrue(cache.acquire(key("a", 0), cacheHit));
+        assertFalse(cache.acquire(key("a", 0), cacheHit));
+        /* a new index is always written */
+        assertTrue(cache.acquire(key("b", 0), cacheHit));
+
+        verify(rateLimiter, times(2)).acquire();
+        verify(cacheHit).run();
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testGenerations() {
+        final BloomRateLimitedCache cache = cache(1000);
+
+        assertTrue(cache.acquire(key("a", 0), cacheHit));
+
+        /* still remembered in the previous generation */
+        now.set(1000L);
+        assertFalse(cache.acquire(key("a", 0), cacheHit));
+        assertEquals(0, cache.size());
+
+        now.set(2000L);
+        assertTrue(cache.acquire(key("a", 0), cacheHit));
+    }
+
+    @Test
+    public void testFalsePositiveRate() {
+        final int keys = 100_000;
+        final BloomRateLimitedCache cache = cache(keys);
+
+        for (int i = 0; i < keys; i++) {
+            cache.acquire(key("a", i), cacheHit);
+        }
+
+        /* every probe is also added, so only probe a few to stay close to the expected load */
+        final int probes = keys / 10;
+        int falsePositives = 0;
+
+        for (int i = keys; i < keys + probes; i++) {
+            if (!cache.acquire(key("a", i), cacheHit)) {
+                falsePositives++;
+            }
+        }
+
+        /* the configured rate is 0.001 */
+        assertTrue("false positives: " + falsePositives, falsePositives < probes * 0.003);
+        /* about 2 bytes per key, instead of an object graph per key */
+        assertTrue(cache.sizeInBytes() < keys * 3);
+    }
+
+    @Test
+    public void testNoRateLimit() {
+        final BloomRateLimitedCache cache =
+            new BloomRateLimitedCache(1000, 0.001D, 1000L, Optional.empty(), now::get);
+
+        assertTrue(cache.acquire(key("a", 0), cacheHit));
+        verify(cacheHit, never()).run();
+    }
+}
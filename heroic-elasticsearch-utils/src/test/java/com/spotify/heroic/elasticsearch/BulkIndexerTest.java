@@ -0,0 +1,185 @@
+package com.spotify.heroic.elasticsearch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.spotify.heroic.common.Duration;
+import com.spotify.heroic.scheduler.Scheduler;
+import com.spotify.heroic.scheduler.Task;
+import eu.toolchain.async.AsyncFramework;
+import eu.toolchain.async.AsyncFuture;
+import eu.toolchain.async.ResolvableFuture;
+import eu.toolchain.async.TinyAsync;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.lang.exception.ExceptionUtils;
+import org.elasticsearch.action.DocWriteRequest.OpType;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.index.engine.VersionConflictEngineException;
+import org.elasticsearch.index.shard.ShardId;
+import org.junit.Test;
+
+public class BulkIndexerTest {
+    private final AsyncFramework async = TinyAsync.builder().build();
+    private final ShardId shard = new ShardId("index", "_na_", 0);
+
+    private final List<Task> scheduled = new ArrayList<>();
+    private final List<BulkRequest> executed = new ArrayList<>();
+    private final List<ResolvableFuture<BulkResponse>> bulks = new ArrayList<>();
+
+    private BulkIndexer indexer(final int maxActions, final long maxBytes, final int concurrency) {
+        final Scheduler scheduler = new Scheduler() {
+            @Override
+            public void periodically(final long value, final TimeUnit unit, final Task task) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void periodically(
+                final String name, final long value, final TimeUnit unit, final Task task
+            ) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void schedule(final long value, final TimeUnit unit, final Task task) {
+                scheduled.add(task);
+            }
+
+            @Override
+            public void schedule(
+                final String name, final long value, final TimeUnit unit, final Task task
+            ) {
+                scheduled.add(task);
+            }
+        };
+
+        final BulkOptions options = new BulkOptions(Optional.of(maxActions), Optional.of(maxBytes),
+            Optional.of(Duration.of(100, TimeUnit.MILLISECONDS)), Optional.of(concurrency));
+
+        return new BulkIndexer(async, scheduler, options, request -> {
+            final ResolvableFuture<BulkResponse> future = async.future();
+            executed.add(request);
+            bulks.add(future);
+            return future;
+        });
+    }
+
+    private static IndexRequest request(final String id) {
+        return new IndexRequest("index").id(id).source("key", id).opType(OpType.CREATE);
+    }
+
+    private BulkResponse response(final BulkRequest request, final int... conflicts) {
+        final BulkItemResponse[] items = new BulkItemResponse[request.numberOfActions()];
+
+        for (int i = 0; i < items.length; i++) {
+            final String id = request.requests().get(i).id();
+            items[i] = new BulkItemResponse(i, OpType.CREATE,
+                new IndexResponse(shard, "_doc", id, 1, 1, 1, true));
+        }
+
+        for (final int i : conflicts) {
+            final String id = request.requests().get(i).id();
+            items[i] = new BulkItemResponse(i, OpType.CREATE,
+                new BulkItemResponse.Failure("index", "_doc", id,
+                    new VersionConflictEngineException(shard, id, "document already exists")));
+        }
+
+        return new BulkResponse(items, 1);
+    }
+
+    @Test
+    public void testFlushInterval() throws Exception {
+        final BulkIndexer indexer = indexer(1000, 1024 * 1024, 1);
+
+        final AsyncFuture<Void> a = indexer.index(request("a"));
+        final AsyncFuture<Void> b = indexer.index(request("b"));
+
+        assertEquals(1, scheduled.size());
+        assertEquals(2, indexer.buffered());
+        assertTrue(executed.isEmpty());
+
+        scheduled.get(0).run();
+
+        assertEquals(1, executed.size());
+        assertEquals(2, executed.get(0).numberOfActions());
+        assertEquals(0, indexer.buffered());
+        assertFalse(a.isDone());
+
+        bulks.get(0).resolve(response(executed.get(0)));
+
+        assertTrue(a.isResolved());
+        assertTrue(b.isResolved());
+        assertEquals(0, indexer.inFlight());
+    }
+
+    @Test
+    public void testMaxActionsAndBytes() throws Exception {
+        final BulkIndexer indexer = indexer(2, 1024 * 1024, 4);
+
+        indexer.index(request("a"));
+        indexer.index(request("b"));
+        indexer.index(request("c"));
+
+        /* sent by size, before the interval has passed */
+        assertEquals(1, executed.size());
+        assertEquals(1, indexer.buffered());
+
+        /* the first interval has nothing left to send */
+        scheduled.get(0).run();
+        assertEquals(1, executed.size());
+
+        final BulkIndexer small = indexer(1000, 1, 4);
+        small.index(request("d"));
+        assertEquals(2, executed.size());
+    }
+
+    @Test
+    public void testConcurrency() throws Exception {
+        final BulkIndexer indexer = indexer(1, 1024 * 1024, 2);
+
+        final AsyncFuture<Void> a = indexer.index(request("a"));
+        indexer.index(request("b"));
+        final AsyncFuture<Void> c = indexer.index(request("c"));
+
+        assertEquals(2, executed.size());
+        assertEquals(2, indexer.inFlight());
+        assertEquals(1, indexer.buffered());
+
+        bulks.get(0).fail(new RuntimeException("boom"));
+
+        assertTrue(a.isFailed());
+        assertEquals(3, executed.size());
+        assertEquals(0, indexer.buffered());
+
+        bulks.get(2).resolve(response(executed.get(2)));
+        assertTrue(c.isResolved());
+    }
+
+    @Test
+    public void testItemFailures() throws Exception {
+        final BulkIndexer indexer = indexer(1000, 1024 * 1024, 1);
+
+        final AsyncFuture<Void> a = indexer.index(request("a"));
+        final AsyncFuture<Void> b = indexer.index(request("b"));
+        final AsyncFuture<Void> flushed = indexer.flush();
+
+        assertEquals(1, executed.size());
+        assertFalse(flushed.isDone());
+
+        bulks.get(0).resolve(response(executed.get(0), 1));
+
+        assertTrue(a.isResolved());
+        assertTrue(b.isFailed());
+        assertTrue(ExceptionUtils.getRootCause(b.cause())
+            instanceof VersionConflictEngineException);
+        assertTrue(flushed.isResolved());
+    }
+}
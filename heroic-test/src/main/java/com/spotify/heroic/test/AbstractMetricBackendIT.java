@@ -210,6 +210,57 @@ public abstract class AbstractMetricBackendIT {
         verifyReadWrite(written, written, new DateRange(period - 1, (period + 1) * count));
     }
 
+    /**
+     * Fetch many series with a single call, with points in two periods if the backend has them.
+     */
+    @Test
+    public void testFetchMany() throws Exception {
+        final long period = period().orElse(100000L);
+        final List<Series> series = ImmutableList.of(s1, s2, s3);
+        final Map<Series, MetricCollection> written = new HashMap<>();
+
+        for (int i = 0; i < series.size(); i++) {
+            final MetricCollection points =
+                new Points().p(period - 50, i).p(period + 50, i + .5D).build();
+            backend.write(new WriteMetric.Request(series.get(i), points)).get();
+            written.put(series.get(i), points);
+        }
+
+        /* a series which is not fetched, in the same periods */
+        final Series other =
+            new Series("s4", ImmutableSortedMap.of("id", "s4"), ImmutableSortedMap.of());
+        backend.write(new WriteMetric.Request(other, new Points().p(period, 42D).build())).get();
+
+        final Map<Series, List<MetricCollection>> fetched = fetchMany(series,
+            new DateRange(period - 100, period + 100), FetchQuotaWatcher.NO_QUOTA);
+
+        assertEquals(ImmutableSet.copyOf(series), fetched.keySet());
+
+        for (final Series s : series) {
+            assertSortedMetricsEqual(ImmutableSet.of(written.get(s)),
+                ImmutableSet.copyOf(fetched.get(s)));
+        }
+    }
+
+    /**
+     * Fetch the points of the given series with a single call, grouped by series.
+     */
+    protected Map<Series, List<MetricCollection>> fetchMany(
+        final List<Series> series, final DateRange range, final FetchQuotaWatcher watcher
+    ) throws Exception {
+        final Map<Series, List<MetricCollection>> fetched = new HashMap<>();
+
+        backend.fetchMany(
+            new FetchData.BatchRequest(MetricType.POINT, series, range,
+                QueryOptions.builder().build()), watcher, (s, result) -> {
+                synchronized (fetched) {
+                    fetched.computeIfAbsent(s, k -> new ArrayList<>()).add(result.getMetrics());
+                }
+            }, BlankSpan.INSTANCE).get();
+
+        return fetched;
+    }
+
     private void verifyReadWrite(
         final MetricCollection input, final MetricCollection expected, final DateRange range
     ) throws Exception {
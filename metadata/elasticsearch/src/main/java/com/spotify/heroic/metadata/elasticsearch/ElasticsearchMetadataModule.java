@@ -44,6 +44,8 @@ import com.spotify.heroic.common.Groups;
 import com.spotify.heroic.common.ModuleId;
 import com.spotify.heroic.dagger.PrimaryComponent;
 import com.spotify.heroic.elasticsearch.BackendType;
+import com.spotify.heroic.elasticsearch.BloomRateLimitedCache;
+import com.spotify.heroic.elasticsearch.BulkOptions;
 import com.spotify.heroic.elasticsearch.Connection;
 import com.spotify.heroic.elasticsearch.ConnectionModule;
 import com.spotify.heroic.elasticsearch.DefaultRateLimitedCache;
@@ -94,10 +96,12 @@ public final class ElasticsearchMetadataModule implements MetadataModule, Dynami
     private final Long writeCacheDurationMinutes;
     private final Integer writeCacheConcurrency;
     private final Long writeCacheMaxSize;
+    private final Optional<Double> writeCacheFalsePositiveRate;
     private final String distributedCacheSrvRecord;
     private final int deleteParallelism;
     private final boolean configure;
     private final int scrollSize;
+    private final BulkOptions bulk;
 
     private static Supplier<BackendType> defaultSetup = MetadataBackendKV::backendType;
 
@@ -124,12 +128,14 @@ public final class ElasticsearchMetadataModule implements MetadataModule, Dynami
         @JsonProperty("writeCacheDurationMinutes") Optional<Long> writeCacheDurationMinutes,
         @JsonProperty("writeCacheConcurrency") Optional<Integer> writeCacheConcurrency,
         @JsonProperty("writeCacheMaxSize") Optional<Long> writeCacheMaxSize,
+        @JsonProperty("writeCacheFalsePositiveRate") Optional<Double> writeCacheFalsePositiveRate,
         @JsonProperty("distributedCacheSrvRecord") Optional<String> distributedCacheSrvRecord,
         @JsonProperty("deleteParallelism") Optional<Integer> deleteParallelism,
         @JsonProperty("templateName") Optional<String> templateName,
         @JsonProperty("backendType") Optional<String> backendType,
         @JsonProperty("configure") Optional<Boolean> configure,
-        @JsonProperty("scrollSize") Optional<Integer> scrollSize
+        @JsonProperty("scrollSize") Optional<Integer> scrollSize,
+        @JsonProperty("bulk") Optional<BulkOptions> bulk
     ) {
         this.id = id;
         this.groups = groups.orElseGet(Groups::empty).or(DEFAULT_GROUP);
@@ -145,6 +151,7 @@ public final class ElasticsearchMetadataModule implements MetadataModule, Dynami
 
         this.scrollSize = scrollSize.orElse(DEFAULT_SCROLL_SIZE);
 
+        this.writeCacheFalsePositiveRate = writeCacheFalsePositiveRate;
         this.distributedCacheSrvRecord = distributedCacheSrvRecord.orElse("");
 
         this.deleteParallelism = deleteParallelism.orElse(DEFAULT_DELETE_PARALLELISM);
@@ -152,6 +159,7 @@ public final class ElasticsearchMetadataModule implements MetadataModule, Dynami
         this.backendTypeBuilder =
             backendType.flatMap(bt -> ofNullable(backendTypes.get(bt))).orElse(defaultSetup);
         this.configure = configure.orElse(false);
+        this.bulk = bulk.orElseGet(BulkOptions::new);
     }
 
     @Override
@@ -244,9 +252,29 @@ public final class ElasticsearchMetadataModule implements MetadataModule, Dynami
             return scrollSize;
         }
 
+        @Provides
+        @ElasticsearchScope
+        public BulkOptions bulk() {
+            return bulk;
+        }
+
         @Provides
         @ElasticsearchScope
         public RateLimitedCache<Pair<String, HashCode>> writeCache(HeroicReporter reporter) {
+            if (writeCacheFalsePositiveRate.isPresent()) {
+                final Optional<RateLimiter> rateLimiter = writesPerSecond <= 0d ? Optional.empty()
+                    : Optional.of(RateLimiter.create(writesPerSecond, rateLimitSlowStartSeconds,
+                        SECONDS));
+
+                final BloomRateLimitedCache bloom = new BloomRateLimitedCache(writeCacheMaxSize,
+                    writeCacheFalsePositiveRate.get(), MINUTES.toMillis(writeCacheDurationMinutes),
+                    rateLimiter);
+
+                reporter.registerCacheSize("elasticsearch-metadata-write-through",
+                    () -> (long) bloom.size());
+                return bloom;
+            }
+
             final Cache<Pair<String, HashCode>, Boolean> cache = CacheBuilder
                 .newBuilder()
                 .concurrencyLevel(writeCacheConcurrency)
@@ -300,12 +328,14 @@ public final class ElasticsearchMetadataModule implements MetadataModule, Dynami
         private Optional<Long> writeCacheDurationMinutes = empty();
         private Optional<Integer> writeCacheConcurrency = empty();
         private Optional<Long> writeCacheMaxSize = empty();
+        private Optional<Double> writeCacheFalsePositiveRate = empty();
         private Optional<String> distributedCacheSrvRecord = empty();
         private Optional<Integer> deleteParallelism = empty();
         private Optional<String> templateName = empty();
         private Optional<String> backendType = empty();
         private Optional<Boolean> configure = empty();
         private Optional<Integer> scrollSize = empty();
+        private Optional<BulkOptions> bulk = empty();
 
         public Builder id(final String id) {
             checkNotNull(id, "id");
@@ -352,6 +382,11 @@ public final class ElasticsearchMetadataModule implements MetadataModule, Dynami
             return this;
         }
 
+        public Builder writeCacheFalsePositiveRate(final double writeCacheFalsePositiveRate) {
+            this.writeCacheFalsePositiveRate = of(writeCacheFalsePositiveRate);
+            return this;
+        }
+
         public Builder distributedCacheSrvRecord(final String distributedCacheSrvRecord) {
             this.distributedCacheSrvRecord = of(distributedCacheSrvRecord);
             return this;
@@ -384,6 +419,12 @@ public final class ElasticsearchMetadataModule implements MetadataModule, Dynami
             return this;
         }
 
+        public Builder bulk(final BulkOptions bulk) {
+            checkNotNull(bulk, "bulk");
+            this.bulk = of(bulk);
+            return this;
+        }
+
         public ElasticsearchMetadataModule build() {
             return new ElasticsearchMetadataModule(
                 id,
@@ -394,12 +435,14 @@ public final class ElasticsearchMetadataModule implements MetadataModule, Dynami
                 writeCacheDurationMinutes,
                 writeCacheConcurrency,
                 writeCacheMaxSize,
+                writeCacheFalsePositiveRate,
                 distributedCacheSrvRecord,
                 deleteParallelism,
                 templateName,
                 backendType,
                 configure,
-                scrollSize
+                scrollSize,
+                bulk
             );
         }
     }
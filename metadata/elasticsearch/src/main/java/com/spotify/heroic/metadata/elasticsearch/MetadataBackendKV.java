@@ -39,6 +39,8 @@ import com.spotify.heroic.common.Series;
 import com.spotify.heroic.common.Statistics;
 import com.spotify.heroic.elasticsearch.AbstractElasticsearchMetadataBackend;
 import com.spotify.heroic.elasticsearch.BackendType;
+import com.spotify.heroic.elasticsearch.BulkIndexer;
+import com.spotify.heroic.elasticsearch.BulkOptions;
 import com.spotify.heroic.elasticsearch.Connection;
 import com.spotify.heroic.elasticsearch.RateLimitedCache;
 import com.spotify.heroic.elasticsearch.SearchTransformResult;
@@ -67,6 +69,7 @@ import com.spotify.heroic.metadata.MetadataBackend;
 import com.spotify.heroic.metadata.WriteMetadata;
 import com.spotify.heroic.metric.QueryError;
 import com.spotify.heroic.metric.RequestError;
+import com.spotify.heroic.scheduler.Scheduler;
 import com.spotify.heroic.statistics.FutureReporter;
 import com.spotify.heroic.statistics.MetadataBackendReporter;
 import eu.toolchain.async.AsyncFramework;
@@ -76,7 +79,6 @@ import eu.toolchain.async.ManagedAction;
 import eu.toolchain.async.ResolvableFuture;
 import eu.toolchain.async.StreamCollector;
 import eu.toolchain.async.Transform;
-import io.opencensus.common.Scope;
 import io.opencensus.trace.AttributeValue;
 import io.opencensus.trace.Span;
 import io.opencensus.trace.Status;
@@ -98,12 +100,12 @@ import java.util.stream.Collectors;
 import javax.inject.Inject;
 import javax.inject.Named;
 import org.apache.commons.lang3.tuple.Pair;
-import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.DocWriteRequest.OpType;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.delete.DeleteRequest;
 import org.elasticsearch.action.delete.DeleteResponse;
 import org.elasticsearch.action.index.IndexRequest;
-import org.elasticsearch.action.index.IndexResponse;
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.common.unit.TimeValue;
@@ -143,6 +145,7 @@ public class MetadataBackendKV extends AbstractElasticsearchMetadataBackend
     private final boolean configure;
     private final int deleteParallelism;
     private final int scrollSize;
+    private final BulkIndexer bulk;
 
     @Inject
     public MetadataBackendKV(
@@ -153,7 +156,9 @@ public class MetadataBackendKV extends AbstractElasticsearchMetadataBackend
         RateLimitedCache<Pair<String, HashCode>> writeCache,
         @Named("configure") boolean configure,
         @Named("deleteParallelism") int deleteParallelism,
-        @Named("scrollSize") int scrollSize
+        @Named("scrollSize") int scrollSize,
+        Scheduler scheduler,
+        BulkOptions bulkOptions
     ) {
         super(async, METADATA_TYPE, reporter);
         this.groups = groups;
@@ -164,6 +169,7 @@ public class MetadataBackendKV extends AbstractElasticsearchMetadataBackend
         this.configure = configure;
         this.deleteParallelism = deleteParallelism;
         this.scrollSize = scrollSize;
+        this.bulk = new BulkIndexer(async, scheduler, bulkOptions, this::executeBulk);
     }
 
     @Override
@@ -203,11 +209,9 @@ public class MetadataBackendKV extends AbstractElasticsearchMetadataBackend
         final WriteMetadata.Request request, final Span parentSpan
     ) {
         return doto(c -> {
-            final String rootSpanName = "MetadataBackendKV.write";
             final Span rootSpan = tracer
-                .spanBuilderWithExplicitParent(rootSpanName, parentSpan)
+                .spanBuilderWithExplicitParent("MetadataBackendKV.write", parentSpan)
                 .startSpan();
-            final Scope rootScope = tracer.withSpan(rootSpan);
 
             final Series series = request.getSeries();
             final String id = series.hash();
@@ -224,74 +228,37 @@ public class MetadataBackendKV extends AbstractElasticsearchMetadataBackend
             }
 
             final List<AsyncFuture<WriteMetadata>> writes = new ArrayList<>();
-            final List<Span> indexSpans = new ArrayList<>();
 
             for (final String index : indices) {
-                final String indexSpanName = rootSpanName + ".index";
-                final Span span = tracer.spanBuilder(indexSpanName).startSpan();
-                try (Scope ignored = tracer.withSpan(span)) {
-                    span.putAttribute("index", AttributeValue.stringAttributeValue(index));
-
-                    if (!writeCache.acquire(Pair.of(index, series.getHashCodeTagOnly()),
-                        reporter::reportWriteDroppedByCacheHit)) {
-                        span.setStatus(
-                            Status.ALREADY_EXISTS.withDescription("Write dropped by cache hit"));
-                        span.end();
-                        continue;
-                    }
-                    indexSpans.add(span);
-
-                    final XContentBuilder source = XContentFactory.jsonBuilder();
-
-                    source.startObject();
-                    buildContext(source, series);
-                    source.endObject();
-
-                    IndexRequest indexRequest = new IndexRequest(index)
-                        .id(id)
-                        .source(source)
-                        .opType(OpType.CREATE);
-
-                    final RequestTimer<WriteMetadata> timer = WriteMetadata.timer();
-                    final FutureReporter.Context writeContext =
-                        reporter.setupBackendWriteReporter();
-
-                    final Span writeSpan =
-                        tracer.spanBuilder(indexSpanName + ".writeIndex").startSpan();
-
-                    final ResolvableFuture<IndexResponse> result = async.future();
-                    final ActionListener<IndexResponse> listener =
-                        new ActionListener<>() {
-                            @Override
-                            public void onResponse(IndexResponse indexResponse) {
-                                result.resolve(indexResponse);
-                            }
+                if (!writeCache.acquire(Pair.of(index, series.getHashCodeTagOnly()),
+                    reporter::reportWriteDroppedByCacheHit)) {
+                    rootSpan.addAnnotation("Write to " + index + " dropped by cache hit");
+                    continue;
+                }
 
-                            @Override
-                            public void onFailure(Exception e) {
-                                result.fail(e);
-                            }
-                        };
+                final XContentBuilder source = XContentFactory.jsonBuilder();
 
-                    c.execute(indexRequest, listener);
+                source.startObject();
+                buildContext(source, series);
+                source.endObject();
 
-                    final AsyncFuture<WriteMetadata> writeMetadataAsyncFuture = result
-                        .directTransform(response -> timer.end())
-                        .catchFailed(handleVersionConflict(WriteMetadata::new,
-                            reporter::reportWriteDroppedByDuplicate))
-                        .onDone(writeContext)
-                        .onFinished(writeSpan::end);
+                final IndexRequest indexRequest = new IndexRequest(index)
+                    .id(id)
+                    .source(source)
+                    .opType(OpType.CREATE);
 
-                    writes.add(writeMetadataAsyncFuture);
+                final RequestTimer<WriteMetadata> timer = WriteMetadata.timer();
+                final FutureReporter.Context writeContext = reporter.setupBackendWriteReporter();
 
-                }
+                writes.add(bulk
+                    .index(indexRequest)
+                    .directTransform(v -> timer.end())
+                    .catchFailed(handleVersionConflict(WriteMetadata::new,
+                        reporter::reportWriteDroppedByDuplicate))
+                    .onDone(writeContext));
             }
 
-            rootScope.close();
-            return async.collect(writes, WriteMetadata.reduce()).onFinished(() -> {
-                indexSpans.forEach(Span::end);
-                rootSpan.end();
-            });
+            return async.collect(writes, WriteMetadata.reduce()).onFinished(rootSpan::end);
         });
     }
 
@@ -562,7 +529,15 @@ public class MetadataBackendKV extends AbstractElasticsearchMetadataBackend
     }
 
     private AsyncFuture<Void> stop() {
-        return connection.stop();
+        return bulk.flush().lazyTransform(v -> connection.stop());
+    }
+
+    private AsyncFuture<BulkResponse> executeBulk(final BulkRequest request) {
+        return doto(c -> {
+            final ResolvableFuture<BulkResponse> future = async.future();
+            c.execute(request, bind(future));
+            return future;
+        });
     }
 
     private Map.Entry<String, String> buildTag(String kv) {
@@ -0,0 +1,515 @@
+/*
+ * Copyright (c) 2020 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.heroic.metadata.memory;
+
+import com.spotify.heroic.common.OptionalLimit;
+import com.spotify.heroic.common.Series;
+import com.spotify.heroic.filter.AndFilter;
+import com.spotify.heroic.filter.FalseFilter;
+import com.spotify.heroic.filter.Filter;
+import com.spotify.heroic.filter.HasTagFilter;
+import com.spotify.heroic.filter.MatchKeyFilter;
+import com.spotify.heroic.filter.MatchTagFilter;
+import com.spotify.heroic.filter.NotFilter;
+import com.spotify.heroic.filter.OrFilter;
+import com.spotify.heroic.filter.RegexFilter;
+import com.spotify.heroic.filter.StartsWithFilter;
+import com.spotify.heroic.filter.TrueFilter;
+import com.spotify.heroic.lifecycle.LifeCycleRegistry;
+import com.spotify.heroic.lifecycle.LifeCycles;
+import eu.toolchain.async.AsyncFramework;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stores series in an inverted index, mapping every key and tag to the ids of the series that
+ * have it.
+ * <p>
+ * Every series is assigned a dense id, which keeps the posting lists compact. Filters are then
+ * evaluated as set operations over the posting lists, and only the matching series are ever
+ * visited. Filters which cannot be evaluated on the index fall back to a scan.
+ * <p>
+ * If a snapshot path is configured, the stored series are written to it when the backend stops
+ * and read back when it starts.
+ */
+public class IndexedStorage implements MetadataStorage, LifeCycles {
+    private static final Logger log = LoggerFactory.getLogger(IndexedStorage.class);
+
+    private static final int SNAPSHOT_MAGIC = 0x48534e31;
+
+    private final AsyncFramework async;
+    private final Optional<Path> snapshot;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<Series, Integer> ids = new HashMap<>();
+    private final List<Series> series = new ArrayList<>();
+    private final SeriesBitmap all = new SeriesBitmap();
+    private final Map<String, SeriesBitmap> keys = new HashMap<>();
+    private final Map<String, TagIndex> tags = new HashMap<>();
+
+    /* ids of deleted series, which are reused before new ones are allocated */
+    private int[] free = new int[16];
+    private int freeSize = 0;
+
+    public IndexedStorage(final AsyncFramework async, final Optional<Path> snapshot) {
+        this.async = async;
+        this.snapshot = snapshot;
+    }
+
+    @Override
+    public void register(final LifeCycleRegistry registry) {
+        snapshot.ifPresent(path -> {
+            registry.start(() -> async.call(() -> {
+                load(path);
+                return null;
+            }));
+
+            registry.stop(() -> async.call(() -> {
+                save(path);
+                return null;
+            }));
+        });
+    }
+
+    @Override
+    public void write(final Series s) {
+        lock.readLock().lock();
+
+        try {
+            if (ids.containsKey(s)) {
+                return;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        lock.writeLock().lock();
+
+        try {
+            add(s);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Stream<Series> find(final Filter filter, final OptionalLimit limit) {
+        final long max = limit.asLong().orElse(Long.MAX_VALUE);
+        final List<Series> result = new ArrayList<>();
+
+        lock.readLock().lock();
+
+        try {
+            match(filter.optimize()).forEach(id -> {
+                if (result.size() >= max) {
+                    return false;
+                }
+
+                result.add(series.get(id));
+                return true;
+            });
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        return result.stream();
+    }
+
+    @Override
+    public long count(final Filter filter) {
+        lock.readLock().lock();
+
+        try {
+            return match(filter.optimize()).cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean delete(final Series s) {
+        lock.writeLock().lock();
+
+        try {
+            final Integer id = ids.remove(s);
+
+            if (id == null) {
+                return false;
+            }
+
+            all.remove(id);
+            series.set(id, null);
+            removePosting(keys, s.getKey(), id);
+
+            for (final Map.Entry<String, String> e : s.getTags().entrySet()) {
+                final TagIndex tag = tags.get(e.getKey());
+                tag.any.remove(id);
+
+                if (e.getValue() != null) {
+                    removePosting(tag.values, e.getValue(), id);
+                }
+
+                if (tag.any.isEmpty()) {
+                    tags.remove(e.getKey());
+                }
+            }
+
+            if (freeSize == free.length) {
+                free = Arrays.copyOf(free, freeSize * 2);
+            }
+
+            free[freeSize++] = id;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Number of stored series.
+     */
+    int size() {
+        lock.readLock().lock();
+
+        try {
+            return ids.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void add(final Series s) {
+        if (ids.containsKey(s)) {
+            return;
+        }
+
+        final int id;
+
+        if (freeSize > 0) {
+            id = free[--freeSize];
+            series.set(id, s);
+        } else {
+            id = series.size();
+            series.add(s);
+        }
+
+        ids.put(s, id);
+        all.add(id);
+
+        if (s.getKey() != null) {
+            keys.computeIfAbsent(s.getKey(), k -> new SeriesBitmap()).add(id);
+        }
+
+        for (final Map.Entry<String, String> e : s.getTags().entrySet()) {
+            final TagIndex tag = tags.computeIfAbsent(e.getKey(), k -> new TagIndex());
+            tag.any.add(id);
+
+            if (e.getValue() != null) {
+                tag.values.computeIfAbsent(e.getValue(), k -> new SeriesBitmap()).add(id);
+            }
+        }
+    }
+
+    private static void removePosting(
+        final Map<String, SeriesBitmap> postings, final String value, final int id
+    ) {
+        if (value == null) {
+            return;
+        }
+
+        final SeriesBitmap posting = postings.get(value);
+
+        if (posting == null) {
+            return;
+        }
+
+        posting.remove(id);
+
+        if (posting.isEmpty()) {
+            postings.remove(value);
+        }
+    }
+
+    /**
+     * Ids of the series matching the given filter. Must be called while holding the read lock, and
+     * the result must not be modified since it might be a posting list.
+     */
+    private SeriesBitmap match(final Filter filter) {
+        return evaluate(filter).orElseGet(() -> {
+            final SeriesBitmap result = new SeriesBitmap();
+
+            all.forEach(id -> {
+                if (filter.apply(series.get(id))) {
+                    result.add(id);
+                }
+
+                return true;
+            });
+
+            return result;
+        });
+    }
+
+    /**
+     * Evaluate the given filter on the index, if every part of it can be.
+     */
+    private Optional<SeriesBitmap> evaluate(final Filter filter) {
+        if (filter instanceof TrueFilter) {
+            return Optional.of(all);
+        }
+
+        if (filter instanceof FalseFilter) {
+            return Optional.of(new SeriesBitmap());
+        }
+
+        if (filter instanceof MatchKeyFilter) {
+            return Optional.of(posting(keys.get(((MatchKeyFilter) filter).key())));
+        }
+
+        if (filter instanceof HasTagFilter) {
+            final TagIndex tag = tags.get(((HasTagFilter) filter).tag());
+            return Optional.of(tag == null ? new SeriesBitmap() : tag.any);
+        }
+
+        if (filter instanceof MatchTagFilter) {
+            final MatchTagFilter match = (MatchTagFilter) filter;
+            final TagIndex tag = tags.get(match.tag());
+            return Optional.of(posting(tag == null ? null : tag.values.get(match.value())));
+        }
+
+        if (filter instanceof StartsWithFilter) {
+            final StartsWithFilter startsWith = (StartsWithFilter) filter;
+            final String prefix = startsWith.value();
+
+            return Optional.of(union(startsWith.tag(), values -> values
+                .tailMap(prefix, true)
+                .entrySet()
+                .stream()
+                .takeWhile(e -> e.getKey().startsWith(prefix))));
+        }
+
+        if (filter instanceof RegexFilter) {
+            final RegexFilter regex = (RegexFilter) filter;
+            final Pattern pattern = Pattern.compile(regex.value());
+
+            return Optional.of(union(regex.tag(), values -> values
+                .entrySet()
+                .stream()
+                .filter(e -> pattern.matcher(e.getKey()).matches())));
+        }
+
+        if (filter instanceof NotFilter) {
+            return evaluate(((NotFilter) filter).filter()).map(
+                inner -> SeriesBitmap.andNot(all, inner));
+        }
+
+        if (filter instanceof OrFilter) {
+            SeriesBitmap result = new SeriesBitmap();
+
+            for (final Filter term : ((OrFilter) filter).terms()) {
+                final Optional<SeriesBitmap> ids = evaluate(term);
+
+                if (!ids.isPresent()) {
+                    return Optional.empty();
+                }
+
+                result = SeriesBitmap.or(result, ids.get());
+            }
+
+            return Optional.of(result);
+        }
+
+        if (filter instanceof AndFilter) {
+            final List<SeriesBitmap> terms = new ArrayList<>();
+
+            for (final Filter term : ((AndFilter) filter).terms()) {
+                final Optional<SeriesBitmap> ids = evaluate(term);
+
+                if (!ids.isPresent()) {
+                    return Optional.empty();
+                }
+
+                terms.add(ids.get());
+            }
+
+            /* intersect the smallest posting lists first, so intermediate results stay small */
+            terms.sort(Comparator.comparingLong(SeriesBitmap::cardinality));
+
+            SeriesBitmap result = all;
+
+            for (final SeriesBitmap term : terms) {
+                if (result.isEmpty()) {
+                    break;
+                }
+
+                result = SeriesBitmap.and(result, term);
+            }
+
+            return Optional.of(result);
+        }
+
+        return Optional.empty();
+    }
+
+    private SeriesBitmap union(
+        final String tagName,
+        final Function<NavigableMap<String, SeriesBitmap>, Stream<Map.Entry<String, SeriesBitmap>>>
+            values
+    ) {
+        final TagIndex tag = tags.get(tagName);
+
+        if (tag == null) {
+            return new SeriesBitmap();
+        }
+
+        return values
+            .apply(tag.values)
+            .map(Map.Entry::getValue)
+            .reduce(new SeriesBitmap(), SeriesBitmap::or);
+    }
+
+    private static SeriesBitmap posting(final SeriesBitmap posting) {
+        return posting == null ? new SeriesBitmap() : posting;
+    }
+
+    private void load(final Path path) throws IOException {
+        if (!Files.exists(path)) {
+            log.info("No metadata snapshot at {}, starting empty", path);
+            return;
+        }
+
+        int count = 0;
+
+        try (DataInputStream in = new DataInputStream(
+            new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Not a metadata snapshot: " + path);
+            }
+
+            count = in.readInt();
+
+            lock.writeLock().lock();
+
+            try {
+                for (int i = 0; i < count; i++) {
+                    final String key = in.readBoolean() ? in.readUTF() : null;
+                    add(Series.of(key, readMap(in), readMap(in)));
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        log.info("Loaded {} series from metadata snapshot at {}", count, path);
+    }
+
+    private void save(final Path path) throws IOException {
+        final Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+
+        lock.readLock().lock();
+
+        try (DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(ids.size());
+
+            for (final Series s : ids.keySet()) {
+                out.writeBoolean(s.getKey() != null);
+
+                if (s.getKey() != null) {
+                    out.writeUTF(s.getKey());
+                }
+
+                writeMap(out, s.getTags());
+                writeMap(out, s.getResource());
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+        log.info("Wrote metadata snapshot to {}", path);
+    }
+
+    private static SortedMap<String, String> readMap(final DataInputStream in)
+        throws IOException {
+        final int size = in.readInt();
+        final SortedMap<String, String> map = new TreeMap<>();
+
+        for (int i = 0; i < size; i++) {
+            final String key = in.readUTF();
+            map.put(key, in.readBoolean() ? in.readUTF() : null);
+        }
+
+        return map;
+    }
+
+    private static void writeMap(final DataOutputStream out, final Map<String, String> map)
+        throws IOException {
+        out.writeInt(map.size());
+
+        for (final Map.Entry<String, String> e : map.entrySet()) {
+            out.writeUTF(e.getKey());
+            out.writeBoolean(e.getValue() != null);
+
+            if (e.getValue() != null) {
+                out.writeUTF(e.getValue());
+            }
+        }
+    }
+
+    private static final class TagIndex {
+        /* every series with the tag, regardless of its value */
+        private final SeriesBitmap any = new SeriesBitmap();
+        private final NavigableMap<String, SeriesBitmap> values = new TreeMap<>();
+    }
+
+    @Override
+    public String toString() {
+        return "IndexedStorage(snapshot=" + snapshot + ")";
+    }
+}
@@ -48,17 +48,16 @@ import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import javax.inject.Inject;
-import javax.inject.Named;
 
 @MemoryScope
 public class MemoryBackend implements MetadataBackend {
     private final AsyncFramework async;
     private final Groups groups;
-    private final Set<Series> storage;
+    private final MetadataStorage storage;
 
     @Inject
     public MemoryBackend(
-        final AsyncFramework async, final Groups groups, @Named("storage") final Set<Series> storage
+        final AsyncFramework async, final Groups groups, final MetadataStorage storage
     ) {
         this.async = async;
         this.groups = groups;
@@ -82,7 +81,7 @@ public class MemoryBackend implements MetadataBackend {
 
     @Override
     public AsyncFuture<WriteMetadata> write(final WriteMetadata.Request request) {
-        this.storage.add(request.getSeries());
+        this.storage.write(request.getSeries());
         return async.resolved(new WriteMetadata());
     }
 
@@ -159,13 +158,15 @@ public class MemoryBackend implements MetadataBackend {
     @Override
     public AsyncFuture<CountSeries> countSeries(final CountSeries.Request request) {
         return async.resolved(
-            new CountSeries(ImmutableList.of(), lookupFilter(request.getFilter()).count(), false));
+            new CountSeries(ImmutableList.of(), storage.count(request.getFilter()), false));
     }
 
     @Override
     public AsyncFuture<DeleteSeries> deleteSeries(final DeleteSeries.Request request) {
         final int deletes = (int) lookup(request.getFilter(), request.getLimit())
-            .map(storage::remove)
+            .collect(Collectors.toList())
+            .stream()
+            .map(storage::delete)
             .filter(b -> b)
             .count();
 
@@ -188,13 +189,8 @@ public class MemoryBackend implements MetadataBackend {
             .onFinished(observer::end);
     }
 
-    private Stream<Series> lookupFilter(final Filter filter) {
-        return storage.stream().filter(filter::apply);
-    }
-
     private Stream<Series> lookup(final Filter filter, final OptionalLimit limit) {
-        final Stream<Series> series = lookupFilter(filter);
-        return limit.asLong().map(series::limit).orElse(series);
+        return storage.find(filter, limit);
     }
 
     public String toString() {
@@ -32,16 +32,19 @@ import com.spotify.heroic.common.Groups;
 import com.spotify.heroic.common.ModuleId;
 import com.spotify.heroic.common.Series;
 import com.spotify.heroic.dagger.PrimaryComponent;
+import com.spotify.heroic.lifecycle.LifeCycle;
+import com.spotify.heroic.lifecycle.LifeCycleManager;
+import com.spotify.heroic.lifecycle.LifeCycles;
 import com.spotify.heroic.metadata.MetadataModule;
 import dagger.Component;
 import dagger.Module;
 import dagger.Provides;
+import eu.toolchain.async.AsyncFramework;
+import java.nio.file.Path;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Optional;
-import java.util.Set;
 import java.util.concurrent.ConcurrentSkipListSet;
-import javax.inject.Named;
 
 @ModuleId("memory")
 public final class MemoryMetadataModule implements MetadataModule, DynamicModuleId {
@@ -50,16 +53,26 @@ public final class MemoryMetadataModule implements MetadataModule, DynamicModule
     private final Optional<String> id;
     private final Groups groups;
     private final boolean synchronizedStorage;
+    private final boolean indexed;
+    private final Optional<Path> snapshotPath;
 
     @JsonCreator
     public MemoryMetadataModule(
         @JsonProperty("id") Optional<String> id,
         @JsonProperty("groups") Optional<Groups> groups,
-        @JsonProperty("synchronizedStorage") Optional<Boolean> synchronizedStorage
+        @JsonProperty("synchronizedStorage") Optional<Boolean> synchronizedStorage,
+        @JsonProperty("indexed") Optional<Boolean> indexed,
+        @JsonProperty("snapshotPath") Optional<Path> snapshotPath
     ) {
         this.id = id;
         this.groups = groups.orElseGet(Groups::empty).or(DEFAULT_GROUP);
         this.synchronizedStorage = synchronizedStorage.orElse(false);
+        this.indexed = indexed.orElse(false);
+        this.snapshotPath = snapshotPath;
+
+        if (snapshotPath.isPresent() && !this.indexed) {
+            throw new IllegalArgumentException("snapshotPath requires an indexed storage");
+        }
     }
 
     @Override
@@ -82,6 +95,9 @@ public final class MemoryMetadataModule implements MetadataModule, DynamicModule
     interface C extends Exposed {
         @Override
         MemoryBackend backend();
+
+        @Override
+        LifeCycle life();
     }
 
     @Module
@@ -94,13 +110,26 @@ public final class MemoryMetadataModule implements MetadataModule, DynamicModule
 
         @MemoryScope
         @Provides
-        @Named("storage")
-        public Set<Series> storage() {
+        public MetadataStorage storage(final AsyncFramework async) {
+            if (indexed) {
+                return new IndexedStorage(async, snapshotPath);
+            }
+
             if (synchronizedStorage) {
-                return Collections.synchronizedSet(new HashSet<>());
+                return new SetStorage(Collections.<Series>synchronizedSet(new HashSet<>()));
             } else {
-                return new ConcurrentSkipListSet<>();
+                return new SetStorage(new ConcurrentSkipListSet<>());
+            }
+        }
+
+        @MemoryScope
+        @Provides
+        public LifeCycle life(final LifeCycleManager manager, final MetadataStorage storage) {
+            if (storage instanceof LifeCycles) {
+                return manager.build((LifeCycles) storage);
             }
+
+            return LifeCycle.empty();
         }
     }
 
@@ -112,6 +141,8 @@ public final class MemoryMetadataModule implements MetadataModule, DynamicModule
         private Optional<String> id = empty();
         private Optional<Groups> groups = empty();
         private Optional<Boolean> synchronizedStorage = empty();
+        private Optional<Boolean> indexed = empty();
+        private Optional<Path> snapshotPath = empty();
 
         public Builder id(final String id) {
             checkNotNull(id, "id");
@@ -130,8 +161,20 @@ public final class MemoryMetadataModule implements MetadataModule, DynamicModule
             return this;
         }
 
+        public Builder indexed(final boolean indexed) {
+            this.indexed = of(indexed);
+            return this;
+        }
+
+        public Builder snapshotPath(final Path snapshotPath) {
+            checkNotNull(snapshotPath, "snapshotPath");
+            this.snapshotPath = of(snapshotPath);
+            return this;
+        }
+
         public MemoryMetadataModule build() {
-            return new MemoryMetadataModule(id, groups, synchronizedStorage);
+            return new MemoryMetadataModule(id, groups, synchronizedStorage, indexed,
+                snapshotPath);
         }
     }
 }
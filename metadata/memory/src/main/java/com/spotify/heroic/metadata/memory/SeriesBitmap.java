@@ -0,0 +1,527 @@
+/*
+ * Copyright (c) 2020 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.heroic.metadata.memory;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * A compressed set of series ids.
+ * <p>
+ * Ids are split into chunks of 2^16 by their upper half. A chunk stores the lower halves of its
+ * ids in a sorted array while it is sparse, and in a fixed-size bitmap once it is dense. This is
+ * the layout used by Roaring bitmaps, and keeps posting lists small both for rare tag values and
+ * for tags that nearly every series has.
+ * <p>
+ * Mutating methods are not thread-safe. The set operations build new bitmaps, and never modify or
+ * share the chunks of their arguments.
+ */
+final class SeriesBitmap {
+    /* largest array chunk, at which point it takes as much space as a bitmap chunk */
+    static final int ARRAY_MAX = 4096;
+    static final int WORDS = 1 << 16 >>> 6;
+
+    private char[] keys;
+    private Chunk[] chunks;
+    private int size;
+
+    SeriesBitmap() {
+        this(new char[4], new Chunk[4], 0);
+    }
+
+    private SeriesBitmap(final char[] keys, final Chunk[] chunks, final int size) {
+        this.keys = keys;
+        this.chunks = chunks;
+        this.size = size;
+    }
+
+    void add(final int id) {
+        final char high = (char) (id >>> 16);
+        final int index = Arrays.binarySearch(keys, 0, size, high);
+
+        if (index >= 0) {
+            chunks[index] = chunks[index].add((char) id);
+            return;
+        }
+
+        insert(-index - 1, high, new ArrayChunk().add((char) id));
+    }
+
+    void remove(final int id) {
+        final int index = Arrays.binarySearch(keys, 0, size, (char) (id >>> 16));
+
+        if (index < 0) {
+            return;
+        }
+
+        final Chunk chunk = chunks[index].remove((char) id);
+
+        if (chunk != null) {
+            chunks[index] = chunk;
+            return;
+        }
+
+        System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+        System.arraycopy(chunks, index + 1, chunks, index, size - index - 1);
+        chunks[--size] = null;
+    }
+
+    boolean contains(final int id) {
+        final int index = Arrays.binarySearch(keys, 0, size, (char) (id >>> 16));
+        return index >= 0 && chunks[index].contains((char) id);
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    long cardinality() {
+        long cardinality = 0;
+
+        for (int i = 0; i < size; i++) {
+            cardinality += chunks[i].cardinality();
+        }
+
+        return cardinality;
+    }
+
+    /**
+     * Call the consumer with every id in ascending order, until it returns {@code false}.
+     */
+    void forEach(final IntPredicate consumer) {
+        for (int i = 0; i < size; i++) {
+            if (!chunks[i].forEach(keys[i] << 16, consumer)) {
+                return;
+            }
+        }
+    }
+
+    static SeriesBitmap and(final SeriesBitmap a, final SeriesBitmap b) {
+        final SeriesBitmap result = new SeriesBitmap();
+
+        int i = 0;
+        int j = 0;
+
+        while (i < a.size && j < b.size) {
+            if (a.keys[i] < b.keys[j]) {
+                i++;
+            } else if (a.keys[i] > b.keys[j]) {
+                j++;
+            } else {
+                final Chunk chunk = a.chunks[i].and(b.chunks[j]);
+
+                if (chunk != null) {
+                    result.append(a.keys[i], chunk);
+                }
+
+                i++;
+                j++;
+            }
+        }
+
+        return result;
+    }
+
+    static SeriesBitmap or(final SeriesBitmap a, final SeriesBitmap b) {
+        final SeriesBitmap result = new SeriesBitmap();
+
+        int i = 0;
+        int j = 0;
+
+        while (i < a.size || j < b.size) {
+            if (j >= b.size || (i < a.size && a.keys[i] < b.keys[j])) {
+                result.append(a.keys[i], a.chunks[i].copy());
+                i++;
+            } else if (i >= a.size || a.keys[i] > b.keys[j]) {
+                result.append(b.keys[j], b.chunks[j].copy());
+                j++;
+            } else {
+                result.append(a.keys[i], a.chunks[i].or(b.chunks[j]));
+                i++;
+                j++;
+            }
+        }
+
+        return result;
+    }
+
+    static SeriesBitmap andNot(final SeriesBitmap a, final SeriesBitmap b) {
+        final SeriesBitmap result = new SeriesBitmap();
+
+        int j = 0;
+
+        for (int i = 0; i < a.size; i++) {
+            while (j < b.size && b.keys[j] < a.keys[i]) {
+                j++;
+            }
+
+            final Chunk chunk;
+
+            if (j < b.size && b.keys[j] == a.keys[i]) {
+                chunk = a.chunks[i].andNot(b.chunks[j]);
+            } else {
+                chunk = a.chunks[i].copy();
+            }
+
+            if (chunk != null) {
+                result.append(a.keys[i], chunk);
+            }
+        }
+
+        return result;
+    }
+
+    private void append(final char key, final Chunk chunk) {
+        insert(size, key, chunk);
+    }
+
+    private void insert(final int index, final char key, final Chunk chunk) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            chunks = Arrays.copyOf(chunks, size * 2);
+        }
+
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(chunks, index, chunks, index + 1, size - index);
+        keys[index] = key;
+        chunks[index] = chunk;
+        size++;
+    }
+
+    private abstract static class Chunk {
+        abstract int cardinality();
+
+        abstract boolean contains(char value);
+
+        /**
+         * Add the value, returning the chunk that should replace this one.
+         */
+        abstract Chunk add(char value);
+
+        /**
+         * Remove the value, returning the chunk that should replace this one or {@code null} if
+         * the chunk is empty.
+         */
+        abstract Chunk remove(char value);
+
+        abstract boolean forEach(int high, IntPredicate consumer);
+
+        abstract Chunk copy();
+
+        /**
+         * Copy of this chunk as bitmap words.
+         */
+        abstract long[] words();
+
+        Chunk and(final Chunk other) {
+            if (other instanceof ArrayChunk) {
+                return other.and(this);
+            }
+
+            final long[] words = words();
+            final long[] o = ((BitmapChunk) other).words;
+
+            for (int i = 0; i < WORDS; i++) {
+                words[i] &= o[i];
+            }
+
+            return fromWords(words);
+        }
+
+        Chunk or(final Chunk other) {
+            final long[] words = words();
+
+            if (other instanceof ArrayChunk) {
+                final ArrayChunk o = (ArrayChunk) other;
+
+                for (int i = 0; i < o.cardinality; i++) {
+                    words[o.values[i] >>> 6] |= 1L << o.values[i];
+                }
+            } else {
+                final long[] o = ((BitmapChunk) other).words;
+
+                for (int i = 0; i < WORDS; i++) {
+                    words[i] |= o[i];
+                }
+            }
+
+            return fromWords(words);
+        }
+
+        Chunk andNot(final Chunk other) {
+            final long[] words = words();
+
+            if (other instanceof ArrayChunk) {
+                final ArrayChunk o = (ArrayChunk) other;
+
+                for (int i = 0; i < o.cardinality; i++) {
+                    words[o.values[i] >>> 6] &= ~(1L << o.values[i]);
+                }
+            } else {
+                final long[] o = ((BitmapChunk) other).words;
+
+                for (int i = 0; i < WORDS; i++) {
+                    words[i] &= ~o[i];
+                }
+            }
+
+            return fromWords(words);
+        }
+
+        static Chunk fromWords(final long[] words) {
+            int cardinality = 0;
+
+            for (final long word : words) {
+                cardinality += Long.bitCount(word);
+            }
+
+            if (cardinality == 0) {
+                return null;
+            }
+
+            if (cardinality > ARRAY_MAX) {
+                return new BitmapChunk(words, cardinality);
+            }
+
+            final char[] values = new char[cardinality];
+            int n = 0;
+
+            for (int i = 0; i < WORDS; i++) {
+                long word = words[i];
+
+                while (word != 0) {
+                    values[n++] = (char) ((i << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+
+            return new ArrayChunk(values, cardinality);
+        }
+    }
+
+    private static final class ArrayChunk extends Chunk {
+        private char[] values;
+        private int cardinality;
+
+        private ArrayChunk() {
+            this(new char[4], 0);
+        }
+
+        private ArrayChunk(final char[] values, final int cardinality) {
+            this.values = values;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        boolean contains(final char value) {
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        @Override
+        Chunk add(final char value) {
+            final int index = Arrays.binarySearch(values, 0, cardinality, value);
+
+            if (index >= 0) {
+                return this;
+            }
+
+            if (cardinality == ARRAY_MAX) {
+                return new BitmapChunk(words(), cardinality).add(value);
+            }
+
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(cardinality * 2, ARRAY_MAX));
+            }
+
+            final int insert = -index - 1;
+            System.arraycopy(values, insert, values, insert + 1, cardinality - insert);
+            values[insert] = value;
+            cardinality++;
+            return this;
+        }
+
+        @Override
+        Chunk remove(final char value) {
+            final int index = Arrays.binarySearch(values, 0, cardinality, value);
+
+            if (index >= 0) {
+                System.arraycopy(values, index + 1, values, index, cardinality - index - 1);
+                cardinality--;
+            }
+
+            return cardinality == 0 ? null : this;
+        }
+
+        @Override
+        boolean forEach(final int high, final IntPredicate consumer) {
+            for (int i = 0; i < cardinality; i++) {
+                if (!consumer.test(high | values[i])) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        @Override
+        Chunk copy() {
+            return new ArrayChunk(Arrays.copyOf(values, cardinality), cardinality);
+        }
+
+        @Override
+        long[] words() {
+            final long[] words = new long[WORDS];
+
+            for (int i = 0; i < cardinality; i++) {
+                words[values[i] >>> 6] |= 1L << values[i];
+            }
+
+            return words;
+        }
+
+        @Override
+        Chunk and(final Chunk other) {
+            final char[] result = new char[Math.min(cardinality, other.cardinality())];
+            int n = 0;
+
+            if (other instanceof ArrayChunk) {
+                final ArrayChunk o = (ArrayChunk) other;
+                int i = 0;
+                int j = 0;
+
+                while (i < cardinality && j < o.cardinality) {
+                    if (values[i] < o.values[j]) {
+                        i++;
+                    } else if (values[i] > o.values[j]) {
+                        j++;
+                    } else {
+                        result[n++] = values[i];
+                        i++;
+                        j++;
+                    }
+                }
+            } else {
+                for (int i = 0; i < cardinality; i++) {
+                    if (other.contains(values[i])) {
+                        result[n++] = values[i];
+                    }
+                }
+            }
+
+            return n == 0 ? null : new ArrayChunk(result, n);
+        }
+
+        @Override
+        Chunk andNot(final Chunk other) {
+            final char[] result = new char[cardinality];
+            int n = 0;
+
+            for (int i = 0; i < cardinality; i++) {
+                if (!other.contains(values[i])) {
+                    result[n++] = values[i];
+                }
+            }
+
+            return n == 0 ? null : new ArrayChunk(result, n);
+        }
+    }
+
+    private static final class BitmapChunk extends Chunk {
+        private final long[] words;
+        private int cardinality;
+
+        private BitmapChunk(final long[] words, final int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        boolean contains(final char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        Chunk add(final char value) {
+            final long before = words[value >>> 6];
+            words[value >>> 6] = before | (1L << value);
+
+            if (before != words[value >>> 6]) {
+                cardinality++;
+            }
+
+            return this;
+        }
+
+        @Override
+        Chunk remove(final char value) {
+            final long before = words[value >>> 6];
+            words[value >>> 6] = before & ~(1L << value);
+
+            if (before != words[value >>> 6]) {
+                cardinality--;
+            }
+
+            if (cardinality <= ARRAY_MAX) {
+                return fromWords(words);
+            }
+
+            return this;
+        }
+
+        @Override
+        boolean forEach(final int high, final IntPredicate consumer) {
+            for (int i = 0; i < WORDS; i++) {
+                long word = words[i];
+
+                while (word != 0) {
+                    if (!consumer.test(high | (i << 6) + Long.numberOfTrailingZeros(word))) {
+                        return false;
+                    }
+
+                    word &= word - 1;
+                }
+            }
+
+            return true;
+        }
+
+        @Override
+        Chunk copy() {
+            return new BitmapChunk(words.clone(), cardinality);
+        }
+
+        @Override
+        long[] words() {
+            return words.clone();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2020 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.heroic.metadata.memory;
+
+import com.spotify.heroic.common.OptionalLimit;
+import com.spotify.heroic.common.Series;
+import com.spotify.heroic.filter.Filter;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Stores series in a plain set, and answers every lookup by applying the filter to all of them.
+ */
+public class SetStorage implements MetadataStorage {
+    private final Set<Series> storage;
+
+    public SetStorage(final Set<Series> storage) {
+        this.storage = storage;
+    }
+
+    @Override
+    public void write(final Series series) {
+        storage.add(series);
+    }
+
+    @Override
+    public Stream<Series> find(final Filter filter, final OptionalLimit limit) {
+        final Stream<Series> series = storage.stream().filter(filter::apply);
+        return limit.asLong().map(series::limit).orElse(series);
+    }
+
+    @Override
+    public long count(final Filter filter) {
+        return storage.stream().filter(filter::apply).count();
+    }
+
+    @Override
+    public boolean delete(final Series series) {
+        return storage.remove(series);
+    }
+}
@@ -0,0 +1,11 @@
+package com.spotify.heroic.metadata.memory;
+
+import com.spotify.heroic.metadata.MetadataModule;
+import com.spotify.heroic.test.AbstractMetadataBackendIT;
+
+public class IndexedMemoryBackendIT extends AbstractMetadataBackendIT {
+    @Override
+    protected MetadataModule setupModule() throws Exception {
+        return MemoryMetadataModule.builder().indexed(true).build();
+    }
+}
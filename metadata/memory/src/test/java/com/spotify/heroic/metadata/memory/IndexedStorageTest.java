@@ -0,0 +1,188 @@
+package com.spotify.heroic.metadata.memory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.spotify.heroic.common.OptionalLimit;
+import com.spotify.heroic.common.Series;
+import com.spotify.heroic.filter.AndFilter;
+import com.spotify.heroic.filter.FalseFilter;
+import com.spotify.heroic.filter.Filter;
+import com.spotify.heroic.filter.HasTagFilter;
+import com.spotify.heroic.filter.MatchKeyFilter;
+import com.spotify.heroic.filter.MatchTagFilter;
+import com.spotify.heroic.filter.NotFilter;
+import com.spotify.heroic.filter.OrFilter;
+import com.spotify.heroic.filter.RegexFilter;
+import com.spotify.heroic.filter.StartsWithFilter;
+import com.spotify.heroic.filter.TrueFilter;
+import com.spotify.heroic.lifecycle.LifeCycleHook;
+import com.spotify.heroic.lifecycle.LifeCycleRegistry;
+import eu.toolchain.async.AsyncFramework;
+import eu.toolchain.async.AsyncFuture;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class IndexedStorageTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private AsyncFramework async;
+
+    private final List<Series> series = new ArrayList<>();
+
+    @Before
+    public void setup() {
+        async = mock(AsyncFramework.class);
+
+        when(async.call(any())).thenAnswer(invocation -> {
+            invocation.<Callable<?>>getArgument(0).call();
+            return mock(AsyncFuture.class);
+        });
+
+        for (int i = 0; i < 2000; i++) {
+            final ImmutableMap.Builder<String, String> tags = ImmutableMap.builder();
+            tags.put("host", "host-" + (i % 100));
+            tags.put("role", i % 3 == 0 ? "database" : "web");
+
+            if (i % 7 == 0) {
+                tags.put("canary", "true");
+            }
+
+            series.add(Series.of("key-" + (i % 5), tags.build(),
+                ImmutableMap.of("instance", String.valueOf(i))));
+        }
+    }
+
+    private IndexedStorage indexed(final Optional<Path> snapshot) {
+        final IndexedStorage storage = new IndexedStorage(async, snapshot);
+        series.forEach(storage::write);
+        return storage;
+    }
+
+    private static Set<Series> find(final MetadataStorage storage, final Filter filter) {
+        return storage.find(filter, OptionalLimit.empty()).collect(Collectors.toSet());
+    }
+
+    @Test
+    public void testMatchesScan() {
+        final IndexedStorage indexed = indexed(Optional.empty());
+        final SetStorage scan = new SetStorage(new HashSet<>(series));
+
+        final List<Filter> filters = ImmutableList.of(TrueFilter.create(), FalseFilter.create(),
+            MatchKeyFilter.create("key-1"), MatchKeyFilter.create("missing"),
+            MatchTagFilter.create("role", "web"), MatchTagFilter.create("missing", "web"),
+            HasTagFilter.create("canary"), StartsWithFilter.create("host", "host-1"),
+            RegexFilter.create("host", "host-[2-3]0"),
+            NotFilter.create(HasTagFilter.create("canary")),
+            AndFilter.create(ImmutableList.of(MatchKeyFilter.create("key-2"),
+                MatchTagFilter.create("role", "database"),
+                NotFilter.create(StartsWithFilter.create("host", "host-4")))),
+            OrFilter.create(ImmutableList.of(MatchTagFilter.create("host", "host-1"),
+                AndFilter.create(ImmutableList.of(HasTagFilter.create("canary"),
+                    MatchKeyFilter.create("key-3"))))));
+
+        for (final Filter filter : filters) {
+            final Set<Series> expected = find(scan, filter);
+            assertEquals(filter.toString(), expected, find(indexed, filter));
+            assertEquals(filter.toString(), expected.size(), indexed.count(filter));
+        }
+    }
+
+    @Test
+    public void testLimit() {
+        final IndexedStorage indexed = indexed(Optional.empty());
+
+        assertEquals(10,
+            indexed.find(MatchKeyFilter.create("key-1"), OptionalLimit.of(10)).count());
+        assertEquals(400,
+            indexed.find(MatchKeyFilter.create("key-1"), OptionalLimit.empty()).count());
+    }
+
+    @Test
+    public void testDelete() {
+        final IndexedStorage indexed = indexed(Optional.empty());
+        final Filter canary = HasTagFilter.create("canary");
+
+        final List<Series> canaries = indexed
+            .find(canary, OptionalLimit.empty())
+            .collect(Collectors.toList());
+
+        for (final Series s : canaries) {
+            assertTrue(indexed.delete(s));
+            assertFalse(indexed.delete(s));
+        }
+
+        assertEquals(0, indexed.count(canary));
+        assertEquals(series.size() - canaries.size(), indexed.size());
+
+        /* ids of deleted series are reused */
+        final Series added = Series.of("key-new", ImmutableMap.of("role", "web"));
+        indexed.write(added);
+
+        assertEquals(ImmutableSet.of(added), find(indexed, MatchKeyFilter.create("key-new")));
+        assertEquals(series.size() - canaries.size() + 1, indexed.size());
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        final Path path = folder.getRoot().toPath().resolve("metadata.snapshot");
+
+        final IndexedStorage first = indexed(Optional.of(path));
+        first.write(Series.of("key-empty", ImmutableMap.of("empty", "")));
+
+        final Hooks hooks = new Hooks();
+        first.register(hooks);
+        hooks.stop.get();
+
+        assertTrue(Files.exists(path));
+
+        final IndexedStorage second = new IndexedStorage(async, Optional.of(path));
+        final Hooks secondHooks = new Hooks();
+        second.register(secondHooks);
+        secondHooks.start.get();
+
+        assertEquals(first.size(), second.size());
+        assertEquals(find(first, TrueFilter.create()), find(second, TrueFilter.create()));
+        assertEquals(find(first, MatchTagFilter.create("role", "web")),
+            find(second, MatchTagFilter.create("role", "web")));
+    }
+
+    private static class Hooks implements LifeCycleRegistry {
+        private LifeCycleHook<AsyncFuture<Void>> start;
+        private LifeCycleHook<AsyncFuture<Void>> stop;
+
+        @Override
+        public void start(final LifeCycleHook<AsyncFuture<Void>> starter) {
+            this.start = starter;
+        }
+
+        @Override
+        public void stop(final LifeCycleHook<AsyncFuture<Void>> stopper) {
+            this.stop = stopper;
+        }
+
+        @Override
+        public LifeCycleRegistry scoped(final String id) {
+            return this;
+        }
+    }
+}
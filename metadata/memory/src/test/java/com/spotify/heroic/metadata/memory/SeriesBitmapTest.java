@@ -0,0 +1,132 @@
+package com.spotify.heroic.metadata.memory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import org.junit.Test;
+
+public class SeriesBitmapTest {
+    private static SeriesBitmap bitmap(final Iterable<Integer> ids) {
+        final SeriesBitmap bitmap = new SeriesBitmap();
+
+        for (final int id : ids) {
+            bitmap.add(id);
+        }
+
+        return bitmap;
+    }
+
+    private static List<Integer> ids(final SeriesBitmap bitmap) {
+        final List<Integer> ids = new ArrayList<>();
+
+        bitmap.forEach(id -> {
+            ids.add(id);
+            return true;
+        });
+
+        return ids;
+    }
+
+    /**
+     * Random ids that are sparse in some chunks and dense in others, so that both chunk types and
+     * the conversions between them are exercised.
+     */
+    private static TreeSet<Integer> random(final Random random, final int count) {
+        final TreeSet<Integer> ids = new TreeSet<>();
+
+        for (int i = 0; i < count; i++) {
+            final int chunk = random.nextInt(4);
+            final int range = chunk == 0 ? 1 << 16 : 1 << 12 + chunk;
+            ids.add((chunk << 16) + random.nextInt(range));
+        }
+
+        return ids;
+    }
+
+    @Test
+    public void testAddRemove() {
+        final Random random = new Random(0);
+        final TreeSet<Integer> expected = random(random, 20000);
+        final SeriesBitmap bitmap = bitmap(expected);
+
+        assertEquals(new ArrayList<>(expected), ids(bitmap));
+        assertEquals(expected.size(), bitmap.cardinality());
+
+        for (int i = 0; i < 15000; i++) {
+            final int id = expected.first() + random.nextInt(4 << 16);
+            expected.remove(id);
+            bitmap.remove(id);
+        }
+
+        assertEquals(new ArrayList<>(expected), ids(bitmap));
+        assertEquals(expected.size(), bitmap.cardinality());
+
+        for (final int id : new ArrayList<>(expected)) {
+            assertTrue(bitmap.contains(id));
+            bitmap.remove(id);
+            assertFalse(bitmap.contains(id));
+        }
+
+        assertTrue(bitmap.isEmpty());
+    }
+
+    @Test
+    public void testSetOperations() {
+        final Random random = new Random(1);
+
+        for (int round = 0; round < 10; round++) {
+            final TreeSet<Integer> a = random(random, random.nextInt(20000));
+            final TreeSet<Integer> b = random(random, random.nextInt(20000));
+
+            final SeriesBitmap x = bitmap(a);
+            final SeriesBitmap y = bitmap(b);
+
+            final TreeSet<Integer> and = new TreeSet<>(a);
+            and.retainAll(b);
+            final TreeSet<Integer> or = new TreeSet<>(a);
+            or.addAll(b);
+            final TreeSet<Integer> andNot = new TreeSet<>(a);
+            andNot.removeAll(b);
+
+            assertEquals(new ArrayList<>(and), ids(SeriesBitmap.and(x, y)));
+            assertEquals(new ArrayList<>(or), ids(SeriesBitmap.or(x, y)));
+            assertEquals(new ArrayList<>(andNot), ids(SeriesBitmap.andNot(x, y)));
+            assertEquals(or.size(), SeriesBitmap.or(x, y).cardinality());
+
+            /* arguments are left untouched */
+            assertEquals(new ArrayList<>(a), ids(x));
+            assertEquals(new ArrayList<>(b), ids(y));
+        }
+    }
+
+    @Test
+    public void testResultsDoNotShareChunks() {
+        final SeriesBitmap a = bitmap(List.of(1, 2, 3));
+        final SeriesBitmap b = bitmap(List.of(1 << 16));
+
+        final SeriesBitmap or = SeriesBitmap.or(a, b);
+        or.add(4);
+        or.remove(1);
+
+        assertEquals(List.of(1, 2, 3), ids(a));
+        assertEquals(List.of(2, 3, 4, 1 << 16), ids(or));
+    }
+
+    @Test
+    public void testForEachStops() {
+        final SeriesBitmap bitmap = bitmap(List.of(1, 2, 3, 1 << 16));
+        final List<Integer> seen = new ArrayList<>();
+
+        bitmap.forEach(id -> {
+            seen.add(id);
+            return seen.size() < 2;
+        });
+
+        assertEquals(List.of(1, 2), seen);
+    }
+}
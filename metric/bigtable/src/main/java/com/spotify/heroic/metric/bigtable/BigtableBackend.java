@@ -30,8 +30,10 @@ import com.google.cloud.bigtable.grpc.scanner.FlatRow;
 import com.google.cloud.bigtable.util.RowKeyUtil;
 import com.google.common.base.Function;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.Lists;
 import com.google.protobuf.ByteString;
+import com.spotify.heroic.async.AsyncObserver;
 import com.spotify.heroic.common.DateRange;
 import com.spotify.heroic.common.Groups;
 import com.spotify.heroic.common.RequestTimer;
@@ -54,17 +56,22 @@ import com.spotify.heroic.metric.WriteMetric;
 import com.spotify.heroic.metric.bigtable.api.BigtableDataClient;
 import com.spotify.heroic.metric.bigtable.api.BigtableTableAdminClient;
 import com.spotify.heroic.metric.bigtable.api.ColumnFamily;
+import com.spotify.heroic.metric.bigtable.api.LatestCellValueColumn;
 import com.spotify.heroic.metric.bigtable.api.Mutations;
+import com.spotify.heroic.metric.bigtable.api.ReadModifyWriteRules;
 import com.spotify.heroic.metric.bigtable.api.ReadRowsRequest;
 import com.spotify.heroic.metric.bigtable.api.RowFilter;
 import com.spotify.heroic.metric.bigtable.api.RowRange;
 import com.spotify.heroic.metric.bigtable.api.Table;
 import com.spotify.heroic.metrics.Meter;
+import com.spotify.heroic.scheduler.Scheduler;
 import com.spotify.heroic.statistics.MetricBackendReporter;
+import com.spotify.heroic.time.Clock;
 import com.spotify.heroic.tracing.EndSpanFutureReporter;
 import eu.toolchain.async.AsyncFramework;
 import eu.toolchain.async.AsyncFuture;
 import eu.toolchain.async.Managed;
+import eu.toolchain.async.ResolvableFuture;
 import eu.toolchain.async.RetryPolicy;
 import eu.toolchain.async.RetryResult;
 import eu.toolchain.serializer.Serializer;
@@ -78,12 +85,21 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Optional;
 import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
@@ -101,6 +117,8 @@ public class BigtableBackend extends AbstractMetricBackend implements LifeCycles
     public static final int MAX_KEY_ROW_SIZE = 4000;
     /* maximum number of cells supported for each batch mutation */
     public static final int MAX_BATCH_SIZE = 10000;
+    /* maximum number of row ranges read by a single request */
+    public static final int MAX_ROW_RANGES_PER_READ = 1000;
 
     public static final QueryTrace.Identifier FETCH_SEGMENT =
         QueryTrace.identifier(BigtableBackend.class, "fetch_segment");
@@ -109,8 +127,15 @@ public class BigtableBackend extends AbstractMetricBackend implements LifeCycles
 
     public static final String POINTS = "points";
     public static final String EVENTS = "events";
+    public static final String BLOCKS = "blocks";
+    public static final String COMPACTION = "compaction";
     public static final long PERIOD = 0x100_000_000L;
 
+    /* row which holds the progress of background compaction, shared by all nodes */
+    static final ByteString COMPACTION_ROW = ByteString.copyFromUtf8("heroic-compaction");
+    /* column with the base of the last period which was compacted without errors */
+    static final ByteString COMPACTED_BASE = ByteString.copyFromUtf8("compacted-base");
+
     private final AsyncFramework async;
     private final SerializerFramework serializer;
     private final RowKeySerializer rowKeySerializer;
@@ -121,6 +146,10 @@ public class BigtableBackend extends AbstractMetricBackend implements LifeCycles
     private final boolean configure;
     private final MetricBackendReporter reporter;
     private final ObjectMapper mapper;
+    private final BigtableCompactionOptions compaction;
+    private final BigtableCompactor compactor;
+    private final Scheduler scheduler;
+    private final Clock clock;
     private final Tracer tracer = Tracing.getTracer();
 
     private static final TypeReference<Map<String, String>> PAYLOAD_TYPE =
@@ -129,6 +158,9 @@ public class BigtableBackend extends AbstractMetricBackend implements LifeCycles
 
     private final Meter written = new Meter();
 
+    /* base of the last period which is known to have been compacted in the background */
+    private final AtomicLong compactedBase = new AtomicLong(-1L);
+
     @Inject
     public BigtableBackend(
         final AsyncFramework async,
@@ -139,7 +171,10 @@ public class BigtableBackend extends AbstractMetricBackend implements LifeCycles
         @Named("table") final String table,
         @Named("configure") final boolean configure,
         MetricBackendReporter reporter,
-        @Named("application/json") ObjectMapper mapper
+        @Named("application/json") ObjectMapper mapper,
+        final BigtableCompactionOptions compaction,
+        final Scheduler scheduler,
+        final Clock clock
     ) {
         super(async);
         this.async = async;
@@ -152,6 +187,10 @@ public class BigtableBackend extends AbstractMetricBackend implements LifeCycles
         this.configure = configure;
         this.reporter = reporter;
         this.mapper = mapper;
+        this.compaction = compaction;
+        this.compactor = new BigtableCompactor(async, rowKeySerializer, table, compaction);
+        this.scheduler = scheduler;
+        this.clock = clock;
     }
 
     @Override
@@ -187,6 +226,20 @@ public class BigtableBackend extends AbstractMetricBackend implements LifeCycles
 
             waitUntilColumnFamily(admin, table, EVENTS).get();
 
+            table.getColumnFamily(BLOCKS).orElseGet(() -> {
+                log.info("Creating missing column family: " + BLOCKS);
+                return admin.createColumnFamily(table, BLOCKS);
+            });
+
+            waitUntilColumnFamily(admin, table, BLOCKS).get();
+
+            table.getColumnFamily(COMPACTION).orElseGet(() -> {
+                log.info("Creating missing column family: " + COMPACTION);
+                return admin.createColumnFamily(table, COMPACTION);
+            });
+
+            waitUntilColumnFamily(admin, table, COMPACTION).get();
+
             return null;
         });
     }
@@ -286,6 +339,57 @@ public class BigtableBackend extends AbstractMetricBackend implements LifeCycles
         });
     }
 
+    /**
+     * Fetch points of many series with a single read per period, instead of one per series.
+     * <p>
+     * All series share the same columns in the row of each period, so the row ranges of every
+     * series in a period are read by one request with a shared filter. Rows are returned in key
+     * order, and matched back to their series by the minimal row key that prefixes them.
+     */
+    @Override
+    public AsyncFuture<FetchData.Result> fetchMany(
+        final FetchData.BatchRequest request,
+        final FetchQuotaWatcher watcher,
+        final BiConsumer<Series, MetricReadResult> metricsConsumer,
+        final Span parentSpan
+    ) {
+        if (request.getType() != MetricType.POINT) {
+            return super.fetchMany(request, watcher, metricsConsumer, parentSpan);
+        }
+
+        return connection.doto(c -> {
+            if (!watcher.mayReadData()) {
+                throw new IllegalArgumentException("query violated data limit");
+            }
+
+            final Map<Long, List<SeriesQuery>> periods = new TreeMap<>();
+
+            for (final Series series : request.getSeries()) {
+                for (final PreparedQuery p : pointsRanges(request.request(series))) {
+                    periods
+                        .computeIfAbsent(p.base, base -> new ArrayList<>())
+                        .add(new SeriesQuery(series, p));
+                }
+            }
+
+            return fetchPeriods(watcher, periods, c, metricsConsumer, parentSpan);
+        });
+    }
+
+    /**
+     * Compact the sealed rows of all series in the given range into blocks.
+     * <p>
+     * Rows are sealed once their period ended more than the configured seal delay ago.
+     */
+    @Override
+    public AsyncFuture<Long> compact(final DateRange range) {
+        final long sealedBefore =
+            clock.currentTimeMillis() - compaction.getSealDelay().toMilliseconds();
+
+        return connection.doto(
+            c -> compactor.compactRange(c.getDataClient(), range, sealedBefore));
+    }
+
     @Override
     public Iterable<BackendEntry> listEntries() {
         return ImmutableList.of();
@@ -299,19 +403,168 @@ public class BigtableBackend extends AbstractMetricBackend implements LifeCycles
     }
 
     private AsyncFuture<Void> start() {
-        final AsyncFuture<Void> future = connection.start();
+        AsyncFuture<Void> future = connection.start();
+
+        if (configure) {
+            future = future.lazyTransform(v -> configure());
+        }
 
-        if (!configure) {
+        if (!compaction.isEnabled()) {
             return future;
         }
 
-        return future.lazyTransform(v -> configure());
+        return future.lazyTransform(v -> checkCompactionFamilies()).directTransform(v -> {
+            scheduler.periodically("bigtable-compaction",
+                compaction.getInterval().toMilliseconds(), TimeUnit.MILLISECONDS,
+                this::compactSealed);
+            return null;
+        });
+    }
+
+    /**
+     * Check that the column families which compaction writes to exist, since they are only created
+     * when the table is configured.
+     */
+    private AsyncFuture<Void> checkCompactionFamilies() {
+        return connection.doto(c -> async.call(() -> {
+            final Table table = c
+                .getTableAdminClient()
+                .getTable(this.table)
+                .orElseThrow(
+                    () -> new IllegalStateException("Table does not exist: " + this.table));
+
+            for (final String family : ImmutableList.of(BLOCKS, COMPACTION)) {
+                table.getColumnFamily(family).orElseThrow(() -> new IllegalStateException(
+                    "Column family required by compaction does not exist: " + family));
+            }
+
+            return null;
+        }));
     }
 
     private AsyncFuture<Void> stop() {
         return connection.stop();
     }
 
+    /**
+     * Compact the rows of the last period which has been sealed, unless it already was.
+     * <p>
+     * The progress is stored in the table, so that it is shared by all nodes and survives
+     * restarts. Every interval, a single node claims the compaction of a pending period by being
+     * the first to increment the claim counter of that interval. A period is only marked as
+     * compacted once all of its rows were compacted, otherwise it is retried in a later interval.
+     * <p>
+     * A claim does not exclude other compactions of the period, such as a scan which outlasts the
+     * interval or the compact task. These are safe since each row is rewritten conditionally, see
+     * {@link BigtableCompactor}.
+     */
+    void compactSealed() throws Exception {
+        if (!connection.isReady()) {
+            return;
+        }
+
+        final long now = clock.currentTimeMillis();
+        final long sealedBefore = now - compaction.getSealDelay().toMilliseconds();
+        final long lastSealedBase = base(sealedBefore) - PERIOD;
+
+        if (lastSealedBase < 0 || lastSealedBase <= compactedBase.get()) {
+            return;
+        }
+
+        final long slot = now / compaction.getInterval().toMilliseconds();
+
+        connection
+            .doto(c -> compactPeriod(c.getDataClient(), lastSealedBase, sealedBefore, slot))
+            .get();
+    }
+
+    private AsyncFuture<Void> compactPeriod(
+        final BigtableDataClient client, final long base, final long sealedBefore,
+        final long slot
+    ) {
+        final ByteString claim = ByteString.copyFromUtf8("claim-" + base + "-" + slot);
+
+        return readCompactedBase(client).lazyTransform(stored -> {
+            if (base <= stored) {
+                compactedBase.set(stored);
+                return async.resolved();
+            }
+
+            return claimCompaction(client, claim).lazyTransform(claims -> {
+                if (claims != 1L) {
+                    log.info("Compaction of period {} is claimed by another node", base);
+                    return async.resolved();
+                }
+
+                return compactor
+                    .compactRange(client, new DateRange(base, base), sealedBefore)
+                    .lazyTransform(compacted -> client
+                        .mutateRow(table, COMPACTION_ROW, Mutations
+                            .builder()
+                            .setCell(COMPACTION, COMPACTED_BASE, serializeLong(base))
+                            .build())
+                        .directTransform(v -> {
+                            compactedBase.set(base);
+                            log.info("Compacted {} row(s) of period {}", compacted, base);
+                            return null;
+                        }));
+            });
+        });
+    }
+
+    /**
+     * Read the base of the last period which was compacted, or -1 if none was.
+     */
+    private AsyncFuture<Long> readCompactedBase(final BigtableDataClient client) {
+        final ReadRowsRequest request = ReadRowsRequest
+            .builder()
+            .rowKey(COMPACTION_ROW)
+            .filter(RowFilter.chain(ImmutableList.of(RowFilter
+                .newColumnRangeBuilder(COMPACTION)
+                .startQualifierClosed(COMPACTED_BASE)
+                .endQualifierClosed(COMPACTED_BASE)
+                .build(), RowFilter.onlyLatestCell())))
+            .build();
+
+        return client.readRows(table, request).directTransform(rows -> {
+            if (rows.isEmpty() || rows.get(0).getCells().isEmpty()) {
+                return -1L;
+            }
+
+            return rows.get(0).getCells().get(0).getValue().asReadOnlyByteBuffer().getLong();
+        });
+    }
+
+    /**
+     * Increment the given claim counter.
+     *
+     * @return A future resolved with the value of the counter after it was incremented.
+     */
+    private AsyncFuture<Long> claimCompaction(
+        final BigtableDataClient client, final ByteString claim
+    ) {
+        return client
+            .readModifyWriteRow(table, COMPACTION_ROW,
+                ReadModifyWriteRules.builder().increment(COMPACTION, claim, 1L).build())
+            .directTransform(row -> {
+                /* only the incremented cell is returned */
+                final Iterator<LatestCellValueColumn> columns = row
+                    .getFamily(COMPACTION)
+                    .map(family -> family.latestCellValue().iterator())
+                    .orElseGet(Collections::emptyIterator);
+
+                if (!columns.hasNext()) {
+                    throw new IllegalStateException("Claim missing from response: " + claim);
+                }
+
+                return columns.next().getValue().asReadOnlyByteBuffer().getLong();
+            });
+    }
+
+    private static ByteString serializeLong(final long value) {
+        return ByteString.copyFrom(ByteBuffer.allocate(Long.BYTES).putLong(value).array());
+    }
+
     private AsyncFuture<WriteMetric> writeTyped(
         final Series series,
         final BigtableDataClient client,
@@ -458,6 +711,9 @@ public class BigtableBackend extends AbstractMetricBackend implements LifeCycles
 
         final List<AsyncFuture<FetchData.Result>> fetches = new ArrayList<>(prepared.size());
 
+        /* shared by all ranges, since the same resources show up in every period */
+        final ResourceCache resources = new ResourceCache(rowKeySerializer);
+
         for (final PreparedQuery p : prepared) {
             Span readRowsSpan = tracer.spanBuilderWithExplicitParent(
                 "bigtable.readRows", fetchBatchSpan).startSpan();
@@ -468,50 +724,55 @@ public class BigtableBackend extends AbstractMetricBackend implements LifeCycles
 
             QueryTrace.NamedWatch fs = QueryTrace.watch(FETCH_SEGMENT);
 
-            final AsyncFuture<List<FlatRow>> readRows;
-            try (Scope ignored = tracer.withSpan(fetchBatchSpan)) {
-                readRows =
-                    client
-                        .readRows(
-                            table,
-                            ReadRowsRequest.builder()
-                                .range(new RowRange(
-                                    Optional.of(p.rowKeyStart), Optional.of(p.rowKeyEnd)))
-                                .filter(
-                                    RowFilter.chain(
-                                        Arrays.asList(
-                                            RowFilter.newColumnRangeBuilder(p.columnFamily)
-                                                .startQualifierOpen(p.startQualifierOpen)
-                                                .endQualifierClosed(p.endQualifierClosed)
-                                                .build(),
-                                            RowFilter.onlyLatestCell())))
-                                .build())
-                        .onDone(new EndSpanFutureReporter(readRowsSpan));
-            }
-
             final AtomicBoolean foundResourceIdentifier = new AtomicBoolean(false);
-            fetches.add(readRows.directTransform(result -> {
-                readRowsSpan.putAttribute("rowsReturned", longAttributeValue(result.size()));
-                for (final FlatRow row : result) {
-                    SortedMap<String, String> resource = parseResourceFromRowKey(row.getRowKey());
+            final AtomicLong rowsReturned = new AtomicLong();
+            final AtomicLong decodedBytes = new AtomicLong();
+            final AtomicLong decodedPoints = new AtomicLong();
+
+            final ReadRowsRequest request = ReadRowsRequest
+                .builder()
+                .range(new RowRange(Optional.of(p.rowKeyStart), Optional.of(p.rowKeyEnd)))
+                .filter(p.filter())
+                .build();
+
+            final AsyncFuture<Void> readRows;
+            try (Scope ignored = tracer.withSpan(fetchBatchSpan)) {
+                readRows = readChunked(client, watcher, request, row -> {
+                    final SortedMap<String, String> resource =
+                        resources.get(p.rowKeyStart, row.getRowKey());
 
                     if (!foundResourceIdentifier.get() && resource.size() > 0) {
                         foundResourceIdentifier.set(true);
                     }
 
-                    watcher.readData(row.getCells().size());
+                    final MetricCollection mc;
 
-                    final List<Metric> metrics = Lists.transform(row.getCells(), transform);
-                    final MetricCollection mc = MetricCollection.build(type, metrics);
-                    final MetricReadResult readResult = new MetricReadResult(mc, resource);
+                    if (type == MetricType.POINT) {
+                        mc = p.deserializePoints(row.getCells());
+                    } else {
+                        mc = MetricCollection.build(type,
+                            Lists.transform(row.getCells(), transform));
+                    }
 
-                    metricsConsumer.accept(readResult);
-                }
+                    watcher.readData(mc.size());
 
+                    rowsReturned.incrementAndGet();
+                    decodedBytes.addAndGet(row.getRowKey().size() + cellBytes(row.getCells()));
+                    decodedPoints.addAndGet(mc.size());
+
+                    metricsConsumer.accept(new MetricReadResult(mc, resource));
+                    return mc.size();
+                }).onDone(new EndSpanFutureReporter(readRowsSpan));
+            }
+
+            fetches.add(readRows.directTransform(ignore -> {
+                readRowsSpan.putAttribute("rowsReturned", longAttributeValue(rowsReturned.get()));
                 readRowsSpan.putAttribute(
                     "containsResourceIdentifier", booleanAttributeValue(
                         foundResourceIdentifier.get()));
 
+                reporter.reportDecoded(decodedBytes.get(), decodedPoints.get());
+
                 return new FetchData.Result(fs.end());
             }));
         }
@@ -527,12 +788,215 @@ public class BigtableBackend extends AbstractMetricBackend implements LifeCycles
             });
     }
 
-    private SortedMap<String, String> parseResourceFromRowKey(final ByteString rowKey)
-        throws IOException {
-        return rowKeySerializer
-            .deserializeFull(ByteBuffer.wrap(rowKey.toByteArray()))
-            .getSeries()
-            .getResource();
+    private AsyncFuture<FetchData.Result> fetchPeriods(
+        final FetchQuotaWatcher watcher,
+        final Map<Long, List<SeriesQuery>> periods,
+        final BigtableConnection c,
+        final BiConsumer<Series, MetricReadResult> metricsConsumer,
+        final Span parentSpan
+    ) {
+        final BigtableDataClient client = c.getDataClient();
+
+        final Span fetchManySpan =
+            tracer.spanBuilderWithExplicitParent("bigtable.fetchMany", parentSpan).startSpan();
+        fetchManySpan.putAttribute("periods", longAttributeValue(periods.size()));
+
+        final List<AsyncFuture<FetchData.Result>> fetches = new ArrayList<>();
+        final ResourceCache resources = new ResourceCache(rowKeySerializer);
+
+        int rows = 0;
+
+        for (final List<SeriesQuery> period : periods.values()) {
+            period.sort(Comparator.comparing(q -> q.prepared.rowKeyStart,
+                ByteString.unsignedLexicographicalComparator()));
+
+            rows += period.size();
+
+            for (final List<SeriesQuery> queries : Lists.partition(period,
+                MAX_ROW_RANGES_PER_READ)) {
+                fetches.add(fetchRanges(watcher, queries, client, resources, metricsConsumer,
+                    fetchManySpan));
+            }
+        }
+
+        final int accessedRows = rows;
+
+        return async
+            .collect(fetches, FetchData.collectResult(FETCH))
+            .directTransform(result -> {
+                fetchManySpan.end();
+                watcher.accessedRows(accessedRows);
+                return result;
+            });
+    }
+
+    /**
+     * Read the rows of many series in the same period with a single request.
+     *
+     * @param queries Queries of the period, sorted by their row key.
+     */
+    private AsyncFuture<FetchData.Result> fetchRanges(
+        final FetchQuotaWatcher watcher,
+        final List<SeriesQuery> queries,
+        final BigtableDataClient client,
+        final ResourceCache resources,
+        final BiConsumer<Series, MetricReadResult> metricsConsumer,
+        final Span parentSpan
+    ) {
+        final NavigableMap<ByteString, SeriesQuery> byPrefix =
+            new TreeMap<>(ByteString.unsignedLexicographicalComparator());
+        final List<RowRange> ranges = new ArrayList<>(queries.size());
+
+        for (final SeriesQuery q : queries) {
+            byPrefix.put(q.prepared.rowKeyStart, q);
+            ranges.add(new RowRange(Optional.of(q.prepared.rowKeyStart),
+                Optional.of(q.prepared.rowKeyEnd)));
+        }
+
+        final Span readRowsSpan =
+            tracer.spanBuilderWithExplicitParent("bigtable.readRows", parentSpan).startSpan();
+        readRowsSpan.putAttribute("rowKeyBaseTimestamp",
+            longAttributeValue(queries.get(0).prepared.base));
+        readRowsSpan.putAttribute("rowRanges", longAttributeValue(ranges.size()));
+
+        final QueryTrace.NamedWatch fs = QueryTrace.watch(FETCH_SEGMENT);
+
+        final AtomicLong rowsReturned = new AtomicLong();
+        final AtomicLong decodedBytes = new AtomicLong();
+        final AtomicLong decodedPoints = new AtomicLong();
+
+        final ReadRowsRequest request = ReadRowsRequest
+            .builder()
+            .ranges(ranges)
+            .filter(queries.get(0).prepared.filter())
+            .build();
+
+        final AsyncFuture<Void> readRows;
+        try (Scope ignored = tracer.withSpan(parentSpan)) {
+            readRows = readChunked(client, watcher, request, row -> {
+                rowsReturned.incrementAndGet();
+
+                final Map.Entry<ByteString, SeriesQuery> entry =
+                    byPrefix.floorEntry(row.getRowKey());
+
+                if (entry == null || !row.getRowKey().startsWith(entry.getKey())) {
+                    log.warn("Row does not belong to any requested series: {}", row.getRowKey());
+                    return 0;
+                }
+
+                final SeriesQuery q = entry.getValue();
+                final SortedMap<String, String> resource =
+                    resources.get(q.prepared.rowKeyStart, row.getRowKey());
+                final MetricCollection mc = q.prepared.deserializePoints(row.getCells());
+
+                watcher.readData(mc.size());
+
+                decodedBytes.addAndGet(row.getRowKey().size() + cellBytes(row.getCells()));
+                decodedPoints.addAndGet(mc.size());
+
+                metricsConsumer.accept(q.series, new MetricReadResult(mc, resource));
+                return mc.size();
+            }).onDone(new EndSpanFutureReporter(readRowsSpan));
+        }
+
+        return readRows.directTransform(ignore -> {
+            readRowsSpan.putAttribute("rowsReturned", longAttributeValue(rowsReturned.get()));
+            reporter.reportDecoded(decodedBytes.get(), decodedPoints.get());
+            return new FetchData.Result(fs.end());
+        });
+    }
+
+    /**
+     * Read the rows of the given request as chunks acquired from the given watcher.
+     * <p>
+     * Rows are streamed rather than read all at once. Each row is decoded by the given reader,
+     * which hands over its metrics and returns how many metrics it decoded. Once a chunk worth of
+     * metrics has been handed over, the chunk is released and the next row is only read after
+     * another chunk has been acquired.
+     */
+    private AsyncFuture<Void> readChunked(
+        final BigtableDataClient client, final FetchQuotaWatcher watcher,
+        final ReadRowsRequest request, final RowReader reader
+    ) {
+        final ResolvableFuture<Void> future = async.future();
+
+        watcher.acquireChunk(() -> {
+            final ChunkedRowObserver observer = new ChunkedRowObserver(watcher, future, reader);
+
+            if (future.isDone()) {
+                observer.cancel();
+                return;
+            }
+
+            try {
+                client.readFlatRowsObserved(table, request).observe(observer);
+            } catch (final Exception e) {
+                observer.fail(e);
+            }
+        });
+
+        return future;
+    }
+
+    private static long cellBytes(final List<FlatRow.Cell> cells) {
+        long bytes = 0;
+
+        for (final FlatRow.Cell cell : cells) {
+            bytes += cell.getQualifier().size() + cell.getValue().size();
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Build a filter which matches the latest cells in the given range of point columns, and the
+     * blocks of the row which start at or before the given end offset.
+     */
+    static RowFilter pointsAndBlocks(final RowFilter pointsRange, final long endOffset) {
+        return RowFilter.interleave(ImmutableList.of(
+            RowFilter.chain(ImmutableList.of(pointsRange, RowFilter.onlyLatestCell())),
+            RowFilter.chain(ImmutableList.of(blocksRange(endOffset),
+                RowFilter.onlyLatestCell()))));
+    }
+
+    /**
+     * Build a filter which matches the blocks which start at or before the given end offset.
+     * <p>
+     * Blocks sort by their first offset, so blocks which start after the end of the fetched range
+     * are never read. Blocks which end before the start of the range can't be told apart by a
+     * qualifier range, and are skipped when they are merged.
+     */
+    static RowFilter.ColumnRange blocksRange(final long endOffset) {
+        return RowFilter
+            .newColumnRangeBuilder(BLOCKS)
+            .endQualifierClosed(PointBlocks.qualifier(Math.min(endOffset, PERIOD - 1), PERIOD - 1))
+            .build();
+    }
+
+    /**
+     * Partition the cells of a row into blocks and raw point cells, keeping their order.
+     */
+    static void partitionCells(
+        final List<FlatRow.Cell> cells, final List<FlatRow.Cell> blocks,
+        final List<FlatRow.Cell> points
+    ) {
+        for (final FlatRow.Cell cell : cells) {
+            if (BLOCKS.equals(cell.getFamily())) {
+                blocks.add(cell);
+            } else {
+                points.add(cell);
+            }
+        }
+    }
+
+    private static boolean hasBlocks(final List<FlatRow.Cell> cells) {
+        for (final FlatRow.Cell cell : cells) {
+            if (BLOCKS.equals(cell.getFamily())) {
+                return true;
+            }
+        }
+
+        return false;
     }
 
     static long base(long timestamp) {
@@ -572,7 +1036,8 @@ public class BigtableBackend extends AbstractMetricBackend implements LifeCycles
 
             bases.add(
                 new PreparedQuery(
-                    key, keyEnd, columnFamily, columnStart, columnEnd, deserializer, base));
+                    key, keyEnd, columnFamily, columnStart, columnEnd,
+                    modified.start() - base, modified.end() - base, deserializer, base));
         }
 
         return bases;
@@ -584,8 +1049,21 @@ public class BigtableBackend extends AbstractMetricBackend implements LifeCycles
         return ByteString.copyFrom(buffer.array());
     }
 
+    /**
+     * Read the value straight out of the cell, without copying it into a separate array first.
+     */
     static double deserializeValue(ByteString value) {
-        return Double.longBitsToDouble(ByteBuffer.wrap(value.toByteArray()).getLong());
+        // @formatter:off
+        final long bits = ((long) (value.byteAt(0) & 0xff) << 56) |
+                          ((long) (value.byteAt(1) & 0xff) << 48) |
+                          ((long) (value.byteAt(2) & 0xff) << 40) |
+                          ((long) (value.byteAt(3) & 0xff) << 32) |
+                          ((long) (value.byteAt(4) & 0xff) << 24) |
+                          ((long) (value.byteAt(5) & 0xff) << 16) |
+                          ((long) (value.byteAt(6) & 0xff) << 8) |
+                          ((long) (value.byteAt(7) & 0xff));
+        // @formatter:on
+        return Double.longBitsToDouble(bits);
     }
 
     /**
@@ -615,13 +1093,11 @@ public class BigtableBackend extends AbstractMetricBackend implements LifeCycles
     }
 
     static long deserializeOffset(ByteString value) {
-        final byte[] bytes = value.toByteArray();
-
         // @formatter:off
-        return ((long) (bytes[0] & 0xff) << 24) +
-               ((long) (bytes[1] & 0xff) << 16) +
-               ((long) (bytes[2] & 0xff) << 8) +
-               ((long) (bytes[3] & 0xff) << 0);
+        return ((long) (value.byteAt(0) & 0xff) << 24) +
+               ((long) (value.byteAt(1) & 0xff) << 16) +
+               ((long) (value.byteAt(2) & 0xff) << 8) +
+               ((long) (value.byteAt(3) & 0xff) << 0);
         // @formatter:on
     }
 
@@ -629,24 +1105,179 @@ public class BigtableBackend extends AbstractMetricBackend implements LifeCycles
         return "BigtableBackend(connection=" + this.connection + ")";
     }
 
+    /**
+     * Resources parsed from row keys, memoized by the part of the row key which follows the
+     * minimal (series and base) prefix that was queried for.
+     * <p>
+     * All rows for a series share the prefix, so only the first row of each resource has to be
+     * parsed.
+     */
+    /**
+     * Decodes a row and hands over its metrics, returning how many metrics it decoded.
+     */
+    @FunctionalInterface
+    private interface RowReader {
+        int read(FlatRow row) throws Exception;
+    }
+
+    /**
+     * Observes rows while holding a chunk acquired from a watcher, which must have been acquired
+     * before the first row is observed.
+     */
+    private final class ChunkedRowObserver implements AsyncObserver<FlatRow> {
+        private final FetchQuotaWatcher watcher;
+        private final ResolvableFuture<Void> future;
+        private final RowReader reader;
+
+        private volatile boolean held = true;
+        private int buffered = 0;
+
+        ChunkedRowObserver(
+            final FetchQuotaWatcher watcher, final ResolvableFuture<Void> future,
+            final RowReader reader
+        ) {
+            this.watcher = watcher;
+            this.future = future;
+            this.reader = reader;
+        }
+
+        @Override
+        public AsyncFuture<Void> observe(final FlatRow row) {
+            if (future.isDone()) {
+                return async.cancelled();
+            }
+
+            try {
+                buffered += reader.read(row);
+            } catch (final Exception e) {
+                return async.failed(e);
+            }
+
+            if (buffered < watcher.getChunkSize()) {
+                return async.resolved();
+            }
+
+            buffered = 0;
+            release();
+
+            final ResolvableFuture<Void> next = async.future();
+
+            watcher.acquireChunk(() -> {
+                held = true;
+
+                if (future.isDone()) {
+                    next.cancel();
+                } else {
+                    next.resolve(null);
+                }
+            });
+
+            return next;
+        }
+
+        @Override
+        public void cancel() {
+            release();
+            future.cancel();
+        }
+
+        @Override
+        public void fail(final Throwable cause) {
+            release();
+            future.fail(cause);
+        }
+
+        @Override
+        public void end() {
+            release();
+            future.resolve(null);
+        }
+
+        private void release() {
+            if (held) {
+                held = false;
+                watcher.releaseChunk();
+            }
+        }
+    }
+
+    static final class ResourceCache {
+        private final RowKeySerializer rowKeySerializer;
+        private final Map<ByteString, SortedMap<String, String>> resources =
+            new ConcurrentHashMap<>();
+
+        ResourceCache(final RowKeySerializer rowKeySerializer) {
+            this.rowKeySerializer = rowKeySerializer;
+        }
+
+        SortedMap<String, String> get(final ByteString prefix, final ByteString rowKey)
+            throws IOException {
+            if (!rowKey.startsWith(prefix)) {
+                return parse(rowKey);
+            }
+
+            /* substrings share the underlying bytes of the row key */
+            final ByteString suffix = rowKey.substring(prefix.size());
+
+            if (suffix.isEmpty()) {
+                return ImmutableSortedMap.of();
+            }
+
+            final SortedMap<String, String> cached = resources.get(suffix);
+
+            if (cached != null) {
+                return cached;
+            }
+
+            final SortedMap<String, String> resource = parse(rowKey);
+            resources.put(suffix, resource);
+            return resource;
+        }
+
+        int size() {
+            return resources.size();
+        }
+
+        private SortedMap<String, String> parse(final ByteString rowKey) throws IOException {
+            return rowKeySerializer
+                .deserializeFull(rowKey.asReadOnlyByteBuffer())
+                .getSeries()
+                .getResource();
+        }
+    }
+
+    private static final class SeriesQuery {
+        private final Series series;
+        private final PreparedQuery prepared;
+
+        private SeriesQuery(final Series series, final PreparedQuery prepared) {
+            this.series = series;
+            this.prepared = prepared;
+        }
+    }
+
     private static final class PreparedQuery {
         private final ByteString rowKeyStart;
         private final ByteString rowKeyEnd;
         private final String columnFamily;
         private final ByteString startQualifierOpen;
         private final ByteString endQualifierClosed;
+        private final long startOffset;
+        private final long endOffset;
         private final BiFunction<Long, ByteString, Metric> deserializer;
         private final long base;
 
         @java.beans.ConstructorProperties({ "rowKeyStart", "rowKeyEnd", "columnFamily",
                                             "startQualifierOpen", "endQualifierClosed",
-                                            "deserializer",
+                                            "startOffset", "endOffset", "deserializer",
                                             "base" })
         public PreparedQuery(final ByteString rowKeyStart,
                              final ByteString rowKeyEnd,
                              final String columnFamily,
                              final ByteString startQualifierOpen,
                              final ByteString endQualifierClosed,
+                             final long startOffset,
+                             final long endOffset,
                              final BiFunction<Long, ByteString, Metric> deserializer,
                              final long base) {
             this.rowKeyStart = rowKeyStart;
@@ -654,13 +1285,54 @@ public class BigtableBackend extends AbstractMetricBackend implements LifeCycles
             this.columnFamily = columnFamily;
             this.startQualifierOpen = startQualifierOpen;
             this.endQualifierClosed = endQualifierClosed;
+            this.startOffset = startOffset;
+            this.endOffset = endOffset;
             this.deserializer = deserializer;
             this.base = base;
         }
 
+        private RowFilter filter() {
+            final RowFilter range = RowFilter
+                .newColumnRangeBuilder(columnFamily)
+                .startQualifierOpen(startQualifierOpen)
+                .endQualifierClosed(endQualifierClosed)
+                .build();
+
+            if (!POINTS.equals(columnFamily)) {
+                return RowFilter.chain(Arrays.asList(range, RowFilter.onlyLatestCell()));
+            }
+
+            return pointsAndBlocks(range, endOffset);
+        }
+
         private Metric deserialize(final ByteString qualifier, final ByteString value) {
             final long timestamp = base + deserializeOffset(qualifier);
             return deserializer.apply(timestamp, value);
         }
+
+        /**
+         * Deserialize point cells straight into primitive columns, merging in the points of any
+         * blocks that the row has been compacted into.
+         */
+        private MetricCollection deserializePoints(final List<FlatRow.Cell> cells) {
+            if (hasBlocks(cells)) {
+                final List<FlatRow.Cell> blocks = new ArrayList<>();
+                final List<FlatRow.Cell> points = new ArrayList<>(cells.size());
+                partitionCells(cells, blocks, points);
+                return PointBlocks.merge(base, blocks, points, startOffset, endOffset);
+            }
+
+            final int size = cells.size();
+            final long[] timestamps = new long[size];
+            final double[] values = new double[size];
+
+            for (int i = 0; i < size; i++) {
+                final FlatRow.Cell cell = cells.get(i);
+                timestamps[i] = base + deserializeOffset(cell.getQualifier());
+                values[i] = deserializeValue(cell.getValue());
+            }
+
+            return MetricCollection.points(timestamps, values, size);
+        }
     }
 }
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2020 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.heroic.metric.bigtable;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.spotify.heroic.common.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Options for compacting sealed rows into compressed blocks of points.
+ */
+public class BigtableCompactionOptions {
+    public static final boolean DEFAULT_ENABLED = false;
+    public static final int DEFAULT_BLOCK_SIZE = 8192;
+    public static final Duration DEFAULT_SEAL_DELAY = Duration.of(1, TimeUnit.DAYS);
+    public static final Duration DEFAULT_INTERVAL = Duration.of(1, TimeUnit.HOURS);
+    public static final int DEFAULT_CONCURRENCY = 16;
+
+    /* compact sealed rows in the background */
+    private final boolean enabled;
+    /* maximum number of points in a single block */
+    private final int blockSize;
+    /* how long after the end of its period that a row is considered sealed */
+    private final Duration sealDelay;
+    /* how often to check for newly sealed rows */
+    private final Duration interval;
+    /* maximum number of rows compacted at the same time */
+    private final int concurrency;
+
+    public BigtableCompactionOptions() {
+        this(Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(),
+            Optional.empty());
+    }
+
+    @JsonCreator
+    public BigtableCompactionOptions(
+        @JsonProperty("enabled") Optional<Boolean> enabled,
+        @JsonProperty("blockSize") Optional<Integer> blockSize,
+        @JsonProperty("sealDelay") Optional<Duration> sealDelay,
+        @JsonProperty("interval") Optional<Duration> interval,
+        @JsonProperty("concurrency") Optional<Integer> concurrency
+    ) {
+        this.enabled = enabled.orElse(DEFAULT_ENABLED);
+        this.blockSize = blockSize.orElse(DEFAULT_BLOCK_SIZE);
+        this.sealDelay = sealDelay.orElse(DEFAULT_SEAL_DELAY);
+        this.interval = interval.orElse(DEFAULT_INTERVAL);
+        this.concurrency = concurrency.orElse(DEFAULT_CONCURRENCY);
+
+        if (this.blockSize < 1) {
+            throw new IllegalArgumentException("blockSize must be positive");
+        }
+
+        if (this.sealDelay.toMilliseconds() < 0) {
+            throw new IllegalArgumentException("sealDelay must not be negative");
+        }
+
+        if (this.interval.toMilliseconds() < 1) {
+            throw new IllegalArgumentException("interval must be positive");
+        }
+
+        if (this.concurrency < 1) {
+            throw new IllegalArgumentException("concurrency must be positive");
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    public Duration getSealDelay() {
+        return sealDelay;
+    }
+
+    public Duration getInterval() {
+        return interval;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+}
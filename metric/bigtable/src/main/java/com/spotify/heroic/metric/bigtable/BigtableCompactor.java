@@ -0,0 +1,356 @@
+/*
+ * Copyright (c) 2020 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.heroic.metric.bigtable;
+
+import com.google.cloud.bigtable.grpc.scanner.FlatRow;
+import com.google.common.collect.ImmutableList;
+import com.google.protobuf.ByteString;
+import com.spotify.heroic.async.AsyncObserver;
+import com.spotify.heroic.common.DateRange;
+import com.spotify.heroic.metric.MetricCollection;
+import com.spotify.heroic.metric.bigtable.api.BigtableDataClient;
+import com.spotify.heroic.metric.bigtable.api.Mutations;
+import com.spotify.heroic.metric.bigtable.api.ReadRowsRequest;
+import com.spotify.heroic.metric.bigtable.api.Row;
+import com.spotify.heroic.metric.bigtable.api.RowFilter;
+import eu.toolchain.async.AsyncFramework;
+import eu.toolchain.async.AsyncFuture;
+import eu.toolchain.async.ResolvableFuture;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compacts sealed rows into compressed blocks of points, see {@link PointBlocks}.
+ * <p>
+ * Compacting a row rewrites all of its points, from both raw cells and earlier blocks, as new
+ * blocks in a single mutation which also removes the earlier blocks. The raw cells which were
+ * read are then deleted by their cell timestamp, so that a point which is written while the row
+ * is compacted is kept as a raw cell. Reads merge blocks with raw cells, so a row is readable at
+ * every step, and a compaction which is interrupted is completed by compacting the row again.
+ * <p>
+ * A row might be compacted by more than one node at a time, for example by background compaction
+ * and the compact task. The blocks are only rewritten if no other compaction has rewritten them
+ * since the row was read, since the other compaction might have moved points that were written
+ * in between into its blocks and deleted their raw cells.
+ */
+class BigtableCompactor {
+    private static final Logger log = LoggerFactory.getLogger(BigtableCompactor.class);
+
+    /* cell timestamps are in microseconds, with millisecond granularity */
+    private static final long CELL_TIMESTAMP_GRANULARITY = 1000L;
+
+    private final AsyncFramework async;
+    private final RowKeySerializer rowKeySerializer;
+    private final String table;
+    private final BigtableCompactionOptions options;
+
+    BigtableCompactor(
+        final AsyncFramework async, final RowKeySerializer rowKeySerializer, final String table,
+        final BigtableCompactionOptions options
+    ) {
+        this.async = async;
+        this.rowKeySerializer = rowKeySerializer;
+        this.table = table;
+        this.options = options;
+    }
+
+    /**
+     * Compact every sealed row with raw cells, which belongs to a period that overlaps the given
+     * range.
+     * <p>
+     * This scans the entire table, since rows are ordered by series before their period.
+     *
+     * @param sealedBefore Only compact rows whose period ended before this timestamp.
+     * @return A future resolved with the number of compacted rows, or failed if any row could not
+     *     be compacted.
+     */
+    AsyncFuture<Long> compactRange(
+        final BigtableDataClient client, final DateRange range, final long sealedBefore
+    ) {
+        final ReadRowsRequest request = ReadRowsRequest
+            .builder()
+            .filter(RowFilter.chain(ImmutableList.of(
+                RowFilter.newColumnRangeBuilder(BigtableBackend.POINTS).build(),
+                RowFilter.cellsPerRowLimit(1), RowFilter.stripValue())))
+            .build();
+
+        final RangeCompaction compaction =
+            new RangeCompaction(client, BigtableBackend.base(range.start()), range.end(),
+                sealedBefore);
+
+        return async
+            .call(() -> {
+                client.readRowsObserved(table, request).observe(compaction);
+                return null;
+            })
+            .lazyTransform(v -> compaction.done);
+    }
+
+    /**
+     * Compact a single row.
+     *
+     * @return A future resolved with {@code true} if the row had raw cells which were compacted.
+     */
+    AsyncFuture<Boolean> compactRow(
+        final BigtableDataClient client, final ByteString rowKey, final long base
+    ) {
+        final ReadRowsRequest request = ReadRowsRequest
+            .builder()
+            .rowKey(rowKey)
+            .filter(BigtableBackend.pointsAndBlocks(
+                RowFilter.newColumnRangeBuilder(BigtableBackend.POINTS).build(),
+                BigtableBackend.PERIOD - 1))
+            .build();
+
+        return client.readRows(table, request).lazyTransform(rows -> {
+            final List<FlatRow.Cell> blocks = new ArrayList<>();
+            final List<FlatRow.Cell> cells = new ArrayList<>();
+
+            for (final FlatRow row : rows) {
+                BigtableBackend.partitionCells(row.getCells(), blocks, cells);
+            }
+
+            if (cells.isEmpty()) {
+                return async.resolved(false);
+            }
+
+            final MetricCollection.ColumnarPointCollection points =
+                PointBlocks.merge(base, blocks, cells, -1L, BigtableBackend.PERIOD - 1);
+
+            return client
+                .checkAndMutateRow(table, rowKey, blocksRewrittenSince(blocks),
+                    Mutations.builder().build(), blockMutations(base, points))
+                .lazyTransform(rewritten -> {
+                    if (rewritten) {
+                        /* the points which were read might be incomplete, see class docs */
+                        log.info("Row was compacted concurrently, skipping: {}", rowKey);
+                        return async.resolved(false);
+                    }
+
+                    return deleteCells(client, rowKey, cells).directTransform(v -> true);
+                });
+        });
+    }
+
+    /**
+     * Build a predicate which matches if the blocks of a row have been rewritten after the given
+     * blocks were read from it.
+     * <p>
+     * Blocks are always rewritten together, so any block which is newer than the latest block
+     * that was read belongs to a later compaction.
+     */
+    private static RowFilter blocksRewrittenSince(final List<FlatRow.Cell> blocks) {
+        /* any block is newer if none were read */
+        long since = 0L;
+
+        for (final FlatRow.Cell block : blocks) {
+            since = Math.max(since, block.getTimestamp() + CELL_TIMESTAMP_GRANULARITY);
+        }
+
+        return RowFilter.chain(ImmutableList.of(
+            RowFilter.newColumnRangeBuilder(BigtableBackend.BLOCKS).build(),
+            RowFilter.writtenSince(since)));
+    }
+
+    private Mutations blockMutations(
+        final long base, final MetricCollection.ColumnarPointCollection points
+    ) {
+        final int size = points.size();
+        final long[] offsets = new long[size];
+        final double[] values = new double[size];
+
+        for (int i = 0; i < size; i++) {
+            offsets[i] = points.getTimestamp(i) - base;
+            values[i] = points.getValue(i);
+        }
+
+        final Mutations.Builder mutations =
+            Mutations.builder().deleteFromFamily(BigtableBackend.BLOCKS);
+
+        for (int from = 0; from < size; from += options.getBlockSize()) {
+            final int to = Math.min(size, from + options.getBlockSize());
+
+            mutations.setCell(BigtableBackend.BLOCKS,
+                PointBlocks.qualifier(offsets[from], offsets[to - 1]),
+                PointBlocks.encode(offsets, values, from, to));
+        }
+
+        return mutations.build();
+    }
+
+    private AsyncFuture<Void> deleteCells(
+        final BigtableDataClient client, final ByteString rowKey, final List<FlatRow.Cell> cells
+    ) {
+        final List<AsyncFuture<Void>> deletes = new ArrayList<>();
+
+        Mutations.Builder mutations = Mutations.builder();
+
+        for (final FlatRow.Cell cell : cells) {
+            mutations.deleteFromColumn(BigtableBackend.POINTS, cell.getQualifier(),
+                cell.getTimestamp() + CELL_TIMESTAMP_GRANULARITY);
+
+            if (mutations.size() >= BigtableBackend.MAX_BATCH_SIZE) {
+                deletes.add(client.mutateRow(table, rowKey, mutations.build()));
+                mutations = Mutations.builder();
+            }
+        }
+
+        if (mutations.size() > 0) {
+            deletes.add(client.mutateRow(table, rowKey, mutations.build()));
+        }
+
+        return async.collectAndDiscard(deletes);
+    }
+
+    /**
+     * Compacts the rows of a scan, with a bounded number of rows in flight.
+     */
+    private class RangeCompaction implements AsyncObserver<Row> {
+        private final ResolvableFuture<Long> done = async.future();
+        private final AtomicLong compacted = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+
+        private final BigtableDataClient client;
+        private final long startBase;
+        private final long end;
+        private final long sealedBefore;
+
+        private final Object lock = new Object();
+        private int pending = 0;
+        private boolean ended = false;
+        /* rows of the scan which wait for a compaction to finish before the scan continues */
+        private final Deque<ResolvableFuture<Void>> waiters = new ArrayDeque<>();
+
+        RangeCompaction(
+            final BigtableDataClient client, final long startBase, final long end,
+            final long sealedBefore
+        ) {
+            this.client = client;
+            this.startBase = startBase;
+            this.end = end;
+            this.sealedBefore = sealedBefore;
+        }
+
+        @Override
+        public AsyncFuture<Void> observe(final Row row) {
+            final long base;
+
+            try {
+                base = rowKeySerializer.deserializeFull(row.getKey().asReadOnlyByteBuffer())
+                    .getBase();
+            } catch (final Exception e) {
+                log.warn("Skipping row with invalid key: {}", row.getKey(), e);
+                return async.resolved();
+            }
+
+            if (base < startBase || base > end || base + BigtableBackend.PERIOD > sealedBefore) {
+                return async.resolved();
+            }
+
+            final AsyncFuture<Void> next;
+
+            synchronized (lock) {
+                pending++;
+
+                if (pending >= options.getConcurrency()) {
+                    final ResolvableFuture<Void> waiter = async.future();
+                    waiters.add(waiter);
+                    next = waiter;
+                } else {
+                    next = async.resolved();
+                }
+            }
+
+            compactRow(client, row.getKey(), base)
+                .onResolved(result -> {
+                    if (result) {
+                        compacted.incrementAndGet();
+                    }
+                })
+                .onFailed(cause -> {
+                    failed.incrementAndGet();
+                    log.error("Failed to compact row: {}", row.getKey(), cause);
+                })
+                .onFinished(this::finished);
+
+            return next;
+        }
+
+        @Override
+        public void cancel() {
+            done.cancel();
+        }
+
+        @Override
+        public void fail(final Throwable cause) {
+            done.fail(cause);
+        }
+
+        @Override
+        public void end() {
+            synchronized (lock) {
+                ended = true;
+
+                if (pending > 0) {
+                    return;
+                }
+            }
+
+            complete();
+        }
+
+        private void finished() {
+            final ResolvableFuture<Void> resume;
+            final boolean complete;
+
+            synchronized (lock) {
+                pending--;
+                resume = pending < options.getConcurrency() ? waiters.poll() : null;
+                complete = ended && pending == 0;
+            }
+
+            if (resume != null) {
+                resume.resolve(null);
+            }
+
+            if (complete) {
+                complete();
+            }
+        }
+
+        private void complete() {
+            if (failed.get() > 0) {
+                done.fail(new IllegalStateException(
+                    String.format("Failed to compact %d row(s), %d row(s) were compacted",
+                        failed.get(), compacted.get())));
+                return;
+            }
+
+            done.resolve(compacted.get());
+        }
+    }
+}
@@ -68,6 +68,7 @@ public final class BigtableMetricModule implements MetricModule, DynamicModuleId
     private final int flushIntervalSeconds;
     private final Optional<Integer> batchSize;
     private final String emulatorEndpoint;
+    private final BigtableCompactionOptions compaction;
 
     @JsonCreator
     public BigtableMetricModule(
@@ -81,7 +82,8 @@ public final class BigtableMetricModule implements MetricModule, DynamicModuleId
         @JsonProperty("disableBulkMutations") Optional<Boolean> disableBulkMutations,
         @JsonProperty("flushIntervalSeconds") Optional<Integer> flushIntervalSeconds,
         @JsonProperty("batchSize") Optional<Integer> batchSize,
-        @JsonProperty("emulatorEndpoint") Optional<String> emulatorEndpoint
+        @JsonProperty("emulatorEndpoint") Optional<String> emulatorEndpoint,
+        @JsonProperty("compaction") Optional<BigtableCompactionOptions> compaction
     ) {
         this.id = id;
         this.groups = groups.orElseGet(Groups::empty).or(DEFAULT_GROUP);
@@ -94,6 +96,7 @@ public final class BigtableMetricModule implements MetricModule, DynamicModuleId
         this.flushIntervalSeconds = flushIntervalSeconds.orElse(DEFAULT_FLUSH_INTERVAL_SECONDS);
         this.batchSize = batchSize;
         this.emulatorEndpoint = emulatorEndpoint.orElse(null);
+        this.compaction = compaction.orElseGet(BigtableCompactionOptions::new);
     }
 
     @Override
@@ -161,6 +164,12 @@ public final class BigtableMetricModule implements MetricModule, DynamicModuleId
             return new MetricsRowKeySerializer();
         }
 
+        @Provides
+        @BigtableScope
+        public BigtableCompactionOptions compaction() {
+            return compaction;
+        }
+
         @Provides
         @BigtableScope
         public Groups groups() {
@@ -195,6 +204,7 @@ public final class BigtableMetricModule implements MetricModule, DynamicModuleId
         private Optional<Integer> flushIntervalSeconds = empty();
         private Optional<Integer> batchSize = empty();
         private Optional<String> emulatorEndpoint = empty();
+        private Optional<BigtableCompactionOptions> compaction = empty();
 
         public Builder id(String id) {
             this.id = of(id);
@@ -251,9 +261,15 @@ public final class BigtableMetricModule implements MetricModule, DynamicModuleId
             return this;
         }
 
+        public Builder compaction(final BigtableCompactionOptions compaction) {
+            this.compaction = of(compaction);
+            return this;
+        }
+
         public BigtableMetricModule build() {
             return new BigtableMetricModule(id, groups, project, instance, table, credentials,
-                configure, disableBulkMutations, flushIntervalSeconds, batchSize, emulatorEndpoint);
+                configure, disableBulkMutations, flushIntervalSeconds, batchSize, emulatorEndpoint,
+                compaction);
         }
     }
 }
@@ -0,0 +1,197 @@
+/*
+ * Copyright (c) 2020 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.heroic.metric.bigtable;
+
+import com.google.cloud.bigtable.grpc.scanner.FlatRow;
+import com.google.protobuf.ByteString;
+import com.spotify.heroic.metric.GorillaCodec;
+import com.spotify.heroic.metric.MetricCollection;
+import java.util.List;
+
+/**
+ * Compressed blocks of points, which sealed rows are compacted into.
+ * <p>
+ * A block is a single cell in the {@link BigtableBackend#BLOCKS} family. Its qualifier is the
+ * serialized offsets of the first and the last point of the block, so blocks sort by their first
+ * point. Points are encoded with {@link GorillaCodec}, using their offsets as timestamps.
+ * <pre>
+ * u32   number of points
+ * bits  points encoded by {@link GorillaCodec}
+ * </pre>
+ */
+final class PointBlocks {
+    private static final int SIZE_BITS = 32;
+
+    private PointBlocks() {
+    }
+
+    static ByteString qualifier(final long first, final long last) {
+        return BigtableBackend.serializeOffset(first).concat(BigtableBackend.serializeOffset(last));
+    }
+
+    static long firstOffset(final ByteString qualifier) {
+        return BigtableBackend.deserializeOffset(qualifier);
+    }
+
+    static long lastOffset(final ByteString qualifier) {
+        return BigtableBackend.deserializeOffset(qualifier.substring(Integer.BYTES));
+    }
+
+    /**
+     * Encode the given points, which must be sorted by offset.
+     *
+     * @param offsets Offsets of the points.
+     * @param values Values of the points.
+     * @param from First point to encode, inclusive.
+     * @param to Last point to encode, exclusive.
+     * @return The encoded block.
+     */
+    static ByteString encode(
+        final long[] offsets, final double[] values, final int from, final int to
+    ) {
+        final GorillaCodec.BitWriter out = new GorillaCodec.BitWriter(to - from);
+        out.write(to - from, SIZE_BITS);
+        GorillaCodec.encode(out, offsets, values, from, to);
+        return ByteString.copyFrom(out.toByteArray());
+    }
+
+    /**
+     * Get the number of points in a block.
+     */
+    static int size(final ByteString block) {
+        // @formatter:off
+        return ((block.byteAt(0) & 0xff) << 24) |
+               ((block.byteAt(1) & 0xff) << 16) |
+               ((block.byteAt(2) & 0xff) << 8) |
+               (block.byteAt(3) & 0xff);
+        // @formatter:on
+    }
+
+    /**
+     * Decode the points of a block into the given arrays.
+     *
+     * @param block Block to decode.
+     * @param base Base timestamp of the row the block belongs to.
+     * @param timestamps Array to decode timestamps into.
+     * @param values Array to decode values into.
+     * @param position Position in the arrays to decode the first point into.
+     */
+    static void decode(
+        final ByteString block, final long base, final long[] timestamps, final double[] values,
+        final int position
+    ) {
+        final GorillaCodec.BitReader in = GorillaCodec.BitReader.fromBytes(block.toByteArray());
+        final int size = (int) in.read(SIZE_BITS);
+        final int[] index = {position};
+
+        GorillaCodec.decode(in, size, (offset, value) -> {
+            timestamps[index[0]] = base + offset;
+            values[index[0]] = value;
+            index[0]++;
+        });
+    }
+
+    /**
+     * Merge the points of blocks and raw cells of a row, in timestamp order.
+     * <p>
+     * Raw cells take precedence over points in blocks with the same timestamp, since they were
+     * written after the row was compacted. Blocks are always written together by a compaction, so
+     * they never overlap.
+     *
+     * @param base Base timestamp of the row.
+     * @param blocks Block cells of the row, sorted by qualifier.
+     * @param cells Raw cells of the row, sorted by qualifier.
+     * @param startOffset Only include points after this offset.
+     * @param endOffset Only include points up to and including this offset.
+     * @return The merged points.
+     */
+    static MetricCollection.ColumnarPointCollection merge(
+        final long base, final List<FlatRow.Cell> blocks, final List<FlatRow.Cell> cells,
+        final long startOffset, final long endOffset
+    ) {
+        int blockSize = 0;
+
+        for (final FlatRow.Cell block : blocks) {
+            if (overlaps(block.getQualifier(), startOffset, endOffset)) {
+                blockSize += size(block.getValue());
+            }
+        }
+
+        final long[] blockTimestamps = new long[blockSize];
+        final double[] blockValues = new double[blockSize];
+        int position = 0;
+
+        for (final FlatRow.Cell block : blocks) {
+            if (overlaps(block.getQualifier(), startOffset, endOffset)) {
+                decode(block.getValue(), base, blockTimestamps, blockValues, position);
+                position += size(block.getValue());
+            }
+        }
+
+        final long start = base + startOffset;
+        final long end = base + endOffset;
+
+        final long[] timestamps = new long[blockSize + cells.size()];
+        final double[] values = new double[blockSize + cells.size()];
+        int size = 0;
+
+        int b = 0;
+        int c = 0;
+
+        while (b < blockSize || c < cells.size()) {
+            final long timestamp;
+            final double value;
+
+            final long cellTimestamp = c < cells.size() ?
+                base + BigtableBackend.deserializeOffset(cells.get(c).getQualifier()) :
+                Long.MAX_VALUE;
+
+            if (b < blockSize && blockTimestamps[b] < cellTimestamp) {
+                timestamp = blockTimestamps[b];
+                value = blockValues[b];
+                b++;
+            } else {
+                if (b < blockSize && blockTimestamps[b] == cellTimestamp) {
+                    b++;
+                }
+
+                timestamp = cellTimestamp;
+                value = BigtableBackend.deserializeValue(cells.get(c).getValue());
+                c++;
+            }
+
+            if (timestamp > start && timestamp <= end) {
+                timestamps[size] = timestamp;
+                values[size] = value;
+                size++;
+            }
+        }
+
+        return MetricCollection.ColumnarPointCollection.create(timestamps, values, size);
+    }
+
+    private static boolean overlaps(
+        final ByteString qualifier, final long startOffset, final long endOffset
+    ) {
+        return firstOffset(qualifier) <= endOffset && lastOffset(qualifier) > startOffset;
+    }
+}
@@ -48,7 +48,35 @@ public interface BigtableDataClient {
      */
     AsyncObservable<Row> readRowsObserved(String tableName, ReadRowsRequest request);
 
+    /**
+     * Read the given set of rows in an observable way, without converting them.
+     * <p>
+     * Rows are streamed from the server as they are observed, so the next row is not read until
+     * the future returned when observing the previous row has been resolved.
+     *
+     * @param tableName The table to read rows from.
+     * @param request Request to use when reading rows.
+     * @return An observable that can be observed to read one row at a time.
+     */
+    AsyncObservable<FlatRow> readFlatRowsObserved(String tableName, ReadRowsRequest request);
+
     AsyncFuture<Row> readModifyWriteRow(
         String tableName, ByteString rowKey, ReadModifyWriteRules rules
     );
+
+    /**
+     * Atomically apply one of two sets of mutations to a row, depending on whether the row has
+     * any cells which match the given predicate.
+     *
+     * @param tableName Table of the row to mutate.
+     * @param rowKey Key of the row to mutate.
+     * @param predicate Filter that is applied to the row.
+     * @param trueMutations Mutations to apply if the predicate matches any cell.
+     * @param falseMutations Mutations to apply if the predicate does not match any cell.
+     * @return A future resolved with {@code true} if the predicate matched any cell.
+     */
+    AsyncFuture<Boolean> checkAndMutateRow(
+        String tableName, ByteString rowKey, RowFilter predicate, Mutations trueMutations,
+        Mutations falseMutations
+    );
 }
@@ -21,6 +21,8 @@
 
 package com.spotify.heroic.metric.bigtable.api;
 
+import com.google.bigtable.v2.CheckAndMutateRowRequest;
+import com.google.bigtable.v2.CheckAndMutateRowResponse;
 import com.google.bigtable.v2.ReadModifyWriteRowRequest;
 import com.google.cloud.bigtable.grpc.BigtableSession;
 import com.google.cloud.bigtable.grpc.scanner.FlatRow;
@@ -37,6 +39,7 @@ import eu.toolchain.async.AsyncFramework;
 import eu.toolchain.async.AsyncFuture;
 import eu.toolchain.async.ResolvableFuture;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 
 public class BigtableDataClientImpl implements BigtableDataClient {
@@ -95,6 +98,21 @@ public class BigtableDataClientImpl implements BigtableDataClient {
             .build())).directTransform(r -> convertRow(r.getRow()));
     }
 
+    @Override
+    public AsyncFuture<Boolean> checkAndMutateRow(
+        final String tableName, final ByteString rowKey, final RowFilter predicate,
+        final Mutations trueMutations, final Mutations falseMutations
+    ) {
+        return convert(session.getDataClient().checkAndMutateRowAsync(CheckAndMutateRowRequest
+            .newBuilder()
+            .setTableName(Table.toURI(clusterUri, tableName))
+            .setRowKey(rowKey)
+            .setPredicateFilter(predicate.toPb())
+            .addAllTrueMutations(trueMutations.getMutations())
+            .addAllFalseMutations(falseMutations.getMutations())
+            .build())).directTransform(CheckAndMutateRowResponse::getPredicateMatched);
+    }
+
     @Override
     public AsyncObservable<Row> readRowsObserved(
         final String tableName, final ReadRowsRequest request
@@ -144,6 +162,28 @@ public class BigtableDataClientImpl implements BigtableDataClient {
         };
     }
 
+    @Override
+    public AsyncObservable<FlatRow> readFlatRowsObserved(
+        final String tableName, final ReadRowsRequest request
+    ) {
+        /* scanning blocks while waiting for rows, so it is started on another thread */
+        return observer -> async.call(() -> {
+            final ResultScanner<FlatRow> scanner = session
+                .getDataClient()
+                .readFlatRows(request.toPb(Table.toURI(clusterUri, tableName)));
+
+            scanAsync(scanner, observer.onFinished(() -> {
+                try {
+                    scanner.close();
+                } catch (final IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }));
+
+            return null;
+        }).onFailed(observer::fail);
+    }
+
     Row convertRow(final com.google.bigtable.v2.Row row) {
         final ImmutableMap.Builder<String, Family> families = ImmutableMap.builder();
 
@@ -188,10 +228,12 @@ public class BigtableDataClientImpl implements BigtableDataClient {
                 continue;
             }
 
+            // the next row is read once the observer is ready for it
             f
                 .onResolved(ign -> scanAsync(scanner, observer))
                 .onFailed(observer::fail)
                 .onCancelled(observer::cancel);
+            return;
         }
     }
 
@@ -76,6 +76,53 @@ public class Mutations {
             return this;
         }
 
+        /**
+         * Delete every cell in the given family.
+         */
+        public Builder deleteFromFamily(String family) {
+            final com.google.bigtable.v2.Mutation.DeleteFromFamily.Builder
+                deleteFromFamily = com.google.bigtable.v2.Mutation.DeleteFromFamily
+                    .newBuilder()
+                    .setFamilyName(family);
+
+            mutations.add(
+                com.google.bigtable.v2.Mutation
+                .newBuilder()
+                .setDeleteFromFamily(deleteFromFamily)
+                    .build()
+            );
+            return this;
+        }
+
+        /**
+         * Delete the cells of a column which are older than the given timestamp.
+         * <p>
+         * Cells which are written after they were read are kept, as long as they are written with
+         * a later timestamp.
+         *
+         * @param endTimestampMicros Exclusive end of the cell timestamps to delete.
+         */
+        public Builder deleteFromColumn(
+            String family, ByteString columnQualifier, long endTimestampMicros
+        ) {
+            final com.google.bigtable.v2.Mutation.DeleteFromColumn.Builder
+                deleteFromColumn = com.google.bigtable.v2.Mutation.DeleteFromColumn
+                    .newBuilder()
+                    .setFamilyName(family)
+                    .setColumnQualifier(columnQualifier)
+                    .setTimeRange(com.google.bigtable.v2.TimestampRange
+                        .newBuilder()
+                        .setEndTimestampMicros(endTimestampMicros));
+
+            mutations.add(
+                com.google.bigtable.v2.Mutation
+                .newBuilder()
+                .setDeleteFromColumn(deleteFromColumn)
+                    .build()
+            );
+            return this;
+        }
+
         public Mutations build() {
             return new Mutations(ImmutableList.copyOf(mutations));
         }
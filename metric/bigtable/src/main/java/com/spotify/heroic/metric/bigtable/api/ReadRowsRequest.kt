@@ -25,13 +25,13 @@ import com.google.protobuf.ByteString
 import java.util.*
 
 data class ReadRowsRequest(
-    val range: Optional<RowRange>,
+    val ranges: List<RowRange>,
     val filter: Optional<RowFilter>,
     val rowKey: Optional<ByteString>
 ) {
     fun toPb(tableUri: String): com.google.bigtable.v2.ReadRowsRequest {
         val rowSetBuilder = com.google.bigtable.v2.RowSet.newBuilder()
-        range.map(RowRange::toPb).ifPresent { rowSetBuilder.addRowRanges(it) }
+        ranges.forEach { rowSetBuilder.addRowRanges(it.toPb()) }
         rowKey.ifPresent { rowSetBuilder.addRowKeys(it) }
 
         val requestBuilder = com.google.bigtable.v2.ReadRowsRequest.newBuilder()
@@ -43,12 +43,20 @@ data class ReadRowsRequest(
 
     companion object {
         class Builder(
-            var range: RowRange? = null,
+            var ranges: MutableList<RowRange> = mutableListOf(),
             var filter: RowFilter? = null,
             var rowKey: ByteString? = null
         ) {
             fun range(range: RowRange): Builder {
-                this.range = range
+                this.ranges.add(range)
+                return this
+            }
+
+            /**
+             * Read all of the given ranges in a single request, rows are returned in key order.
+             */
+            fun ranges(ranges: List<RowRange>): Builder {
+                this.ranges.addAll(ranges)
                 return this
             }
 
@@ -63,7 +71,7 @@ data class ReadRowsRequest(
             }
 
             fun build(): ReadRowsRequest = ReadRowsRequest(
-                Optional.ofNullable(range),
+                ranges.toList(),
                 Optional.ofNullable(filter),
                 Optional.ofNullable(rowKey))
         }
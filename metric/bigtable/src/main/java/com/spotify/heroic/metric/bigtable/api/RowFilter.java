@@ -78,6 +78,45 @@ public interface RowFilter {
         return new Chain(chain);
     }
 
+    /**
+     * Apply each of the given row filters to the row, and combine their results.
+     *
+     * @param filters Filters to apply.
+     * @return A filter that matches the cells matched by any of the given filters.
+     */
+    static RowFilter interleave(final List<? extends RowFilter> filters) {
+        return new Interleave(filters);
+    }
+
+    /**
+     * Build a filter that only matches the first cells of each row.
+     *
+     * @param limit Number of cells to match in each row.
+     * @return A filter that only matches the first cells of each row.
+     */
+    static RowFilter cellsPerRowLimit(final int limit) {
+        return new CellsPerRowLimit(limit);
+    }
+
+    /**
+     * Build a filter that replaces the value of each cell with an empty value.
+     *
+     * @return A filter that strips all values.
+     */
+    static RowFilter stripValue() {
+        return new StripValue();
+    }
+
+    /**
+     * Build a filter that only matches cells which were written at or after the given timestamp.
+     *
+     * @param startTimestampMicros Inclusive start of the cell timestamps to match.
+     * @return A filter that only matches cells which were written at or after the timestamp.
+     */
+    static RowFilter writtenSince(final long startTimestampMicros) {
+        return new TimestampRange(startTimestampMicros);
+    }
+
     com.google.bigtable.v2.RowFilter toPb();
 
     class Chain implements RowFilter {
@@ -109,6 +148,35 @@ public interface RowFilter {
         }
     }
 
+    class Interleave implements RowFilter {
+        private final List<? extends RowFilter> filters;
+
+        Interleave(List<? extends RowFilter> filters) {
+            this.filters = filters;
+        }
+
+        @Override
+        public boolean matchesColumn(final ByteString columnQualifier) {
+            return filters.stream().anyMatch(entry -> entry.matchesColumn(columnQualifier));
+        }
+
+        @Override
+        public boolean matchesColumnFamily(final String familyName) {
+            return filters.stream().anyMatch(entry -> entry.matchesColumnFamily(familyName));
+        }
+
+        @Override
+        public com.google.bigtable.v2.RowFilter toPb() {
+            final com.google.bigtable.v2.RowFilter.Interleave.Builder interleave =
+                com.google.bigtable.v2.RowFilter.Interleave.newBuilder();
+            this.filters.forEach(f -> interleave.addFilters(f.toPb()));
+            return com.google.bigtable.v2.RowFilter
+                .newBuilder()
+                .setInterleave(interleave.build())
+                .build();
+        }
+    }
+
     class ColumnRange implements RowFilter {
         private final String family;
         private final Optional<ByteString> startQualifierClosed;
@@ -245,6 +313,83 @@ public interface RowFilter {
         }
     }
 
+    class CellsPerRowLimit implements RowFilter {
+        private final int limit;
+
+        CellsPerRowLimit(final int limit) {
+            this.limit = limit;
+        }
+
+        @Override
+        public boolean matchesColumn(final ByteString columnQualifier) {
+            return true;
+        }
+
+        @Override
+        public boolean matchesColumnFamily(final String familyName) {
+            return true;
+        }
+
+        @Override
+        public com.google.bigtable.v2.RowFilter toPb() {
+            return com.google.bigtable.v2.RowFilter
+                .newBuilder()
+                .setCellsPerRowLimitFilter(limit)
+                .build();
+        }
+    }
+
+    class StripValue implements RowFilter {
+        StripValue() {
+        }
+
+        @Override
+        public boolean matchesColumn(final ByteString columnQualifier) {
+            return true;
+        }
+
+        @Override
+        public boolean matchesColumnFamily(final String familyName) {
+            return true;
+        }
+
+        @Override
+        public com.google.bigtable.v2.RowFilter toPb() {
+            return com.google.bigtable.v2.RowFilter
+                .newBuilder()
+                .setStripValueTransformer(true)
+                .build();
+        }
+    }
+
+    class TimestampRange implements RowFilter {
+        private final long startTimestampMicros;
+
+        TimestampRange(final long startTimestampMicros) {
+            this.startTimestampMicros = startTimestampMicros;
+        }
+
+        @Override
+        public boolean matchesColumn(final ByteString columnQualifier) {
+            return true;
+        }
+
+        @Override
+        public boolean matchesColumnFamily(final String familyName) {
+            return true;
+        }
+
+        @Override
+        public com.google.bigtable.v2.RowFilter toPb() {
+            return com.google.bigtable.v2.RowFilter
+                .newBuilder()
+                .setTimestampRangeFilter(com.google.bigtable.v2.TimestampRange
+                    .newBuilder()
+                    .setStartTimestampMicros(startTimestampMicros))
+                .build();
+        }
+    }
+
     class BlockAll implements RowFilter {
         BlockAll() {
         }
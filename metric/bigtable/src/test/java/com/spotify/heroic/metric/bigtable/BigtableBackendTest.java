@@ -1,12 +1,67 @@
 package com.spotify.heroic.metric.bigtable;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.cloud.bigtable.grpc.scanner.FlatRow;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedMap;
 import com.google.protobuf.ByteString;
 import com.google.protobuf.ByteString.ByteIterator;
+import com.spotify.heroic.QueryOptions;
+import com.spotify.heroic.async.AsyncObservable;
+import com.spotify.heroic.async.AsyncObserver;
+import com.spotify.heroic.common.DateRange;
+import com.spotify.heroic.common.Duration;
+import com.spotify.heroic.common.Groups;
+import com.spotify.heroic.common.Series;
+import com.spotify.heroic.metric.FetchData;
+import com.spotify.heroic.metric.FetchQuotaWatcher;
+import com.spotify.heroic.metric.MetricType;
+import com.spotify.heroic.metric.Point;
+import com.spotify.heroic.metric.bigtable.api.BigtableDataClient;
+import com.spotify.heroic.metric.bigtable.api.Family;
+import com.spotify.heroic.metric.bigtable.api.LatestCellValueColumn;
+import com.spotify.heroic.metric.bigtable.api.Mutations;
+import com.spotify.heroic.metric.bigtable.api.ReadModifyWriteRules;
+import com.spotify.heroic.metric.bigtable.api.ReadRowsRequest;
+import com.spotify.heroic.metric.bigtable.api.Row;
+import com.spotify.heroic.metric.bigtable.api.RowFilter;
+import com.spotify.heroic.metric.bigtable.api.RowRange;
+import com.spotify.heroic.scheduler.Scheduler;
+import com.spotify.heroic.statistics.noop.NoopMetricBackendReporter;
+import com.spotify.heroic.time.Clock;
+import eu.toolchain.async.AsyncFramework;
+import eu.toolchain.async.AsyncFuture;
+import eu.toolchain.async.Managed;
+import eu.toolchain.async.ManagedAction;
+import eu.toolchain.async.TinyAsync;
 import eu.toolchain.serializer.HexUtils;
+import eu.toolchain.serializer.TinySerializer;
+import io.opencensus.trace.BlankSpan;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 public class BigtableBackendTest {
     @Test
@@ -33,6 +88,483 @@ public class BigtableBackendTest {
         assertEquals(l, BigtableBackend.deserializeOffset(b));
     }
 
+    @Test
+    public void testDeserializeValue() {
+        for (final double value : new double[]{0D, -1D, Math.PI, Double.NaN, Double.MAX_VALUE}) {
+            final byte[] bytes = ByteBuffer.allocate(10)
+                .put((byte) 0xff).putDouble(value).put((byte) 0xff).array();
+
+            /* a view into a larger buffer, like the cells returned by bigtable */
+            final ByteString cell = ByteString.copyFrom(bytes).substring(1, 9);
+            assertEquals(Double.doubleToLongBits(value),
+                Double.doubleToLongBits(BigtableBackend.deserializeValue(cell)));
+        }
+    }
+
+    @Test
+    public void testResourceCache() throws Exception {
+        final MetricsRowKeySerializer serializer = new MetricsRowKeySerializer();
+        final BigtableBackend.ResourceCache cache = new BigtableBackend.ResourceCache(serializer);
+
+        final Series a = Series.of("a", ImmutableMap.of("role", "db"));
+        final Series withResource =
+            Series.of("a", ImmutableMap.of("role", "db"), ImmutableMap.of("pod", "1"));
+
+        for (final long base : new long[]{0L, BigtableBackend.PERIOD}) {
+            final ByteString prefix = serializer.serializeMinimal(
+                RowKeyMinimal.create(new RowKey(a, base)));
+
+            assertEquals(ImmutableSortedMap.of(),
+                cache.get(prefix, serializer.serializeFull(new RowKey(a, base))));
+            assertEquals(ImmutableSortedMap.of("pod", "1"),
+                cache.get(prefix, serializer.serializeFull(new RowKey(withResource, base))));
+        }
+
+        /* the resource suffix is the same in both periods, so it is only parsed once */
+        assertEquals(1, cache.size());
+
+        final ByteString prefix =
+            serializer.serializeMinimal(RowKeyMinimal.create(new RowKey(a, 0L)));
+        final ByteString key = serializer.serializeFull(new RowKey(withResource, 0L));
+        assertSame(cache.get(prefix, key), cache.get(prefix, key));
+
+        /* row keys outside of the prefix are parsed in full */
+        assertEquals(ImmutableSortedMap.of("pod", "1"), cache.get(ByteString.copyFromUtf8("x"),
+            serializer.serializeFull(new RowKey(withResource, 0L))));
+    }
+
+    @Test
+    public void testFetchManyAcrossPeriods() throws Exception {
+        final AsyncFramework async = TinyAsync.builder().executor(
+            Executors.newSingleThreadExecutor()).build();
+        final MetricsRowKeySerializer serializer = new MetricsRowKeySerializer();
+        final FakeDataClient client = new FakeDataClient(async);
+
+        final Series a = Series.of("a", ImmutableMap.of("host", "a"));
+        final Series b = Series.of("b", ImmutableMap.of("host", "b"));
+        final Series c =
+            Series.of("a", ImmutableMap.of("host", "c"), ImmutableMap.of("pod", "1"));
+        final List<Series> series = ImmutableList.of(a, b, c);
+
+        final long period = BigtableBackend.PERIOD;
+        final Map<Series, List<Point>> expected = new HashMap<>();
+
+        for (int i = 0; i < series.size(); i++) {
+            final Series s = series.get(i);
+            final List<Point> points = ImmutableList.of(
+                new Point(period - 50, i), new Point(period + 50, i + 0.5D));
+
+            for (final Point p : points) {
+                final long base = BigtableBackend.base(p.getTimestamp());
+                client.put(serializer.serializeFull(new RowKey(s, base)),
+                    BigtableBackend.offset(p.getTimestamp()), p.getValue());
+            }
+
+            expected.put(s, points);
+        }
+
+        /* a row of another series, which no request should return */
+        client.put(serializer.serializeFull(
+            new RowKey(Series.of("a", ImmutableMap.of("host", "d")), 0L)), period - 50, 42D);
+
+        final BigtableBackend backend = backend(async, serializer, client);
+
+        final Map<Series, List<Point>> fetched = Collections.synchronizedMap(new HashMap<>());
+
+        final FetchData.Result result = backend.fetchMany(
+            new FetchData.BatchRequest(MetricType.POINT, series,
+                new DateRange(period - 100, period + 100), QueryOptions.builder().build()),
+            FetchQuotaWatcher.NO_QUOTA,
+            (s, r) -> fetched
+                .computeIfAbsent(s, k -> Collections.synchronizedList(new ArrayList<>()))
+                .addAll(r.getMetrics().getDataAs(Point.class)), BlankSpan.INSTANCE).get();
+
+        assertEquals(ImmutableList.of(), result.getErrors());
+        assertEquals(expected, fetched);
+
+        /* one request per period, with the row range of every series */
+        assertEquals(2, client.requests.size());
+
+        for (final ReadRowsRequest request : client.requests) {
+            assertEquals(series.size(), request.getRanges().size());
+
+            final List<ByteString> starts = new ArrayList<>();
+
+            for (final RowRange range : request.getRanges()) {
+                starts.add(range.getStart().get());
+            }
+
+            final List<ByteString> sorted = new ArrayList<>(starts);
+            sorted.sort(ByteString.unsignedLexicographicalComparator());
+            assertEquals(sorted, starts);
+        }
+    }
+
+    @Test
+    public void testFetchManyReadsOneChunkAtATime() throws Exception {
+        final AsyncFramework async = TinyAsync.builder().executor(
+            Executors.newSingleThreadExecutor()).build();
+        final MetricsRowKeySerializer serializer = new MetricsRowKeySerializer();
+        final FakeDataClient client = new FakeDataClient(async);
+
+        final long period = BigtableBackend.PERIOD;
+        final List<Series> series = new ArrayList<>();
+        final Map<Series, List<Point>> expected = new HashMap<>();
+
+        for (int i = 0; i < 3; i++) {
+            final Series s = Series.of("a", ImmutableMap.of("host", "h" + i));
+            final List<Point> points =
+                ImmutableList.of(new Point(period + 10, i), new Point(period + 20, i));
+
+            for (final Point p : points) {
+                client.put(serializer.serializeFull(new RowKey(s, period)),
+                    BigtableBackend.offset(p.getTimestamp()), p.getValue());
+            }
+
+            series.add(s);
+            expected.put(s, points);
+        }
+
+        final BigtableBackend backend = backend(async, serializer, client);
+        final GatedWatcher watcher = new GatedWatcher(2);
+
+        final Map<Series, List<Point>> fetched = Collections.synchronizedMap(new HashMap<>());
+        final List<Integer> inFlight = Collections.synchronizedList(new ArrayList<>());
+
+        final FetchData.Result result = backend.fetchMany(
+            new FetchData.BatchRequest(MetricType.POINT, series,
+                new DateRange(period, period + 100), QueryOptions.builder().build()),
+            watcher, (s, r) -> {
+                inFlight.add(watcher.inFlight());
+                fetched
+                    .computeIfAbsent(s, k -> Collections.synchronizedList(new ArrayList<>()))
+                    .addAll(r.getMetrics().getDataAs(Point.class));
+            }, BlankSpan.INSTANCE).get();
+
+        assertEquals(ImmutableList.of(), result.getErrors());
+        assertEquals(expected, fetched);
+        assertEquals(1, client.requests.size());
+
+        /* every row fills a chunk, so the next row is read only once it has been released */
+        assertEquals(ImmutableList.of(1, 1, 1), inFlight);
+        assertEquals(4, watcher.acquired());
+        assertEquals(0, watcher.inFlight());
+    }
+
+    /**
+     * Watcher which allows a single chunk in flight.
+     */
+    private static final class GatedWatcher implements FetchQuotaWatcher {
+        private final int chunkSize;
+        private final Queue<Runnable> pending = new ArrayDeque<>();
+
+        private int inFlight = 0;
+        private int acquired = 0;
+
+        private GatedWatcher(final int chunkSize) {
+            this.chunkSize = chunkSize;
+        }
+
+        synchronized int inFlight() {
+            return inFlight;
+        }
+
+        synchronized int acquired() {
+            return acquired;
+        }
+
+        @Override
+        public void readData(final long n) {
+        }
+
+        @Override
+        public boolean mayReadData() {
+            return true;
+        }
+
+        @Override
+        public int getReadDataQuota() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public void accessedRows(final long n) {
+        }
+
+        @Override
+        public int getChunkSize() {
+            return chunkSize;
+        }
+
+        @Override
+        public void acquireChunk(final Runnable read) {
+            synchronized (this) {
+                if (inFlight > 0) {
+                    pending.add(read);
+                    return;
+                }
+
+                inFlight++;
+                acquired++;
+            }
+
+            read.run();
+        }
+
+        @Override
+        public void releaseChunk() {
+            final Runnable next;
+
+            synchronized (this) {
+                inFlight--;
+                next = pending.poll();
+            }
+
+            if (next != null) {
+                acquireChunk(next);
+            }
+        }
+    }
+
+    @Test
+    public void testCompactSealedOnce() throws Exception {
+        final AsyncFramework async = TinyAsync.builder().executor(
+            Executors.newSingleThreadExecutor()).build();
+        final MetricsRowKeySerializer serializer = new MetricsRowKeySerializer();
+        final FakeDataClient client = new FakeDataClient(async);
+
+        final BigtableCompactionOptions options = new BigtableCompactionOptions(
+            Optional.of(true), Optional.empty(), Optional.of(Duration.of(0, TimeUnit.MILLISECONDS)),
+            Optional.of(Duration.of(1, TimeUnit.HOURS)), Optional.empty());
+
+        /* the first period has been sealed */
+        final AtomicLong now = new AtomicLong(BigtableBackend.PERIOD + 1);
+
+        final BigtableBackend a = backend(async, serializer, client, options, now::get);
+        final BigtableBackend b = backend(async, serializer, client, options, now::get);
+
+        /* a failed compaction is not recorded, and the other node can't claim the interval */
+        client.failScan = true;
+        assertFailed(a);
+        b.compactSealed();
+        assertEquals(1, client.scans);
+        assertEquals(0, client.progressWrites);
+
+        /* the compaction is retried in the next interval, by the node which claims it first */
+        client.failScan = false;
+        client.claims = 0L;
+        now.addAndGet(TimeUnit.HOURS.toMillis(1));
+        b.compactSealed();
+        a.compactSealed();
+        assertEquals(2, client.scans);
+        assertEquals(1, client.progressWrites);
+
+        /* a restarted node reads the progress from the table */
+        final BigtableBackend restarted = backend(async, serializer, client, options, now::get);
+        client.claims = 0L;
+        now.addAndGet(TimeUnit.HOURS.toMillis(1));
+        restarted.compactSealed();
+        assertEquals(2, client.scans);
+        assertEquals(0L, client.claims);
+    }
+
+    private static void assertFailed(final BigtableBackend backend) {
+        try {
+            backend.compactSealed();
+        } catch (final Exception e) {
+            return;
+        }
+
+        throw new AssertionError("Expected compaction to fail");
+    }
+
+    private static BigtableBackend backend(
+        final AsyncFramework async, final MetricsRowKeySerializer serializer,
+        final BigtableDataClient client
+    ) throws Exception {
+        return backend(async, serializer, client, new BigtableCompactionOptions(),
+            Clock.system());
+    }
+
+    private static BigtableBackend backend(
+        final AsyncFramework async, final MetricsRowKeySerializer serializer,
+        final BigtableDataClient client, final BigtableCompactionOptions compaction,
+        final Clock clock
+    ) throws Exception {
+        final BigtableConnection connection =
+            new BigtableConnection(async, "project", "instance", null, null, null, client);
+
+        @SuppressWarnings("unchecked")
+        final Managed<BigtableConnection> managed = mock(Managed.class);
+
+        doAnswer(invocation -> {
+            final ManagedAction<BigtableConnection, ?> action = invocation.getArgument(0);
+            return action.action(connection);
+        }).when(managed).doto(any());
+
+        when(managed.isReady()).thenReturn(true);
+
+        return new BigtableBackend(async, TinySerializer.builder().build(), serializer, managed,
+            Groups.empty(), "table", false, NoopMetricBackendReporter.get(), new ObjectMapper(),
+            compaction, mock(Scheduler.class), clock);
+    }
+
+    /**
+     * Data client which returns the rows in the requested ranges, in key order.
+     */
+    private static final class FakeDataClient implements BigtableDataClient {
+        private final AsyncFramework async;
+        private final NavigableMap<ByteString, FlatRow> rows =
+            new TreeMap<>(ByteString.unsignedLexicographicalComparator());
+        private final List<ReadRowsRequest> requests =
+            Collections.synchronizedList(new ArrayList<>());
+
+        /* state of background compaction */
+        private volatile boolean failScan = false;
+        private volatile int scans = 0;
+        private volatile int progressWrites = 0;
+        private volatile long claims = 0L;
+
+        private FakeDataClient(final AsyncFramework async) {
+            this.async = async;
+        }
+
+        void put(final ByteString rowKey, final long offset, final double value) {
+            final List<FlatRow.Cell> cells = new ArrayList<>();
+
+            if (rows.containsKey(rowKey)) {
+                cells.addAll(rows.get(rowKey).getCells());
+            }
+
+            cells.add(new FlatRow.Cell(BigtableBackend.POINTS,
+                BigtableBackend.serializeOffset(offset), 0L,
+                ByteString.copyFrom(ByteBuffer.allocate(Double.BYTES).putDouble(value).array()),
+                ImmutableList.of()));
+            rows.put(rowKey, new FlatRow(rowKey, ImmutableList.copyOf(cells)));
+        }
+
+        private List<FlatRow> read(final ReadRowsRequest request) {
+            requests.add(request);
+
+            final NavigableMap<ByteString, FlatRow> result =
+                new TreeMap<>(ByteString.unsignedLexicographicalComparator());
+
+            for (final RowRange range : request.getRanges()) {
+                result.putAll(
+                    rows.subMap(range.getStart().get(), true, range.getEnd().get(), false));
+            }
+
+            return new ArrayList<>(result.values());
+        }
+
+        @Override
+        public AsyncFuture<List<FlatRow>> readRows(
+            final String tableName, final ReadRowsRequest request
+        ) {
+            if (request.getRowKey().isPresent()) {
+                assertEquals(BigtableBackend.COMPACTION_ROW, request.getRowKey().get());
+
+                if (progressWrites == 0) {
+                    return async.resolved(ImmutableList.of());
+                }
+
+                /* the only period which is compacted by the tests */
+                return async.resolved(ImmutableList.of(new FlatRow(BigtableBackend.COMPACTION_ROW,
+                    ImmutableList.of(new FlatRow.Cell(BigtableBackend.COMPACTION,
+                        BigtableBackend.COMPACTED_BASE, 0L, serializeLong(0L),
+                        ImmutableList.of())))));
+            }
+
+            return async.resolved(read(request));
+        }
+
+        @Override
+        public AsyncObservable<Row> readRowsObserved(
+            final String tableName, final ReadRowsRequest request
+        ) {
+            return observer -> {
+                scans++;
+
+                if (failScan) {
+                    observer.fail(new RuntimeException("scan failed"));
+                } else {
+                    observer.end();
+                }
+            };
+        }
+
+        @Override
+        public AsyncObservable<FlatRow> readFlatRowsObserved(
+            final String tableName, final ReadRowsRequest request
+        ) {
+            return observer -> scan(read(request).iterator(), observer);
+        }
+
+        private static void scan(
+            final Iterator<FlatRow> rows, final AsyncObserver<FlatRow> observer
+        ) {
+            while (rows.hasNext()) {
+                final AsyncFuture<Void> f = observer.observe(rows.next());
+
+                if (!f.isDone()) {
+                    f
+                        .onResolved(ignore -> scan(rows, observer))
+                        .onFailed(observer::fail)
+                        .onCancelled(observer::cancel);
+                    return;
+                }
+
+                if (f.isFailed()) {
+                    observer.fail(f.cause());
+                    return;
+                }
+
+                if (f.isCancelled()) {
+                    observer.cancel();
+                    return;
+                }
+            }
+
+            observer.end();
+        }
+
+        @Override
+        public AsyncFuture<Void> mutateRow(
+            final String tableName, final ByteString rowKey, final Mutations mutations
+        ) {
+            assertEquals(BigtableBackend.COMPACTION_ROW, rowKey);
+            progressWrites++;
+            return async.resolved();
+        }
+
+        @Override
+        public AsyncFuture<Row> readModifyWriteRow(
+            final String tableName, final ByteString rowKey, final ReadModifyWriteRules rules
+        ) {
+            assertEquals(BigtableBackend.COMPACTION_ROW, rowKey);
+
+            final Family family = mock(Family.class);
+            when(family.latestCellValue()).thenReturn(ImmutableList.of(
+                new LatestCellValueColumn(ByteString.EMPTY, serializeLong(++claims))));
+
+            final Map<String, Family> families = new HashMap<>();
+            families.put(BigtableBackend.COMPACTION, family);
+            return async.resolved(new Row(rowKey, families));
+        }
+
+        @Override
+        public AsyncFuture<Boolean> checkAndMutateRow(
+            final String tableName, final ByteString rowKey, final RowFilter predicate,
+            final Mutations trueMutations, final Mutations falseMutations
+        ) {
+            throw new UnsupportedOperationException();
+        }
+
+        private static ByteString serializeLong(final long value) {
+            return ByteString.copyFrom(ByteBuffer.allocate(Long.BYTES).putLong(value).array());
+        }
+    }
+
     int compare(ByteString a, ByteString b) {
         ByteIterator itA = a.iterator();
         ByteIterator itB = b.iterator();
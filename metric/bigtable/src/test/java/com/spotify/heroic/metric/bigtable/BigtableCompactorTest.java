@@ -0,0 +1,212 @@
+package com.spotify.heroic.metric.bigtable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.cloud.bigtable.grpc.scanner.FlatRow;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.protobuf.ByteString;
+import com.spotify.heroic.async.AsyncObservable;
+import com.spotify.heroic.async.AsyncObserver;
+import com.spotify.heroic.common.DateRange;
+import com.spotify.heroic.common.Duration;
+import com.spotify.heroic.common.Series;
+import com.spotify.heroic.metric.bigtable.api.BigtableDataClient;
+import com.spotify.heroic.metric.bigtable.api.Mutations;
+import com.spotify.heroic.metric.bigtable.api.ReadModifyWriteRules;
+import com.spotify.heroic.metric.bigtable.api.ReadRowsRequest;
+import com.spotify.heroic.metric.bigtable.api.Row;
+import com.spotify.heroic.metric.bigtable.api.RowFilter;
+import eu.toolchain.async.AsyncFramework;
+import eu.toolchain.async.AsyncFuture;
+import eu.toolchain.async.ResolvableFuture;
+import eu.toolchain.async.TinyAsync;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class BigtableCompactorTest {
+    private final AsyncFramework async =
+        TinyAsync.builder().executor(MoreExecutors.newDirectExecutorService()).build();
+
+    @Test
+    public void testBoundedConcurrency() throws Exception {
+        final MetricsRowKeySerializer serializer = new MetricsRowKeySerializer();
+        final List<Row> rows = new ArrayList<>();
+
+        for (int i = 0; i < 5; i++) {
+            final Series series = Series.of("a", ImmutableMap.of("host", "h" + i));
+            rows.add(new Row(serializer.serializeFull(new RowKey(series, 0L)), new HashMap<>()));
+        }
+
+        final FakeDataClient client = new FakeDataClient(rows);
+        final BigtableCompactor compactor = new BigtableCompactor(async, serializer, "table",
+            new BigtableCompactionOptions(Optional.of(true), Optional.empty(),
+                Optional.of(Duration.of(0, TimeUnit.MILLISECONDS)),
+                Optional.empty(), Optional.of(2)));
+
+        final AsyncFuture<Long> done =
+            compactor.compactRange(client, new DateRange(0L, 0L), BigtableBackend.PERIOD);
+
+        /* the scan waits until a row has been compacted before it continues */
+        for (int i = 0; i < 3; i++) {
+            assertEquals(2, client.reads.size() - i);
+            client.reads.get(i).resolve(ImmutableList.of());
+        }
+
+        assertEquals(5, client.reads.size());
+        client.reads.get(3).resolve(ImmutableList.of());
+        client.reads.get(4).resolve(ImmutableList.of());
+
+        /* every row that waited for a compaction has been resumed */
+        for (final AsyncFuture<Void> waiter : client.observed) {
+            assertTrue(waiter.isResolved());
+        }
+
+        assertEquals(rows.size(), client.observed.size());
+        assertEquals(0L, (long) done.get());
+    }
+
+    @Test
+    public void testInterleavedCompactions() throws Exception {
+        final MetricsRowKeySerializer serializer = new MetricsRowKeySerializer();
+        final ByteString rowKey =
+            serializer.serializeFull(new RowKey(Series.of("a", ImmutableMap.of()), 0L));
+
+        final FakeDataClient client = new FakeDataClient(ImmutableList.of());
+        final BigtableCompactor compactor =
+            new BigtableCompactor(async, serializer, "table", new BigtableCompactionOptions());
+
+        final AsyncFuture<Boolean> first = compactor.compactRow(client, rowKey, 0L);
+        final AsyncFuture<Boolean> second = compactor.compactRow(client, rowKey, 0L);
+
+        final FlatRow.Cell early = pointCell(1L, 1000L);
+        final FlatRow.Cell late = pointCell(2L, 2000L);
+
+        /* the second compaction reads the late point, moves it into blocks and deletes its cell */
+        client.reads.get(1).resolve(ImmutableList.of(
+            new FlatRow(rowKey, ImmutableList.of(early, late))));
+
+        assertTrue(second.get());
+        assertEquals(1, client.rewrites);
+        assertEquals(1, client.mutations);
+
+        /* the first compaction read the row before the late point was written, and must not
+         * replace the blocks which hold it */
+        client.reads.get(0).resolve(ImmutableList.of(
+            new FlatRow(rowKey, ImmutableList.of(early))));
+
+        assertFalse(first.get());
+        assertEquals(1, client.rewrites);
+        assertEquals(1, client.mutations);
+    }
+
+    private static FlatRow.Cell pointCell(final long offset, final long timestamp) {
+        return new FlatRow.Cell(BigtableBackend.POINTS, BigtableBackend.serializeOffset(offset),
+            timestamp, ByteString.copyFrom(ByteBuffer.allocate(Double.BYTES).putDouble(1D).array()),
+            ImmutableList.of());
+    }
+
+    /**
+     * Data client which scans a fixed list of rows, where every row read is resolved by the test.
+     */
+    private final class FakeDataClient implements BigtableDataClient {
+        private final List<Row> rows;
+        private final List<ResolvableFuture<List<FlatRow>>> reads = new ArrayList<>();
+        private final List<AsyncFuture<Void>> observed = new ArrayList<>();
+
+        /* timestamp of the blocks of the compacted row, or -1 if it has none */
+        private long blocksWritten = -1L;
+        private int rewrites = 0;
+        private int mutations = 0;
+
+        private FakeDataClient(final List<Row> rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public AsyncFuture<Void> mutateRow(
+            final String tableName, final ByteString rowKey, final Mutations mutations
+        ) {
+            this.mutations++;
+            return async.resolved();
+        }
+
+        @Override
+        public AsyncFuture<List<FlatRow>> readRows(
+            final String tableName, final ReadRowsRequest request
+        ) {
+            final ResolvableFuture<List<FlatRow>> read = async.future();
+            reads.add(read);
+            return read;
+        }
+
+        @Override
+        public AsyncObservable<Row> readRowsObserved(
+            final String tableName, final ReadRowsRequest request
+        ) {
+            return observer -> scan(rows.iterator(), observer);
+        }
+
+        private void scan(final Iterator<Row> it, final AsyncObserver<Row> observer) {
+            if (!it.hasNext()) {
+                observer.end();
+                return;
+            }
+
+            final AsyncFuture<Void> next = observer.observe(it.next());
+            observed.add(next);
+            next.onResolved(v -> scan(it, observer));
+        }
+
+        @Override
+        public AsyncObservable<FlatRow> readFlatRowsObserved(
+            final String tableName, final ReadRowsRequest request
+        ) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public AsyncFuture<Row> readModifyWriteRow(
+            final String tableName, final ByteString rowKey, final ReadModifyWriteRules rules
+        ) {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * Only supports predicates which match blocks written since a timestamp.
+         */
+        @Override
+        public AsyncFuture<Boolean> checkAndMutateRow(
+            final String tableName, final ByteString rowKey, final RowFilter predicate,
+            final Mutations trueMutations, final Mutations falseMutations
+        ) {
+            final long since = predicate
+                .toPb()
+                .getChain()
+                .getFiltersList()
+                .stream()
+                .filter(com.google.bigtable.v2.RowFilter::hasTimestampRangeFilter)
+                .findFirst()
+                .orElseThrow(IllegalArgumentException::new)
+                .getTimestampRangeFilter()
+                .getStartTimestampMicros();
+
+            if (blocksWritten >= since) {
+                return async.resolved(true);
+            }
+
+            blocksWritten = System.currentTimeMillis() * 1000L;
+            rewrites++;
+            return async.resolved(false);
+        }
+    }
+}
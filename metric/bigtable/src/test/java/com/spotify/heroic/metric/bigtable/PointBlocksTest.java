@@ -0,0 +1,182 @@
+package com.spotify.heroic.metric.bigtable;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.cloud.bigtable.grpc.scanner.FlatRow;
+import com.google.common.collect.ImmutableList;
+import com.google.protobuf.ByteString;
+import com.spotify.heroic.metric.MetricCollection;
+import com.spotify.heroic.metric.bigtable.api.RowFilter;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class PointBlocksTest {
+    private static final long BASE = BigtableBackend.PERIOD * 3;
+
+    private static FlatRow.Cell block(final long[] offsets, final double[] values) {
+        return new FlatRow.Cell(BigtableBackend.BLOCKS,
+            PointBlocks.qualifier(offsets[0], offsets[offsets.length - 1]), 0L,
+            PointBlocks.encode(offsets, values, 0, offsets.length), ImmutableList.of());
+    }
+
+    private static FlatRow.Cell cell(final long offset, final double value) {
+        return new FlatRow.Cell(BigtableBackend.POINTS, BigtableBackend.serializeOffset(offset),
+            0L, ByteString.copyFrom(
+                ByteBuffer.allocate(Double.BYTES).putDouble(value).array()),
+            ImmutableList.of());
+    }
+
+    private static void assertRoundtrip(final long[] offsets, final double[] values) {
+        final ByteString block = PointBlocks.encode(offsets, values, 0, offsets.length);
+        assertEquals(offsets.length, PointBlocks.size(block));
+
+        final long[] timestamps = new long[offsets.length + 1];
+        final double[] decoded = new double[offsets.length + 1];
+        PointBlocks.decode(block, BASE, timestamps, decoded, 1);
+
+        for (int i = 0; i < offsets.length; i++) {
+            assertEquals(BASE + offsets[i], timestamps[i + 1]);
+            assertEquals(Double.doubleToLongBits(values[i]),
+                Double.doubleToLongBits(decoded[i + 1]));
+        }
+    }
+
+    @Test
+    public void testRoundtrip() {
+        assertRoundtrip(new long[]{0L}, new double[]{42D});
+
+        /* regular intervals, with repeated and slowly changing values */
+        final int size = 1000;
+        final long[] offsets = new long[size];
+        final double[] values = new double[size];
+
+        for (int i = 0; i < size; i++) {
+            offsets[i] = 10_000L * i;
+            values[i] = i / 10;
+        }
+
+        assertRoundtrip(offsets, values);
+    }
+
+    @Test
+    public void testRoundtripIrregular() {
+        final Random random = new Random(0x1234L);
+        final int size = 1000;
+        final long[] offsets = new long[size];
+        final double[] values = new double[size];
+
+        long offset = 0;
+
+        for (int i = 0; i < size; i++) {
+            /* deltas of every width, including ones which don't fit any short prefix */
+            offset += 1 + (random.nextLong() >>> (random.nextInt(64) + 42));
+            offsets[i] = offset;
+            values[i] = random.nextGaussian() * Math.pow(10, random.nextInt(20) - 10);
+        }
+
+        assertRoundtrip(offsets, values);
+    }
+
+    @Test
+    public void testRoundtripSpecialValues() {
+        assertRoundtrip(new long[]{1L, 2L, 3L, 4L, 5L, 6L, 7L, BigtableBackend.PERIOD - 1},
+            new double[]{Double.NaN, 0D, -0D, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+                Double.MIN_VALUE, Double.MAX_VALUE, Double.NaN});
+    }
+
+    @Test
+    public void testQualifier() {
+        final ByteString qualifier = PointBlocks.qualifier(10L, BigtableBackend.PERIOD - 1);
+        assertEquals(10L, PointBlocks.firstOffset(qualifier));
+        assertEquals(BigtableBackend.PERIOD - 1, PointBlocks.lastOffset(qualifier));
+    }
+
+    @Test
+    public void testMerge() {
+        final List<FlatRow.Cell> blocks =
+            ImmutableList.of(block(new long[]{10L, 20L, 30L}, new double[]{1D, 2D, 3D}),
+                block(new long[]{40L, 50L}, new double[]{4D, 5D}));
+
+        /* raw cells are written after the row was compacted, so they take precedence */
+        final List<FlatRow.Cell> cells =
+            ImmutableList.of(cell(5L, 0D), cell(20L, 20D), cell(35L, 35D), cell(60L, 6D));
+
+        final MetricCollection.ColumnarPointCollection all =
+            PointBlocks.merge(BASE, blocks, cells, -1L, BigtableBackend.PERIOD - 1);
+
+        assertArrayEquals(timestamps(5L, 10L, 20L, 30L, 35L, 40L, 50L, 60L), timestamps(all));
+        assertArrayEquals(new double[]{0D, 1D, 20D, 3D, 35D, 4D, 5D, 6D}, values(all), 0D);
+
+        /* the range is exclusive of its start, and inclusive of its end */
+        final MetricCollection.ColumnarPointCollection range =
+            PointBlocks.merge(BASE, blocks, cells, 10L, 40L);
+
+        assertArrayEquals(timestamps(20L, 30L, 35L, 40L), timestamps(range));
+        assertArrayEquals(new double[]{20D, 3D, 35D, 4D}, values(range), 0D);
+    }
+
+    @Test
+    public void testMergeSkipsBlocksOutsideRange() {
+        /* a block that is decoded would fail, since its value is not a valid block */
+        final FlatRow.Cell invalid =
+            new FlatRow.Cell(BigtableBackend.BLOCKS, PointBlocks.qualifier(100L, 200L), 0L,
+                ByteString.EMPTY, ImmutableList.of());
+
+        final MetricCollection.ColumnarPointCollection points = PointBlocks.merge(BASE,
+            ImmutableList.of(block(new long[]{10L, 20L}, new double[]{1D, 2D}), invalid),
+            ImmutableList.of(), 0L, 50L);
+
+        assertArrayEquals(timestamps(10L, 20L), timestamps(points));
+    }
+
+    private static long[] timestamps(final long... offsets) {
+        final long[] timestamps = new long[offsets.length];
+
+        for (int i = 0; i < offsets.length; i++) {
+            timestamps[i] = BASE + offsets[i];
+        }
+
+        return timestamps;
+    }
+
+    private static long[] timestamps(final MetricCollection.ColumnarPointCollection points) {
+        final long[] timestamps = new long[points.size()];
+
+        for (int i = 0; i < points.size(); i++) {
+            timestamps[i] = points.getTimestamp(i);
+        }
+
+        return timestamps;
+    }
+
+    private static double[] values(final MetricCollection.ColumnarPointCollection points) {
+        final double[] values = new double[points.size()];
+
+        for (int i = 0; i < points.size(); i++) {
+            values[i] = points.getValue(i);
+        }
+
+        return values;
+    }
+
+    @Test
+    public void testBlocksRange() {
+        final RowFilter.ColumnRange range = BigtableBackend.blocksRange(100L);
+
+        assertTrue(range.matchesColumn(PointBlocks.qualifier(0L, 50L)));
+        assertTrue(range.matchesColumn(PointBlocks.qualifier(50L, 150L)));
+        assertTrue(range.matchesColumn(PointBlocks.qualifier(100L, BigtableBackend.PERIOD - 1)));
+        assertFalse(range.matchesColumn(PointBlocks.qualifier(101L, 150L)));
+
+        /* ranges which end on the next period include every block */
+        assertTrue(BigtableBackend
+            .blocksRange(BigtableBackend.PERIOD)
+            .matchesColumn(PointBlocks.qualifier(BigtableBackend.PERIOD - 1,
+                BigtableBackend.PERIOD - 1)));
+    }
+}
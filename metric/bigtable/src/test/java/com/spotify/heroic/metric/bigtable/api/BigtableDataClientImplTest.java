@@ -0,0 +1,126 @@
+package com.spotify.heroic.metric.bigtable.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.cloud.bigtable.grpc.scanner.ResultScanner;
+import com.google.common.collect.ImmutableList;
+import com.spotify.heroic.async.AsyncObserver;
+import eu.toolchain.async.AsyncFramework;
+import eu.toolchain.async.AsyncFuture;
+import eu.toolchain.async.ResolvableFuture;
+import eu.toolchain.async.TinyAsync;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import org.junit.Test;
+
+public class BigtableDataClientImplTest {
+    private final AsyncFramework async = TinyAsync.builder().build();
+    private final BigtableDataClientImpl client =
+        new BigtableDataClientImpl(async, null, null, "projects/p/instances/i");
+
+    @Test
+    public void testScanWaitsForObserver() {
+        final StubScanner scanner = new StubScanner(ImmutableList.of(1, 2, 3));
+        final PendingObserver observer = new PendingObserver();
+
+        client.scanAsync(scanner, observer);
+
+        /* nothing more is read until the first row has been observed */
+        assertEquals(ImmutableList.of(1), observer.observed);
+        assertEquals(1, scanner.reads);
+
+        observer.pending.get(0).resolve(null);
+        assertEquals(ImmutableList.of(1, 2), observer.observed);
+        assertEquals(2, scanner.reads);
+
+        observer.pending.get(1).resolve(null);
+        assertEquals(ImmutableList.of(1, 2, 3), observer.observed);
+        assertFalse(observer.ended);
+
+        observer.pending.get(2).resolve(null);
+        assertEquals(4, scanner.reads);
+        assertTrue(observer.ended);
+    }
+
+    @Test
+    public void testScanStopsWhenObserverCancels() {
+        final StubScanner scanner = new StubScanner(ImmutableList.of(1, 2, 3));
+        final PendingObserver observer = new PendingObserver();
+
+        client.scanAsync(scanner, observer);
+        observer.pending.get(0).cancel();
+
+        assertEquals(ImmutableList.of(1), observer.observed);
+        assertEquals(1, scanner.reads);
+        assertTrue(observer.cancelled);
+        assertFalse(observer.ended);
+    }
+
+    /**
+     * Scanner over a fixed list of rows, which counts how many times it has been read.
+     */
+    private static class StubScanner implements ResultScanner<Integer> {
+        private final Iterator<Integer> rows;
+        private int reads = 0;
+
+        StubScanner(final List<Integer> rows) {
+            this.rows = rows.iterator();
+        }
+
+        @Override
+        public Integer next() {
+            reads++;
+            return rows.hasNext() ? rows.next() : null;
+        }
+
+        @Override
+        public Integer[] next(final int count) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int available() {
+            return 0;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Observer which only becomes ready for the next row once its future is resolved.
+     */
+    private class PendingObserver implements AsyncObserver<Integer> {
+        private final List<Integer> observed = new ArrayList<>();
+        private final List<ResolvableFuture<Void>> pending = new ArrayList<>();
+        private boolean ended = false;
+        private boolean cancelled = false;
+
+        @Override
+        public AsyncFuture<Void> observe(final Integer value) {
+            observed.add(value);
+            final ResolvableFuture<Void> future = async.future();
+            pending.add(future);
+            return future;
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        @Override
+        public void fail(final Throwable cause) {
+            throw new AssertionError(cause);
+        }
+
+        @Override
+        public void end() {
+            ended = true;
+        }
+    }
+}
@@ -0,0 +1,347 @@
+/*
+ * Copyright (c) 2020 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.heroic.metric.datastax;
+
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import eu.toolchain.async.AsyncFramework;
+import eu.toolchain.async.AsyncFuture;
+import eu.toolchain.async.FutureDone;
+import eu.toolchain.async.ResolvableFuture;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Coalesces writes to the same partition into unlogged batches.
+ * <p>
+ * Statements are queued by partition key. Whenever there is room for another batch in flight,
+ * the partition that has been waiting the longest is drained into a batch bounded by the
+ * configured size and byte limits. Writes for a partition that arrive while the backend is at its
+ * concurrency limit, from the same or from other requests, are therefore sent together, and the
+ * batches grow with the load.
+ * <p>
+ * Every statement holds a permit from when it is queued until its batch has finished. Once the
+ * configured number of statements are queued or in flight, further writes wait without blocking
+ * the caller, and are queued in the order they arrived as permits are given back.
+ * <p>
+ * Batches are only sent by a single thread at a time, which loops until no more batches can be
+ * sent. A batch that completes while being sent therefore does not recurse into sending the next
+ * one.
+ */
+final class BatchWriter {
+    /* estimated size of the column key and value of a single point */
+    private static final int POINT_BYTES = Integer.BYTES + Double.BYTES;
+
+    private final AsyncFramework async;
+    private final int maxBatchSize;
+    private final int maxBatchBytes;
+    private final int concurrency;
+    private final int maxQueued;
+    private final Semaphore queued;
+
+    private final ConcurrentMap<ByteBuffer, Partition> partitions = new ConcurrentHashMap<>();
+    /* keys of partitions with queued statements, in the order they became ready */
+    private final Queue<ByteBuffer> ready = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    /* number of requests to dispatch, only the thread that raises it from zero dispatches */
+    private final AtomicInteger dispatching = new AtomicInteger();
+    /* writes waiting for permits, guarded by itself */
+    private final Queue<Waiting> waiting = new ArrayDeque<>();
+
+    BatchWriter(final AsyncFramework async, final DatastaxBatchOptions options) {
+        this.async = async;
+        this.maxBatchSize = options.getMaxBatchSize();
+        this.maxBatchBytes = options.getMaxBatchBytes();
+        this.concurrency = options.getConcurrency();
+        this.maxQueued = options.getMaxQueued();
+        this.queued = new Semaphore(maxQueued);
+    }
+
+    /**
+     * Write the given statements, which must all belong to the partition with the given key.
+     *
+     * @return a future that is resolved when all statements have been written, or failed if any
+     * batch containing one of them failed
+     */
+    AsyncFuture<Void> write(
+        final Session session, final ByteBuffer key, final List<BoundStatement> statements
+    ) {
+        if (statements.isEmpty()) {
+            return async.resolved();
+        }
+
+        /* a write larger than the limit waits for everything else to finish */
+        final int permits = Math.min(statements.size(), maxQueued);
+        final Pending pending = new Pending(session, async.future(), statements.size());
+
+        synchronized (waiting) {
+            waiting.add(new Waiting(key, statements, permits, pending));
+        }
+
+        admit();
+        dispatch();
+        return pending.future;
+    }
+
+    /**
+     * Number of batches currently in flight.
+     */
+    int inFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Queue waiting writes in the order they arrived, for as long as there are permits for them.
+     */
+    private void admit() {
+        synchronized (waiting) {
+            while (!waiting.isEmpty() && queued.tryAcquire(waiting.peek().permits)) {
+                final Waiting next = waiting.poll();
+                enqueue(next.key, next.statements, next.permits, next.pending);
+            }
+        }
+    }
+
+    private void enqueue(
+        final ByteBuffer key, final List<BoundStatement> statements, final int permits,
+        final Pending pending
+    ) {
+        final int bytes = key.remaining() + POINT_BYTES;
+
+        partitions.compute(key, (k, p) -> {
+            final Partition partition = p == null ? new Partition() : p;
+            int i = 0;
+
+            for (final BoundStatement statement : statements) {
+                partition.entries.add(new Entry(statement, bytes, pending, i++ < permits));
+            }
+
+            if (p == null) {
+                ready.add(k);
+            }
+
+            return partition;
+        });
+    }
+
+    /**
+     * Send batches for as long as there is room for them.
+     * <p>
+     * A call made while another thread is dispatching makes that thread loop once more instead.
+     */
+    private void dispatch() {
+        if (dispatching.getAndIncrement() != 0) {
+            return;
+        }
+
+        int missed = 1;
+
+        do {
+            /* only the dispatching thread raises the number of batches in flight */
+            while (inFlight.get() < concurrency) {
+                final ByteBuffer key = ready.poll();
+
+                if (key == null) {
+                    break;
+                }
+
+                inFlight.incrementAndGet();
+                send(drain(key));
+            }
+
+            missed = dispatching.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    /**
+     * Take the next batch of statements from a ready partition.
+     * <p>
+     * A partition that still has statements queued afterwards is put at the back of the ready
+     * queue, otherwise it is removed.
+     */
+    private List<Entry> drain(final ByteBuffer key) {
+        final List<Entry> batch = new ArrayList<>();
+
+        partitions.compute(key, (k, partition) -> {
+            int bytes = 0;
+
+            while (!partition.entries.isEmpty() && batch.size() < maxBatchSize) {
+                final Entry next = partition.entries.peek();
+
+                if (!batch.isEmpty() && bytes + next.bytes > maxBatchBytes) {
+                    break;
+                }
+
+                batch.add(partition.entries.poll());
+                bytes += next.bytes;
+            }
+
+            if (partition.entries.isEmpty()) {
+                return null;
+            }
+
+            ready.add(k);
+            return partition;
+        });
+
+        return batch;
+    }
+
+    private void send(final List<Entry> batch) {
+        final Statement statement;
+
+        if (batch.size() == 1) {
+            statement = batch.get(0).statement;
+        } else {
+            final BatchStatement b = new BatchStatement(BatchStatement.Type.UNLOGGED);
+
+            for (final Entry e : batch) {
+                b.add(e.statement);
+            }
+
+            statement = b;
+        }
+
+        AsyncFuture<ResultSet> future;
+
+        try {
+            future = Async.bind(async, batch.get(0).pending.session.executeAsync(statement));
+        } catch (final Exception e) {
+            future = async.failed(e);
+        }
+
+        future.onDone(new FutureDone<ResultSet>() {
+            @Override
+            public void failed(final Throwable cause) {
+                for (final Entry e : batch) {
+                    e.pending.future.fail(cause);
+                }
+            }
+
+            @Override
+            public void resolved(final ResultSet result) {
+                for (final Entry e : batch) {
+                    e.pending.written();
+                }
+            }
+
+            @Override
+            public void cancelled() {
+                for (final Entry e : batch) {
+                    e.pending.future.cancel();
+                }
+            }
+        }).onFinished(() -> {
+            int permits = 0;
+
+            for (final Entry e : batch) {
+                if (e.permit) {
+                    permits++;
+                }
+            }
+
+            queued.release(permits);
+            inFlight.decrementAndGet();
+            admit();
+            dispatch();
+        });
+    }
+
+    /**
+     * Statements queued for a single partition, only accessed while holding its map entry.
+     */
+    private static final class Partition {
+        private final Queue<Entry> entries = new ArrayDeque<>();
+    }
+
+    private static final class Entry {
+        private final BoundStatement statement;
+        private final int bytes;
+        private final Pending pending;
+        /* if the statement holds a permit */
+        private final boolean permit;
+
+        private Entry(
+            final BoundStatement statement, final int bytes, final Pending pending,
+            final boolean permit
+        ) {
+            this.statement = statement;
+            this.bytes = bytes;
+            this.pending = pending;
+            this.permit = permit;
+        }
+    }
+
+    /**
+     * A call to write which is waiting for permits to be queued.
+     */
+    private static final class Waiting {
+        private final ByteBuffer key;
+        private final List<BoundStatement> statements;
+        private final int permits;
+        private final Pending pending;
+
+        private Waiting(
+            final ByteBuffer key, final List<BoundStatement> statements, final int permits,
+            final Pending pending
+        ) {
+            this.key = key;
+            this.statements = statements;
+            this.permits = permits;
+            this.pending = pending;
+        }
+    }
+
+    /**
+     * A single call to write, which completes once all of its statements have been written.
+     */
+    private static final class Pending {
+        private final Session session;
+        private final ResolvableFuture<Void> future;
+        private final AtomicInteger remaining;
+
+        private Pending(
+            final Session session, final ResolvableFuture<Void> future, final int statements
+        ) {
+            this.session = session;
+            this.future = future;
+            this.remaining = new AtomicInteger(statements);
+        }
+
+        private void written() {
+            if (remaining.decrementAndGet() == 0) {
+                future.resolve(null);
+            }
+        }
+    }
+}
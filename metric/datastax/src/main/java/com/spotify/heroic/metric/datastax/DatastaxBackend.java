@@ -23,6 +23,7 @@ package com.spotify.heroic.metric.datastax;
 
 import com.datastax.driver.core.BoundStatement;
 import com.datastax.driver.core.ExecutionInfo;
+import com.datastax.driver.core.Host;
 import com.datastax.driver.core.PreparedStatement;
 import com.datastax.driver.core.ResultSet;
 import com.datastax.driver.core.Row;
@@ -34,6 +35,7 @@ import com.spotify.heroic.QueryOptions;
 import com.spotify.heroic.async.AsyncObservable;
 import com.spotify.heroic.async.AsyncObserver;
 import com.spotify.heroic.common.Groups;
+import com.spotify.heroic.common.Series;
 import com.spotify.heroic.common.Throwing;
 import com.spotify.heroic.lifecycle.LifeCycleRegistry;
 import com.spotify.heroic.lifecycle.LifeCycles;
@@ -44,6 +46,7 @@ import com.spotify.heroic.metric.BackendKeyFilter;
 import com.spotify.heroic.metric.BackendKeySet;
 import com.spotify.heroic.metric.FetchData;
 import com.spotify.heroic.metric.FetchQuotaWatcher;
+import com.spotify.heroic.metric.MetricChunker;
 import com.spotify.heroic.metric.MetricCollection;
 import com.spotify.heroic.metric.MetricReadResult;
 import com.spotify.heroic.metric.MetricType;
@@ -68,8 +71,12 @@ import io.opencensus.trace.Span;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
@@ -77,6 +84,7 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import javax.inject.Inject;
@@ -97,18 +105,27 @@ public class DatastaxBackend extends AbstractMetricBackend implements LifeCycles
         QueryTrace.identifier(DatastaxBackend.class, "fetch");
     private static final Logger log = LoggerFactory.getLogger(DatastaxBackend.class);
 
+    /**
+     * Maximum number of partitions read by a single query when fetching many series.
+     */
+    private static final int MAX_PARTITIONS_PER_FETCH = 100;
+
     private final AsyncFramework async;
     private final Managed<Connection> connection;
     private final Groups groups;
+    private final Optional<BatchWriter> batchWriter;
 
     @Inject
     public DatastaxBackend(
-        final AsyncFramework async, final Managed<Connection> connection, final Groups groups
+        final AsyncFramework async, final Managed<Connection> connection, final Groups groups,
+        final DatastaxBatchOptions batching
     ) {
         super(async);
         this.async = async;
         this.connection = connection;
         this.groups = groups;
+        this.batchWriter = batching.isEnabled() ? Optional.of(new BatchWriter(async, batching))
+            : Optional.empty();
     }
 
     @Override
@@ -129,7 +146,13 @@ public class DatastaxBackend extends AbstractMetricBackend implements LifeCycles
 
     @Override
     public AsyncFuture<WriteMetric> write(final WriteMetric.Request request) {
-        return connection.doto(c -> doWrite(c, c.schema.writeSession(), request));
+        return connection.doto(c -> {
+            if (batchWriter.isPresent()) {
+                return doBatchWrite(c, c.schema.writeSession(), batchWriter.get(), request);
+            }
+
+            return doWrite(c, c.schema.writeSession(), request);
+        });
     }
 
     @Override
@@ -152,17 +175,10 @@ public class DatastaxBackend extends AbstractMetricBackend implements LifeCycles
                 c.schema.ranges(request.getSeries(), request.getRange());
 
             if (request.getType() == MetricType.POINT) {
-                final List<AsyncFuture<FetchData>> fetches =
-                    fetchDataPoints(w, limit, request.getOptions(), prepared, c);
-
-                final List<AsyncFuture<FetchData.Result>> results =
-                    Lists.transform(fetches, fetch -> fetch.directTransform(fetchData -> {
-                        fetchData
-                            .getGroups()
-                            .forEach(mc -> metricsConsumer.accept(new MetricReadResult(mc)));
-                        return fetchData.getResult();
-                    }));
-                return async.collect(results, FetchData.collectResult(FETCH));
+                final List<AsyncFuture<FetchData.Result>> fetches =
+                    fetchDataPoints(w, limit, watcher, request.getOptions(), prepared, c,
+                        metricsConsumer);
+                return async.collect(fetches, FetchData.collectResult(FETCH));
             }
 
             return async.resolved(new FetchData.Result(w.end(FETCH),
@@ -170,6 +186,57 @@ public class DatastaxBackend extends AbstractMetricBackend implements LifeCycles
         });
     }
 
+    /**
+     * Fetch the points of many series, reading the partitions which have the same base and the
+     * same primary replica with a single {@code IN} query routed to that replica.
+     */
+    @Override
+    public AsyncFuture<FetchData.Result> fetchMany(
+        final FetchData.BatchRequest request,
+        final FetchQuotaWatcher watcher,
+        final BiConsumer<Series, MetricReadResult> metricsConsumer,
+        final Span parentSpan
+    ) {
+        if (request.getType() != MetricType.POINT) {
+            return super.fetchMany(request, watcher, metricsConsumer, parentSpan);
+        }
+
+        if (!watcher.mayReadData()) {
+            throw new IllegalArgumentException("query violated data limit");
+        }
+
+        final int limit = watcher.getReadDataQuota();
+
+        return connection.doto(c -> {
+            final QueryTrace.Watch w = QueryTrace.watch();
+
+            final Map<Long, Map<Optional<Host>, List<SeriesFetch>>> groups = new LinkedHashMap<>();
+
+            for (final Series series : request.getSeries()) {
+                for (final PreparedFetch p : c.schema.ranges(series, request.getRange())) {
+                    groups
+                        .computeIfAbsent(p.base(), base -> new LinkedHashMap<>())
+                        .computeIfAbsent(primaryReplica(c, p.key()), host -> new ArrayList<>())
+                        .add(new SeriesFetch(series, p));
+                }
+            }
+
+            final List<AsyncFuture<FetchData.Result>> results = new ArrayList<>();
+
+            for (final Map<Optional<Host>, List<SeriesFetch>> replicas : groups.values()) {
+                for (final List<SeriesFetch> fetches : replicas.values()) {
+                    for (final List<SeriesFetch> partitions : Lists.partition(fetches,
+                        MAX_PARTITIONS_PER_FETCH)) {
+                        results.add(fetchPartitions(w, limit, watcher, request.getOptions(),
+                            partitions, c, metricsConsumer));
+                    }
+                }
+            }
+
+            return async.collect(results, FetchData.collectResult(FETCH));
+        });
+    }
+
     @Override
     public Iterable<BackendEntry> listEntries() {
         throw new IllegalStateException("#listEntries is not supported");
@@ -313,7 +380,8 @@ public class DatastaxBackend extends AbstractMetricBackend implements LifeCycles
 
             Async
                 .bind(async, c.session.executeAsync(f.fetch(Integer.MAX_VALUE)))
-                .onDone(new RowFetchHelper<>(future, f.converter(),
+                .onDone(new RowFetchHelper<>(future, FetchQuotaWatcher.NO_QUOTA,
+                    listOf(f.converter()),
                     result -> async.resolved(MetricCollection.points(result.getData()))));
 
             return future;
@@ -443,7 +511,65 @@ public class DatastaxBackend extends AbstractMetricBackend implements LifeCycles
             }
         }
 
-        return async.eventuallyCollect(callables, new StreamCollector<Long, WriteMetric>() {
+        return async.eventuallyCollect(callables, collectWriteTimes(), 500);
+    }
+
+    /**
+     * Write points grouped by partition, through the batch writer.
+     */
+    private AsyncFuture<WriteMetric> doBatchWrite(
+        final Connection c, final SchemaInstance.WriteSession session, final BatchWriter writer,
+        final WriteMetric.Request request
+    ) throws IOException {
+        final MetricCollection g = request.getData();
+
+        if (g.getType() != MetricType.POINT) {
+            return async.resolved(new WriteMetric());
+        }
+
+        final Map<ByteBuffer, List<Point>> partitions = new LinkedHashMap<>();
+
+        for (final Point d : g.getDataAs(Point.class)) {
+            partitions
+                .computeIfAbsent(session.partitionKey(request.getSeries(), d),
+                    k -> new ArrayList<>())
+                .add(d);
+        }
+
+        final List<AsyncFuture<Long>> writes = new ArrayList<>(partitions.size());
+
+        for (final Map.Entry<ByteBuffer, List<Point>> e : partitions.entrySet()) {
+            final List<Point> points = e.getValue();
+            final List<BoundStatement> statements = new ArrayList<>(points.size());
+
+            for (final Point d : points) {
+                statements.add(session.writePoint(request.getSeries(), d));
+            }
+
+            final long start = System.nanoTime();
+
+            writes.add(writer.write(c.session, e.getKey(), statements).onFailed(cause -> {
+                // log series using a marker so they can be collected on their own file
+                for (final Point d : points) {
+                    log.info(
+                        FAILED_METRICS,
+                        "{\"series\": \"{}\", \"timestamp\": {}}",
+                        request.getSeries().toString(),
+                        d.toString()
+                    );
+                }
+                log.debug("Failed to write metrics", cause);
+            }).directTransform(r -> System.nanoTime() - start));
+        }
+
+        return async.collect(writes, collectWriteTimes());
+    }
+
+    /**
+     * Collect the time taken by each successful write, failures are logged where they happen.
+     */
+    private static StreamCollector<Long, WriteMetric> collectWriteTimes() {
+        return new StreamCollector<Long, WriteMetric>() {
             final ConcurrentLinkedQueue<Long> q = new ConcurrentLinkedQueue<>();
 
             @Override
@@ -463,7 +589,7 @@ public class DatastaxBackend extends AbstractMetricBackend implements LifeCycles
             public WriteMetric end(int resolved, int failed, int cancelled) {
                 return new WriteMetric(ImmutableList.of(), ImmutableList.copyOf(q));
             }
-        }, 500);
+        };
     }
 
     private AsyncFuture<QueryTrace> buildTrace(
@@ -504,14 +630,19 @@ public class DatastaxBackend extends AbstractMetricBackend implements LifeCycles
             .directTransform(t -> QueryTrace.of(what, elapsed, ImmutableList.copyOf(t)));
     }
 
-    private List<AsyncFuture<FetchData>> fetchDataPoints(
-        final QueryTrace.Watch w, final int limit, final QueryOptions options,
-        final List<PreparedFetch> prepared, final Connection c
+    /**
+     * Fetch the given ranges of a single series, handing over the points in chunks as they are
+     * read.
+     */
+    private List<AsyncFuture<FetchData.Result>> fetchDataPoints(
+        final QueryTrace.Watch w, final int limit, final FetchQuotaWatcher watcher,
+        final QueryOptions options, final List<PreparedFetch> prepared, final Connection c,
+        final Consumer<MetricReadResult> metricsConsumer
     ) {
-        final List<AsyncFuture<FetchData>> fetches = new ArrayList<>(prepared.size());
+        final List<AsyncFuture<FetchData.Result>> fetches = new ArrayList<>(prepared.size());
 
         for (final Schema.PreparedFetch p : prepared) {
-            final Function<RowFetchResult<Point>, AsyncFuture<QueryTrace>> traceBuilder;
+            final Function<RowFetchResult<Void>, AsyncFuture<QueryTrace>> traceBuilder;
 
             final Statement stmt;
 
@@ -525,17 +656,18 @@ public class DatastaxBackend extends AbstractMetricBackend implements LifeCycles
                 traceBuilder = result -> async.resolved(w.end(FETCH_SEGMENT));
             }
 
-            final ResolvableFuture<FetchData> future = async.future();
+            pageByChunk(stmt, watcher);
 
-            Async
-                .bind(async, c.session.executeAsync(stmt))
-                .onDone(new RowFetchHelper<>(future, p.converter(),
-                    result -> traceBuilder.apply(result).directTransform(trace -> {
-                        final ImmutableList<Long> times = ImmutableList.of(trace.elapsed());
-                        final List<MetricCollection> groups =
-                            ImmutableList.of(MetricCollection.points(result.getData()));
-                        return new FetchData(new FetchData.Result(trace), times, groups);
-                    })));
+            final ResolvableFuture<FetchData.Result> future = async.future();
+
+            final RowFetchHelper<Void, FetchData.Result> helper =
+                new RowFetchHelper<>(future, watcher,
+                    pointsOf(p, watcher.getChunkSize(),
+                        mc -> metricsConsumer.accept(new MetricReadResult(mc))),
+                    result -> traceBuilder.apply(result).directTransform(FetchData.Result::new));
+
+            watcher.acquireChunk(
+                () -> Async.bind(async, c.session.executeAsync(stmt)).onDone(helper));
 
             fetches.add(future);
         }
@@ -543,61 +675,265 @@ public class DatastaxBackend extends AbstractMetricBackend implements LifeCycles
         return fetches;
     }
 
+    /**
+     * Fetch the given partitions, which all have the same base, with a single query.
+     * <p>
+     * The points of each partition are handed over in chunks as they are read, and a result is
+     * emitted for every partition, even the ones which have no points.
+     */
+    private AsyncFuture<FetchData.Result> fetchPartitions(
+        final QueryTrace.Watch w, final int limit, final FetchQuotaWatcher watcher,
+        final QueryOptions options,
+        final List<SeriesFetch> partitions, final Connection c,
+        final BiConsumer<Series, MetricReadResult> metricsConsumer
+    ) {
+        final PreparedFetch first = partitions.get(0).fetch;
+
+        final List<ByteBuffer> keys =
+            ImmutableList.copyOf(Lists.transform(partitions, p -> p.fetch.key().duplicate()));
+
+        final BoundStatement bound = first.fetchMany(keys, limit);
+        bound.setRoutingKey(keys.get(0));
+
+        final Function<RowFetchResult<Void>, AsyncFuture<QueryTrace>> traceBuilder;
+
+        final Statement stmt;
+
+        if (options.tracing().isEnabled(Tracing.DETAILED)) {
+            stmt = bound.enableTracing();
+            traceBuilder = result -> buildTrace(c,
+                FETCH_SEGMENT.extend(first + " (" + keys.size() + " partitions)"), w.elapsed(),
+                result.getInfo());
+        } else {
+            stmt = bound;
+            traceBuilder = result -> async.resolved(w.end(FETCH_SEGMENT));
+        }
+
+        pageByChunk(stmt, watcher);
+
+        final ResolvableFuture<FetchData.Result> future = async.future();
+
+        final RowFetchHelper<Void, FetchData.Result> helper =
+            new RowFetchHelper<>(future, watcher,
+                partitionsOf(first, partitions, watcher.getChunkSize(), metricsConsumer),
+                result -> traceBuilder.apply(result).directTransform(FetchData.Result::new));
+
+        watcher.acquireChunk(() -> Async.bind(async, c.session.executeAsync(stmt)).onDone(helper));
+
+        return future;
+    }
+
+    /**
+     * Read the given statement in pages of at most the chunk size of the given watcher, since
+     * every page is read as a single chunk.
+     */
+    private static void pageByChunk(final Statement stmt, final FetchQuotaWatcher watcher) {
+        final int chunkSize = watcher.getChunkSize();
+
+        if (chunkSize < Integer.MAX_VALUE) {
+            stmt.setFetchSize(chunkSize);
+        }
+    }
+
+    /**
+     * The replica which owns the given partition, if known.
+     */
+    private static Optional<Host> primaryReplica(final Connection c, final ByteBuffer key) {
+        final Set<Host> replicas = c.session
+            .getCluster()
+            .getMetadata()
+            .getReplicas(c.schema.keyspace(), key.duplicate());
+        return replicas.stream().findFirst();
+    }
+
     public String toString() {
         return "DatastaxBackend(connection=" + this.connection + ")";
     }
 
-    private final class RowFetchHelper<R, T> implements FutureDone<ResultSet> {
-        private final List<R> data = new ArrayList<>();
+    /**
+     * Accumulates fetched rows into a result.
+     */
+    private interface RowAccumulator<R> {
+        void accept(Row row) throws Exception;
+
+        /**
+         * Called once all rows of a page have been accepted, before the next page is read.
+         */
+        default void flush() throws Exception {
+        }
+
+        R result() throws Exception;
+    }
+
+    /**
+     * Accumulate rows into a list, converting each row with the given converter.
+     */
+    private static <T> RowAccumulator<List<T>> listOf(final Transform<Row, T> converter) {
+        final List<T> data = new ArrayList<>();
+
+        return new RowAccumulator<List<T>>() {
+            @Override
+            public void accept(final Row row) throws Exception {
+                data.add(converter.transform(row));
+            }
+
+            @Override
+            public List<T> result() {
+                return data;
+            }
+        };
+    }
 
+    /**
+     * Accumulate rows into primitive point columns, without allocating a point per row.
+     * <p>
+     * The points are handed over in chunks of at most the given size, and whenever a page of
+     * rows has been read. A fetch without points is handed over as an empty chunk.
+     */
+    private static RowAccumulator<Void> pointsOf(
+        final PreparedFetch fetch, final int chunkSize, final Consumer<MetricCollection> consumer
+    ) {
+        final MetricChunker chunks = MetricChunker.points(chunkSize, consumer);
+
+        return new RowAccumulator<Void>() {
+            @Override
+            public void accept(final Row row) {
+                fetch.decode(row, chunks);
+            }
+
+            @Override
+            public void flush() {
+                chunks.flush();
+            }
+
+            @Override
+            public Void result() {
+                chunks.finish();
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Accumulate rows of many partitions into primitive point columns, one per partition.
+     * <p>
+     * The points of each partition are handed over in chunks of at most the given size, and
+     * whenever a page of rows has been read. A partition without points is handed over as an
+     * empty chunk.
+     *
+     * @param fetch Fetch used to decode the rows, which has the same base as all partitions.
+     * @param partitions The partitions, each with the series that it belongs to.
+     */
+    private static RowAccumulator<Void> partitionsOf(
+        final PreparedFetch fetch, final List<SeriesFetch> partitions, final int chunkSize,
+        final BiConsumer<Series, MetricReadResult> consumer
+    ) {
+        final Map<ByteBuffer, MetricChunker> chunks = new HashMap<>();
+
+        for (final SeriesFetch p : partitions) {
+            chunks.put(p.fetch.key().duplicate(), MetricChunker.points(chunkSize,
+                mc -> consumer.accept(p.series, new MetricReadResult(mc))));
+        }
+
+        return new RowAccumulator<Void>() {
+            @Override
+            public void accept(final Row row) {
+                final MetricChunker partition = chunks.get(fetch.partition(row));
+
+                if (partition == null) {
+                    throw new IllegalStateException("Row from partition which was not fetched");
+                }
+
+                fetch.decode(row, partition);
+            }
+
+            @Override
+            public void flush() {
+                chunks.values().forEach(MetricChunker::flush);
+            }
+
+            @Override
+            public Void result() {
+                chunks.values().forEach(MetricChunker::finish);
+                return null;
+            }
+        };
+    }
+
+    private static class SeriesFetch {
+        private final Series series;
+        private final PreparedFetch fetch;
+
+        SeriesFetch(final Series series, final PreparedFetch fetch) {
+            this.series = series;
+            this.fetch = fetch;
+        }
+    }
+
+    /**
+     * Reads all pages of a result set into an accumulator.
+     * <p>
+     * Every page is read as a chunk acquired from the given watcher, so the page which is read
+     * must have been acquired before this helper is invoked. The next page is acquired while the
+     * current one is accumulated, and the current page is released once it has been flushed.
+     */
+    private final class RowFetchHelper<R, T> implements FutureDone<ResultSet> {
         private final ResolvableFuture<T> future;
-        private final Transform<Row, R> rowConverter;
+        private final FetchQuotaWatcher watcher;
+        private final RowAccumulator<R> accumulator;
         private final Transform<RowFetchResult<R>, AsyncFuture<T>> converter;
 
-        @java.beans.ConstructorProperties({ "future", "rowConverter", "converter" })
+        @java.beans.ConstructorProperties({ "future", "watcher", "accumulator", "converter" })
         public RowFetchHelper(final ResolvableFuture<T> future,
-                              final Transform<Row, R> rowConverter,
+                              final FetchQuotaWatcher watcher,
+                              final RowAccumulator<R> accumulator,
                               final Transform<RowFetchResult<R>, AsyncFuture<T>> converter) {
             this.future = future;
-            this.rowConverter = rowConverter;
+            this.watcher = watcher;
+            this.accumulator = accumulator;
             this.converter = converter;
         }
 
         @Override
         public void failed(Throwable cause) {
+            watcher.releaseChunk();
             future.fail(cause);
         }
 
         @Override
         public void cancelled() {
+            watcher.releaseChunk();
             future.cancel();
         }
 
         @Override
         public void resolved(final ResultSet rows) {
             if (future.isDone()) {
+                watcher.releaseChunk();
                 return;
             }
 
             int count = rows.getAvailableWithoutFetching();
 
-            final Optional<AsyncFuture<Void>> nextFetch = rows.isFullyFetched() ? Optional.empty()
-                : Optional.of(
-                    Async.bind(async, rows.fetchMoreResults()).directTransform(r -> null));
-
-            while (count-- > 0) {
-                final R part;
+            final Optional<AsyncFuture<Void>> nextFetch =
+                rows.isFullyFetched() ? Optional.empty() : Optional.of(fetchMore(rows));
 
-                try {
-                    part = rowConverter.transform(rows.one());
-                } catch (Exception e) {
-                    future.fail(e);
-                    return;
+            try {
+                while (count-- > 0) {
+                    accumulator.accept(rows.one());
                 }
 
-                data.add(part);
+                accumulator.flush();
+            } catch (Exception e) {
+                watcher.releaseChunk();
+                // the next page is not read, but its chunk still has to be released
+                nextFetch.ifPresent(next -> next.onFinished(watcher::releaseChunk));
+                future.fail(e);
+                return;
             }
 
+            watcher.releaseChunk();
+
             if (nextFetch.isPresent()) {
                 nextFetch.get().onDone(new FutureDone<Void>() {
                     @Override
@@ -623,7 +959,8 @@ public class DatastaxBackend extends AbstractMetricBackend implements LifeCycles
 
             try {
                 result =
-                    converter.transform(new RowFetchResult<>(rows.getAllExecutionInfo(), data));
+                    converter.transform(
+                        new RowFetchResult<>(rows.getAllExecutionInfo(), accumulator.result()));
             } catch (final Exception e) {
                 future.fail(e);
                 return;
@@ -648,6 +985,33 @@ public class DatastaxBackend extends AbstractMetricBackend implements LifeCycles
                 }
             });
         }
+
+        /**
+         * Read the next page of the given result set, once its chunk has been acquired.
+         */
+        private AsyncFuture<Void> fetchMore(final ResultSet rows) {
+            final ResolvableFuture<Void> next = async.future();
+
+            watcher.acquireChunk(() -> Async.bind(async, rows.fetchMoreResults()).onDone(
+                new FutureDone<ResultSet>() {
+                    @Override
+                    public void failed(Throwable cause) {
+                        next.fail(cause);
+                    }
+
+                    @Override
+                    public void cancelled() {
+                        next.cancel();
+                    }
+
+                    @Override
+                    public void resolved(ResultSet result) {
+                        next.resolve(null);
+                    }
+                }));
+
+            return next;
+        }
     }
 
     private final class RowStreamHelper<R> implements FutureDone<ResultSet> {
@@ -778,7 +1142,8 @@ public class DatastaxBackend extends AbstractMetricBackend implements LifeCycles
 
         Async
             .bind(async, c.session.executeAsync(SELECT_EVENTS_FORMAT, id))
-            .onDone(new RowFetchHelper<>(future, converter, result ->
+            .onDone(new RowFetchHelper<>(future, FetchQuotaWatcher.NO_QUOTA, listOf(converter),
+                result ->
                 async.resolved(ImmutableList.copyOf(result.getData()))));
 
         return future;
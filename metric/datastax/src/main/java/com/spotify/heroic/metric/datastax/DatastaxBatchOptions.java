@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2020 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.heroic.metric.datastax;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.Optional;
+
+/**
+ * Options for grouping point writes into unlogged, single-partition batches.
+ */
+public class DatastaxBatchOptions {
+    public static final boolean DEFAULT_ENABLED = false;
+    public static final int DEFAULT_MAX_BATCH_SIZE = 100;
+    public static final int DEFAULT_MAX_BATCH_BYTES = 32 * 1024;
+    public static final int DEFAULT_CONCURRENCY = 64;
+    public static final int DEFAULT_MAX_QUEUED = 100000;
+
+    /* write points in batches grouped by partition */
+    private final boolean enabled;
+    /* maximum number of statements in a single batch */
+    private final int maxBatchSize;
+    /* maximum estimated size in bytes of a single batch */
+    private final int maxBatchBytes;
+    /* maximum number of batches in flight for the backend */
+    private final int concurrency;
+    /* maximum number of statements queued or in flight, before writes wait */
+    private final int maxQueued;
+
+    public DatastaxBatchOptions() {
+        this(Optional.empty(), Optional.empty(), Optional.empty(), Optional.empty(),
+            Optional.empty());
+    }
+
+    @JsonCreator
+    public DatastaxBatchOptions(
+        @JsonProperty("enabled") Optional<Boolean> enabled,
+        @JsonProperty("maxBatchSize") Optional<Integer> maxBatchSize,
+        @JsonProperty("maxBatchBytes") Optional<Integer> maxBatchBytes,
+        @JsonProperty("concurrency") Optional<Integer> concurrency,
+        @JsonProperty("maxQueued") Optional<Integer> maxQueued
+    ) {
+        this.enabled = enabled.orElse(DEFAULT_ENABLED);
+        this.maxBatchSize = maxBatchSize.orElse(DEFAULT_MAX_BATCH_SIZE);
+        this.maxBatchBytes = maxBatchBytes.orElse(DEFAULT_MAX_BATCH_BYTES);
+        this.concurrency = concurrency.orElse(DEFAULT_CONCURRENCY);
+        this.maxQueued = maxQueued.orElse(DEFAULT_MAX_QUEUED);
+
+        if (this.maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be positive");
+        }
+
+        if (this.maxBatchBytes < 1) {
+            throw new IllegalArgumentException("maxBatchBytes must be positive");
+        }
+
+        if (this.concurrency < 1) {
+            throw new IllegalArgumentException("concurrency must be positive");
+        }
+
+        if (this.maxQueued < 1) {
+            throw new IllegalArgumentException("maxQueued must be positive");
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public int getMaxBatchBytes() {
+        return maxBatchBytes;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public int getMaxQueued() {
+        return maxQueued;
+    }
+}
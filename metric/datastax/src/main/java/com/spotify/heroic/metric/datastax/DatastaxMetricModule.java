@@ -90,6 +90,8 @@ public final class DatastaxMetricModule implements MetricModule, DynamicModuleId
     private final DatastaxAuthentication authentication;
     /* client pooling options */
     private final DatastaxPoolingOptions poolingOptions;
+    /* options for batching writes by partition */
+    private final DatastaxBatchOptions batching;
 
     @JsonCreator
     public DatastaxMetricModule(
@@ -103,7 +105,8 @@ public final class DatastaxMetricModule implements MetricModule, DynamicModuleId
         @JsonProperty("consistencyLevel") Optional<ConsistencyLevel> consistencyLevel,
         @JsonProperty("retryPolicy") Optional<RetryPolicy> retryPolicy,
         @JsonProperty("authentication") Optional<DatastaxAuthentication> authentication,
-        @JsonProperty("poolingOptions") Optional<DatastaxPoolingOptions> poolingOptions
+        @JsonProperty("poolingOptions") Optional<DatastaxPoolingOptions> poolingOptions,
+        @JsonProperty("batching") Optional<DatastaxBatchOptions> batching
     ) {
         this.id = id;
         this.groups = groups.orElseGet(Groups::empty).or("heroic");
@@ -116,6 +119,7 @@ public final class DatastaxMetricModule implements MetricModule, DynamicModuleId
         this.retryPolicy = retryPolicy.orElse(DefaultRetryPolicy.INSTANCE);
         this.authentication = authentication.orElseGet(DatastaxAuthentication.None::new);
         this.poolingOptions = poolingOptions.orElseGet(DatastaxPoolingOptions::new);
+        this.batching = batching.orElseGet(DatastaxBatchOptions::new);
     }
 
     private static List<InetSocketAddress> convert(Set<String> source) {
@@ -192,6 +196,12 @@ public final class DatastaxMetricModule implements MetricModule, DynamicModuleId
             return groups;
         }
 
+        @Provides
+        @DatastaxScope
+        public DatastaxBatchOptions batching() {
+            return batching;
+        }
+
         @Provides
         @DatastaxScope
         public Managed<Connection> connection(
@@ -231,6 +241,7 @@ public final class DatastaxMetricModule implements MetricModule, DynamicModuleId
         private Optional<RetryPolicy> retryPolicy = empty();
         private Optional<DatastaxAuthentication> authentication = empty();
         private Optional<DatastaxPoolingOptions> poolingOptions = empty();
+        private Optional<DatastaxBatchOptions> batching = empty();
 
         public Builder id(String id) {
             this.id = of(id);
@@ -282,9 +293,15 @@ public final class DatastaxMetricModule implements MetricModule, DynamicModuleId
             return this;
         }
 
+        public Builder batching(DatastaxBatchOptions batching) {
+            this.batching = of(batching);
+            return this;
+        }
+
         public DatastaxMetricModule build() {
             return new DatastaxMetricModule(id, groups, seeds, schema, configure, fetchSize,
-                readTimeout, consistencyLevel, retryPolicy, authentication, poolingOptions);
+                readTimeout, consistencyLevel, retryPolicy, authentication, poolingOptions,
+                batching);
         }
     }
 }
@@ -25,5 +25,5 @@ import com.datastax.driver.core.ExecutionInfo
 
 data class RowFetchResult<T>(
     val info: List<ExecutionInfo>,
-    val data: List<T>
+    val data: T
 )
\ No newline at end of file
@@ -27,9 +27,12 @@ import com.datastax.driver.core.Session;
 import com.fasterxml.jackson.annotation.JsonSubTypes;
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
 import com.spotify.heroic.metric.Point;
+import com.spotify.heroic.metric.PointSink;
 import com.spotify.heroic.metric.datastax.schema.ng.NextGenSchema;
 import eu.toolchain.async.AsyncFuture;
 import eu.toolchain.async.Transform;
+import java.nio.ByteBuffer;
+import java.util.List;
 
 @JsonTypeInfo(use = JsonTypeInfo.Id.NAME, property = "type")
 @JsonSubTypes({
@@ -41,8 +44,37 @@ public interface Schema {
     AsyncFuture<SchemaInstance> instance(final Session session);
 
     interface PreparedFetch {
+        /**
+         * Serialized key of the partition that is fetched.
+         */
+        ByteBuffer key();
+
+        /**
+         * Base timestamp of the partition that is fetched.
+         */
+        long base();
+
         BoundStatement fetch(int limit);
 
+        /**
+         * Fetch the same columns as this fetch from each of the given partitions, which must all
+         * have the same base as this fetch.
+         *
+         * @param keys Serialized keys of the partitions to fetch.
+         * @param limit Maximum number of rows to fetch from each partition, like {@link #fetch}.
+         */
+        BoundStatement fetchMany(List<ByteBuffer> keys, int limit);
+
+        /**
+         * Serialized key of the partition that a row fetched by {@link #fetchMany} belongs to.
+         */
+        ByteBuffer partition(Row row);
+
         Transform<Row, Point> converter();
+
+        /**
+         * Decode the given row into the given sink, without allocating a point.
+         */
+        void decode(Row row, PointSink sink);
     }
 }
@@ -39,6 +39,11 @@ import java.util.List;
 public interface SchemaInstance {
     public TypeSerializer<MetricsRowKey> rowKey();
 
+    /**
+     * Keyspace that the metrics are stored in.
+     */
+    public String keyspace();
+
     public List<PreparedFetch> ranges(final Series series, final DateRange range)
         throws IOException;
 
@@ -56,5 +61,10 @@ public interface SchemaInstance {
 
     public static interface WriteSession {
         public BoundStatement writePoint(Series series, Point d) throws IOException;
+
+        /**
+         * Serialized key of the partition that the given point is written to.
+         */
+        public ByteBuffer partitionKey(Series series, Point d) throws IOException;
     }
 }
@@ -52,6 +52,10 @@ public class NextGenSchema extends AbstractCassandraSchema implements Schema {
     private static final String FETCH_METRICS_CQL =
             "SELECT data_timestamp_offset, data_value FROM {{keyspace}}.metrics WHERE metric_key " +
                     "= ? and data_timestamp_offset > ? and data_timestamp_offset <= ? LIMIT ?";
+    private static final String FETCH_MANY_METRICS_CQL =
+            "SELECT data_timestamp_offset, data_value, metric_key FROM {{keyspace}}.metrics " +
+                    "WHERE metric_key IN ? and data_timestamp_offset > ? and " +
+                    "data_timestamp_offset <= ? PER PARTITION LIMIT ?";
     private static final String DELETE_METRICS_CQL =
             "DELETE FROM {{keyspace}}.metrics WHERE metric_key = ?";
     private static final String COUNT_METRICS_CQL =
@@ -104,12 +108,14 @@ public class NextGenSchema extends AbstractCassandraSchema implements Schema {
 
         final AsyncFuture<PreparedStatement> write = prepareAsync(values, s, WRITE_METRICS_CQL);
         final AsyncFuture<PreparedStatement> fetch = prepareAsync(values, s, FETCH_METRICS_CQL);
+        final AsyncFuture<PreparedStatement> fetchMany =
+            prepareAsync(values, s, FETCH_MANY_METRICS_CQL);
         final AsyncFuture<PreparedStatement> delete = prepareAsync(values, s, DELETE_METRICS_CQL);
         final AsyncFuture<PreparedStatement> count = prepareAsync(values, s, COUNT_METRICS_CQL);
 
         return async
-            .collectAndDiscard(ImmutableList.of(write, fetch, delete, count))
+            .collectAndDiscard(ImmutableList.of(write, fetch, fetchMany, delete, count))
             .directTransform(r -> new NextGenSchemaInstance(keyspace, POINTS_TABLE, write.getNow(),
-                fetch.getNow(), delete.getNow(), count.get()));
+                fetch.getNow(), fetchMany.getNow(), delete.getNow(), count.get()));
     }
 }
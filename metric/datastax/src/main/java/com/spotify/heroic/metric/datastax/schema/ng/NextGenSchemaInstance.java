@@ -28,6 +28,7 @@ import com.spotify.heroic.common.DateRange;
 import com.spotify.heroic.common.Series;
 import com.spotify.heroic.metric.BackendKey;
 import com.spotify.heroic.metric.Point;
+import com.spotify.heroic.metric.PointSink;
 import com.spotify.heroic.metric.datastax.MetricsRowKey;
 import com.spotify.heroic.metric.datastax.TypeSerializer;
 import com.spotify.heroic.metric.datastax.schema.AbstractSchemaInstance;
@@ -49,24 +50,29 @@ public class NextGenSchemaInstance extends AbstractSchemaInstance {
 
     private final PreparedStatement write;
     private final PreparedStatement fetch;
+    private final PreparedStatement fetchMany;
     private final PreparedStatement delete;
     private final PreparedStatement count;
     private final BackendKeyUtils keyUtils;
+    private final String keyspace;
 
     NextGenSchemaInstance(
         final String keyspace,
         final String pointsTable,
         final PreparedStatement write,
         final PreparedStatement fetch,
+        final PreparedStatement fetchMany,
         final PreparedStatement delete,
         final PreparedStatement count
     ) {
         super(KEY);
         this.write = write;
         this.fetch = fetch;
+        this.fetchMany = fetchMany;
         this.delete = delete;
         this.count = count;
         this.keyUtils = new BackendKeyUtils(KEY, keyspace, pointsTable, this);
+        this.keyspace = keyspace;
     }
 
     @Override
@@ -74,6 +80,11 @@ public class NextGenSchemaInstance extends AbstractSchemaInstance {
         return ROW_KEY;
     }
 
+    @Override
+    public String keyspace() {
+        return keyspace;
+    }
+
     @Override
     public BackendKeyUtils keyUtils() {
         return keyUtils;
@@ -86,6 +97,13 @@ public class NextGenSchemaInstance extends AbstractSchemaInstance {
 
             @Override
             public BoundStatement writePoint(Series series, Point d) throws IOException {
+                final ByteBuffer key = partitionKey(series, d);
+                final int offset = calculateColumnKey(d.getTimestamp());
+                return write.bind(key, offset, d.getValue());
+            }
+
+            @Override
+            public ByteBuffer partitionKey(Series series, Point d) throws IOException {
                 final long base = calculateBaseTimestamp(d.getTimestamp());
 
                 ByteBuffer key = cache.get(base);
@@ -95,8 +113,7 @@ public class NextGenSchemaInstance extends AbstractSchemaInstance {
                     cache.put(base, key);
                 }
 
-                final int offset = calculateColumnKey(d.getTimestamp());
-                return write.bind(key, offset, d.getValue());
+                return key;
             }
         };
     }
@@ -119,28 +136,9 @@ public class NextGenSchemaInstance extends AbstractSchemaInstance {
             final ByteBuffer key = ROW_KEY.serialize(new MetricsRowKey(series, currentBase));
             final int startColumn = calculateColumnKey(modified.start());
             final int endColumn = calculateColumnKey(modified.end());
-            final long base = currentBase;
-
-            bases.add(new PreparedFetch() {
-                @Override
-                public BoundStatement fetch(int limit) {
-                    return fetch.bind(key, startColumn, endColumn, limit);
-                }
-
-                @Override
-                public Transform<Row, Point> converter() {
-                    return row -> {
-                        final long timestamp = calculateAbsoluteTimestamp(base, row.getInt(0));
-                        final double value = row.getDouble(1);
-                        return new Point(timestamp, value);
-                    };
-                }
 
-                @Override
-                public String toString() {
-                    return modified.toString();
-                }
-            });
+            bases.add(
+                new Fetch(key, currentBase, startColumn, endColumn, modified.toString()));
         }
 
         return bases;
@@ -152,26 +150,8 @@ public class NextGenSchemaInstance extends AbstractSchemaInstance {
 
         final ByteBuffer k = ROW_KEY.serialize(new MetricsRowKey(key.getSeries(), base));
 
-        return new PreparedFetch() {
-            @Override
-            public BoundStatement fetch(int limit) {
-                return fetch.bind(k, Integer.MIN_VALUE, Integer.MAX_VALUE, limit);
-            }
-
-            @Override
-            public Transform<Row, Point> converter() {
-                return row -> {
-                    final long timestamp = calculateAbsoluteTimestamp(base, row.getInt(0));
-                    final double value = row.getDouble(1);
-                    return new Point(timestamp, value);
-                };
-            }
-
-            @Override
-            public String toString() {
-                return "<Fetch Row " + key + ">";
-            }
-        };
+        return new Fetch(k, base, Integer.MIN_VALUE, Integer.MAX_VALUE,
+            "<Fetch Row " + key + ">");
     }
 
     @Override
@@ -195,4 +175,72 @@ public class NextGenSchemaInstance extends AbstractSchemaInstance {
     static long calculateAbsoluteTimestamp(final long base, final int key) {
         return base + (long) key;
     }
+
+    private class Fetch implements PreparedFetch {
+        private final ByteBuffer key;
+        private final long base;
+        private final int startColumn;
+        private final int endColumn;
+        private final String description;
+
+        Fetch(
+            final ByteBuffer key, final long base, final int startColumn, final int endColumn,
+            final String description
+        ) {
+            this.key = key;
+            this.base = base;
+            this.startColumn = startColumn;
+            this.endColumn = endColumn;
+            this.description = description;
+        }
+
+        @Override
+        public ByteBuffer key() {
+            return key;
+        }
+
+        @Override
+        public long base() {
+            return base;
+        }
+
+        @Override
+        public BoundStatement fetch(int limit) {
+            return fetch.bind(key, startColumn, endColumn, limit);
+        }
+
+        @Override
+        public BoundStatement fetchMany(final List<ByteBuffer> keys, int limit) {
+            return fetchMany
+                .bind()
+                .setList(0, keys, ByteBuffer.class)
+                .setInt(1, startColumn)
+                .setInt(2, endColumn)
+                .setInt(3, limit);
+        }
+
+        @Override
+        public ByteBuffer partition(final Row row) {
+            return row.getBytes(2);
+        }
+
+        @Override
+        public Transform<Row, Point> converter() {
+            return row -> {
+                final long timestamp = calculateAbsoluteTimestamp(base, row.getInt(0));
+                final double value = row.getDouble(1);
+                return new Point(timestamp, value);
+            };
+        }
+
+        @Override
+        public void decode(final Row row, final PointSink sink) {
+            sink.accept(calculateAbsoluteTimestamp(base, row.getInt(0)), row.getDouble(1));
+        }
+
+        @Override
+        public String toString() {
+            return description;
+        }
+    }
 }
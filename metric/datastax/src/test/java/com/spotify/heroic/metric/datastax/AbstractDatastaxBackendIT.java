@@ -1,11 +1,23 @@
 package com.spotify.heroic.metric.datastax;
 
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.spotify.heroic.common.DateRange;
+import com.spotify.heroic.common.Series;
+import com.spotify.heroic.metric.FetchQuotaWatcher;
+import com.spotify.heroic.metric.MetricCollection;
 import com.spotify.heroic.metric.MetricModule;
+import com.spotify.heroic.metric.WriteMetric;
 import com.spotify.heroic.metric.datastax.schema.SchemaModule;
 import com.spotify.heroic.test.AbstractMetricBackendIT;
+import com.spotify.heroic.test.Points;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import org.junit.ClassRule;
+import org.junit.Test;
 import org.testcontainers.containers.CassandraContainer;
 
 public abstract class AbstractDatastaxBackendIT extends AbstractMetricBackendIT {
@@ -21,8 +33,57 @@ public abstract class AbstractDatastaxBackendIT extends AbstractMetricBackendIT
             .schema(setupSchema(keyspace))
             .configure(true)
             .seeds(ImmutableSet.of(seed))
+            .batching(setupBatching())
             .build();
     }
 
+    protected DatastaxBatchOptions setupBatching() {
+        return new DatastaxBatchOptions();
+    }
+
+    /**
+     * Partitions which are read by the same query are each limited by the read quota, like
+     * partitions which are read on their own.
+     */
+    @Test
+    public void testFetchManyLimitsEachPartition() throws Exception {
+        final List<Series> series = ImmutableList.of(s1, s2);
+
+        for (final Series s : series) {
+            backend.write(new WriteMetric.Request(s,
+                new Points().p(100001L, 1D).p(100002L, 2D).p(100003L, 3D).build())).get();
+        }
+
+        final FetchQuotaWatcher watcher = new FetchQuotaWatcher() {
+            @Override
+            public void readData(final long n) {
+            }
+
+            @Override
+            public boolean mayReadData() {
+                return true;
+            }
+
+            @Override
+            public int getReadDataQuota() {
+                return 2;
+            }
+
+            @Override
+            public void accessedRows(final long n) {
+            }
+        };
+
+        final Map<Series, List<MetricCollection>> fetched =
+            fetchMany(series, new DateRange(100000L, 100010L), watcher);
+
+        final MetricCollection expected = new Points().p(100001L, 1D).p(100002L, 2D).build();
+
+        for (final Series s : series) {
+            assertEquals(1, fetched.get(s).size());
+            assertEquals(expected.data(), fetched.get(s).get(0).data());
+        }
+    }
+
     abstract protected SchemaModule setupSchema(final String keyspace);
 }
@@ -0,0 +1,235 @@
+package com.spotify.heroic.metric.datastax;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.AbstractFuture;
+import eu.toolchain.async.AsyncFramework;
+import eu.toolchain.async.AsyncFuture;
+import eu.toolchain.async.TinyAsync;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BatchWriterTest {
+    private final AsyncFramework async = TinyAsync.builder().build();
+
+    private final ByteBuffer a = ByteBuffer.wrap(new byte[]{1});
+    private final ByteBuffer b = ByteBuffer.wrap(new byte[]{2});
+
+    private final List<Statement> executed = new ArrayList<>();
+    private final List<PendingResultSet> results = new ArrayList<>();
+
+    private Session session;
+
+    @Before
+    public void setup() {
+        session = mock(Session.class);
+
+        when(session.executeAsync(any(Statement.class))).thenAnswer(invocation -> {
+            final PendingResultSet result = new PendingResultSet();
+            executed.add(invocation.getArgument(0));
+            results.add(result);
+            return result;
+        });
+    }
+
+    private BatchWriter writer(final int maxBatchSize, final int concurrency) {
+        return writer(maxBatchSize, concurrency, Optional.empty());
+    }
+
+    private BatchWriter writer(
+        final int maxBatchSize, final int concurrency, final Optional<Integer> maxQueued
+    ) {
+        return new BatchWriter(async,
+            new DatastaxBatchOptions(Optional.of(true), Optional.of(maxBatchSize),
+                Optional.empty(), Optional.of(concurrency), maxQueued));
+    }
+
+    private static List<BoundStatement> statements(final int count) {
+        final List<BoundStatement> statements = new ArrayList<>();
+
+        for (int i = 0; i < count; i++) {
+            statements.add(mock(BoundStatement.class));
+        }
+
+        return statements;
+    }
+
+    private static Collection<Statement> batched(final Statement statement) {
+        if (statement instanceof BatchStatement) {
+            return ((BatchStatement) statement).getStatements();
+        }
+
+        return ImmutableList.of(statement);
+    }
+
+    @Test
+    public void testCoalescesConcurrentWrites() {
+        final BatchWriter writer = writer(100, 1);
+
+        final List<BoundStatement> first = statements(2);
+        final List<BoundStatement> second = statements(3);
+        final List<BoundStatement> third = statements(1);
+        final List<BoundStatement> fourth = statements(1);
+
+        final AsyncFuture<Void> w1 = writer.write(session, a, first);
+        /* queued while the first batch is in flight */
+        final AsyncFuture<Void> w2 = writer.write(session, a, second);
+        final AsyncFuture<Void> w3 = writer.write(session, b, third);
+        final AsyncFuture<Void> w4 = writer.write(session, a, fourth);
+
+        assertEquals(1, executed.size());
+        assertEquals(first, ImmutableList.copyOf(batched(executed.get(0))));
+
+        results.get(0).resolve();
+        assertTrue(w1.isDone());
+        assertEquals(2, executed.size());
+
+        final List<Statement> coalesced = new ArrayList<>(second);
+        coalesced.addAll(fourth);
+        assertEquals(coalesced, ImmutableList.copyOf(batched(executed.get(1))));
+
+        results.get(1).resolve();
+        assertTrue(w2.isDone());
+        assertTrue(w4.isDone());
+        assertFalse(w3.isDone());
+
+        /* a single statement is not wrapped in a batch */
+        assertEquals(third.get(0), executed.get(2));
+
+        results.get(2).resolve();
+        assertTrue(w3.isResolved());
+        assertEquals(0, writer.inFlight());
+    }
+
+    @Test
+    public void testMaxBatchSize() {
+        final BatchWriter writer = writer(2, 1);
+
+        final AsyncFuture<Void> w = writer.write(session, a, statements(5));
+
+        for (int i = 0; i < 3; i++) {
+            assertFalse(w.isDone());
+            results.get(i).resolve();
+        }
+
+        assertTrue(w.isResolved());
+        assertEquals(3, executed.size());
+        assertEquals(2, batched(executed.get(0)).size());
+        assertEquals(2, batched(executed.get(1)).size());
+        assertEquals(1, batched(executed.get(2)).size());
+    }
+
+    @Test
+    public void testConcurrency() {
+        final BatchWriter writer = writer(100, 2);
+
+        writer.write(session, a, statements(1));
+        writer.write(session, b, statements(1));
+        writer.write(session, ByteBuffer.wrap(new byte[]{3}), statements(1));
+
+        assertEquals(2, executed.size());
+        assertEquals(2, writer.inFlight());
+
+        results.get(0).resolve();
+        assertEquals(3, executed.size());
+        assertEquals(2, writer.inFlight());
+    }
+
+    @Test
+    public void testFailedBatch() {
+        final BatchWriter writer = writer(100, 1);
+
+        final AsyncFuture<Void> w1 = writer.write(session, a, statements(1));
+        final AsyncFuture<Void> w2 = writer.write(session, b, statements(1));
+
+        results.get(0).fail(new RuntimeException("boom"));
+
+        assertTrue(w1.isFailed());
+        assertFalse(w2.isDone());
+
+        results.get(1).resolve();
+        assertTrue(w2.isResolved());
+    }
+
+    @Test
+    public void testWaitsWhenQueueIsFull() {
+        final BatchWriter writer = writer(1, 1, Optional.of(2));
+
+        final AsyncFuture<Void> w1 = writer.write(session, a, statements(2));
+
+        /* returns without blocking, and is queued once permits are given back */
+        final AsyncFuture<Void> w2 = writer.write(session, b, statements(1));
+        assertFalse(w2.isDone());
+        assertEquals(1, executed.size());
+
+        /* every finished batch gives back the permits of its statements */
+        results.get(0).resolve();
+        assertEquals(2, executed.size());
+
+        for (int i = 1; i < results.size(); i++) {
+            results.get(i).resolve();
+        }
+
+        assertTrue(w1.isResolved());
+        assertTrue(w2.isResolved());
+        assertEquals(3, executed.size());
+    }
+
+    @Test
+    public void testCompletesSynchronouslyWithoutRecursion() {
+        when(session.executeAsync(any(Statement.class))).thenAnswer(invocation -> {
+            final PendingResultSet result = new PendingResultSet();
+            result.resolve();
+            return result;
+        });
+
+        final BatchWriter writer = writer(1, 1, Optional.of(50000));
+
+        /* deep enough to overflow the stack if every batch sent the next one */
+        final AsyncFuture<Void> w =
+            writer.write(session, a, Collections.nCopies(50000, mock(BoundStatement.class)));
+
+        assertTrue(w.isResolved());
+        assertEquals(0, writer.inFlight());
+    }
+
+    private static class PendingResultSet extends AbstractFuture<ResultSet>
+        implements ResultSetFuture {
+        void resolve() {
+            set(mock(ResultSet.class));
+        }
+
+        void fail(final Throwable cause) {
+            setException(cause);
+        }
+
+        @Override
+        public ResultSet getUninterruptibly() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ResultSet getUninterruptibly(final long timeout, final TimeUnit unit) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.spotify.heroic.metric.datastax;
+
+import java.util.Optional;
+
+public class BatchedNextGenDatastaxBackendIT extends NextGenDatastaxBackendIT {
+    @Override
+    protected DatastaxBatchOptions setupBatching() {
+        return new DatastaxBatchOptions(Optional.of(true), Optional.of(10), Optional.empty(),
+            Optional.of(4), Optional.empty());
+    }
+}
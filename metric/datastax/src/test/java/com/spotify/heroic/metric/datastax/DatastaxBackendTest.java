@@ -0,0 +1,253 @@
+package com.spotify.heroic.metric.datastax;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.Statement;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.AbstractFuture;
+import com.spotify.heroic.QueryOptions;
+import com.spotify.heroic.common.DateRange;
+import com.spotify.heroic.common.Groups;
+import com.spotify.heroic.common.Series;
+import com.spotify.heroic.metric.FetchData;
+import com.spotify.heroic.metric.FetchQuotaWatcher;
+import com.spotify.heroic.metric.MetricType;
+import com.spotify.heroic.metric.Point;
+import com.spotify.heroic.metric.PointSink;
+import com.spotify.heroic.metric.datastax.schema.Schema.PreparedFetch;
+import com.spotify.heroic.metric.datastax.schema.SchemaInstance;
+import eu.toolchain.async.AsyncFramework;
+import eu.toolchain.async.Managed;
+import eu.toolchain.async.ManagedAction;
+import eu.toolchain.async.TinyAsync;
+import io.opencensus.trace.BlankSpan;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DatastaxBackendTest {
+    private final AsyncFramework async = TinyAsync.builder().build();
+    private final Series series = Series.of("a");
+
+    private final List<Row> rows = new ArrayList<>();
+    private final List<Integer> inFlightOnFetch = new ArrayList<>();
+    private final List<Integer> inFlightOnChunk = new ArrayList<>();
+    private final List<Integer> chunkSizes = new ArrayList<>();
+    private final List<Point> points = new ArrayList<>();
+
+    private GatedWatcher watcher;
+    private BoundStatement statement;
+    private DatastaxBackend backend;
+    private int fetchSize = 5000;
+
+    @Before
+    public void setup() throws Exception {
+        watcher = new GatedWatcher(2);
+
+        statement = mock(BoundStatement.class);
+
+        when(statement.setFetchSize(anyInt())).thenAnswer(invocation -> {
+            fetchSize = invocation.getArgument(0);
+            return statement;
+        });
+
+        final PreparedFetch fetch = mock(PreparedFetch.class);
+        when(fetch.fetch(anyInt())).thenReturn(statement);
+
+        doAnswer(invocation -> {
+            final PointSink sink = invocation.getArgument(1);
+            final int index = rows.indexOf(invocation.<Row>getArgument(0));
+            sink.accept(index, index * 0.5D);
+            return null;
+        }).when(fetch).decode(any(Row.class), any(PointSink.class));
+
+        final SchemaInstance schema = mock(SchemaInstance.class);
+        when(schema.ranges(any(Series.class), any(DateRange.class)))
+            .thenReturn(ImmutableList.of(fetch));
+
+        final Session session = mock(Session.class);
+        when(session.executeAsync(any(Statement.class)))
+            .thenAnswer(invocation -> new PagedRows().firstPage());
+
+        final Connection connection = new Connection(session, schema);
+
+        @SuppressWarnings("unchecked")
+        final Managed<Connection> managed = mock(Managed.class);
+
+        doAnswer(invocation -> {
+            final ManagedAction<Connection, ?> action = invocation.getArgument(0);
+            return action.action(connection);
+        }).when(managed).doto(any());
+
+        backend = new DatastaxBackend(async, managed, Groups.empty(), new DatastaxBatchOptions());
+    }
+
+    private FetchData.Result fetch() throws Exception {
+        return backend.fetch(
+            new FetchData.Request(MetricType.POINT, series, new DateRange(0L, 100L),
+                QueryOptions.builder().build()), watcher, result -> {
+                inFlightOnChunk.add(watcher.inFlight);
+                chunkSizes.add(result.getMetrics().size());
+                points.addAll(result.getMetrics().getDataAs(Point.class));
+            }, BlankSpan.INSTANCE).get();
+    }
+
+    @Test
+    public void testReadsOnePagePerChunk() throws Exception {
+        final List<Point> expected = new ArrayList<>();
+
+        for (int i = 0; i < 5; i++) {
+            rows.add(mock(Row.class));
+            expected.add(new Point(i, i * 0.5D));
+        }
+
+        final FetchData.Result result = fetch();
+
+        assertEquals(ImmutableList.of(), result.getErrors());
+        assertEquals(2, fetchSize);
+        assertEquals(expected, points);
+        assertEquals(ImmutableList.of(2, 2, 1), chunkSizes);
+
+        /* the next page is only read once the previous one has been handed over */
+        assertEquals(ImmutableList.of(1, 1), inFlightOnFetch);
+        assertEquals(ImmutableList.of(1, 1, 1), inFlightOnChunk);
+        assertEquals(1, watcher.maxInFlight);
+        assertEquals(0, watcher.inFlight);
+        assertEquals(0, watcher.pending.size());
+    }
+
+    @Test
+    public void testEmptyFetch() throws Exception {
+        final FetchData.Result result = fetch();
+
+        assertEquals(ImmutableList.of(), result.getErrors());
+        assertEquals(ImmutableList.of(0), chunkSizes);
+        assertEquals(ImmutableList.of(), inFlightOnFetch);
+        assertEquals(0, watcher.inFlight);
+    }
+
+    /**
+     * Watcher which allows a single chunk in flight.
+     */
+    private static class GatedWatcher implements FetchQuotaWatcher {
+        private final int chunkSize;
+        private final Queue<Runnable> pending = new ArrayDeque<>();
+
+        private int inFlight = 0;
+        private int maxInFlight = 0;
+
+        GatedWatcher(final int chunkSize) {
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        public void readData(final long n) {
+        }
+
+        @Override
+        public boolean mayReadData() {
+            return true;
+        }
+
+        @Override
+        public int getReadDataQuota() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public void accessedRows(final long n) {
+        }
+
+        @Override
+        public int getChunkSize() {
+            return chunkSize;
+        }
+
+        @Override
+        public void acquireChunk(final Runnable read) {
+            if (inFlight > 0) {
+                pending.add(read);
+                return;
+            }
+
+            inFlight++;
+            maxInFlight = Math.max(maxInFlight, inFlight);
+            read.run();
+        }
+
+        @Override
+        public void releaseChunk() {
+            inFlight--;
+
+            final Runnable next = pending.poll();
+
+            if (next != null) {
+                acquireChunk(next);
+            }
+        }
+    }
+
+    /**
+     * Result set which is read in pages of the fetch size of the executed statement.
+     */
+    private class PagedRows {
+        private final ResultSet resultSet = mock(ResultSet.class);
+
+        private int fetched = 0;
+        private int position = 0;
+
+        PagedRows() {
+            when(resultSet.getAvailableWithoutFetching()).thenAnswer(
+                invocation -> fetched - position);
+            when(resultSet.isFullyFetched()).thenAnswer(invocation -> fetched == rows.size());
+            when(resultSet.one()).thenAnswer(invocation -> rows.get(position++));
+            when(resultSet.fetchMoreResults()).thenAnswer(invocation -> {
+                inFlightOnFetch.add(watcher.inFlight);
+                return nextPage();
+            });
+        }
+
+        ResultSetFuture firstPage() {
+            return nextPage();
+        }
+
+        private ResultSetFuture nextPage() {
+            fetched = Math.min(fetched + fetchSize, rows.size());
+            final ResolvedResultSet future = new ResolvedResultSet();
+            future.set(resultSet);
+            return future;
+        }
+    }
+
+    private static class ResolvedResultSet extends AbstractFuture<ResultSet>
+        implements ResultSetFuture {
+        @Override
+        protected boolean set(final ResultSet value) {
+            return super.set(value);
+        }
+
+        @Override
+        public ResultSet getUninterruptibly() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ResultSet getUninterruptibly(final long timeout, final TimeUnit unit) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2020 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.heroic.metric.memory;
+
+import com.spotify.heroic.metric.PointSink;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Storage for the points of a single series.
+ * <p>
+ * Incoming points are kept sorted in a small, mutable head block backed by primitive arrays.
+ * Once the head block is full it is sealed into an immutable {@link GorillaBlock} and appended
+ * to the list of sealed blocks, which is replaced atomically so that readers never need to take
+ * a lock to access it.
+ */
+final class CompressedSeries {
+    private static final GorillaBlock[] EMPTY_BLOCKS = new GorillaBlock[0];
+    private static final int INITIAL_HEAD_CAPACITY = 16;
+
+    private final int blockSize;
+
+    private volatile GorillaBlock[] blocks = EMPTY_BLOCKS;
+
+    /* guarded by this */
+    private long[] headTimestamps = new long[INITIAL_HEAD_CAPACITY];
+    private double[] headValues = new double[INITIAL_HEAD_CAPACITY];
+    private int headSize = 0;
+
+    CompressedSeries(final int blockSize) {
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Write a single point, replacing any existing value in the head block with the same
+     * timestamp.
+     */
+    synchronized void write(final long timestamp, final double value) {
+        int index = headSize;
+
+        // fast path: points are typically appended in order.
+        if (headSize > 0 && headTimestamps[headSize - 1] >= timestamp) {
+            index = Arrays.binarySearch(headTimestamps, 0, headSize, timestamp);
+
+            if (index >= 0) {
+                headValues[index] = value;
+                return;
+            }
+
+            index = -(index + 1);
+        }
+
+        if (headSize == headTimestamps.length) {
+            final int capacity = Math.min(blockSize, headSize * 2);
+            headTimestamps = Arrays.copyOf(headTimestamps, capacity);
+            headValues = Arrays.copyOf(headValues, capacity);
+        }
+
+        if (index < headSize) {
+            System.arraycopy(headTimestamps, index, headTimestamps, index + 1, headSize - index);
+            System.arraycopy(headValues, index, headValues, index + 1, headSize - index);
+        }
+
+        headTimestamps[index] = timestamp;
+        headValues[index] = value;
+        headSize++;
+
+        if (headSize >= blockSize) {
+            seal();
+        }
+    }
+
+    /**
+     * Read all points with a timestamp in {@code (start, end]}, in timestamp order.
+     * <p>
+     * If blocks overlap, which only happens if points have been written out of order, points
+     * from more recently written blocks take precedence.
+     *
+     * @return number of points read
+     */
+    int read(final long start, final long end, final PointSink sink) {
+        final GorillaBlock[] blocks;
+        final long[] headTimestamps;
+        final double[] headValues;
+
+        synchronized (this) {
+            blocks = this.blocks;
+            final int from = upperBound(this.headTimestamps, this.headSize, start);
+            final int to = upperBound(this.headTimestamps, this.headSize, end);
+            headTimestamps = Arrays.copyOfRange(this.headTimestamps, from, Math.max(from, to));
+            headValues = Arrays.copyOfRange(this.headValues, from, Math.max(from, to));
+        }
+
+        int first = 0;
+
+        while (first < blocks.length && blocks[first].end() <= start) {
+            first++;
+        }
+
+        int last = blocks.length;
+
+        while (last > first && blocks[last - 1].start() > end) {
+            last--;
+        }
+
+        if (!isOrdered(blocks, first, last, headTimestamps)) {
+            return readOverlapping(blocks, first, last, headTimestamps, headValues, start, end,
+                sink);
+        }
+
+        final int[] count = new int[1];
+
+        for (int i = first; i < last; i++) {
+            blocks[i].decode((t, v) -> {
+                if (t > start && t <= end) {
+                    count[0]++;
+                    sink.accept(t, v);
+                }
+            });
+        }
+
+        for (int i = 0; i < headTimestamps.length; i++) {
+            sink.accept(headTimestamps[i], headValues[i]);
+        }
+
+        return count[0] + headTimestamps.length;
+    }
+
+    /**
+     * Approximate number of bytes retained by this series.
+     */
+    long bytes() {
+        long bytes = 0;
+
+        for (final GorillaBlock block : blocks) {
+            bytes += block.bytes();
+        }
+
+        synchronized (this) {
+            bytes += headTimestamps.length * 16L;
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Number of points stored in this series.
+     */
+    long points() {
+        long points = 0;
+
+        for (final GorillaBlock block : blocks) {
+            points += block.count();
+        }
+
+        synchronized (this) {
+            points += headSize;
+        }
+
+        return points;
+    }
+
+    private void seal() {
+        final GorillaBlock block =
+            GorillaBlock.encode(headTimestamps, headValues, 0, headSize);
+
+        final GorillaBlock[] next = Arrays.copyOf(blocks, blocks.length + 1);
+        next[blocks.length] = block;
+        blocks = next;
+
+        headTimestamps = new long[INITIAL_HEAD_CAPACITY];
+        headValues = new double[INITIAL_HEAD_CAPACITY];
+        headSize = 0;
+    }
+
+    private static boolean isOrdered(
+        final GorillaBlock[] blocks, final int first, final int last,
+        final long[] headTimestamps
+    ) {
+        for (int i = first + 1; i < last; i++) {
+            if (blocks[i - 1].end() >= blocks[i].start()) {
+                return false;
+            }
+        }
+
+        return last <= first || headTimestamps.length == 0 ||
+            blocks[last - 1].end() < headTimestamps[0];
+    }
+
+    /**
+     * Slow path for out-of-order writes, later sources overwrite earlier ones.
+     */
+    private static int readOverlapping(
+        final GorillaBlock[] blocks, final int first, final int last,
+        final long[] headTimestamps, final double[] headValues, final long start, final long end,
+        final PointSink sink
+    ) {
+        final TreeMap<Long, Double> merged = new TreeMap<>();
+
+        for (int i = first; i < last; i++) {
+            blocks[i].decode((t, v) -> {
+                if (t > start && t <= end) {
+                    merged.put(t, v);
+                }
+            });
+        }
+
+        for (int i = 0; i < headTimestamps.length; i++) {
+            merged.put(headTimestamps[i], headValues[i]);
+        }
+
+        for (final Map.Entry<Long, Double> e : merged.entrySet()) {
+            sink.accept(e.getKey(), e.getValue());
+        }
+
+        return merged.size();
+    }
+
+    /**
+     * Index of the first timestamp that is strictly greater than the given timestamp.
+     */
+    private static int upperBound(final long[] timestamps, final int size, final long timestamp) {
+        int low = 0;
+        int high = size;
+
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+
+            if (timestamps[mid] <= timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+}
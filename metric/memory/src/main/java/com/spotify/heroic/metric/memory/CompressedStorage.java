@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2020 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.heroic.metric.memory;
+
+import com.spotify.heroic.common.DateRange;
+import com.spotify.heroic.common.Series;
+import com.spotify.heroic.common.Statistics;
+import com.spotify.heroic.metric.FetchQuotaWatcher;
+import com.spotify.heroic.metric.MetricChunker;
+import com.spotify.heroic.metric.MetricCollection;
+import com.spotify.heroic.metric.MetricReadResult;
+import com.spotify.heroic.metric.MetricType;
+import com.spotify.heroic.metric.Point;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+
+/**
+ * Stores points in append-only, Gorilla-compressed blocks with a mutable head block per series.
+ * <p>
+ * Only points are compressed, every other metric type is delegated to a {@link SkipListStorage}.
+ */
+final class CompressedStorage implements MemoryStorage {
+    public static final String MEMORY_COMPRESSED_POINTS = "memory-compressed-points";
+    public static final String MEMORY_COMPRESSED_BYTES = "memory-compressed-bytes";
+
+    private final int blockSize;
+    private final SkipListStorage fallback = new SkipListStorage();
+    private final ConcurrentMap<SortedMap<String, String>,
+        ConcurrentMap<SortedMap<String, String>, CompressedSeries>> storage =
+        new ConcurrentHashMap<>();
+
+    CompressedStorage(final int blockSize) {
+        if (blockSize <= 1) {
+            throw new IllegalArgumentException("blockSize must be greater than one");
+        }
+
+        this.blockSize = blockSize;
+    }
+
+    @Override
+    public void write(final Series series, final MetricCollection data) {
+        if (data.getType() != MetricType.POINT) {
+            fallback.write(series, data);
+            return;
+        }
+
+        final CompressedSeries compressed = storage
+            .computeIfAbsent(series.getTags(), k -> new ConcurrentHashMap<>())
+            .computeIfAbsent(series.getResource(), k -> new CompressedSeries(blockSize));
+
+        if (data instanceof MetricCollection.ColumnarPointCollection) {
+            final MetricCollection.ColumnarPointCollection columns =
+                (MetricCollection.ColumnarPointCollection) data;
+
+            for (int i = 0; i < columns.size(); i++) {
+                compressed.write(columns.getTimestamp(i), columns.getValue(i));
+            }
+
+            return;
+        }
+
+        for (final Point p : data.getDataAs(Point.class)) {
+            compressed.write(p.getTimestamp(), p.getValue());
+        }
+    }
+
+    @Override
+    public void fetch(
+        final MemoryKey key, final DateRange range, final FetchQuotaWatcher watcher,
+        final Consumer<MetricReadResult> metricsConsumer
+    ) {
+        if (key.getSource() != MetricType.POINT) {
+            fallback.fetch(key, range, watcher, metricsConsumer);
+            return;
+        }
+
+        final Map<SortedMap<String, String>, CompressedSeries> cell =
+            storage.get(key.getTags());
+
+        // empty
+        if (cell == null) {
+            return;
+        }
+
+        for (final Map.Entry<SortedMap<String, String>, CompressedSeries> e : cell.entrySet()) {
+            final MetricChunker chunks = MetricChunker.points(watcher.getChunkSize(), data -> {
+                watcher.readData(data.size());
+                metricsConsumer.accept(new MetricReadResult(data, e.getKey()));
+            });
+
+            e.getValue().read(range.getStart(), range.getEnd(), chunks);
+            chunks.finish();
+        }
+    }
+
+    @Override
+    public void delete(final MemoryKey key) {
+        if (key.getSource() != MetricType.POINT) {
+            fallback.delete(key);
+            return;
+        }
+
+        storage.remove(key.getTags());
+    }
+
+    @Override
+    public Statistics getStatistics() {
+        long points = 0;
+        long bytes = 0;
+
+        for (final Map<SortedMap<String, String>, CompressedSeries> cell : storage.values()) {
+            for (final CompressedSeries series : cell.values()) {
+                points += series.points();
+                bytes += series.bytes();
+            }
+        }
+
+        return fallback
+            .getStatistics()
+            .merge(new Statistics(MemoryBackend.MEMORY_KEYS, storage.size()))
+            .merge(new Statistics(MEMORY_COMPRESSED_POINTS, points, MEMORY_COMPRESSED_BYTES,
+                bytes));
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2020 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.heroic.metric.memory;
+
+import com.spotify.heroic.metric.GorillaCodec;
+import com.spotify.heroic.metric.PointSink;
+
+/**
+ * An immutable, compressed block of points, encoded with {@link GorillaCodec}.
+ * <p>
+ * Blocks are built from strictly increasing timestamps, which is guaranteed by {@link
+ * CompressedSeries} since it only seals sorted and de-duplicated head blocks.
+ */
+final class GorillaBlock {
+    private final long[] words;
+    private final int count;
+    private final long start;
+    private final long end;
+
+    private GorillaBlock(final long[] words, final int count, final long start, final long end) {
+        this.words = words;
+        this.count = count;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * Number of points in the block.
+     */
+    int count() {
+        return count;
+    }
+
+    /**
+     * Timestamp of the first point in the block.
+     */
+    long start() {
+        return start;
+    }
+
+    /**
+     * Timestamp of the last point in the block.
+     */
+    long end() {
+        return end;
+    }
+
+    /**
+     * Approximate number of bytes retained by the encoded data of this block.
+     */
+    long bytes() {
+        return words.length * 8L;
+    }
+
+    /**
+     * Decode all points in this block, in timestamp order.
+     */
+    void decode(final PointSink sink) {
+        GorillaCodec.decode(new GorillaCodec.BitReader(words), count, sink);
+    }
+
+    /**
+     * Encode the given range of sorted, unique timestamps and their values into a block.
+     */
+    static GorillaBlock encode(
+        final long[] timestamps, final double[] values, final int from, final int to
+    ) {
+        final GorillaCodec.BitWriter out = new GorillaCodec.BitWriter(to - from);
+        GorillaCodec.encode(out, timestamps, values, from, to);
+        return new GorillaBlock(out.finish(), to - from, timestamps[from], timestamps[to - 1]);
+    }
+}
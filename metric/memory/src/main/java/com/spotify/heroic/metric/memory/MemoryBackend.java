@@ -21,19 +21,16 @@
 
 package com.spotify.heroic.metric.memory;
 
-import com.google.common.collect.ImmutableList;
 import com.spotify.heroic.QueryOptions;
-import com.spotify.heroic.common.DateRange;
 import com.spotify.heroic.common.Groups;
 import com.spotify.heroic.common.RequestTimer;
+import com.spotify.heroic.common.Series;
 import com.spotify.heroic.common.Statistics;
 import com.spotify.heroic.metric.AbstractMetricBackend;
 import com.spotify.heroic.metric.BackendEntry;
 import com.spotify.heroic.metric.BackendKey;
 import com.spotify.heroic.metric.FetchData;
 import com.spotify.heroic.metric.FetchQuotaWatcher;
-import com.spotify.heroic.metric.Metric;
-import com.spotify.heroic.metric.MetricCollection;
 import com.spotify.heroic.metric.MetricReadResult;
 import com.spotify.heroic.metric.QueryTrace;
 import com.spotify.heroic.metric.WriteMetric;
@@ -41,15 +38,12 @@ import eu.toolchain.async.AsyncFramework;
 import eu.toolchain.async.AsyncFuture;
 import io.opencensus.trace.Span;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.SortedMap;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import javax.inject.Inject;
 
@@ -97,19 +91,21 @@ public class MemoryBackend extends AbstractMetricBackend {
 
     private final AsyncFramework async;
     private final Groups groups;
-    private final ConcurrentMap<MemoryKey, MemoryCell> storage;
+    private final MemoryStorage storage;
 
     @Inject
-    public MemoryBackend(final AsyncFramework async, final Groups groups) {
+    public MemoryBackend(
+        final AsyncFramework async, final Groups groups, final MemoryStorage storage
+    ) {
         super(async);
         this.async = async;
         this.groups = groups;
-        this.storage = new ConcurrentHashMap<>();
+        this.storage = storage;
     }
 
     @Override
     public Statistics getStatistics() {
-        return new Statistics(MEMORY_KEYS, storage.size());
+        return storage.getStatistics();
     }
 
     @Override
@@ -125,7 +121,7 @@ public class MemoryBackend extends AbstractMetricBackend {
     @Override
     public AsyncFuture<WriteMetric> write(WriteMetric.Request request) {
         final RequestTimer<WriteMetric> timer = WriteMetric.timer();
-        writeOne(request);
+        storage.write(request.getSeries(), request.getData());
         return async.resolved(timer.end());
     }
 
@@ -138,7 +134,32 @@ public class MemoryBackend extends AbstractMetricBackend {
     ) {
         final QueryTrace.NamedWatch w = QueryTrace.watch(FETCH);
         final MemoryKey key = new MemoryKey(request.getType(), request.getSeries().getTags());
-        doFetch(key, request.getRange(), watcher, metricsConsumer);
+        storage.fetch(key, request.getRange(), watcher, metricsConsumer);
+        return async.resolved(new FetchData.Result(w.end()));
+    }
+
+    /**
+     * Fetch all series of the batch with a single call.
+     * <p>
+     * Storage is keyed by series, so each series of the batch is still looked up on its own. The
+     * batch is served synchronously and resolved by a single future with a single trace, instead
+     * of building a future and a trace for every series.
+     */
+    @Override
+    public AsyncFuture<FetchData.Result> fetchMany(
+        FetchData.BatchRequest request,
+        FetchQuotaWatcher watcher,
+        BiConsumer<Series, MetricReadResult> metricsConsumer,
+        Span parentSpan
+    ) {
+        final QueryTrace.NamedWatch w = QueryTrace.watch(FETCH);
+
+        for (final Series series : request.getSeries()) {
+            final MemoryKey key = new MemoryKey(request.getType(), series.getTags());
+            storage.fetch(key, request.getRange(), watcher,
+                result -> metricsConsumer.accept(series, result));
+        }
+
         return async.resolved(new FetchData.Result(w.end()));
     }
 
@@ -154,56 +175,10 @@ public class MemoryBackend extends AbstractMetricBackend {
 
     @Override
     public AsyncFuture<Void> deleteKey(BackendKey key, QueryOptions options) {
-        storage.remove(new MemoryKey(key.getType(), key.getSeries().getTags()));
+        storage.delete(new MemoryKey(key.getType(), key.getSeries().getTags()));
         return async.resolved();
     }
 
-    private void writeOne(final WriteMetric.Request request) {
-        final MetricCollection g = request.getData();
-
-        final MemoryKey key = new MemoryKey(g.getType(), request.getSeries().getTags());
-
-        final MemoryCell cell =
-            storage.computeIfAbsent(key, k -> new MemoryCell(new ConcurrentHashMap<>()));
-
-        final ConcurrentSkipListMap<Long, Metric> metrics = cell.getEntries()
-            .computeIfAbsent(request.getSeries().getResource(),
-                k -> new MemoryEntry(new ConcurrentSkipListMap<>()))
-            .getMetrics();
-
-        for (final Metric d : g.data()) {
-            metrics.put(d.getTimestamp(), d);
-        }
-    }
-
-    private void doFetch(
-        final MemoryKey key, final DateRange range, final FetchQuotaWatcher watcher,
-        final Consumer<MetricReadResult> metricsConsumer
-    ) {
-        final MemoryCell cell = storage.get(key);
-
-        // empty
-        if (cell == null) {
-            return;
-        }
-
-        for (final Map.Entry<SortedMap<String, String>, MemoryEntry> e :
-            cell.getEntries().entrySet()
-        ) {
-            final Collection<Metric> metrics =
-                e.getValue()
-                    .getMetrics()
-                    .subMap(range.getStart(), false, range.getEnd(), true)
-                    .values();
-
-            watcher.readData(metrics.size());
-
-            final List<Metric> data = ImmutableList.copyOf(metrics);
-            final MetricCollection collection = MetricCollection.build(key.getSource(), data);
-            metricsConsumer.accept(new MetricReadResult(collection, e.getKey()));
-        }
-    }
-
     public String toString() {
         return "MemoryBackend(groups=" + this.groups + ")";
     }
@@ -33,12 +33,19 @@ import dagger.Provides
 import java.util.*
 
 private val DEFAULT_GROUPS = Groups("memory")
+private const val DEFAULT_COMPRESSED_BLOCK_SIZE = 512
 
 @ModuleId("memory")
 data class MemoryMetricModule(
     @JsonProperty("id") val id: Optional<String>,
     @JsonProperty("groups") var groups: Groups = DEFAULT_GROUPS,
-    @JsonProperty("synchronizedStorage") val synchronizedStorage: Boolean = false
+    @JsonProperty("synchronizedStorage") val synchronizedStorage: Boolean = false,
+    /**
+     * Store points in Gorilla-compressed blocks instead of one object per sample.
+     */
+    @JsonProperty("compressed") val compressed: Boolean = false,
+    @JsonProperty("compressedBlockSize")
+    val compressedBlockSize: Int = DEFAULT_COMPRESSED_BLOCK_SIZE
 ): MetricModule, DynamicModuleId {
     override fun module(
         primary: PrimaryComponent, depends: MetricModule.Depends, id: String
@@ -67,6 +74,14 @@ data class MemoryMetricModule(
         @Provides
         @MemoryScope
         fun groups() = groups
+
+        @Provides
+        @MemoryScope
+        fun storage(): MemoryStorage = if (compressed) {
+            CompressedStorage(compressedBlockSize)
+        } else {
+            SkipListStorage()
+        }
     }
 
     companion object {
@@ -78,11 +93,17 @@ data class MemoryMetricModule(
 data class Builder(
     var id: Optional<String> = Optional.empty(),
     var groups: Groups = DEFAULT_GROUPS,
-    var synchronizedStorage: Boolean = false
+    var synchronizedStorage: Boolean = false,
+    var compressed: Boolean = false,
+    var compressedBlockSize: Int = DEFAULT_COMPRESSED_BLOCK_SIZE
 ) {
     fun id(id: String) = apply { this.id = Optional.of(id) }
     fun groups(groups: Groups) = apply { this.groups = groups }
     fun synchronizedStorage(synchronizedStorage: Boolean) =
         apply { this.synchronizedStorage = synchronizedStorage }
-    fun build() = MemoryMetricModule(id, groups, synchronizedStorage)
+    fun compressed(compressed: Boolean) = apply { this.compressed = compressed }
+    fun compressedBlockSize(compressedBlockSize: Int) =
+        apply { this.compressedBlockSize = compressedBlockSize }
+    fun build() = MemoryMetricModule(
+        id, groups, synchronizedStorage, compressed, compressedBlockSize)
 }
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2020 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.heroic.metric.memory;
+
+import com.spotify.heroic.common.DateRange;
+import com.spotify.heroic.common.Series;
+import com.spotify.heroic.common.Statistics;
+import com.spotify.heroic.metric.FetchQuotaWatcher;
+import com.spotify.heroic.metric.MetricCollection;
+import com.spotify.heroic.metric.MetricReadResult;
+import java.util.function.Consumer;
+
+/**
+ * Storage engine used by the in-memory metric backend.
+ */
+public interface MemoryStorage {
+    /**
+     * Write the given collection of metrics for the given series.
+     */
+    void write(Series series, MetricCollection data);
+
+    /**
+     * Fetch all metrics of the given key in the range {@code (start, end]}, emitting one result
+     * per resource.
+     */
+    void fetch(
+        MemoryKey key, DateRange range, FetchQuotaWatcher watcher,
+        Consumer<MetricReadResult> metricsConsumer
+    );
+
+    /**
+     * Delete all metrics of the given key.
+     */
+    void delete(MemoryKey key);
+
+    Statistics getStatistics();
+}
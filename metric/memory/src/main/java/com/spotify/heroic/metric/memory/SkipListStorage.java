@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2020 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.heroic.metric.memory;
+
+import com.spotify.heroic.common.DateRange;
+import com.spotify.heroic.common.Series;
+import com.spotify.heroic.common.Statistics;
+import com.spotify.heroic.metric.FetchQuotaWatcher;
+import com.spotify.heroic.metric.Metric;
+import com.spotify.heroic.metric.MetricChunker;
+import com.spotify.heroic.metric.MetricCollection;
+import com.spotify.heroic.metric.MetricReadResult;
+import java.util.Collection;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Consumer;
+
+/**
+ * Stores every metric as an object in a skip list, keyed by timestamp.
+ */
+final class SkipListStorage implements MemoryStorage {
+    private final ConcurrentMap<MemoryKey, MemoryCell> storage = new ConcurrentHashMap<>();
+
+    @Override
+    public void write(final Series series, final MetricCollection data) {
+        final MemoryKey key = new MemoryKey(data.getType(), series.getTags());
+
+        final MemoryCell cell =
+            storage.computeIfAbsent(key, k -> new MemoryCell(new ConcurrentHashMap<>()));
+
+        final ConcurrentSkipListMap<Long, Metric> metrics = cell.getEntries()
+            .computeIfAbsent(series.getResource(),
+                k -> new MemoryEntry(new ConcurrentSkipListMap<>()))
+            .getMetrics();
+
+        for (final Metric d : data.data()) {
+            metrics.put(d.getTimestamp(), d);
+        }
+    }
+
+    @Override
+    public void fetch(
+        final MemoryKey key, final DateRange range, final FetchQuotaWatcher watcher,
+        final Consumer<MetricReadResult> metricsConsumer
+    ) {
+        final MemoryCell cell = storage.get(key);
+
+        // empty
+        if (cell == null) {
+            return;
+        }
+
+        for (final Map.Entry<SortedMap<String, String>, MemoryEntry> e :
+            cell.getEntries().entrySet()
+        ) {
+            final Collection<Metric> metrics =
+                e.getValue()
+                    .getMetrics()
+                    .subMap(range.getStart(), false, range.getEnd(), true)
+                    .values();
+
+            final MetricChunker chunks =
+                MetricChunker.of(key.getSource(), watcher.getChunkSize(), data -> {
+                    watcher.readData(data.size());
+                    metricsConsumer.accept(new MetricReadResult(data, e.getKey()));
+                });
+
+            for (final Metric metric : metrics) {
+                chunks.add(metric);
+            }
+
+            chunks.finish();
+        }
+    }
+
+    @Override
+    public void delete(final MemoryKey key) {
+        storage.remove(key);
+    }
+
+    @Override
+    public Statistics getStatistics() {
+        return new Statistics(MemoryBackend.MEMORY_KEYS, storage.size());
+    }
+}
@@ -0,0 +1,19 @@
+package com.spotify.heroic.metric.memory;
+
+import com.spotify.heroic.metric.MetricModule;
+import com.spotify.heroic.test.AbstractMetricBackendIT;
+
+public class CompressedMemoryBackendIT extends AbstractMetricBackendIT {
+    @Override
+    protected void setupSupport() {
+        super.setupSupport();
+
+        this.eventSupport = true;
+        this.hugeRowKey = false;
+    }
+
+    @Override
+    protected MetricModule setupModule() {
+        return MemoryMetricModule.builder().compressed(true).compressedBlockSize(16).build();
+    }
+}
@@ -0,0 +1,139 @@
+package com.spotify.heroic.metric.memory;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class CompressedSeriesTest {
+    @Test
+    public void testEncodeDecode() {
+        final Random random = new Random(0x42);
+        final int count = 10000;
+
+        final long[] timestamps = new long[count];
+        final double[] values = new double[count];
+
+        long timestamp = 1000000L;
+
+        for (int i = 0; i < count; i++) {
+            // mix of regular intervals, jitter and large gaps to exercise every encoding
+            switch (i % 5) {
+                case 0:
+                    timestamp += 10000;
+                    break;
+                case 1:
+                    timestamp += 10000 + random.nextInt(100);
+                    break;
+                case 2:
+                    timestamp += 1 + random.nextInt(5000);
+                    break;
+                case 3:
+                    timestamp += random.nextInt(Integer.MAX_VALUE) + 1L;
+                    break;
+                default:
+                    timestamp += 1;
+                    break;
+            }
+
+            timestamps[i] = timestamp;
+
+            switch (i % 4) {
+                case 0:
+                    values[i] = 42.0;
+                    break;
+                case 1:
+                    values[i] = random.nextDouble();
+                    break;
+                case 2:
+                    values[i] = i;
+                    break;
+                default:
+                    values[i] = i % 8 == 3 ? Double.NaN : -random.nextGaussian() * 1e10;
+                    break;
+            }
+        }
+
+        final GorillaBlock block = GorillaBlock.encode(timestamps, values, 0, count);
+
+        assertEquals(count, block.count());
+        assertEquals(timestamps[0], block.start());
+        assertEquals(timestamps[count - 1], block.end());
+
+        final long[] decodedTimestamps = new long[count];
+        final double[] decodedValues = new double[count];
+        final int[] index = new int[1];
+
+        block.decode((t, v) -> {
+            decodedTimestamps[index[0]] = t;
+            decodedValues[index[0]] = v;
+            index[0]++;
+        });
+
+        assertEquals(count, index[0]);
+        assertArrayEquals(timestamps, decodedTimestamps);
+        assertArrayEquals(values, decodedValues, 0.0);
+    }
+
+    @Test
+    public void testSingleValueBlock() {
+        final GorillaBlock block =
+            GorillaBlock.encode(new long[]{10L}, new double[]{Math.PI}, 0, 1);
+
+        final List<Double> values = new ArrayList<>();
+        block.decode((t, v) -> values.add(v));
+
+        assertEquals(1, values.size());
+        assertEquals(Math.PI, values.get(0), 0.0);
+    }
+
+    @Test
+    public void testReadRange() {
+        final CompressedSeries series = new CompressedSeries(4);
+
+        for (long t = 1; t <= 10; t++) {
+            series.write(t, t * 2);
+        }
+
+        final List<Long> timestamps = new ArrayList<>();
+        final List<Double> values = new ArrayList<>();
+
+        assertEquals(5, series.read(3, 8, (t, v) -> {
+            timestamps.add(t);
+            values.add(v);
+        }));
+
+        assertEquals(ImmutableList.of(4L, 5L, 6L, 7L, 8L), timestamps);
+        assertEquals(ImmutableList.of(8D, 10D, 12D, 14D, 16D), values);
+        assertEquals(10, series.points());
+    }
+
+    @Test
+    public void testOutOfOrderWritesOverwrite() {
+        final CompressedSeries series = new CompressedSeries(4);
+
+        for (long t = 10; t >= 1; t--) {
+            series.write(t, 1.0);
+        }
+
+        // overwrite a value that has already been sealed into a block
+        series.write(10, 2.0);
+        series.write(11, 3.0);
+
+        final List<Long> timestamps = new ArrayList<>();
+        final List<Double> values = new ArrayList<>();
+
+        assertEquals(11, series.read(0, 100, (t, v) -> {
+            timestamps.add(t);
+            values.add(v);
+        }));
+
+        assertEquals(ImmutableList.of(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L, 11L), timestamps);
+        assertEquals(2.0, values.get(9), 0.0);
+        assertEquals(3.0, values.get(10), 0.0);
+    }
+}
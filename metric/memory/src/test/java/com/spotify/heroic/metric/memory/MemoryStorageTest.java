@@ -0,0 +1,136 @@
+package com.spotify.heroic.metric.memory;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.AdditionalMatchers.gt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.spotify.heroic.common.DateRange;
+import com.spotify.heroic.common.Series;
+import com.spotify.heroic.metric.FetchQuotaWatcher;
+import com.spotify.heroic.metric.Metric;
+import com.spotify.heroic.metric.MetricCollection;
+import com.spotify.heroic.metric.MetricReadResult;
+import com.spotify.heroic.metric.MetricType;
+import com.spotify.heroic.metric.Point;
+import com.spotify.heroic.metric.Spread;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MemoryStorageTest {
+    private final Series series = Series.of("a", ImmutableMap.of("host", "a"));
+    private final Series withResource =
+        Series.of("a", ImmutableMap.of("host", "a"), ImmutableMap.of("pod", "1"));
+
+    private final List<Point> points = ImmutableList.of(new Point(10L, 1D), new Point(20L, 2D),
+        new Point(30L, 3D), new Point(40L, 4D), new Point(50L, 5D));
+
+    private FetchQuotaWatcher watcher;
+
+    @Before
+    public void setup() {
+        watcher = mock(FetchQuotaWatcher.class);
+        when(watcher.getChunkSize()).thenReturn(2);
+    }
+
+    private List<MetricReadResult> fetch(
+        final MemoryStorage storage, final MetricType type, final DateRange range
+    ) {
+        final List<MetricReadResult> results = new ArrayList<>();
+        storage.fetch(new MemoryKey(type, series.getTags()), range, watcher, results::add);
+        return results;
+    }
+
+    private static List<Integer> sizes(final List<MetricReadResult> results) {
+        final List<Integer> sizes = new ArrayList<>();
+
+        for (final MetricReadResult result : results) {
+            sizes.add(result.getMetrics().size());
+        }
+
+        return sizes;
+    }
+
+    private static List<Metric> data(final List<MetricReadResult> results) {
+        final List<Metric> data = new ArrayList<>();
+
+        for (final MetricReadResult result : results) {
+            data.addAll(result.getMetrics().data());
+        }
+
+        return data;
+    }
+
+    private void checkPointChunks(final MemoryStorage storage) {
+        storage.write(series, MetricCollection.points(points));
+
+        final List<MetricReadResult> results =
+            fetch(storage, MetricType.POINT, new DateRange(0L, 100L));
+
+        assertEquals(ImmutableList.of(2, 2, 1), sizes(results));
+        assertEquals(points, data(results));
+        verify(watcher).readData(1L);
+        verify(watcher, times(2)).readData(2L);
+    }
+
+    private void checkEmptyChunks(final MemoryStorage storage) {
+        storage.write(series, MetricCollection.points(points));
+        storage.write(withResource, MetricCollection.points(points));
+
+        final List<MetricReadResult> results =
+            fetch(storage, MetricType.POINT, new DateRange(100L, 200L));
+
+        /* every resource of the series is handed over as a single empty chunk */
+        assertEquals(ImmutableList.of(0, 0), sizes(results));
+        verify(watcher, times(2)).readData(0L);
+        verify(watcher, never()).readData(gt(0L));
+    }
+
+    @Test
+    public void testSkipListPointChunks() {
+        checkPointChunks(new SkipListStorage());
+    }
+
+    @Test
+    public void testCompressedPointChunks() {
+        checkPointChunks(new CompressedStorage(4));
+    }
+
+    @Test
+    public void testSkipListEmptyChunks() {
+        checkEmptyChunks(new SkipListStorage());
+    }
+
+    @Test
+    public void testCompressedEmptyChunks() {
+        checkEmptyChunks(new CompressedStorage(4));
+    }
+
+    @Test
+    public void testSpreadChunks() {
+        final List<Spread> spreads = ImmutableList.of(new Spread(10L, 1L, 1D, 1D, 1D, 1D),
+            new Spread(20L, 1L, 2D, 4D, 2D, 2D), new Spread(30L, 1L, 3D, 9D, 3D, 3D));
+
+        final MemoryStorage storage = new CompressedStorage(4);
+        storage.write(series, MetricCollection.spreads(spreads));
+
+        final List<MetricReadResult> results =
+            fetch(storage, MetricType.SPREAD, new DateRange(0L, 100L));
+
+        assertEquals(ImmutableList.of(2, 1), sizes(results));
+        assertEquals(spreads, data(results));
+
+        for (final MetricReadResult result : results) {
+            assertEquals(MetricType.SPREAD, result.getMetrics().getType());
+            assertEquals(Map.of(), result.getResource());
+        }
+    }
+}
@@ -0,0 +1,978 @@
+/*
+ * Copyright (c) 2020 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.heroic.rpc.grpc;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedMap;
+import com.spotify.heroic.common.Series;
+import com.spotify.heroic.metadata.FindSeries;
+import com.spotify.heroic.metric.FullQuery;
+import com.spotify.heroic.metric.Metric;
+import com.spotify.heroic.metric.MetricCollection;
+import com.spotify.heroic.metric.MetricType;
+import com.spotify.heroic.metric.Point;
+import com.spotify.heroic.metric.ResultGroup;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Compact binary encoding of the largest RPC responses, sent as a stream of frames.
+ * <p>
+ * Each frame starts with a one byte type. Frames are produced one at a time, as the transport
+ * asks for them, and no frame is larger than the configured maximum frame size. Result groups
+ * larger than that are split across several frames. Points are encoded in columns, with zig-zag
+ * varint delta encoded timestamps followed by the raw values. Other metric types, and the small
+ * trailing parts of a response, are embedded as JSON.
+ */
+public final class GrpcBinaryCodec {
+    /* starts a new result group */
+    static final byte GROUP = 1;
+    /* more points for the most recently started result group */
+    static final byte POINTS = 2;
+    /* a chunk of series, for the most recently started result group in a full query */
+    static final byte SERIES = 3;
+    /* part of the remainder of the response as JSON, with the streamed parts left empty */
+    static final byte TRAILER = 4;
+    /* more JSON encoded metrics for the most recently started result group */
+    static final byte DATA = 5;
+
+    static final byte COLUMNAR_POINTS = 0;
+    static final byte JSON_COLLECTION = 1;
+
+    /* smallest frame size which leaves room for a group header and at least one point */
+    static final int MIN_FRAME_SIZE = 64;
+
+    /* largest encoding of a varint */
+    private static final int MAX_VARINT_INT_BYTES = 5;
+    private static final int MAX_VARINT_LONG_BYTES = 10;
+    /* largest encoding of a single point, a varint timestamp delta and a raw double */
+    private static final int MAX_POINT_BYTES = MAX_VARINT_LONG_BYTES + Double.BYTES;
+
+    /**
+     * Writes a response as a sequence of frames.
+     */
+    public interface Encoder<R> {
+        /**
+         * Prepare the frames of the given response. Frames are only encoded once they are asked
+         * for.
+         */
+        FrameSource encode(R response);
+    }
+
+    /**
+     * Writes the parts of a response one at a time, as they become available.
+     * <p>
+     * The frames of every part are followed by the frames of the rest of the response, as
+     * produced by {@link Encoder#encode(Object)}.
+     */
+    public interface PartEncoder<P> {
+        /**
+         * Prepare the frames of a single part. Frames are only encoded once they are asked for.
+         */
+        FrameSource encode(P part);
+    }
+
+    /**
+     * Lazily produced frames of a single response.
+     */
+    public interface FrameSource {
+        /**
+         * Encode the next frame.
+         *
+         * @return the next frame, or {@code null} if there are no more frames.
+         */
+        byte[] next() throws IOException;
+    }
+
+    /**
+     * Incrementally decodes a response from the frames of a single call.
+     */
+    public interface Decoder<R> {
+        void accept(byte[] frame) throws IOException;
+
+        R end() throws IOException;
+    }
+
+    /**
+     * Encoder and decoder factory for one response type, which is streamed as parts of type
+     * {@code P}.
+     */
+    public interface Format<R, P> {
+        /**
+         * Build an encoder which produces frames no larger than the given size.
+         */
+        Encoder<R> encoder(ObjectMapper mapper, int maxFrameSize);
+
+        /**
+         * Build an encoder of single parts, which produces frames no larger than the given size.
+         */
+        PartEncoder<P> partEncoder(ObjectMapper mapper, int maxFrameSize);
+
+        /**
+         * Build a decoder which hands every part to the given consumer as soon as it has been
+         * decoded. The response returned by {@link Decoder#end()} does not contain the parts.
+         */
+        Decoder<R> decoder(ObjectMapper mapper, Consumer<P> parts);
+
+        /**
+         * Combine a response without parts with the parts that were streamed for it.
+         */
+        R combine(R response, List<P> parts);
+
+        /**
+         * Build a decoder which collects all parts into the decoded response.
+         */
+        default Decoder<R> decoder(final ObjectMapper mapper) {
+            final List<P> parts = new ArrayList<>();
+            final Decoder<R> decoder = decoder(mapper, parts::add);
+
+            return new Decoder<R>() {
+                @Override
+                public void accept(final byte[] frame) throws IOException {
+                    decoder.accept(frame);
+                }
+
+                @Override
+                public R end() throws IOException {
+                    return combine(decoder.end(), parts);
+                }
+            };
+        }
+    }
+
+    public static final Format<FullQuery, ResultGroup> FULL_QUERY =
+        new Format<FullQuery, ResultGroup>() {
+            @Override
+            public Encoder<FullQuery> encoder(final ObjectMapper mapper, final int maxFrameSize) {
+                return new FullQueryEncoder(mapper, maxFrameSize);
+            }
+
+            @Override
+            public PartEncoder<ResultGroup> partEncoder(
+                final ObjectMapper mapper, final int maxFrameSize
+            ) {
+                return new FullQueryEncoder(mapper, maxFrameSize)::encodeGroup;
+            }
+
+            @Override
+            public Decoder<FullQuery> decoder(
+                final ObjectMapper mapper, final Consumer<ResultGroup> parts
+            ) {
+                return new FullQueryDecoder(mapper, parts);
+            }
+
+            @Override
+            public FullQuery combine(final FullQuery response, final List<ResultGroup> parts) {
+                return FullQuery.create(response.trace(), response.errors(),
+                    ImmutableList.copyOf(parts), response.statistics(), response.limits(),
+                    response.dataDensity());
+            }
+        };
+
+    public static final Format<FindSeries, Series> FIND_SERIES =
+        new Format<FindSeries, Series>() {
+            @Override
+            public Encoder<FindSeries> encoder(final ObjectMapper mapper, final int maxFrameSize) {
+                return new FindSeriesEncoder(mapper, maxFrameSize);
+            }
+
+            @Override
+            public PartEncoder<Series> partEncoder(
+                final ObjectMapper mapper, final int maxFrameSize
+            ) {
+                final int frameSize = checkFrameSize(maxFrameSize);
+                return series -> seriesFrames(new SeriesChunks(ImmutableList.of(series)),
+                    frameSize);
+            }
+
+            @Override
+            public Decoder<FindSeries> decoder(
+                final ObjectMapper mapper, final Consumer<Series> parts
+            ) {
+                return new FindSeriesDecoder(mapper, parts);
+            }
+
+            @Override
+            public FindSeries combine(final FindSeries response, final List<Series> parts) {
+                return new FindSeries(response.getErrors(), ImmutableSet.copyOf(parts),
+                    response.getLimited());
+            }
+        };
+
+    private GrpcBinaryCodec() {
+    }
+
+    static class FullQueryEncoder implements Encoder<FullQuery> {
+        private final ObjectMapper mapper;
+        private final int maxFrameSize;
+
+        FullQueryEncoder(final ObjectMapper mapper, final int maxFrameSize) {
+            this.mapper = mapper;
+            this.maxFrameSize = checkFrameSize(maxFrameSize);
+        }
+
+        @Override
+        public FrameSource encode(final FullQuery response) {
+            return new FullQueryFrames(response);
+        }
+
+        /**
+         * Prepare the frames of a single result group.
+         */
+        FrameSource encodeGroup(final ResultGroup group) {
+            return new GroupFrames(group);
+        }
+
+        private final class FullQueryFrames implements FrameSource {
+            private final Iterator<ResultGroup> groups;
+            private final TrailerChunks trailer;
+
+            /* the group currently being encoded */
+            private GroupFrames group;
+
+            private FullQueryFrames(final FullQuery response) {
+                this.groups = response.groups().iterator();
+                this.trailer = new TrailerChunks(mapper, maxFrameSize,
+                    () -> FullQuery.create(response.trace(), response.errors(),
+                        ImmutableList.of(), response.statistics(), response.limits(),
+                        response.dataDensity()));
+            }
+
+            @Override
+            public byte[] next() throws IOException {
+                while (true) {
+                    if (group != null) {
+                        final byte[] frame = group.next();
+
+                        if (frame != null) {
+                            return frame;
+                        }
+
+                        group = null;
+                    }
+
+                    if (groups.hasNext()) {
+                        group = new GroupFrames(groups.next());
+                        continue;
+                    }
+
+                    return trailer.next();
+                }
+            }
+        }
+
+        private final class GroupFrames implements FrameSource {
+            private final ResultGroup group;
+
+            private SeriesChunks series;
+            private MetricCollection.ColumnarPointCollection points;
+            private MetricCollection collection;
+            private int offset;
+            private int dataStep;
+
+            private GroupFrames(final ResultGroup group) {
+                this.group = group;
+            }
+
+            @Override
+            public byte[] next() throws IOException {
+                if (series == null) {
+                    return startGroup();
+                }
+
+                if (!series.isDone()) {
+                    final FrameWriter frame = new FrameWriter(SERIES);
+                    series.write(frame, maxFrameSize, true);
+                    return frame.toByteArray();
+                }
+
+                if (offset < collection.size()) {
+                    final FrameWriter frame = new FrameWriter(points != null ? POINTS : DATA);
+                    writeData(frame, true);
+                    return frame.toByteArray();
+                }
+
+                return null;
+            }
+
+            private byte[] startGroup() throws IOException {
+                final MetricCollection collection = group.getGroup();
+
+                final FrameWriter header = new FrameWriter(GROUP);
+                header.writeMap(group.getKey());
+                header.writeVarLong(group.getCadence());
+
+                if (collection.getType() == MetricType.POINT) {
+                    header.writeByte(COLUMNAR_POINTS);
+                    this.points = columnar(collection);
+                    this.collection = points;
+                } else {
+                    header.writeByte(JSON_COLLECTION);
+                    header.writeString(collection.getType().identifier());
+                    this.collection = collection;
+                }
+
+                this.series = new SeriesChunks(group.getSeries());
+                this.offset = 0;
+                this.dataStep = collection.size();
+
+                /* pack as much of the group as fits into the header frame */
+                if (header.size() + 2 * MAX_VARINT_INT_BYTES > maxFrameSize) {
+                    throw new IOException(
+                        "Group key does not fit in a frame of " + maxFrameSize + " bytes");
+                }
+
+                /* leaves room for at least an empty data section */
+                series.write(header, maxFrameSize - 1, false);
+
+                if (series.isDone()) {
+                    writeData(header, false);
+                } else {
+                    /* no points, or an empty JSON collection */
+                    header.writeVarInt(0);
+                }
+
+                return header.toByteArray();
+            }
+
+            private void writeData(final FrameWriter frame, final boolean required)
+                throws IOException {
+                final int room = maxFrameSize - frame.size() - MAX_VARINT_INT_BYTES;
+
+                if (points != null) {
+                    final int count = Math.min(points.size() - offset,
+                        Math.max(0, room / MAX_POINT_BYTES));
+
+                    if (count == 0 && required) {
+                        throw new IOException(
+                            "Point does not fit in a frame of " + maxFrameSize + " bytes");
+                    }
+
+                    frame.writePoints(points, offset, offset + count);
+                    offset += count;
+                    return;
+                }
+
+                final List<? extends Metric> data = collection.data();
+                int count = Math.min(data.size() - offset, dataStep);
+
+                while (count > 0) {
+                    final byte[] json = mapper.writeValueAsBytes(MetricCollection.build(
+                        collection.getType(), data.subList(offset, offset + count)));
+
+                    if (json.length <= room) {
+                        frame.writeBytes(json);
+                        offset += count;
+                        dataStep = count * 2;
+                        return;
+                    }
+
+                    count /= 2;
+                }
+
+                if (required) {
+                    throw new IOException(
+                        "Metric does not fit in a frame of " + maxFrameSize + " bytes");
+                }
+
+                dataStep = 1;
+                frame.writeVarInt(0);
+            }
+        }
+    }
+
+    static class FullQueryDecoder implements Decoder<FullQuery> {
+        private final ObjectMapper mapper;
+        private final Consumer<ResultGroup> parts;
+        private final ByteArrayOutputStream trailer = new ByteArrayOutputStream();
+
+        private boolean trailerStarted;
+
+        /* the group currently being decoded */
+        private Map<String, String> key;
+        private long cadence;
+        private ImmutableSet.Builder<Series> series;
+        private MetricCollection.ColumnarPointCollection.Builder points;
+        private MetricType type;
+        private List<Metric> data;
+
+        FullQueryDecoder(final ObjectMapper mapper, final Consumer<ResultGroup> parts) {
+            this.mapper = mapper;
+            this.parts = parts;
+        }
+
+        @Override
+        public void accept(final byte[] frame) throws IOException {
+            final FrameReader in = new FrameReader(frame);
+            final byte type = in.readByte();
+
+            if (trailerStarted && type != TRAILER) {
+                throw new IOException("Unexpected frame type after trailer: " + type);
+            }
+
+            switch (type) {
+                case GROUP:
+                    finishGroup();
+                    readGroup(in);
+                    break;
+                case SERIES:
+                    checkGroup(type);
+                    in.readSeries(series::add);
+                    break;
+                case POINTS:
+                    checkGroup(type);
+
+                    if (points == null) {
+                        throw new IOException("Points frame for a group without points");
+                    }
+
+                    in.readPoints(points);
+                    break;
+                case DATA:
+                    checkGroup(type);
+
+                    if (data == null) {
+                        throw new IOException("Data frame for a group of points");
+                    }
+
+                    readData(in);
+                    break;
+                case TRAILER:
+                    finishGroup();
+                    trailerStarted = true;
+                    trailer.write(in.readRemaining());
+                    break;
+                default:
+                    throw new IOException("Unexpected frame type: " + type);
+            }
+        }
+
+        private void checkGroup(final byte type) throws IOException {
+            if (series == null) {
+                throw new IOException("Frame of type " + type + " without a preceding group");
+            }
+        }
+
+        private void readGroup(final FrameReader in) throws IOException {
+            this.key = in.readKey();
+            this.cadence = in.readVarLong();
+            this.series = ImmutableSet.builder();
+
+            final byte encoding = in.readByte();
+
+            switch (encoding) {
+                case COLUMNAR_POINTS:
+                    this.points = MetricCollection.ColumnarPointCollection.builder();
+                    in.readSeries(series::add);
+                    in.readPoints(points);
+                    break;
+                case JSON_COLLECTION:
+                    final String identifier = in.readString();
+                    this.type = MetricType
+                        .fromIdentifier(identifier)
+                        .orElseThrow(() -> new IOException("Unknown metric type: " + identifier));
+                    this.data = new ArrayList<>();
+                    in.readSeries(series::add);
+                    readData(in);
+                    break;
+                default:
+                    throw new IOException("Unexpected collection encoding: " + encoding);
+            }
+        }
+
+        private void readData(final FrameReader in) throws IOException {
+            final byte[] json = in.readBytes();
+
+            if (json.length > 0) {
+                data.addAll(mapper.readValue(json, MetricCollection.class).data());
+            }
+        }
+
+        private void finishGroup() {
+            if (series == null) {
+                return;
+            }
+
+            final MetricCollection collection =
+                points != null ? points.build() : MetricCollection.build(type, data);
+
+            parts.accept(new ResultGroup(key, series.build(), collection, cadence));
+            key = null;
+            series = null;
+            points = null;
+            type = null;
+            data = null;
+        }
+
+        @Override
+        public FullQuery end() throws IOException {
+            if (!trailerStarted) {
+                throw new IOException("Response ended without a trailer");
+            }
+
+            return mapper.readValue(trailer.toByteArray(), FullQuery.class);
+        }
+    }
+
+    static class FindSeriesEncoder implements Encoder<FindSeries> {
+        private final ObjectMapper mapper;
+        private final int maxFrameSize;
+
+        FindSeriesEncoder(final ObjectMapper mapper, final int maxFrameSize) {
+            this.mapper = mapper;
+            this.maxFrameSize = checkFrameSize(maxFrameSize);
+        }
+
+        @Override
+        public FrameSource encode(final FindSeries response) {
+            final SeriesChunks series = new SeriesChunks(response.getSeries());
+            final TrailerChunks trailer = new TrailerChunks(mapper, maxFrameSize,
+                () -> new FindSeries(response.getErrors(), ImmutableSet.of(),
+                    response.getLimited()));
+
+            final FrameSource frames = seriesFrames(series, maxFrameSize);
+
+            return () -> {
+                final byte[] frame = frames.next();
+                return frame != null ? frame : trailer.next();
+            };
+        }
+    }
+
+    static class FindSeriesDecoder implements Decoder<FindSeries> {
+        private final ObjectMapper mapper;
+        private final Consumer<Series> parts;
+        private final ByteArrayOutputStream trailer = new ByteArrayOutputStream();
+
+        private boolean trailerStarted;
+
+        FindSeriesDecoder(final ObjectMapper mapper, final Consumer<Series> parts) {
+            this.mapper = mapper;
+            this.parts = parts;
+        }
+
+        @Override
+        public void accept(final byte[] frame) throws IOException {
+            final FrameReader in = new FrameReader(frame);
+            final byte type = in.readByte();
+
+            if (trailerStarted && type != TRAILER) {
+                throw new IOException("Unexpected frame type after trailer: " + type);
+            }
+
+            switch (type) {
+                case SERIES:
+                    in.readSeries(parts);
+                    break;
+                case TRAILER:
+                    trailerStarted = true;
+                    trailer.write(in.readRemaining());
+                    break;
+                default:
+                    throw new IOException("Unexpected frame type: " + type);
+            }
+        }
+
+        @Override
+        public FindSeries end() throws IOException {
+            if (!trailerStarted) {
+                throw new IOException("Response ended without a trailer");
+            }
+
+            return mapper.readValue(trailer.toByteArray(), FindSeries.class);
+        }
+    }
+
+    private static int checkFrameSize(final int maxFrameSize) {
+        if (maxFrameSize < MIN_FRAME_SIZE) {
+            throw new IllegalArgumentException(
+                "maxFrameSize must be at least " + MIN_FRAME_SIZE + " bytes: " + maxFrameSize);
+        }
+
+        return maxFrameSize;
+    }
+
+    private static FrameSource seriesFrames(final SeriesChunks series, final int maxFrameSize) {
+        return () -> {
+            if (series.isDone()) {
+                return null;
+            }
+
+            final FrameWriter frame = new FrameWriter(SERIES);
+            series.write(frame, maxFrameSize, true);
+            return frame.toByteArray();
+        };
+    }
+
+    private static MetricCollection.ColumnarPointCollection columnar(
+        final MetricCollection collection
+    ) {
+        if (collection instanceof MetricCollection.ColumnarPointCollection) {
+            return (MetricCollection.ColumnarPointCollection) collection;
+        }
+
+        final MetricCollection.ColumnarPointCollection.Builder builder =
+            MetricCollection.ColumnarPointCollection.builder(collection.size());
+
+        for (final Point p : collection.getDataAs(Point.class)) {
+            builder.add(p.getTimestamp(), p.getValue());
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Writes a set of series into as many frames as needed, as a count followed by the series.
+     */
+    private static final class SeriesChunks {
+        private final Iterator<Series> series;
+
+        /* an encoded series which did not fit in the previous frame */
+        private byte[] pending;
+
+        private SeriesChunks(final Iterable<Series> series) {
+            this.series = series.iterator();
+        }
+
+        boolean isDone() {
+            return pending == null && !series.hasNext();
+        }
+
+        /**
+         * Write as many series as fit in the given frame.
+         *
+         * @param required if at least one series has to be written
+         */
+        void write(final FrameWriter frame, final int maxFrameSize, final boolean required)
+            throws IOException {
+            final int room = maxFrameSize - frame.size() - MAX_VARINT_INT_BYTES;
+            final FrameWriter body = new FrameWriter();
+            int count = 0;
+
+            while (!isDone()) {
+                if (pending == null) {
+                    final FrameWriter encoded = new FrameWriter();
+                    encoded.writeSeries(series.next());
+                    pending = encoded.toByteArray();
+                }
+
+                if (body.size() + pending.length > room) {
+                    break;
+                }
+
+                body.writeRaw(pending);
+                pending = null;
+                count++;
+            }
+
+            if (count == 0 && required) {
+                throw new IOException(
+                    "Series does not fit in a frame of " + maxFrameSize + " bytes");
+            }
+
+            frame.writeVarInt(count);
+            frame.writeRaw(body.toByteArray());
+        }
+    }
+
+    /**
+     * Writes the JSON trailer of a response as one or more trailer frames.
+     */
+    private static final class TrailerChunks {
+        private final ObjectMapper mapper;
+        private final int maxFrameSize;
+        private final Supplier<?> supplier;
+
+        private byte[] json;
+        private int offset;
+
+        private TrailerChunks(
+            final ObjectMapper mapper, final int maxFrameSize, final Supplier<?> supplier
+        ) {
+            this.mapper = mapper;
+            this.maxFrameSize = maxFrameSize;
+            this.supplier = supplier;
+        }
+
+        byte[] next() throws IOException {
+            if (json == null) {
+                json = mapper.writeValueAsBytes(supplier.get());
+            } else if (offset >= json.length) {
+                return null;
+            }
+
+            final int length = Math.min(json.length - offset, maxFrameSize - 1);
+            final byte[] frame = new byte[length + 1];
+            frame[0] = TRAILER;
+            System.arraycopy(json, offset, frame, 1, length);
+            /* an empty trailer still takes one frame, make sure it is only sent once */
+            offset += Math.max(length, 1);
+            return frame;
+        }
+    }
+
+    private static final class FrameWriter {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+
+        FrameWriter() {
+        }
+
+        FrameWriter(final byte type) throws IOException {
+            out.writeByte(type);
+        }
+
+        int size() {
+            return out.size();
+        }
+
+        void writeByte(final byte value) throws IOException {
+            out.writeByte(value);
+        }
+
+        void writeRaw(final byte[] value) throws IOException {
+            out.write(value);
+        }
+
+        void writeVarInt(final int value) throws IOException {
+            writeVarLong(value);
+        }
+
+        void writeVarLong(final long value) throws IOException {
+            long v = value;
+
+            while ((v & ~0x7FL) != 0) {
+                out.writeByte((int) ((v & 0x7F) | 0x80));
+                v >>>= 7;
+            }
+
+            out.writeByte((int) v);
+        }
+
+        void writeBytes(final byte[] value) throws IOException {
+            writeVarInt(value.length);
+            out.write(value);
+        }
+
+        void writeString(final String value) throws IOException {
+            if (value == null) {
+                writeVarInt(0);
+                return;
+            }
+
+            /* length is offset by one, to distinguish null from empty strings */
+            final byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(encoded.length + 1);
+            out.write(encoded);
+        }
+
+        void writeMap(final Map<String, String> map) throws IOException {
+            writeVarInt(map.size());
+
+            for (final Map.Entry<String, String> e : map.entrySet()) {
+                writeString(e.getKey());
+                writeString(e.getValue());
+            }
+        }
+
+        void writeSeries(final Series series) throws IOException {
+            writeString(series.getKey());
+            writeMap(series.getTags());
+            writeMap(series.getResource());
+        }
+
+        void writePoints(
+            final MetricCollection.ColumnarPointCollection points, final int start, final int end
+        ) throws IOException {
+            writeVarInt(end - start);
+
+            long last = 0;
+
+            for (int i = start; i < end; i++) {
+                final long delta = points.getTimestamp(i) - last;
+                /* zig-zag, since timestamps are not guaranteed to be ordered */
+                writeVarLong((delta << 1) ^ (delta >> 63));
+                last = points.getTimestamp(i);
+            }
+
+            for (int i = start; i < end; i++) {
+                out.writeDouble(points.getValue(i));
+            }
+        }
+
+        byte[] toByteArray() {
+            return bytes.toByteArray();
+        }
+    }
+
+    private static final class FrameReader {
+        private final ByteBuffer buffer;
+
+        FrameReader(final byte[] frame) {
+            this.buffer = ByteBuffer.wrap(frame);
+        }
+
+        byte readByte() throws IOException {
+            ensure(1);
+            return buffer.get();
+        }
+
+        int readVarInt() throws IOException {
+            final long value = readVarLong();
+
+            if (value < 0 || value > Integer.MAX_VALUE) {
+                throw new IOException("Integer out of range: " + value);
+            }
+
+            return (int) value;
+        }
+
+        long readVarLong() throws IOException {
+            long value = 0;
+
+            for (int shift = 0; shift < 64; shift += 7) {
+                final int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+
+            throw new IOException("Malformed varint");
+        }
+
+        byte[] readBytes() throws IOException {
+            final int length = readVarInt();
+            ensure(length);
+            final byte[] value = new byte[length];
+            buffer.get(value);
+            return value;
+        }
+
+        byte[] readRemaining() {
+            final byte[] value = new byte[buffer.remaining()];
+            buffer.get(value);
+            return value;
+        }
+
+        String readString() throws IOException {
+            final int length = readVarInt();
+
+            if (length == 0) {
+                return null;
+            }
+
+            ensure(length - 1);
+            final String value = new String(buffer.array(), buffer.position(), length - 1,
+                StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length - 1);
+            return value;
+        }
+
+        /* group keys may hold null values, for tags which are missing from some series */
+        Map<String, String> readKey() throws IOException {
+            final int size = readVarInt();
+            /* every entry takes at least two bytes */
+            ensure(size * 2L);
+            final Map<String, String> key = new LinkedHashMap<>(size * 2);
+
+            for (int i = 0; i < size; i++) {
+                key.put(readString(), readString());
+            }
+
+            return key;
+        }
+
+        SortedMap<String, String> readMap() throws IOException {
+            final int size = readVarInt();
+            ensure(size * 2L);
+            final ImmutableSortedMap.Builder<String, String> map =
+                ImmutableSortedMap.naturalOrder();
+
+            for (int i = 0; i < size; i++) {
+                map.put(readString(), readString());
+            }
+
+            return map.build();
+        }
+
+        /* reads a count followed by that many series */
+        void readSeries(final Consumer<Series> series) throws IOException {
+            final int count = readVarInt();
+            /* every series takes at least three bytes */
+            ensure(count * 3L);
+
+            for (int i = 0; i < count; i++) {
+                final String key = readString();
+                final SortedMap<String, String> tags = readMap();
+                final SortedMap<String, String> resource = readMap();
+                series.accept(new Series(key, tags, resource));
+            }
+        }
+
+        void readPoints(final MetricCollection.ColumnarPointCollection.Builder points)
+            throws IOException {
+            final int count = readVarInt();
+            /* every point takes at least one byte of timestamp and the raw value */
+            ensure(count * (1L + Double.BYTES));
+
+            final long[] timestamps = new long[count];
+
+            long last = 0;
+
+            for (int i = 0; i < count; i++) {
+                final long zigzag = readVarLong();
+                last += (zigzag >>> 1) ^ -(zigzag & 1);
+                timestamps[i] = last;
+            }
+
+            ensure(count * (long) Double.BYTES);
+
+            for (int i = 0; i < count; i++) {
+                points.add(timestamps[i], buffer.getDouble());
+            }
+        }
+
+        private void ensure(final long length) throws EOFException {
+            if (buffer.remaining() < length) {
+                throw new EOFException(
+                    "Truncated frame, needed " + length + " bytes but " + buffer.remaining() +
+                        " remain");
+            }
+        }
+    }
+}
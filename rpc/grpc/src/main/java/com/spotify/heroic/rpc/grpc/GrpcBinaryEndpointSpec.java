@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2020 Spotify AB.
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.spotify.heroic.rpc.grpc;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import io.grpc.MethodDescriptor;
+
+/**
+ * Endpoint which takes a JSON request, and streams its response as frames of the binary codec.
+ */
+public class GrpcBinaryEndpointSpec<Q, R, P> {
+    private final TypeReference<Q> queryType;
+    private final GrpcBinaryCodec.Format<R, P> format;
+    private final MethodDescriptor<byte[], byte[]> descriptor;
+
+    public GrpcBinaryEndpointSpec(
+        final TypeReference<Q> queryType, final GrpcBinaryCodec.Format<R, P> format,
+        final MethodDescriptor<byte[], byte[]> descriptor
+    ) {
+        this.queryType = queryType;
+        this.format = format;
+        this.descriptor = descriptor;
+    }
+
+    public TypeReference<Q> queryType() {
+        return queryType;
+    }
+
+    public GrpcBinaryCodec.Format<R, P> format() {
+        return format;
+    }
+
+    public MethodDescriptor<byte[], byte[]> descriptor() {
+        return descriptor;
+    }
+}
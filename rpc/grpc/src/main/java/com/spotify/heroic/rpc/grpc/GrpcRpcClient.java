@@ -40,6 +40,9 @@ import io.opencensus.trace.Span;
 import io.opencensus.trace.Tracer;
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
 
 public class GrpcRpcClient {
     private final AsyncFramework async;
@@ -149,6 +152,104 @@ public class GrpcRpcClient {
         });
     }
 
+    /**
+     * Request a binary endpoint, collecting the streamed parts into the response.
+     */
+    public <Q, R, P> AsyncFuture<R> requestStream(
+        final GrpcBinaryEndpointSpec<Q, R, P> endpoint, final Q entity, final CallOptions options
+    ) {
+        final List<P> parts = new ArrayList<>();
+
+        return requestStream(endpoint, entity, options, parts::add).directTransform(
+            response -> endpoint.format().combine(response, parts));
+    }
+
+    /**
+     * Request a binary endpoint, handing every part of the response to the given consumer as soon
+     * as it has been decoded.
+     * <p>
+     * Only one more frame is requested once the previous one has been handled, so a slow
+     * consumer applies backpressure all the way to the serving node.
+     *
+     * @return a future resolved with the remainder of the response, without the streamed parts.
+     */
+    public <Q, R, P> AsyncFuture<R> requestStream(
+        final GrpcBinaryEndpointSpec<Q, R, P> endpoint, final Q entity, final CallOptions options,
+        final Consumer<P> parts
+    ) {
+        final Span rootSpan = tracer.getCurrentSpan();
+        rootSpan.putAttribute("peer.address", stringAttributeValue(getUri()));
+
+        return channel.doto(channel -> {
+            final byte[] body;
+
+            try {
+                body = mapper.writeValueAsBytes(entity);
+            } catch (JsonProcessingException e) {
+                return async.failed(e);
+            }
+
+            final ClientCall<byte[], byte[]> call = channel.newCall(endpoint.descriptor(), options);
+            final GrpcBinaryCodec.Decoder<R> decoder = endpoint.format().decoder(mapper, parts);
+
+            final ResolvableFuture<R> future = async.future();
+
+            call.start(new ClientCall.Listener<byte[]>() {
+                @Override
+                public void onMessage(final byte[] message) {
+                    if (future.isDone()) {
+                        return;
+                    }
+
+                    try {
+                        decoder.accept(message);
+                    } catch (Exception e) {
+                        future.fail(e);
+                        call.cancel("Failed to decode response", e);
+                        return;
+                    }
+
+                    call.request(1);
+                }
+
+                @Override
+                public void onClose(final Status status, final Metadata trailers) {
+                    if (future.isDone()) {
+                        return;
+                    }
+
+                    if (!status.isOk()) {
+                        future.fail(new RuntimeException(
+                            "Request finished with status code (" + status + ")"));
+                        return;
+                    }
+
+                    final R response;
+
+                    try {
+                        response = decoder.end();
+                    } catch (IOException e) {
+                        future.fail(e);
+                        return;
+                    }
+
+                    future.resolve(response);
+                }
+            }, new Metadata());
+
+            final Scope scope = tracer.withSpan(rootSpan);
+
+            call.sendMessage(body);
+            call.setMessageCompression(true);
+            call.request(1);
+            call.halfClose();
+
+            future.onCancelled(() -> call.cancel("Request cancelled", null));
+
+            return future.onFailed(e -> errors.mark()).onFinished(scope::close);
+        });
+    }
+
     public boolean isAlive() {
         return errors.getFiveMinuteRate() < 1.0D;
     }
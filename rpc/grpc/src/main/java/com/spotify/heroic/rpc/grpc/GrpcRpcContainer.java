@@ -25,10 +25,13 @@ import eu.toolchain.async.AsyncFuture;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 public class GrpcRpcContainer {
     private final List<GrpcEndpointHandle<?, ?>> endpoints = new ArrayList<>();
+    private final List<BinaryEndpoint<?, ?, ?>> binaryEndpoints = new ArrayList<>();
 
     @SuppressWarnings("unchecked")
     public void register(final GrpcRpcEndpointHandleBase<?, ?> handle) {
@@ -46,7 +49,49 @@ public class GrpcRpcContainer {
         });
     }
 
+    public <Q, R, P> void registerBinary(
+        final GrpcBinaryEndpointSpec<Q, R, P> spec, Function<Q, AsyncFuture<R>> handle
+    ) {
+        registerBinary(spec, (request, parts) -> handle.apply(request));
+    }
+
+    /**
+     * Register a binary endpoint whose handler streams parts of the response as they become
+     * available, and resolves with the rest of the response.
+     */
+    public <Q, R, P> void registerBinary(
+        final GrpcBinaryEndpointSpec<Q, R, P> spec,
+        BiFunction<Q, Consumer<P>, AsyncFuture<R>> handle
+    ) {
+        binaryEndpoints.add(new BinaryEndpoint<>(spec, handle));
+    }
+
     public List<GrpcEndpointHandle<?, ?>> getEndpoints() {
         return endpoints;
     }
+
+    public List<BinaryEndpoint<?, ?, ?>> getBinaryEndpoints() {
+        return binaryEndpoints;
+    }
+
+    public static class BinaryEndpoint<Q, R, P> {
+        private final GrpcBinaryEndpointSpec<Q, R, P> spec;
+        private final BiFunction<Q, Consumer<P>, AsyncFuture<R>> handle;
+
+        BinaryEndpoint(
+            final GrpcBinaryEndpointSpec<Q, R, P> spec,
+            final BiFunction<Q, Consumer<P>, AsyncFuture<R>> handle
+        ) {
+            this.spec = spec;
+            this.handle = handle;
+        }
+
+        public GrpcBinaryEndpointSpec<Q, R, P> spec() {
+            return spec;
+        }
+
+        public AsyncFuture<R> handle(final Q request, final Consumer<P> parts) {
+            return handle.apply(request, parts);
+        }
+    }
 }
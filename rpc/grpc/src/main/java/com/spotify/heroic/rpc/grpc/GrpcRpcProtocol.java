@@ -25,10 +25,12 @@ import static io.grpc.MethodDescriptor.generateFullMethodName;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
 import com.google.common.io.ByteStreams;
 import com.spotify.heroic.cluster.ClusterNode;
 import com.spotify.heroic.cluster.NodeMetadata;
 import com.spotify.heroic.cluster.RpcProtocol;
+import com.spotify.heroic.common.Series;
 import com.spotify.heroic.metadata.CountSeries;
 import com.spotify.heroic.metadata.DeleteSeries;
 import com.spotify.heroic.metadata.FindKeys;
@@ -36,6 +38,7 @@ import com.spotify.heroic.metadata.FindSeries;
 import com.spotify.heroic.metadata.FindTags;
 import com.spotify.heroic.metadata.WriteMetadata;
 import com.spotify.heroic.metric.FullQuery;
+import com.spotify.heroic.metric.ResultGroup;
 import com.spotify.heroic.metric.WriteMetric;
 import com.spotify.heroic.suggest.KeySuggest;
 import com.spotify.heroic.suggest.TagKeyCount;
@@ -64,6 +67,7 @@ import java.net.InetSocketAddress;
 import java.net.URI;
 import java.util.Optional;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import javax.inject.Inject;
 import javax.inject.Named;
 
@@ -222,10 +226,36 @@ public class GrpcRpcProtocol implements RpcProtocol {
             @Override
             public AsyncFuture<FullQuery> query(final FullQuery.Request request, final Span span) {
                 try (Scope ignored = tracer.withSpan(span)) {
+                    if (metadata.hasCapability(BINARY_CODEC)) {
+                        return requestStream(METRICS_FULL_QUERY_BINARY, request);
+                    }
+
                     return request(METRICS_FULL_QUERY, request);
                 }
             }
 
+            @Override
+            public AsyncFuture<FullQuery> query(
+                final FullQuery.Request request, final Span span,
+                final Consumer<ResultGroup> groups
+            ) {
+                if (!metadata.hasCapability(BINARY_CODEC)) {
+                    return ClusterNode.Group.super.query(request, span, groups);
+                }
+
+                try (Scope ignored = tracer.withSpan(span)) {
+                    final GroupedQuery<FullQuery.Request> grouped =
+                        new GroupedQuery<>(group, request);
+
+                    return client
+                        .requestStream(METRICS_FULL_QUERY_BINARY, grouped, CallOptions.DEFAULT,
+                            groups)
+                        .directTransform(response -> METRICS_FULL_QUERY_BINARY
+                            .format()
+                            .combine(response, ImmutableList.of()));
+                }
+            }
+
             @Override
             public AsyncFuture<WriteMetric> writeMetric(final WriteMetric.Request request) {
                 return request(METRICS_WRITE, request);
@@ -243,6 +273,10 @@ public class GrpcRpcProtocol implements RpcProtocol {
 
             @Override
             public AsyncFuture<FindSeries> findSeries(final FindSeries.Request request) {
+                if (metadata.hasCapability(BINARY_CODEC)) {
+                    return requestStream(METADATA_FIND_SERIES_BINARY, request);
+                }
+
                 return request(METADATA_FIND_SERIES, request);
             }
 
@@ -294,6 +328,13 @@ public class GrpcRpcProtocol implements RpcProtocol {
                 final GroupedQuery<T> grouped = new GroupedQuery<>(group, body);
                 return client.request(endpoint, grouped, CallOptions.DEFAULT);
             }
+
+            private <T, R> AsyncFuture<R> requestStream(
+                GrpcBinaryEndpointSpec<GroupedQuery<T>, R, ?> endpoint, T body
+            ) {
+                final GroupedQuery<T> grouped = new GroupedQuery<>(group, body);
+                return client.requestStream(endpoint, grouped, CallOptions.DEFAULT);
+            }
         }
     }
 
@@ -316,6 +357,11 @@ public class GrpcRpcProtocol implements RpcProtocol {
 
     public static final String SERVICE = "heroic";
 
+    /**
+     * Capability advertised in {@link NodeMetadata} by nodes which serve the binary endpoints.
+     */
+    public static final String BINARY_CODEC = "grpc-binary-v1";
+
     private static <Q, R> GrpcDescriptor<Q, R> descriptor(
         final String endpointName, final TypeReference<Q> requestType,
         final TypeReference<R> responseType
@@ -413,4 +459,25 @@ public class GrpcRpcProtocol implements RpcProtocol {
         descriptor("suggest:tagValue", new TypeReference<GroupedQuery<TagValueSuggest.Request>>() {
         }, new TypeReference<TagValueSuggest>() {
         });
+
+    private static <Q, R, P> GrpcBinaryEndpointSpec<Q, R, P> binaryDescriptor(
+        final String endpointName, final TypeReference<Q> requestType,
+        final GrpcBinaryCodec.Format<R, P> format
+    ) {
+        final MethodDescriptor<byte[], byte[]> descriptor =
+            MethodDescriptor.create(MethodDescriptor.MethodType.SERVER_STREAMING,
+                generateFullMethodName(SERVICE, endpointName), BYTE_MARSHALLER, BYTE_MARSHALLER);
+
+        return new GrpcBinaryEndpointSpec<>(requestType, format, descriptor);
+    }
+
+    public static final GrpcBinaryEndpointSpec<GroupedQuery<FullQuery.Request>, FullQuery,
+        ResultGroup> METRICS_FULL_QUERY_BINARY = binaryDescriptor("metrics:fullQuery:binary",
+        new TypeReference<GroupedQuery<FullQuery.Request>>() {
+        }, GrpcBinaryCodec.FULL_QUERY);
+
+    public static final GrpcBinaryEndpointSpec<GroupedQuery<FindSeries.Request>, FindSeries,
+        Series> METADATA_FIND_SERIES_BINARY = binaryDescriptor("metadata:findSeries:binary",
+        new TypeReference<GroupedQuery<FindSeries.Request>>() {
+        }, GrpcBinaryCodec.FIND_SERIES);
 }
@@ -41,7 +41,13 @@ private const val DEFAULT_MAX_FRAME_SIZE = 10_000_000
 data class GrpcRpcProtocolModule(
     @JsonProperty("host") val host: String?,
     @JsonProperty("port") val port: Int?,
-    @JsonProperty("maxFrameSize") val maxFrameSize: Int = DEFAULT_MAX_FRAME_SIZE
+    @JsonProperty("maxFrameSize") val maxFrameSize: Int = DEFAULT_MAX_FRAME_SIZE,
+    /**
+     * Advertise the binary streaming endpoints to other nodes. Older nodes fail to parse metadata
+     * with capabilities, so this should only be enabled once every node runs a version which
+     * supports them.
+     */
+    @JsonProperty("binaryCodec") val binaryCodec: Boolean = false
 ): RpcProtocolModule {
     val address: InetSocketAddress = InetSocketAddress(host ?: DEFAULT_HOST, port ?: DEFAULT_PORT)
 
@@ -84,6 +90,11 @@ data class GrpcRpcProtocolModule(
         @Named("maxFrameSize")
         fun maxFrameSize() = maxFrameSize
 
+        @Provides
+        @GrpcRpcScope
+        @Named("binaryCodec")
+        fun binaryCodec() = binaryCodec
+
         @Provides
         @GrpcRpcScope
         @Named("boss")
@@ -111,11 +122,13 @@ data class GrpcRpcProtocolModule(
 data class Builder(
     var host: String = DEFAULT_HOST,
     var port: Int = DEFAULT_PORT,
-    var maxFrameSize: Int = DEFAULT_MAX_FRAME_SIZE
+    var maxFrameSize: Int = DEFAULT_MAX_FRAME_SIZE,
+    var binaryCodec: Boolean = false
 ) {
     fun host(host: String) = apply { this.host = host }
     fun port(port: Int) = apply { this.port = port }
     fun maxFrameSize(maxFrameSize: Int) = apply { this.maxFrameSize = maxFrameSize }
+    fun binaryCodec(binaryCodec: Boolean) = apply { this.binaryCodec = binaryCodec }
 
-    fun build() = GrpcRpcProtocolModule(host, port, maxFrameSize)
+    fun build() = GrpcRpcProtocolModule(host, port, maxFrameSize, binaryCodec)
 }
\ No newline at end of file
@@ -21,6 +21,7 @@
 
 package com.spotify.heroic.rpc.grpc;
 
+import static io.grpc.stub.ServerCalls.asyncServerStreamingCall;
 import static io.grpc.stub.ServerCalls.asyncUnaryCall;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -46,12 +47,17 @@ import io.grpc.Status;
 import io.grpc.StatusException;
 import io.grpc.internal.ServerImpl;
 import io.grpc.netty.NettyServerBuilder;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.netty.channel.Channel;
 import io.netty.channel.nio.NioEventLoopGroup;
+import io.opencensus.trace.Tracer;
+import io.opencensus.trace.Tracing;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicReference;
@@ -63,6 +69,7 @@ import org.slf4j.LoggerFactory;
 public class GrpcRpcProtocolServer implements LifeCycles {
     public static final GrpcRpcEmptyBody EMPTY = new GrpcRpcEmptyBody();
     private static final Logger log = LoggerFactory.getLogger(GrpcRpcProtocolServer.class);
+    private static final Tracer tracer = Tracing.getTracer();
 
     private final AsyncFramework async;
     private final MetricManager metrics;
@@ -76,6 +83,7 @@ public class GrpcRpcProtocolServer implements LifeCycles {
     private final NioEventLoopGroup bossGroup;
     private final NioEventLoopGroup workerGroup;
     private final TracingConfig tracingConfig;
+    private final boolean binaryCodec;
     private final GrpcRpcContainer container;
 
     private final AtomicReference<Server> server = new AtomicReference<>();
@@ -93,7 +101,8 @@ public class GrpcRpcProtocolServer implements LifeCycles {
         @Named("maxFrameSize") int maxFrameSize,
         @Named("boss") NioEventLoopGroup bossGroup,
         @Named("worker") NioEventLoopGroup workerGroup,
-        @Named("tracingConfig") TracingConfig tracingConfig
+        @Named("tracingConfig") TracingConfig tracingConfig,
+        @Named("binaryCodec") boolean binaryCodec
     ) {
         this.async = async;
         this.metrics = metrics;
@@ -107,6 +116,7 @@ public class GrpcRpcProtocolServer implements LifeCycles {
         this.bossGroup = bossGroup;
         this.workerGroup = workerGroup;
         this.tracingConfig = tracingConfig;
+        this.binaryCodec = binaryCodec;
         this.container = setupContainer();
     }
 
@@ -114,6 +124,11 @@ public class GrpcRpcProtocolServer implements LifeCycles {
         final GrpcRpcContainer container = new GrpcRpcContainer();
 
         container.register(GrpcRpcProtocol.METADATA, empty -> {
+            if (binaryCodec) {
+                return async.resolved(
+                    metadataProvider.getMetadata().withCapability(GrpcRpcProtocol.BINARY_CODEC));
+            }
+
             return async.resolved(metadataProvider.getMetadata());
         });
 
@@ -122,6 +137,11 @@ public class GrpcRpcProtocolServer implements LifeCycles {
         container.register(GrpcRpcProtocol.METRICS_FULL_QUERY,
             g -> g.apply(metrics, MetricBackendGroup::query));
 
+        /* groups are streamed to the coordinator as soon as the local query produces them */
+        container.registerBinary(GrpcRpcProtocol.METRICS_FULL_QUERY_BINARY,
+            (g, groups) -> g.apply(metrics, (group, request) -> group.query(request,
+                tracer.getCurrentSpan(), groups)));
+
         container.register(GrpcRpcProtocol.METRICS_WRITE,
             g -> g.apply(metrics, MetricBackend::write));
 
@@ -134,6 +154,9 @@ public class GrpcRpcProtocolServer implements LifeCycles {
         container.register(GrpcRpcProtocol.METADATA_FIND_SERIES,
             g -> g.apply(metadata, MetadataBackend::findSeries));
 
+        container.registerBinary(GrpcRpcProtocol.METADATA_FIND_SERIES_BINARY,
+            g -> g.apply(metadata, MetadataBackend::findSeries));
+
         container.register(GrpcRpcProtocol.METADATA_COUNT_SERIES,
             g -> g.apply(metadata, MetadataBackend::countSeries));
 
@@ -222,9 +245,70 @@ public class GrpcRpcProtocolServer implements LifeCycles {
             builder.addMethod(spec.descriptor(), handler);
         }
 
+        for (final GrpcRpcContainer.BinaryEndpoint<?, ?, ?> endpoint :
+            container.getBinaryEndpoints()) {
+            final ServerCallHandler<byte[], byte[]> handler = binaryCallHandlerFor(
+                (GrpcRpcContainer.BinaryEndpoint<Object, Object, Object>) endpoint);
+            builder.addMethod(endpoint.spec().descriptor(), handler);
+        }
+
         return builder.build();
     }
 
+    private ServerCallHandler<byte[], byte[]> binaryCallHandlerFor(
+        final GrpcRpcContainer.BinaryEndpoint<Object, Object, Object> endpoint
+    ) {
+        final GrpcBinaryCodec.Encoder<Object> encoder =
+            endpoint.spec().format().encoder(mapper, maxFrameSize);
+        final GrpcBinaryCodec.PartEncoder<Object> partEncoder =
+            endpoint.spec().format().partEncoder(mapper, maxFrameSize);
+
+        return asyncServerStreamingCall((request, responseObserver) -> {
+            final UUID id = UUID.randomUUID();
+            final ServerCallStreamObserver<byte[]> observer =
+                (ServerCallStreamObserver<byte[]>) responseObserver;
+
+            /* handlers have to be installed before this method returns */
+            final FrameStreamer streamer = new FrameStreamer(id, observer);
+            observer.setOnReadyHandler(streamer::drain);
+
+            log.trace("{}: Received binary request: {}", id, request);
+            final AsyncFuture<Object> future;
+
+            try {
+                final Object obj = mapper.readValue(request, endpoint.spec().queryType());
+                future = endpoint.handle(obj, part -> streamer.add(partEncoder.encode(part)));
+            } catch (final Exception e) {
+                log.error("{}: Failed to handle request (sent {})", id, Status.INTERNAL, e);
+                observer.onError(new StatusException(Status.INTERNAL));
+                return;
+            }
+
+            observer.setOnCancelHandler(() -> {
+                streamer.cancel();
+                future.cancel();
+            });
+
+            future.onDone(new FutureDone<Object>() {
+                @Override
+                public void failed(final Throwable cause) throws Exception {
+                    log.error("{}: Request failed", id, cause);
+                    streamer.fail(cause);
+                }
+
+                @Override
+                public void resolved(final Object result) throws Exception {
+                    streamer.end(encoder.encode(result));
+                }
+
+                @Override
+                public void cancelled() throws Exception {
+                    streamer.fail(new RuntimeException("Request cancelled"));
+                }
+            });
+        });
+    }
+
     private ServerCallHandler<byte[], byte[]> serverCallHandlerFor(
         final GrpcEndpointHandle<Object, Object> spec
     ) {
@@ -265,6 +349,102 @@ public class GrpcRpcProtocolServer implements LifeCycles {
         });
     }
 
+    /**
+     * Sends the frames of a response while the transport is ready to accept them, and continues
+     * whenever it becomes ready again. Frames are only encoded as they are sent, so a slow
+     * client never causes the whole encoded response to be buffered.
+     * <p>
+     * Parts of the response are added as they become available, followed by the rest of the
+     * response once it is complete.
+     */
+    static final class FrameStreamer {
+        private final UUID id;
+        private final ServerCallStreamObserver<byte[]> observer;
+        private final Deque<GrpcBinaryCodec.FrameSource> sources = new ArrayDeque<>();
+
+        /* if the last source has been added */
+        private boolean ended;
+        private boolean done;
+
+        FrameStreamer(final UUID id, final ServerCallStreamObserver<byte[]> observer) {
+            this.id = id;
+            this.observer = observer;
+        }
+
+        /**
+         * Add the frames of a part of the response.
+         */
+        synchronized void add(final GrpcBinaryCodec.FrameSource frames) {
+            if (done) {
+                return;
+            }
+
+            sources.add(frames);
+            drain();
+        }
+
+        /**
+         * Add the frames of the rest of the response, which completes the call once sent.
+         */
+        synchronized void end(final GrpcBinaryCodec.FrameSource frames) {
+            if (done) {
+                return;
+            }
+
+            sources.add(frames);
+            ended = true;
+            drain();
+        }
+
+        synchronized void drain() {
+            if (done) {
+                return;
+            }
+
+            try {
+                while (observer.isReady()) {
+                    final GrpcBinaryCodec.FrameSource source = sources.peek();
+
+                    if (source == null) {
+                        if (ended) {
+                            done = true;
+                            observer.onCompleted();
+                        }
+
+                        return;
+                    }
+
+                    final byte[] frame = source.next();
+
+                    if (frame == null) {
+                        sources.poll();
+                        continue;
+                    }
+
+                    observer.onNext(frame);
+                }
+            } catch (final Exception e) {
+                log.error("{}: Failed to encode response", id, e);
+                fail(new StatusException(Status.INTERNAL));
+            }
+        }
+
+        synchronized void fail(final Throwable cause) {
+            if (done) {
+                return;
+            }
+
+            done = true;
+            sources.clear();
+            observer.onError(cause);
+        }
+
+        synchronized void cancel() {
+            done = true;
+            sources.clear();
+        }
+    }
+
     private AsyncFuture<Void> stop() {
         final List<AsyncFuture<Void>> callbacks = new ArrayList<>();
 
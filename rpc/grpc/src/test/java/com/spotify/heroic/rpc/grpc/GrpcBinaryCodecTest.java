@@ -0,0 +1,268 @@
+package com.spotify.heroic.rpc.grpc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.spotify.heroic.common.Series;
+import com.spotify.heroic.common.Statistics;
+import com.spotify.heroic.metadata.FindSeries;
+import com.spotify.heroic.metric.FullQuery;
+import com.spotify.heroic.metric.MetricCollection;
+import com.spotify.heroic.metric.Point;
+import com.spotify.heroic.metric.QueryError;
+import com.spotify.heroic.metric.QueryTrace;
+import com.spotify.heroic.metric.ResultGroup;
+import com.spotify.heroic.metric.ResultLimits;
+import com.spotify.heroic.metric.Spread;
+import com.spotify.heroic.test.FakeModuleLoader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.junit.Test;
+
+public class GrpcBinaryCodecTest {
+    private final ObjectMapper mapper = FakeModuleLoader.builder().build().json();
+
+    private final Series a = Series.of("a", ImmutableMap.of("host", "foo"),
+        ImmutableMap.of("resource", "bar"));
+    private final Series b = Series.of("b", ImmutableMap.of());
+
+    private <R> List<byte[]> encode(final GrpcBinaryCodec.Encoder<R> encoder, final R response)
+        throws IOException {
+        final GrpcBinaryCodec.FrameSource source = encoder.encode(response);
+        final List<byte[]> frames = new ArrayList<>();
+
+        byte[] frame;
+
+        while ((frame = source.next()) != null) {
+            frames.add(frame);
+        }
+
+        return frames;
+    }
+
+    private void assertFrameSize(final List<byte[]> frames, final int maxFrameSize) {
+        for (final byte[] frame : frames) {
+            assertTrue(frame.length + " > " + maxFrameSize, frame.length <= maxFrameSize);
+        }
+    }
+
+    private <R> R decode(final GrpcBinaryCodec.Decoder<R> decoder, final List<byte[]> frames)
+        throws IOException {
+        for (final byte[] frame : frames) {
+            decoder.accept(frame);
+        }
+
+        return decoder.end();
+    }
+
+    @Test
+    public void testFullQuery() throws Exception {
+        /* missing tags are represented as null values in group keys */
+        final Map<String, String> key = new HashMap<>();
+        key.put("host", null);
+        key.put("role", "database");
+
+        final List<Point> points = ImmutableList.of(new Point(1000, 1D), new Point(2000, 2D),
+            new Point(1500, Double.NaN), new Point(-10, -1D), new Point(Long.MAX_VALUE, 5D));
+
+        final List<Spread> spreads = ImmutableList.of(new Spread(1000, 2, 3D, 5D, 1D, 2D));
+
+        final FullQuery query = FullQuery.create(QueryTrace.of(QueryTrace.identifier("test"), 0L),
+            ImmutableList.of(new QueryError("boom")), ImmutableList.of(
+                new ResultGroup(key, ImmutableSet.of(a, b), MetricCollection.points(points), 10L),
+                new ResultGroup(ImmutableMap.of(), ImmutableSet.of(a),
+                    MetricCollection.spreads(spreads), 0L)), Statistics.empty(),
+            ResultLimits.of(), Optional.empty());
+
+        /* small frames, so that the groups and the trailer are split across frames */
+        final List<byte[]> frames =
+            encode(GrpcBinaryCodec.FULL_QUERY.encoder(mapper, 128), query);
+
+        assertTrue(frames.size() > 3);
+        assertFrameSize(frames, 128);
+
+        final FullQuery result = decode(GrpcBinaryCodec.FULL_QUERY.decoder(mapper), frames);
+
+        assertEquals(query.errors(), result.errors());
+        assertEquals(query.trace(), result.trace());
+        assertEquals(query.limits(), result.limits());
+        assertEquals(2, result.groups().size());
+
+        final ResultGroup first = result.groups().get(0);
+        assertEquals(key, first.getKey());
+        assertEquals(ImmutableSet.of(a, b), first.getSeries());
+        assertEquals(10L, first.getCadence());
+        assertTrue(first.getGroup() instanceof MetricCollection.ColumnarPointCollection);
+        assertEquals(points, first.getGroup().data());
+
+        assertEquals(query.groups().get(1), result.groups().get(1));
+    }
+
+    @Test
+    public void testEmptyGroup() throws Exception {
+        final FullQuery query = FullQuery.create(QueryTrace.PASSIVE, ImmutableList.of(),
+            ImmutableList.of(new ResultGroup(ImmutableMap.of(), ImmutableSet.of(),
+                MetricCollection.points(ImmutableList.of()), 0L)), Statistics.empty(),
+            ResultLimits.of(), Optional.empty());
+
+        final FullQuery result = decode(GrpcBinaryCodec.FULL_QUERY.decoder(mapper),
+            encode(GrpcBinaryCodec.FULL_QUERY.encoder(mapper, 1024), query));
+
+        assertEquals(1, result.groups().size());
+        assertTrue(result.groups().get(0).getGroup().isEmpty());
+    }
+
+    @Test
+    public void testFindSeries() throws Exception {
+        final FindSeries series =
+            new FindSeries(ImmutableList.of(new QueryError("boom")), ImmutableSet.of(a, b), true);
+
+        final List<byte[]> frames = encode(GrpcBinaryCodec.FIND_SERIES.encoder(mapper, 64), series);
+
+        assertTrue(frames.size() > 2);
+        assertFrameSize(frames, 64);
+        assertEquals(series, decode(GrpcBinaryCodec.FIND_SERIES.decoder(mapper), frames));
+    }
+
+    @Test(expected = IOException.class)
+    public void testMissingTrailer() throws Exception {
+        final FindSeries series = new FindSeries(ImmutableSet.of(a), false);
+        final List<byte[]> frames = encode(GrpcBinaryCodec.FIND_SERIES.encoder(mapper, 1024), series);
+
+        decode(GrpcBinaryCodec.FIND_SERIES.decoder(mapper), frames.subList(0, 1));
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncatedFrame() throws Exception {
+        final FindSeries series = new FindSeries(ImmutableSet.of(a), false);
+        final byte[] frame = encode(GrpcBinaryCodec.FIND_SERIES.encoder(mapper, 1024), series).get(0);
+
+        final byte[] truncated = new byte[frame.length - 1];
+        System.arraycopy(frame, 0, truncated, 0, truncated.length);
+
+        GrpcBinaryCodec.FIND_SERIES.decoder(mapper).accept(truncated);
+    }
+
+    @Test
+    public void testLargeGroup() throws Exception {
+        final List<Series> series = new ArrayList<>();
+        final List<Point> points = new ArrayList<>();
+        final List<Spread> spreads = new ArrayList<>();
+
+        for (int i = 0; i < 100; i++) {
+            series.add(Series.of("series-" + i, ImmutableMap.of("host", "host-" + i)));
+            points.add(new Point(i * 1000L, i));
+            spreads.add(new Spread(i * 1000L, i, i, i, i, i));
+        }
+
+        final FullQuery query = FullQuery.create(QueryTrace.PASSIVE, ImmutableList.of(),
+            ImmutableList.of(new ResultGroup(ImmutableMap.of("role", "database"),
+                    ImmutableSet.copyOf(series), MetricCollection.points(points), 0L),
+                new ResultGroup(ImmutableMap.of(), ImmutableSet.copyOf(series),
+                    MetricCollection.spreads(spreads), 0L)), Statistics.empty(),
+            ResultLimits.of(), Optional.empty());
+
+        final List<byte[]> frames = encode(GrpcBinaryCodec.FULL_QUERY.encoder(mapper, 256), query);
+        assertFrameSize(frames, 256);
+
+        final FullQuery result = decode(GrpcBinaryCodec.FULL_QUERY.decoder(mapper), frames);
+
+        assertEquals(2, result.groups().size());
+        assertEquals(ImmutableSet.copyOf(series), result.groups().get(0).getSeries());
+        assertEquals(points, result.groups().get(0).getGroup().data());
+        assertEquals(query.groups().get(1), result.groups().get(1));
+    }
+
+    @Test
+    public void testPartsAreStreamed() throws Exception {
+        final FullQuery query = FullQuery.create(QueryTrace.PASSIVE, ImmutableList.of(),
+            ImmutableList.of(new ResultGroup(ImmutableMap.of("host", "a"), ImmutableSet.of(a),
+                    MetricCollection.ColumnarPointCollection.builder().add(1, 1D).build(), 0L),
+                new ResultGroup(ImmutableMap.of("host", "b"), ImmutableSet.of(b),
+                    MetricCollection.ColumnarPointCollection.builder().add(2, 2D).build(), 0L)),
+            Statistics.empty(), ResultLimits.of(), Optional.empty());
+
+        final GrpcBinaryCodec.FrameSource source =
+            GrpcBinaryCodec.FULL_QUERY.encoder(mapper, 1024).encode(query);
+
+        final List<ResultGroup> groups = new ArrayList<>();
+        final GrpcBinaryCodec.Decoder<FullQuery> decoder =
+            GrpcBinaryCodec.FULL_QUERY.decoder(mapper, groups::add);
+
+        decoder.accept(source.next());
+        assertEquals(0, groups.size());
+
+        /* the first group is complete once the next one starts */
+        decoder.accept(source.next());
+        assertEquals(ImmutableList.of(query.groups().get(0)), groups);
+
+        byte[] frame;
+
+        while ((frame = source.next()) != null) {
+            decoder.accept(frame);
+        }
+
+        assertEquals(query.groups(), groups);
+        assertTrue(decoder.end().groups().isEmpty());
+    }
+
+    @Test
+    public void testEncodedParts() throws Exception {
+        final List<ResultGroup> parts = ImmutableList.of(
+            new ResultGroup(ImmutableMap.of("host", "a"), ImmutableSet.of(a),
+                MetricCollection.ColumnarPointCollection.builder().add(1, 1D).build(), 0L),
+            new ResultGroup(ImmutableMap.of("host", "b"), ImmutableSet.of(b),
+                MetricCollection.ColumnarPointCollection.builder().add(2, 2D).build(), 0L));
+
+        final FullQuery rest = FullQuery.create(QueryTrace.PASSIVE,
+            ImmutableList.of(new QueryError("boom")), ImmutableList.of(), Statistics.empty(),
+            ResultLimits.of(), Optional.empty());
+
+        final GrpcBinaryCodec.PartEncoder<ResultGroup> partEncoder =
+            GrpcBinaryCodec.FULL_QUERY.partEncoder(mapper, 128);
+
+        /* the frames of every part, followed by the rest of the response */
+        final List<byte[]> frames = new ArrayList<>();
+
+        for (final ResultGroup part : parts) {
+            final GrpcBinaryCodec.FrameSource source = partEncoder.encode(part);
+            byte[] frame;
+
+            while ((frame = source.next()) != null) {
+                frames.add(frame);
+            }
+        }
+
+        frames.addAll(encode(GrpcBinaryCodec.FULL_QUERY.encoder(mapper, 128), rest));
+        assertFrameSize(frames, 128);
+
+        final FullQuery result = decode(GrpcBinaryCodec.FULL_QUERY.decoder(mapper), frames);
+
+        assertEquals(parts, result.groups());
+        assertEquals(rest.errors(), result.errors());
+    }
+
+    @Test(expected = IOException.class)
+    public void testOversizedPointCount() throws Exception {
+        final GrpcBinaryCodec.Decoder<FullQuery> decoder =
+            GrpcBinaryCodec.FULL_QUERY.decoder(mapper);
+
+        decoder.accept(new byte[]{
+            GrpcBinaryCodec.GROUP, 0, 0, GrpcBinaryCodec.COLUMNAR_POINTS, 0, (byte) 0xff,
+            (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x07
+        });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFrameSizeTooSmall() {
+        GrpcBinaryCodec.FULL_QUERY.encoder(mapper, GrpcBinaryCodec.MIN_FRAME_SIZE - 1);
+    }
+}
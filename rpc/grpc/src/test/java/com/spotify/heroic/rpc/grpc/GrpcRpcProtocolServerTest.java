@@ -0,0 +1,100 @@
+package com.spotify.heroic.rpc.grpc;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import io.grpc.stub.ServerCallStreamObserver;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.UUID;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GrpcRpcProtocolServerTest {
+    private final byte[] frame1 = new byte[]{1};
+    private final byte[] frame2 = new byte[]{2};
+    private final byte[] frame3 = new byte[]{3};
+
+    private ServerCallStreamObserver<byte[]> observer;
+    private Deque<byte[]> frames;
+    private GrpcRpcProtocolServer.FrameStreamer streamer;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        observer = mock(ServerCallStreamObserver.class);
+        frames = new ArrayDeque<>();
+        frames.add(frame1);
+        frames.add(frame2);
+        frames.add(frame3);
+        streamer = new GrpcRpcProtocolServer.FrameStreamer(UUID.randomUUID(), observer);
+    }
+
+    @Test
+    public void testStopsWhenNotReady() {
+        doReturn(true, true, false).when(observer).isReady();
+
+        streamer.end(frames::poll);
+
+        verify(observer).onNext(frame1);
+        verify(observer).onNext(frame2);
+        verify(observer, never()).onNext(frame3);
+        verify(observer, never()).onCompleted();
+
+        /* transport signals that it is ready again */
+        doReturn(true).when(observer).isReady();
+        streamer.drain();
+
+        verify(observer).onNext(frame3);
+        verify(observer).onCompleted();
+    }
+
+    @Test
+    public void testReadyBeforeStart() {
+        doReturn(true).when(observer).isReady();
+
+        /* nothing to send until the response is available */
+        streamer.drain();
+        verify(observer, never()).onNext(frame1);
+
+        streamer.end(frames::poll);
+        verify(observer, times(3)).onNext(any());
+        verify(observer).onCompleted();
+    }
+
+    @Test
+    public void testStreamsPartsBeforeEnd() {
+        doReturn(true).when(observer).isReady();
+
+        final Deque<byte[]> part = new ArrayDeque<>();
+        part.add(frame1);
+        streamer.add(part::poll);
+
+        /* the part is sent as soon as it is added, but the call is not completed */
+        verify(observer).onNext(frame1);
+        verify(observer, never()).onCompleted();
+
+        frames.poll();
+        streamer.end(frames::poll);
+
+        verify(observer).onNext(frame2);
+        verify(observer).onNext(frame3);
+        verify(observer).onCompleted();
+    }
+
+    @Test
+    public void testCancelled() {
+        doReturn(true).when(observer).isReady();
+
+        streamer.cancel();
+        streamer.end(frames::poll);
+        streamer.fail(new RuntimeException("cancelled"));
+
+        verify(observer, never()).onNext(frame1);
+        verify(observer, never()).onError(any());
+    }
+}
@@ -22,6 +22,7 @@
 package com.spotify.heroic.statistics.semantic;
 
 import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
 import com.spotify.heroic.async.AsyncObservable;
 import com.spotify.heroic.common.Groups;
 import com.spotify.heroic.common.Statistics;
@@ -58,6 +59,10 @@ public class SemanticMetadataBackendReporter implements MetadataBackendReporter
     private final Counter writesDroppedByCacheHit;
     private final Counter writesDroppedByDuplicate;
     private final Counter failedShards;
+    private final Counter seriesCacheHits;
+    private final Counter seriesCacheMisses;
+    private final Counter seriesCacheUpdates;
+    private final Histogram seriesCacheAge;
 
 
     public SemanticMetadataBackendReporter(SemanticMetricRegistry registry) {
@@ -90,6 +95,15 @@ public class SemanticMetadataBackendReporter implements MetadataBackendReporter
         // only relevant to es backend.
         failedShards = registry.counter(
             base.tagged("what", "failed-es-shards", "unit", Units.COUNT));
+
+        seriesCacheHits =
+            registry.counter(base.tagged("what", "series-cache-hits", "unit", Units.COUNT));
+        seriesCacheMisses =
+            registry.counter(base.tagged("what", "series-cache-misses", "unit", Units.COUNT));
+        seriesCacheUpdates =
+            registry.counter(base.tagged("what", "series-cache-updates", "unit", Units.COUNT));
+        seriesCacheAge = registry.histogram(
+            base.tagged("what", "series-cache-age", "unit", Units.MILLISECOND));
     }
 
     @Override
@@ -120,6 +134,22 @@ public class SemanticMetadataBackendReporter implements MetadataBackendReporter
         writesDroppedByDuplicate.inc();
     }
 
+    @Override
+    public void reportSeriesCacheHit(final long ageMillis) {
+        seriesCacheHits.inc();
+        seriesCacheAge.update(ageMillis);
+    }
+
+    @Override
+    public void reportSeriesCacheMiss() {
+        seriesCacheMisses.inc();
+    }
+
+    @Override
+    public void reportSeriesCacheUpdate() {
+        seriesCacheUpdates.inc();
+    }
+
     public String toString() {
         return "SemanticMetadataBackendReporter()";
     }
@@ -23,10 +23,13 @@ package com.spotify.heroic.statistics.semantic;
 
 import com.codahale.metrics.Counter;
 import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
 import com.google.common.base.Stopwatch;
 import com.spotify.heroic.QueryOptions;
 import com.spotify.heroic.async.AsyncObservable;
+import com.spotify.heroic.common.DateRange;
 import com.spotify.heroic.common.Groups;
+import com.spotify.heroic.common.Series;
 import com.spotify.heroic.common.Statistics;
 import com.spotify.heroic.metric.BackendEntry;
 import com.spotify.heroic.metric.BackendKey;
@@ -50,6 +53,7 @@ import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.LongAccumulator;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
 public class SemanticMetricBackendReporter implements MetricBackendReporter {
@@ -57,6 +61,7 @@ public class SemanticMetricBackendReporter implements MetricBackendReporter {
 
     private final FutureReporter write;
     private final FutureReporter fetch;
+    private final FutureReporter fetchMany;
     private final FutureReporter deleteKey;
     private final FutureReporter countKey;
     private final FutureReporter fetchRow;
@@ -83,6 +88,13 @@ public class SemanticMetricBackendReporter implements MetricBackendReporter {
     private final Histogram queryRowDensity;
     // Counter of dropped writes due to row key size
     private final Counter writesDroppedBySize;
+    // Rate of data decoded by backends while reading
+    private final Meter decodedBytes;
+    private final Meter decodedPoints;
+    // Share of the memory budget for queries which is reserved
+    private final SemanticRatioGauge memoryBudgetUsed;
+    private final Counter queriesQueued;
+    private final Counter queriesShed;
 
     public SemanticMetricBackendReporter(SemanticMetricRegistry registry) {
         final MetricId base = MetricId.build().tagged("component", COMPONENT);
@@ -91,6 +103,8 @@ public class SemanticMetricBackendReporter implements MetricBackendReporter {
             new SemanticFutureReporter(registry, base.tagged("what", "write", "unit", Units.WRITE));
         this.fetch =
             new SemanticFutureReporter(registry, base.tagged("what", "fetch", "unit", Units.QUERY));
+        this.fetchMany = new SemanticFutureReporter(registry,
+            base.tagged("what", "fetch-many", "unit", Units.QUERY));
         this.deleteKey = new SemanticFutureReporter(registry,
             base.tagged("what", "delete-key", "unit", Units.DELETE));
         this.countKey = new SemanticFutureReporter(registry,
@@ -123,6 +137,19 @@ public class SemanticMetricBackendReporter implements MetricBackendReporter {
 
         writesDroppedBySize = registry.counter(
             base.tagged("what", "writes-dropped-by-size", "unit", Units.COUNT));
+
+        decodedBytes =
+            registry.meter(base.tagged("what", "decoded-bytes", "unit", Units.BYTE));
+        decodedPoints =
+            registry.meter(base.tagged("what", "decoded-points", "unit", Units.SAMPLE));
+
+        memoryBudgetUsed = new SemanticRatioGauge();
+        registry.register(base.tagged("what", "memory-budget-used-ratio", "unit", Units.RATIO),
+            memoryBudgetUsed);
+        queriesQueued = registry.counter(
+            base.tagged("what", "memory-budget-queued-queries", "unit", Units.QUERY));
+        queriesShed = registry.counter(
+            base.tagged("what", "memory-budget-shed-queries", "unit", Units.QUERY));
     }
 
     @Override
@@ -196,6 +223,37 @@ public class SemanticMetricBackendReporter implements MetricBackendReporter {
         writesDroppedBySize.inc();
     }
 
+    @Override
+    public void reportDecoded(final long bytes, final long points) {
+        decodedBytes.mark(bytes);
+        decodedPoints.mark(points);
+    }
+
+    @Override
+    public void reportMemoryBudget(final long bytes) {
+        memoryBudgetUsed.setDenominator(bytes);
+    }
+
+    @Override
+    public void reportMemoryReserved(final long bytes) {
+        memoryBudgetUsed.setNumerator(bytes);
+    }
+
+    @Override
+    public void reportQueryQueued() {
+        queriesQueued.inc();
+    }
+
+    @Override
+    public void reportQueryDequeued() {
+        queriesQueued.dec();
+    }
+
+    @Override
+    public void reportQueryShed() {
+        queriesShed.inc();
+    }
+
     @Override
     public FutureReporter.Context reportFindSeries() {
         return findSeries.setup();
@@ -250,6 +308,17 @@ public class SemanticMetricBackendReporter implements MetricBackendReporter {
                 request, watcher, metricsConsumer, parentSpan).onDone(fetch.setup());
         }
 
+        @Override
+        public AsyncFuture<FetchData.Result> fetchMany(
+            final FetchData.BatchRequest request,
+            final FetchQuotaWatcher watcher,
+            final BiConsumer<Series, MetricReadResult> metricsConsumer,
+            final Span parentSpan
+        ) {
+            return delegate.fetchMany(
+                request, watcher, metricsConsumer, parentSpan).onDone(fetchMany.setup());
+        }
+
         @Override
         public Iterable<BackendEntry> listEntries() {
             return delegate.listEntries();
@@ -291,6 +360,11 @@ public class SemanticMetricBackendReporter implements MetricBackendReporter {
             return delegate.countKey(key, options).onDone(countKey.setup());
         }
 
+        @Override
+        public AsyncFuture<Long> compact(final DateRange range) {
+            return delegate.compact(range);
+        }
+
         @Override
         public AsyncFuture<MetricCollection> fetchRow(final BackendKey key) {
             return delegate.fetchRow(key).onDone(fetchRow.setup());
@@ -27,6 +27,9 @@ import com.spotify.heroic.statistics.FutureReporter;
 import com.spotify.heroic.statistics.QueryReporter;
 import com.spotify.metrics.core.MetricId;
 import com.spotify.metrics.core.SemanticMetricRegistry;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class SemanticQueryReporter implements QueryReporter {
     private static final String COMPONENT = "query";
@@ -37,9 +40,19 @@ public class SemanticQueryReporter implements QueryReporter {
     private final Counter rpcError;
     private final Counter rpcCancellation;
 
+    private final SemanticMetricRegistry registry;
+    private final MetricId hedgedRequest;
+    private final MetricId hedgeWin;
+    private final ConcurrentMap<Map<String, String>, Counter> hedgedRequests =
+        new ConcurrentHashMap<>();
+    private final ConcurrentMap<Map<String, String>, Counter> hedgeWins =
+        new ConcurrentHashMap<>();
+
     public SemanticQueryReporter(final SemanticMetricRegistry registry) {
         final MetricId base = MetricId.build().tagged("component", COMPONENT);
 
+        this.registry = registry;
+
         query =
             new SemanticFutureReporter(registry, base.tagged("what", "query", "unit", Units.QUERY));
         smallQueryLatency = registry.histogram(
@@ -50,6 +63,9 @@ public class SemanticQueryReporter implements QueryReporter {
         rpcError = registry.counter(base.tagged("what", "cluster-rpc-error", "unit", Units.COUNT));
         rpcCancellation =
             registry.counter(base.tagged("what", "cluster-rpc-cancellation", "unit", Units.COUNT));
+
+        hedgedRequest = base.tagged("what", "cluster-hedged-request", "unit", Units.COUNT);
+        hedgeWin = base.tagged("what", "cluster-hedge-win", "unit", Units.COUNT);
     }
 
     @Override
@@ -82,6 +98,21 @@ public class SemanticQueryReporter implements QueryReporter {
         rpcCancellation.inc();
     }
 
+    @Override
+    public void reportClusterHedgedRequest(final Map<String, String> shard) {
+        hedgedRequests
+            .computeIfAbsent(shard,
+                s -> registry.counter(hedgedRequest.tagged("shard", s.toString())))
+            .inc();
+    }
+
+    @Override
+    public void reportClusterHedgeWin(final Map<String, String> shard) {
+        hedgeWins
+            .computeIfAbsent(shard, s -> registry.counter(hedgeWin.tagged("shard", s.toString())))
+            .inc();
+    }
+
     public String toString() {
         return "SemanticQueryReporter()";
     }
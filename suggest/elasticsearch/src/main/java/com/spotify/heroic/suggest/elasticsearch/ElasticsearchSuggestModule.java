@@ -43,6 +43,7 @@ import com.spotify.heroic.common.Groups;
 import com.spotify.heroic.common.ModuleId;
 import com.spotify.heroic.dagger.PrimaryComponent;
 import com.spotify.heroic.elasticsearch.BackendType;
+import com.spotify.heroic.elasticsearch.BloomRateLimitedCache;
 import com.spotify.heroic.elasticsearch.Connection;
 import com.spotify.heroic.elasticsearch.ConnectionModule;
 import com.spotify.heroic.elasticsearch.DefaultRateLimitedCache;
@@ -91,6 +92,7 @@ public final class ElasticsearchSuggestModule implements SuggestModule, DynamicM
     private final long writeCacheDurationMinutes;
     private final Integer writeCacheConcurrency;
     private final Long writeCacheMaxSize;
+    private final Optional<Double> writeCacheFalsePositiveRate;
     private final String distributedCacheSrvRecord;
     private final String templateName;
     private final boolean configure;
@@ -120,6 +122,7 @@ public final class ElasticsearchSuggestModule implements SuggestModule, DynamicM
         @JsonProperty("writeCacheDurationMinutes") Optional<Long> writeCacheDurationMinutes,
         @JsonProperty("writeCacheConcurrency") Optional<Integer> writeCacheConcurrency,
         @JsonProperty("writeCacheMaxSize") Optional<Long> writeCacheMaxSize,
+        @JsonProperty("writeCacheFalsePositiveRate") Optional<Double> writeCacheFalsePositiveRate,
         @JsonProperty("distributedCacheSrvRecord") Optional<String> distributedCacheSrvRecord,
         @JsonProperty("templateName") Optional<String> templateName,
         @JsonProperty("backendType") Optional<String> backendType,
@@ -137,6 +140,7 @@ public final class ElasticsearchSuggestModule implements SuggestModule, DynamicM
         this.writeCacheConcurrency = writeCacheConcurrency.orElse(DEFAULT_WRITE_CACHE_CONCURRENCY);
         this.writeCacheMaxSize = writeCacheMaxSize.orElse(DEFAULT_WRITE_CACHE_MAX_SIZE);
 
+        this.writeCacheFalsePositiveRate = writeCacheFalsePositiveRate;
         this.distributedCacheSrvRecord = distributedCacheSrvRecord.orElse("");
 
         this.templateName = templateName.orElse(DEFAULT_TEMPLATE_NAME);
@@ -210,6 +214,20 @@ public final class ElasticsearchSuggestModule implements SuggestModule, DynamicM
         @Provides
         @ElasticsearchScope
         public RateLimitedCache<Pair<String, HashCode>> writeCache(final HeroicReporter reporter) {
+            if (writeCacheFalsePositiveRate.isPresent()) {
+                final Optional<RateLimiter> rateLimiter = writesPerSecond <= 0d ? Optional.empty()
+                    : Optional.of(RateLimiter.create(writesPerSecond, rateLimitSlowStartSeconds,
+                        SECONDS));
+
+                final BloomRateLimitedCache bloom = new BloomRateLimitedCache(writeCacheMaxSize,
+                    writeCacheFalsePositiveRate.get(), MINUTES.toMillis(writeCacheDurationMinutes),
+                    rateLimiter);
+
+                reporter.registerCacheSize("elasticsearch-suggest-write-through",
+                    () -> (long) bloom.size());
+                return bloom;
+            }
+
             final Cache<Pair<String, HashCode>, Boolean> cache = CacheBuilder
                 .newBuilder()
                 .concurrencyLevel(writeCacheConcurrency)
@@ -271,6 +289,7 @@ public final class ElasticsearchSuggestModule implements SuggestModule, DynamicM
         private Optional<Long> writeCacheDurationMinutes = empty();
         private Optional<Integer> writeCacheConcurrency = empty();
         private Optional<Long> writeCacheMaxSize = empty();
+        private Optional<Double> writeCacheFalsePositiveRate = empty();
         private Optional<String> distributedCacheSrvRecord = empty();
         private Optional<String> templateName = empty();
         private Optional<String> backendType = empty();
@@ -322,6 +341,11 @@ public final class ElasticsearchSuggestModule implements SuggestModule, DynamicM
             return this;
         }
 
+        public Builder writeCacheFalsePositiveRate(final double writeCacheFalsePositiveRate) {
+            this.writeCacheFalsePositiveRate = of(writeCacheFalsePositiveRate);
+            return this;
+        }
+
         public Builder distributedCacheSrvRecord(final String distributedCacheSrvRecord) {
             checkNotNull(distributedCacheSrvRecord, "distributedCacheSrvRecord");
             this.distributedCacheSrvRecord = of(distributedCacheSrvRecord);
@@ -355,6 +379,7 @@ public final class ElasticsearchSuggestModule implements SuggestModule, DynamicM
               writeCacheDurationMinutes,
               writeCacheConcurrency,
               writeCacheMaxSize,
+              writeCacheFalsePositiveRate,
               distributedCacheSrvRecord,
               templateName,
               backendType,
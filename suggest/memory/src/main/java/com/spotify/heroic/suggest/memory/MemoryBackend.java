@@ -28,7 +28,11 @@ import com.spotify.heroic.common.Grouped;
 import com.spotify.heroic.common.Groups;
 import com.spotify.heroic.common.OptionalLimit;
 import com.spotify.heroic.common.Series;
+import com.spotify.heroic.common.Statistics;
+import com.spotify.heroic.filter.AndFilter;
 import com.spotify.heroic.filter.Filter;
+import com.spotify.heroic.filter.MatchKeyFilter;
+import com.spotify.heroic.filter.TrueFilter;
 import com.spotify.heroic.suggest.KeySuggest;
 import com.spotify.heroic.suggest.SuggestBackend;
 import com.spotify.heroic.suggest.TagKeyCount;
@@ -38,47 +42,70 @@ import com.spotify.heroic.suggest.TagValuesSuggest;
 import com.spotify.heroic.suggest.WriteSuggest;
 import eu.toolchain.async.AsyncFramework;
 import eu.toolchain.async.AsyncFuture;
-import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
-import java.util.SortedMap;
 import java.util.SortedSet;
 import java.util.TreeMap;
 import java.util.TreeSet;
-import java.util.concurrent.locks.Lock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 import javax.inject.Inject;
-
+import javax.inject.Named;
+
+/**
+ * In-memory suggest backend.
+ * <p>
+ * Series are split into shards by the hash of their key, each guarded by its own lock, so that
+ * writes only block the reads of the shard they write to. Shards index their series by key,
+ * which lets filters on a key visit only a single shard.
+ * <p>
+ * The tokens of keys, tag keys and tag values are kept in sorted concurrent maps where prefixes
+ * are looked up as ranges, and the distinct values of every tag key are kept in a concurrent
+ * sorted set with a counter next to it. Requests without a filter are answered from these alone.
+ */
 @MemoryScope
 public class MemoryBackend implements SuggestBackend, Grouped {
     private static final float SCORE = 1.0f;
 
-    private final SortedMap<String, Set<String>> keys = new TreeMap<>();
-    private final SortedMap<String, Set<TagId>> tagKeys = new TreeMap<>();
-    private final SortedMap<String, Set<TagId>> tagValues = new TreeMap<>();
+    private final ConcurrentNavigableMap<String, Set<String>> keyTokens =
+        new ConcurrentSkipListMap<>();
+    private final ConcurrentNavigableMap<String, Set<TagId>> tagKeyTokens =
+        new ConcurrentSkipListMap<>();
+    private final ConcurrentNavigableMap<String, Set<TagId>> tagValueTokens =
+        new ConcurrentSkipListMap<>();
 
-    private final HashMap<String, KeyDocument> keyIndex = new HashMap<>();
-    private final HashMap<TagId, TagDocument> tagIndex = new HashMap<>();
-    private final SortedSet<Series> series = new TreeSet<>();
+    private final ConcurrentMap<String, TagValues> tagValues = new ConcurrentHashMap<>();
+    private final Set<TagId> tagIds = ConcurrentHashMap.newKeySet();
 
-    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Shard[] shards;
 
     private final Groups groups;
     private final AsyncFramework async;
 
     @Inject
-    public MemoryBackend(final Groups groups, final AsyncFramework async) {
+    public MemoryBackend(
+        final Groups groups, final AsyncFramework async, @Named("shards") final int shards
+    ) {
         this.groups = groups;
         this.async = async;
+        this.shards = new Shard[shards];
+
+        for (int i = 0; i < shards; i++) {
+            this.shards[i] = new Shard();
+        }
     }
 
     @Override
@@ -88,32 +115,29 @@ public class MemoryBackend implements SuggestBackend, Grouped {
 
     @Override
     public AsyncFuture<TagValuesSuggest> tagValuesSuggest(TagValuesSuggest.Request request) {
-        final Map<String, Set<String>> counts = new HashMap<>();
-
         final OptionalLimit groupLimit = request.getGroupLimit();
+        final Map<String, SortedSet<String>> values = new TreeMap<>();
 
-        try (final Stream<Series> series = lookupSeries(request.getFilter())) {
-            series.forEach(s -> {
-                for (final Map.Entry<String, String> e : s.getTags().entrySet()) {
-                    Set<String> c = counts.get(e.getKey());
-
-                    if (c == null) {
-                        c = new HashSet<>();
-                        counts.put(e.getKey(), c);
-                    }
+        final Filter filter = request.getFilter().optimize();
 
-                    if (groupLimit.isGreaterOrEqual(c.size())) {
-                        continue;
-                    }
+        if (filter instanceof TrueFilter) {
+            for (final Map.Entry<String, TagValues> e : tagValues.entrySet()) {
+                values.put(e.getKey(), ImmutableSortedSet.copyOf(
+                    groupLimit.limitStream(e.getValue().values.stream()).iterator()));
+            }
+        } else {
+            collectTagValues(filter, (key, value) -> {
+                final SortedSet<String> c = values.computeIfAbsent(key, k -> new TreeSet<>());
 
-                    c.add(e.getValue());
+                if (!groupLimit.isGreaterOrEqual(c.size())) {
+                    c.add(value);
                 }
             });
         }
 
         final List<TagValuesSuggest.Suggestion> suggestions = ImmutableList.copyOf(request
             .getLimit()
-            .limitStream(counts.entrySet().stream())
+            .limitStream(values.entrySet().stream())
             .map(e -> new TagValuesSuggest.Suggestion(e.getKey(),
                 ImmutableSortedSet.copyOf(e.getValue()), false))
             .iterator());
@@ -123,28 +147,27 @@ public class MemoryBackend implements SuggestBackend, Grouped {
 
     @Override
     public AsyncFuture<TagKeyCount> tagKeyCount(final TagKeyCount.Request request) {
-        final Map<String, Set<String>> counts = new HashMap<>();
+        final Map<String, Long> counts = new TreeMap<>();
 
-        try (final Stream<Series> series = lookupSeries(request.getFilter())) {
-            series.forEach(s -> {
-                for (final Map.Entry<String, String> e : s.getTags().entrySet()) {
-                    Set<String> c = counts.get(e.getKey());
+        final Filter filter = request.getFilter().optimize();
 
-                    if (c == null) {
-                        c = new HashSet<>();
-                        counts.put(e.getKey(), c);
-                    }
+        if (filter instanceof TrueFilter) {
+            for (final Map.Entry<String, TagValues> e : tagValues.entrySet()) {
+                counts.put(e.getKey(), e.getValue().count.sum());
+            }
+        } else {
+            final Map<String, Set<String>> values = new HashMap<>();
 
-                    c.add(e.getValue());
-                }
-            });
+            collectTagValues(filter,
+                (key, value) -> values.computeIfAbsent(key, k -> new HashSet<>()).add(value));
+
+            values.forEach((key, v) -> counts.put(key, (long) v.size()));
         }
 
         final List<TagKeyCount.Suggestion> suggestions = ImmutableList.copyOf(request
             .getLimit()
             .limitStream(counts.entrySet().stream())
-            .map(e -> new TagKeyCount.Suggestion(e.getKey(), (long) e.getValue().size(),
-                Optional.empty()))
+            .map(e -> new TagKeyCount.Suggestion(e.getKey(), e.getValue(), Optional.empty()))
             .iterator());
 
         return async.resolved(new TagKeyCount(suggestions, false));
@@ -152,48 +175,58 @@ public class MemoryBackend implements SuggestBackend, Grouped {
 
     @Override
     public AsyncFuture<TagSuggest> tagSuggest(final TagSuggest.Request request) {
-        final Optional<Set<String>> keys = request.getKey().map(MemoryBackend::analyze);
-        final Optional<Set<String>> values = request.getValue().map(MemoryBackend::analyze);
-
-        try (final Stream<TagDocument> docs = lookupTags(request.getFilter())) {
-            final Set<TagId> ids = docs.map(TagDocument::getId).collect(Collectors.toSet());
+        final Filter filter = request.getFilter().optimize();
 
-            keys.ifPresent(parts -> parts.forEach(
-                k -> ids.retainAll(tagKeys.getOrDefault(k, ImmutableSet.of()))));
+        Optional<Set<TagId>> ids = Optional.empty();
+        ids = matchTokens(ids, tagKeyTokens, request.getKey());
+        ids = matchTokens(ids, tagValueTokens, request.getValue());
 
-            values.ifPresent(parts -> parts.forEach(
-                k -> ids.retainAll(tagValues.getOrDefault(k, ImmutableSet.of()))));
+        final Set<TagId> matches;
 
-            final List<TagSuggest.Suggestion> suggestions = ImmutableList.copyOf(
-                ImmutableSortedSet.copyOf(request
-                    .getLimit()
-                    .limitStream(ids.stream())
-                    .map(tagIndex::get)
-                    .filter(Objects::nonNull)
-                    .map(d -> new TagSuggest.Suggestion(
-                        SCORE, d.getId().getKey(), d.getId().getValue()))
-                    .iterator()));
+        if (filter instanceof TrueFilter) {
+            matches = ids.orElse(tagIds);
+        } else {
+            final Optional<Set<TagId>> candidates = ids;
+            matches = new HashSet<>();
 
-            return async.resolved(new TagSuggest(suggestions));
+            forEachShard(filter, shard -> shard.tags.forEach((id, series) -> {
+                if (candidates.map(c -> c.contains(id)).orElse(true) && filter.apply(series)) {
+                    matches.add(id);
+                }
+            }));
         }
+
+        final List<TagSuggest.Suggestion> suggestions = ImmutableList.copyOf(
+            ImmutableSortedSet.copyOf(request
+                .getLimit()
+                .limitStream(matches.stream())
+                .map(id -> new TagSuggest.Suggestion(SCORE, id.getKey(), id.getValue()))
+                .iterator()));
+
+        return async.resolved(new TagSuggest(suggestions));
     }
 
     @Override
     public AsyncFuture<KeySuggest> keySuggest(final KeySuggest.Request request) {
-        final Optional<Set<String>> analyzedKeys = request.getKey().map(MemoryBackend::analyze);
-
-        final Set<String> ids;
-
-        try (final Stream<KeyDocument> docs = lookupKeys(request.getFilter())) {
-            ids = docs.map(KeyDocument::getId).collect(Collectors.toSet());
-
-            analyzedKeys.ifPresent(parts -> parts.forEach(
-                k -> ids.retainAll(keys.getOrDefault(k, ImmutableSet.of()))));
+        final Filter filter = request.getFilter().optimize();
+        final Optional<Set<String>> ids = matchTokens(Optional.empty(), keyTokens,
+            request.getKey());
+
+        final Set<String> matches = new HashSet<>();
+
+        if (filter instanceof TrueFilter && ids.isPresent()) {
+            matches.addAll(ids.get());
+        } else {
+            forEachShard(filter, shard -> shard.keys.forEach((key, series) -> {
+                if (ids.map(c -> c.contains(key)).orElse(true) && filter.apply(series)) {
+                    matches.add(key);
+                }
+            }));
         }
 
         final List<KeySuggest.Suggestion> suggestions = ImmutableList.copyOf(request
             .getLimit()
-            .limitStream(ids.stream())
+            .limitStream(matches.stream())
             .map(d -> new KeySuggest.Suggestion(SCORE, d))
             .iterator());
 
@@ -202,68 +235,75 @@ public class MemoryBackend implements SuggestBackend, Grouped {
 
     @Override
     public AsyncFuture<TagValueSuggest> tagValueSuggest(final TagValueSuggest.Request request) {
-        try (final Stream<TagDocument> docs = lookupTags(request.getFilter())) {
-            final Stream<TagId> ids = docs.map(TagDocument::getId);
+        final Filter filter = request.getFilter().optimize();
+        final Predicate<TagId> matchesKey =
+            id -> request.getKey().map(k -> id.getKey().equals(k)).orElse(true);
 
-            final List<String> values = request
-                .getLimit()
-                .limitStream(
-                    request.getKey().map(k -> ids.filter(id -> id.getKey().equals(k))).orElse(ids))
-                .map(TagId::getValue)
-                .collect(Collectors.toList());
+        final Set<String> values = new HashSet<>();
+
+        if (filter instanceof TrueFilter && request.getKey().isPresent()) {
+            final TagValues v = tagValues.get(request.getKey().get());
 
-            return async.resolved(new TagValueSuggest(values, false));
+            if (v != null) {
+                request.getLimit().limitStream(v.values.stream()).forEach(values::add);
+            }
+        } else {
+            forEachShard(filter, shard -> shard.tags.forEach((id, series) -> {
+                if (matchesKey.test(id) && filter.apply(series)) {
+                    values.add(id.getValue());
+                }
+            }));
         }
+
+        final List<String> result = ImmutableList.copyOf(
+            request.getLimit().limitStream(values.stream().sorted()).iterator());
+
+        return async.resolved(new TagValueSuggest(result, false));
     }
 
     @Override
     public AsyncFuture<WriteSuggest> write(final WriteSuggest.Request request) {
         final Series s = request.getSeries();
 
-        final Lock l = lock.writeLock();
-
-        l.lock();
+        if (!shard(s.getKey()).write(s)) {
+            return async.resolved(new WriteSuggest());
+        }
 
-        try {
-            series.add(s);
+        for (final String t : tokenize(s.getKey())) {
+            putEntry(keyTokens, t, s.getKey());
+        }
 
-            keyIndex.put(s.getKey(), new KeyDocument(s.getKey(), s));
+        for (final Map.Entry<String, String> tag : s.getTags().entrySet()) {
+            final TagId id = new TagId(tag.getKey(), tag.getValue());
 
-            for (final String t : analyze(s.getKey())) {
-                putEntry(keys, t, s.getKey());
+            if (!tagIds.add(id)) {
+                continue;
             }
 
-            for (final Map.Entry<String, String> tag : s.getTags().entrySet()) {
-                final TagId id = new TagId(tag.getKey(), tag.getValue());
-
-                tagIndex.put(id, new TagDocument(id, s));
+            tagValues.computeIfAbsent(tag.getKey(), k -> new TagValues()).add(tag.getValue());
 
-                for (final String t : analyze(tag.getKey())) {
-                    putEntry(tagKeys, t, id);
-                }
-
-                for (final String t : analyze(tag.getValue())) {
-                    putEntry(tagValues, t, id);
-                }
+            for (final String t : tokenize(tag.getKey())) {
+                putEntry(tagKeyTokens, t, id);
             }
 
-            return async.resolved(new WriteSuggest());
-        } finally {
-            l.unlock();
+            for (final String t : tokenize(tag.getValue())) {
+                putEntry(tagValueTokens, t, id);
+            }
         }
+
+        return async.resolved(new WriteSuggest());
     }
 
-    private <K, V> void putEntry(
-        final SortedMap<K, Set<V>> index, final K key, final V value
-    ) {
-        Set<V> store = index.get(key);
+    @Override
+    public Statistics getStatistics() {
+        long series = 0;
 
-        if (store == null) {
-            store = new HashSet<>();
-            index.put(key, store);
+        for (final Shard shard : shards) {
+            series += shard.size();
         }
 
-        store.add(value);
+        return new Statistics("memory-suggest-series", series, "memory-suggest-tags",
+            tagIds.size());
     }
 
     @Override
@@ -276,63 +316,262 @@ public class MemoryBackend implements SuggestBackend, Grouped {
         return groups;
     }
 
-    private static final Pattern p = Pattern.compile("([^a-zA-Z0-9]+|(?<=[a-z0-9])(?=[A-Z]))");
+    private static <V> void putEntry(
+        final ConcurrentMap<String, Set<V>> index, final String token, final V value
+    ) {
+        index.computeIfAbsent(token, k -> ConcurrentHashMap.newKeySet()).add(value);
+    }
 
-    static Set<String> analyze(final String input) {
-        if (input.isEmpty()) {
-            return ImmutableSet.of();
+    /**
+     * Narrow down the candidates to the ids that have a token starting with every token of the
+     * given query.
+     */
+    private static <V> Optional<Set<V>> matchTokens(
+        final Optional<Set<V>> candidates, final ConcurrentNavigableMap<String, Set<V>> index,
+        final Optional<String> query
+    ) {
+        if (!query.isPresent()) {
+            return candidates;
         }
 
-        final String[] parts = p.split(input);
-        final Set<String> output = new HashSet<>();
+        Optional<Set<V>> result = candidates;
 
-        for (final String p : parts) {
-            final String l = p.toLowerCase();
+        for (final String token : tokenize(query.get())) {
+            final Set<V> matches = new HashSet<>();
 
-            if (l.length() == 0) {
-                continue;
+            for (final Map.Entry<String, Set<V>> e : index.tailMap(token).entrySet()) {
+                if (!e.getKey().startsWith(token)) {
+                    break;
+                }
+
+                if (result.isPresent()) {
+                    for (final V id : e.getValue()) {
+                        if (result.get().contains(id)) {
+                            matches.add(id);
+                        }
+                    }
+                } else {
+                    matches.addAll(e.getValue());
+                }
             }
 
-            output.add(l);
-            output.addAll(prefix(l));
+            result = Optional.of(matches);
         }
 
-        return output;
+        return result;
+    }
+
+    private interface TagConsumer {
+        void accept(String key, String value);
+    }
+
+    private void collectTagValues(final Filter filter, final TagConsumer consumer) {
+        final Optional<String> key = requiredKey(filter);
+
+        if (filter instanceof MatchKeyFilter) {
+            shard(key.get()).forEachTag(key.get(), consumer);
+            return;
+        }
+
+        forEachShard(filter, shard -> shard.forEachSeries(key, s -> {
+            if (!filter.apply(s)) {
+                return;
+            }
+
+            for (final Map.Entry<String, String> e : s.getTags().entrySet()) {
+                consumer.accept(e.getKey(), e.getValue());
+            }
+        }));
     }
 
-    private static Collection<String> prefix(final String input) {
-        final Set<String> prefixes = new HashSet<>(36);
+    /**
+     * Call the consumer with every shard that might hold series matching the filter, while
+     * holding the read lock of the shard.
+     */
+    private void forEachShard(final Filter filter, final Consumer<Shard> consumer) {
+        final Optional<String> key = requiredKey(filter);
 
-        for (int i = 1; i < Math.min(input.length(), 20); i++) {
-            prefixes.add(input.substring(0, i));
+        if (key.isPresent()) {
+            shard(key.get()).read(consumer);
+            return;
         }
 
-        return prefixes;
+        for (final Shard shard : shards) {
+            shard.read(consumer);
+        }
     }
 
-    private Stream<KeyDocument> lookupKeys(final Filter filter) {
-        final Lock l = lock.readLock();
-        l.lock();
-        return keyIndex.values().stream()
-            .filter(e -> filter.apply(e.getSeries()))
-            .onClose(l::unlock);
+    private Shard shard(final String key) {
+        return shards[Math.floorMod(key.hashCode(), shards.length)];
     }
 
-    private Stream<TagDocument> lookupTags(final Filter filter) {
-        final Lock l = lock.readLock();
-        l.lock();
-        return tagIndex.values().stream()
-            .filter(e -> filter.apply(e.getSeries()))
-            .onClose(l::unlock);
+    /**
+     * The key that all series matching an optimized filter must have, if any.
+     */
+    static Optional<String> requiredKey(final Filter filter) {
+        if (filter instanceof MatchKeyFilter) {
+            return Optional.of(((MatchKeyFilter) filter).key());
+        }
+
+        if (filter instanceof AndFilter) {
+            for (final Filter term : ((AndFilter) filter).terms()) {
+                if (term instanceof MatchKeyFilter) {
+                    return Optional.of(((MatchKeyFilter) term).key());
+                }
+            }
+        }
+
+        return Optional.empty();
     }
 
-    private Stream<Series> lookupSeries(final Filter filter) {
-        final Lock l = lock.readLock();
-        l.lock();
-        return series.stream().filter(filter::apply).onClose(l::unlock);
+    private static final Pattern p = Pattern.compile("([^a-zA-Z0-9]+|(?<=[a-z0-9])(?=[A-Z]))");
+
+    /**
+     * Split the input into lower-case tokens on non-alphanumeric characters and camel case.
+     */
+    static Set<String> tokenize(final String input) {
+        if (input.isEmpty()) {
+            return ImmutableSet.of();
+        }
+
+        final Set<String> output = new HashSet<>();
+
+        for (final String part : p.split(input)) {
+            final String l = part.toLowerCase();
+
+            if (l.length() > 0) {
+                output.add(l);
+            }
+        }
+
+        return output;
     }
 
     public String toString() {
-        return "MemoryBackend()";
+        return "MemoryBackend(shards=" + shards.length + ")";
+    }
+
+    /**
+     * Distinct values of a tag key.
+     */
+    private static class TagValues {
+        private final ConcurrentSkipListSet<String> values = new ConcurrentSkipListSet<>();
+        /* the size of a concurrent skip list set is not constant time */
+        private final LongAdder count = new LongAdder();
+
+        private void add(final String value) {
+            if (values.add(value)) {
+                count.increment();
+            }
+        }
+    }
+
+    private static class Shard {
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+        private final Map<String, Set<Series>> series = new HashMap<>();
+        /* the last series written with a given key or tag */
+        private final Map<String, Series> keys = new HashMap<>();
+        private final Map<TagId, Series> tags = new HashMap<>();
+        /* distinct tag values of every key */
+        private final Map<String, Map<String, Set<String>>> tagValues = new HashMap<>();
+
+        /**
+         * Write the given series.
+         *
+         * @return {@code true} if the series was not already in the shard.
+         */
+        private boolean write(final Series s) {
+            lock.readLock().lock();
+
+            try {
+                final Set<Series> existing = series.get(s.getKey());
+
+                if (existing != null && existing.contains(s)) {
+                    return false;
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            lock.writeLock().lock();
+
+            try {
+                if (!series.computeIfAbsent(s.getKey(), k -> new HashSet<>()).add(s)) {
+                    return false;
+                }
+
+                keys.put(s.getKey(), s);
+
+                final Map<String, Set<String>> values =
+                    tagValues.computeIfAbsent(s.getKey(), k -> new HashMap<>());
+
+                for (final Map.Entry<String, String> tag : s.getTags().entrySet()) {
+                    tags.put(new TagId(tag.getKey(), tag.getValue()), s);
+                    values.computeIfAbsent(tag.getKey(), k -> new HashSet<>()).add(tag.getValue());
+                }
+
+                return true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private void read(final Consumer<Shard> consumer) {
+            lock.readLock().lock();
+
+            try {
+                consumer.accept(this);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        private void forEachTag(final String key, final TagConsumer consumer) {
+            read(shard -> {
+                final Map<String, Set<String>> values = tagValues.get(key);
+
+                if (values == null) {
+                    return;
+                }
+
+                for (final Map.Entry<String, Set<String>> e : values.entrySet()) {
+                    for (final String value : e.getValue()) {
+                        consumer.accept(e.getKey(), value);
+                    }
+                }
+            });
+        }
+
+        /**
+         * Call the consumer with every series, or only the series of the given key. Must be
+         * called while holding the read lock.
+         */
+        private void forEachSeries(final Optional<String> key, final Consumer<Series> consumer) {
+            if (key.isPresent()) {
+                series.getOrDefault(key.get(), ImmutableSet.of()).forEach(consumer);
+                return;
+            }
+
+            for (final Set<Series> s : series.values()) {
+                s.forEach(consumer);
+            }
+        }
+
+        private long size() {
+            lock.readLock().lock();
+
+            try {
+                long size = 0;
+
+                for (final Set<Series> s : series.values()) {
+                    size += s.size();
+                }
+
+                return size;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
     }
 }
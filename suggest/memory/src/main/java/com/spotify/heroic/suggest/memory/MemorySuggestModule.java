@@ -36,21 +36,30 @@ import dagger.Component;
 import dagger.Module;
 import dagger.Provides;
 import java.util.Optional;
+import javax.inject.Named;
 
 @ModuleId("elasticsearch")
 public final class MemorySuggestModule implements SuggestModule, DynamicModuleId {
     private static final String DEFAULT_GROUP = "memory";
+    private static final int DEFAULT_SHARDS = 16;
 
     private final Optional<String> id;
     private final Groups groups;
+    private final int shards;
 
     @JsonCreator
     public MemorySuggestModule(
         @JsonProperty("id") Optional<String> id,
-        @JsonProperty("groups") Optional<Groups> groups
+        @JsonProperty("groups") Optional<Groups> groups,
+        @JsonProperty("shards") Optional<Integer> shards
     ) {
         this.id = id;
         this.groups = groups.orElseGet(Groups::empty).or(DEFAULT_GROUP);
+        this.shards = shards.orElse(DEFAULT_SHARDS);
+
+        if (this.shards < 1) {
+            throw new IllegalArgumentException("shards must be positive");
+        }
     }
 
     @Override
@@ -78,6 +87,13 @@ public final class MemorySuggestModule implements SuggestModule, DynamicModuleId
         public Groups groups() {
             return groups;
         }
+
+        @Provides
+        @MemoryScope
+        @Named("shards")
+        public int shards() {
+            return shards;
+        }
     }
 
     @Override
@@ -92,6 +108,7 @@ public final class MemorySuggestModule implements SuggestModule, DynamicModuleId
     public static class Builder {
         private Optional<String> id = empty();
         private Optional<Groups> groups = empty();
+        private Optional<Integer> shards = empty();
 
         public Builder id(final String id) {
             checkNotNull(id, "id");
@@ -105,8 +122,13 @@ public final class MemorySuggestModule implements SuggestModule, DynamicModuleId
             return this;
         }
 
+        public Builder shards(final int shards) {
+            this.shards = of(shards);
+            return this;
+        }
+
         public MemorySuggestModule build() {
-            return new MemorySuggestModule(id, groups);
+            return new MemorySuggestModule(id, groups, shards);
         }
     }
 }
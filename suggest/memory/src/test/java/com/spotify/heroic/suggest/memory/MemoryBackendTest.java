@@ -1,17 +1,168 @@
 package com.spotify.heroic.suggest.memory;
 
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedSet;
+import com.spotify.heroic.common.DateRange;
+import com.spotify.heroic.common.Groups;
+import com.spotify.heroic.common.OptionalLimit;
+import com.spotify.heroic.common.Series;
+import com.spotify.heroic.filter.AndFilter;
+import com.spotify.heroic.filter.Filter;
+import com.spotify.heroic.filter.MatchKeyFilter;
+import com.spotify.heroic.filter.MatchTagFilter;
+import com.spotify.heroic.filter.TrueFilter;
+import com.spotify.heroic.suggest.KeySuggest;
+import com.spotify.heroic.suggest.MatchOptions;
+import com.spotify.heroic.suggest.TagKeyCount;
+import com.spotify.heroic.suggest.TagSuggest;
+import com.spotify.heroic.suggest.TagValueSuggest;
+import com.spotify.heroic.suggest.TagValuesSuggest;
+import com.spotify.heroic.suggest.WriteSuggest;
+import eu.toolchain.async.TinyAsync;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import org.junit.Before;
 import org.junit.Test;
 
-import static org.junit.Assert.assertEquals;
-
 public class MemoryBackendTest {
+    private final DateRange range = new DateRange(0, 1000);
+
+    private MemoryBackend backend;
+
+    @Before
+    public void setup() {
+        backend = new MemoryBackend(Groups.empty(), TinyAsync.builder().build(), 4);
+
+        write(Series.of("cpu-usage", ImmutableMap.of("host", "a", "role", "webServer")));
+        write(Series.of("cpu-usage", ImmutableMap.of("host", "b", "role", "webServer")));
+        write(Series.of("memoryUsage", ImmutableMap.of("host", "a", "role", "database")));
+        /* written twice */
+        write(Series.of("memoryUsage", ImmutableMap.of("host", "a", "role", "database")));
+    }
+
+    private void write(final Series series) {
+        backend.write(new WriteSuggest.Request(series, range));
+    }
+
+    @Test
+    public void testTokenize() {
+        assertEquals(ImmutableSet.of("hello", "world"), MemoryBackend.tokenize("HelloWorld"));
+        assertEquals(ImmutableSet.of("a", "b"), MemoryBackend.tokenize("a-b"));
+        assertEquals(ImmutableSet.of(), MemoryBackend.tokenize(""));
+    }
+
+    private List<TagValuesSuggest.Suggestion> tagValues(final Filter filter) throws Exception {
+        return backend
+            .tagValuesSuggest(new TagValuesSuggest.Request(filter, range, OptionalLimit.empty(),
+                OptionalLimit.empty(), ImmutableList.of()))
+            .get()
+            .getSuggestions();
+    }
+
+    @Test
+    public void testTagValuesSuggest() throws Exception {
+        assertEquals(ImmutableList.of(
+            new TagValuesSuggest.Suggestion("host", ImmutableSortedSet.of("a", "b"), false),
+            new TagValuesSuggest.Suggestion("role",
+                ImmutableSortedSet.of("database", "webServer"), false)),
+            tagValues(TrueFilter.create()));
+
+        assertEquals(ImmutableList.of(
+            new TagValuesSuggest.Suggestion("host", ImmutableSortedSet.of("a", "b"), false),
+            new TagValuesSuggest.Suggestion("role", ImmutableSortedSet.of("webServer"), false)),
+            tagValues(MatchKeyFilter.create("cpu-usage")));
+
+        assertEquals(ImmutableList.of(
+            new TagValuesSuggest.Suggestion("host", ImmutableSortedSet.of("a"), false),
+            new TagValuesSuggest.Suggestion("role", ImmutableSortedSet.of("webServer"), false)),
+            tagValues(AndFilter.create(ImmutableList.of(MatchKeyFilter.create("cpu-usage"),
+                MatchTagFilter.create("host", "a")))));
+
+        assertEquals(ImmutableList.of(
+            new TagValuesSuggest.Suggestion("host", ImmutableSortedSet.of("a"), false),
+            new TagValuesSuggest.Suggestion("role",
+                ImmutableSortedSet.of("database", "webServer"), false)),
+            tagValues(MatchTagFilter.create("host", "a")));
+    }
+
     @Test
-    public void testAnalyze() {
-        assertEquals(
-            ImmutableSet.of("w", "wo", "wor", "worl", "world", "h", "he", "hel", "hell", "hello"),
-            MemoryBackend.analyze("HelloWorld"));
+    public void testTagKeyCount() throws Exception {
+        final TagKeyCount all = backend
+            .tagKeyCount(new TagKeyCount.Request(TrueFilter.create(), range,
+                OptionalLimit.empty(), OptionalLimit.empty()))
+            .get();
 
-        assertEquals(ImmutableSet.of("a", "b"), MemoryBackend.analyze("a-b"));
+        assertEquals(ImmutableList.of(new TagKeyCount.Suggestion("host", 2L, Optional.empty()),
+            new TagKeyCount.Suggestion("role", 2L, Optional.empty())), all.getSuggestions());
+
+        final TagKeyCount memory = backend
+            .tagKeyCount(new TagKeyCount.Request(MatchKeyFilter.create("memoryUsage"), range,
+                OptionalLimit.empty(), OptionalLimit.empty()))
+            .get();
+
+        assertEquals(ImmutableList.of(new TagKeyCount.Suggestion("host", 1L, Optional.empty()),
+            new TagKeyCount.Suggestion("role", 1L, Optional.empty())), memory.getSuggestions());
+    }
+
+    @Test
+    public void testKeySuggestPrefix() throws Exception {
+        final KeySuggest suggest = backend
+            .keySuggest(new KeySuggest.Request(TrueFilter.create(), range, OptionalLimit.empty(),
+                MatchOptions.builder().build(), Optional.of("mem us")))
+            .get();
+
+        assertEquals(ImmutableList.of("memoryUsage"), suggest
+            .getSuggestions()
+            .stream()
+            .map(KeySuggest.Suggestion::getKey)
+            .collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testTagSuggestPrefix() throws Exception {
+        final TagSuggest all = backend
+            .tagSuggest(new TagSuggest.Request(TrueFilter.create(), range, OptionalLimit.empty(),
+                MatchOptions.builder().build(), Optional.of("ro"), Optional.of("web")))
+            .get();
+
+        assertEquals(ImmutableList.of(new TagSuggest.Suggestion(1.0f, "role", "webServer")),
+            all.getSuggestions());
+
+        final TagSuggest filtered = backend
+            .tagSuggest(new TagSuggest.Request(MatchKeyFilter.create("memoryUsage"), range,
+                OptionalLimit.empty(), MatchOptions.builder().build(), Optional.of("ro"),
+                Optional.empty()))
+            .get();
+
+        assertEquals(ImmutableList.of(new TagSuggest.Suggestion(1.0f, "role", "database")),
+            filtered.getSuggestions());
+    }
+
+    @Test
+    public void testTagValueSuggest() throws Exception {
+        final TagValueSuggest all = backend
+            .tagValueSuggest(new TagValueSuggest.Request(TrueFilter.create(), range,
+                OptionalLimit.empty(), Optional.of("role")))
+            .get();
+
+        assertEquals(ImmutableList.of("database", "webServer"), all.getValues());
+
+        final TagValueSuggest filtered = backend
+            .tagValueSuggest(new TagValueSuggest.Request(MatchTagFilter.create("host", "b"), range,
+                OptionalLimit.empty(), Optional.empty()))
+            .get();
+
+        assertEquals(ImmutableList.of("b", "webServer"), filtered.getValues());
+    }
+
+    @Test
+    public void testStatistics() {
+        assertEquals(3L, backend.getStatistics().get("memory-suggest-series", 0L));
+        assertEquals(4L, backend.getStatistics().get("memory-suggest-tags", 0L));
     }
 }